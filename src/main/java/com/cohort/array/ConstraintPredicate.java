@@ -0,0 +1,358 @@
+/*
+ * ConstraintPredicate Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package com.cohort.array;
+
+import com.cohort.util.Math2;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+/**
+ * This is a compiled form of one constraint (e.g., <tt>time&gt;=1.5e9</tt>)
+ * for a specific PrimitiveArray, which PrimitiveArray.applyConstraint and
+ * Table.tryToApplyConstraints use to test many rows quickly.
+ *
+ * <p>The operator and value2 are parsed once (instead of once per row),
+ * the test is specialized for the PrimitiveArray's element type and the operator,
+ * and the numeric tests are done in tight loops over the backing arrays,
+ * 64 rows at a time, to make a bit mask (in the same layout as
+ * BitSet.toLongArray()). Several constraints can be applied, one after another,
+ * to the same long[] mask; rows which have already been rejected aren't tested again.
+ *
+ * <p>The results are identical to PrimitiveArray.testValueOpValue
+ * (and the Extra and Exact variants) as used by the original applyConstraint,
+ * e.g., integer MAX_VALUEs are treated as NaN, and the float and double
+ * &lt;=, &gt;=, and = tests have a little fudge factor.
+ */
+public class ConstraintPredicate {
+
+    //the kinds of tests
+    private final static int REGEX = 0, STRING = 1, INT = 2, LONG = 3, FLOAT = 4, DOUBLE = 5;
+
+    //the operators
+    private final static int EQ = 0, NE = 1, LE = 2, GE = 3, LT = 4, GT = 5, UNKNOWN = 6;
+
+    private final String op;
+    private final int kind, opCode;
+    private final int nDigits; //for DOUBLE: 9, 12 (morePrecise), or 0 (exact)
+
+    private Pattern pattern;
+    private String stringValue, lowerStringValue;
+    private int intValue;
+    private long longValue;
+    private float floatValue;
+    private double doubleValue;
+
+    private ConstraintPredicate(String tOp, int tKind, int tNDigits) {
+        op = tOp;
+        kind = tKind;
+        nDigits = tNDigits;
+        opCode =
+            tOp.equals("=")?  EQ :
+            tOp.equals("!=")? NE :
+            tOp.equals("<=")? LE :
+            tOp.equals(">=")? GE :
+            tOp.equals("<")?  LT :
+            tOp.equals(">")?  GT : UNKNOWN;
+    }
+
+    /**
+     * This compiles a constraint for a PrimitiveArray.
+     * This chooses the same type of test that PrimitiveArray.applyConstraint
+     * always has.
+     *
+     * @param pa the PrimitiveArray which will be tested.
+     *   The predicate can be used with any PrimitiveArray with the same elementClass.
+     * @param morePrecise e.g., for tests of time values which are very precise.
+     * @param op one of EDDTable.OPERATORS
+     * @param value2
+     * @return the compiled predicate.
+     *   An invalid op isn't detected until a row is tested (as with testValueOpValue).
+     * @throws RuntimeException if trouble (e.g., invalid regex)
+     */
+    public static ConstraintPredicate compile(PrimitiveArray pa, boolean morePrecise,
+        String op, String value2) {
+
+        ConstraintPredicate cp;
+        Class elementClass = pa.elementClass();
+
+        //regex
+        if (op.equals(PrimitiveArray.REGEX_OP)) {
+            cp = new ConstraintPredicate(op, REGEX, 0);
+            cp.pattern = Pattern.compile(value2);  //big time savings
+            return cp;
+        }
+
+        //string
+        if (elementClass == String.class ||
+            elementClass == char.class) {
+            cp = new ConstraintPredicate(op, STRING, 0);
+            cp.stringValue = value2;
+            cp.lowerStringValue = value2.toLowerCase();
+            return cp;
+        }
+
+        //long
+        if (elementClass == long.class) {
+            long value2l = String2.parseLong(value2);  //error if has decimal part
+            if (value2l != Long.MAX_VALUE) {  //value2 parsed cleanly as a long
+                cp = new ConstraintPredicate(op, LONG, 0);
+                cp.longValue = value2l;
+            } else { //do exact test
+                cp = new ConstraintPredicate(op, DOUBLE, 0);
+                cp.doubleValue = String2.parseDouble(value2);
+            }
+            return cp;
+        }
+
+        //int types
+        if (pa.isIntegerType()) {
+            long value2l = String2.parseLong(value2);  //error if has decimal part
+            int value2i  = String2.parseInt(value2);
+            if (value2l == value2i &&
+                value2i != Integer.MAX_VALUE) {   //value2 parsed cleanly as int
+                cp = new ConstraintPredicate(op, INT, 0);
+                cp.intValue = value2i;
+            } else { //do exact test
+                cp = new ConstraintPredicate(op, DOUBLE, 0);
+                cp.doubleValue = String2.parseDouble(value2);
+            }
+            return cp;
+        }
+
+        //float
+        if (elementClass == float.class) {
+            cp = new ConstraintPredicate(op, FLOAT, 0);
+            cp.floatValue = String2.parseFloat(value2);
+            return cp;
+        }
+
+        //everything else via double tests
+        cp = new ConstraintPredicate(op, DOUBLE, morePrecise? 12 : 9);
+        cp.doubleValue = String2.parseDouble(value2);
+        return cp;
+    }
+
+    /**
+     * This tests the keep=true elements to see if 'pa.get(element) op value2' is true.
+     *   If the test is false, the keep element is set to false.
+     *
+     * @param pa a PrimitiveArray with the same elementClass as the one used for compile()
+     * @param keep   The test is only applied to keep=true elements.
+     * @return nStillGood
+     * @throws RuntimeException if trouble (e.g., invalid op or invalid keep element)
+     */
+    public int apply(PrimitiveArray pa, BitSet keep) {
+        if (keep.isEmpty())
+            return 0;
+        long words[] = keep.toLongArray();
+        int nStillGood = apply(pa, words);
+        keep.and(BitSet.valueOf(words)); //words is a subset of keep
+        return nStillGood;
+    }
+
+    /**
+     * This tests the rows which are set in the words bit mask
+     * to see if 'pa.get(row) op value2' is true.
+     *   If the test is false, the row's bit is cleared.
+     *
+     * @param pa a PrimitiveArray with the same elementClass as the one used for compile()
+     * @param words a bit mask, in the layout of BitSet.toLongArray()
+     *   (row is bit (row % 64) of words[row / 64]).
+     *   Only rows whose bit is set are tested.
+     * @return nStillGood
+     * @throws RuntimeException if trouble (e.g., invalid op or invalid keep element)
+     */
+    public int apply(PrimitiveArray pa, long words[]) {
+        int size = pa.size();
+        int nStillGood = 0;
+        int intBuf[] = kind == INT && !(pa instanceof IntArray)? new int[64] : null;
+        double doubleBuf[] = kind == DOUBLE && !(pa instanceof DoubleArray)? new double[64] : null;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            if (word == 0)
+                continue;
+            int base = w << 6;
+            int n = Math.min(64, size - base);
+            if (n <= 0 || (n < 64 && (word >>> n) != 0))
+                throw new IllegalArgumentException(String2.ERROR +
+                    " in ConstraintPredicate.apply: a keep row (" +
+                    (base + (63 - Long.numberOfLeadingZeros(word))) + ") >= size (" + size + ").");
+            if (opCode == UNKNOWN && kind != REGEX)
+                throw new SimpleException("Query error: " +
+                    "Unknown operator=\"" + op + "\".");
+
+            switch (kind) {
+                case REGEX:  word &= regexMask(pa, base, word); break;
+                case STRING: word &= stringMask(pa, base, word); break;
+                case INT:
+                    if (pa instanceof IntArray) {
+                        word &= intMask(((IntArray)pa).array, base, n);
+                    } else {
+                        decodeInts(pa, base, n, intBuf);
+                        word &= intMask(intBuf, 0, n);
+                    }
+                    break;
+                case LONG:   word &= longMask(((LongArray)pa).array, base, n); break;
+                case FLOAT:  word &= floatMask(((FloatArray)pa).array, base, n); break;
+                default: //DOUBLE
+                    if (pa instanceof DoubleArray) {
+                        word &= doubleMask(((DoubleArray)pa).array, base, n);
+                    } else {
+                        for (int i = 0; i < n; i++)
+                            doubleBuf[i] = pa.getDouble(base + i);
+                        word &= doubleMask(doubleBuf, 0, n);
+                    }
+            }
+            words[w] = word;
+            nStillGood += Long.bitCount(word);
+        }
+        return nStillGood;
+    }
+
+    /**
+     * This returns the number of bits which are set in a bit mask.
+     *
+     * @param words a bit mask, in the layout of BitSet.toLongArray()
+     * @return the number of bits which are set
+     */
+    public static int cardinality(long words[]) {
+        int n = 0;
+        for (int w = 0; w < words.length; w++)
+            n += Long.bitCount(words[w]);
+        return n;
+    }
+
+    /** This decodes n ints (as from getInt(), so missing values become Integer.MAX_VALUE). */
+    private static void decodeInts(PrimitiveArray pa, int base, int n, int buf[]) {
+        if (pa instanceof ShortArray) {
+            short a[] = ((ShortArray)pa).array;
+            for (int i = 0; i < n; i++) {
+                short s = a[base + i];
+                buf[i] = s == Short.MAX_VALUE? Integer.MAX_VALUE : s;
+            }
+        } else if (pa instanceof ByteArray) {
+            byte a[] = ((ByteArray)pa).array;
+            for (int i = 0; i < n; i++) {
+                byte b = a[base + i];
+                buf[i] = b == Byte.MAX_VALUE? Integer.MAX_VALUE : b;
+            }
+        } else {
+            for (int i = 0; i < n; i++)
+                buf[i] = pa.getInt(base + i);
+        }
+    }
+
+    /** The regex test of the set bits of word. */
+    private long regexMask(PrimitiveArray pa, int base, long word) {
+        long mask = 0;
+        for (long t = word; t != 0; t &= t - 1) {
+            int i = Long.numberOfTrailingZeros(t);
+            if (pattern.matcher(pa.getString(base + i)).matches())
+                mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    /** The String test (see testValueOpValue(String, String, String)) of the set bits of word. */
+    private long stringMask(PrimitiveArray pa, int base, long word) {
+        long mask = 0;
+        for (long t = word; t != 0; t &= t - 1) {
+            int i = Long.numberOfTrailingZeros(t);
+            String s = pa.getString(base + i);
+            boolean b;
+            switch (opCode) {
+                case EQ: b = s.equals(stringValue); break;
+                case NE: b = !s.equals(stringValue); break;
+                default:
+                    int c = s.toLowerCase().compareTo(lowerStringValue);
+                    b = opCode == LE? c <= 0 :
+                        opCode == GE? c >= 0 :
+                        opCode == LT? c <  0 : c > 0;
+            }
+            if (b)
+                mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    /** The int test (see testValueOpValue(int, String, int)) of a[off] to a[off + n - 1].
+     * intValue is never Integer.MAX_VALUE. */
+    private long intMask(int a[], int off, int n) {
+        int v = intValue;
+        long mask = 0;
+        switch (opCode) {
+            case EQ: for (int i = 0; i < n; i++) if (a[off + i] == v) mask |= 1L << i; break;
+            case NE: for (int i = 0; i < n; i++) if (a[off + i] != v) mask |= 1L << i; break;
+            case LE: for (int i = 0; i < n; i++) if (a[off + i] <= v) mask |= 1L << i; break;
+            case LT: for (int i = 0; i < n; i++) if (a[off + i] <  v) mask |= 1L << i; break;
+            case GE: for (int i = 0; i < n; i++) {int t = a[off + i]; if (t >= v && t != Integer.MAX_VALUE) mask |= 1L << i;} break;
+            case GT: for (int i = 0; i < n; i++) {int t = a[off + i]; if (t >  v && t != Integer.MAX_VALUE) mask |= 1L << i;} break;
+        }
+        return mask;
+    }
+
+    /** The long test (see testValueOpValue(long, String, long)) of a[off] to a[off + n - 1].
+     * longValue is never Long.MAX_VALUE. */
+    private long longMask(long a[], int off, int n) {
+        long v = longValue;
+        long mask = 0;
+        switch (opCode) {
+            case EQ: for (int i = 0; i < n; i++) if (a[off + i] == v) mask |= 1L << i; break;
+            case NE: for (int i = 0; i < n; i++) if (a[off + i] != v) mask |= 1L << i; break;
+            case LE: for (int i = 0; i < n; i++) if (a[off + i] <= v) mask |= 1L << i; break;
+            case LT: for (int i = 0; i < n; i++) if (a[off + i] <  v) mask |= 1L << i; break;
+            case GE: for (int i = 0; i < n; i++) {long t = a[off + i]; if (t >= v && t != Long.MAX_VALUE) mask |= 1L << i;} break;
+            case GT: for (int i = 0; i < n; i++) {long t = a[off + i]; if (t >  v && t != Long.MAX_VALUE) mask |= 1L << i;} break;
+        }
+        return mask;
+    }
+
+    /** The float test (see testValueOpValue(float, String, float)) of a[off] to a[off + n - 1]. */
+    private long floatMask(float a[], int off, int n) {
+        float v = floatValue;
+        boolean vIsNaN = Float.isNaN(v);
+        long mask = 0;
+        switch (opCode) {
+            case EQ: for (int i = 0; i < n; i++) {float t = a[off + i];
+                if ((vIsNaN && Float.isNaN(t)) || Math2.almostEqual(6, t, v)) mask |= 1L << i;} break;
+            case NE: for (int i = 0; i < n; i++) {float t = a[off + i];
+                if (vIsNaN? !Float.isNaN(t) : t != v) mask |= 1L << i;} break;
+            case LE: for (int i = 0; i < n; i++) {float t = a[off + i];
+                if (t <= v || Math2.almostEqual(6, t, v)) mask |= 1L << i;} break;
+            case GE: for (int i = 0; i < n; i++) {float t = a[off + i];
+                if (t >= v || Math2.almostEqual(6, t, v)) mask |= 1L << i;} break;
+            case LT: for (int i = 0; i < n; i++) if (a[off + i] < v) mask |= 1L << i; break;
+            case GT: for (int i = 0; i < n; i++) if (a[off + i] > v) mask |= 1L << i; break;
+        }
+        return mask;
+    }
+
+    /** The double test (see testValueOpValue(double, String, double) and the Extra and
+     * Exact variants) of a[off] to a[off + n - 1]. */
+    private long doubleMask(double a[], int off, int n) {
+        double v = doubleValue;
+        boolean vIsNaN = Double.isNaN(v);
+        int nd = nDigits;
+        long mask = 0;
+        switch (opCode) {
+            case EQ: for (int i = 0; i < n; i++) {double t = a[off + i];
+                if ((vIsNaN && Double.isNaN(t)) ||
+                    (nd == 0? t == v : Math2.almostEqual(nd, t, v))) mask |= 1L << i;} break;
+            case NE: for (int i = 0; i < n; i++) {double t = a[off + i];
+                if (vIsNaN? !Double.isNaN(t) : t != v) mask |= 1L << i;} break;
+            case LE: for (int i = 0; i < n; i++) {double t = a[off + i];
+                if (t <= v || (nd > 0 && Math2.almostEqual(nd, t, v))) mask |= 1L << i;} break;
+            case GE: for (int i = 0; i < n; i++) {double t = a[off + i];
+                if (t >= v || (nd > 0 && Math2.almostEqual(nd, t, v))) mask |= 1L << i;} break;
+            case LT: for (int i = 0; i < n; i++) if (a[off + i] < v) mask |= 1L << i; break;
+            case GT: for (int i = 0; i < n; i++) if (a[off + i] > v) mask |= 1L << i; break;
+        }
+        return mask;
+    }
+
+}
@@ -0,0 +1,377 @@
+/* This file is Copyright (c) 2026, NOAA.
+ * See the MIT/X-like license in LICENSE.txt.
+ * For more information, bob.simons@noaa.gov.
+ */
+package com.cohort.array;
+
+import com.cohort.util.String2;
+import com.cohort.util.StringHolder;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * PackedStrings is the compact, read-only storage which StringArray.pack() uses.
+ * Instead of one StringHolder (and its char[]) per element (~50 bytes
+ * for a short string), the characters of all of the strings are stored contiguously
+ * in one byte[] (if all chars are &lt;256, i.e., ISO-8859-1) or one char[],
+ * with an int[] of offsets.
+ *
+ * <p>If there are few distinct values (e.g., station IDs in a big table),
+ * the distinct values are stored once (sorted) in a dictionary and each element
+ * is just a 1 or 2 byte code, so compare() just compares the codes.
+ *
+ * <p>This isn't thread safe for writing, but there is no writing:
+ * all of the methods just read (so packed StringArrays can be shared by threads).
+ * null strings are supported and sort before all other strings.
+ */
+class PackedStrings {
+
+    /** The maximum number of distinct values for the dictionary encoding. */
+    final static int MAX_DICTIONARY_SIZE = 65536;
+
+    final int size;
+
+    //plain storage (if dictionary == null)
+    private final byte latin1[];   //if all chars are <256, else null
+    private final char utf16[];    //if some chars are >=256, else null
+    private final int offsets[];   //size+1: the start of string i is offsets[i]
+    private final BitSet nulls;    //the indices of null strings (or null if none)
+
+    //dictionary storage (if dictionary != null)
+    private final PackedStrings dictionary; //sorted, distinct values
+    private final byte codes1[];   //if dictionary.size <= 256
+    private final char codes2[];   //if dictionary.size > 256
+
+    /** The constructor for plain storage. */
+    private PackedStrings(int tSize, byte tLatin1[], char tUtf16[], int tOffsets[], BitSet tNulls) {
+        size = tSize;
+        latin1 = tLatin1;
+        utf16 = tUtf16;
+        offsets = tOffsets;
+        nulls = tNulls;
+        dictionary = null;
+        codes1 = null;
+        codes2 = null;
+    }
+
+    /** The constructor for dictionary storage. */
+    private PackedStrings(int tSize, PackedStrings tDictionary, byte tCodes1[], char tCodes2[]) {
+        size = tSize;
+        latin1 = null;
+        utf16 = null;
+        offsets = null;
+        nulls = null;
+        dictionary = tDictionary;
+        codes1 = tCodes1;
+        codes2 = tCodes2;
+    }
+
+    /**
+     * This packs the first n StringHolders.
+     *
+     * @param array the StringHolders (none may be null, but their strings may be null)
+     * @param n the number of StringHolders to be packed
+     * @return a PackedStrings
+     */
+    static PackedStrings pack(StringHolder array[], int n) {
+        //find the distinct values (until there are too many)
+        HashMap<StringHolder, Integer> map = new HashMap();
+        for (int i = 0; i < n && map.size() <= MAX_DICTIONARY_SIZE; i++)
+            map.putIfAbsent(array[i], null);
+        int nDistinct = map.size();
+        if (nDistinct > MAX_DICTIONARY_SIZE || nDistinct * 4L > n)
+            return packPlain(array, n);
+
+        //dictionary encoding: sort the distinct values (null first)
+        StringHolder distinct[] = map.keySet().toArray(new StringHolder[nDistinct]);
+        Arrays.sort(distinct, (a, b) ->
+            a.charArray() == null? (b.charArray() == null? 0 : -1) :
+            b.charArray() == null? 1 : a.compareTo(b));
+        for (int i = 0; i < nDistinct; i++)
+            map.put(distinct[i], i);
+        PackedStrings dictionary = packPlain(distinct, nDistinct);
+        if (nDistinct <= 256) {
+            byte codes[] = new byte[n];
+            for (int i = 0; i < n; i++)
+                codes[i] = (byte)map.get(array[i]).intValue();
+            return new PackedStrings(n, dictionary, codes, null);
+        }
+        char codes[] = new char[n];
+        for (int i = 0; i < n; i++)
+            codes[i] = (char)map.get(array[i]).intValue();
+        return new PackedStrings(n, dictionary, null, codes);
+    }
+
+    /** This packs the first n StringHolders without a dictionary. */
+    private static PackedStrings packPlain(StringHolder array[], int n) {
+        long nChars = 0;
+        boolean isLatin1 = true;
+        BitSet tNulls = null;
+        for (int i = 0; i < n; i++) {
+            char car[] = array[i].charArray();
+            if (car == null) {
+                if (tNulls == null)
+                    tNulls = new BitSet(n);
+                tNulls.set(i);
+                continue;
+            }
+            nChars += car.length;
+            if (isLatin1)
+                for (int c = 0; c < car.length; c++)
+                    if (car[c] >= 256) {
+                        isLatin1 = false;
+                        break;
+                    }
+        }
+        if (nChars >= Integer.MAX_VALUE)
+            throw new RuntimeException(String2.ERROR + " in PackedStrings.pack: too many characters (" +
+                nChars + ").");
+
+        int tOffsets[] = new int[n + 1];
+        byte tLatin1[] = isLatin1? new byte[(int)nChars] : null;
+        char tUtf16[] = isLatin1? null : new char[(int)nChars];
+        int po = 0;
+        for (int i = 0; i < n; i++) {
+            tOffsets[i] = po;
+            char car[] = array[i].charArray();
+            if (car == null)
+                continue;
+            if (isLatin1) {
+                for (int c = 0; c < car.length; c++)
+                    tLatin1[po + c] = (byte)car[c];
+            } else {
+                System.arraycopy(car, 0, tUtf16, po, car.length);
+            }
+            po += car.length;
+        }
+        tOffsets[n] = po;
+        return new PackedStrings(n, tLatin1, tUtf16, tOffsets, tNulls);
+    }
+
+    /** The dictionary code (0.. ) for element i (only if dictionary != null). */
+    private int code(int i) {
+        return codes1 != null? codes1[i] & 0xFF : codes2[i];
+    }
+
+    /** This returns true if element i is null. */
+    boolean isNull(int i) {
+        if (dictionary != null)
+            return dictionary.isNull(code(i));
+        return nulls != null && nulls.get(i);
+    }
+
+    /** This returns the length of element i (null has length 0). */
+    int length(int i) {
+        if (dictionary != null)
+            return dictionary.length(code(i));
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /** This returns character #c of element i. */
+    char charAt(int i, int c) {
+        if (dictionary != null)
+            return dictionary.charAt(code(i), c);
+        int po = offsets[i] + c;
+        return latin1 != null? (char)(latin1[po] & 0xFF) : utf16[po];
+    }
+
+    /** This returns the characters of element i (or null). */
+    char[] charArray(int i) {
+        if (dictionary != null)
+            return dictionary.charArray(code(i));
+        if (isNull(i))
+            return null;
+        int po = offsets[i];
+        int n = offsets[i + 1] - po;
+        if (latin1 == null)
+            return Arrays.copyOfRange(utf16, po, po + n);
+        char car[] = new char[n];
+        for (int c = 0; c < n; c++)
+            car[c] = (char)(latin1[po + c] & 0xFF);
+        return car;
+    }
+
+    /** This returns element i as a String (or null). */
+    String get(int i) {
+        if (dictionary != null)
+            return dictionary.get(code(i));
+        if (isNull(i))
+            return null;
+        int po = offsets[i];
+        int n = offsets[i + 1] - po;
+        if (n == 0)
+            return String2.EMPTY_STRING;
+        return latin1 != null? new String(latin1, po, n, String2.ISO_8859_1_CHARSET) :
+            new String(utf16, po, n);
+    }
+
+    /**
+     * This returns the StringHolders for the first n elements (e.g., to unpack).
+     * Equal values share one canonical StringHolder.
+     *
+     * @param n the number of elements (&lt;= size)
+     * @param capacity the length of the returned array (at least n)
+     */
+    StringHolder[] toStringHolders(int n, int capacity) {
+        StringHolder sh[] = new StringHolder[Math.max(capacity, n)];
+        if (dictionary != null) {
+            StringHolder dsh[] = dictionary.toStringHolders(dictionary.size, 0);
+            for (int i = 0; i < n; i++)
+                sh[i] = dsh[code(i)];
+        } else {
+            for (int i = 0; i < n; i++)
+                sh[i] = stringHolder(i);
+        }
+        return sh;
+    }
+
+    /** This returns the StringHolder for element i. */
+    StringHolder stringHolder(int i) {
+        char car[] = charArray(i);
+        return car == null? String2.STRING_HOLDER_NULL :
+            car.length == 0? String2.STRING_HOLDER_ZERO :
+            String2.canonicalStringHolder(new StringHolder(car));
+    }
+
+    /** This returns the same hashCode as element i's StringHolder. */
+    int hashCode(int i) {
+        if (isNull(i))
+            return 0;
+        int n = length(i);
+        int h = 1;
+        for (int c = 0; c < n; c++)
+            h = 31 * h + charAt(i, c);
+        return h;
+    }
+
+    /** This returns true if element i has the same characters as car (which may be null). */
+    boolean equals(int i, char car[]) {
+        if (car == null || isNull(i))
+            return car == null && isNull(i);
+        int n = length(i);
+        if (n != car.length)
+            return false;
+        for (int c = 0; c < n; c++)
+            if (charAt(i, c) != car[c])
+                return false;
+        return true;
+    }
+
+    /**
+     * This compares elements i and j like StringHolder.compareTo (null sorts first).
+     */
+    int compare(int i, int j) {
+        if (dictionary != null) //the dictionary is sorted
+            return code(i) - code(j);
+        boolean iNull = isNull(i);
+        boolean jNull = isNull(j);
+        if (iNull || jNull)
+            return iNull? (jNull? 0 : -1) : 1;
+        int ni = length(i);
+        int nj = length(j);
+        int min = Math.min(ni, nj);
+        int poi = offsets[i];
+        int poj = offsets[j];
+        if (latin1 != null) {
+            for (int c = 0; c < min; c++) {
+                int result = (latin1[poi + c] & 0xFF) - (latin1[poj + c] & 0xFF);
+                if (result != 0)
+                    return result;
+            }
+        } else {
+            for (int c = 0; c < min; c++) {
+                int result = utf16[poi + c] - utf16[poj + c];
+                if (result != 0)
+                    return result;
+            }
+        }
+        return ni - nj;
+    }
+
+    /**
+     * This compares elements i and j like StringHolder.compareToIgnoreCase
+     * (ties are then compared case-sensitively).
+     */
+    int compareIgnoreCase(int i, int j) {
+        boolean iNull = isNull(i);
+        boolean jNull = isNull(j);
+        if (iNull || jNull)
+            return iNull? (jNull? 0 : -1) : 1;
+        int ni = length(i);
+        int nj = length(j);
+        int min = Math.min(ni, nj);
+        for (int c = 0; c < min; c++) {
+            int result = Character.toLowerCase(charAt(i, c)) - Character.toLowerCase(charAt(j, c));
+            if (result != 0)
+                return result;
+        }
+        if (ni != nj)
+            return ni - nj;
+        return compare(i, j);
+    }
+
+    /**
+     * This makes a new PackedStrings with the specified elements.
+     * A dictionary is shared (not copied).
+     *
+     * @param rows the indices of the elements to keep, in the desired order
+     * @param n the number of rows to use
+     */
+    PackedStrings select(int rows[], int n) {
+        if (dictionary != null) {
+            if (codes1 != null) {
+                byte tCodes[] = new byte[n];
+                for (int i = 0; i < n; i++)
+                    tCodes[i] = codes1[rows[i]];
+                return new PackedStrings(n, dictionary, tCodes, null);
+            }
+            char tCodes[] = new char[n];
+            for (int i = 0; i < n; i++)
+                tCodes[i] = codes2[rows[i]];
+            return new PackedStrings(n, dictionary, null, tCodes);
+        }
+
+        long nChars = 0;
+        for (int i = 0; i < n; i++)
+            nChars += length(rows[i]);
+        int tOffsets[] = new int[n + 1];
+        byte tLatin1[] = latin1 == null? null : new byte[(int)nChars];
+        char tUtf16[] = latin1 == null? new char[(int)nChars] : null;
+        BitSet tNulls = null;
+        int po = 0;
+        for (int i = 0; i < n; i++) {
+            int row = rows[i];
+            tOffsets[i] = po;
+            if (nulls != null && nulls.get(row)) {
+                if (tNulls == null)
+                    tNulls = new BitSet(n);
+                tNulls.set(i);
+            }
+            int len = offsets[row + 1] - offsets[row];
+            if (latin1 != null)
+                System.arraycopy(latin1, offsets[row], tLatin1, po, len);
+            else System.arraycopy(utf16, offsets[row], tUtf16, po, len);
+            po += len;
+        }
+        tOffsets[n] = po;
+        return new PackedStrings(n, tLatin1, tUtf16, tOffsets, tNulls);
+    }
+
+    /** This returns true if this uses a dictionary. */
+    boolean isDictionary() {
+        return dictionary != null;
+    }
+
+    /** This returns the approximate number of bytes of memory used. */
+    long memoryUse() {
+        if (dictionary != null)
+            return 32 + dictionary.memoryUse() +
+                (codes1 != null? codes1.length : 2L * codes2.length);
+        return 32 + 4L * offsets.length +
+            (latin1 != null? latin1.length : 2L * utf16.length) +
+            (nulls == null? 0 : nulls.size() / 8);
+    }
+
+}
@@ -20,7 +20,6 @@ import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * PrimitiveArray defines the methods to be implemented by various XxxArray classes
@@ -3541,116 +3540,9 @@ public abstract class PrimitiveArray {
      * @throws RuntimeException if trouble (e.g., invalid op or invalid keep element)
      */
     public int applyConstraint(boolean morePrecise, BitSet keep, String op, String value2) {
-
-        //regex
-        if (op.equals(REGEX_OP)) {
-            //String2.log("applyConstraint(regex)");
-            int nStillGood = 0;
-            Pattern p = Pattern.compile(value2);  //big time savings
-            for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                if (p.matcher(getString(row)).matches()) 
-                    nStillGood++;
-                else keep.clear(row);
-            }
-            return nStillGood;
-        }
-
-        //string
-        if (elementClass() == String.class ||
-            elementClass() == char.class) {
-            //String2.log("applyConstraint(String)");
-            int nStillGood = 0;
-            for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                // String2.log(">> test " + getString(row) + op + value2 + " -> " + testValueOpValue(getString(row), op, value2));
-                if (testValueOpValue(getString(row), op, value2)) 
-                    nStillGood++;
-                else keep.clear(row);
-            }
-            return nStillGood;
-        }
-
-        //long 
-        if (elementClass() == long.class) {
-            long value2l = String2.parseLong(value2);  //error if has decimal part
-            int nStillGood = 0;
-            if (value2l != Long.MAX_VALUE) {  //value2 parsed cleanly as a long
-                //String2.log("applyConstraint(long)");
-                for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                    if (testValueOpValue(getLong(row), op, value2l)) 
-                        nStillGood++;
-                    else keep.clear(row);
-                }
-            } else { //do exact test
-                double value2d = String2.parseDouble(value2);
-                for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                    if (testValueOpValueExact(getDouble(row), op, value2d)) 
-                        nStillGood++;
-                    else keep.clear(row);
-                }
-            }
-            return nStillGood;
-        }
-
-        //int types
-        if (isIntegerType()) {
-            long value2l = String2.parseLong(value2);  //error if has decimal part
-            int value2i  = String2.parseInt(value2);
-            int nStillGood = 0;
-            if (value2l == value2i &&
-                value2i != Integer.MAX_VALUE) {   //value2 parsed cleanly as int
-                //String2.log("applyConstraint(int)");
-                for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                    if (testValueOpValue(getInt(row), op, value2i)) 
-                        nStillGood++;
-                    else keep.clear(row);
-                }
-            } else { //do exact test
-                double value2d = String2.parseDouble(value2);
-                for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                    if (testValueOpValueExact(getDouble(row), op, value2d)) 
-                        nStillGood++;
-                    else keep.clear(row);
-                }
-            }
-            return nStillGood;
-        }
-
-        //float
-        if (elementClass() == float.class) {
-            //String2.log("applyConstraint(float)");
-            int nStillGood = 0;
-            float value2f = String2.parseFloat(value2);
-            for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                if (testValueOpValue(getFloat(row), op, value2f)) 
-                    nStillGood++;
-                else keep.clear(row);
-            }
-            return nStillGood;
-        }
-
-        //morePrecise
-        if (morePrecise) {
-            //String2.log("applyConstraint(double)");
-            int nStillGood = 0;
-            double value2d = String2.parseDouble(value2);
-            for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-                if (testValueOpValueExtra(getDouble(row), op, value2d)) //extra
-                    nStillGood++;
-                else keep.clear(row);
-            }
-            return nStillGood;
-        }
-
-        //treat everything else via double tests (that should be all that is left)
-        //String2.log("applyConstraint(double)");
-        int nStillGood = 0;
-        double value2d = String2.parseDouble(value2);
-        for (int row = keep.nextSetBit(0); row >= 0; row = keep.nextSetBit(row + 1)) {
-            if (testValueOpValue(getDouble(row), op, value2d)) //normal
-                nStillGood++;
-            else keep.clear(row);
-        }
-        return nStillGood;
+        //The test is compiled once (for this type and op), 
+        //then done in tight loops over the backing array, 64 rows at a time.
+        return ConstraintPredicate.compile(this, morePrecise, op, value2).apply(this, keep);
     }
 
     /**
@@ -5146,6 +5038,134 @@ public abstract class PrimitiveArray {
 
     }
 
+    /**
+     * This is the row by row test that applyConstraint used before ConstraintPredicate,
+     * for testConstraintPredicate.
+     */
+    private static boolean referenceTest(PrimitiveArray pa, boolean morePrecise, int row,
+        String op, String value2) {
+        if (op.equals(REGEX_OP))
+            return pa.getString(row).matches(value2);
+        Class ec = pa.elementClass();
+        if (ec == String.class || ec == char.class)
+            return testValueOpValue(pa.getString(row), op, value2);
+        long value2l = String2.parseLong(value2);
+        int  value2i = String2.parseInt(value2);
+        if (ec == long.class)
+            return value2l != Long.MAX_VALUE? testValueOpValue(pa.getLong(row), op, value2l) :
+                testValueOpValueExact(pa.getDouble(row), op, String2.parseDouble(value2));
+        if (pa.isIntegerType())
+            return value2l == value2i && value2i != Integer.MAX_VALUE? 
+                testValueOpValue(pa.getInt(row), op, value2i) :
+                testValueOpValueExact(pa.getDouble(row), op, String2.parseDouble(value2));
+        if (ec == float.class)
+            return testValueOpValue(pa.getFloat(row), op, String2.parseFloat(value2));
+        return morePrecise? 
+            testValueOpValueExtra(pa.getDouble(row), op, String2.parseDouble(value2)) :
+            testValueOpValue(     pa.getDouble(row), op, String2.parseDouble(value2));
+    }
+
+    /**
+     * This tests that ConstraintPredicate (via applyConstraint and Table.tryToApplyConstraints)
+     * gets the same results as the row by row tests, and times a multi-constraint request.
+     */
+    public static void testConstraintPredicate() throws Throwable {
+        String2.log("*** PrimitiveArray.testConstraintPredicate");
+        java.util.Random random = new java.util.Random(17);
+        String ops[] = {"=", "!=", "<=", ">=", "<", ">", REGEX_OP};
+        Class classes[] = {byte.class, short.class, char.class, int.class, long.class,
+            float.class, double.class, String.class};
+        String values[] = {"0", "1", "-1", "2.5", "10", "127", "32767", "NaN", "1e10", 
+            "2147483647", "1.0000000001", ".*1.*", "a", ""};
+        for (int c = 0; c < classes.length; c++) {
+            for (int rep = 0; rep < 20; rep++) {
+                int n = random.nextInt(300);
+                PrimitiveArray pa = factory(classes[c], n, false);
+                for (int i = 0; i < n; i++) {
+                    int r = random.nextInt(20);
+                    if (classes[c] == String.class)
+                        pa.addString(r == 0? "" : r == 1? "A" : r == 2? "a" : "" + (r - 10));
+                    else if (r == 0) 
+                        pa.addString(""); //missing value
+                    else if (r == 1)
+                        pa.addDouble(1.0000000001);
+                    else pa.addDouble(r == 2? 2.5 : r - 10);
+                }
+                BitSet initial = new BitSet();
+                for (int i = 0; i < n; i++)
+                    if (random.nextInt(8) > 0)
+                        initial.set(i);
+                for (int o = 0; o < ops.length; o++) {
+                    for (int v = 0; v < values.length; v++) {
+                        boolean morePrecise = random.nextBoolean();
+                        BitSet expected = (BitSet)initial.clone();
+                        for (int row = initial.nextSetBit(0); row >= 0; row = initial.nextSetBit(row + 1))
+                            if (!referenceTest(pa, morePrecise, row, ops[o], values[v]))
+                                expected.clear(row);
+                        BitSet keep = (BitSet)initial.clone();
+                        int nGood = pa.applyConstraint(morePrecise, keep, ops[o], values[v]);
+                        String msg = pa.elementClassString() + " " + ops[o] + values[v] + 
+                            " morePrecise=" + morePrecise;
+                        Test.ensureEqual(keep, expected, msg);
+                        Test.ensureEqual(nGood, expected.cardinality(), msg);
+                    }
+                }
+            }
+        }
+
+        //unknown op: only an error if a row is tested
+        BitSet keep = new BitSet();
+        PrimitiveArray pa = factory(int.class, 10, "5");
+        Test.ensureEqual(pa.applyConstraint(false, keep, "<>", "5"), 0, "");
+        try {
+            keep.set(0, 10);
+            pa.applyConstraint(false, keep, "<>", "5");
+            throw new SimpleException("Shouldn't get here.");
+        } catch (Exception e) {
+            Test.ensureEqual(e.getMessage(), "Query error: Unknown operator=\"<>\".", "");
+        }
+
+        //time 5 constraints on a 5-column table
+        int n = 2000000;
+        PrimitiveArray cols[] = {new DoubleArray(n, false), new FloatArray(n, false), 
+            new IntArray(n, false), new ShortArray(n, false), new LongArray(n, false)};
+        for (int i = 0; i < n; i++) {
+            cols[0].addDouble(1.5e9 + i);
+            cols[1].addFloat(random.nextFloat() * 360 - 180);
+            cols[2].addInt(random.nextInt(1000));
+            cols[3].addInt(random.nextInt(100));
+            cols[4].addLong(i);
+        }
+        String conOps[]  = {">=", "<", ">=", "!=", "<="};
+        String conVals[] = {"1.5001e9", "90", "250", "7", "1800000"};
+        for (int rep = 0; rep < 3; rep++) {
+            long tTime = System.currentTimeMillis();
+            BitSet expected = new BitSet();
+            expected.set(0, n);
+            for (int row = expected.nextSetBit(0); row >= 0; row = expected.nextSetBit(row + 1))
+                if (!testValueOpValue(cols[0].getDouble(row), conOps[0], 1.5001e9)) expected.clear(row);
+            for (int row = expected.nextSetBit(0); row >= 0; row = expected.nextSetBit(row + 1))
+                if (!testValueOpValue(cols[1].getFloat(row),  conOps[1], 90f))      expected.clear(row);
+            for (int row = expected.nextSetBit(0); row >= 0; row = expected.nextSetBit(row + 1))
+                if (!testValueOpValue(cols[2].getInt(row),    conOps[2], 250))      expected.clear(row);
+            for (int row = expected.nextSetBit(0); row >= 0; row = expected.nextSetBit(row + 1))
+                if (!testValueOpValue(cols[3].getInt(row),    conOps[3], 7))        expected.clear(row);
+            for (int row = expected.nextSetBit(0); row >= 0; row = expected.nextSetBit(row + 1))
+                if (!testValueOpValue(cols[4].getLong(row),   conOps[4], 1800000L)) expected.clear(row);
+            long refTime = System.currentTimeMillis() - tTime;
+
+            tTime = System.currentTimeMillis();
+            keep = new BitSet();
+            keep.set(0, n);
+            for (int con = 0; con < cols.length; con++)
+                cols[con].applyConstraint(false, keep, conOps[con], conVals[con]);
+            long newTime = System.currentTimeMillis() - tTime;
+            Test.ensureEqual(keep, expected, "");
+            String2.log("time for 5 constraints, n=" + n + ": row by row=" + refTime + 
+                "ms, ConstraintPredicate=" + newTime + "ms (nKeep=" + keep.cardinality() + ")");
+        }
+    }
+
     /**
      * This tests the methods of this class.
      *
@@ -5156,6 +5176,7 @@ public abstract class PrimitiveArray {
 /* for releases, this line should have open/close comment */
         testBasic();
         testTestValueOpValue();
+        testConstraintPredicate();
         testNccsv();
     }
 
@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Pattern;
 import java.util.Set;
 
@@ -57,6 +58,16 @@ public class StringArray extends PrimitiveArray {
      *   but string in an element may be null (but that's not fully supported/tested).
      */
     private StringHolder[] array; 
+
+    /**
+     * If not null, the values are packed (see pack()) and array is null.
+     * Methods which just read the values read them from packed.
+     * Methods which change the values call unpack() first.
+     */
+    private PackedStrings packed;
+
+    /** pack() doesn't pack StringArrays with fewer than this number of values. */
+    public final static int MIN_PACK_SIZE = 1000;
     
     /**
      * A constructor for a capacity of 8 elements. The initial 'size' will be 0.
@@ -352,7 +363,7 @@ public class StringArray extends PrimitiveArray {
      * @return the current capacity (number of elements) of the internal data array.
      */
     public int capacity() {
-        return array.length;
+        return packed != null? size : array.length;
     }
 
     /**
@@ -367,6 +378,11 @@ public class StringArray extends PrimitiveArray {
         //see https://docs.oracle.com/javase/8/docs/api/java/util/List.html#hashCode()
         //and https://stackoverflow.com/questions/299304/why-does-javas-hashcode-in-string-use-31-as-a-multiplier
         int code = 0;
+        if (packed != null) {
+            for (int i = 0; i < size; i++) 
+                code = 31*code + packed.hashCode(i);
+            return code;
+        }
         for (int i = 0; i < size; i++) 
             code = 31*code + array[i].hashCode();
         return code;
@@ -400,10 +416,30 @@ public class StringArray extends PrimitiveArray {
 
         int willFind = strideWillFind(stopIndex - startIndex + 1, stride);
         StringArray sa = null;  //for the results
+        if (packed != null) {
+            int rows[] = new int[willFind];
+            for (int i = 0; i < willFind; i++)
+                rows[i] = startIndex + i * stride;
+            if (pa == null) {
+                sa = new StringArray();
+                sa.size = willFind;
+                sa.array = null;
+                sa.packed = packed.select(rows, willFind);
+                return sa;
+            }
+            sa = (StringArray)pa;
+            sa.unpack();
+            sa.ensureCapacity(willFind);
+            sa.size = willFind;
+            for (int i = 0; i < willFind; i++)
+                sa.array[i] = packed.stringHolder(rows[i]);
+            return sa;
+        }
         if (pa == null) {
             sa = new StringArray(willFind, true);
         } else {
             sa = (StringArray)pa;
+            sa.unpack();
             sa.ensureCapacity(willFind);
             sa.size = willFind;
         }
@@ -442,6 +478,8 @@ public class StringArray extends PrimitiveArray {
      * @param value the value to be added to the array
      */
     public void add(String value) {
+        if (packed != null)
+            unpack();
         if (size == array.length) //if we're at capacity
             ensureCapacity(size + 1L);
         array[size++] = value == null?        String2.STRING_HOLDER_NULL : //quick, saves time
@@ -481,6 +519,8 @@ public class StringArray extends PrimitiveArray {
      * @param value the value to be added to the array
      */
     public void addNotCanonical(String value) {
+        if (packed != null)
+            unpack();
         if (size == array.length) //if we're at capacity
             ensureCapacity(size + 1L);
         //still do most common canonicallization
@@ -520,10 +560,93 @@ public class StringArray extends PrimitiveArray {
      *
      */
     public void makeCanonical() {
+        if (packed != null) //packed values are already compact
+            return;
         for (int i = 0; i < size; i++)
             array[i] = String2.canonicalStringHolder(array[i]);
     }
 
+    /**
+     * This packs the values into a compact, read-only form (see PackedStrings):
+     * the characters of all of the strings are stored in one byte[] 
+     * (if all are ISO-8859-1, else one char[]), or, if there are few distinct
+     * values, each value is stored as a 1 or 2 byte code into a sorted dictionary.
+     * This saves lots of memory (and garbage collection) for big StringArrays,
+     * e.g., from a big table, and compare() (and so sorting) is fast for dictionary codes.
+     *
+     * <p>Methods which just read the values (e.g., get, compare, indexOf, subset,
+     * justKeep and reorder) work on the packed values. 
+     * The first method which changes the values (e.g., add or set) unpacks them.
+     * So pack a StringArray after it has been populated.
+     *
+     * @return true if the values are now packed. 
+     *    If size &lt; MIN_PACK_SIZE, this does nothing and returns false.
+     */
+    public boolean pack() {
+        if (packed != null)
+            return true;
+        if (size < MIN_PACK_SIZE)
+            return false;
+        packed = PackedStrings.pack(array, size);
+        array = null;
+        return true;
+    }
+
+    /**
+     * This returns true if the values are packed (see pack()).
+     *
+     * @return true if the values are packed.
+     */
+    public boolean isPacked() {
+        return packed != null;
+    }
+
+    /**
+     * If the values are packed (see pack()), this unpacks them (so they can be changed).
+     * This is called by all methods which change the values.
+     */
+    public void unpack() {
+        PackedStrings tPacked = packed;
+        if (tPacked == null)
+            return;
+        Math2.ensureMemoryAvailable(16L * size, "StringArray"); //16 is lame estimate of space needed per String
+        array = tPacked.toStringHolders(size, Math.max(8, size));
+        packed = null;
+    }
+
+    /**
+     * This returns the approximate number of bytes of memory used by the values.
+     *
+     * @return the approximate number of bytes of memory used by the values.
+     */
+    public long memoryUse() {
+        PackedStrings tPacked = packed;
+        if (tPacked != null)
+            return tPacked.memoryUse();
+        //StringHolders may be shared, so this is an upper bound
+        long n = 16 + 4L * array.length;
+        for (int i = 0; i < size; i++) {
+            char car[] = array[i].charArray();
+            n += 16 + (car == null? 0 : 16 + 2L * car.length);
+        }
+        return n;
+    }
+
+    /**
+     * This adds nValues values from other (starting at otherIndex) to this StringArray
+     * (which must already have sufficient capacity).
+     */
+    private void copyFrom(StringArray other, int otherIndex, int nValues) {
+        PackedStrings otherPacked = other.packed;
+        if (otherPacked == null) {
+            System.arraycopy(other.array, otherIndex, array, size, nValues);
+        } else {
+            for (int i = 0; i < nValues; i++)
+                array[size + i] = otherPacked.stringHolder(otherIndex + i);
+        }
+        size += nValues; //do last to minimize concurrency problems
+    }
+
     /**
      * This adds all the strings from sar.
      *
@@ -564,6 +687,7 @@ public class StringArray extends PrimitiveArray {
         if (index < 0 || index > size)
             throw new IllegalArgumentException(MessageFormat.format(
                 ArrayAtInsert, getClass().getSimpleName(), "" + index, "" + size));
+        unpack();
         if (size == array.length) //if we're at capacity
             ensureCapacity(size + 1L);
         System.arraycopy(array, index, array, index + 1, size - index);
@@ -677,8 +801,7 @@ public class StringArray extends PrimitiveArray {
                     " + nValues=" + nValues + 
                     " > otherPA.size=" + otherPA.size);
             ensureCapacity(size + nValues);            
-            System.arraycopy(((StringArray)otherPA).array, otherIndex, array, size, nValues);
-            size += nValues;
+            copyFrom((StringArray)otherPA, otherIndex, nValues);
             return this;
         }
 
@@ -708,6 +831,7 @@ public class StringArray extends PrimitiveArray {
         if (index >= size)
             throw new IllegalArgumentException(MessageFormat.format(
                 ArrayRemove, getClass().getSimpleName(), "" + index, "" + size));
+        unpack();
         System.arraycopy(array, index + 1, array, index, size - index - 1);
         size--;
 
@@ -731,6 +855,7 @@ public class StringArray extends PrimitiveArray {
             throw new IllegalArgumentException(String2.ERROR + " in StringArray.removeRange: from (" + 
                 from + ") > to (" + to + ").");
         }
+        unpack();
         System.arraycopy(array, to, array, from, size - to);
         size -= to - from;
 
@@ -744,6 +869,13 @@ public class StringArray extends PrimitiveArray {
      * @return the new size
      */
     public int removeEmptyAtEnd() {
+        if (packed != null) {
+            int last = size;
+            while (last > 0 && packed.length(last - 1) == 0) //includes null
+                last--;
+            removeRange(last, size);
+            return size;
+        }
         int last = size;
         while (last > 0) {
             char[] car = array[last - 1].charArray(); 
@@ -761,6 +893,7 @@ public class StringArray extends PrimitiveArray {
      * @return the new size
      */
     public int removeIfNothing() {
+        unpack();
         int nGood = 0;
         for (int po = 0; po < size; po++) {
             char[] car = array[po].charArray();
@@ -802,6 +935,7 @@ public class StringArray extends PrimitiveArray {
               first + ") or >= last (" + last + ").");
         if (first == last || destination == first || destination == last) 
             return; //nothing to do
+        unpack();
         //String2.log("move first=" + first + " last=" + last + " dest=" + destination);
         //String2.log("move initial " + String2.toCSSVString(array));
 
@@ -838,6 +972,15 @@ public class StringArray extends PrimitiveArray {
      * @param bitset
      */
     public void justKeep(BitSet bitset) {
+        if (packed != null) {
+            int rows[] = new int[Math.min(size, bitset.cardinality())];
+            int newSize = 0;
+            for (int row = bitset.nextSetBit(0); row >= 0 && row < size; row = bitset.nextSetBit(row + 1)) 
+                rows[newSize++] = row;
+            packed = packed.select(rows, newSize);
+            size = newSize;
+            return;
+        }
         int newSize = 0;
         for (int row = 0; row < size; row++) {
             if (bitset.get(row)) 
@@ -853,6 +996,7 @@ public class StringArray extends PrimitiveArray {
      *    minCapacity is type long, but &gt;= Integer.MAX_VALUE will throw exception.
      */
     public void ensureCapacity(long minCapacity) {
+        unpack();
         if (array.length < minCapacity) {
             //ensure minCapacity is < Integer.MAX_VALUE
             Math2.ensureArraySizeOkay(minCapacity, "StringArray");  
@@ -875,6 +1019,11 @@ public class StringArray extends PrimitiveArray {
     public String[] toArray() {
         Math2.ensureMemoryAvailable(8L * size, "StringArray.toArray"); //8L is guess
         String[] tArray = new String[size];
+        if (packed != null) {
+            for (int i = 0; i < size; i++)
+                tArray[i] = packed.get(i);
+            return tArray;
+        }
         for (int i = 0; i < size; i++)
             tArray[i] = array[i].string();
         return tArray;
@@ -922,7 +1071,8 @@ public class StringArray extends PrimitiveArray {
         if (index >= size)
             throw new IllegalArgumentException(String2.ERROR + " in StringArray.get: index (" + 
                 index + ") >= size (" + size + ").");
-        return array[index].string();
+        PackedStrings tPacked = packed;
+        return tPacked != null? tPacked.get(index) : array[index].string();
     }
 
     /**
@@ -935,6 +1085,7 @@ public class StringArray extends PrimitiveArray {
         if (index >= size)
             throw new IllegalArgumentException(String2.ERROR + " in StringArray.set: index (" + 
                 index + ") >= size (" + size + ").");
+        unpack();
         array[index] = String2.canonicalStringHolder(new StringHolder(value));
     }
 
@@ -1100,6 +1251,12 @@ public class StringArray extends PrimitiveArray {
         if (lookFor == null || startIndex >= size)
             return -1;
         char[] lookForc = lookFor.toCharArray();
+        if (packed != null) {
+            for (int i = startIndex; i < size; i++) 
+                if (packed.equals(i, lookForc))
+                    return i;
+            return -1;
+        }
         for (int i = startIndex; i < size; i++) 
             if (Arrays.equals(array[i].charArray(), lookForc)) //could use == if assume canonical; it's okay if either/both c[] are null
                 return i;
@@ -1148,6 +1305,12 @@ public class StringArray extends PrimitiveArray {
             throw new IllegalArgumentException(String2.ERROR + " in StringArray.get: startIndex (" + 
                 startIndex + ") >= size (" + size + ").");
         char[] lookForc = lookFor.toCharArray();
+        if (packed != null) {
+            for (int i = startIndex; i >= 0; i--) 
+                if (packed.equals(i, lookForc))
+                    return i;
+            return -1;
+        }
         for (int i = startIndex; i >= 0; i--) 
             if (Arrays.equals(array[i].charArray(), lookForc)) //could use == if assume canonical. it's okay if either/both b[] are null
                 return i;
@@ -1195,7 +1358,7 @@ public class StringArray extends PrimitiveArray {
      * so capacity will equal size.
      */
     public void trimToSize() {
-        if (size == array.length)
+        if (packed != null || size == array.length)
             return;
         StringHolder[] newArray = new StringHolder[size];
         System.arraycopy(array, 0, newArray, 0, size);
@@ -1214,6 +1377,12 @@ public class StringArray extends PrimitiveArray {
         StringArray other = (StringArray)o;
         if (other.size() != size)
             return false;
+        if (packed != null || other.packed != null) {
+            for (int i = 0; i < size; i++)
+                if (!Objects.equals(get(i), other.get(i)))
+                    return false;
+            return true;
+        }
         for (int i = 0; i < size; i++)
             if (!array[i].equals(other.array[i])) //could use == if assume canonical
                 return false;
@@ -1237,7 +1406,9 @@ public class StringArray extends PrimitiveArray {
             return "The two StringArrays aren't equal: one has " + size + 
                " value(s); the other has " + other.size() + " value(s).";
         for (int i = 0; i < size; i++)
-            if (!array[i].equals(other.array[i]))
+            if (packed != null || other.packed != null? 
+                    !Objects.equals(get(i), other.get(i)) :
+                    !array[i].equals(other.array[i]))
                 return "The two StringArrays aren't equal: this[" + i + "]=\"" + get(i) + 
                                                      "\"; other[" + i + "]=\"" + other.get(i) + "\".";
         return "";
@@ -1288,6 +1459,7 @@ public class StringArray extends PrimitiveArray {
      * to the beginning.
      */
     public void sort() {
+        unpack();
         Arrays.sort(array, 0, size, stringHolderComparator);
     }
 
@@ -1299,6 +1471,7 @@ public class StringArray extends PrimitiveArray {
      * E.g., all charAt(0) A's will sort by for all charAt(0) a's  (e.g., AA, Aa, aA, aa).
      */
     public void sortIgnoreCase() {
+        unpack();
         Arrays.sort(array, 0, size, stringHolderComparatorIgnoreCase);
     }
 
@@ -1320,6 +1493,9 @@ public class StringArray extends PrimitiveArray {
      *   Think "array[index1] - array[index2]".
      */
     public int compare(int index1, int index2) {
+        PackedStrings tPacked = packed;
+        if (tPacked != null)
+            return tPacked.compare(index1, index2);
         return array[index1].compareTo(array[index2]);
     }
 
@@ -1333,6 +1509,9 @@ public class StringArray extends PrimitiveArray {
      * the value at index2.
      */
     public int compareIgnoreCase(int index1, int index2) {
+        PackedStrings tPacked = packed;
+        if (tPacked != null)
+            return tPacked.compareIgnoreCase(index1, index2);
         StringHolder s1 = array[index1];
         StringHolder s2 = array[index2];
         int c = s1.compareToIgnoreCase(s2);
@@ -1352,6 +1531,7 @@ public class StringArray extends PrimitiveArray {
      * @param to an index number 0 ... size-1
      */
     public void copy(int from, int to) {
+        unpack();
         array[to] = array[from];
     }
 
@@ -1366,6 +1546,10 @@ public class StringArray extends PrimitiveArray {
      */
     public void reorder(int rank[]) {
         int n = rank.length;
+        if (packed != null) {
+            packed = packed.select(rank, n);
+            return;
+        }
         //new length could be n, but I'll keep it the same array.length as before
         StringHolder[] newArray = new StringHolder[array.length]; 
         for (int i = 0; i < n; i++)
@@ -1563,8 +1747,7 @@ public class StringArray extends PrimitiveArray {
         int otherSize = pa.size(); 
         ensureCapacity(size + (long)otherSize);
         if (pa instanceof StringArray) {
-            System.arraycopy(((StringArray)pa).array, 0, array, size, otherSize);
-            size += otherSize; 
+            copyFrom((StringArray)pa, 0, otherSize);
         //2017-04-06 this was contemplated, but better to handle this some other way, 
         //  e.g., CharArray.getString()
         //} else if (pa instanceof CharArray) { //for Argo
@@ -1590,8 +1773,7 @@ public class StringArray extends PrimitiveArray {
         int otherSize = pa.size(); 
         ensureCapacity(size + (long)otherSize);
         if (pa instanceof StringArray) {
-            System.arraycopy(((StringArray)pa).array, 0, array, size, otherSize);
-            size += otherSize; //do last to minimize concurrency problems
+            copyFrom((StringArray)pa, 0, otherSize);
         } else {
             for (int i = 0; i < otherSize; i++)
                 add(pa.getRawString(i)); //this DOESN'T convert mv's
@@ -1712,6 +1894,7 @@ public class StringArray extends PrimitiveArray {
     public int switchFromTo(String from, String to) {
         if (from.equals(to))
             return 0;
+        unpack();
         char[] fromc = from.toCharArray();
         StringHolder tosh = String2.canonicalStringHolder(new StringHolder(to));
         int count = 0;
@@ -2239,6 +2422,12 @@ public class StringArray extends PrimitiveArray {
      * @return the index of the first tied value (or -1 if none).
      */
     public int firstTie() {
+        if (packed != null) {
+            for (int i = 1; i < size; i++) 
+                if (packed.compare(i - 1, i) == 0) //nulls are tied
+                    return i - 1;
+            return -1;
+        }
         for (int i = 1; i < size; i++) {
             if (Arrays.equals(array[i - 1].charArray(), array[i].charArray())) { //either or both can be null
                 return i - 1;
@@ -2408,6 +2597,7 @@ public class StringArray extends PrimitiveArray {
      * @return the number of non-"" elements converted.
      */
     public int convertIsSomething2() {
+        unpack();
         int count = 0;
         for (int i = 0; i < size; i++) {
             char[] car = array[i].charArray();
@@ -3154,6 +3344,127 @@ public class StringArray extends PrimitiveArray {
         Test.ensureEqual((new StringArray(new String[] {"a", "", "1", "2" })).tryToFindNumericMissingValue(), Double.NaN, "");
         Test.ensureEqual((new StringArray(new String[] {"a", "", "1", "99"})).tryToFindNumericMissingValue(), Double.NaN, ""); //doesn't catch 99, would be nice if it did?
 
+        testPacked();
+    }
+
+    /**
+     * This tests pack() and the methods which work on packed values.
+     *
+     * @throws Throwable if trouble.
+     */
+    public static void testPacked() throws Throwable {
+        String2.log("*** Testing StringArray.pack");
+        //plain (many distinct values, incl. non-ISO-8859-1), dictionary (few distinct values)
+        for (int mode = 0; mode < 3; mode++) {
+            StringArray sa = new StringArray();
+            int n = 5000;
+            for (int i = 0; i < n; i++)
+                sa.add(i % 101 == 0? "" :
+                    mode == 0? "station" + (i * 7919 % n) :
+                    mode == 1? "st\u00e9\u20ac" + (i * 7919 % n) :
+                               "ship" + (i % 13));
+            StringArray plain = (StringArray)sa.clone();
+            Test.ensureTrue(sa.pack(), "mode=" + mode);
+            Test.ensureTrue(sa.isPacked(), "mode=" + mode);
+            Test.ensureEqual(sa.packed.isDictionary(), mode == 2, "mode=" + mode);
+            Test.ensureTrue(sa.memoryUse() < plain.memoryUse(), "mode=" + mode);
+            Test.ensureEqual(sa.size(), n, "");
+            Test.ensureEqual(sa.testEquals(plain), "", "");
+            Test.ensureTrue(sa.equals(plain) && plain.equals(sa), "");
+            Test.ensureEqual(sa.hashCode(), plain.hashCode(), "");
+            for (int i = 0; i < n; i += 7) {
+                Test.ensureEqual(sa.get(i), plain.get(i), "i=" + i);
+                int j = (i * 31) % n;
+                Test.ensureEqual(Integer.signum(sa.compare(i, j)), 
+                                 Integer.signum(plain.compare(i, j)), "i=" + i + " j=" + j);
+                Test.ensureEqual(Integer.signum(sa.compareIgnoreCase(i, j)), 
+                                 Integer.signum(plain.compareIgnoreCase(i, j)), "i=" + i + " j=" + j);
+            }
+            String s = plain.get(4321);
+            Test.ensureEqual(sa.indexOf(s), plain.indexOf(s), "");
+            Test.ensureEqual(sa.lastIndexOf(s), plain.lastIndexOf(s), "");
+            Test.ensureEqual(sa.subset(10, 3, 4000), plain.subset(10, 3, 4000), "");
+
+            //sort via rank and reorder (both stay packed)
+            StringArray sorted = (StringArray)sa.clone();
+            sorted.pack();
+            ArrayList table = new ArrayList();
+            table.add(sorted);
+            sorted.reorder(PrimitiveArray.rank(table, new int[]{0}, new boolean[]{true}));
+            Test.ensureTrue(sorted.isPacked(), "");
+            plain.sort();
+            Test.ensureEqual(sorted, plain, "");
+
+            //justKeep stays packed
+            BitSet bitset = new BitSet();
+            for (int i = 0; i < n; i += 3)
+                bitset.set(i);
+            StringArray kept = (StringArray)sa.clone();
+            kept.pack();
+            kept.justKeep(bitset);
+            Test.ensureTrue(kept.isPacked(), "");
+            Test.ensureEqual(kept.size(), (n + 2) / 3, "");
+            Test.ensureEqual(kept.get(2), sa.get(6), "");
+
+            //changes unpack
+            sa.add("new");
+            Test.ensureTrue(!sa.isPacked(), "");
+            Test.ensureEqual(sa.get(n), "new", "");
+            Test.ensureEqual(sa.get(4321), s, "");
+            sa.set(0, "zero");
+            Test.ensureEqual(sa.get(0), "zero", "");
+        }
+
+        //nulls
+        StringArray sa = new StringArray();
+        for (int i = 0; i < 2000; i++)
+            sa.add(i % 3 == 0? null : "a" + i);
+        Test.ensureTrue(sa.pack(), "");
+        Test.ensureEqual(sa.get(0), null, "");
+        Test.ensureEqual(sa.get(1), "a1", "");
+        Test.ensureEqual(sa.indexOf("a2"), 2, "");
+        sa.unpack();
+        Test.ensureEqual(sa.get(3), null, "");
+        Test.ensureEqual(sa.get(4), "a4", "");
+
+        //small arrays aren't packed
+        StringArray small = new StringArray(new String[]{"a", "b"});
+        Test.ensureTrue(!small.pack(), "");
+        Test.ensureTrue(!small.isPacked(), "");
+    }
+
+    /**
+     * This compares the memory use and the time to sort and subset a big 
+     * StringArray, unpacked and packed.
+     */
+    public static void timePacked() throws Throwable {
+        int n = 2000000;
+        for (int mode = 0; mode < 2; mode++) {
+            StringArray sa = new StringArray();
+            for (int i = 0; i < n; i++)
+                sa.add(mode == 0? "station" + (i * 7919 % n) : "ship" + (i % 200));
+            for (int packIt = 0; packIt < 2; packIt++) {
+                StringArray sa2 = (StringArray)sa.clone();
+                if (packIt == 1) 
+                    sa2.pack();
+                long mem = sa2.memoryUse();
+                long time = System.currentTimeMillis();
+                ArrayList table = new ArrayList();
+                table.add(sa2);
+                sa2.reorder(PrimitiveArray.rank(table, new int[]{0}, new boolean[]{true}));
+                long sortTime = System.currentTimeMillis() - time;
+                time = System.currentTimeMillis();
+                BitSet bitset = new BitSet();
+                for (int i = 0; i < n; i += 2)
+                    bitset.set(i);
+                sa2.justKeep(bitset);
+                String2.log("StringArray.timePacked " + (mode == 0? "distinct" : "few values") +
+                    " packed=" + (packIt == 1) + (packIt == 1 && sa2.packed.isDictionary()? " (dictionary)" : "") +
+                    " memoryUse=" + (mem / Math2.BytesPerMB) + "MB" +
+                    " sort=" + sortTime + "ms" +
+                    " justKeep=" + (System.currentTimeMillis() - time) + "ms");
+            }
+        }
     }
 
 }
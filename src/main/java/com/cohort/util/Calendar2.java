@@ -2856,19 +2856,13 @@ public class Calendar2 {
      *    If time_precision ends in Z, the result will too.
      *    If time_precision doesn't end in Z, the result won't end in Z.
      *    Note that ERDDAP requires/forces/ensures any format with hours(min(sec)) to have Z.
+     * @see IsoTimeFormatter
      */
     public static String epochSecondsToLimitedIsoStringT(String time_precision,
         double seconds, String NaNString) {
 
-        //should be floor(?), but round avoids issues with computer precision
-        long millis = Math2.roundToLong(seconds * 1000);
-        if (millis == Long.MAX_VALUE)
-            return NaNString;
-        try {
-            return limitedFormatAsISODateTimeT(time_precision, newGCalendarZulu(millis)); 
-        } catch (Exception e) {
-            return NaNString;
-        }
+        //To format many values, make one IsoTimeFormatter and reuse it.
+        return new IsoTimeFormatter(time_precision).format(seconds, NaNString);
     }
 
     /**
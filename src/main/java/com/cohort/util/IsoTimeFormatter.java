@@ -0,0 +1,213 @@
+/*
+ * IsoTimeFormatter Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package com.cohort.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This formats epochSeconds as ISO 8601 limited precision date time strings,
+ * exactly like Calendar2.epochSecondsToLimitedIsoStringT, but quickly:
+ * the time_precision is parsed once (by the constructor), the
+ * year, month, day, etc. are calculated with integer arithmetic
+ * (days to civil date, proleptic Gregorian), and the characters are
+ * put in a reusable char buffer which can be written directly to a Writer.
+ * So formatting a value doesn't make a GregorianCalendar or any
+ * intermediate Strings.
+ *
+ * <p>Times before the Gregorian calendar change (1582-10-15, where
+ * GregorianCalendar switches to the Julian calendar) or at or after 10000-01-01
+ * are formatted with the original (GregorianCalendar) code.
+ *
+ * <p>An instance isn't thread-safe (because of the buffer).
+ * Use one instance per thread (e.g., per TableWriter column).
+ */
+public class IsoTimeFormatter {
+
+    //the precision levels
+    private final static int YEAR = 0, MONTH = 1, DAY = 2, HOUR = 3, MINUTE = 4,
+        SECOND = 5, TENTH = 6, HUNDREDTH = 7, MILLI = 8;
+
+    private final static long MILLIS_PER_DAY = 86400000L;
+
+    /** The first millis formatted by the fast code: 1582-10-15T00:00:00Z. */
+    public final static long MIN_FAST_MILLIS = -12219292800000L;
+
+    /** The first millis not formatted by the fast code: 10000-01-01T00:00:00Z. */
+    public final static long MAX_FAST_MILLIS = 253402300800000L;
+
+    private final String time_precision;
+    private final int level;
+    private final boolean zulu;
+    private final char buf[] = new char[32];
+
+    /**
+     * The constructor.
+     *
+     * @param tTime_precision as for Calendar2.limitedFormatAsISODateTimeT,
+     *    e.g., "1970-01-01T00:00:00Z". null or "" is treated as "1970-01-01T00:00:00Z".
+     *    Unrecognized values are treated as "1970-01-01T00:00:00Z".
+     */
+    public IsoTimeFormatter(String tTime_precision) {
+        time_precision = tTime_precision;
+        String tp = tTime_precision;
+        if (tp == null || tp.length() == 0)
+            tp = "1970-01-01T00:00:00Z";
+        boolean tZulu = false;
+        if (tp.charAt(tp.length() - 1) == 'Z') {
+            tp = tp.substring(0, tp.length() - 1);
+            tZulu = true;
+        }
+        int tLevel;
+        if      (tp.equals("1970"))                    tLevel = YEAR;
+        else if (tp.equals("1970-01"))                 tLevel = MONTH;
+        else if (tp.equals("1970-01-01"))              tLevel = DAY;
+        else if (tp.equals("1970-01-01T00"))           tLevel = HOUR;
+        else if (tp.equals("1970-01-01T00:00"))        tLevel = MINUTE;
+        else if (tp.length() == 0 ||
+                 tp.equals("1970-01-01T00:00:00"))     tLevel = SECOND;
+        else if (tp.equals("1970-01-01T00:00:00.0"))   tLevel = TENTH;
+        else if (tp.equals("1970-01-01T00:00:00.00"))  tLevel = HUNDREDTH;
+        else if (tp.equals("1970-01-01T00:00:00.000")) tLevel = MILLI;
+        else {
+            tLevel = SECOND; //default has Z
+            tZulu = true;
+        }
+        level = tLevel;
+        zulu = tZulu;
+    }
+
+    /**
+     * This formats seconds into the buffer.
+     *
+     * @param seconds epochSeconds
+     * @return the number of chars in the buffer, or -1 if seconds is NaN (or otherwise invalid),
+     *    or -2 if the fast code can't handle it
+     */
+    private int fill(double seconds) {
+        //should be floor(?), but round avoids issues with computer precision
+        long millis = Math2.roundToLong(seconds * 1000);
+        if (millis == Long.MAX_VALUE)
+            return -1;
+        if (millis < MIN_FAST_MILLIS || millis >= MAX_FAST_MILLIS)
+            return -2;
+
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int msOfDay = (int)(millis - days * MILLIS_PER_DAY);
+
+        //civil from days (see Howard Hinnant's date algorithms)
+        long z = days + 719468;
+        long era = (z >= 0? z : z - 146096) / 146097;
+        int doe = (int)(z - era * 146097);                                  //[0, 146096]
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;    //[0, 399]
+        int year = (int)(yoe + era * 400);
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);                  //[0, 365]
+        int mp = (5 * doy + 2) / 153;                                       //[0, 11]
+        int day = doy - (153 * mp + 2) / 5 + 1;                             //[1, 31]
+        int month = mp < 10? mp + 3 : mp - 9;                               //[1, 12]
+        if (month <= 2)
+            year++;
+
+        //year is 1582 to 9999
+        int po = 0;
+        po = put2(put2(po, year / 100), year % 100);
+        if (level >= MONTH) {
+            buf[po++] = '-';
+            po = put2(po, month);
+        }
+        if (level >= DAY) {
+            buf[po++] = '-';
+            po = put2(po, day);
+        }
+        if (level >= HOUR) {
+            buf[po++] = 'T';
+            po = put2(po, msOfDay / 3600000);
+        }
+        if (level >= MINUTE) {
+            buf[po++] = ':';
+            po = put2(po, (msOfDay / 60000) % 60);
+        }
+        if (level >= SECOND) {
+            buf[po++] = ':';
+            po = put2(po, (msOfDay / 1000) % 60);
+        }
+        if (level >= TENTH) {
+            //the digits are truncated, not rounded (as in Calendar2)
+            int ms = msOfDay % 1000;
+            buf[po++] = '.';
+            buf[po++] = (char)('0' + ms / 100);
+            if (level >= HUNDREDTH)
+                buf[po++] = (char)('0' + (ms / 10) % 10);
+            if (level >= MILLI)
+                buf[po++] = (char)('0' + ms % 10);
+        }
+        if (zulu)
+            buf[po++] = 'Z';
+        return po;
+    }
+
+    /** This puts a 2 digit number (0 - 99) in buf at po and returns the new po. */
+    private int put2(int po, int i) {
+        buf[po++] = (char)('0' + i / 10);
+        buf[po++] = (char)('0' + i % 10);
+        return po;
+    }
+
+    /**
+     * This formats epochSeconds as an ISO 8601 limited precision date time string.
+     * This won't throw an exception.
+     *
+     * @param seconds epochSeconds
+     * @param NaNString the string to be returned if seconds is NaN
+     * @return the formatted string, exactly as from Calendar2.epochSecondsToLimitedIsoStringT
+     */
+    public String format(double seconds, String NaNString) {
+        int n = fill(seconds);
+        if (n >= 0)
+            return new String(buf, 0, n);
+        if (n == -1)
+            return NaNString;
+        return slowFormat(seconds, NaNString);
+    }
+
+    /**
+     * This formats epochSeconds with the original GregorianCalendar-based code.
+     * This won't throw an exception.
+     *
+     * @param seconds epochSeconds
+     * @param NaNString the string to be returned if seconds is NaN or there is trouble
+     * @return the formatted string
+     */
+    public String slowFormat(double seconds, String NaNString) {
+        long millis = Math2.roundToLong(seconds * 1000);
+        if (millis == Long.MAX_VALUE)
+            return NaNString;
+        try {
+            return Calendar2.limitedFormatAsISODateTimeT(time_precision, 
+                Calendar2.newGCalendarZulu(millis)); 
+        } catch (Exception e) {
+            return NaNString;
+        }
+    }
+
+    /**
+     * This writes epochSeconds as an ISO 8601 limited precision date time string
+     * to a writer. Usually, this doesn't make any objects.
+     *
+     * @param writer
+     * @param seconds epochSeconds
+     * @param NaNString the string to be written if seconds is NaN
+     * @throws IOException if trouble writing to the writer
+     */
+    public void write(Writer writer, double seconds, String NaNString) throws IOException {
+        int n = fill(seconds);
+        if (n >= 0)
+            writer.write(buf, 0, n);
+        else if (n == -1)
+            writer.write(NaNString);
+        else writer.write(slowFormat(seconds, NaNString));
+    }
+
+}
@@ -28,7 +28,6 @@ import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
 import java.io.Reader;
 import java.io.Writer;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
@@ -50,7 +49,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.Set;
 import java.util.Vector;
-import java.util.WeakHashMap;
 
 import org.apache.commons.codec.binary.Base64;
 
@@ -189,16 +187,13 @@ public class String2 {
 
     private static String classPath; //lazy creation by getClassPath
 
-    //splitting canonicalMap and canonicalStringHolderMap into 6 maps allows each 
-    //to be bigger and makes synchronized contention less common.
-    private static Map canonicalMap[] = new Map[6];
-    private static Map canonicalStringHolderMap[] = new Map[6];
-    static {
-        for (int i = 0; i < canonicalMap.length; i++) {
-            canonicalMap[i]             = new WeakHashMap();
-            canonicalStringHolderMap[i] = new WeakHashMap();
-        }
-    }
+    //concurrent, so canonical() and canonicalStringHolder() don't lock for lookups
+    //new String(s): in case s is from s2.substring, copy to be just the characters
+    //(for proof, see TestUtil.testString2canonical2())
+    private static WeakInterner<String> canonicalInterner = 
+        new WeakInterner(1 << 16, s -> new String((String)s));
+    private static WeakInterner<StringHolder> canonicalStringHolderInterner = 
+        new WeakInterner(1 << 12, null);
 
     //EDStatic may change this
     public static String unitTestDataDir    = "/erddapTest/";
@@ -6087,17 +6082,20 @@ and zoom and pan with controls in
     }
 
     /** 
-     * This is like String.intern(), but uses a WeakHashMap so the canonical strings 
+     * This is like String.intern(), but uses a WeakInterner so the canonical strings 
      * can be garbage collected.
-     * <br>This is thread safe.
+     * <br>This is thread safe and lookups don't lock.
      * <br>It is fast: ~0.002ms per call.
      * <br>See TestUtil.testString2canonical().
      *
-     * <p>Using this increases memory use by ~6 bytes per canonical string
-     * (4 for pointer * ~.5 hashMap load factor).
+     * <p>Using this increases memory use by ~40 bytes per canonical string
+     * (the map entry and the WeakReference).
      * <br>So it only saves memory if many strings would otherwise be duplicated.
      * <br>But if lots of strings are originally duplicates, it saves *lots* of memory.
      *
+     * <p>Don't synchronize on the canonical string to lock a file; 
+     * use gov.noaa.pfel.coastwatch.util.FileLocks.
+     *
      * @param s  the string   (may be null)  (may be from s2.substring(start, stop))
      * @return a canonical string with the same characters as s.
      */
@@ -6107,44 +6105,23 @@ and zoom and pan with controls in
         if (s.length() == 0)
             return EMPTY_STRING;
         //generally, it slows things down to see if same as last canonical String.
-        char ch0 = s.charAt(0);
-        Map tCanonicalMap = canonicalMap[
-            ch0 < 'A'? 0 : ch0 < 'N'? 1 : //divide uppercase into 2 parts
-            ch0 < 'a'? 2 : ch0 < 'j'? 3 : //divide lowercase into 3 parts
-            ch0 < 'r'? 4 : 5];
-       
-        //faster and logically better to synchronized(canonicalMap) once 
-        //  (and use a few times in consistent state)
-        //than to synchronize canonicalMap and lock/unlock twice
-        synchronized (tCanonicalMap) {
-            WeakReference wr = (WeakReference)tCanonicalMap.get(s);
-            //wr won't be garbage collected, but reference might (making wr.get() return null)
-            String canonical = wr == null? null : (String)(wr.get());
-            if (canonical == null) {
-                //For proof that new String(s.substring(,)) is just storing relevant chars,
-                //not a reference to the parent string, see TestUtil.testString2canonical2()
-                canonical = new String(s); //in case s is from s2.substring, copy to be just the characters
-                tCanonicalMap.put(canonical, new WeakReference(canonical));
-                //log("new canonical string: " + canonical);
-            }
-            return canonical;
-        }
+        return canonicalInterner.intern(s);
     }
 
     /** 
-     * This is like String.intern(), but uses a WeakHashMap so the canonical 
+     * This is like String.intern(), but uses a WeakInterner so the canonical 
      * StringHolder can be garbage collected.
-     * <br>This is thread safe.
+     * <br>This is thread safe and lookups don't lock.
      * <br>It is fast: ~0.002ms per call.
      * <br>See TestUtil.testString2canonicalStringHolder().
      *
-     * <p>Using this increases memory use by ~6 bytes per canonical byte[]
-     * (4 for pointer * ~.5 hashMap load factor).
+     * <p>Using this increases memory use by ~40 bytes per canonical byte[]
+     * (the map entry and the WeakReference).
      * <br>So it only saves memory if many strings would otherwise be duplicated.
      * <br>But if lots of strings are originally duplicates, it saves *lots* of memory.
      *
      * @param sh  byte[] doesn't implement hashCode or equals,
-     *     so need to store byte[] in canonicalStringHolderMap as StringHolder.
+     *     so need to store byte[] in canonicalStringHolderInterner as StringHolder.
      *     sh can't be null.
      * @return a canonical StringHolder with the same characters as sh.
      */
@@ -6154,64 +6131,23 @@ and zoom and pan with controls in
             return STRING_HOLDER_NULL;
         if (car.length == 0)
             return STRING_HOLDER_ZERO;
-        char b = car[0];
-        int which = //b == -128? 7 : Math.abs(b)/16; //0..7
-            b < 'A'? 0 : b < 'N'? 1 : //divide uppercase into 2 parts
-            b < 'a'? 2 : b < 'j'? 3 : //divide lowercase into 3 parts
-            b < 'r'? 4 : 5;
-        Map tCanonicalStringHolderMap = canonicalStringHolderMap[which];
-       
-        //faster and logically better to synchronized(canonicalStringHolderMap) once 
-        //  (and use a few times in consistent state)
-        //than to synchronize canonicalStringHolderMap and lock/unlock twice
-        synchronized (tCanonicalStringHolderMap) {
-            WeakReference wr = (WeakReference)tCanonicalStringHolderMap.get(sh);
-            //wr won't be garbage collected, but reference might (making wr.get() return null)
-            StringHolder canonical = wr == null? null : (StringHolder)(wr.get());
-            if (canonical == null) {
-                canonical = sh; //use this object
-                tCanonicalStringHolderMap.put(canonical, new WeakReference(canonical));
-                //log("new canonical string: " + canonical);
-            }
-            return canonical;
-        }
+        return canonicalStringHolderInterner.intern(sh); //use this object if new
     }
 
     /** This is only used to test canonical. There isn't a trailing newline. */
     public static String canonicalStatistics() {
-        StringBuilder sb = new StringBuilder("canonical map sizes: ");
-        int sum = 0;
-        for (int i = 0; i < canonicalMap.length; i++) {
-            int tSize = canonicalMap[i].size();
-            sum += tSize;
-            sb.append((i==0? "" : " + ") + tSize);
-        }
-        sb.append(" = " + sum + 
-            "\ncanonicalStringHolder map sizes: ");
-        sum = 0;
-        for (int i = 0; i < canonicalStringHolderMap.length; i++) {
-            int tSize = canonicalStringHolderMap[i].size();
-            sum += tSize;
-            sb.append((i==0? "" : " + ") + tSize);
-        }
-        sb.append(" = " + sum);
-        return sb.toString();
+        return "canonical map size: " + canonicalSize() + 
+            "\ncanonicalStringHolder map size: " + canonicalStringHolderSize();
     }
 
     /** This is only used to test canonical. */
     public static int canonicalSize() {
-        int sum = 0;
-        for (int i = 0; i < canonicalMap.length; i++)
-            sum += canonicalMap[i].size();
-        return sum;
+        return canonicalInterner.size();
     }
 
     /** This is only used to test canonicalStringHolder. */
     public static int canonicalStringHolderSize() {
-        int sum = 0;
-        for (int i = 0; i < canonicalStringHolderMap.length; i++)
-            sum += canonicalStringHolderMap[i].size();
-        return sum;
+        return canonicalStringHolderInterner.size();
     }
 
     /** 
@@ -6289,6 +6289,60 @@ expected =
     }
 
 
+    /**
+     * This tests that IsoTimeFormatter gets exactly the same results as 
+     * the original (GregorianCalendar-based) code, for lots of random times
+     * and all time_precisions, and compares their speed.
+     */
+    public static void testIsoTimeFormatter() throws Exception {
+        String2.log("\n*** TestUtil.testIsoTimeFormatter");
+        String tps[] = {null, "", "Z", "1970", "1970-01", "1970-01-01", 
+            "1970-01-01T00", "1970-01-01T00Z", "1970-01-01T00:00", "1970-01-01T00:00Z", 
+            "1970-01-01T00:00:00", "1970-01-01T00:00:00Z", 
+            "1970-01-01T00:00:00.0", "1970-01-01T00:00:00.0Z", 
+            "1970-01-01T00:00:00.00", "1970-01-01T00:00:00.00Z", 
+            "1970-01-01T00:00:00.000", "1970-01-01T00:00:00.000Z", "1971", "junk"};
+        java.util.Random random = new java.util.Random(1);
+        double special[] = {Double.NaN, Double.POSITIVE_INFINITY, 0, -0.0005, 0.0005, 
+            -1, 1e-4, 1.5e9, 951782400, 951868800, //2000-02-29, 2000-03-01
+            IsoTimeFormatter.MIN_FAST_MILLIS / 1000.0,  IsoTimeFormatter.MIN_FAST_MILLIS / 1000.0 - 0.001, 
+            IsoTimeFormatter.MAX_FAST_MILLIS / 1000.0,  IsoTimeFormatter.MAX_FAST_MILLIS / 1000.0 - 0.001,
+            -62167219200.0, 1e15, -1e15, 1e30};
+        for (int t = 0; t < tps.length; t++) {
+            IsoTimeFormatter itf = new IsoTimeFormatter(tps[t]);
+            for (int i = 0; i < special.length; i++) 
+                Test.ensureEqual(itf.format(special[i], "."), itf.slowFormat(special[i], "."),
+                    "tp=" + tps[t] + " seconds=" + special[i]);
+            for (int i = 0; i < 100000; i++) {
+                int r = random.nextInt(4);
+                double d = 
+                    r == 0? (random.nextDouble() - 0.5) * 2e11 :  //+-3000 years
+                    r == 1? (random.nextDouble() - 0.5) * 1e12 :  //+-15000 years
+                    r == 2? (random.nextInt(2000000000) + random.nextInt(1000) / 1000.0) : 
+                            Math.floor(random.nextDouble() * 4e9) * 60; //whole minutes
+                Test.ensureEqual(itf.format(d, "."), itf.slowFormat(d, "."),
+                    "tp=" + tps[t] + " seconds=" + d);
+            }
+        }
+
+        //time it
+        int n = 2000000;
+        IsoTimeFormatter itf = new IsoTimeFormatter("1970-01-01T00:00:00Z");
+        StringBuilder sb = new StringBuilder();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) 
+            sb.append(itf.slowFormat(1.5e9 + i * 61.1, ""));
+        long slowTime = System.currentTimeMillis() - time;
+        time = System.currentTimeMillis();
+        java.io.StringWriter sw = new java.io.StringWriter(sb.length());
+        for (int i = 0; i < n; i++) 
+            itf.write(sw, 1.5e9 + i * 61.1, "");
+        long fastTime = System.currentTimeMillis() - time;
+        Test.ensureTrue(sw.toString().equals(sb.toString()), "");
+        String2.log("time for n=" + n + " GregorianCalendar=" + slowTime + 
+            "ms IsoTimeFormatter=" + fastTime + "ms");
+    }
+
     /**
      * Run all of the tests  (and print messages to the console).
      *
@@ -6312,7 +6366,9 @@ expected =
         testMustBe();
         testResourceBundle2();
         testCalendar2();
+        testIsoTimeFormatter();
         LRUCache.test();
+        WeakInterner.test();
         timeCurrentTimeMillis();
         timeString2Log();
         String2.log("\nAll TestUtil tests successfully completed in " +
@@ -0,0 +1,149 @@
+/* This file is Copyright (c) 2026, NOAA.
+ * See the MIT/X-like license in LICENSE.txt.
+ * For more information, bob.simons@noaa.gov.
+ */
+package com.cohort.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * WeakInterner is like String.intern(), but for any type of object and
+ * the canonical objects can be garbage collected when no one else refers to them.
+ * String2.canonical() and String2.canonicalStringHolder() use this.
+ *
+ * <p>This is thread safe and lookups don't lock: the canonical objects are
+ * held (weakly) in a ConcurrentHashMap, so threads only contend (briefly)
+ * when they add objects to the same part of the map.
+ * References to collected objects are removed as they are found on the ReferenceQueue.
+ *
+ * <p>Don't synchronize on the canonical objects (use
+ * gov.noaa.pfel.coastwatch.util.FileLocks to lock a file).
+ */
+public class WeakInterner<T> {
+
+    private final ConcurrentHashMap<Ref<T>, Ref<T>> map;
+    private final ReferenceQueue<T> queue = new ReferenceQueue();
+    private final UnaryOperator<T> copier;
+
+    /**
+     * A WeakReference which is equal to another Ref if their referents are equal.
+     * A cleared Ref is only equal to itself.
+     */
+    private static class Ref<T> extends WeakReference<T> {
+        private final int hash;
+
+        Ref(T t, ReferenceQueue<T> q) {
+            super(t, q);
+            hash = t.hashCode();
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Ref))
+                return false;
+            Object t = get();
+            return t != null && t.equals(((Ref)o).get());
+        }
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param initialCapacity the initial capacity of the map
+     * @param tCopier if not null, a new canonical object is made by tCopier
+     *   (e.g., for Strings, s -&gt; new String(s), so a substring's canonical
+     *   String doesn't hold the parent's chars). If null, the object
+     *   passed to intern() becomes the canonical object.
+     */
+    public WeakInterner(int initialCapacity, UnaryOperator<T> tCopier) {
+        map = new ConcurrentHashMap(initialCapacity);
+        copier = tCopier;
+    }
+
+    /**
+     * This returns the canonical object which is equal to t.
+     *
+     * @param t an object (not null)
+     * @return the canonical object which is equal to t
+     */
+    public T intern(T t) {
+        expungeStale();
+        Ref<T> ref = map.get(new Ref(t, null));
+        T canonical = ref == null? null : ref.get();
+        if (canonical != null)
+            return canonical;
+
+        canonical = copier == null? t : copier.apply(t);
+        Ref<T> newRef = new Ref(canonical, queue);
+        while (true) {
+            ref = map.putIfAbsent(newRef, newRef);
+            if (ref == null)
+                return canonical;
+            T other = ref.get();
+            if (other != null)
+                return other; //another thread just added it
+            map.remove(ref, ref); //it was just collected
+        }
+    }
+
+    /** This removes the references to collected objects. */
+    private void expungeStale() {
+        Reference ref;
+        while ((ref = queue.poll()) != null)
+            map.remove(ref, ref);
+    }
+
+    /** This returns the number of canonical objects (some may have just been collected). */
+    public int size() {
+        expungeStale();
+        return map.size();
+    }
+
+    /** Test this class. */
+    public static void test() throws Exception {
+        String2.log("\n*** WeakInterner.test");
+        WeakInterner<String> interner = new WeakInterner(16, s -> new String((String)s));
+        String a = interner.intern(new String("abc"));
+        String b = interner.intern(new String("abc"));
+        Test.ensureTrue(a == b, "a and b should be the same object");
+        Test.ensureEqual(interner.size(), 1, "");
+
+        //many threads interning the same strings get the same objects
+        final String results[][] = new String[4][1000];
+        Thread threads[] = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int tt = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++)
+                    results[tt][i] = interner.intern("s" + i);
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++)
+            threads[t].join();
+        for (int t = 1; t < threads.length; t++)
+            for (int i = 0; i < 1000; i++)
+                Test.ensureTrue(results[0][i] == results[t][i], "t=" + t + " i=" + i);
+        Test.ensureEqual(interner.size(), 1001, "");
+
+        //unreferenced canonical strings are collected
+        for (int t = 0; t < threads.length; t++)
+            results[t] = null;
+        for (int i = 0; i < 10 && interner.size() > 1; i++) {
+            Math2.gcAndWait();
+            Math2.sleep(100);
+        }
+        Test.ensureEqual(interner.size(), 1, "");
+        Test.ensureTrue(a == interner.intern("abc"), "");
+        String2.log("WeakInterner.test finished successfully");
+    }
+}
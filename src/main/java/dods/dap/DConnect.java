@@ -242,17 +242,26 @@ public class DConnect {
         throw new DODSException("Connection cannot be opened");
     }
 
-    // check headers
-    String type = connection.getHeaderField("Content-Description");  //2019-03-29 HTTP name is case-insensitive. Bob has seen all 3 variants.
-    if (type == null)                                            //
-        type = connection.getHeaderField("Content-description"); //Bob has seen this. 
-    if (type == null)
-        type = connection.getHeaderField("content-description"); //was this
-
-    // System.err.println("Content Description: " + type);
-    handleContentDesc(is, type);
-
-    ver = new ServerVersion(connection.getHeaderField("xdods-server"));
+    try {
+        // check headers
+        String type = connection.getHeaderField("Content-Description");  //2019-03-29 HTTP name is case-insensitive. Bob has seen all 3 variants.
+        if (type == null)                                            //
+            type = connection.getHeaderField("Content-description"); //Bob has seen this. 
+        if (type == null)
+            type = connection.getHeaderField("content-description"); //was this
+
+        // System.err.println("Content Description: " + type);
+        handleContentDesc(is, type);
+
+        ver = new ServerVersion(connection.getHeaderField("xdods-server"));
+    } catch (IOException | DODSException | RuntimeException e) {
+        //the caller never gets the stream, so close it here (which releases a pooled connection)
+        try {
+            is.close();
+        } catch (Throwable t) {
+        }
+        throw e;
+    }
     //System.err.println("Server: " + ver + ": " + ver.getMajor() + "," +
     //	       ver.getMinor());
 
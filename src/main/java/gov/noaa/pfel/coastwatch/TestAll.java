@@ -1953,6 +1953,8 @@ WaitThenTryAgainException wttae;
         RegexFilenameFilter.test();  
         Tally.test();
         PersistentTable.test();
+        TaskQueue.test();
+        HttpClientPool.test();
 
         //test that THREDDS is up  (use ip name here, not numeric ip)
         try {
@@ -2025,6 +2027,7 @@ WaitThenTryAgainException wttae;
         //hdf.SdsWriter.main(null); //needs work
         DataHelper.test();  
         NcHelper.test();  
+        Nc3StreamWriter.test();
         OpendapHelper.test();  //few tests. relies on testing in classes that use it.
         Grid.main(null); 
         //GridDataSetCWOpendap.test();  //the files are no longer available since we are moving to thredds
@@ -2100,6 +2103,7 @@ WaitThenTryAgainException wttae;
         // EDDGridFromDap.testGraphics(); //do just before releases    
         //EDDGridFromBinaryFile.test(); not finished
         EDDGridFromErddap.test(); 
+        EDDGridChunkCache.test();
         EDDGridFromEtopo.test(true);
         //EDDGridAggregateExistingDimension.test();  //don't usually run...very slow
         EDDGridAggregateExistingDimension.testGenerateDatasetsXml();
@@ -2150,6 +2154,8 @@ WaitThenTryAgainException wttae;
         EDDTableAggregateRows.test(); 
         EDDTableCopy.test();
         //EDDTableCopyPost.test(); INACTIVE
+        TableWriterAllWithReduce.test();
+        ActionOutbox.test();
         EDDTable.test(); //mostly SOS server tests
         String2.pressEnterToContinue("In TestAll, nThreads=" + Thread.activeCount());
 
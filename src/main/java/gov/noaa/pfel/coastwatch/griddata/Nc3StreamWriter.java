@@ -0,0 +1,545 @@
+/*
+ * Nc3StreamWriter Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.griddata;
+
+import com.cohort.array.*;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Get netcdfAll-......jar from ftp://ftp.unidata.ucar.edu/pub
+ * and copy it to <context>/WEB-INF/lib renamed as netcdf-latest.jar.
+ * Put it in the classpath for the compiler and for Java.
+ */
+import ucar.nc2.*;
+
+/**
+ * This writes a NetCDF-3 file (classic format, or 64-bit offset format if needed)
+ * to an OutputStream, without a temporary file and without having all of the data
+ * in memory. Because the size of every dimension and variable is known
+ * before any data is written, the whole header (including each variable's
+ * begin offset) can be written first. Then the variables' data are written,
+ * in the order the variables were added.
+ *
+ * <p>Usage: addDimension() and addVariable() (and setGlobalAttributes()),
+ * then (optionally) fileSize(), then create(outputStream),
+ * then write() all of each variable's values (in row-major order),
+ * one variable after another, then close().
+ *
+ * <p>Only non-record variables are supported (there is no unlimited dimension).
+ * String variables aren't supported (the maximum String length would have to
+ * be known before the header is written).
+ * Attributes are converted as NcHelper.setAttributes(nc3Mode=true, ...) does.
+ *
+ * <p>See the format specification at
+ * https://www.unidata.ucar.edu/software/netcdf/docs/file_format_specifications.html .
+ *
+ * <p>An instance isn't thread-safe.
+ */
+public class Nc3StreamWriter {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    //the format's tags and nc_types
+    private final static int NC_DIMENSION = 0x0A, NC_VARIABLE = 0x0B, NC_ATTRIBUTE = 0x0C;
+    private final static int NC_BYTE = 1, NC_CHAR = 2, NC_SHORT = 3, NC_INT = 4,
+        NC_FLOAT = 5, NC_DOUBLE = 6;
+
+    /** The largest begin offset allowed in a classic format file. */
+    public final static long MAX_CLASSIC_OFFSET = Integer.MAX_VALUE;
+
+    /** The largest vsize of a variable (other than the last variable). */
+    public final static long MAX_VSIZE = 4294967292L; //2^32 - 4
+
+    private StringArray dimNames = new StringArray();
+    private IntArray dimLengths = new IntArray();
+    private Attributes globalAttributes = new Attributes();
+    private ArrayList<Var> vars = new ArrayList();
+
+    //set by layout()
+    private boolean offset64 = false;
+    private long fileSize = -1;
+
+    //set by create()
+    private DataOutputStream dos;
+    private int currentVar = 0;
+    private long nValuesWritten = 0; //for the current variable
+
+    /** A variable's definition. */
+    private static class Var {
+        String name;
+        Class elementClass; //of the values that will be passed to write()
+        int ncType;
+        int elementSize;
+        int dims[];
+        Attributes attributes;
+        long nValues;
+        long nBytes;
+        long begin;
+    }
+
+    /**
+     * This adds a dimension.
+     *
+     * @param name the dimension's name
+     * @param length the dimension's length (&gt;= 1)
+     * @return the dimension's number
+     */
+    public int addDimension(String name, int length) {
+        ensureDefineMode();
+        if (length < 1) //0 would make it the record dimension
+            throw new IllegalArgumentException(String2.ERROR +
+                " in Nc3StreamWriter.addDimension: " + name + " length=" + length + " must be >= 1.");
+        dimNames.add(name);
+        dimLengths.add(length);
+        return dimNames.size() - 1;
+    }
+
+    /**
+     * This sets the global attributes (which aren't changed by this class).
+     *
+     * @param atts the global attributes
+     */
+    public void setGlobalAttributes(Attributes atts) {
+        ensureDefineMode();
+        globalAttributes = atts;
+    }
+
+    /**
+     * This adds a variable.
+     *
+     * @param name the variable's name
+     * @param elementClass the class of the values that will be passed to write():
+     *    byte, char, short, int, long (stored as double, since NetCDF-3 files don't support longs),
+     *    float, or double.
+     * @param dims the variable's dimension numbers (from addDimension), in row-major order
+     * @param atts the variable's attributes (which aren't changed by this class)
+     * @return the variable's number
+     */
+    public int addVariable(String name, Class elementClass, int dims[], Attributes atts) {
+        ensureDefineMode();
+        Var var = new Var();
+        var.name = name;
+        var.elementClass = elementClass;
+        if      (elementClass == byte.class)   {var.ncType = NC_BYTE;   var.elementSize = 1;}
+        else if (elementClass == char.class)   {var.ncType = NC_CHAR;   var.elementSize = 1;}
+        else if (elementClass == short.class)  {var.ncType = NC_SHORT;  var.elementSize = 2;}
+        else if (elementClass == int.class)    {var.ncType = NC_INT;    var.elementSize = 4;}
+        else if (elementClass == float.class)  {var.ncType = NC_FLOAT;  var.elementSize = 4;}
+        else if (elementClass == long.class ||
+                 elementClass == double.class) {var.ncType = NC_DOUBLE; var.elementSize = 8;}
+        else throw new IllegalArgumentException(String2.ERROR +
+            " in Nc3StreamWriter.addVariable: " + name + " has an unsupported elementClass=" +
+            PrimitiveArray.elementClassToString(elementClass) + ".");
+        var.dims = dims;
+        var.attributes = atts == null? new Attributes() : atts;
+        var.nValues = 1;
+        for (int d = 0; d < dims.length; d++)
+            var.nValues *= dimLengths.get(dims[d]);
+        var.nBytes = var.nValues * var.elementSize;
+        vars.add(var);
+        return vars.size() - 1;
+    }
+
+    /**
+     * This returns the size (in bytes) of the file that will be written.
+     * After this is called, no more dimensions or variables can be added.
+     * Call this before committing to sending the file, because it throws
+     * an exception if the file would be too big for the NetCDF-3 format.
+     *
+     * @return the size (in bytes) of the file that will be written
+     * @throws SimpleException if a variable is too big
+     */
+    public long fileSize() throws Exception {
+        if (fileSize < 0)
+            layout();
+        return fileSize;
+    }
+
+    /**
+     * This writes the header.
+     *
+     * @param out the outputStream, ideally buffered. It will be closed by close().
+     * @throws Exception if trouble
+     */
+    public void create(OutputStream out) throws Exception {
+        fileSize();
+        if (dos != null)
+            throw new IllegalStateException(String2.ERROR + " in Nc3StreamWriter.create: create() was already called.");
+        dos = new DataOutputStream(out);
+        writeHeader(dos);
+        if (verbose) String2.log("Nc3StreamWriter.create nVars=" + vars.size() +
+            " offset64=" + offset64 + " fileSize=" + fileSize);
+        skipFinishedVars();
+    }
+
+    /**
+     * This writes some (or all) of the values of the current variable.
+     * Each variable's values must be written (in row-major order) before the next
+     * variable's values, and the variables must be written in the order they were added.
+     *
+     * @param pa the values, of the type specified by addVariable
+     *    (or of any numeric type, which will be converted to that type)
+     * @throws Exception if trouble (e.g., more values than the variable has)
+     */
+    public void write(PrimitiveArray pa) throws Exception {
+        if (dos == null)
+            throw new IllegalStateException(String2.ERROR + " in Nc3StreamWriter.write: create() wasn't called.");
+        int n = pa.size();
+        if (n == 0)
+            return;
+        if (currentVar >= vars.size())
+            throw new RuntimeException(String2.ERROR + " in Nc3StreamWriter.write: all variables have already been written.");
+        Var var = vars.get(currentVar);
+        if (nValuesWritten + n > var.nValues)
+            throw new RuntimeException(String2.ERROR + " in Nc3StreamWriter.write: " + var.name +
+                " has " + var.nValues + " values, but " + (nValuesWritten + n) + " were written.");
+
+        if (var.ncType == NC_CHAR) {
+            for (int i = 0; i < n; i++)
+                dos.write(String2.toIso88591Char((char)pa.getInt(i)));  //like netcdf-java: just the low byte
+        } else {
+            Class tClass = var.ncType == NC_DOUBLE? double.class : var.elementClass;
+            PrimitiveArray.factory(tClass, pa).writeDos(dos);
+        }
+        nValuesWritten += n;
+        if (nValuesWritten == var.nValues) {
+            currentVar++;
+            nValuesWritten = 0;
+            pad(dos, var.nBytes);
+            skipFinishedVars();
+        }
+    }
+
+    /**
+     * This ensures that all of the values were written, then flushes and closes the outputStream.
+     *
+     * @throws Exception if trouble (e.g., not all of the values were written)
+     */
+    public void close() throws Exception {
+        if (dos == null)
+            throw new IllegalStateException(String2.ERROR + " in Nc3StreamWriter.close: create() wasn't called.");
+        if (currentVar < vars.size())
+            throw new RuntimeException(String2.ERROR + " in Nc3StreamWriter.close: only " +
+                nValuesWritten + " of " + vars.get(currentVar).nValues + " values of " +
+                vars.get(currentVar).name + " were written.");
+        dos.close();
+    }
+
+    private void ensureDefineMode() {
+        if (fileSize >= 0)
+            throw new IllegalStateException(String2.ERROR +
+                " in Nc3StreamWriter: the file's layout has already been determined.");
+    }
+
+    /** This moves currentVar past variables with no values (only possible if there are no dims). */
+    private void skipFinishedVars() {
+        while (currentVar < vars.size() && vars.get(currentVar).nValues == 0)
+            currentVar++;
+    }
+
+    /**
+     * This determines the format (classic or 64-bit offset) and each variable's begin offset.
+     */
+    private void layout() throws Exception {
+        int nVars = vars.size();
+        for (int v = 0; v < nVars - 1; v++) {
+            Var var = vars.get(v);
+            if (padded(var.nBytes) > MAX_VSIZE)
+                throw new SimpleException(Math2.memoryTooMuchData + "  " +
+                    "In a NetCDF-3 file, each variable (except the last) must be less than 4 GB, but " +
+                    var.name + " is " + ((var.nBytes + 100000) / Math2.BytesPerMB) + " MB.");
+        }
+
+        offset64 = false;
+        long begin = setBegins(headerSize());
+        if (nVars > 0 && vars.get(nVars - 1).begin > MAX_CLASSIC_OFFSET) {
+            offset64 = true;
+            begin = setBegins(headerSize());
+        }
+        fileSize = begin;
+    }
+
+    /**
+     * This sets each variable's begin offset.
+     *
+     * @param headerSize the size of the header (in bytes)
+     * @return the file size
+     */
+    private long setBegins(long headerSize) {
+        long begin = headerSize;
+        for (int v = 0; v < vars.size(); v++) {
+            Var var = vars.get(v);
+            var.begin = begin;
+            begin += padded(var.nBytes);
+        }
+        return begin;
+    }
+
+    /** This returns the size (in bytes) of the header, given the current offset64 setting. */
+    private long headerSize() throws Exception {
+        DataOutputStream counter = new DataOutputStream(new OutputStream() {
+            public void write(int b) {}
+            public void write(byte b[], int off, int len) {}
+        });
+        writeHeader(counter);
+        return counter.size();
+    }
+
+    /** This writes the header (given the current offset64 and variables' begin offsets). */
+    private void writeHeader(DataOutputStream out) throws Exception {
+        //magic
+        out.write('C'); out.write('D'); out.write('F');
+        out.write(offset64? 2 : 1);
+        out.writeInt(0); //numrecs
+
+        //dim_list
+        int nDims = dimNames.size();
+        if (nDims == 0) {
+            writeAbsent(out);
+        } else {
+            out.writeInt(NC_DIMENSION);
+            out.writeInt(nDims);
+            for (int d = 0; d < nDims; d++) {
+                writeName(out, dimNames.get(d));
+                out.writeInt(dimLengths.get(d));
+            }
+        }
+
+        //gatt_list
+        writeAttributes(out, globalAttributes, true);
+
+        //var_list
+        int nVars = vars.size();
+        if (nVars == 0) {
+            writeAbsent(out);
+        } else {
+            out.writeInt(NC_VARIABLE);
+            out.writeInt(nVars);
+            for (int v = 0; v < nVars; v++) {
+                Var var = vars.get(v);
+                writeName(out, var.name);
+                out.writeInt(var.dims.length);
+                for (int d = 0; d < var.dims.length; d++)
+                    out.writeInt(var.dims[d]);
+                writeAttributes(out, var.attributes, false);
+                out.writeInt(var.ncType);
+                long vsize = padded(var.nBytes);
+                out.writeInt(vsize > MAX_VSIZE? -1 : (int)vsize); //-1 (2^32 - 1) is allowed for the last variable
+                if (offset64)
+                    out.writeLong(var.begin);
+                else out.writeInt((int)var.begin);
+            }
+        }
+    }
+
+    /**
+     * This writes an att_list, converting the attributes as
+     * NcHelper.setAttributes(nc3Mode=true, ...) does.
+     */
+    private void writeAttributes(DataOutputStream out, Attributes atts, boolean global) throws Exception {
+        StringArray names = new StringArray();
+        ArrayList<PrimitiveArray> values = new ArrayList();
+        String tNames[] = atts.getNames();
+        for (int ni = 0; ni < tNames.length; ni++) {
+            String tName = tNames[ni];
+            if (!String2.isSomething(tName) ||
+                (global && tName.equals("_NCProperties")))
+                continue;
+            PrimitiveArray tValue = atts.get(tName);
+            if (tValue == null || tValue.size() == 0 || tValue.toString().length() == 0)
+                continue; //do nothing
+            names.add(tName);
+            values.add(tValue);
+        }
+
+        int nAtts = names.size();
+        if (nAtts == 0) {
+            writeAbsent(out);
+            return;
+        }
+        out.writeInt(NC_ATTRIBUTE);
+        out.writeInt(nAtts);
+        for (int ai = 0; ai < nAtts; ai++) {
+            writeName(out, names.get(ai));
+            PrimitiveArray pa = values.get(ai);
+            if (pa instanceof StringArray || pa instanceof CharArray) {
+                //like netcdf-java, Strings are stored as UTF-8 chars
+                byte bar[] = String2.stringToUtf8Bytes(pa instanceof StringArray?
+                    Attributes.valueToNcString(pa) : new String(((CharArray)pa).toArray()));
+                out.writeInt(NC_CHAR);
+                out.writeInt(bar.length);
+                out.write(bar);
+                pad(out, bar.length);
+                continue;
+            }
+            if (pa instanceof LongArray)
+                pa = new DoubleArray(pa); //nc3 files don't support longs
+            Class tClass = pa.elementClass();
+            out.writeInt(
+                tClass == byte.class?  NC_BYTE :
+                tClass == short.class? NC_SHORT :
+                tClass == int.class?   NC_INT :
+                tClass == float.class? NC_FLOAT : NC_DOUBLE);
+            out.writeInt(pa.size());
+            int elementSize = pa.writeDos(out);
+            pad(out, (long)pa.size() * elementSize);
+        }
+    }
+
+    /** This writes a name: its length (in UTF-8 bytes), the UTF-8 bytes, and padding. */
+    private static void writeName(DataOutputStream out, String name) throws Exception {
+        byte bar[] = String2.stringToUtf8Bytes(name);
+        out.writeInt(bar.length);
+        out.write(bar);
+        pad(out, bar.length);
+    }
+
+    /** This writes ABSENT (ZERO ZERO), for an empty list. */
+    private static void writeAbsent(DataOutputStream out) throws Exception {
+        out.writeInt(0);
+        out.writeInt(0);
+    }
+
+    /** This returns nBytes rounded up to a multiple of 4. */
+    private static long padded(long nBytes) {
+        return (nBytes + 3) / 4 * 4;
+    }
+
+    /** This writes 0's so that nBytes is padded to a multiple of 4 bytes. */
+    private static void pad(DataOutputStream out, long nBytes) throws Exception {
+        for (long i = nBytes; i < padded(nBytes); i++)
+            out.write(0);
+    }
+
+
+    /**
+     * This tests this class by writing a file and reading it with netcdf-java.
+     */
+    public static void test() throws Throwable {
+        String2.log("\n*** Nc3StreamWriter.test...");
+        String fileName = File2.getSystemTempDirectory() + "Nc3StreamWriterTest.nc";
+
+        Attributes gAtts = new Attributes();
+        gAtts.add("title", "A test file\nwith 2 lines");
+        gAtts.add("_NCProperties", "skip me");
+        gAtts.add("empty", "");
+        gAtts.add("ints", new IntArray(new int[]{1, -2, 3}));
+        gAtts.add("longs", new LongArray(new long[]{5, 6}));
+        Attributes latAtts = new Attributes();
+        latAtts.add("units", "degrees_north");
+        Attributes sstAtts = new Attributes();
+        sstAtts.add("_FillValue", new FloatArray(new float[]{-999f}));
+        sstAtts.add("ids", new StringArray(new String[]{"a", "bc"}));
+
+        Nc3StreamWriter w = new Nc3StreamWriter();
+        w.setGlobalAttributes(gAtts);
+        int timeDim = w.addDimension("time", 2);
+        int latDim  = w.addDimension("latitude", 3);
+        w.addVariable("time", double.class, new int[]{timeDim}, null);
+        w.addVariable("latitude", float.class, new int[]{latDim}, latAtts);
+        w.addVariable("sst", float.class, new int[]{timeDim, latDim}, sstAtts);
+        w.addVariable("count", long.class, new int[]{timeDim, latDim}, null);
+        w.addVariable("flag", byte.class, new int[]{timeDim, latDim}, null);
+        long fileSize = w.fileSize();
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName));
+        w.create(out);
+        w.write(new DoubleArray(new double[]{0, 86400}));
+        w.write(new FloatArray(new float[]{10, 10.5f, 11}));
+        w.write(new FloatArray(new float[]{1.5f, 2.5f}));  //in chunks
+        w.write(new FloatArray(new float[]{3.5f, -999f, 5.5f, 6.5f}));
+        w.write(new LongArray(new long[]{1, 2, 3, 4, 5, Long.MAX_VALUE})); //MAX_VALUE is the missing value -> NaN
+        w.write(new ByteArray(new byte[]{1, 2, 3, 4, 5, 6}));
+        try {
+            w.write(new ByteArray(new byte[]{7}));
+            throw new RuntimeException("Shouldn't get here.");
+        } catch (RuntimeException e) {
+            Test.ensureTrue(e.getMessage().indexOf("all variables have already been written") >= 0, e.getMessage());
+        }
+        w.close();
+        Test.ensureEqual(File2.length(fileName), fileSize, "");
+
+        NetcdfFile nc = NcHelper.openFile(fileName);
+        try {
+            Test.ensureEqual(nc.findDimension("time").getLength(), 2, "");
+            Test.ensureEqual(nc.findDimension("latitude").getLength(), 3, "");
+
+            Attributes atts = new Attributes();
+            NcHelper.getGlobalAttributes(nc, atts);
+            Test.ensureEqual(atts.getString("title"), "A test file\nwith 2 lines", "");
+            Test.ensureEqual(atts.get("_NCProperties"), null, "");
+            Test.ensureEqual(atts.get("empty"), null, "");
+            Test.ensureEqual(atts.get("ints").toString(), "1, -2, 3", "");
+            Test.ensureEqual(atts.get("longs").toString(), "5.0, 6.0", "");
+
+            Variable var = nc.findVariable("latitude");
+            atts = new Attributes();
+            NcHelper.getVariableAttributes(var, atts);
+            Test.ensureEqual(atts.getString("units"), "degrees_north", "");
+            Test.ensureEqual(NcHelper.getPrimitiveArray(var).toString(), "10.0, 10.5, 11.0", "");
+
+            var = nc.findVariable("sst");
+            atts = new Attributes();
+            NcHelper.getVariableAttributes(var, atts);
+            Test.ensureEqual(atts.get("_FillValue").toString(), "-999.0", "");
+            Test.ensureEqual(atts.get("_FillValue").elementClass(), float.class, "");
+            Test.ensureEqual(atts.getString("ids"), "a\nbc", "");
+            Test.ensureEqual(NcHelper.getPrimitiveArray(var).toString(), 
+                "1.5, 2.5, 3.5, -999.0, 5.5, 6.5", "");
+
+            var = nc.findVariable("count");
+            PrimitiveArray pa = NcHelper.getPrimitiveArray(var);
+            Test.ensureEqual(pa.elementClass(), double.class, "");
+            Test.ensureEqual(pa.toString(), "1.0, 2.0, 3.0, 4.0, 5.0, NaN", "");
+
+            var = nc.findVariable("flag");
+            pa = NcHelper.getPrimitiveArray(var);
+            Test.ensureEqual(pa.elementClass(), byte.class, "");
+            Test.ensureEqual(pa.toString(), "1, 2, 3, 4, 5, 6", "");
+        } finally {
+            nc.close();
+        }
+        File2.delete(fileName);
+
+        //too big for NetCDF-3
+        w = new Nc3StreamWriter();
+        timeDim = w.addDimension("time", 100000);
+        latDim  = w.addDimension("latitude", 10000);
+        w.addVariable("a", double.class, new int[]{timeDim, latDim}, null);
+        w.addVariable("b", double.class, new int[]{timeDim, latDim}, null);
+        try {
+            w.fileSize();
+            throw new RuntimeException("Shouldn't get here.");
+        } catch (SimpleException e) {
+            Test.ensureTrue(e.getMessage().indexOf("a is 7629 MB") >= 0, e.getMessage());
+        }
+
+        //64-bit offsets
+        w = new Nc3StreamWriter();
+        timeDim = w.addDimension("time", 100000);
+        latDim  = w.addDimension("latitude", 3000);
+        w.addVariable("a", double.class, new int[]{timeDim, latDim}, null);
+        w.addVariable("b", double.class, new int[]{timeDim, latDim}, null);
+        Test.ensureEqual(w.fileSize(), 2 * 2400000000L + 148, "");
+        Test.ensureTrue(w.offset64, "");
+
+        String2.log("\n*** Nc3StreamWriter.test finished successfully");
+    }
+
+}
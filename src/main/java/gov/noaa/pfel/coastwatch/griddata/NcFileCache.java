@@ -0,0 +1,284 @@
+/*
+ * NcFileCache Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.griddata;
+
+import com.cohort.util.File2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import ucar.nc2.NetcdfFile;
+
+/**
+ * This is a bounded, LRU cache of open NetcdfFile handles, so that
+ * repeated reads of the same local file (e.g., each chunk of a griddap
+ * request or a burst of WMS tiles) don't re-open the file and re-parse
+ * its header (which is slow for HDF5/NetCDF-4 files).
+ *
+ * <p>A NetcdfFile isn't thread-safe, so a handle is used by only one
+ * thread at a time: acquire() returns an idle handle for the file (or opens
+ * a new one) and marks it as in use; release() makes it idle again.
+ * If several threads read the same file at the same time, each gets its own handle.
+ * Only idle handles count toward maxSize and are evicted (closed) in LRU order.
+ *
+ * <p>Entries are keyed by fullName and are only reused if the file's
+ * lastModified and length are unchanged.
+ * EDDGridFromFiles and EDDTableFromFiles lowUpdate also call invalidate()
+ * when they see that a file changed.
+ *
+ * <p>The cache is disabled (maxSize=0) until setMaxSize is called
+ * (EDStatic does this based on setup.xml's &lt;ncFileCacheSize&gt;).
+ * Remote files (e.g., http://) and .ncml files are never cached.
+ */
+public class NcFileCache {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The maximum number of idle handles. 0 disables the cache. */
+    private static int maxSize = 0;
+
+    //all of these are guarded by synchronized(NcFileCache.class)
+    private static LinkedHashMap<String,Entry> entries = new LinkedHashMap(16, 0.75f, true); //accessOrder=true
+    private static IdentityHashMap<NetcdfFile,Entry> inUse = new IdentityHashMap();
+    private static int nIdle = 0;
+    private static long nHits = 0, nMisses = 0, nEvictions = 0, nInvalidations = 0;
+
+    /** The handles for one file. */
+    private static class Entry {
+        String fullName;
+        long lastMod, length;
+        ArrayDeque<NetcdfFile> idle = new ArrayDeque();
+        int nInUse = 0;
+        boolean stale = false; //if true, handles are closed when released
+
+        Entry(String tFullName, long tLastMod, long tLength) {
+            fullName = tFullName;
+            lastMod = tLastMod;
+            length = tLength;
+        }
+    }
+
+    /**
+     * This sets the maximum number of idle handles which are kept open.
+     * 0 disables the cache (and closes all idle handles).
+     *
+     * @param tMaxSize  Invalid values (e.g., negative) are treated as 0.
+     */
+    public static synchronized void setMaxSize(int tMaxSize) {
+        maxSize = Math.max(0, tMaxSize);
+        evictIfNeeded();
+    }
+
+    /** This returns the maximum number of idle handles. */
+    public static int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * This returns an open NetcdfFile for fullName for exclusive use by the
+     * calling thread. When done with it, call release() (or discard() if there was trouble)
+     * instead of ncFile.close().
+     *
+     * @param fullName a local file name, an .ncml file, or a remote url
+     *    (see NcHelper.openFile)
+     * @return an open NetcdfFile
+     * @throws Exception if trouble
+     */
+    public static NetcdfFile acquire(String fullName) throws Exception {
+        if (maxSize <= 0 || String2.isRemote(fullName) || 
+            fullName.endsWith(".ncml")) //the underlying files may change
+            return NcHelper.openFile(fullName);
+
+        long lastMod = File2.getLastModified(fullName);
+        long length = File2.length(fullName);
+        Entry entry;
+        NetcdfFile ncFile = null;
+        synchronized(NcFileCache.class) {
+            entry = entries.get(fullName);
+            if (entry != null && (entry.lastMod != lastMod || entry.length != length)) {
+                //the file changed
+                staleEntry(entry);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(fullName, lastMod, length);
+                entries.put(fullName, entry);
+            }
+            if (entry.idle.size() > 0) {
+                ncFile = entry.idle.pollLast();
+                nIdle--;
+                nHits++;
+            } else {
+                nMisses++;
+            }
+            entry.nInUse++; //reserve it now, so the entry isn't removed
+        }
+
+        if (ncFile == null) {
+            //open it outside of synchronized block
+            try {
+                ncFile = NcHelper.openFile(fullName); //may throw exception
+            } catch (Exception e) {
+                synchronized(NcFileCache.class) {
+                    entry.nInUse--;
+                    removeIfUnused(entry);
+                }
+                throw e;
+            }
+        }
+        synchronized(NcFileCache.class) {
+            inUse.put(ncFile, entry);
+        }
+        return ncFile;
+    }
+
+    /**
+     * This returns a handle (from acquire()) to the cache so it can be reused.
+     * If the handle didn't come from the cache, or the file has changed, it is closed.
+     *
+     * @param ncFile an open NetcdfFile from acquire(). If null, nothing is done.
+     */
+    public static void release(NetcdfFile ncFile) {
+        if (ncFile == null)
+            return;
+        boolean close = true;
+        synchronized(NcFileCache.class) {
+            Entry entry = inUse.remove(ncFile);
+            if (entry != null) {
+                entry.nInUse--;
+                if (!entry.stale && maxSize > 0) {
+                    entry.idle.addLast(ncFile);
+                    nIdle++;
+                    close = false;
+                    evictIfNeeded();
+                } else {
+                    removeIfUnused(entry);
+                }
+            }
+        }
+        if (close)
+            closeQuietly(ncFile);
+    }
+
+    /**
+     * This closes a handle (from acquire()) and doesn't return it to the cache.
+     * Use this instead of release() if there was trouble reading the file.
+     *
+     * @param ncFile an open NetcdfFile from acquire(). If null, nothing is done.
+     */
+    public static void discard(NetcdfFile ncFile) {
+        if (ncFile == null)
+            return;
+        synchronized(NcFileCache.class) {
+            Entry entry = inUse.remove(ncFile);
+            if (entry != null) {
+                entry.nInUse--;
+                removeIfUnused(entry);
+            }
+        }
+        closeQuietly(ncFile);
+    }
+
+    /**
+     * This closes the idle handles for fullName and ensures that the
+     * handles that are in use will be closed when they are released.
+     * Call this when the file has changed or been deleted.
+     *
+     * @param fullName
+     */
+    public static void invalidate(String fullName) {
+        if (fullName == null)
+            return;
+        synchronized(NcFileCache.class) {
+            Entry entry = entries.get(fullName);
+            if (entry != null) {
+                nInvalidations++;
+                staleEntry(entry);
+            }
+        }
+    }
+
+    /** This closes all idle handles (e.g., when ERDDAP is shutting down). */
+    public static synchronized void clear() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            closeIdle(entry);
+            if (entry.nInUse > 0)
+                entry.stale = true;
+        }
+        entries.clear();
+    }
+
+    /** This returns a one line summary of the cache statistics, e.g., for the status page. */
+    public static synchronized String statsString() {
+        long total = Math.max(1, nHits + nMisses);
+        return "NcFileCache: maxSize=" + maxSize +
+            ", nIdle=" + nIdle +
+            ", nInUse=" + inUse.size() +
+            ", nHits=" + nHits + " (" + (nHits * 100 / total) + "%)" +
+            ", nMisses=" + nMisses +
+            ", nEvictions=" + nEvictions +
+            ", nInvalidations=" + nInvalidations;
+    }
+
+    /** Call this while synchronized: this removes the entry from entries and closes its idle handles. */
+    private static void staleEntry(Entry entry) {
+        entry.stale = true;
+        closeIdle(entry);
+        if (entries.get(entry.fullName) == entry)
+            entries.remove(entry.fullName);
+    }
+
+    /** Call this while synchronized: this closes an entry's idle handles. */
+    private static void closeIdle(Entry entry) {
+        while (entry.idle.size() > 0) {
+            closeQuietly(entry.idle.pollFirst());
+            nIdle--;
+        }
+    }
+
+    /** Call this while synchronized: this removes an entry that has no handles. */
+    private static void removeIfUnused(Entry entry) {
+        if (entry.nInUse == 0 && entry.idle.size() == 0 &&
+            entries.get(entry.fullName) == entry)
+            entries.remove(entry.fullName);
+    }
+
+    /** Call this while synchronized: this closes the least recently used idle handles if nIdle > maxSize. */
+    private static void evictIfNeeded() {
+        if (nIdle <= maxSize)
+            return;
+        Iterator<Entry> it = entries.values().iterator(); //LRU first
+        while (nIdle > maxSize && it.hasNext()) {
+            Entry entry = it.next();
+            while (nIdle > maxSize && entry.idle.size() > 0) {
+                closeQuietly(entry.idle.pollFirst());
+                nIdle--;
+                nEvictions++;
+            }
+            if (entry.nInUse == 0 && entry.idle.size() == 0)
+                it.remove();
+        }
+    }
+
+    private static void closeQuietly(NetcdfFile ncFile) {
+        try {
+            ncFile.close();
+        } catch (Throwable t) {
+            String2.log("NcFileCache: error while closing " + ncFile.getLocation() + "\n" +
+                MustBe.throwableToShortString(t));
+        }
+    }
+
+}
@@ -10,6 +10,7 @@ import com.cohort.util.*;
 import gov.noaa.pfel.coastwatch.griddata.DataHelper;
 import gov.noaa.pfel.coastwatch.griddata.FileNameUtility;
 import gov.noaa.pfel.coastwatch.griddata.Matlab;
+import gov.noaa.pfel.coastwatch.griddata.NcFileCache;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.util.DataStream;
@@ -155,6 +156,13 @@ public class Table  {
      */
     public static boolean debugMode = false;    
 
+    /**
+     * readASCII, readColumnarASCII and readJsonlCSV pack (see StringArray.pack()) 
+     * the String columns of tables with at least this many rows, since the Strings
+     * in big tables use lots of memory. Use Integer.MAX_VALUE to never pack them.
+     */
+    public static int packStringsMinNRows = 100000;
+
     /**
      * If true, readASCII allows data lines to have varying numbers of 
      * values and assumes that the missing values are from the end columns.
@@ -538,6 +546,28 @@ public class Table  {
             simplify(col);
     }
 
+    /**
+     * This packs (see StringArray.pack()) all of the StringArray columns,
+     * if nRows &gt;= minNRows. Packed columns use much less memory and 
+     * can still be read, sorted and subsetted, but they are unpacked 
+     * if they are changed, so do this after the table has been populated.
+     *
+     * @param minNRows the minimum nRows for the columns to be packed
+     * @return the number of columns which were packed
+     */
+    public int packStringColumns(int minNRows) {
+        if (nRows() < minNRows)
+            return 0;
+        int count = 0;
+        int nColumns = columns.size();
+        for (int col = 0; col < nColumns; col++) {
+            PrimitiveArray pa = getColumn(col);
+            if (pa instanceof StringArray && ((StringArray)pa).pack()) 
+                count++;
+        }
+        return count;
+    }
+
     /**
      * This runs StringArray.convertIsSomething2 (change all e.g., "N/A" to "") 
      * on the specified column, if it is a StringArray column.
@@ -2458,6 +2488,7 @@ public class Table  {
         //simplify the columns
         if (simplify) 
             simplify();
+        packStringColumns(packStringsMinNRows);
 
         if (reallyVerbose) String2.log("  Table.readASCII done. fileName=" + fileName + 
             " nColumns=" + nColumns() + " nRows=" + nRows() + 
@@ -2951,6 +2982,7 @@ public class Table  {
             //simplify
             if (simplify)
                 simplify();
+            packStringColumns(packStringsMinNRows);
 
             if (firstEmptyRow != -1 && firstEmptyRow < lastDataRow)
                 String2.log("\nWARNING: This method skipped a too-short row (row #" + firstEmptyRow + 
@@ -6347,6 +6379,29 @@ Dataset {
         String constraintAxisVarName, double constraintMin, double constraintMax, 
         boolean getMetadata) throws Exception {
 
+        readNDNc(fullName, loadVariableNames, standardizeWhat, 
+            constraintAxisVarName, constraintMin, constraintMax, 
+            0, Integer.MAX_VALUE, getMetadata);
+    }
+
+    /**
+     * This is like the other readNDNc, but only reads the part of the file 
+     * which includes the specified range of (flattened) rows
+     * (e.g., from EDDTableFromFiles' row group index).
+     * The results may have more rows than that (all of the rows for each 
+     * included index of the outermost dimension), but not fewer.
+     * The row range is ignored if only axis variables are requested.
+     *
+     * @param firstRow the first row (0..) of interest
+     * @param lastRow the last row (inclusive) of interest (Integer.MAX_VALUE for the last row)
+     * @see #readNDNc(String, String[], int, String, double, double, boolean)
+     */
+    public void readNDNc(String fullName, String loadVariableNames[], 
+        int standardizeWhat, 
+        String constraintAxisVarName, double constraintMin, double constraintMax, 
+        int firstRow, int lastRow,
+        boolean getMetadata) throws Exception {
+
         //clear the table
         clear();
         if (loadVariableNames == null)
@@ -6361,7 +6416,8 @@ Dataset {
         long time = System.currentTimeMillis();
         String errorInMethod = String2.ERROR + " in Table.readNDNc " + fullName + ":\n";
         //get information
-        NetcdfFile ncFile = NcHelper.openFile(fullName);
+        //use a cached handle, since e.g., EDDTableFromNcFiles often reads the same file repeatedly
+        NetcdfFile ncFile = NcFileCache.acquire(fullName);
         try {
             //load the global metadata
             if (getMetadata)
@@ -6475,6 +6531,25 @@ Dataset {
                     readOrigin = new int[nAxes]; //all 0's
                     //readShape = axisLengths
 
+                    //deal with firstRow and lastRow: restrict the outermost dimension
+                    if (firstRow > 0 || lastRow < Integer.MAX_VALUE) {
+                        long innerSize = 1;
+                        for (int a = 1; a < nAxes; a++) 
+                            innerSize *= axisLengths[a];
+                        if (innerSize > 0 && axisLengths[0] > 0) {
+                            int first0 = (int)Math.min(axisLengths[0] - 1, Math.max(0, firstRow) / innerSize);
+                            int last0  = (int)Math.min(axisLengths[0] - 1, lastRow / innerSize);
+                            if (first0 <= last0) {
+                                if (debugMode) String2.log("  rows " + firstRow + " to " + lastRow + 
+                                    " -> outer dimension indices " + first0 + " to " + last0);
+                                readOrigin[0] = first0;
+                                axisLengths[0] = last0 - first0 + 1;
+                                axisPAs[0].removeRange(last0 + 1, axisPAs[0].size());  
+                                axisPAs[0].removeRange(0, first0);
+                            }
+                        }
+                    }
+
                     //deal with constraintAxisVarName
                     int constraintCol = constraintAxisVarName == null? -1 : findColumnNumber(constraintAxisVarName);
                     int constraintFirst = -1;
@@ -6494,7 +6569,7 @@ Dataset {
                                 " last(inclusive)=" + constraintLast);
                             if (constraintFirst >= 0 && constraintLast >= constraintFirst) {
                                 //ok, use it
-                                readOrigin[ constraintCol] = constraintFirst;
+                                readOrigin[ constraintCol] += constraintFirst; //+= since outer dim may be restricted above
                                 axisLengths[constraintCol] = constraintLast - constraintFirst + 1;
                                 cpa.removeRange(constraintLast + 1, cpa.size());  
                                 cpa.removeRange(0, constraintFirst);
@@ -6694,10 +6769,12 @@ Dataset {
 
         } catch (Throwable t) {
             if (!reallyVerbose) String2.log(msg); 
+            NcFileCache.discard(ncFile); //don't reuse it
+            ncFile = null;
             throw t;
 
         } finally {            
-            ncFile.close(); 
+            NcFileCache.release(ncFile); //does nothing if null
             if (reallyVerbose) String2.log(msg);
         }
     }
@@ -24686,14 +24763,36 @@ String2.log(table.dataToString());
         if (conNames == null || conNames.size() == 0)
             return keep.cardinality();
 
+        if (keep.isEmpty())
+            return 0;
+
         //try to apply constraints
+        //All of the constraints are applied to one bit mask, so rows (64 at a time)
+        //which have been rejected by one constraint aren't tested again.
+        long words[] = keep.toLongArray();
         int cardinality = -1;  //it will be set below
         for (int i = 0; i < conNames.size(); i++) {
-            cardinality = lowApplyConstraint(false, idCol, 
-                conNames.get(i), conOps.get(i), conVals.get(i), keep);
-            if (cardinality == 0) 
+            String conName = conNames.get(i);
+            int conNameCol = findColumnNumber(conName);
+            if (conNameCol < 0) {
+                if (reallyVerbose && debugMode) 
+                    String2.log("    applyConstraint: constraintVariable=" + conName + 
+                        " isn't in the table (" + getColumnNamesCSVString() + ").");
+                cardinality = ConstraintPredicate.cardinality(words);
+                continue;
+            }
+            PrimitiveArray conPa = getColumn(conNameCol);
+            cardinality = ConstraintPredicate.compile(conPa, false, conOps.get(i), conVals.get(i))
+                .apply(conPa, words);
+            if (reallyVerbose) 
+                String2.log("    applyConstraint: after " + conName + conOps.get(i) + "\"" + 
+                    conVals.get(i) + "\", " + cardinality + " rows remain");
+            if (cardinality == 0) {
+                keep.clear();
                 return 0;
+            }
         }
+        keep.and(BitSet.valueOf(words)); //words is a subset of keep
         return cardinality;
     }
 
@@ -30037,6 +30136,7 @@ String2.log(table.dataToString());
                 }
             }
         }
+        packStringColumns(packStringsMinNRows);
 
         if (reallyVerbose) String2.log("  Table.readJsonlCSV(" + fullFileName + 
             ") done. nColumns=" + nColumns() + " nRows=" + nRows() + 
@@ -13,6 +13,7 @@ import com.cohort.util.Math2;
 import com.cohort.util.String2;
 import com.cohort.util.Test;
 
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.SSR;
 
 import gov.noaa.pmel.sgt.*;
@@ -152,12 +153,12 @@ public class Boundaries  {
         int resolution, double west, double east, 
         double south, double north) throws Exception {
 
-        String cachedName = String2.canonical(
+        String cachedName = 
             resolution + 
             "W" + String2.genEFormat10(west) +
             "E" + String2.genEFormat10(east) +
             "S" + String2.genEFormat10(south) +
-            "N" + String2.genEFormat10(north));
+            "N" + String2.genEFormat10(north);
         if (reallyVerbose) String2.log("  Boundaries.getSgtLine " + id + " request=" + cachedName);
         long time = System.currentTimeMillis();
         String tCoarse = "";
@@ -181,8 +182,9 @@ public class Boundaries  {
             //Thread-safe creation of the SGTLine 
             //  If there are almost simultaneous requests for the same one, 
             //  only one thread will make it.
-            //Cache is thread-safe so synch on cachedName, not cache.
-            synchronized(cachedName) {
+            //Cache is thread-safe so lock cachedName (with FileLocks), not cache.
+            FileLocks.Lock lock = FileLocks.lock("Boundaries " + id + " " + cachedName);
+            try {
 
                 //*** is SGTLine in cache?
                 sgtLine = (SGTLine)cache.get(cachedName);
@@ -211,6 +213,8 @@ public class Boundaries  {
                     nSuccesses++;
                     tSuccess = "*(alreadyInCache)";
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
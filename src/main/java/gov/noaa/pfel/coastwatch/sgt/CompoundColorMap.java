@@ -15,6 +15,7 @@ import com.cohort.util.Math2;
 import com.cohort.util.String2;
 import com.cohort.util.Test;
 
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.SSR;
 
 import gov.noaa.pmel.sgt.ColorMap;
@@ -671,7 +672,8 @@ public class CompoundColorMap extends ColorMap {
 
         //thread-safe creation of the file 
         //(If there are almost simultaneous requests for the same one, only one thread will make it.)
-        synchronized(String2.canonical(fullResultCpt)) {
+        FileLocks.Lock fileLock = FileLocks.lock(fullResultCpt);
+        try {
         
             //result file already exists?
             if (File2.touch(fullResultCpt)) {
@@ -829,6 +831,8 @@ public class CompoundColorMap extends ColorMap {
             File2.renameIfNewDoesntExist(fullResultCpt + randomInt, fullResultCpt); 
 
             return fullResultCpt;
+        } finally {
+            fileLock.unlock();
         }
 
     }
@@ -13,6 +13,7 @@ import com.cohort.util.String2;
 import com.cohort.util.Test;
 
 import gov.noaa.pfel.coastwatch.util.DataStream;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.SSR;
 
 import java.awt.geom.GeneralPath;
@@ -110,13 +111,13 @@ public class GSHHSNewOnHold  {
         char resolution, int desiredLevel, double westDeg, double eastDeg, 
         double southDeg, double northDeg, boolean addAntarcticCorners) throws Exception {
 
-        String cachedName = String2.canonical(
+        String cachedName = 
             "GSHHS" + resolution + desiredLevel +
             "W" + String2.genEFormat10(westDeg) +
             "E" + String2.genEFormat10(eastDeg) +
             "S" + String2.genEFormat10(southDeg) +
             "N" + String2.genEFormat10(northDeg) +
-            "A" + (addAntarcticCorners? "1" : "0"));
+            "A" + (addAntarcticCorners? "1" : "0");
         if (reallyVerbose) String2.log("  GSHHS.getGeneralPath request=" + cachedName);
         long time = System.currentTimeMillis();
         String tCoarse = "";
@@ -143,8 +144,9 @@ public class GSHHSNewOnHold  {
             //Thread-safe creation of the GeneralPath
             //  If there are almost simultaneous requests for the same one, 
             //  only one thread will make it.
-            //Cache is thread-safe so synch on cachedName, not cache.
-            synchronized(cachedName) {
+            //Cache is thread-safe so lock cachedName (with FileLocks), not cache.
+            FileLocks.Lock lock = FileLocks.lock(cachedName);
+            try {
 
                 //*** is GeneralPath in cache?
                 path = (GeneralPath)cache.get(cachedName);
@@ -171,6 +173,8 @@ public class GSHHSNewOnHold  {
                     tSuccess = "*(already in cache)";
                     nSuccesses++;
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -23,6 +23,7 @@ import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.hdf.HdfConstants;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.util.AttributedString2;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.SSR;
 
 import gov.noaa.pmel.sgt.*;
@@ -1961,13 +1962,14 @@ public class SgtMap  {
     public static Grid createTopographyGrid(String fullPrivateDirectory,
             double minX, double maxX, double minY, double maxY, 
             int graphWidthPixels, int graphHeightPixels) throws Exception {
-        String topoFileName = String2.canonical("Topography" +
+        String topoFileName = "Topography" +
             FileNameUtility.makeWESNString(minX, maxX, minY, maxY) +
-            FileNameUtility.makeNLonNLatString(graphWidthPixels, graphHeightPixels));
+            FileNameUtility.makeNLonNLatString(graphWidthPixels, graphHeightPixels);
         String fullTopoFileName = fullPrivateDirectory + topoFileName + ".grd";
 
-        //synchronize on canonical topoFileName, so >1 simultaneous request won't be duplicated
-        synchronized(topoFileName) {
+        //lock the file, so >1 simultaneous request won't be duplicated
+        FileLocks.Lock fileLock = FileLocks.lock(fullTopoFileName);
+        try {
 
             //these get reused a lot, so cache them
             //does the file already exist?
@@ -2024,6 +2026,8 @@ public class SgtMap  {
                 " nFromCache=" + topoFromCache + " nNotFromCache=" + topoNotFromCache + "*");
 
             return grid;
+        } finally {
+            fileLock.unlock();
         }
     }
 
@@ -0,0 +1,139 @@
+/*
+ * FileLocks Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.util;
+
+import com.cohort.util.Calendar2;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FileLocks provides mutual exclusion (within this JVM) for work on a file or directory,
+ * e.g., so that when there are almost simultaneous requests for the same cache file,
+ * only one thread makes it. Previously, ERDDAP synchronized on
+ * String2.canonical(fileName), which made every lookup in the canonical map
+ * contend with file work.
+ *
+ * <p>Use it like this:
+ * <pre>
+ * FileLocks.Lock lock = FileLocks.lock(fullName);
+ * try {
+ *     ...
+ * } finally {
+ *     lock.unlock();
+ * }
+ * </pre>
+ *
+ * <p>There is one ReentrantLock per name in use (so unrelated files never contend
+ * and nested locks on a directory and its files can't deadlock because of hash collisions).
+ * A lock is removed when no thread holds it or is waiting for it.
+ * If a thread waits longer than timeoutMillis, lock() throws a SimpleException.
+ * statsString() has the contention statistics.
+ */
+public class FileLocks {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The longest time a thread will wait for a lock. */
+    public static long timeoutMillis = 15 * Calendar2.MILLIS_PER_MINUTE;
+
+    private static class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        int users; //the threads holding or waiting for the lock. Guarded by locks.compute.
+    }
+
+    private final static ConcurrentHashMap<String, Entry> locks = new ConcurrentHashMap();
+    private final static AtomicLong nLocks = new AtomicLong();
+    private final static AtomicLong nContended = new AtomicLong();
+    private final static AtomicLong nTimeouts = new AtomicLong();
+    private final static AtomicLong totalWaitMillis = new AtomicLong();
+    private final static AtomicLong maxWaitMillis = new AtomicLong();
+
+    /** A held lock. Call unlock() (in a finally clause) when done. */
+    public static class Lock {
+        private final String name;
+        private final Entry entry;
+
+        private Lock(String tName, Entry tEntry) {
+            name = tName;
+            entry = tEntry;
+        }
+
+        /** This releases the lock. */
+        public void unlock() {
+            entry.lock.unlock();
+            release(name, entry);
+        }
+    }
+
+    /**
+     * This gets the lock for a name (e.g., a file's full name), waiting (up to timeoutMillis)
+     * if another thread has it. The lock is reentrant.
+     *
+     * @param name e.g., a file's full name
+     * @return the Lock. The caller must call lock.unlock() (in a finally clause).
+     * @throws SimpleException if timed out or interrupted
+     */
+    public static Lock lock(String name) {
+        Entry entry = locks.compute(name, (k, v) -> {
+            if (v == null)
+                v = new Entry();
+            v.users++;
+            return v;
+        });
+        nLocks.incrementAndGet();
+        if (entry.lock.tryLock())
+            return new Lock(name, entry);
+
+        //wait for it
+        nContended.incrementAndGet();
+        long time = System.currentTimeMillis();
+        boolean locked = false;
+        try {
+            locked = entry.lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        time = System.currentTimeMillis() - time;
+        totalWaitMillis.addAndGet(time);
+        maxWaitMillis.accumulateAndGet(time, Math::max);
+        if (verbose) String2.log("FileLocks waited " + time + "ms for " + name);
+        if (!locked) {
+            release(name, entry);
+            nTimeouts.incrementAndGet();
+            throw new SimpleException(String2.ERROR +
+                ": Timed out while waiting for another thread to finish with " + name);
+        }
+        return new Lock(name, entry);
+    }
+
+    private static void release(String name, Entry entry) {
+        locks.computeIfPresent(name, (k, v) -> v != entry || --v.users > 0? v : null);
+    }
+
+    /** The number of names which are currently locked (or being waited for). */
+    public static int size() {
+        return locks.size();
+    }
+
+    /** This returns the statistics for the status page. */
+    public static String statsString() {
+        long tContended = nContended.get();
+        return "FileLocks: nLocks=" + nLocks.get() + " nContended=" + tContended +
+            " nTimeouts=" + nTimeouts.get() +
+            " meanWait=" + (tContended == 0? 0 : totalWaitMillis.get() / tContended) +
+            "ms maxWait=" + maxWaitMillis.get() + "ms nHeldNow=" + locks.size();
+    }
+
+}
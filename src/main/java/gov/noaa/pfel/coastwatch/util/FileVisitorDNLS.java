@@ -684,9 +684,9 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
     public static long ensureInCache(String cacheFromUrl, String localDir, 
         String localFullName) throws Exception {
 
-        //synchronize on canonical localFullName -- so only 1 thread works on this file
-        localFullName = String2.canonical(localFullName);
-        synchronized (localFullName) {
+        //lock localFullName -- so only 1 thread works on this file
+        FileLocks.Lock fileLock = FileLocks.lock(localFullName);
+        try {
             //localFullName may have been downloaded by another thread while this thread
             //waited for synch lock.
             if (RegexFilenameFilter.touchFileAndRelated(localFullName)) { //returns true if localFullName exists
@@ -701,6 +701,8 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
             long fl = File2.length(localFullName);
             incrementPruneCacheDirSize(localDir, fl); 
             return fl;
+        } finally {
+            fileLock.unlock();
         }
     }
 
@@ -757,8 +759,8 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
         pruneCache(cacheDir, pruneCacheWhenGB * Math2.BytesPerGB, PRUNE_CACHE_DEFAULT_FRACTION);
 
         //decompress the file
-        cacheFullName = String2.canonical(cacheFullName); //so different threads will synch on same object
-        synchronized (cacheFullName) { 
+        FileLocks.Lock fileLock = FileLocks.lock(cacheFullName);
+        try {
             //check again (since waiting for synch lock): decompressed file already exists? 
             if (File2.isFile(cacheFullName)) {
                 File2.touch(cacheFullName); //ignore whether successful or not
@@ -785,6 +787,8 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
                 (System.currentTimeMillis() - time) + "ms cacheSize=" + (cs/Math2.BytesPerMB) + "MB" + 
                 "\n    from " + sourceFullName + 
                 "\n      to " + cacheFullName); 
+        } finally {
+            fileLock.unlock();
         }
         return cacheFullName;
     }
@@ -853,9 +857,9 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
         if (currentCacheSizeB >= 0 && currentCacheSizeB < thresholdCacheSizeB)
             return currentCacheSizeB;
 
-        //synchronize on canonical cacheDir -- so only 1 thread works on this dir
-        cacheDir = String2.canonical(cacheDir);
-        synchronized (cacheDir) {
+        //lock cacheDir -- so only 1 thread works on this dir
+        FileLocks.Lock dirLock = FileLocks.lock(cacheDir);
+        try {
             try {
                 //never delete if <PRUNE_CACHE_SAFE_SECONDS old
                 long goal = Math2.roundToLong(fraction * thresholdCacheSizeB);
@@ -901,8 +905,9 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
                     if (debugMode) String2.log("& pruneCache look at row=" + row);
 
                     //be as thread-safe as reasonably possible
-                    String localFullName = String2.canonical(dirSA.get(row) + nameSA.get(row));
-                    synchronized (localFullName) {
+                    String localFullName = dirSA.get(row) + nameSA.get(row);
+                    FileLocks.Lock fileLock = FileLocks.lock(localFullName);
+                    try {
                         long lastMod = File2.getLastModified(localFullName);  //in case changed very recently
                         long currentTimeSafe = System.currentTimeMillis() - PRUNE_CACHE_SAFE_MILLIS; //up-to-date
                         if (lastMod < currentTimeSafe) {  //file is old
@@ -910,6 +915,8 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
                             if (File2.simpleDelete(localFullName)) //simple because may be in use!
                                 currentCacheSizeB -= sizeAr[row];
                         }
+                    } finally {
+                        fileLock.unlock();
                     }
                     row--;
                 }
@@ -926,6 +933,8 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
             }
             setPruneCacheDirSize(cacheDir, currentCacheSizeB);
             return currentCacheSizeB;
+        } finally {
+            dirLock.unlock();
         }
     }
 
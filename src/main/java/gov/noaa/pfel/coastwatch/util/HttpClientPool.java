@@ -0,0 +1,627 @@
+/*
+ * HttpClientPool Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.util;
+
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * HttpClientPool is the process-wide, pooled, keep-alive HTTP client which SSR uses
+ * for http and https requests, so that repeated requests to the same host
+ * (e.g., an EDDGridFromDap dataset reading chunks from its source) reuse
+ * connections instead of paying for TCP and TLS setup every time.
+ *
+ * <ul>
+ * <li>There are at most maxConnections open connections, and at most
+ *   maxConnectionsPerHost to any one host. Requests beyond that wait for a connection.
+ * <li>Connections which have been idle for IDLE_SECONDS are closed.
+ * <li>Redirects (including http to https) are followed, up to MAX_REDIRECTS hops.
+ *   A 3xx response which isn't followed (e.g., it has no Location header)
+ *   is treated like an error response, so it is never read as the content.
+ * <li>The content isn't automatically decompressed; SSR does that
+ *   (as it does for other URLConnections).
+ * <li>The characters which java.net.URI rejects (e.g., spaces, quotes, &lt;, &gt;, |)
+ *   are percent-encoded (see encodeForUri), so the same urls work as with HttpURLConnection.
+ * <li>The standard Java system properties (e.g., http.proxyHost and https.proxyHost)
+ *   are used, as they are by HttpURLConnection.
+ * <li>A request waits at most connectionWaitMillis for a free connection
+ *   (not the connect timeout, which may be long), then fails.
+ * <li>A response whose inputStream is abandoned without being closed
+ *   is closed (and its connection released) once the inputStream is garbage collected,
+ *   so a leaked stream doesn't hold one of the host's connections forever.
+ * <li>Per-host statistics (number of requests, errors, and time until the response
+ *   headers are received) are gathered for statsString().
+ * </ul>
+ *
+ * <p>Responses are returned as HttpURLConnections, so code which works with
+ * URLConnections (e.g., getHeaderField, getResponseCode, getInputStream)
+ * doesn't have to change. Closing the inputStream after reading all of it
+ * returns the connection to the pool; closing it earlier closes the connection.
+ */
+public class HttpClientPool {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+    public static boolean reallyVerbose = false;
+
+    public final static int DEFAULT_MAX_CONNECTIONS = 200;
+    public final static int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+    public final static int DEFAULT_READ_TIMEOUT_MILLIS = 10 * 60 * 1000; //ten minutes
+    public final static int DEFAULT_CONNECTION_WAIT_MILLIS = 30 * 1000;   //thirty seconds
+    public final static int IDLE_SECONDS = 60;
+    /** The maximum number of redirects which are followed for one request. */
+    public final static int MAX_REDIRECTS = 10;
+    /** The maximum number of bytes of an error response's content which are kept. */
+    public final static int MAX_ERROR_BYTES = 100000;
+
+    private static volatile boolean enabled = true;
+    private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private static int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private static int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private static volatile int connectionWaitMillis = DEFAULT_CONNECTION_WAIT_MILLIS;
+
+    //these are made as needed (and are guarded by HttpClientPool.class)
+    private static PoolingHttpClientConnectionManager manager;
+    private static CloseableHttpClient client;
+
+    /** key=protocol+domain, e.g., https://coastwatch.pfeg.noaa.gov */
+    private static final ConcurrentHashMap<String, HostStats> hostStats = new ConcurrentHashMap();
+
+    /** The responses whose ReleasingInputStream hasn't been closed yet. */
+    private static final Map<LeakGuard, Boolean> openGuards = new ConcurrentHashMap();
+    private static final ReferenceQueue<ReleasingInputStream> abandoned = new ReferenceQueue();
+    private static final AtomicLong nAbandoned = new AtomicLong();
+    private static Thread reaper; //guarded by HttpClientPool.class
+
+    /**
+     * This sets the pool's parameters (e.g., from setup.xml).
+     * An existing pool is closed (in-flight responses finish normally);
+     * a new one will be made when needed.
+     *
+     * @param tEnabled if false, SSR will use a new HttpURLConnection for each request
+     * @param tMaxConnections the maximum total number of open connections
+     * @param tMaxConnectionsPerHost the maximum number of open connections to any one host
+     * @param tReadTimeoutMillis the maximum period of inactivity while reading a response
+     * @param tConnectionWaitMillis the maximum time to wait for a free connection
+     *   (when the host already has maxConnectionsPerHost connections in use)
+     */
+    public static synchronized void configure(boolean tEnabled, int tMaxConnections,
+        int tMaxConnectionsPerHost, int tReadTimeoutMillis, int tConnectionWaitMillis) {
+
+        enabled = tEnabled;
+        maxConnections = Math.max(1, tMaxConnections);
+        maxConnectionsPerHost = Math.max(1, Math.min(maxConnections, tMaxConnectionsPerHost));
+        readTimeoutMillis = tReadTimeoutMillis <= 0? DEFAULT_READ_TIMEOUT_MILLIS : tReadTimeoutMillis;
+        connectionWaitMillis = tConnectionWaitMillis <= 0? DEFAULT_CONNECTION_WAIT_MILLIS : tConnectionWaitMillis;
+        shutdown();
+        if (verbose) String2.log("HttpClientPool enabled=" + enabled +
+            " maxConnections=" + maxConnections +
+            " maxConnectionsPerHost=" + maxConnectionsPerHost +
+            " readTimeoutMillis=" + readTimeoutMillis +
+            " connectionWaitMillis=" + connectionWaitMillis);
+    }
+
+    /**
+     * This returns true if SSR should use the pool for this url.
+     *
+     * @param urlString
+     * @return true if the pool is enabled and the url is http or https
+     */
+    public static boolean isEnabledFor(String urlString) {
+        return enabled && urlString != null &&
+            (urlString.startsWith("http://") || urlString.startsWith("https://"));
+    }
+
+    /** This returns the shared client, making it if needed. */
+    private static synchronized CloseableHttpClient client() {
+        if (client == null) {
+            manager = new PoolingHttpClientConnectionManager(IDLE_SECONDS * 5L, TimeUnit.SECONDS);
+            manager.setMaxTotal(maxConnections);
+            manager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+            manager.setValidateAfterInactivity(2000);
+            client = HttpClients.custom()
+                .useSystemProperties()        //e.g., proxy settings
+                .setConnectionManager(manager)
+                .disableContentCompression()  //SSR requests and decodes gzip and deflate
+                .setRedirectStrategy(new LaxRedirectStrategy()) //all 3xx, GET and POST, http to https
+                .disableCookieManagement()
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_SECONDS, TimeUnit.SECONDS)
+                .build();
+        }
+        if (reaper == null) {
+            reaper = new Thread(HttpClientPool::closeAbandoned, "HttpClientPool reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+        return client;
+    }
+
+    /**
+     * This runs in the reaper thread. It closes the response of each ReleasingInputStream
+     * which was garbage collected without being closed, which returns its connection.
+     */
+    private static void closeAbandoned() {
+        while (true) {
+            try {
+                LeakGuard guard = (LeakGuard)abandoned.remove();
+                if (openGuards.remove(guard) != null) {
+                    nAbandoned.incrementAndGet();
+                    String2.log("HttpClientPool: closing a response whose inputStream wasn't closed: " +
+                        guard.url);
+                    guard.response.close();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                String2.log("HttpClientPool reaper: " + t.toString());
+            }
+        }
+    }
+
+    /**
+     * This closes the pool's connections. A new pool will be made if needed.
+     */
+    public static synchronized void shutdown() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (Throwable t) {
+            }
+            client = null;
+            manager = null;
+        }
+    }
+
+    /**
+     * This does a GET request.
+     *
+     * @param urlString The query MUST be already percentEncoded as needed.
+     * @param connectTimeOutMillis the timeout for opening a new connection.
+     *   The wait for a free connection from the pool is limited by connectionWaitMillis.
+     * @param requestCompression if true, gzip and deflate compression are requested
+     *   (but the response isn't decompressed)
+     * @param userAgent the User-Agent
+     * @return the response, as an HttpURLConnection
+     * @throws IOException if trouble
+     */
+    public static HttpURLConnection get(String urlString, int connectTimeOutMillis,
+        boolean requestCompression, String userAgent) throws IOException {
+
+        return execute(new HttpGet(encodeForUri(urlString)), connectTimeOutMillis,
+            requestCompression, userAgent);
+    }
+
+    /**
+     * This does a POST request.
+     *
+     * @param urlString where the content will be sent
+     * @param contentType e.g., "application/x-www-form-urlencoded; charset=UTF-8"
+     * @param content the content, which will be sent as UTF-8 bytes
+     * @param requestCompression if true, gzip and deflate compression are requested
+     *   (but the response isn't decompressed)
+     * @param userAgent the User-Agent
+     * @return the response, as an HttpURLConnection
+     * @throws IOException if trouble
+     */
+    public static HttpURLConnection post(String urlString, String contentType, String content,
+        boolean requestCompression, String userAgent) throws IOException {
+
+        HttpPost post = new HttpPost(encodeForUri(urlString));
+        post.setEntity(new ByteArrayEntity(String2.stringToUtf8Bytes(content),
+            ContentType.parse(contentType)));
+        return execute(post, -1, requestCompression, userAgent);
+    }
+
+    /**
+     * HttpURLConnection sends a url's characters as is, but HttpGet and HttpPost
+     * use java.net.URI, which rejects some characters (e.g., in an unencoded user query
+     * like time&gt;=2020-01-01&amp;station="a b" which is forwarded to a remote ERDDAP).
+     * So this percent-encodes (as UTF-8) the characters in the path, query, and fragment
+     * which URI rejects: control characters, space, " &lt; &gt; \ ^ ` { | } [ ],
+     * non-ASCII characters, % which isn't the start of a %hh encoding, 
+     * and # after the first #. Everything else (including valid %hh encodings) is unchanged.
+     *
+     * @param urlString
+     * @return urlString, with the characters which URI rejects percent-encoded
+     */
+    public static String encodeForUri(String urlString) {
+        int po = urlString.indexOf("://");
+        po = po < 0? 0 : urlString.indexOf('/', po + 3); //don't change the authority (e.g., [::1])
+        if (po < 0)
+            return urlString;
+        int n = urlString.length();
+        StringBuilder sb = null;
+        boolean inFragment = false;
+        for (int i = po; i < n; i++) {
+            int ch = urlString.codePointAt(i);
+            boolean ok;
+            if (ch == '%') {
+                ok = i + 2 < n && 
+                    Character.digit(urlString.charAt(i + 1), 16) >= 0 &&
+                    Character.digit(urlString.charAt(i + 2), 16) >= 0;
+            } else if (ch == '#') {
+                ok = !inFragment;
+                inFragment = true;
+            } else {
+                ok = ch > 32 && ch < 127 && "\"<>\\^`{|}[]".indexOf(ch) < 0;
+            }
+            if (ok) {
+                if (sb != null)
+                    sb.append((char)ch);
+                continue;
+            }
+            if (sb == null) 
+                sb = new StringBuilder(urlString.substring(0, i));
+            byte bytes[] = String2.stringToUtf8Bytes(new String(Character.toChars(ch)));
+            for (int b = 0; b < bytes.length; b++) 
+                sb.append('%' + String2.zeroPad(Integer.toHexString(bytes[b] & 0xFF), 2).toUpperCase());
+            if (ch >= Character.MIN_SUPPLEMENTARY_CODE_POINT)
+                i++; //the second char of the surrogate pair
+        }
+        return sb == null? urlString : sb.toString();
+    }
+
+    private static HttpURLConnection execute(HttpRequestBase request, int connectTimeOutMillis,
+        boolean requestCompression, String userAgent) throws IOException {
+
+        if (connectTimeOutMillis <= 0)
+            connectTimeOutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        request.setConfig(RequestConfig.custom()
+            .setConnectTimeout(connectTimeOutMillis)
+            .setConnectionRequestTimeout(connectionWaitMillis)
+            .setSocketTimeout(readTimeoutMillis)
+            .setRedirectsEnabled(true)
+            .setMaxRedirects(MAX_REDIRECTS)
+            .build());
+        if (requestCompression)
+            request.setHeader("Accept-Encoding", "gzip, deflate"); //compress, x-compress, x-gzip
+        request.setHeader("User-Agent", userAgent);
+
+        URL url = request.getURI().toURL();
+        String host = url.getProtocol() + "://" + url.getAuthority();
+        HostStats stats = hostStats.get(host);
+        if (stats == null) {
+            hostStats.putIfAbsent(host, new HostStats());
+            stats = hostStats.get(host);
+        }
+        long time = System.currentTimeMillis();
+        CloseableHttpResponse response;
+        try {
+            response = client().execute(request);
+        } catch (IOException e) {
+            stats.record(System.currentTimeMillis() - time, true);
+            throw e;
+        }
+        PooledConnection conn = new PooledConnection(url, response);
+        stats.record(System.currentTimeMillis() - time, conn.getResponseCode() >= 300 &&
+            conn.getResponseCode() != 304);
+        if (reallyVerbose) String2.log("HttpClientPool " + request.getMethod() + " " + url +
+            " code=" + conn.getResponseCode() + " time=" + (System.currentTimeMillis() - time) + "ms");
+        return conn;
+    }
+
+    /**
+     * This tests encodeForUri (without making any requests).
+     */
+    public static void test() throws Throwable {
+        String2.log("\nHttpClientPool.test()");
+
+        //an unencoded user query which is forwarded to a remote ERDDAP
+        String url = "https://example.com/erddap/tabledap/x.nccsv?" +
+            "time,station&time>=2020-01-01&station=\"a b\"&x=~\"a|b\"";
+        String encoded = encodeForUri(url);
+        Test.ensureEqual(encoded, 
+            "https://example.com/erddap/tabledap/x.nccsv?" +
+            "time,station&time%3E=2020-01-01&station=%22a%20b%22&x=~%22a%7Cb%22", "");
+        HttpGet get = new HttpGet(encoded); //URI would throw an exception for url
+        Test.ensureEqual(get.getURI().getRawQuery(), 
+            "time,station&time%3E=2020-01-01&station=%22a%20b%22&x=~%22a%7Cb%22", "");
+        Test.ensureEqual(get.getURI().getQuery(), 
+            "time,station&time>=2020-01-01&station=\"a b\"&x=~\"a|b\"", "");
+        new HttpPost(encodeForUri(url)); 
+
+        //griddap brackets, a space in a file name, a bad %, non-ASCII, and a second #
+        Test.ensureEqual(encodeForUri("http://example.com/erddap/griddap/x.nc?sst[0:2][(10):(20)]"),
+            "http://example.com/erddap/griddap/x.nc?sst%5B0:2%5D%5B(10):(20)%5D", "");
+        Test.ensureEqual(encodeForUri("http://example.com/data/a b.nc"),
+            "http://example.com/data/a%20b.nc", "");
+        Test.ensureEqual(encodeForUri("http://example.com/a?x=100%&y=%2"),
+            "http://example.com/a?x=100%25&y=%252", "");
+        Test.ensureEqual(encodeForUri("http://example.com/caf\u00e9?a=\u20ac\ud83c\udf0a"),
+            "http://example.com/caf%C3%A9?a=%E2%82%AC%F0%9F%8C%8A", "");
+        Test.ensureEqual(encodeForUri("http://example.com/a#b#c"), 
+            "http://example.com/a#b%23c", "");
+
+        //unchanged: valid urls (including %hh encodings) and the authority
+        url = "https://example.com:8443/erddap/search/index.html?searchFor=sea%20surface&page=1#top";
+        Test.ensureTrue(encodeForUri(url) == url, "");
+        url = "http://[::1]:8080/erddap/index.html";
+        Test.ensureTrue(encodeForUri(url) == url, "");
+        Test.ensureEqual(encodeForUri("http://example.com"), "http://example.com", "");
+    }
+
+    /**
+     * This returns a summary of the pool and the busiest hosts.
+     */
+    public static String statsString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("HttpClientPool: enabled=" + enabled);
+        PoolStats poolStats = null;
+        synchronized (HttpClientPool.class) {
+            if (manager != null)
+                poolStats = manager.getTotalStats();
+        }
+        if (poolStats != null)
+            sb.append(" leased=" + poolStats.getLeased() +
+                " available=" + poolStats.getAvailable() +
+                " pending=" + poolStats.getPending() +
+                " max=" + poolStats.getMax());
+        sb.append(" maxPerHost=" + maxConnectionsPerHost + " nHosts=" + hostStats.size() +
+            " nOpenStreams=" + openGuards.size() + " nAbandonedStreams=" + nAbandoned.get());
+
+        //the 10 hosts with the most requests
+        ArrayList<Map.Entry<String, HostStats>> entries = new ArrayList(hostStats.entrySet());
+        Collections.sort(entries, (a, b) -> Long.compare(
+            b.getValue().nRequests.get(), a.getValue().nRequests.get()));
+        for (int i = 0; i < Math.min(10, entries.size()); i++) {
+            HostStats stats = entries.get(i).getValue();
+            long n = stats.nRequests.get();
+            sb.append("\n  " + entries.get(i).getKey() +
+                " nRequests=" + n + " nErrors=" + stats.nErrors.get() +
+                " avgMillis=" + (n == 0? 0 : stats.totalMillis.get() / n) +
+                " maxMillis=" + stats.maxMillis.get());
+        }
+        return sb.toString();
+    }
+
+    /** The statistics for one host. */
+    static class HostStats {
+        final AtomicLong nRequests = new AtomicLong();
+        final AtomicLong nErrors = new AtomicLong();
+        final AtomicLong totalMillis = new AtomicLong();
+        final AtomicLong maxMillis = new AtomicLong();
+
+        void record(long millis, boolean error) {
+            nRequests.incrementAndGet();
+            if (error)
+                nErrors.incrementAndGet();
+            totalMillis.addAndGet(millis);
+            long max;
+            while (millis > (max = maxMillis.get()) && !maxMillis.compareAndSet(max, millis)) {
+            }
+        }
+    }
+
+    /**
+     * An HttpURLConnection view of an HttpClient response.
+     * The request has already been made, so connect() does nothing.
+     */
+    static class PooledConnection extends HttpURLConnection {
+        private final CloseableHttpResponse response;
+        private final Header headers[];
+        private InputStream inputStream;  //null if error (or unfollowed redirect) response
+        private byte errorBytes[];        //null if not error response
+
+        PooledConnection(URL tUrl, CloseableHttpResponse tResponse) throws IOException {
+            super(tUrl);
+            response = tResponse;
+            headers = response.getAllHeaders();
+            responseCode = response.getStatusLine().getStatusCode();
+            responseMessage = response.getStatusLine().getReasonPhrase();
+            connected = true;
+
+            HttpEntity entity = response.getEntity();
+            if (responseCode >= 300 && responseCode != 304) {
+                //keep (the start of) the error content, so the connection is released now
+                errorBytes = new byte[0];
+                try {
+                    if (entity != null) {
+                        InputStream es = entity.getContent();
+                        byte buffer[] = new byte[Math.min(MAX_ERROR_BYTES, 8192)];
+                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                        int nBytes;
+                        while (baos.size() < MAX_ERROR_BYTES && (nBytes = es.read(buffer)) > 0)
+                            baos.write(buffer, 0, nBytes);
+                        errorBytes = baos.toByteArray();
+                    }
+                } finally {
+                    response.close();
+                }
+            } else if (entity == null) {
+                response.close();
+                inputStream = new ByteArrayInputStream(new byte[0]);
+            } else {
+                inputStream = new ReleasingInputStream(entity.getContent(), response, tUrl);
+            }
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+            try {
+                response.close();
+            } catch (Throwable t) {
+            }
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public String getResponseMessage() {
+            return responseMessage;
+        }
+
+        /** Like HttpURLConnection, this returns the last value of the header (case-insensitive). */
+        @Override
+        public String getHeaderField(String name) {
+            if (name == null)
+                return null;
+            for (int i = headers.length - 1; i >= 0; i--)
+                if (name.equalsIgnoreCase(headers[i].getName()))
+                    return headers[i].getValue();
+            return null;
+        }
+
+        /** Like HttpURLConnection, header 0 is the status line (with a null key). */
+        @Override
+        public String getHeaderFieldKey(int n) {
+            return n <= 0 || n > headers.length? null : headers[n - 1].getName();
+        }
+
+        @Override
+        public String getHeaderField(int n) {
+            if (n == 0)
+                return response.getStatusLine().toString();
+            return n < 0 || n > headers.length? null : headers[n - 1].getValue();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            LinkedHashMap<String, List<String>> map = new LinkedHashMap();
+            for (int i = 0; i < headers.length; i++) {
+                List<String> list = map.get(headers[i].getName());
+                if (list == null) {
+                    list = new ArrayList();
+                    map.put(headers[i].getName(), list);
+                }
+                list.add(headers[i].getValue());
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * Like HttpURLConnection, this throws an IOException if the response code is 400+.
+         * This also throws an IOException for a redirect (3xx, except 304) which
+         * wasn't followed, so the redirect's content isn't mistaken for the data.
+         */
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (inputStream == null)
+                throw new IOException("Server returned HTTP response code: " + responseCode +
+                    " for URL: " + url);
+            return inputStream;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return errorBytes == null? null : new ByteArrayInputStream(errorBytes);
+        }
+    }
+
+    /**
+     * If this is closed after all of the content has been read, the connection
+     * is returned to the pool. If it is closed earlier, the connection is closed
+     * (so the rest of the content doesn't have to be read).
+     * If it is garbage collected without being closed, the reaper thread closes the response.
+     */
+    static class ReleasingInputStream extends FilterInputStream {
+        private final CloseableHttpResponse response;
+        private final LeakGuard guard;
+        private boolean eof = false;
+        private boolean closed = false;
+
+        ReleasingInputStream(InputStream in, CloseableHttpResponse tResponse, URL tUrl) {
+            super(in);
+            response = tResponse;
+            guard = new LeakGuard(this, tResponse, tUrl);
+            openGuards.put(guard, Boolean.TRUE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0)
+                eof = true;
+            return b;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n < 0)
+                eof = true;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            openGuards.remove(guard);
+            guard.clear();
+            try {
+                if (eof)
+                    in.close();   //releases the connection back to the pool
+            } finally {
+                response.close(); //if not already released, this closes the connection
+            }
+        }
+    }
+
+    /**
+     * This refers to a ReleasingInputStream (without keeping it reachable)
+     * and to its response, so the response can be closed if the stream is abandoned.
+     */
+    static class LeakGuard extends PhantomReference<ReleasingInputStream> {
+        final CloseableHttpResponse response;
+        final URL url;
+
+        LeakGuard(ReleasingInputStream stream, CloseableHttpResponse tResponse, URL tUrl) {
+            super(stream, abandoned);
+            response = tResponse;
+            url = tUrl;
+        }
+    }
+}
@@ -1607,19 +1607,9 @@ public class SSR {
                 requestCompression = false;
         if (reallyVerbose) 
             String2.log("getUrlConnInputStream " + urlString + " requestCompression=" + requestCompression);  
-        URL turl = new URL(urlString); 
-        URLConnection conn = turl.openConnection();
-        if (requestCompression) 
-            conn.setRequestProperty("Accept-Encoding", 
-                "gzip, deflate"); //compress, x-compress, x-gzip
-        conn.setRequestProperty("User-Agent", "Mozilla/5.0 ERDDAP/" + erddapVersion);
-        //String2.log("request: " + String2.toString(conn.getRequestProperties()));
         if (connectTimeOutMillis <= 0)
             connectTimeOutMillis = 10 * Calendar2.SECONDS_PER_MINUTE * 1000; //ten minutes, in ms
-        conn.setConnectTimeout(connectTimeOutMillis);
-        //I think setReadTimeout is any period of inactivity.
-        conn.setReadTimeout(10 * Calendar2.SECONDS_PER_MINUTE * 1000); //ten minutes, in ms
-        conn.connect();      
+        URLConnection conn = openUrlConnection(urlString, connectTimeOutMillis, requestCompression);
 
         //The automatic redirect handling won't handle http to https.
         //So if error is 301, 302, 303 and there is a "location" header field: redirect
@@ -1631,29 +1621,27 @@ public class SSR {
                     (reallyVerbose? "" : //info was shown above, else show now ...
                         "getUrlConnInputStream " + urlString + " requestCompression=" + requestCompression + "\n") +  
                     "  Warning: HTTP status code=" + code);
-            if (code >= 301 && code <= 308 && code != 304) {  //HTTP_MOVED_TEMP HTTP_MOVED_PERM HTTP_SEE_OTHER  (304 Not Modified)
+            //HttpClientPool follows redirects itself, so this is just for other connections.
+            //Follow each hop (e.g., http to https, then to another path), up to a limit.
+            int nRedirects = 0;
+            while (code >= 301 && code <= 308 && code != 304 &&  //HTTP_MOVED_TEMP HTTP_MOVED_PERM HTTP_SEE_OTHER  (304 Not Modified)
+                   nRedirects < HttpClientPool.MAX_REDIRECTS) {
                 String location = conn.getHeaderField("location");
-                if (String2.isSomething(location)) {
-                    String2.log("  redirect to " + location);
-                    turl = new URL(location); 
-                    conn = turl.openConnection();
-                    conn.setRequestProperty("Accept-Encoding", 
-                        "gzip, deflate"); //compress, x-compress, x-gzip
-                    conn.setRequestProperty("User-Agent", "Mozilla/5.0 ERDDAP/" + erddapVersion);
-                    //String2.log("request: " + String2.toString(conn.getRequestProperties()));
-                    conn.setConnectTimeout(connectTimeOutMillis);
-                    //I think setReadTimeout is any period of inactivity.
-                    conn.setReadTimeout(10 * Calendar2.SECONDS_PER_MINUTE * 1000); //ten minutes, in ms
-                    conn.connect();      
-                    if (conn instanceof HttpURLConnection) {
-                        httpUrlConn = (HttpURLConnection)conn;
-                        code = httpUrlConn.getResponseCode();
-                        if (code != 200) 
-                            String2.log("  Warning: after redirect, HTTP status code=" + code);
-                    }
-                }
+                if (!String2.isSomething(location)) 
+                    break;
+                location = new URL(conn.getURL(), location).toString(); //it may be relative
+                nRedirects++;
+                String2.log("  redirect to " + location);
+                httpUrlConn.disconnect(); //don't leave the original connection open
+                conn = openUrlConnection(location, connectTimeOutMillis, true);
+                if (!(conn instanceof HttpURLConnection)) 
+                    break;
+                httpUrlConn = (HttpURLConnection)conn;
+                code = httpUrlConn.getResponseCode();
+                if (code != 200) 
+                    String2.log("  Warning: after redirect, HTTP status code=" + code);
+            }
             //Do little here. Java throws good Exception eg, when later try getInputStream 
-            }            
         }        
 
         InputStream is = getBufferedInputStream(urlString, conn);
@@ -1664,6 +1652,37 @@ public class SSR {
     }
 
 
+    /**
+     * This opens a connection to a url and sends the request.
+     * http and https requests use the shared HttpClientPool (if it is enabled),
+     * so connections to the same host are reused.
+     * Other urls (e.g., file:// and ftp://) use a new URLConnection.
+     *
+     * @param urlString The query MUST be already percentEncoded as needed.
+     * @param connectTimeOutMillis the time out for opening a connection in milliseconds
+     * @param requestCompression if true, this requests gzip or deflate compression
+     * @return the connection (an HttpURLConnection for http and https urls)
+     * @throws Exception if trouble
+     */
+    private static URLConnection openUrlConnection(String urlString, int connectTimeOutMillis,
+            boolean requestCompression) throws Exception {
+        if (HttpClientPool.isEnabledFor(urlString)) 
+            return HttpClientPool.get(urlString, connectTimeOutMillis, requestCompression,
+                "Mozilla/5.0 ERDDAP/" + erddapVersion);
+
+        URLConnection conn = (new URL(urlString)).openConnection();
+        if (requestCompression) 
+            conn.setRequestProperty("Accept-Encoding", 
+                "gzip, deflate"); //compress, x-compress, x-gzip
+        conn.setRequestProperty("User-Agent", "Mozilla/5.0 ERDDAP/" + erddapVersion);
+        //String2.log("request: " + String2.toString(conn.getRequestProperties()));
+        conn.setConnectTimeout(connectTimeOutMillis);
+        //I think setReadTimeout is any period of inactivity.
+        conn.setReadTimeout(10 * Calendar2.SECONDS_PER_MINUTE * 1000); //ten minutes, in ms
+        conn.connect();      
+        return conn;
+    }
+
     /**
      * This returns the inputStream from the connection, with a content decoder
      * if needed.
@@ -1675,8 +1694,9 @@ public class SSR {
      */
     public static InputStream getBufferedInputStream(String urlString, URLConnection con) throws Exception {
         String encoding = con.getContentEncoding();
+        InputStream is = null;
         try {
-            InputStream is = new BufferedInputStream(con.getInputStream());
+            is = new BufferedInputStream(con.getInputStream());
             //String2.log("url = " + urlString + "\n" +  //diagnostic
             //  "  headerFields=" + String2.toString(conn.getHeaderFields()));
             //    "encoding=" + encoding + "\n" +
@@ -1694,6 +1714,13 @@ public class SSR {
 
             return is;
         } catch (Exception e) {
+            //e.g., a bad gzip header: close the stream (which releases a pooled connection)
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (Throwable t) {
+                }
+            }
             if (con instanceof HttpURLConnection) {
                 //try to read errorStream and append to e.
                 HttpURLConnection httpUrlCon = (HttpURLConnection)con;
@@ -1786,7 +1813,12 @@ public class SSR {
      */
     public static BufferedReader getBufferedUrlReader(String urlString) throws Exception {
         Object[] o3 = getUrlConnBufferedInputStream(urlString, 120000);       
-        return new BufferedReader(new InputStreamReader((InputStream)o3[1], (String)o3[2])); 
+        try {
+            return new BufferedReader(new InputStreamReader((InputStream)o3[1], (String)o3[2])); 
+        } catch (Exception e) { //e.g., unsupported charset
+            ((InputStream)o3[1]).close();
+            throw e;
+        }
     }
 
     /**
@@ -2378,6 +2410,18 @@ public class SSR {
     public static Object[] getPostInputStream(String urlString, 
         String contentType, String content) throws Exception {
         //modified from https://stackoverflow.com/questions/3324717/sending-http-post-request-in-java 
+        boolean requestCompression = true;
+        if (requestCompression && urlString.indexOf('?') < 0 && //no parameters
+            File2.isCompressedExtension(File2.getExtension(urlString)))
+            requestCompression = false;
+
+        if (HttpClientPool.isEnabledFor(urlString)) {
+            HttpURLConnection con = HttpClientPool.post(urlString, contentType, content,
+                requestCompression, "Mozilla/5.0 ERDDAP/" + erddapVersion);
+            InputStream is = getBufferedInputStream(urlString, con);
+            String charset = getCharset(urlString, con);
+            return new Object[]{con, is, charset};
+        }
 
         //create the connection where we're going to send the file
         URL url = new URL(urlString);
@@ -2386,10 +2430,6 @@ public class SSR {
         //set the appropriate HTTP parameters
         //con.setRequestProperty("Content-Length", "" + content.length()); //not required, and I'm confused about pre/post encoding length
         con.setRequestProperty("Content-Type", contentType);
-        boolean requestCompression = true;
-        if (requestCompression && urlString.indexOf('?') < 0 && //no parameters
-            File2.isCompressedExtension(File2.getExtension(urlString)))
-            requestCompression = false;
         if (requestCompression)
             con.setRequestProperty("Accept-Encoding", 
                 "gzip, deflate"); //no compress, x-compress, since zip Entries are hard to deal with
@@ -2425,8 +2465,14 @@ public class SSR {
             po < 0? urlString : urlString.substring(0, po), 
             "application/x-www-form-urlencoded; charset=UTF-8", 
             po < 0? "" : urlString.substring(po + 1));
-        BufferedReader bufReader = new BufferedReader(
-            new InputStreamReader((InputStream)ob3[1], (String)ob3[2]));
+        BufferedReader bufReader;
+        try {
+            bufReader = new BufferedReader(
+                new InputStreamReader((InputStream)ob3[1], (String)ob3[2]));
+        } catch (Exception e) { //e.g., unsupported charset
+            ((InputStream)ob3[1]).close();
+            throw e;
+        }
         return readerToString(urlString, bufReader);
     }
 
@@ -40,6 +40,7 @@ public class SimpleXMLReader {
     private String endWhiteSpace = "";
     private StringBuilder tagBuffer = new StringBuilder();
     private long lineNumber = 1, tagNumber = 0;
+    private StringBuilder recording = null; //if not null, all chars read are appended
 
     /**
      * This constructor ensures that the first tag starts with "&lt;?xml " and 
@@ -131,6 +132,47 @@ public class SimpleXMLReader {
         return lineNumber;
     }
 
+    /**
+     * This sets the current line number, e.g., so that a reader of an 
+     * extract of a larger xml file reports the line numbers in the larger file.
+     *
+     * @param tLineNumber the new current line number
+     */
+    public void setLineNumber(long tLineNumber) {
+        lineNumber = tLineNumber;
+    }
+
+    /**
+     * This starts recording the raw characters (unparsed, 
+     * with entities, comments, and CDATA as is) which are read from now on.
+     */
+    public void startRecording() {
+        recording = new StringBuilder();
+    }
+
+    /**
+     * This stops recording and returns the raw characters which were read 
+     * since startRecording() was called.
+     * E.g., call startRecording() right after a start tag is read, then
+     * skipToStackSize(stackSize()), then stopRecording() to get the
+     * raw content and end tag of that element.
+     *
+     * @return the raw characters (or "" if startRecording wasn't called)
+     */
+    public String stopRecording() {
+        String s = recording == null? "" : recording.toString();
+        recording = null;
+        return s;
+    }
+
+    /** This reads one char from the reader (and records it if recording). */
+    private int read() throws Exception {
+        int iCh = reader.read();
+        if (recording != null && iCh >= 0) 
+            recording.append((char)iCh);
+        return iCh;
+    }
+
     /**
      * This returns the number of times nextTag has been called.
      *
@@ -331,13 +373,13 @@ public class SimpleXMLReader {
                 tagBuffer.setLength(0); //must be inside the do loop
 
                 //read 'content' to start of tag "<"
-                int iCh = reader.read(); 
+                int iCh = read(); 
                 if (iCh < 0) throw new Exception("end of file"); 
                 else if (iCh == 10) lineNumber++;
                 char ch = (char)iCh;
                 while (ch != '<') {
                     if (ch != '\r') contentBuffer.append(ch);
-                    iCh = reader.read(); 
+                    iCh = read(); 
                     if (iCh < 0) throw new Exception("end of file");
                     else if (iCh == 10) lineNumber++;
                     ch = (char)iCh;
@@ -346,13 +388,13 @@ public class SimpleXMLReader {
                 //read to end of tag ">", or end of comment tag "-->", or end of cdata <![CDATA[  ]]> 
                 boolean done = false;
                 while (!done) {
-                    iCh = reader.read(); 
+                    iCh = read(); 
                     if (iCh < 0) throw new Exception("end of file");
                     else if (iCh == 10) lineNumber++;
                     ch = (char)iCh;
                     while (ch != '>') {
                         if (ch != '\r') tagBuffer.append(ch);
-                        iCh = reader.read(); 
+                        iCh = read(); 
                         if (iCh < 0) throw new Exception("end of file"); 
                         else if (iCh == 10) lineNumber++;
                         ch = (char)iCh;
@@ -13,22 +13,56 @@ import com.cohort.util.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * This class tallies events (which are identified by a category name
  * and an attribute name).
  * Basically, you create the Tally object; call add() repeatedly; call toString().
+ * The counts are LongAdders, so add() is cheap and exact even when many threads
+ * add to the same attribute at once.
+ *
+ * <p>addSince() counts an event once, in the baseName + SINCE_STARTUP category.
+ * The baseName + SINCE_LAST_DAILY_REPORT and 
+ * baseName + SINCE_LAST_MAJOR_LOAD_DATASETS categories are derived from it:
+ * remove() of a derived category saves a copy of the current counts,
+ * and the derived category's counts are the differences from that copy.
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2006-05-01
  *
  */
 public class Tally  {
     //thread-safe; use default nConcurrent
-    protected ConcurrentHashMap mainHashMap = new ConcurrentHashMap(); 
+    //key=categoryName, value=ConcurrentHashMap with key=attributeName, value=LongAdder
+    protected ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> mainHashMap = 
+        new ConcurrentHashMap(); 
+
+    /** The suffixes of the categories of the counts from addSince(). */
+    public final static String SINCE_STARTUP                  = " (since startup)";
+    public final static String SINCE_LAST_DAILY_REPORT        = " (since last daily report)";
+    public final static String SINCE_LAST_MAJOR_LOAD_DATASETS = " (since last Major LoadDatasets)";
+
+    /** The counts (since startup) of one addSince() baseName, and the copies from the last resets. */
+    private static class SinceCounts {
+        final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap(); //use default nConcurrent
+        volatile boolean hasMajorLoadDatasets = false;
+        volatile HashMap<String, Long> atLastDailyReport = null;        //null if not reset
+        volatile HashMap<String, Long> atLastMajorLoadDatasets = null;  //null if not reset
+
+        HashMap<String, Long> copy() {
+            HashMap<String, Long> map = new HashMap();
+            for (Map.Entry<String, LongAdder> me : counts.entrySet())
+                map.put(me.getKey(), Long.valueOf(me.getValue().sum()));
+            return map;
+        }
+    }
+
+    //key=baseName
+    protected ConcurrentHashMap<String, SinceCounts> sinceHashMap = new ConcurrentHashMap();
 
     /**
      * This adds a tally mark.
@@ -49,22 +83,130 @@ public class Tally  {
             attributeName = "(null)";
 
         //get the category's hashMap
-        ConcurrentHashMap hashMap = (ConcurrentHashMap)mainHashMap.get(categoryName);
-        if (hashMap == null) {
-            hashMap = new ConcurrentHashMap(); //use default nConcurrent
-            mainHashMap.put(categoryName, hashMap);
+        ConcurrentHashMap<String, LongAdder> hashMap = mainHashMap.get(categoryName);
+        if (hashMap == null) 
+            hashMap = mainHashMap.computeIfAbsent(categoryName, 
+                k -> new ConcurrentHashMap()); //use default nConcurrent
+
+        //get the attribute's counter
+        LongAdder counter = hashMap.get(attributeName);
+        if (counter == null) 
+            counter = hashMap.computeIfAbsent(attributeName, k -> new LongAdder());
+        counter.increment();
+    }
+
+    /**
+     * This adds a tally mark to the baseName + SINCE_STARTUP category 
+     * and (since they are derived from it) the baseName + SINCE_LAST_DAILY_REPORT category.
+     *
+     * @param baseName the category name without the suffix, e.g., "Protocol".
+     *    If baseName is null or "", nothing is done.
+     * @param attributeName If attributeName is null, it is logged as "(null)".
+     */
+    public void addSince(String baseName, String attributeName) {
+        addSince(baseName, attributeName, false);
+    }
+
+    /**
+     * This is like addSince(baseName, attributeName), but if sinceMajorLoadDatasets,
+     * the baseName + SINCE_LAST_MAJOR_LOAD_DATASETS category is kept, too.
+     */
+    public void addSince(String baseName, String attributeName, 
+        boolean sinceMajorLoadDatasets) {
+        if (baseName == null || baseName.length() == 0) {
+            String2.log(String2.ERROR + " in Tally.addSince: baseName not specified.");
+            return;
+        }
+        if (attributeName == null)
+            attributeName = "(null)";
+
+        SinceCounts since = sinceHashMap.get(baseName);
+        if (since == null)
+            since = sinceHashMap.computeIfAbsent(baseName, k -> new SinceCounts());
+        if (sinceMajorLoadDatasets && !since.hasMajorLoadDatasets)
+            since.hasMajorLoadDatasets = true;
+
+        LongAdder counter = since.counts.get(attributeName);
+        if (counter == null) 
+            counter = since.counts.computeIfAbsent(attributeName, k -> new LongAdder());
+        counter.increment();
+    }
+
+    /**
+     * If categoryName is one of the categories derived from addSince(), this returns 
+     * {SinceCounts, suffix}, else null.
+     */
+    private Object[] findSince(String categoryName) {
+        String suffixes[] = {SINCE_STARTUP, SINCE_LAST_DAILY_REPORT, SINCE_LAST_MAJOR_LOAD_DATASETS};
+        for (String suffix : suffixes) {
+            if (categoryName.endsWith(suffix)) {
+                SinceCounts since = sinceHashMap.get(
+                    categoryName.substring(0, categoryName.length() - suffix.length()));
+                if (since == null ||
+                    (suffix == SINCE_LAST_MAJOR_LOAD_DATASETS && !since.hasMajorLoadDatasets))
+                    return null;
+                return new Object[]{since, suffix};
+            }
         }
+        return null;
+    }
 
-        //get the attribute's intObject
-        IntObject intObject = (IntObject)hashMap.get(attributeName);
-        if (intObject == null)
-            hashMap.put(attributeName, new IntObject(1));
-        else intObject.i++;
+    /**
+     * This returns a derived category's counts (the attributes with count &gt; 0).
+     *
+     * @param suffix from findSince()
+     */
+    private static HashMap<String, Long> sinceCounts(SinceCounts since, String suffix) {
+        HashMap<String, Long> base = 
+            suffix == SINCE_LAST_DAILY_REPORT?        since.atLastDailyReport :
+            suffix == SINCE_LAST_MAJOR_LOAD_DATASETS? since.atLastMajorLoadDatasets : null;
+        HashMap<String, Long> map = new HashMap();
+        for (Map.Entry<String, LongAdder> me : since.counts.entrySet()) {
+            Long old = base == null? null : base.get(me.getKey());
+            long count = me.getValue().sum() - (old == null? 0 : old.longValue());
+            if (count > 0)
+                map.put(me.getKey(), Long.valueOf(count));
+        }
+        return map;
+    }
+
+    /**
+     * This returns the current count for an attribute.
+     *
+     * @param categoryName 
+     * @param attributeName 
+     * @return the count (0 if the category or attribute doesn't exist)
+     */
+    public long get(String categoryName, String attributeName) {
+        Object since[] = categoryName == null? null : findSince(categoryName);
+        if (since != null) {
+            Long count = sinceCounts((SinceCounts)since[0], (String)since[1]).get(attributeName);
+            return count == null? 0 : count.longValue();
+        }
+        ConcurrentHashMap<String, LongAdder> hashMap = mainHashMap.get(categoryName);
+        LongAdder counter = hashMap == null || attributeName == null? null : 
+            hashMap.get(attributeName);
+        return counter == null? 0 : counter.sum();
+    }
 
+    /**
+     * This returns the names of the categories (in no particular order).
+     */
+    public String[] categoryNames() {
+        StringArray names = new StringArray(mainHashMap.keySet().iterator());
+        for (Map.Entry<String, SinceCounts> me : sinceHashMap.entrySet()) {
+            names.add(me.getKey() + SINCE_STARTUP);
+            names.add(me.getKey() + SINCE_LAST_DAILY_REPORT);
+            if (me.getValue().hasMajorLoadDatasets)
+                names.add(me.getKey() + SINCE_LAST_MAJOR_LOAD_DATASETS);
+        }
+        return names.toArray();
     }
 
     /**
      * This removes a category.
+     * For a category derived from addSince() (e.g., "Protocol (since last daily report)"),
+     * this resets the category's counts to 0 (the "(since startup)" counts are unchanged).
      *
      * @param categoryName  It isn't an error if it doesn't exist.
      *    Case sensitive.
@@ -74,6 +216,17 @@ public class Tally  {
             String2.log(String2.ERROR + " in Tally.remove: categoryName not specified.");
             return;
         }
+        Object since[] = findSince(categoryName);
+        if (since != null) {
+            SinceCounts sinceCounts = (SinceCounts)since[0];
+            if (since[1] == SINCE_LAST_DAILY_REPORT) 
+                sinceCounts.atLastDailyReport = sinceCounts.copy();
+            else if (since[1] == SINCE_LAST_MAJOR_LOAD_DATASETS) 
+                sinceCounts.atLastMajorLoadDatasets = sinceCounts.copy();
+            else sinceHashMap.remove(categoryName.substring(0, 
+                categoryName.length() - SINCE_STARTUP.length()));
+            return;
+        }
 
         //get the category's hashMap
         mainHashMap.remove(categoryName);
@@ -99,10 +252,9 @@ public class Tally  {
      */
     public String toString(int maxAttributeNames) {
         //get the categoryNames
-        Set categorySet = mainHashMap.keySet();
-        if (categorySet == null || categorySet.size() == 0) 
+        String categoryArray[] = categoryNames();
+        if (categoryArray.length == 0) 
             return "Tally system has no entries.\n\n";
-        Object categoryArray[] = categorySet.toArray();
 
         //sort the categoryNames
         Arrays.sort(categoryArray, String2.STRING_COMPARATOR_IGNORE_CASE);
@@ -124,19 +276,29 @@ public class Tally  {
      */
     public ArrayList getSortedNamesAndCounts(String categoryName) {
 
-        ConcurrentHashMap hashMap = (ConcurrentHashMap)mainHashMap.get(categoryName);
-        if (hashMap == null)
-            return null;
-
         //make a StringArray of attributeNames and IntArray of counts
         StringArray attributeNames = new StringArray();
         IntArray counts = new IntArray();
-        Iterator it = hashMap.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry me = (Map.Entry)it.next();
-            attributeNames.add((String)me.getKey());
-            counts.add(((IntObject)me.getValue()).i);
-        }          
+        Object since[] = categoryName == null? null : findSince(categoryName);
+        if (since != null) {
+            HashMap<String, Long> map = sinceCounts((SinceCounts)since[0], (String)since[1]);
+            if (map.isEmpty())
+                return null;
+            for (Map.Entry<String, Long> me : map.entrySet()) {
+                attributeNames.add(me.getKey());
+                counts.add(Math2.narrowToInt(me.getValue().longValue()));
+            }
+        } else {
+            ConcurrentHashMap<String, LongAdder> hashMap = mainHashMap.get(categoryName);
+            if (hashMap == null)
+                return null;
+            Iterator it = hashMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry me = (Map.Entry)it.next();
+                attributeNames.add((String)me.getKey());
+                counts.add(Math2.narrowToInt(((LongAdder)me.getValue()).sum()));
+            }          
+        }
 
         //sort by counts
         ArrayList arrayList = new ArrayList();
@@ -221,5 +383,42 @@ public class Tally  {
             "cat c\n" +
             "    att 3: 1  (100%)\n" +
             "\n", "");
+
+        //the derived categories
+        tally = new Tally();
+        tally.addSince("Protocol", "griddap");
+        tally.addSince("Protocol", "griddap");
+        tally.addSince("Protocol", "tabledap");
+        tally.addSince("IP", "1.2.3.4", true);
+        String names[] = tally.categoryNames();
+        Arrays.sort(names);
+        Test.ensureEqual(String2.toCSSVString(names), 
+            "IP (since last Major LoadDatasets), IP (since last daily report), IP (since startup), " +
+            "Protocol (since last daily report), Protocol (since startup)", "");
+        Test.ensureEqual(tally.toString("Protocol (since last daily report)", 50),
+            "Protocol (since last daily report)\n" +
+            "    griddap: 2  (67%)\n" +
+            "    tabledap: 1  (33%)\n" +
+            "\n", "");
+        Test.ensureEqual(tally.toString("Protocol (since last Major LoadDatasets)", 50), "", "");
+        tally.remove("Protocol (since last daily report)");
+        tally.addSince("Protocol", "tabledap");
+        Test.ensureEqual(tally.toString("Protocol (since last daily report)", 50),
+            "Protocol (since last daily report)\n" +
+            "    tabledap: 1  (100%)\n" +
+            "\n", "");
+        Test.ensureEqual(tally.get("Protocol (since last daily report)", "griddap"), 0, "");
+        Test.ensureEqual(tally.get("Protocol (since startup)", "griddap"), 2, "");
+        Test.ensureEqual(tally.get("Protocol (since startup)", "tabledap"), 2, "");
+        tally.addSince("IP", "1.2.3.4", true);
+        tally.remove("IP (since last Major LoadDatasets)");
+        tally.addSince("IP", "5.6.7.8", true);
+        Test.ensureEqual(tally.toString("IP (since last Major LoadDatasets)", 50),
+            "IP (since last Major LoadDatasets)\n" +
+            "    5.6.7.8: 1  (100%)\n" +
+            "\n", "");
+        Test.ensureEqual(tally.get("IP (since last daily report)", "1.2.3.4"), 2, "");
+        tally.remove("IP (since startup)");
+        Test.ensureEqual(tally.toString("IP (since last daily report)", 50), "", "");
     }
 }
@@ -23,6 +23,8 @@ import com.cohort.util.String2;
 import com.cohort.util.Test;
 import com.cohort.util.XML;
 
+import com.codahale.metrics.Gauge;
+
 import gov.noaa.pfel.coastwatch.griddata.DataHelper;
 import gov.noaa.pfel.coastwatch.griddata.Grid;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
@@ -30,6 +32,7 @@ import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.sgt.CompoundColorMap;
 import gov.noaa.pfel.coastwatch.sgt.SgtMap;
 import gov.noaa.pfel.coastwatch.sgt.SgtUtil;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
 import gov.noaa.pfel.coastwatch.util.HtmlWidgets;
 import gov.noaa.pfel.coastwatch.util.RegexFilenameFilter;
@@ -67,11 +70,14 @@ import java.util.BitSet;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -87,11 +93,8 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.WildcardQuery;
 
@@ -191,6 +194,14 @@ public class Erddap extends HttpServlet {
     public ConcurrentHashMap<String,ConcurrentHashMap> categoryInfo = new ConcurrentHashMap(16, 0.75f, 4);  
     public long lastClearedFailedLogins = System.currentTimeMillis();
 
+    /** The background thread (and the pending datasetIDs) for requestWmsWarmup. */
+    protected ExecutorService wmsWarmupExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "WmsWarmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    protected Set<String> wmsWarmupPending = ConcurrentHashMap.newKeySet();
+
 
     /**
      * The constructor.
@@ -302,6 +313,23 @@ public class Erddap extends HttpServlet {
                 BPD + "subscriptionsV1.txt", 48, //maxHoursPending, 
                 EDStatic.preferredErddapUrl); //prefer https url                
 
+        //make the outbox for subscription and onChange actions
+        try {
+            EDStatic.actionOutbox = new ActionOutbox(BPD + "actionOutbox.txt", 
+                EDStatic.nActionThreads);
+        } catch (Throwable t) {
+            String2.log("WARNING: unable to make the ActionOutbox, so actions will be done " +
+                "by LoadDatasets:\n" + MustBe.throwableToString(t));
+        }
+
+        //gauges for /metrics
+        Metrics.registerGauge("datasets.grid",  (Gauge<Integer>)() -> gridDatasetHashMap.size());
+        Metrics.registerGauge("datasets.table", (Gauge<Integer>)() -> tableDatasetHashMap.size());
+        Metrics.registerGauge("memory.inUseBytes", (Gauge<Long>)() -> Math2.getMemoryInUse());
+        Metrics.registerGauge("tasks.unfinished", (Gauge<Integer>)() -> EDStatic.nUnfinishedTasks());
+        Metrics.registerGauge("actions.waiting", (Gauge<Integer>)() -> 
+            EDStatic.actionOutbox == null? 0 : EDStatic.actionOutbox.size());
+
         //copy all <contentDirectory>images/ (and subdirectories) files to imageDir (and subdirectories)
         String imageFiles[] = RegexFilenameFilter.recursiveFullNameList(
             EDStatic.contentDirectory + "images/", ".+", false);
@@ -353,6 +381,7 @@ public class Erddap extends HttpServlet {
      * runLoadDatasets is created by the Erddap constructor.
      */
     public void destroy() {
+        wmsWarmupExecutor.shutdownNow();
         EDStatic.destroy();
     }
 
@@ -450,6 +479,10 @@ public class Erddap extends HttpServlet {
         long doGetTime = System.currentTimeMillis();
         int requestNumber = totalNRequests.incrementAndGet();
         String ipAddress = "NotSetYet"; //won't be null
+        String metricsProtocol = null;
+        String metricsStatus = Metrics.FAILED;
+        boolean admitted = false;
+        Metrics.requestStarted();
 
         try {
 
@@ -458,8 +491,7 @@ public class Erddap extends HttpServlet {
             {
                 String tLoggedInAs = loggedInAs == null?          "no/http" : 
                     loggedInAs.equals(EDStatic.loggedInAsHttps)?  EDStatic.loggedInAsHttps : "yes";
-                EDStatic.tally.add("Requester Is Logged In (since startup)", tLoggedInAs);
-                EDStatic.tally.add("Requester Is Logged In (since last daily report)", tLoggedInAs);
+                EDStatic.tally.addSince("Requester Is Logged In", tLoggedInAs);
             }
 
             String tErddapUrl = EDStatic.erddapUrl(loggedInAs);
@@ -515,12 +547,11 @@ public class Erddap extends HttpServlet {
                      (ipAddress1 != null && EDStatic.requestBlacklist.contains(ipAddress1)) ||   //#.#.#.*
                      (ipAddress2 != null && EDStatic.requestBlacklist.contains(ipAddress2)))) {  //#.#.*.*
                     //use full ipAddress, to help id user                //odd capitilization sorts better
-                    EDStatic.tally.add("Requester's IP Address (Blacklisted) (since last Major LoadDatasets)", ipAddress);
-                    EDStatic.tally.add("Requester's IP Address (Blacklisted) (since last daily report)", ipAddress);
-                    EDStatic.tally.add("Requester's IP Address (Blacklisted) (since startup)", ipAddress);
+                    EDStatic.tally.addSince("Requester's IP Address (Blacklisted)", ipAddress, true);
                     String2.log("}}}}#" + requestNumber + " Requester is on the datasets.xml requestBlacklist.");
                     if (EDStatic.slowDownTroubleMillis > 0)
                         Math2.sleep(EDStatic.slowDownTroubleMillis);
+                    metricsStatus = Metrics.BLACKLISTED;
                     EDStatic.lowSendError(response, HttpServletResponse.SC_FORBIDDEN, //a.k.a. Error 403
                         MessageFormat.format(EDStatic.blacklistMsg, EDStatic.adminEmail));
                     return;
@@ -528,15 +559,29 @@ public class Erddap extends HttpServlet {
             }
 
             //tally ipAddress                                    //odd capitilization sorts better
-            EDStatic.tally.add("Requester's IP Address (Allowed) (since last Major LoadDatasets)", ipAddress);
-            EDStatic.tally.add("Requester's IP Address (Allowed) (since last daily report)", ipAddress);
-            EDStatic.tally.add("Requester's IP Address (Allowed) (since startup)", ipAddress);
+            EDStatic.tally.addSince("Requester's IP Address (Allowed)", ipAddress, true);
+
+            //refuse request if this client (or ERDDAP) already has too many requests in progress
+            {
+                AdmissionControl.Rejection rejection = AdmissionControl.admit(request, ipAddress);
+                if (rejection != null) {
+                    EDStatic.tally.addSince("Requester's IP Address (Rejected)", ipAddress, true);
+                    String2.log("}}}}#" + requestNumber + " Request rejected by AdmissionControl (" + 
+                        rejection.status + "): " + rejection.message);
+                    metricsStatus = Metrics.REJECTED;
+                    response.setHeader("Retry-After", "" + rejection.retryAfterSeconds);
+                    EDStatic.lowSendError(response, rejection.status, rejection.message);
+                    return;
+                }
+                admitted = true;
+            }
 
             //requestUrl should start with /erddap/
             //deal with /erddap
             //??? '\' on windows computers??? or '/' since it isn't a real directory?
             if (!requestUrl.startsWith("/" + EDStatic.warName + "/")) {
                 sendRedirect(response, tErddapUrl + "/index.html");
+                metricsStatus = Metrics.SUCCEEDED;
                 return;
             }
             int protocolStart = EDStatic.warName.length() + 2;            
@@ -548,6 +593,7 @@ public class Erddap extends HttpServlet {
             String protocol = requestUrl.substring(protocolStart, protocolEnd);
             String endOfRequest = requestUrl.substring(protocolStart);
             if (reallyVerbose) String2.log("  protocol=" + protocol);
+            metricsProtocol = protocol;
 
             //Pass the query to the requested protocol or web page.
             //Be as restrictive as possible (so resourceNotFound can be caught below, if possible).
@@ -611,6 +657,8 @@ public class Erddap extends HttpServlet {
                 doSlideSorter(request, response, loggedInAs, userQuery);
             } else if (endOfRequest.equals("status.html")) {
                 doStatus(request, response, loggedInAs);
+            } else if (endOfRequest.equals("metrics")) {
+                doMetrics(request, response);
             } else if (endOfRequest.startsWith("dataProviderForm")) {
                 if (!EDStatic.dataProviderFormActive) 
                     sendResourceNotFoundError(request, response, 
@@ -646,13 +694,13 @@ public class Erddap extends HttpServlet {
             }
             
             //tally
-            EDStatic.tally.add("Protocol (since startup)", protocol);
-            EDStatic.tally.add("Protocol (since last daily report)", protocol);
+            EDStatic.tally.addSince("Protocol", protocol);
 
             long responseTime = System.currentTimeMillis() - doGetTime;
             String2.distribute(responseTime, EDStatic.responseTimesDistributionLoadDatasets);
             String2.distribute(responseTime, EDStatic.responseTimesDistribution24);
             String2.distribute(responseTime, EDStatic.responseTimesDistributionTotal);
+            metricsStatus = Metrics.SUCCEEDED;
             if (verbose) String2.log("}}}}#" + requestNumber + " SUCCESS. TIME=" + responseTime + "ms\n");
 
         } catch (Throwable t) {
@@ -666,9 +714,7 @@ public class Erddap extends HttpServlet {
 
                 //"failure" includes clientAbort and there is no data
                 long responseTime = System.currentTimeMillis() - doGetTime;
-                EDStatic.tally.add("Requester's IP Address (Failed) (since last Major LoadDatasets)", ipAddress);
-                EDStatic.tally.add("Requester's IP Address (Failed) (since last daily report)", ipAddress);
-                EDStatic.tally.add("Requester's IP Address (Failed) (since startup)", ipAddress);
+                EDStatic.tally.addSince("Requester's IP Address (Failed)", ipAddress, true);
                 String2.distribute(responseTime, EDStatic.failureTimesDistributionLoadDatasets);
                 String2.distribute(responseTime, EDStatic.failureTimesDistribution24);
                 String2.distribute(responseTime, EDStatic.failureTimesDistributionTotal);
@@ -685,6 +731,11 @@ public class Erddap extends HttpServlet {
 
             if (verbose) String2.log("}}}}#" + requestNumber + " sendErrorCode done. Total TIME=" + 
                 (System.currentTimeMillis() - doGetTime) + "ms\n");
+        } finally {
+            if (admitted)
+                AdmissionControl.release(request);
+            Metrics.requestFinished(request, metricsProtocol, 
+                System.currentTimeMillis() - doGetTime, metricsStatus);
         }
 
     }
@@ -710,8 +761,7 @@ public class Erddap extends HttpServlet {
             if (requestUrl.equals("/" + EDStatic.warName + "/index" + plainFileTypes[pft])) {
 
                 String fileTypeName = File2.getExtension(requestUrl);
-                EDStatic.tally.add("Main Resources List (since startup)", fileTypeName);
-                EDStatic.tally.add("Main Resources List (since last daily report)", fileTypeName);
+                EDStatic.tally.addSince("Main Resources List", fileTypeName);
                 Table table = new Table();
                 StringArray resourceCol = new StringArray();
                 StringArray urlCol = new StringArray();
@@ -740,8 +790,7 @@ public class Erddap extends HttpServlet {
         }
 
         //display main erddap index.html page 
-        EDStatic.tally.add("Home Page (since startup)", ".html");
-        EDStatic.tally.add("Home Page (since last daily report)", ".html");
+        EDStatic.tally.addSince("Home Page", ".html");
         OutputStream out = getHtmlOutputStream(request, response);
         Writer writer = getHtmlWriter(loggedInAs, "Home Page", out); 
         try {
@@ -1063,8 +1112,7 @@ public class Erddap extends HttpServlet {
     /** This is used by doLogin to add a failed login attempt to failedLogins */
     public void loginFailed(String user) {
         if (verbose) String2.log("loginFailed " + user);
-        EDStatic.tally.add("Log in failed (since startup)", user);
-        EDStatic.tally.add("Log in failed (since last daily report)", user);
+        EDStatic.tally.addSince("Log in failed", user);
         int ia[] = failedLogins.get(user);
         boolean wasNull = ia == null;
         if (wasNull)
@@ -1081,8 +1129,7 @@ public class Erddap extends HttpServlet {
      *(to remove failed login attempts from failedLogins) */
     public void loginSucceeded(String user) {
         if (verbose) String2.log("loginSucceeded " + user);
-        EDStatic.tally.add("Log in succeeded (since startup)", user);
-        EDStatic.tally.add("Log in succeeded (since last daily report)", user);
+        EDStatic.tally.addSince("Log in succeeded", user);
         //erase any info about failed logins
         failedLogins.remove(user);
 
@@ -1121,8 +1168,7 @@ public class Erddap extends HttpServlet {
         if (ia[0] < 3) {
             return 0;
         } else {
-            EDStatic.tally.add("Log in attempt blocked temporarily (since startup)", user);
-            EDStatic.tally.add("Log in attempt blocked temporarily (since last daily report)", user);
+            EDStatic.tally.addSince("Log in attempt blocked temporarily", user);
             if (verbose) String2.log("minutesUntilLoginAttempt=" + minutesToGo + " " + user);
             return minutesToGo;
         }
@@ -1817,8 +1863,7 @@ public class Erddap extends HttpServlet {
                 session.removeAttribute("loggedInAs:" + EDStatic.warName);
                 session.invalidate(); //forget any related info
                 Math2.sleep(500); //give session changes time to take effect
-                EDStatic.tally.add("Log out (since startup)", "success");
-                EDStatic.tally.add("Log out (since last daily report)", "success");
+                EDStatic.tally.addSince("Log out", "success");
             }
             String encodedSuccessMessage = "?message=" + SSR.minimalPercentEncode(
                 EDStatic.logoutSuccess);
@@ -4265,10 +4310,9 @@ writer.write(
             return;
         }
 
-        EDStatic.tally.add(protocol + " DatasetID (since startup)", id);
-        EDStatic.tally.add(protocol + " DatasetID (since last daily report)", id);
-        EDStatic.tally.add(protocol + " File Type (since startup)", fileTypeName);
-        EDStatic.tally.add(protocol + " File Type (since last daily report)", fileTypeName);
+        EDStatic.tally.addSince(protocol + " DatasetID", id);
+        EDStatic.tally.addSince(protocol + " File Type", fileTypeName);
+        Metrics.setDatasetAndFileType(request, id, fileTypeName);
 
         String fileName = dataset.suggestFileName(loggedInAs, userDapQuery, 
             //e.g., .ncHeader -> .nc, so same .nc file can be used for both responses
@@ -4278,10 +4322,8 @@ writer.write(
         if (fileTypeName.equals(".subset")) {
             String tValue = userDapQuery.length() == 0? 
                 "initial request" : "subsequent request";
-            EDStatic.tally.add(".subset (since startup)", tValue);
-            EDStatic.tally.add(".subset (since last daily report)", tValue);
-            EDStatic.tally.add(".subset DatasetID (since startup)", id);
-            EDStatic.tally.add(".subset DatasetID (since last daily report)", id);
+            EDStatic.tally.addSince(".subset", tValue);
+            EDStatic.tally.addSince(".subset DatasetID", id);
         }
 
         //jsonp
@@ -4356,7 +4398,8 @@ writer.write(
         //*** tell the dataset to send the data
         try {
             //give the dataset the opportunity to update (DAP)
-            dataset.update();
+            if (dataset.update())
+                requestWmsWarmup(dataset); //if it's in <wmsWarmupDatasetIDs>
 
             //respond to the request
             dataset.respondToDapQuery(request, response,
@@ -4512,8 +4555,7 @@ writer.write(
             }
 
             //tally
-            EDStatic.tally.add("files browse DatasetID (since startup)", "");
-            EDStatic.tally.add("files browse DatasetID (since last daily report)", "");
+            EDStatic.tally.addSince("files browse DatasetID", "");
             return;
         }
 
@@ -4667,8 +4709,7 @@ writer.write(
                 }
 
                 //tally
-                EDStatic.tally.add("files download DatasetID (since startup)", id);
-                EDStatic.tally.add("files download DatasetID (since last daily report)", id);
+                EDStatic.tally.addSince("files download DatasetID", id);
                 return;
             } else {
 
@@ -4764,8 +4805,7 @@ writer.write(
         }
 
         //tally
-        EDStatic.tally.add("files browse DatasetID (since startup)", id);
-        EDStatic.tally.add("files browse DatasetID (since last daily report)", id);
+        EDStatic.tally.addSince("files browse DatasetID", id);
 
     }
 
@@ -5133,8 +5173,7 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
         //write /sos/[datasetID]/index.html
         if (part1.equals("index.html") && urlEndParts.length == 2) {
 //tally other things?
-            EDStatic.tally.add("SOS index.html (since last daily report)", tDatasetID);
-            EDStatic.tally.add("SOS index.html (since startup)", tDatasetID);
+            EDStatic.tally.addSince("SOS index.html", tDatasetID);
             OutputStream out = getHtmlOutputStream(request, response);
             Writer writer = getHtmlWriter(loggedInAs, XML.encodeAsHTML(eddTable.title()) + " - SOS", out);
             try {
@@ -5521,7 +5560,8 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
 
         //give the dataset the opportunity to update  (WCS)
         try {
-            eddGrid.update();
+            if (eddGrid.update())
+                requestWmsWarmup(eddGrid); //if it's in <wmsWarmupDatasetIDs>
         } catch (WaitThenTryAgainException e) {
             //unload the dataset and set flag to reload it
             LoadDatasets.tryToUnload(this, tDatasetID, new StringArray(), true); //needToUpdateLucene
@@ -5532,8 +5572,7 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
         //write /wcs/[datasetID]/index.html
         if (part1.equals("index.html") && urlEndParts.length == 2) {
 //tally other things?
-            EDStatic.tally.add("WCS index.html (since last daily report)", tDatasetID);
-            EDStatic.tally.add("WCS index.html (since startup)", tDatasetID);
+            EDStatic.tally.addSince("WCS index.html", tDatasetID);
             OutputStream out = getHtmlOutputStream(request, response);
             Writer writer = getHtmlWriter(loggedInAs, XML.encodeAsHTML(eddGrid.title()) + " - WCS", out);
             try {
@@ -5832,7 +5871,8 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
 
             //give the dataset the opportunity to update  (WMS)
             try {
-                eddGrid.update();
+                if (eddGrid.update())
+                    requestWmsWarmup(eddGrid); //if it's in <wmsWarmupDatasetIDs>
             } catch (WaitThenTryAgainException e) {
                 //unload the dataset and set flag to reload it
                 LoadDatasets.tryToUnload(this, tDatasetID, new StringArray(), true); //needToUpdateLucene
@@ -6554,8 +6594,7 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
                     } //else fall through
                 }     //else fall through
             }
-            EDStatic.tally.add("WMS doWmsGetMap (since last daily report)", mainDatasetID);
-            EDStatic.tally.add("WMS doWmsGetMap (since startup)", mainDatasetID);
+            EDStatic.tally.addSince("WMS doWmsGetMap", mainDatasetID);
             if (mainDatasetID != null) 
                 fileName = mainDatasetID + "_" + fileName;
             String cacheDir = mainDatasetID == null? EDStatic.fullWmsCacheDirectory :
@@ -6713,56 +6752,9 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
                     "BBOX miny=" + miny + " must be < maxy=" + maxy + ".");
 
 
-            //if request is for JUST a transparent, non-data layer, use a _wms/... cache 
-            //  so files can be shared by many datasets and no number of files in dataset dir is reduced
-            boolean isNonDataLayer = false;
-            if (transparent &&
-                (layersCsv.equals("Land") || 
-                 layersCsv.equals("LandMask") || 
-                 layersCsv.equals("Coastlines") || 
-                 layersCsv.equals("LakesAndRivers") || 
-                 layersCsv.equals("Nations") ||
-                 layersCsv.equals("States"))) {
-
-                isNonDataLayer = true;
-                //Land/LandMask not distinguished below, so consolidate images
-                if (layersCsv.equals("LandMask"))
-                    layersCsv = "Land"; 
-                cacheDir = EDStatic.fullWmsCacheDirectory + layersCsv + "/"; 
-                fileName = layersCsv + "_" + 
-                    String2.md5Hex12(bboxCsv + "w" + width + "h" + height);
-
-            }
-
-            //is the image in the cache?
-            if (File2.isFile(cacheDir + fileName + extension)) { 
-                //touch nonDataLayer files, since they don't change
-                if (isNonDataLayer)
-                    File2.touch(cacheDir + fileName + extension);
-
-                //write out the image
-                outputStreamSource = new OutputStreamFromHttpResponse(request, response, 
-                    fileName, fileTypeName, extension);
-                outputStream = outputStreamSource.outputStream("");
-                doTransfer(request, response, cacheDir, "_wms/", 
-                    fileName + extension, 
-                    outputStream, outputStreamSource.usingCompression()); 
-                return;
-            }
-            
-
-            //*** params are basically ok; try to make the map
-            //make the image
-            BufferedImage bufferedImage = new BufferedImage(width, height, 
-                BufferedImage.TYPE_INT_ARGB); //I need opacity "A"
-            Graphics g = bufferedImage.getGraphics(); 
-            Graphics2D g2 = (Graphics2D)g;
-            Color bgColor = new Color(0xFF000000 | bgColori); //0xFF000000 makes it opaque
-            g.setColor(bgColor);    
-            g.fillRect(0, 0, width, height);  
-
-            //add the layers
+            //resolve the layers (everything but the lon and lat ranges, which depend on BBOX)
             String roles[] = EDStatic.getRoles(loggedInAs);
+            WmsLayer wmsLayers[] = new WmsLayer[layers.length];
             LAYER:
             for (int layeri = 0; layeri < layers.length; layeri++) {
 
@@ -6775,20 +6767,7 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
                     layers[layeri].equals("LakesAndRivers") || 
                     layers[layeri].equals("Nations") ||
                     layers[layeri].equals("States")) {
-                    SgtMap.makeCleanMap(minx, maxx, miny, maxy, 
-                        false,
-                        null, 1, 1, 0, null,
-                        layers[layeri].equals("Land") || 
-                        layers[layeri].equals("LandMask"), //no need to draw it twice; no distinction here
-                        layers[layeri].equals("Coastlines"), 
-                        layers[layeri].equals("LakesAndRivers")? 
-                            SgtMap.STROKE_LAKES_AND_RIVERS : //stroke (not fill) so, e.g., Great Lakes temp data not obscured by lakeColor
-                            SgtMap.NO_LAKES_AND_RIVERS,
-                        layers[layeri].equals("Nations"), 
-                        layers[layeri].equals("States"),
-                        g2, width, height,
-                        0, 0, width, height);  
-                    //String2.log("WMS layeri="+ layeri + " request was for a non-data layer=" + layers[layeri]);
+                    wmsLayers[layeri] = new WmsLayer(layers[layeri]);
                     continue;
                 }
 
@@ -6832,38 +6811,11 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
 
                 //get other dimension info
                 EDVGridAxis ava[] = eddGrid.axisVariables();
-                StringBuilder tQuery = new StringBuilder(destVar);
+                String axisConstraints[] = new String[ava.length];
                 for (int avi = 0; avi < ava.length; avi++) {
                     EDVGridAxis av = ava[avi];
-                    if (avi == eddGrid.lonIndex()) {
-                        if (maxx <= av.destinationMin() ||
-                            minx >= av.destinationMax()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because request is out of lon range.");
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestSourceIndex(minx);
-                        int last = av.destinationToClosestSourceIndex(maxx);
-                        if (first > last) {int ti = first; first = last; last = ti;}
-                        int stride = DataHelper.findStride(last - first + 1, width);
-                        tQuery.append("[" + first + ":" + stride + ":" + last + "]");
-                        continue;
-                    }
-
-                    if (avi == eddGrid.latIndex()) {
-                        if (maxy <= av.destinationMin() ||
-                            miny >= av.destinationMax()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because request is out of lat range.");
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestSourceIndex(miny);
-                        int last = av.destinationToClosestSourceIndex(maxy);
-                        if (first > last) {int ti = first; first = last; last = ti;}
-                        int stride = DataHelper.findStride(last - first + 1, height);
-                        tQuery.append("[" + first + ":" + stride + ":" + last + "]");
-                        continue;
-                    }
+                    if (avi == eddGrid.lonIndex() || avi == eddGrid.latIndex()) 
+                        continue; //depends on BBOX
 
                     //all other axes
                     String tAvName = 
@@ -6875,7 +6827,7 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
                     if (tValueS == null || 
                         (avi == eddGrid.timeIndex() && tValueS.toLowerCase().equals("current")))
                         //default is always the last value
-                        tQuery.append("[" + (ava[avi].sourceValues().size() - 1) + "]");
+                        axisConstraints[avi] = "[" + (ava[avi].sourceValues().size() - 1) + "]";
                     else {
                         double tValueD = av.destinationToDouble(tValueS); //needed in particular for iso time -> epoch seconds
                         if (avi == eddGrid.depthIndex())
@@ -6889,67 +6841,86 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
                             continue LAYER;
                         }
                         int first = av.destinationToClosestSourceIndex(tValueD);
-                        tQuery.append("[" + first + "]");
+                        axisConstraints[avi] = "[" + first + "]";
                     }
                 }
+                wmsLayers[layeri] = new WmsLayer(eddGrid, destVar, tDataVariable, axisConstraints);
+            }
 
-                //get the data
-                GridDataAccessor gda = new GridDataAccessor(
-                    eddGrid, 
-                    "/" + EDStatic.warName + "/griddap/" + datasetID + ".dods", tQuery.toString(), 
-                    false, //Grid needs column-major order
-                    true); //convertToNaN
-                long requestNL = gda.totalIndex().size();
-                EDStatic.ensureArraySizeOkay(requestNL, "doWmsGetMap");
-                int nBytesPerElement = 8;
-                int requestN = (int)requestNL; //safe since checked by ensureArraySizeOkay above
-                EDStatic.ensureMemoryAvailable(requestNL * nBytesPerElement, "doWmsGetMap"); 
-                Grid grid = new Grid();
-                grid.data = new double[requestN];
-                int po = 0;
-                while (gda.increment()) 
-                    grid.data[po++] = gda.getDataValueAsDouble(0);
-                grid.lon = gda.axisValues(eddGrid.lonIndex()).toDoubleArray();
-                grid.lat = gda.axisValues(eddGrid.latIndex()).toDoubleArray(); 
-                gda = null; //free up memory if possible
-
-                //make the palette
-                //I checked hasColorBarMinMax above.
-                //Note that EDV checks validity of values.
-                double minData = tDataVariable.combinedAttributes().getDouble("colorBarMinimum"); 
-                double maxData = tDataVariable.combinedAttributes().getDouble("colorBarMaximum"); 
-                String palette = tDataVariable.combinedAttributes().getString("colorBarPalette"); 
-                if (String2.indexOf(EDStatic.palettes, palette) < 0)
-                    palette = Math2.almostEqual(3, -minData, maxData)? "BlueWhiteRed" : "Rainbow"; 
-                int nSections = tDataVariable.combinedAttributes().getInt("colorBarNSections"); 
-                if (nSections > 100)
-                    nSections = -1;
-                boolean paletteContinuous = String2.parseBoolean( //defaults to true
-                    tDataVariable.combinedAttributes().getString("colorBarContinuous")); 
-                String scale = tDataVariable.combinedAttributes().getString("colorBarScale"); 
-                if (String2.indexOf(EDV.VALID_SCALES, scale) < 0)
-                    scale = "Linear";
-                String cptFullName = CompoundColorMap.makeCPT(EDStatic.fullPaletteDirectory, 
-                    palette, scale, minData, maxData, nSections, paletteContinuous, 
-                    EDStatic.fullCptCacheDirectory);
-
-                //draw the data on the map
-                //for now, just cartesian  -- BEWARE: it may be stretched!
-                SgtMap.makeCleanMap( 
-                    minx, maxx, miny, maxy, 
-                    false,
-                    grid, 1, 1, 0, cptFullName, 
-                    false, false, SgtMap.NO_LAKES_AND_RIVERS, false, false,
-                    g2, width, height,
-                    0, 0, width, height); 
+            //if request is for JUST a transparent, non-data layer, use a _wms/... cache 
+            //  so files can be shared by many datasets and no number of files in dataset dir is reduced
+            boolean isNonDataLayer = false;
+            String tilePrefix = (mainDatasetID == null? "" : mainDatasetID + "_") + "wms_";
+            if (transparent &&
+                (layersCsv.equals("Land") || 
+                 layersCsv.equals("LandMask") || 
+                 layersCsv.equals("Coastlines") || 
+                 layersCsv.equals("LakesAndRivers") || 
+                 layersCsv.equals("Nations") ||
+                 layersCsv.equals("States"))) {
 
+                isNonDataLayer = true;
+                //Land/LandMask not distinguished below, so consolidate images
+                if (layersCsv.equals("LandMask"))
+                    layersCsv = "Land"; 
+                cacheDir = EDStatic.fullWmsCacheDirectory + layersCsv + "/"; 
+                fileName = layersCsv + "_" + 
+                    String2.md5Hex12(bboxCsv + "w" + width + "h" + height);
+                tilePrefix = layersCsv + "_";
             }
 
-            //save image as file in cache dir
-            //(It saves as temp file, then renames if ok.)
-            SgtUtil.saveAsTransparentPng(bufferedImage, 
-                transparent? bgColor : null, 
-                cacheDir + fileName); 
+            //is the request for one tile of a regular tile grid 
+            //  (e.g., from Leaflet with crs: L.CRS.EPSG4326)?
+            //If so, the cached file name is based on the resolved request 
+            //  (so it is the same for all clients) and the tile is made as part of a meta-tile.
+            long tileI = -1, tileJ = -1;
+            String tileKey = null;
+            if (width  * EDStatic.wmsMetaTileSize <= EDD.WMS_MAX_WIDTH &&
+                height * EDStatic.wmsMetaTileSize <= EDD.WMS_MAX_HEIGHT) {
+                tileI = wmsTileIndex(minx + 180, maxx - minx, 540); //allow 0 - 360 datasets
+                tileJ = wmsTileIndex(miny +  90, maxy - miny, 180);
+                if (tileI >= 0 && tileJ >= 0) {
+                    tileKey = wmsTileKey(wmsLayers, width, height, transparent, bgColori, 
+                        maxx - minx, maxy - miny);
+                    fileName = wmsTileFileName(tilePrefix, tileKey, tileI, tileJ);
+                }
+            }
+
+            //is the image in the cache?
+            if (File2.isFile(cacheDir + fileName + extension)) { 
+                //touch nonDataLayer files, since they don't change
+                if (isNonDataLayer)
+                    File2.touch(cacheDir + fileName + extension);
+
+                //write out the image
+                outputStreamSource = new OutputStreamFromHttpResponse(request, response, 
+                    fileName, fileTypeName, extension);
+                outputStream = outputStreamSource.outputStream("");
+                doTransfer(request, response, cacheDir, "_wms/", 
+                    fileName + extension, 
+                    outputStream, outputStreamSource.usingCompression()); 
+                return;
+            }
+            
+
+            //*** params are basically ok; try to make the map
+            if (tileKey != null) {
+                //make (and cache) the meta-tile with this tile
+                makeWmsMetaTile(wmsLayers, tileKey, cacheDir, tilePrefix, tileI, tileJ,
+                    maxx - minx, maxy - miny, width, height, bgColori, transparent);
+
+            } else {
+                //make the image
+                Color bgColor = new Color(0xFF000000 | bgColori); //0xFF000000 makes it opaque
+                BufferedImage bufferedImage = drawWmsLayers(wmsLayers, 
+                    minx, maxx, miny, maxy, width, height, bgColor); 
+
+                //save image as file in cache dir
+                //(It saves as temp file, then renames if ok.)
+                SgtUtil.saveAsTransparentPng(bufferedImage, 
+                    transparent? bgColor : null, 
+                    cacheDir + fileName); 
+            }
 
             //copy image from file to client
             if (reallyVerbose) String2.log("  image created. copying to client: " + fileName + extension);
@@ -7034,6 +7005,384 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
 
     }
 
+    /**
+     * A resolved WMS GetMap layer: a non-data layer (e.g., "Coastlines")
+     * or a grid variable with the constraints for all axes except longitude and latitude 
+     * (which depend on the BBOX).
+     */
+    private static class WmsLayer {
+        final String name; //e.g., "Coastlines" or "datasetID:varName"
+        final EDDGrid eddGrid; //null for non-data layers
+        final String destVar;
+        final EDV dataVariable;
+        final String axisConstraints[]; //[avi], e.g., "[12]"; null for lon and lat
+
+        WmsLayer(String tName) {
+            name = tName;
+            eddGrid = null;
+            destVar = null;
+            dataVariable = null;
+            axisConstraints = null;
+        }
+
+        WmsLayer(EDDGrid tEddGrid, String tDestVar, EDV tDataVariable, String tAxisConstraints[]) {
+            name = tEddGrid.datasetID() + EDD.WMS_SEPARATOR + tDestVar;
+            eddGrid = tEddGrid;
+            destVar = tDestVar;
+            dataVariable = tDataVariable;
+            axisConstraints = tAxisConstraints;
+        }
+    }
+
+    /**
+     * This determines if a BBOX edge is on a regular tile grid 
+     * (tiles of size tileSize, starting at offset 0).
+     *
+     * @param offset the distance from the start of the tile grid to the BBOX's min edge, 
+     *    e.g., minx + 180
+     * @param tileSize the BBOX's size, e.g., maxx - minx
+     * @param range the size of the tile grid, e.g., 180 for latitude
+     * @return the tile's index (0..) or -1 if not on the tile grid
+     */
+    private static long wmsTileIndex(double offset, double tileSize, double range) {
+        double d = offset / tileSize;
+        long index = Math.round(d);
+        if (Math.abs(d - index) > 1e-6 || index < 0 ||
+            index >= wmsNTiles(tileSize, range))
+            return -1;
+        if (range == 180 && 
+            Math.abs(180 / tileSize - Math.round(180 / tileSize)) > 1e-6)
+            return -1; //so latitude tiles don't cross the poles
+        return index;
+    }
+
+    /** This returns the number of whole tiles of size tileSize in range. */
+    private static long wmsNTiles(double tileSize, double range) {
+        return (long)Math.floor(range / tileSize + 1e-6);
+    }
+
+    /**
+     * This returns a key which identifies the resolved request (except for the tile's location).
+     * Requests with different query strings (e.g., from different clients, or
+     * time=current vs the last time value) which would make the same image have the same key.
+     * Axis constraints are keyed on their destination values, not their source indices,
+     * since the indices shift when the dataset's axis values change (e.g., via lowUpdate).
+     */
+    private static String wmsTileKey(WmsLayer wmsLayers[], int width, int height,
+        boolean transparent, int bgColori, double tileWidth, double tileHeight) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int layeri = 0; layeri < wmsLayers.length; layeri++) {
+            WmsLayer layer = wmsLayers[layeri];
+            sb.append(layer == null? "-" : layer.name);
+            if (layer != null && layer.axisConstraints != null) {
+                EDVGridAxis ava[] = layer.eddGrid.axisVariables();
+                for (int avi = 0; avi < layer.axisConstraints.length; avi++) {
+                    String ac = layer.axisConstraints[avi];
+                    sb.append(ac == null? "[]" : 
+                        "[" + ava[avi].destinationString(
+                            String2.parseInt(ac.substring(1, ac.length() - 1))) + "]");
+                }
+            }
+            sb.append(',');
+        }
+        sb.append("w" + width + "h" + height + "t" + transparent + "bg" + bgColori + 
+            "x" + tileWidth + "y" + tileHeight);
+        return sb.toString();
+    }
+
+    /** This returns the cache file name (without extension) of a tile. */
+    private static String wmsTileFileName(String tilePrefix, String tileKey, long tileI, long tileJ) {
+        return tilePrefix + String2.md5Hex12(tileKey + "i" + tileI + "j" + tileJ);
+    }
+
+    /**
+     * This makes the meta-tile (a block of up to wmsMetaTileSize x wmsMetaTileSize tiles,
+     * aligned to multiples of wmsMetaTileSize) which includes tile (tileI, tileJ),
+     * slices it into tiles, and saves them in the cache.
+     * So the source data is read and the map is drawn once for the block, 
+     * instead of once for each tile.
+     * Only one thread makes a given meta-tile at a time. 
+     * Other threads that need it wait, then use the cached tiles.
+     *
+     * @param tileI the tile's column (0.. from longitude=-180)
+     * @param tileJ the tile's row (0.. from latitude=-90)
+     * @throws Throwable if trouble
+     */
+    void makeWmsMetaTile(WmsLayer wmsLayers[], String tileKey, String cacheDir, String tilePrefix,
+        long tileI, long tileJ, double tileWidth, double tileHeight,
+        int width, int height, int bgColori, boolean transparent) throws Throwable {
+
+        int n = EDStatic.wmsMetaTileSize;
+        long firstI = Math.floorDiv(tileI, n) * n;
+        long firstJ = Math.floorDiv(tileJ, n) * n;
+        long lastI = Math.min(firstI + n, wmsNTiles(tileWidth,  540)) - 1;
+        long lastJ = Math.min(firstJ + n, wmsNTiles(tileHeight, 180)) - 1;
+        String metaName = cacheDir + tilePrefix + "meta_" + 
+            String2.md5Hex12(tileKey + "i" + firstI + "j" + firstJ);
+        FileLocks.Lock fileLock = FileLocks.lock(metaName);
+        try {
+            //did another thread just make it?
+            if (File2.isFile(cacheDir + wmsTileFileName(tilePrefix, tileKey, tileI, tileJ) + ".png"))
+                return;
+
+            long time = System.currentTimeMillis();
+            int nCols = (int)(lastI - firstI + 1);
+            int nRows = (int)(lastJ - firstJ + 1);
+            Color bgColor = new Color(0xFF000000 | bgColori); //0xFF000000 makes it opaque
+            BufferedImage bufferedImage = drawWmsLayers(wmsLayers, 
+                -180 + firstI * tileWidth,  -180 + (lastI + 1) * tileWidth,
+                 -90 + firstJ * tileHeight,  -90 + (lastJ + 1) * tileHeight,
+                nCols * width, nRows * height, bgColor);
+
+            //save the tiles (row 0 is at the top, i.e., lastJ)
+            for (int col = 0; col < nCols; col++) {
+                for (int row = 0; row < nRows; row++) {
+                    String tName = cacheDir + 
+                        wmsTileFileName(tilePrefix, tileKey, firstI + col, lastJ - row);
+                    if (File2.isFile(tName + ".png"))
+                        continue;
+                    //(It saves as temp file, then renames if ok.)
+                    SgtUtil.saveAsTransparentPng(
+                        bufferedImage.getSubimage(col * width, row * height, width, height),
+                        transparent? bgColor : null, tName);
+                }
+            }
+            if (reallyVerbose) String2.log("  makeWmsMetaTile made " + nCols + "x" + nRows + 
+                " tiles in " + (System.currentTimeMillis() - time) + "ms");
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * This draws the layers of a WMS GetMap request.
+     *
+     * @param wmsLayers the resolved layers (null elements are skipped)
+     * @param bgColor the (opaque) background color
+     * @return the image
+     * @throws Throwable if trouble
+     */
+    BufferedImage drawWmsLayers(WmsLayer wmsLayers[], 
+        double minx, double maxx, double miny, double maxy, 
+        int width, int height, Color bgColor) throws Throwable {
+
+        BufferedImage bufferedImage = new BufferedImage(width, height, 
+            BufferedImage.TYPE_INT_ARGB); //I need opacity "A"
+        Graphics g = bufferedImage.getGraphics(); 
+        Graphics2D g2 = (Graphics2D)g;
+        g.setColor(bgColor);    
+        g.fillRect(0, 0, width, height);  
+
+        //add the layers
+        LAYER:
+        for (int layeri = 0; layeri < wmsLayers.length; layeri++) {
+            WmsLayer layer = wmsLayers[layeri];
+            if (layer == null)
+                continue;
+
+            //***deal with non-data layers
+            if (layer.eddGrid == null) {
+                SgtMap.makeCleanMap(minx, maxx, miny, maxy, 
+                    false,
+                    null, 1, 1, 0, null,
+                    layer.name.equals("Land") || 
+                    layer.name.equals("LandMask"), //no need to draw it twice; no distinction here
+                    layer.name.equals("Coastlines"), 
+                    layer.name.equals("LakesAndRivers")? 
+                        SgtMap.STROKE_LAKES_AND_RIVERS : //stroke (not fill) so, e.g., Great Lakes temp data not obscured by lakeColor
+                        SgtMap.NO_LAKES_AND_RIVERS,
+                    layer.name.equals("Nations"), 
+                    layer.name.equals("States"),
+                    g2, width, height,
+                    0, 0, width, height);  
+                //String2.log("WMS layeri="+ layeri + " request was for a non-data layer=" + layer.name);
+                continue;
+            }
+
+            //*** deal with grid data
+            EDDGrid eddGrid = layer.eddGrid;
+            EDV tDataVariable = layer.dataVariable;
+            EDVGridAxis ava[] = eddGrid.axisVariables();
+            StringBuilder tQuery = new StringBuilder(layer.destVar);
+            for (int avi = 0; avi < ava.length; avi++) {
+                EDVGridAxis av = ava[avi];
+                if (avi == eddGrid.lonIndex()) {
+                    if (maxx <= av.destinationMin() ||
+                        minx >= av.destinationMax()) {
+                        if (reallyVerbose) String2.log("  layer=" + layeri + 
+                            " rejected because request is out of lon range.");
+                        continue LAYER;
+                    }
+                    int first = av.destinationToClosestSourceIndex(minx);
+                    int last = av.destinationToClosestSourceIndex(maxx);
+                    if (first > last) {int ti = first; first = last; last = ti;}
+                    int stride = DataHelper.findStride(last - first + 1, width);
+                    tQuery.append("[" + first + ":" + stride + ":" + last + "]");
+                    continue;
+                }
+
+                if (avi == eddGrid.latIndex()) {
+                    if (maxy <= av.destinationMin() ||
+                        miny >= av.destinationMax()) {
+                        if (reallyVerbose) String2.log("  layer=" + layeri + 
+                            " rejected because request is out of lat range.");
+                        continue LAYER;
+                    }
+                    int first = av.destinationToClosestSourceIndex(miny);
+                    int last = av.destinationToClosestSourceIndex(maxy);
+                    if (first > last) {int ti = first; first = last; last = ti;}
+                    int stride = DataHelper.findStride(last - first + 1, height);
+                    tQuery.append("[" + first + ":" + stride + ":" + last + "]");
+                    continue;
+                }
+
+                //all other axes
+                tQuery.append(layer.axisConstraints[avi]);
+            }
+
+            //get the data
+            GridDataAccessor gda = new GridDataAccessor(
+                eddGrid, 
+                "/" + EDStatic.warName + "/griddap/" + eddGrid.datasetID() + ".dods", tQuery.toString(), 
+                false, //Grid needs column-major order
+                true); //convertToNaN
+            long requestNL = gda.totalIndex().size();
+            EDStatic.ensureArraySizeOkay(requestNL, "doWmsGetMap");
+            int nBytesPerElement = 8;
+            int requestN = (int)requestNL; //safe since checked by ensureArraySizeOkay above
+            EDStatic.ensureMemoryAvailable(requestNL * nBytesPerElement, "doWmsGetMap"); 
+            Grid grid = new Grid();
+            grid.data = new double[requestN];
+            int po = 0;
+            while (gda.increment()) 
+                grid.data[po++] = gda.getDataValueAsDouble(0);
+            grid.lon = gda.axisValues(eddGrid.lonIndex()).toDoubleArray();
+            grid.lat = gda.axisValues(eddGrid.latIndex()).toDoubleArray(); 
+            gda = null; //free up memory if possible
+
+            //make the palette
+            //I checked hasColorBarMinMax above.
+            //Note that EDV checks validity of values.
+            double minData = tDataVariable.combinedAttributes().getDouble("colorBarMinimum"); 
+            double maxData = tDataVariable.combinedAttributes().getDouble("colorBarMaximum"); 
+            String palette = tDataVariable.combinedAttributes().getString("colorBarPalette"); 
+            if (String2.indexOf(EDStatic.palettes, palette) < 0)
+                palette = Math2.almostEqual(3, -minData, maxData)? "BlueWhiteRed" : "Rainbow"; 
+            int nSections = tDataVariable.combinedAttributes().getInt("colorBarNSections"); 
+            if (nSections > 100)
+                nSections = -1;
+            boolean paletteContinuous = String2.parseBoolean( //defaults to true
+                tDataVariable.combinedAttributes().getString("colorBarContinuous")); 
+            String scale = tDataVariable.combinedAttributes().getString("colorBarScale"); 
+            if (String2.indexOf(EDV.VALID_SCALES, scale) < 0)
+                scale = "Linear";
+            String cptFullName = CompoundColorMap.makeCPT(EDStatic.fullPaletteDirectory, 
+                palette, scale, minData, maxData, nSections, paletteContinuous, 
+                EDStatic.fullCptCacheDirectory);
+
+            //draw the data on the map
+            //for now, just cartesian  -- BEWARE: it may be stretched!
+            SgtMap.makeCleanMap( 
+                minx, maxx, miny, maxy, 
+                false,
+                grid, 1, 1, 0, cptFullName, 
+                false, false, SgtMap.NO_LAKES_AND_RIVERS, false, false,
+                g2, width, height,
+                0, 0, width, height); 
+
+        }
+        return bufferedImage;
+    }
+
+    /**
+     * If the dataset is in setup.xml's &lt;wmsWarmupDatasetIDs&gt;, 
+     * this queues a background job (if one isn't already queued for the dataset)
+     * to pre-render the WMS tiles (see warmupWms).
+     * This is called after a dataset's update() made a change.
+     *
+     * @param edd a dataset (only EDDGrid datasets are warmed up)
+     */
+    public void requestWmsWarmup(EDD edd) {
+        if (!EDStatic.wmsActive || !(edd instanceof EDDGrid))
+            return;
+        String tDatasetID = edd.datasetID();
+        if (String2.indexOf(EDStatic.wmsWarmupDatasetIDs, tDatasetID) < 0 ||
+            !wmsWarmupPending.add(tDatasetID))
+            return;
+        wmsWarmupExecutor.execute(() -> {
+            wmsWarmupPending.remove(tDatasetID);
+            EDDGrid eddGrid = gridDatasetHashMap.get(tDatasetID); //the latest version
+            if (eddGrid == null)
+                return;
+            try {
+                warmupWms(eddGrid);
+            } catch (Throwable t) {
+                String2.log("WARNING: warmupWms(" + tDatasetID + ") failed:\n" +
+                    MustBe.throwableToString(t));
+            }
+        });
+    }
+
+    /**
+     * This pre-renders (and caches) the WMS tiles of the latest time (and the 
+     * default value of other non-lon/lat axes) of each variable which has colorBar
+     * information, for zoom levels 0 to wmsWarmupMaxZoom, as they are requested by 
+     * Leaflet with crs: L.CRS.EPSG4326 (as on the dataset's WMS web page): 
+     * 256x256 pixel transparent tiles with bgcolor=0x808080.
+     *
+     * @param eddGrid the dataset
+     * @throws Throwable if trouble
+     */
+    void warmupWms(EDDGrid eddGrid) throws Throwable {
+        int loni = eddGrid.lonIndex();
+        int lati = eddGrid.latIndex();
+        if (loni < 0 || lati < 0 || eddGrid.accessibleViaWMS().length() > 0)
+            return;
+        long time = System.currentTimeMillis();
+        String tDatasetID = eddGrid.datasetID();
+        String cacheDir = EDD.cacheDirectory(tDatasetID);
+        String tilePrefix = tDatasetID + "_wms_";
+        int tileSize = 256;
+        int bgColori = 0x808080;
+        int n = EDStatic.wmsMetaTileSize;
+        EDVGridAxis ava[] = eddGrid.axisVariables();
+        EDV dva[] = eddGrid.dataVariables();
+        int nMetaTiles = 0;
+        for (int dvi = 0; dvi < dva.length; dvi++) {
+            if (!dva[dvi].hasColorBarMinMax())
+                continue;
+            String axisConstraints[] = new String[ava.length];
+            for (int avi = 0; avi < ava.length; avi++) 
+                if (avi != loni && avi != lati)
+                    axisConstraints[avi] = "[" + (ava[avi].sourceValues().size() - 1) + "]";
+            WmsLayer wmsLayers[] = {new WmsLayer(eddGrid, dva[dvi].destinationName(), 
+                dva[dvi], axisConstraints)};
+
+            for (int zoom = 0; zoom <= EDStatic.wmsWarmupMaxZoom; zoom++) {
+                //zoom 0 has 2x1 tiles, each 180 degrees
+                double tileDegrees = 180.0 / (1 << zoom); 
+                String tileKey = wmsTileKey(wmsLayers, tileSize, tileSize, true, bgColori, 
+                    tileDegrees, tileDegrees);
+                long firstI = Math.max(0, (long)Math.floor((ava[loni].destinationMin() + 180) / tileDegrees));
+                long lastI  = Math.min(wmsNTiles(tileDegrees, 540) - 1, 
+                    (long)Math.floor((ava[loni].destinationMax() + 180) / tileDegrees));
+                long firstJ = Math.max(0, (long)Math.floor((ava[lati].destinationMin() + 90) / tileDegrees));
+                long lastJ  = Math.min(wmsNTiles(tileDegrees, 180) - 1, 
+                    (long)Math.floor((ava[lati].destinationMax() + 90) / tileDegrees));
+                for (long i = Math.floorDiv(firstI, n) * n; i <= lastI; i += n) {
+                    for (long j = Math.floorDiv(firstJ, n) * n; j <= lastJ; j += n) {
+                        makeWmsMetaTile(wmsLayers, tileKey, cacheDir, tilePrefix, i, j,
+                            tileDegrees, tileDegrees, tileSize, tileSize, bgColori, true);
+                        nMetaTiles++;
+                    }
+                }
+            }
+        }
+        if (verbose) String2.log("warmupWms(" + tDatasetID + ") finished " + nMetaTiles + 
+            " meta-tiles in " + (System.currentTimeMillis() - time) + "ms");
+    }
+
     /**
      * Respond to WMS GetCapabilities request for doWms.
      * To become a Layer, a grid variable must use evenly-spaced longitude and latitude variables.
@@ -7064,8 +7413,7 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
                     tVersion.equals("1.1.1")? "" : "?";  //default for 1.3.0+
         String sc = tVersion.equals("1.1.0") || 
                     tVersion.equals("1.1.1")? "S" : "C";  //default for 1.3.0+
-        EDStatic.tally.add("WMS doWmsGetCapabilities (since last daily report)", tDatasetID);
-        EDStatic.tally.add("WMS doWmsGetCapabilities (since startup)", tDatasetID);
+        EDStatic.tally.addSince("WMS doWmsGetCapabilities", tDatasetID);
 
         //*** describe a Layer for each wms-able data variable in each grid dataset
         //Elements must occur in proper sequence
@@ -7633,8 +7981,7 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
             !tVersion.equals("1.3.0"))
             throw new SimpleException("WMS version=" + tVersion + " must be " +
                 "1.1.0, 1.1.1, or 1.3.0.");            
-        EDStatic.tally.add("WMS doWmsDemo (since last daily report)", tDatasetID);
-        EDStatic.tally.add("WMS doWmsDemo (since startup)", tDatasetID);
+        EDStatic.tally.addSince("WMS doWmsDemo", tDatasetID);
 
         String tWmsSampleBBox = tVersion.equals("1.3.0")? 
             EDStatic.wmsSampleBBox130 : EDStatic.wmsSampleBBox110;
@@ -8053,8 +8400,7 @@ scripts.append(
         table.addColumn("Size",          sizePA);
         table.addColumn("Description",   descriptionPA);
         StringArray dirNames = new StringArray();
-        String startTallySinceStartup     = "Metadata requests (since startup)";
-        String startTallySinceDailyReport = "Metadata requests (since last daily report)";
+        String startTallyBaseName = "Metadata requests";
         String failed = "Failed: ";
         String startFailureLog = "  Metadata request=" + endOfRequest + "\n" +
             "    ";  //add reason here
@@ -8064,8 +8410,7 @@ scripts.append(
         if (!urlParts[0].equals("metadata")) {  //it should
             String reason = failed + "urlParts[0] wasn't 'metadata'.";
             if (verbose) String2.log(startFailureLog +     reason);
-            EDStatic.tally.add(startTallySinceStartup,     reason);
-            EDStatic.tally.add(startTallySinceDailyReport, reason);
+            EDStatic.tally.addSince(startTallyBaseName, reason);
             if (verbose) String2.log(EDStatic.resourceNotFound + " " + reason);
             sendResourceNotFoundError(request, response, reason);
             return;
@@ -8078,8 +8423,7 @@ scripts.append(
             }
 
             //show the directory
-            EDStatic.tally.add(startTallySinceStartup,     endOfRequest);
-            EDStatic.tally.add(startTallySinceDailyReport, endOfRequest);
+            EDStatic.tally.addSince(startTallyBaseName, endOfRequest);
 
             dirNames.add("fgdc");
             dirNames.add("iso19115");
@@ -8113,8 +8457,7 @@ scripts.append(
               urlParts[1].equals("iso19115"))) {  
             String reason = failed + "urlParts[1] wasn't 'fgdc' or 'iso19115'.";
             if (verbose) String2.log(startFailureLog +     reason);
-            EDStatic.tally.add(startTallySinceStartup,     reason);
-            EDStatic.tally.add(startTallySinceDailyReport, reason);
+            EDStatic.tally.addSince(startTallyBaseName, reason);
             if (verbose) String2.log(EDStatic.resourceNotFound + " " + reason);
             sendResourceNotFoundError(request, response, reason);
             return;
@@ -8130,8 +8473,7 @@ scripts.append(
             }
 
             //show the directory
-            EDStatic.tally.add(startTallySinceStartup,     endOfRequest);
-            EDStatic.tally.add(startTallySinceDailyReport, endOfRequest);
+            EDStatic.tally.addSince(startTallyBaseName, endOfRequest);
 
             dirNames.add("xml");
 
@@ -8161,8 +8503,7 @@ scripts.append(
         if (!urlParts[2].equals("xml")) {  
             String reason = failed + "urlParts[2] wasn't 'xml'.";
             if (verbose) String2.log(startFailureLog +     reason);
-            EDStatic.tally.add(startTallySinceStartup,     reason);
-            EDStatic.tally.add(startTallySinceDailyReport, reason);
+            EDStatic.tally.addSince(startTallyBaseName, reason);
             if (verbose) String2.log(EDStatic.resourceNotFound + " " + reason);
             sendResourceNotFoundError(request, response, reason);
             return;
@@ -8175,8 +8516,7 @@ scripts.append(
             }
 
             //show the directory: list the fgdc or iso19115 datasets
-            EDStatic.tally.add(startTallySinceStartup,     endOfRequest);
-            EDStatic.tally.add(startTallySinceDailyReport, endOfRequest);
+            EDStatic.tally.addSince(startTallyBaseName, endOfRequest);
 
             StringArray tIDs = allDatasetIDs();
             for (int ds = 0; ds < tIDs.size(); ds++) {
@@ -8243,8 +8583,7 @@ scripts.append(
                     reason += "The file didn't exist.";
                 } else {
                     //valid request
-                    EDStatic.tally.add(startTallySinceStartup,     "Succeeded: " + urlParts[1]);
-                    EDStatic.tally.add(startTallySinceDailyReport, "Succeeded: " + urlParts[1]);
+                    EDStatic.tally.addSince(startTallyBaseName, "Succeeded: " + urlParts[1]);
                     OutputStreamSource outSource = new OutputStreamFromHttpResponse(
                         request, response, 
                         fileName.substring(0, fileName.length() - 4), //remove .xml
@@ -8262,8 +8601,7 @@ scripts.append(
 
             //any failures with nUrlParts==4 end up here
             if (verbose) String2.log(startFailureLog +     reason);
-            EDStatic.tally.add(startTallySinceStartup,     reason);
-            EDStatic.tally.add(startTallySinceDailyReport, reason);
+            EDStatic.tally.addSince(startTallyBaseName, reason);
             if (verbose) String2.log(EDStatic.resourceNotFound + " " + reason);
             sendResourceNotFoundError(request, response, reason);
             return;
@@ -8272,8 +8610,7 @@ scripts.append(
         //nUrlParts >= 5
         String reason = failed + "nUrlParts >= 5.";
         if (verbose) String2.log(startFailureLog +     reason);
-        EDStatic.tally.add(startTallySinceStartup,     reason);
-        EDStatic.tally.add(startTallySinceDailyReport, reason);
+        EDStatic.tally.addSince(startTallyBaseName, reason);
         if (verbose) String2.log(EDStatic.resourceNotFound + " " + reason);
         sendResourceNotFoundError(request, response, reason);
     }
@@ -8378,10 +8715,8 @@ scripts.append(
             " or json" + 
             (defaultFIsJson? " (the default)." : ".");
 
-        //String startTallySinceStartup     = "Rest requests (since startup)";
-        //String startTallySinceDailyReport = "Rest requests (since last daily report)";
-        //EDStatic.tally.add(startTallySinceStartup,     reason);
-        //EDStatic.tally.add(startTallySinceDailyReport, reason);
+        //String startTallyBaseName = "Rest requests";
+        //EDStatic.tally.addSince(startTallyBaseName, reason);
 
         //*** urlParts[0]="rest"
 
@@ -9437,8 +9772,7 @@ breadCrumbs + endBreadCrumbs +
             return;
         }
         String tDatasetID = nameAndExt.substring(0, nameAndExt.length() - 4);
-        EDStatic.tally.add("RSS (since last daily report)", tDatasetID);
-        EDStatic.tally.add("RSS (since startup)", tDatasetID);
+        EDStatic.tally.addSince("RSS", tDatasetID);
 
         //does the dataset exist?
         EDD edd = gridDatasetHashMap.get(tDatasetID);
@@ -9528,16 +9862,14 @@ breadCrumbs + endBreadCrumbs +
             } else {
                 //It's ok if it isn't an existing edd.  An inactive dataset is a valid one to flag.
                 //And ok of it isn't even in datasets.xml.  Unknown files are removed.
-                EDStatic.tally.add("SetDatasetFlag (since startup)", datasetID);
-                EDStatic.tally.add("SetDatasetFlag (since last daily report)", datasetID);
+                EDStatic.tally.addSince("SetDatasetFlag", datasetID);
                 String2.writeToFile(EDStatic.fullResetFlagDirectory + datasetID, datasetID);
                 message = "SUCCESS: The flag has been set.";
                 delaySeconds = 0;
             }
 
             String sf = message.startsWith(String2.ERROR)? "Failed" : "Succeeded";
-            EDStatic.tally.add("SetDatasetFlag " + sf + ", IP Address (since last daily report)", ipAddress);
-            EDStatic.tally.add("SetDatasetFlag " + sf + ", IP Address (since startup)", ipAddress);
+            EDStatic.tally.addSince("SetDatasetFlag " + sf + ", IP Address", ipAddress);
 
             Math2.sleep(delaySeconds * 1000);
             writer.write(message);
@@ -9573,6 +9905,32 @@ breadCrumbs + endBreadCrumbs +
         }
     }
 
+    /**
+     * This responds to a /metrics request with ERDDAP's request metrics 
+     * (see Metrics) in the Prometheus text format.
+     * Like status.html, this is available to everyone if metricsActive is true.
+     *
+     * @throws Throwable if trouble
+     */
+    public void doMetrics(HttpServletRequest request, HttpServletResponse response) throws Throwable {
+        if (!EDStatic.metricsActive) {
+            sendResourceNotFoundError(request, response, 
+                MessageFormat.format(EDStatic.disabled, "metrics"));
+            return;
+        }
+
+        //generate text response
+        OutputStreamSource outSource = new OutputStreamFromHttpResponse(
+            request, response, "metrics", ".txt", ".txt");
+        OutputStream out = outSource.outputStream(String2.UTF_8);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, String2.UTF_8)); 
+        try {
+            Metrics.writePrometheus(writer);
+        } finally {
+            writer.close(); //it calls writer.flush then out.close();  
+        }
+    }
+
     /**
      * This responds to a version_string request.
      *
@@ -10254,10 +10612,8 @@ breadCrumbs + endBreadCrumbs +
             boolean toHtml = fileTypeName.equals(".html");
             if (reallyVerbose) String2.log("  searchFor=" + searchFor + 
                 "\n  fileTypeName=" + fileTypeName);
-            EDStatic.tally.add("Search For (since startup)", searchFor);
-            EDStatic.tally.add("Search For (since last daily report)", searchFor);
-            EDStatic.tally.add("Search File Type (since startup)", fileTypeName);
-            EDStatic.tally.add("Search File Type (since last daily report)", fileTypeName);
+            EDStatic.tally.addSince("Search For", searchFor);
+            EDStatic.tally.addSince("Search File Type", fileTypeName);
 
             if (endOfRequestUrl.equals("index.html")) {
                 if (searchFor.length() == 0) 
@@ -10615,8 +10971,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         //get the 'searchTerms' value
         String searchTerms = request.getParameter("searchTerms");
         searchTerms = searchTerms == null? "" : searchTerms.trim();
-        EDStatic.tally.add("OpenSearch searchTerms (since startup)", searchTerms);
-        EDStatic.tally.add("OpenSearch searchTerms (since last daily report)", searchTerms);
+        EDStatic.tally.addSince("OpenSearch searchTerms", searchTerms);
         String xmlSearchTerms = XML.encodeAsXML(searchTerms);
         String pctSearchTerms = SSR.minimalPercentEncode(searchTerms);
         String xmlPctSearchTerms = XML.encodeAsXML(SSR.minimalPercentEncode(searchTerms));
@@ -10907,8 +11262,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         }              
         int pipp[] = EDStatic.getRequestedPIpp(request);
 
-        EDStatic.tally.add("Advanced Search, Search For (since startup)", searchFor);
-        EDStatic.tally.add("Advanced Search, Search For (since last daily report)", searchFor);
+        EDStatic.tally.addSince("Advanced Search, Search For", searchFor);
 
         //boundingBox
         double minLon = String2.parseDouble(request.getParameter("minLon"));
@@ -10921,8 +11275,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
             double td = minLat; minLat = maxLat; maxLat = td; }
         boolean llc = Double.isFinite(minLon) || Double.isFinite(maxLon) ||
                       Double.isFinite(minLat) || Double.isFinite(maxLat);
-        EDStatic.tally.add("Advanced Search with Lat Lon Constraints (since startup)", "" + llc);
-        EDStatic.tally.add("Advanced Search with Lat Lon Constraints (since last daily report)", "" + llc);
+        EDStatic.tally.addSince("Advanced Search with Lat Lon Constraints", "" + llc);
 
         String minTimeParam = request.getParameter("minTime");
         String maxTimeParam = request.getParameter("maxTime");
@@ -10951,8 +11304,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         if (maxTime.length() == 0)
             maxTimeParam = ""; //show some error msg if user supplied a constraint?
         boolean tc = Double.isFinite(minTimeD) || Double.isFinite(maxTimeD);
-        EDStatic.tally.add("Advanced Search with Time Constraints (since startup)", "" + tc);
-        EDStatic.tally.add("Advanced Search with Time Constraints (since last daily report)", "" + tc);
+        EDStatic.tally.addSince("Advanced Search with Time Constraints", "" + tc);
 
         //categories
         String catSAs[][] = new String[nCatAtts][];
@@ -10967,9 +11319,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                 (tParam == null || tParam.equals(""))? 0 :
                     Math.max(0, String2.indexOf(catSAs[ca], tParam));
             if (whichCatSAIndex[ca] > 0) {
-                EDStatic.tally.add("Advanced Search with Category Constraints (since startup)", 
-                    catAttsInURLs[ca] + " = " + tParam);
-                EDStatic.tally.add("Advanced Search with Category Constraints (since last daily report)", 
+                EDStatic.tally.addSince("Advanced Search with Category Constraints", 
                     catAttsInURLs[ca] + " = " + tParam);
             }
         }
@@ -10998,9 +11348,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         String tProt = request.getParameter("protocol");
         int whichProtocol = Math.max(0, protocols.indexOf(tProt)); 
         if (whichProtocol > 0) {
-            EDStatic.tally.add("Advanced Search with Category Constraints (since startup)", 
-                "protocol = " + tProt);
-            EDStatic.tally.add("Advanced Search with Category Constraints (since last daily report)", 
+            EDStatic.tally.addSince("Advanced Search with Category Constraints", 
                 "protocol = " + tProt);
         }
 
@@ -11011,8 +11359,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         if (reallyVerbose) String2.log("Advanced Search   fileTypeName=" + fileTypeName +
             "\n  searchFor=" + searchFor + 
             "\n  whichCatSAString=" + whichCatSAIndex.toString());
-        EDStatic.tally.add("Advanced Search, .fileType (since startup)", fileTypeName);
-        EDStatic.tally.add("Advanced Search, .fileType (since last daily report)", fileTypeName);
+        EDStatic.tally.addSince("Advanced Search, .fileType", fileTypeName);
 
         //*** if .html request, show the form 
         OutputStream out = null;
@@ -11589,14 +11936,12 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         if (nSearchWords > 0) {
             int ntDatasetIDs = tDatasetIDs.size();
 
-            //try to get luceneIndexSearcher
+            //try to get luceneSearcher (released below)
             //if fail, go back to original search
-            Object object2[] = EDStatic.useLuceneSearchEngine?
-                EDStatic.luceneIndexSearcher() : new Object[]{null, null};                   
-            IndexSearcher indexSearcher = (IndexSearcher)object2[0];
-            String datasetIDFieldCache[] = (String[])object2[1];
+            LuceneSearcherManager.Searcher luceneSearcher = EDStatic.useLuceneSearchEngine?
+                LuceneSearcherManager.acquire() : null;
 
-            if (indexSearcher != null && datasetIDFieldCache != null) { 
+            if (luceneSearcher != null) { 
                 //useLuceneSearchEngine=true and searcher is valid
                 //do the searches with the LUCENE searchEngine
                 //??? future: allow "title:..." searches
@@ -11695,22 +12040,11 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                     for (int i = 0; i < tDatasetIDs.size(); i++)
                         hashSet.add(tDatasetIDs.get(i));
 
-                    //do the lucene search
-                    long luceneTime = System.currentTimeMillis();
-                    TopDocs hits = indexSearcher.search(booleanQuery, 
-                        indexSearcher.maxDoc()); //max n search results
-                    ScoreDoc scoreDocs[] = hits.scoreDocs;
-                    int nHits = scoreDocs.length;
-                    if (reallyVerbose) 
-                        String2.log("  luceneQuery nMatches=" + nHits + 
-                            " time=" + (System.currentTimeMillis() - luceneTime) + "ms");
+                    //do the lucene search (or get the hits from the searcher's query cache)
+                    String hits[] = luceneSearcher.search(booleanQuery); //datasetIDs, best to worst
+                    int nHits = hits.length;
                     for (int i = 0; i < nHits; i++) {
-                        //was (without luceneDatasetIDFieldCache)
-                        //Document hitDoc = indexSearcher.doc(hits.scoreDocs[i].doc);
-                        //String tDatasetID = hitDoc.get("datasetID"); 
-
-                        //with luceneDatasetIDFieldCache
-                        String tDatasetID = datasetIDFieldCache[scoreDocs[i].doc]; //doc#
+                        String tDatasetID = hits[i];
                         //String2.log("hit#" + i + ": datasetID=" + tDatasetID);
 
                         //ensure tDatasetID is in tDatasetIDs (e.g., just grid datasets)
@@ -11740,6 +12074,8 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                 } catch (Throwable t) {
                     EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
                     throw new SimpleException(EDStatic.searchNotAvailable, t);
+                } finally {
+                    LuceneSearcherManager.release(luceneSearcher);
                 }
 
             } else {
@@ -11763,6 +12099,10 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                     jumpB[w] = String2.makeJumpTable(searchWordsB[w]);
                 }
 
+                //use the index to skip the datasets which can't match (null: search them all)
+                OriginalSearchIndex.Candidates candidates = 
+                    OriginalSearchIndex.candidates(isNegative, searchWordsB);
+
                 for (int i = 0; i < ntDatasetIDs; i++) {
                     String tId = tDatasetIDs.get(i);
                     EDD edd = gridDatasetHashMap.get(tId);
@@ -11774,6 +12114,8 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                         !edd.isAccessibleTo(roles) &&
                         !edd.graphsAccessibleToPublic()) //search for datasets is always a metadata request
                         continue;
+                    if (candidates != null && !candidates.mayMatch(tId, edd.searchBytes()))
+                        continue;
                     nDatasetsSearched++;
                     int rank = edd.searchRank(isNegative, searchWordsB, jumpB);           
                     if (rank < Integer.MAX_VALUE) {
@@ -12109,12 +12451,9 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         catDats.removeRange(0, Math.min(startIndex, nMatches));
 
         //*** respond to categorize/{attributeInURL}/{categoryName}/index.fileTypeName request
-        EDStatic.tally.add("Categorize Attribute (since startup)", attributeInURL);
-        EDStatic.tally.add("Categorize Attribute (since last daily report)", attributeInURL);
-        EDStatic.tally.add("Categorize Attribute = Value (since startup)", attributeInURL + " = " + categoryName);
-        EDStatic.tally.add("Categorize Attribute = Value (since last daily report)", attributeInURL + " = " + categoryName);
-        EDStatic.tally.add("Categorize File Type (since startup)", fileTypeName);
-        EDStatic.tally.add("Categorize File Type (since last daily report)", fileTypeName);
+        EDStatic.tally.addSince("Categorize Attribute", attributeInURL);
+        EDStatic.tally.addSince("Categorize Attribute = Value", attributeInURL + " = " + categoryName);
+        EDStatic.tally.addSince("Categorize File Type", fileTypeName);
         boolean sortByTitle = false;
         if (endsWithPlainFileType(part2, "index")) {
             //show the results as plain file type
@@ -12252,8 +12591,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                 MessageFormat.format(EDStatic.unsupportedFileType, fileTypeName));
             return;
         }
-        EDStatic.tally.add("Info File Type (since startup)", fileTypeName);
-        EDStatic.tally.add("Info File Type (since last daily report)", fileTypeName);
+        EDStatic.tally.addSince("Info File Type", fileTypeName);
         if (nParts < 2) {
             //*** info/index.xxx    view all datasets 
 
@@ -12273,8 +12611,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
             StringArray tIDs = sortByTitle(loggedInAs, allDatasetIDs(), 
                 true); //info: this is a metadata request 
             int nDatasets = tIDs.size();
-            EDStatic.tally.add("Info (since startup)", "View All Datasets");
-            EDStatic.tally.add("Info (since last daily report)", "View All Datasets");
+            EDStatic.tally.addSince("Info", "View All Datasets");
 
             //calculate Page ItemsPerPage and remove other tIDs  (part of: View All Datasets)
             int pIpp[] = EDStatic.calculatePIpp(request, nDatasets);
@@ -12443,8 +12780,7 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         }
 
         //request is valid -- make the table
-        EDStatic.tally.add("Info (since startup)", tID);
-        EDStatic.tally.add("Info (since last daily report)", tID);
+        EDStatic.tally.addSince("Info", tID);
         Table table = new Table();
         StringArray rowTypeSA = new StringArray();
         StringArray variableNameSA = new StringArray();
@@ -13051,8 +13387,7 @@ writer.write(
             return;
         }
 
-        EDStatic.tally.add("Subscriptions (since startup)", endOfRequest);
-        EDStatic.tally.add("Subscriptions (since last daily report)", endOfRequest);
+        EDStatic.tally.addSince("Subscriptions", endOfRequest);
 
         if (endOfRequest.equals(Subscriptions.INDEX_HTML)) {
             //fall through
@@ -13253,8 +13588,7 @@ writer.write(
                             throw new SimpleException(tError);
 
                         //tally
-                        EDStatic.tally.add("Subscriptions (since startup)", "Add successful");
-                        EDStatic.tally.add("Subscriptions (since last daily report)", "Add successful");
+                        EDStatic.tally.addSince("Subscriptions", "Add successful");
                     }
                     writer.write(EDStatic.subscriptionAddSuccess + "\n");
                 } catch (Throwable t) {
@@ -13265,8 +13599,7 @@ writer.write(
                     String2.log("Subscription Add Exception:\n" + MustBe.throwableToString(t)); //log stack trace, too
 
                     //tally
-                    EDStatic.tally.add("Subscriptions (since startup)", "Add unsuccessful");
-                    EDStatic.tally.add("Subscriptions (since last daily report)", "Add unsuccessful");
+                    EDStatic.tally.addSince("Subscriptions", "Add unsuccessful");
                 }
             }
 
@@ -13395,8 +13728,7 @@ writer.write(
                         endHtmlWriter(out, writer, tErddapUrl, false);
 
                         //tally
-                        EDStatic.tally.add("Subscriptions (since startup)", "List successful");
-                        EDStatic.tally.add("Subscriptions (since last daily report)", "List successful");
+                        EDStatic.tally.addSince("Subscriptions", "List successful");
                         return;
                     } catch (Throwable t) {
                         EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
@@ -13406,8 +13738,7 @@ writer.write(
                         String2.log("Subscription list Exception:\n" + MustBe.throwableToString(t)); //log the details
 
                         //tally
-                        EDStatic.tally.add("Subscriptions (since startup)", "List unsuccessful");
-                        EDStatic.tally.add("Subscriptions (since last daily report)", "List unsuccessful");
+                        EDStatic.tally.addSince("Subscriptions", "List unsuccessful");
                     }
                 }
             }
@@ -13519,8 +13850,7 @@ writer.write(
                             writer.write(EDStatic.subscriptionValidateSuccess + "\n");
 
                             //tally
-                            EDStatic.tally.add("Subscriptions (since startup)", "Validate successful");
-                            EDStatic.tally.add("Subscriptions (since last daily report)", "Validate successful");
+                            EDStatic.tally.addSince("Subscriptions", "Validate successful");
                         }
                     } catch (Throwable t) {
                         EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
@@ -13530,8 +13860,7 @@ writer.write(
                         String2.log("Subscription validate Exception:\n" + MustBe.throwableToString(t));
 
                         //tally
-                        EDStatic.tally.add("Subscriptions (since startup)", "Validate unsuccessful");
-                        EDStatic.tally.add("Subscriptions (since last daily report)", "Validate unsuccessful");
+                        EDStatic.tally.addSince("Subscriptions", "Validate unsuccessful");
                     }
                 }
             }
@@ -13651,8 +13980,7 @@ writer.write(
                         else writer.write(EDStatic.subscriptionRemoveSuccess + "\n");
 
                         //tally
-                        EDStatic.tally.add("Subscriptions (since startup)", "Remove successful");
-                        EDStatic.tally.add("Subscriptions (since last daily report)", "Remove successful");
+                        EDStatic.tally.addSince("Subscriptions", "Remove successful");
                     } catch (Throwable t) {
                         EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
                         writer.write("<p><span class=\"warningColor\">" +
@@ -13661,8 +13989,7 @@ writer.write(
                         String2.log("Subscription remove Exception:\n" + MustBe.throwableToString(t)); //log the details
 
                         //tally
-                        EDStatic.tally.add("Subscriptions (since startup)", "Remove unsuccessful");
-                        EDStatic.tally.add("Subscriptions (since last daily report)", "Remove unsuccessful");
+                        EDStatic.tally.addSince("Subscriptions", "Remove unsuccessful");
                     }
                 }
             }
@@ -13738,8 +14065,7 @@ writer.write(
             return;
         }
 
-        EDStatic.tally.add("Convert (since startup)", endOfRequest);
-        EDStatic.tally.add("Convert (since last daily report)", endOfRequest);
+        EDStatic.tally.addSince("Convert", endOfRequest);
         String fileTypeName = File2.getExtension(requestUrl);
         int pft = String2.indexOf(plainFileTypes, fileTypeName);
 
@@ -6,6 +6,8 @@ package gov.noaa.pfel.erddap;
 
 
 import com.cohort.array.Attributes;
+import com.cohort.array.LongArray;
+import com.cohort.array.PrimitiveArray;
 import com.cohort.array.StringArray;
 import com.cohort.util.Calendar2;
 import com.cohort.util.File2;
@@ -28,13 +30,19 @@ import gov.noaa.pfel.erddap.variable.EDVGridAxis;
 
 import java.awt.Color;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -76,8 +84,14 @@ import org.apache.lucene.index.Term;
  *     (not in batch mode).
  * <li> Loading datasets takes time, but is done in a separate thread
  *    so it never slows down requests for a dataset.
- * <li> Only one thread is used to load all the datasets, so loading
+ * <li> A small pool of threads (setup.xml &lt;nLoadDatasetsThreads&gt;) constructs 
+ *    the datasets, so slow datasets (e.g., ones which get information from 
+ *    remote servers) load in parallel, but loading
  *    datasets never becomes a drain of computer resources.
+ *    A dataset which refers to another local dataset (e.g., via a local 
+ *    EDDGridFromErddap child) isn't constructed until that dataset has been loaded.
+ *    Only this thread puts the datasets in place, updates Lucene, 
+ *    and triggers the subscription actions (one dataset at a time).
  * <li> The datasets.xml file is read anew each time this is run,
  *    so you can make changes to the file (e.g., add datasets or change metadata)
  *    and the results take effect without restarting Erddap.
@@ -105,6 +119,16 @@ public class LoadDatasets extends Thread {
     private static long MAX_MILLIS_BEFORE_LUCENE_UPDATE = 5 * Calendar2.MILLIS_PER_MINUTE;
     private final static boolean ADD = true;
     private final static boolean REMOVE = false;
+    private final static Pattern SOURCE_URL_PATTERN = Pattern.compile(
+        "<sourceUrl>([^<]*)</sourceUrl>");
+
+    //*** things for constructing datasets in parallel (see startLoad())
+    //loadPool's threads construct the datasets; only this thread publishes them
+    private ExecutorService loadPool;
+    private LinkedBlockingQueue<DatasetLoad> finishedLoads = new LinkedBlockingQueue();
+    private HashMap<String, DatasetLoad> unpublishedLoads = new HashMap(); //only used by this thread
+    private LongArray   loadTimeMillis     = new LongArray();   //for each published load
+    private StringArray loadTimeDatasetIDs = new StringArray(); //parallels loadTimeMillis
 
     /* This is set by run if there is an unexpected error. */   
     public String unexpectedError = ""; 
@@ -145,6 +169,7 @@ public class LoadDatasets extends Thread {
     public void run() {
         SimpleXMLReader xmlReader = null;
         StringArray changedDatasetIDs = new StringArray();
+        StringBuilder datasetsThatFailedToLoadSB = new StringBuilder();
         try {
             String2.log("\n" + String2.makeString('*', 80) +  
                 "\nLoadDatasets.run EDStatic.developmentMode=" + EDStatic.developmentMode + 
@@ -177,7 +202,6 @@ public class LoadDatasets extends Thread {
                 orphanIDSet.remove(EDDTableFromAllDatasets.DATASET_ID);
             }
             HashMap tUserHashMap = new HashMap(); //no need for thread-safe, all puts are here (1 thread); future gets are thread safe
-            StringBuilder datasetsThatFailedToLoadSB = new StringBuilder();
             HashSet datasetIDSet = new HashSet(); //to detect duplicates, just local use, no need for thread-safe
             StringArray duplicateDatasetIDs = new StringArray(); //list of duplicates
 
@@ -219,6 +243,15 @@ public class LoadDatasets extends Thread {
             xmlReader = new SimpleXMLReader(inputStream, "erddapDatasets");
             //there is an enclosing try/catch that handles with closing xmlReader
             String startError = "datasets.xml error on line #";
+            loadPool = Executors.newFixedThreadPool(EDStatic.nLoadDatasetsThreads, 
+                new ThreadFactory() {
+                    private int nThreads = 0;
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "LoadDatasets worker" + (++nThreads));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
             int nDatasets = 0;
             int nTry = 0;
             while (true) {
@@ -232,6 +265,13 @@ public class LoadDatasets extends Thread {
 
                 xmlReader.nextTag();
                 String tags = xmlReader.allTags();
+
+                //other tags (e.g., <cacheMinutes>) may affect how datasets are constructed,
+                //  so finish the pending loads first (as if the datasets were loaded one at a time)
+                if (!tags.equals("<erddapDatasets><dataset>") && !unpublishedLoads.isEmpty() &&
+                    !publishLoads(0, changedDatasetIDs, datasetsThatFailedToLoadSB))
+                    return; //interrupted
+
                 if (tags.equals("</erddapDatasets>")) {
                     break;
                 } else if (tags.equals("<erddapDatasets><dataset>")) {
@@ -342,140 +382,28 @@ public class LoadDatasets extends Thread {
                             tags = xmlReader.allTags();
                         }
                     } else {
-                        //try to load this dataset
+                        //record the raw xml for this dataset (so it can be parsed again by a 
+                        //  loadPool thread), then start constructing it
                         nTry++;
-                        String change = "";
-                        EDD dataset = null, oldDataset = null;
-                        boolean oldCatInfoRemoved = false;
-                        long timeToLoadThisDataset = System.currentTimeMillis();
-                        try {
-                            dataset = EDD.fromXml(erddap, xmlReader.attributeValue("type"), xmlReader);
-
-                            //check for interruption right before making changes to Erddap
-                            if (isInterrupted()) { //this is a likely place to catch interruption
-                                String2.log("*** The LoadDatasets thread was interrupted at " + 
-                                    Calendar2.getCurrentISODateTimeStringLocalTZ());
-                                updateLucene(erddap, changedDatasetIDs);
-                                lastLuceneUpdate = System.currentTimeMillis();
-                                return;
-                            }
-
-                            //do several things in quick succession...
-                            //(??? synchronize on (?) if really need avoid inconsistency)
-
-                            //was there a dataset with the same datasetID?
-                            oldDataset = erddap.gridDatasetHashMap.get(tId);
-                            if (oldDataset == null)
-                                oldDataset = erddap.tableDatasetHashMap.get(tId);
-
-                            //if oldDataset existed, remove its info from categoryInfo
-                            //(check now, before put dataset in place, in case EDDGrid <--> EDDTable)
-                            if (oldDataset != null) {
-                                addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
-                                oldCatInfoRemoved = true;
-                            }
-
-                            //put dataset in place
-                            //(hashMap.put atomically replaces old version with new)
-                            if ((oldDataset == null || oldDataset instanceof EDDGrid) &&
-                                                          dataset instanceof EDDGrid) {
-                                erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //was/is grid
-
-                            } else if ((oldDataset == null || oldDataset instanceof EDDTable) &&
-                                                                 dataset instanceof EDDTable) {
-                                erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //was/is table 
-
-                            } else if (dataset instanceof EDDGrid) {
-                                if (oldDataset != null)
-                                    erddap.tableDatasetHashMap.remove(tId);   //was table
-                                erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //now grid
-
-                            } else if (dataset instanceof EDDTable) {
-                                if (oldDataset != null)
-                                    erddap.gridDatasetHashMap.remove(tId);    //was grid
-                                erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //now table
-                            }
-
-                            //add new info to categoryInfo
-                            addRemoveDatasetInfo(ADD, erddap.categoryInfo, dataset); 
-
-                            //clear the dataset's cache 
-                            //since axis values may have changed and "last" may have changed
-                            File2.deleteAllFiles(dataset.cacheDirectory());                           
-                       
-                            change = dataset.changed(oldDataset);
-                            if (change.length() == 0 && dataset instanceof EDDTable)
-                                change = "The dataset was reloaded.";
-
-                        } catch (Throwable t) {
-                            dataset = null;
-                            timeToLoadThisDataset = System.currentTimeMillis() - timeToLoadThisDataset;
-
-                            //check for interruption right before making changes to Erddap
-                            if (isInterrupted()) { //this is a likely place to catch interruption
-                                String tError2 = "*** The LoadDatasets thread was interrupted at " + 
-                                    Calendar2.getCurrentISODateTimeStringLocalTZ();
-                                String2.log(tError2);
-                                warningsFromLoadDatasets.append(tError2 + "\n\n");
-                                updateLucene(erddap, changedDatasetIDs);
-                                lastLuceneUpdate = System.currentTimeMillis();
-                                return;
-                            }
-
-
-                            //actually remove old dataset (if any existed)
-                            EDD tDataset = erddap.gridDatasetHashMap.remove(tId); //always ensure it was removed
-                            if (tDataset == null)
-                                tDataset = erddap.tableDatasetHashMap.remove(tId);
-                            if (oldDataset == null)
-                                oldDataset = tDataset;
-
-                            //if oldDataset existed, remove it from categoryInfo
-                            if (oldDataset != null && !oldCatInfoRemoved)
-                                addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
-
-                            String tError = startError + xmlReader.lineNumber() + "\n" + 
-                                "While trying to load datasetID=" + tId + " (after " +
-                                    timeToLoadThisDataset + " ms)\n" +
-                                MustBe.throwableToString(t);
-                            String2.log(tError);
-                            warningsFromLoadDatasets.append(tError + "\n\n");
-                            datasetsThatFailedToLoadSB.append(tId + ", ");
-
-                            //stop???
-                            if (!xmlReader.isOpen()) { //error was really serious
-                                throw new RuntimeException(startError + xmlReader.lineNumber() + 
-                                    ": " + t.toString(), t);
-                            }
-           
-                            //skip over the remaining tags for this dataset
-                            try {
-                                while (!xmlReader.allTags().equals("<erddapDatasets></dataset>")) 
-                                    xmlReader.nextTag();
-                            } catch (Throwable t2) {
-                                throw new RuntimeException(startError + xmlReader.lineNumber() + 
-                                    ": " + t2.toString(), t2);
-                            }
-
-                            //change      (if oldDataset=null and new one failed to load, no change)
-                            if (oldDataset != null)  
-                                change = tError;
-                        }
-                        if (verbose) String2.log("change=" + change);
-
-                        //whether succeeded (new or swapped in) or failed (removed), it was changed
-                        changedDatasetIDs.add(tId);
-                        if (System.currentTimeMillis() - lastLuceneUpdate >
-                            MAX_MILLIS_BEFORE_LUCENE_UPDATE) {
-                            updateLucene(erddap, changedDatasetIDs);
-                            lastLuceneUpdate = System.currentTimeMillis();
+                        long tLineNumber = xmlReader.lineNumber();
+                        String tType = xmlReader.attributeValue("type");
+                        StringBuilder tXml = new StringBuilder("<dataset");
+                        String tAttNames[] = xmlReader.attributeNames();
+                        for (int an = 0; an < tAttNames.length; an++) 
+                            tXml.append(" " + tAttNames[an] + "=\"" + 
+                                XML.encodeAsXML(xmlReader.attributeValue(tAttNames[an])) + "\"");
+                        tXml.append('>');
+                        xmlReader.startRecording();
+                        while (!tags.equals("<erddapDatasets></dataset>")) {
+                            xmlReader.nextTag();
+                            tags = xmlReader.allTags();
                         }
+                        String tRest = xmlReader.stopRecording();
+                        tXml.append(tRest.length() == 0? "</dataset>" : tRest); //"" if <dataset ... />
 
-                        //trigger subscription and dataset.onChange actions (after new dataset is in place)
-                        EDD cooDataset = dataset == null? oldDataset : dataset; //currentOrOld, may be null
-                        tryToDoActions(erddap, tId, cooDataset, 
-                            startError + xmlReader.lineNumber() + " with Subscriptions",
-                            change);
+                        if (!startLoad(new DatasetLoad(tId, tType, tLineNumber, tXml.toString()),
+                                changedDatasetIDs, datasetsThatFailedToLoadSB))
+                            return; //interrupted
                     }
 
                 } else if (tags.equals("<erddapDatasets><angularDegreeUnits>")) {
@@ -808,8 +736,11 @@ public class LoadDatasets extends Thread {
                     " change=" + (EDStatic.nGridDatasets - oldNGrid) + "\n" +
                 "  nTableDatasets active=" + EDStatic.nTableDatasets + 
                     " change=" + (EDStatic.nTableDatasets - oldNTable) + "\n" +
-                "  nDatasets in datasets.xml=" + nDatasets + " (nTry=" + nTry + ")\n" +
+                "  nDatasets in datasets.xml=" + nDatasets + " (nTry=" + nTry + 
+                    " nLoadDatasetsThreads=" + EDStatic.nLoadDatasetsThreads + ")\n" +
                 "  nUsers=" + tUserHashMap.size());
+            if (majorLoad || reallyVerbose) 
+                String2.log("Slowest dataset loads:\n" + slowestLoadsString(10));
 
             //minorLoad?
             if (!majorLoad) {
@@ -913,6 +844,10 @@ public class LoadDatasets extends Thread {
                         "\nWarnings from LoadDatasets\n\n");
                     contentSB.append(warningsFromLoadDatasets);
 
+                    contentSB.append("\n" + stars + 
+                        "\nSlowest Dataset Loads (in the last major LoadDatasets)\n\n");
+                    contentSB.append(slowestLoadsString(50));
+
                     contentSB.append("\n" + stars + "\n");
                     contentSB.append(threadList);
 
@@ -975,9 +910,12 @@ public class LoadDatasets extends Thread {
                     EDStatic.tally.remove("WMS index.html (since last daily report)");
 
                     EDStatic.failureTimesDistribution24      = new int[String2.DistributionSize];
+                    EDStatic.datasetLoadFailedDistribution24    = new int[String2.DistributionSize];
+                    EDStatic.datasetLoadSucceededDistribution24 = new int[String2.DistributionSize];
                     EDStatic.majorLoadDatasetsDistribution24 = new int[String2.DistributionSize];
                     EDStatic.minorLoadDatasetsDistribution24 = new int[String2.DistributionSize];
                     EDStatic.responseTimesDistribution24     = new int[String2.DistributionSize];
+                    EDStatic.actionDeliveryLagDistribution24 = new int[String2.DistributionSize];
 
                     String2.log("\n" + stars);
                     String2.log(contentSB.toString());
@@ -1079,10 +1017,344 @@ public class LoadDatasets extends Thread {
                 unexpectedError = subject + ": " + content;
                 String2.log(unexpectedError);
                 EDStatic.email(EDStatic.emailEverythingToCsv, subject, content);
+
+                //the datasets which were submitted before the trouble are (or will soon be) 
+                //  constructed, so publish them instead of throwing them away below
+                if (!unpublishedLoads.isEmpty()) {
+                    try {
+                        String2.log("*** Publishing the " + unpublishedLoads.size() + 
+                            " datasets which were submitted before the trouble.");
+                        if (publishLoads(0, changedDatasetIDs, datasetsThatFailedToLoadSB)) 
+                            updateLucene(erddap, changedDatasetIDs);
+                    } catch (Throwable t2) {
+                        String2.log(String2.ERROR + " while publishing the submitted datasets:\n" +
+                            MustBe.throwableToString(t2));
+                    }
+                }
             }
         } finally {
             if (xmlReader != null) 
                 try {xmlReader.close();} catch (Exception e) {}
+            if (loadPool != null) 
+                loadPool.shutdownNow(); //interrupts unfinished loads (if any)
+        }
+    }
+
+    /**
+     * This starts a load: it finds the load's dependencies 
+     * (datasets earlier in datasets.xml which are still being loaded in this run
+     * and which this dataset refers to via a local sourceUrl, e.g., 
+     * a local EDDGridFromErddap child of an EDDTableFromEDDGrid),
+     * and submits the load to loadPool if it doesn't have any pending dependencies.
+     * (Children which are defined within a parent's &lt;dataset&gt; tag, e.g., 
+     * for EDDGridAggregateExistingDimension, EDDGridSideBySide, or EDDGridCopy,
+     * are constructed by the parent, so they are part of the parent's load.)
+     * Then this publishes the finished loads and, if there are lots of 
+     * unpublished loads, waits for some of them to finish.
+     *
+     * @param load a new load
+     * @param changedDatasetIDs the datasetIDs which need to be updated in Lucene
+     * @param datasetsThatFailedToLoadSB
+     * @return false if this thread was interrupted
+     */
+    private boolean startLoad(DatasetLoad load, StringArray changedDatasetIDs,
+        StringBuilder datasetsThatFailedToLoadSB) {
+
+        StringArray sourceIDs = localSourceDatasetIDs(load.xml);
+        for (int i = 0; i < sourceIDs.size(); i++) {
+            DatasetLoad dependency = unpublishedLoads.get(sourceIDs.get(i));
+            if (dependency != null && dependency != load && 
+                dependency.dependents.indexOf(load) < 0) {
+                dependency.dependents.add(load);
+                load.nPendingDependencies++;
+            }
+        }
+        unpublishedLoads.put(load.datasetID, load);
+        if (load.nPendingDependencies == 0) 
+            submitLoad(load);
+        else if (reallyVerbose) String2.log("*** datasetID=" + load.datasetID + 
+            " will be loaded after " + load.nPendingDependencies + " dataset(s) it depends on.");
+
+        return publishLoads(2 * EDStatic.nLoadDatasetsThreads, changedDatasetIDs, 
+            datasetsThatFailedToLoadSB);
+    }
+
+    /** This submits a load (which doesn't have any pending dependencies) to loadPool. */
+    private void submitLoad(final DatasetLoad load) {
+        loadPool.execute(new Runnable() {
+            public void run() {
+                load.construct(erddap);
+                finishedLoads.add(load);
+            }
+        });
+    }
+
+    /**
+     * This publishes (puts in place in erddap) all of the finished loads, 
+     * then waits for and publishes more finished loads until there are 
+     * at most maxUnpublished unpublished loads.
+     *
+     * @param maxUnpublished use 0 to wait for all of the loads to finish
+     * @param changedDatasetIDs the datasetIDs which need to be updated in Lucene
+     * @param datasetsThatFailedToLoadSB
+     * @return false if this thread was interrupted
+     */
+    private boolean publishLoads(int maxUnpublished, StringArray changedDatasetIDs,
+        StringBuilder datasetsThatFailedToLoadSB) {
+
+        DatasetLoad load = finishedLoads.poll();
+        while (load != null || unpublishedLoads.size() > maxUnpublished) {
+            if (load == null) {
+                try {
+                    load = finishedLoads.take();
+                } catch (InterruptedException e) {
+                    interrupt(); //restore the interrupted status, which take() cleared
+                }
+            }
+            if (load == null || 
+                !publishLoad(load, changedDatasetIDs, datasetsThatFailedToLoadSB)) {
+                String tError = "*** The LoadDatasets thread was interrupted at " + 
+                    Calendar2.getCurrentISODateTimeStringLocalTZ();
+                String2.log(tError);
+                warningsFromLoadDatasets.append(tError + "\n\n");
+                updateLucene(erddap, changedDatasetIDs);
+                lastLuceneUpdate = System.currentTimeMillis();
+                return false;
+            }
+            load = finishedLoads.poll();
+        }
+        return true;
+    }
+
+    /**
+     * This puts a finished load's dataset in place in erddap 
+     * (or, if it failed to load, removes the old version), 
+     * submits the loads which were waiting for it,
+     * and triggers the subscription and onChange actions.
+     * This is only called by the LoadDatasets thread, so the changes to erddap's 
+     * data structures, Lucene, and the actions are done by one thread, in order.
+     *
+     * @param load a finished load
+     * @param changedDatasetIDs the datasetIDs which need to be updated in Lucene
+     * @param datasetsThatFailedToLoadSB
+     * @return false if this thread was interrupted (so the dataset wasn't put in place)
+     */
+    private boolean publishLoad(DatasetLoad load, StringArray changedDatasetIDs,
+        StringBuilder datasetsThatFailedToLoadSB) {
+
+        //check for interruption right before making changes to Erddap
+        if (isInterrupted()) //this is a likely place to catch interruption
+            return false;
+
+        String tId = load.datasetID;
+        String startError = "datasets.xml error on line #" + load.lineNumber;
+        String change = "";
+        EDD dataset = load.dataset, oldDataset = null;
+        boolean oldCatInfoRemoved = false;
+        Throwable loadThrowable = load.throwable;
+        if (dataset != null) {
+            try {
+                //do several things in quick succession...
+                //(??? synchronize on (?) if really need avoid inconsistency)
+
+                //was there a dataset with the same datasetID?
+                oldDataset = erddap.gridDatasetHashMap.get(tId);
+                if (oldDataset == null)
+                    oldDataset = erddap.tableDatasetHashMap.get(tId);
+
+                //if oldDataset existed, remove its info from categoryInfo
+                //(check now, before put dataset in place, in case EDDGrid <--> EDDTable)
+                if (oldDataset != null) {
+                    addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
+                    oldCatInfoRemoved = true;
+                }
+
+                //put dataset in place
+                //(hashMap.put atomically replaces old version with new)
+                if ((oldDataset == null || oldDataset instanceof EDDGrid) &&
+                                              dataset instanceof EDDGrid) {
+                    erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //was/is grid
+
+                } else if ((oldDataset == null || oldDataset instanceof EDDTable) &&
+                                                     dataset instanceof EDDTable) {
+                    erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //was/is table 
+
+                } else if (dataset instanceof EDDGrid) {
+                    if (oldDataset != null)
+                        erddap.tableDatasetHashMap.remove(tId);   //was table
+                    erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //now grid
+
+                } else if (dataset instanceof EDDTable) {
+                    if (oldDataset != null)
+                        erddap.gridDatasetHashMap.remove(tId);    //was grid
+                    erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //now table
+                }
+
+                //add new info to categoryInfo
+                addRemoveDatasetInfo(ADD, erddap.categoryInfo, dataset); 
+
+                //clear the dataset's cache 
+                //since axis values may have changed and "last" may have changed
+                File2.deleteAllFiles(dataset.cacheDirectory());                           
+           
+                change = dataset.changed(oldDataset);
+                if (change.length() == 0 && dataset instanceof EDDTable)
+                    change = "The dataset was reloaded.";
+
+            } catch (Throwable t) {
+                loadThrowable = t;
+            }
+        }
+
+        if (loadThrowable != null) {
+            dataset = null;
+
+            //actually remove old dataset (if any existed)
+            EDD tDataset = erddap.gridDatasetHashMap.remove(tId); //always ensure it was removed
+            if (tDataset == null)
+                tDataset = erddap.tableDatasetHashMap.remove(tId);
+            if (oldDataset == null)
+                oldDataset = tDataset;
+
+            //if oldDataset existed, remove it from categoryInfo
+            if (oldDataset != null && !oldCatInfoRemoved)
+                addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
+
+            String tError = startError + "\n" + 
+                "While trying to load datasetID=" + tId + " (after " +
+                    load.loadMillis + " ms)\n" +
+                MustBe.throwableToString(loadThrowable);
+            String2.log(tError);
+            warningsFromLoadDatasets.append(tError + "\n\n");
+            datasetsThatFailedToLoadSB.append(tId + ", ");
+
+            //change      (if oldDataset=null and new one failed to load, no change)
+            if (oldDataset != null)  
+                change = tError;
+        }
+        if (verbose) String2.log("change=" + change);
+
+        //load time statistics
+        if (dataset == null) {
+            String2.distribute(load.loadMillis, EDStatic.datasetLoadFailedDistribution24);
+            String2.distribute(load.loadMillis, EDStatic.datasetLoadFailedDistributionTotal);
+        } else {
+            String2.distribute(load.loadMillis, EDStatic.datasetLoadSucceededDistribution24);
+            String2.distribute(load.loadMillis, EDStatic.datasetLoadSucceededDistributionTotal);
+        }
+        loadTimeMillis.add(load.loadMillis);
+        loadTimeDatasetIDs.add(tId);
+
+        //start the loads which were waiting for this one (now that it is in place)
+        unpublishedLoads.remove(tId);
+        for (int i = 0; i < load.dependents.size(); i++) {
+            DatasetLoad dependent = load.dependents.get(i);
+            if (--dependent.nPendingDependencies == 0)
+                submitLoad(dependent);
+        }
+        load.dependents.clear();
+        load.dataset = null; //so they can be gc'd
+        load.xml = null;
+
+        //whether succeeded (new or swapped in) or failed (removed), it was changed
+        changedDatasetIDs.add(tId);
+        if (System.currentTimeMillis() - lastLuceneUpdate >
+            MAX_MILLIS_BEFORE_LUCENE_UPDATE) {
+            updateLucene(erddap, changedDatasetIDs);
+            lastLuceneUpdate = System.currentTimeMillis();
+        }
+
+        //trigger subscription and dataset.onChange actions (after new dataset is in place)
+        EDD cooDataset = dataset == null? oldDataset : dataset; //currentOrOld, may be null
+        tryToDoActions(erddap, tId, cooDataset, 
+            startError + " with Subscriptions",
+            change);
+        return true;
+    }
+
+    /**
+     * This returns the datasetIDs of the datasets on this ERDDAP which are
+     * referred to by the sourceUrl's in a dataset's xml 
+     * (e.g., a local EDDGridFromErddap or EDDTableFromErddap).
+     *
+     * @param xml the raw xml for a dataset
+     * @return the datasetIDs (perhaps size=0)
+     */
+    static StringArray localSourceDatasetIDs(String xml) {
+        StringArray ids = new StringArray();
+        Matcher matcher = SOURCE_URL_PATTERN.matcher(xml);
+        while (matcher.find()) {
+            String tUrl = XML.decodeEntities(matcher.group(1).trim());
+            if ((tUrl.indexOf("/griddap/") > 0 || tUrl.indexOf("/tabledap/") > 0) &&
+                EDStatic.urlIsThisComputer(tUrl))
+                ids.add(File2.getNameNoExtension(tUrl));
+        }
+        return ids;
+    }
+
+    /**
+     * This returns a report of the slowest dataset loads in this run of LoadDatasets.
+     *
+     * @param n the maximum number of datasets to be listed
+     * @return the report (one line per dataset)
+     */
+    public String slowestLoadsString(int n) {
+        StringBuilder sb = new StringBuilder();
+        ArrayList table = new ArrayList();
+        table.add(loadTimeMillis);
+        int rank[] = PrimitiveArray.rank(table, new int[]{0}, new boolean[]{false}); //descending
+        for (int i = 0; i < Math.min(n, rank.length); i++) 
+            sb.append(String2.right("" + loadTimeMillis.get(rank[i]), 10) + " ms  " + 
+                loadTimeDatasetIDs.get(rank[i]) + "\n");
+        return sb.toString();
+    }
+
+    /** 
+     * A DatasetLoad has the information for constructing one dataset (from a 
+     * copy of its xml from datasets.xml) in a loadPool thread, and the result.
+     */
+    static class DatasetLoad {
+        final String datasetID, type;
+        final long lineNumber; //of the <dataset> tag in datasets.xml
+        String xml;  //the raw <dataset>...</dataset> xml
+        //the loads which depend on this one (and can't start until this one is published)
+        final ArrayList<DatasetLoad> dependents = new ArrayList();
+        int nPendingDependencies = 0;
+
+        //set by construct()
+        volatile EDD dataset; 
+        volatile Throwable throwable; 
+        volatile long loadMillis;
+
+        DatasetLoad(String tDatasetID, String tType, long tLineNumber, String tXml) {
+            datasetID = tDatasetID;
+            type = tType;
+            lineNumber = tLineNumber;
+            xml = tXml;
+        }
+
+        /** 
+         * This constructs the dataset, setting dataset (if successful) 
+         * or throwable (if trouble), and loadMillis.
+         */
+        void construct(Erddap erddap) {
+            long time = System.currentTimeMillis();
+            SimpleXMLReader tReader = null;
+            try {
+                tReader = new SimpleXMLReader(new ByteArrayInputStream(String2.stringToUtf8Bytes(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><erddapDatasets>" + 
+                    xml + "</erddapDatasets>")), 
+                    "erddapDatasets");
+                tReader.setLineNumber(lineNumber); //so error messages have datasets.xml line numbers
+                tReader.nextTag(); //<erddapDatasets><dataset>
+                dataset = EDD.fromXml(erddap, type, tReader);
+            } catch (Throwable t) {
+                throwable = t;
+            } finally {
+                if (tReader != null)
+                    tReader.close();
+                loadMillis = System.currentTimeMillis() - time;
+            }
         }
     }
 
@@ -1124,47 +1396,22 @@ public class LoadDatasets extends Thread {
                 //do the actions
                 if (verbose) String2.log("nActions=" + actions.size());
 
-                for (int a = 0; a < actions.size(); a++) {
-                    String tAction = actions.get(a);
-                    if (verbose) 
-                        String2.log("doing action[" + a + "]=" + tAction);
-                    try {
-                        if (tAction.startsWith("http://") ||
-                            tAction.startsWith("https://")) {
-                            if (tAction.indexOf("/" + EDStatic.warName + "/setDatasetFlag.txt?") > 0 &&
-                                EDStatic.urlIsThisComputer(tAction)) { 
-                                //a dataset on this ERDDAP! just set the flag
-                                //e.g., https://coastwatch.pfeg.noaa.gov/erddap/setDatasetFlag.txt?datasetID=ucsdHfrW500&flagKey=##########
-                                String trDatasetID = String2.extractCaptureGroup(tAction, ".*datasetID=(.+?)&.*", 1);
-                                if (trDatasetID == null)
-                                    SSR.touchUrl(tAction, 60000); //fall back; just do it
-                                else EDD.requestReloadASAP(trDatasetID);
-
-                            } else {
-                                //but don't get the input stream! I don't need to, 
-                                //and it is a big security risk.
-                                SSR.touchUrl(tAction, 60000);
-                            }
-                        } else if (tAction.startsWith("mailto:")) {
-                            String tEmail = tAction.substring("mailto:".length());
-                            EDStatic.email(tEmail,
-                                "datasetID=" + tDatasetID + " changed.", 
-                                "datasetID=" + tDatasetID + " changed.\n" + 
-                                change + "\n\n*****\n" +
-                                (a < nSubscriptionActions? 
-                                    EDStatic.subscriptions.messageToRequestList(tEmail) :
-                                    "This action is specified in datasets.xml.\n")); 
-                                    //It would be nice to include unsubscribe 
-                                    //info for this action, 
-                                    //but it isn't easily available.
-                        } else {
-                            throw new RuntimeException("The startsWith of action=" + 
-                                tAction + " is not allowed!");
+                if (EDStatic.actionOutbox != null) {
+                    //usually: let the outbox's threads deliver them
+                    EDStatic.actionOutbox.add(tDatasetID, actions, nSubscriptionActions, change);
+                } else {
+                    for (int a = 0; a < actions.size(); a++) {
+                        String tAction = actions.get(a);
+                        if (verbose) 
+                            String2.log("doing action[" + a + "]=" + tAction);
+                        try {
+                            ActionOutbox.doAction(tDatasetID, tAction, 
+                                a < nSubscriptionActions, change);
+                        } catch (Throwable actionT) {
+                            String2.log(subject + "\n" + 
+                                "action=" + tAction + "\ncaught:\n" + 
+                                MustBe.throwableToString(actionT));
                         }
-                    } catch (Throwable actionT) {
-                        String2.log(subject + "\n" + 
-                            "action=" + tAction + "\ncaught:\n" + 
-                            MustBe.throwableToString(actionT));
                     }
                 }
 
@@ -1184,6 +1431,7 @@ public class LoadDatasets extends Thread {
 
     /** 
      * If useLuceneSearchEngine, this will update the Lucene indices for these datasets.
+     * If useOriginalSearchEngine, this will update the OriginalSearchIndex for these datasets.
      *
      * <p>Since luceneIndexWriter is thread-safe, this is thread-safe to the extent 
      * that data structures won't be corrupted; 
@@ -1195,8 +1443,30 @@ public class LoadDatasets extends Thread {
      */
     public static void updateLucene(Erddap erddap, StringArray datasetIDs) {
 
-        //update dataset's Document in Lucene Index
+        //update dataset's tokens in OriginalSearchIndex
         int nDatasetIDs = datasetIDs.size();
+        if (EDStatic.useOriginalSearchEngine && nDatasetIDs > 0) {
+            try {
+                long tTime = System.currentTimeMillis();
+                for (int idi = 0; idi < nDatasetIDs; idi++) {
+                    String tDatasetID = datasetIDs.get(idi); 
+                    EDD edd = erddap.gridDatasetHashMap.get(tDatasetID);
+                    if (edd == null) 
+                        edd = erddap.tableDatasetHashMap.get(tDatasetID);
+                    OriginalSearchIndex.update(tDatasetID, edd == null? null : edd.searchBytes());
+                }
+                String2.log("update OriginalSearchIndex finished." + 
+                    " nDatasets=" + OriginalSearchIndex.size() + 
+                    " nChanged=" + nDatasetIDs + 
+                    " time=" + (System.currentTimeMillis() - tTime) + "ms");
+            } catch (Throwable t) {
+                //not serious: datasets which aren't indexed are still searched
+                String2.log(String2.ERROR + " while updating OriginalSearchIndex:\n" + 
+                    MustBe.throwableToString(t));
+            }
+        }
+
+        //update dataset's Document in Lucene Index
         if (EDStatic.useLuceneSearchEngine && nDatasetIDs > 0) {
 
             try {
@@ -1258,11 +1528,11 @@ public class LoadDatasets extends Thread {
                 }
             }
 
-            //last: update indexReader+indexSearcher 
+            //last: make and warm a new indexReader+indexSearcher 
             //(might as well take the time to do it in this thread,
-            //rather than penalize next search request)
-            EDStatic.needNewLuceneIndexReader = true; 
-            EDStatic.luceneIndexSearcher();
+            //rather than penalize next search request;
+            //searches use the old one until the new one is swapped in)
+            LuceneSearcherManager.refresh();
         }
         datasetIDs.clear();
     }
@@ -1309,6 +1579,7 @@ public class LoadDatasets extends Thread {
         //do in quick succession...   (???synchronized on ?)
         String2.log("*** unloading datasetID=" + tId);
         addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldEdd); 
+        Metrics.removeDataset(tId);
         File2.deleteAllFiles(EDD.cacheDirectory(tId));
         changedDatasetIDs.add(tId);
         if (needToUpdateLucene)
@@ -363,6 +363,7 @@ public abstract class EDD {
     protected int updateEveryNMillis = 0; // <=0 means incremental update not active
     protected ReentrantLock updateLock = null;  //setUpdateEveryNMillis creates this if needed
     protected long cumulativeUpdateTime = 0, updateCount = 0; 
+    private EDDFileTableJournal fileTableJournal = null; //fileTableJournal() creates this if needed
 
     /**
      * This constructs an EDDXxx based on the information in an .xml file.
@@ -2496,8 +2497,7 @@ public abstract class EDD {
         String2.log("EDD.requestReloadASAP " + tDatasetID);
         if (String2.isFileNameSafe(tDatasetID)) {
             String2.writeToFile(EDStatic.fullResetFlagDirectory + tDatasetID, tDatasetID);
-            EDStatic.tally.add("RequestReloadASAP (since startup)", tDatasetID);
-            EDStatic.tally.add("RequestReloadASAP (since last daily report)", tDatasetID);
+            EDStatic.tally.addSince("RequestReloadASAP", tDatasetID);
         }
     }
 
@@ -10258,7 +10258,7 @@ public abstract class EDD {
     /**
      * This returns a new, empty, badFileMap (a thead-safe map).
      */
-    public ConcurrentHashMap newEmptyBadFileMap() {
+    public static ConcurrentHashMap newEmptyBadFileMap() {
         return new ConcurrentHashMap(16, 0.75f, 4);
     }
 
@@ -10286,34 +10286,9 @@ public abstract class EDD {
      * @return a thread-safe ConcurrentHashMap
      */
     public ConcurrentHashMap readBadFileMap() {
-        ConcurrentHashMap badFilesMap = newEmptyBadFileMap();
         String fileName = badFileMapFileName();
-        String msg = "badFileMap has old/unsupported ";
         try {
-            if (File2.isFile(fileName)) {
-                Table badTable = new Table();
-                Test.ensureEqual(badTable.readEnhancedFlatNc(fileName, null), 
-                    Table.ENHANCED_VERSION, msg + "enhancedVersion");
-                Test.ensureEqual(badTable.globalAttributes().getInt(_dirFileTableVersion_),
-                    DIR_FILE_TABLE_VERSION, msg + _dirFileTableVersion_);
-
-                int nRows = badTable.nRows();
-                int nColumns = badTable.nColumns();
-                Test.ensureEqual(nColumns, 3, "Unexpected number of columns.");
-                Test.ensureEqual(badTable.getColumnName(0), "fileName", "Unexpected column#0 name.");
-                Test.ensureEqual(badTable.getColumnName(1), "lastMod",  "Unexpected column#1 name.");
-                Test.ensureEqual(badTable.getColumnName(2), "reason",   "Unexpected column#2 name.");
-                Test.ensureEqual(badTable.getColumn(0).elementClassString(), "String", "Unexpected column#0 type.");
-                Test.ensureEqual(badTable.getColumn(1).elementClassString(), "long",   "Unexpected column#1 type.");
-                Test.ensureEqual(badTable.getColumn(2).elementClassString(), "String", "Unexpected column#2 type.");
-                if (nRows == 0)
-                    return badFilesMap;
-                for (int row = 0; row < nRows; row++) 
-                    badFilesMap.put(badTable.getStringData(0, row), 
-                        new Object[]{new Long(badTable.getLongData(1, row)),
-                                     badTable.getStringData(2, row)});
-            }
-            return badFilesMap;
+            return File2.isFile(fileName)? readBadFileMap(fileName) : newEmptyBadFileMap();
         } catch (Throwable t) {
             String subject = "Error while reading table of badFiles";
             String content = fileName + "\n" + 
@@ -10321,12 +10296,48 @@ public abstract class EDD {
             String2.log(subject);
             String2.log(content);
             File2.delete(fileName);
-            if (content.indexOf(msg) < 0) 
+            if (content.indexOf(BAD_FILE_MAP_OLD_MSG) < 0) 
                 EDStatic.email(EDStatic.emailEverythingToCsv, subject, content);
             return newEmptyBadFileMap();
         }
     }
 
+    private final static String BAD_FILE_MAP_OLD_MSG = "badFileMap has old/unsupported ";
+
+    /**
+     * This reads a badFile table (e.g., from writeBadFileMap) from disk and creates
+     * a thread-safe ConcurrentHashMap 
+     * (key=dir#/fileName, value=Object[0=(Long)lastMod, 1=(String)reason]).
+     *
+     * @param fileName the full name of the badFile table
+     * @return a thread-safe ConcurrentHashMap
+     * @throws Throwable if trouble (e.g., the file doesn't exist or is for an old version)
+     */
+    public static ConcurrentHashMap readBadFileMap(String fileName) throws Throwable {
+        ConcurrentHashMap badFilesMap = newEmptyBadFileMap();
+        String msg = BAD_FILE_MAP_OLD_MSG;
+        Table badTable = new Table();
+        Test.ensureEqual(badTable.readEnhancedFlatNc(fileName, null), 
+            Table.ENHANCED_VERSION, msg + "enhancedVersion");
+        Test.ensureEqual(badTable.globalAttributes().getInt(_dirFileTableVersion_),
+            DIR_FILE_TABLE_VERSION, msg + _dirFileTableVersion_);
+
+        int nRows = badTable.nRows();
+        int nColumns = badTable.nColumns();
+        Test.ensureEqual(nColumns, 3, "Unexpected number of columns.");
+        Test.ensureEqual(badTable.getColumnName(0), "fileName", "Unexpected column#0 name.");
+        Test.ensureEqual(badTable.getColumnName(1), "lastMod",  "Unexpected column#1 name.");
+        Test.ensureEqual(badTable.getColumnName(2), "reason",   "Unexpected column#2 name.");
+        Test.ensureEqual(badTable.getColumn(0).elementClassString(), "String", "Unexpected column#0 type.");
+        Test.ensureEqual(badTable.getColumn(1).elementClassString(), "long",   "Unexpected column#1 type.");
+        Test.ensureEqual(badTable.getColumn(2).elementClassString(), "String", "Unexpected column#2 type.");
+        for (int row = 0; row < nRows; row++) 
+            badFilesMap.put(badTable.getStringData(0, row), 
+                new Object[]{Long.valueOf(badTable.getLongData(1, row)),
+                             badTable.getStringData(2, row)});
+        return badFilesMap;
+    }
+
     /**
      * This makes a badFile table from a thread-safe ConcurrentHashMap  
      * (key=dir#/fileName, value=Object[0=(Long)lastMod, 1=(String)reason]).
@@ -10337,7 +10348,7 @@ public abstract class EDD {
      * @param badFilesMap
      * @throws Throwable if trouble
      */
-    public void writeBadFileMap(String randomFileName, ConcurrentHashMap badFilesMap) 
+    public static void writeBadFileMap(String randomFileName, ConcurrentHashMap badFilesMap) 
         throws Throwable {
 
         try {
@@ -10540,6 +10551,9 @@ public abstract class EDD {
             File2.rename(     dirTableFileName + random, dirTableFileName);
             //do fileTable last: more changes, more important
             File2.rename(    fileTableFileName + random, fileTableFileName); 
+            //the journal's changes are in the new fileTable
+            fileTableJournal().delete();
+            EDDFileScan.deleteCheckpoint(datasetDir());
             if (reallyVerbose) String2.log("save fileTable(first 5 rows)=\n" + 
                 fileTable.dataToString(5));
         } catch (Throwable t) {
@@ -10557,6 +10571,77 @@ public abstract class EDD {
         }
     }
 
+    /**
+     * This returns the journal (and read-only snapshot) of this dataset's
+     * dirTable and fileTable (used by EDDGridFromFiles and EDDTableFromFiles).
+     */
+    public synchronized EDDFileTableJournal fileTableJournal() {
+        if (fileTableJournal == null)
+            fileTableJournal = new EDDFileTableJournal(datasetDir());
+        return fileTableJournal;
+    }
+
+    /** 
+     * This is used by EDDGridFromFiles' and EDDTableFromFiles' lowUpdate to save
+     * the changes to a few files. Usually, this just appends the changed rows
+     * to the fileTable journal and saves the badFileMap, instead of rewriting 
+     * the whole dirTable and fileTable. If the journal can't be used, this calls
+     * saveDirTableFileTableBadFiles. If the journal is big, this compacts it
+     * (in a background thread).
+     * Either way, the new tables become the fileTableJournal's snapshot,
+     * so the caller mustn't change them after this.
+     *
+     * @param tStandardizeWhat see saveDirTableFileTableBadFiles
+     * @param nOldDirs the number of rows in tDirTable before the changes
+     * @param changedFullNames the full names of the files which (may have) changed
+     * @throws Throwable if trouble
+     */
+    public void saveFileTableChanges(int tStandardizeWhat, 
+        Table tDirTable, int nOldDirs, Table tFileTable, 
+        ConcurrentHashMap badFileMap, StringArray changedFullNames) throws Throwable {
+
+        EDDFileTableJournal journal = fileTableJournal();
+        if (!journal.append(tDirTable, nOldDirs, tFileTable, changedFullNames)) {
+            saveDirTableFileTableBadFiles(tStandardizeWhat, tDirTable, tFileTable, badFileMap); //throws Throwable
+            journal.setSnapshot(tDirTable, tFileTable);
+            return;
+        }
+
+        //the badFileMap is small, so save all of it
+        String badFilesFileName = badFileMapFileName();
+        if (badFileMap.isEmpty()) {
+            File2.delete(badFilesFileName);
+        } else {
+            int random = Math2.random(Integer.MAX_VALUE);
+            try {
+                writeBadFileMap(badFilesFileName + random, badFileMap);
+                File2.rename(badFilesFileName + random, badFilesFileName);
+            } catch (Throwable t) {
+                File2.delete(badFilesFileName + random);
+                throw t;
+            }
+        }
+
+        //compact the journal?  (It waits for updateLock, so it runs after this lowUpdate.)
+        if (journal.needsCompaction() && updateLock != null) {
+            journal.compactInBackground(() -> {
+                updateLock.lock();
+                try {
+                    Table tables[] = journal.currentSnapshot();
+                    if (tables == null) 
+                        return; //the snapshot was dropped, so compact after the next change
+                    saveDirTableFileTableBadFiles(tStandardizeWhat, tables[0], tables[1], null); 
+                    journal.setSnapshot(tables[0], tables[1]);
+                    if (verbose) String2.log(datasetID + " compacted " + journal.journalName());
+                } catch (Throwable t) {
+                    throw new RuntimeException(t);
+                } finally {
+                    updateLock.unlock();
+                }
+            });
+        }
+    }
+
     /**
      * This returns a HashMap with the variable=value entries from a userQuery.
      * If any names are the same, the last name=value will be in the hashmap.
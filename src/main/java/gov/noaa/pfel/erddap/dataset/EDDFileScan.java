@@ -0,0 +1,371 @@
+/*
+ * EDDFileScan Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.ReadScheduler;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This is used by the EDDGridFromFiles and EDDTableFromFiles constructors
+ * to read the new and changed files in parallel when they (re)make the fileTable.
+ *
+ * <p>The constructor's loop still merges the files into the fileTable and badFileMap
+ * in order (so the results are the same as before), but it gets each file's info
+ * via get(), which reads ahead: the next few files on the list of files to be read
+ * are read (by EDStatic.readScheduler's threads, up to the dataset's nThreads at once)
+ * while the loop merges the earlier ones.
+ *
+ * <p>Every checkpointEveryNMillis, the loop calls checkpoint(), which saves the
+ * partly updated dirTable, fileTable, and badFileMap as datasetDir()/dirTable.checkpoint.nc,
+ * fileTable.checkpoint.nc, and badFiles.checkpoint.nc. If ERDDAP is restarted before
+ * the constructor finishes, the next constructor starts from the checkpoint
+ * (see loadCheckpoint()), so the files which were already read (including the
+ * bad files) aren't read again.
+ * saveDirTableFileTableBadFiles deletes the checkpoint files.
+ *
+ * <p>The progress of the scans in progress is shown on the status page.
+ */
+public class EDDFileScan {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    public final static String DIR_TABLE_CHECKPOINT_FILENAME  = "dirTable.checkpoint.nc";
+    public final static String FILE_TABLE_CHECKPOINT_FILENAME = "fileTable.checkpoint.nc";
+    public final static String BAD_FILES_CHECKPOINT_FILENAME  = "badFiles.checkpoint.nc";
+
+    /** How often the constructor saves a checkpoint. */
+    public static long checkpointEveryNMillis = 10 * Calendar2.MILLIS_PER_MINUTE;
+
+    /** This reads one file (by its index in the constructor's list of files). */
+    public interface Reader {
+        Object read(int i) throws Throwable;
+    }
+
+    /** datasetID -&gt; the scan in progress */
+    private final static ConcurrentHashMap<String, EDDFileScan> activeScans = new ConcurrentHashMap();
+
+    private final String datasetID;
+    private final String datasetDir;
+    private final IntArray toRead;  //the indexes of the files to be read, ascending
+    private final int nThreads;
+    private final Reader reader;
+    private final ReadScheduler readScheduler; //null means EDStatic.readScheduler
+    private final long startTime = System.currentTimeMillis();
+    private ReadScheduler.Session session = null;
+
+    //these are just used by the constructor's thread
+    private final TreeMap<Integer, FutureTask> readAhead = new TreeMap();
+    private int nextToRead = 0; //the next toRead index to be read ahead
+    private long lastCheckpoint = startTime;
+    private int nReadAtCheckpoint = 0;
+
+    //these are also read by the status page
+    private volatile int nRead = 0, nBad = 0, nCheckpoints = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param tDatasetID
+     * @param tDatasetDir the dataset's datasetDir() (for the checkpoint files)
+     * @param tToRead the indexes (ascending) of the files which the constructor's loop
+     *    is expected to read
+     * @param tNThreads the maximum number of files to read at once.
+     *    If &lt;= 1, get() just reads the file.
+     * @param tReader which reads one file
+     */
+    public EDDFileScan(String tDatasetID, String tDatasetDir, IntArray tToRead,
+        int tNThreads, Reader tReader) {
+
+        this(tDatasetID, tDatasetDir, tToRead, tNThreads, tReader, null);
+    }
+
+    /**
+     * This is like the other constructor, but the files are read by 
+     * tReadScheduler's threads (e.g., in unit tests, where EDStatic isn't available).
+     *
+     * @param tReadScheduler if null, EDStatic.readScheduler is used
+     */
+    EDDFileScan(String tDatasetID, String tDatasetDir, IntArray tToRead,
+        int tNThreads, Reader tReader, ReadScheduler tReadScheduler) {
+
+        datasetID  = tDatasetID;
+        datasetDir = tDatasetDir;
+        toRead     = tToRead;
+        nThreads   = tNThreads;
+        reader     = tReader;
+        readScheduler = tReadScheduler;
+        activeScans.put(datasetID, this);
+        if (verbose) String2.log("EDDFileScan " + datasetID + " nToRead=" + toRead.size() +
+            " nThreads=" + nThreads);
+    }
+
+    /**
+     * This returns the info from file #i (waiting for it if it is being read).
+     * Calls to get() must be in ascending order of i.
+     *
+     * @param i the index of the file in the constructor's list of files
+     * @return the reader's result
+     * @throws Throwable if the reader threw it
+     */
+    public Object get(int i) throws Throwable {
+        //cancel read-aheads which the loop skipped (shouldn't happen)
+        while (!readAhead.isEmpty() && readAhead.firstKey() < i)
+            readAhead.pollFirstEntry().getValue().cancel(true);
+
+        //read ahead
+        if (nThreads > 1) {
+            while (nextToRead < toRead.size() && toRead.get(nextToRead) < i)
+                nextToRead++;
+            while (nextToRead < toRead.size() && readAhead.size() < 2 * nThreads) {
+                final int tI = toRead.get(nextToRead++);
+                FutureTask task = new FutureTask(() -> {
+                    try {
+                        return reader.read(tI);
+                    } catch (Throwable t) {
+                        throw new ExecutionException(t);
+                    }
+                });
+                readAhead.put(tI, task);
+                if (session == null)
+                    session = (readScheduler == null? EDStatic.readScheduler : readScheduler)
+                        .newSession(datasetID, nThreads);
+                session.submit(task);
+            }
+        }
+
+        FutureTask task = readAhead.remove(i);
+        try {
+            if (task == null)
+                return reader.read(i);
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                Throwable t = e;
+                while (t instanceof ExecutionException && t.getCause() != null) //may be doubly wrapped
+                    t = t.getCause();
+                throw t;
+            }
+        } catch (Throwable t) {
+            nBad++;
+            throw t;
+        } finally {
+            nRead++;
+        }
+    }
+
+    /**
+     * This makes the list of files which the constructor's loop will read:
+     * the files with a valid lastMod and size which aren't in the fileTable
+     * (or whose lastMod or size changed) and aren't known to be bad.
+     *
+     * @param tFileDirIndexPA, tFileNamePA, tFileLastModPA, tFileSizePA the info
+     *   for the files which were found
+     * @param badFileMap
+     * @param ftDirIndex, ftFileList, ftLastMod, ftSize the fileTable's info
+     * @param filesAreLocal if false, a file's size may be approximate, so it isn't compared
+     * @return the indexes (ascending) of the files which will be read
+     */
+    public static IntArray makeToRead(ShortArray tFileDirIndexPA, StringArray tFileNamePA,
+        LongArray tFileLastModPA, LongArray tFileSizePA, ConcurrentHashMap badFileMap,
+        ShortArray ftDirIndex, StringArray ftFileList, LongArray ftLastMod, LongArray ftSize,
+        boolean filesAreLocal) {
+
+        int nft = ftFileList.size();
+        HashMap<String, Integer> ftRowMap = new HashMap(Math2.roundToInt(1.4 * nft));
+        for (int ftPo = 0; ftPo < nft; ftPo++)
+            ftRowMap.put(ftDirIndex.get(ftPo) + "/" + ftFileList.get(ftPo), ftPo);
+
+        IntArray tToRead = new IntArray();
+        int ntft = tFileNamePA.size();
+        for (int i = 0; i < ntft; i++) {
+            long tLastMod = tFileLastModPA.get(i);
+            long tSize    = tFileSizePA.get(i);
+            if (tLastMod == 0 || tLastMod == Long.MAX_VALUE || tSize < 0 || tSize == Long.MAX_VALUE)
+                continue; //the loop rejects it
+            String key = tFileDirIndexPA.get(i) + "/" + tFileNamePA.get(i);
+            Object bfi = badFileMap.get(key);
+            if (bfi != null && ((Long)((Object[])bfi)[0]).longValue() == tLastMod)
+                continue; //still bad
+            Integer ftPo = ftRowMap.get(key);
+            if (ftPo != null && ftLastMod.get(ftPo) == tLastMod &&
+                (ftSize.get(ftPo) == tSize || !filesAreLocal))
+                continue; //unchanged
+            tToRead.add(i);
+        }
+        return tToRead;
+    }
+
+    /** This returns true if it is time to save a checkpoint. */
+    public boolean checkpointDue() {
+        return nRead > nReadAtCheckpoint &&
+            System.currentTimeMillis() - lastCheckpoint >= checkpointEveryNMillis;
+    }
+
+    /**
+     * This saves the partly updated dirTable, fileTable, and badFileMap as the checkpoint files.
+     * This won't throw an exception (it just logs the problem).
+     *
+     * @param tStandardizeWhat the dataset's standardizeWhat (or -1 if not applicable)
+     * @param dirTable
+     * @param fileTable
+     * @param badFileMap
+     */
+    public void checkpoint(int tStandardizeWhat, Table dirTable, Table fileTable,
+        ConcurrentHashMap badFileMap) {
+        long time = System.currentTimeMillis();
+        String dirName  = datasetDir + DIR_TABLE_CHECKPOINT_FILENAME;
+        String fileName = datasetDir + FILE_TABLE_CHECKPOINT_FILENAME;
+        String badName  = datasetDir + BAD_FILES_CHECKPOINT_FILENAME;
+        int random = Math2.random(Integer.MAX_VALUE);
+        try {
+            if (tStandardizeWhat >= 0 && tStandardizeWhat < Integer.MAX_VALUE)
+                fileTable.globalAttributes().set(EDD.STANDARDIZEWHAT, tStandardizeWhat);
+             dirTable.globalAttributes().set(EDD._dirFileTableVersion_, EDD.DIR_FILE_TABLE_VERSION);
+            fileTable.globalAttributes().set(EDD._dirFileTableVersion_, EDD.DIR_FILE_TABLE_VERSION);
+            dirTable.saveAsEnhancedFlatNc( dirName  + random); //throws exceptions
+            fileTable.saveAsEnhancedFlatNc(fileName + random); //throws exceptions
+            if (!badFileMap.isEmpty())
+                EDD.writeBadFileMap(badName + random, badFileMap); //throws exceptions
+            File2.rename(dirName  + random, dirName);
+            File2.rename(fileName + random, fileName);
+            //badFiles after the tables: if it isn't renamed (e.g., a crash), the older
+            //badFiles (which has fewer files, but matches the tables' dirIndexes) is used
+            if (badFileMap.isEmpty())
+                File2.delete(badName);
+            else File2.rename(badName + random, badName);
+            nCheckpoints++;
+            if (verbose) String2.log("EDDFileScan " + datasetID + " saved a checkpoint after nRead=" +
+                nRead + " time=" + (System.currentTimeMillis() - time) + "ms");
+        } catch (Throwable t) {
+            File2.delete(dirName  + random);
+            File2.delete(fileName + random);
+            File2.delete(badName  + random);
+            String2.log(String2.ERROR + " while saving the checkpoint for " + datasetID + "\n" +
+                MustBe.throwableToString(t));
+        }
+        lastCheckpoint = System.currentTimeMillis();
+        nReadAtCheckpoint = nRead;
+    }
+
+    /**
+     * This tries to load the checkpoint files (if any) which were saved by an
+     * unfinished constructor. If they are older than fileTable.nc (so they are
+     * from an earlier constructor) or if there is trouble, they are deleted.
+     *
+     * @param tDatasetDir the dataset's datasetDir()
+     * @param tStandardizeWhat the dataset's standardizeWhat (or -1 if not applicable)
+     * @param badFileMap an empty badFileMap. If the checkpoint is loaded, this receives
+     *   the checkpoint's bad files (use it instead of the dataset's badFileMap).
+     * @return {dirTable, fileTable} or null if none or trouble
+     */
+    public static Table[] loadCheckpoint(String tDatasetDir, int tStandardizeWhat,
+        ConcurrentHashMap badFileMap) {
+        String dirName  = tDatasetDir + DIR_TABLE_CHECKPOINT_FILENAME;
+        String fileName = tDatasetDir + FILE_TABLE_CHECKPOINT_FILENAME;
+        String badName  = tDatasetDir + BAD_FILES_CHECKPOINT_FILENAME;
+        if (!File2.isFile(fileName))
+            return null;
+        try {
+            if (File2.isFile(tDatasetDir + EDD.FILE_TABLE_FILENAME) &&
+                File2.getLastModified(tDatasetDir + EDD.FILE_TABLE_FILENAME) >
+                File2.getLastModified(fileName))
+                throw new RuntimeException("The checkpoint is older than " + EDD.FILE_TABLE_FILENAME + ".");
+            Table tables[] = new Table[2];
+            for (int t = 0; t < 2; t++) {
+                tables[t] = new Table();
+                tables[t].readEnhancedFlatNc(t == 0? dirName : fileName, null);
+                if (tables[t].globalAttributes().getInt(EDD._dirFileTableVersion_) !=
+                    EDD.DIR_FILE_TABLE_VERSION)
+                    throw new RuntimeException("old/unsupported " + EDD._dirFileTableVersion_);
+            }
+            if (tStandardizeWhat >= 0 && tStandardizeWhat < Integer.MAX_VALUE &&
+                tables[1].globalAttributes().getInt(EDD.STANDARDIZEWHAT) != tStandardizeWhat)
+                throw new RuntimeException("Different value for 'standardizeWhat'.");
+            if (File2.isFile(badName)) //if no file, there were no bad files
+                badFileMap.putAll(EDD.readBadFileMap(badName));
+            String2.log("EDDFileScan: resuming from the checkpoint in " + tDatasetDir +
+                " (" + tables[1].nRows() + " rows in fileTable, " + 
+                badFileMap.size() + " bad files)");
+            return tables;
+        } catch (Throwable t) {
+            String2.log("EDDFileScan: deleting the checkpoint in " + tDatasetDir + "\n" +
+                MustBe.throwableToShortString(t));
+            deleteCheckpoint(tDatasetDir);
+            badFileMap.clear();
+            return null;
+        }
+    }
+
+    /** This deletes the checkpoint files (if any). */
+    public static void deleteCheckpoint(String tDatasetDir) {
+        File2.delete(tDatasetDir + DIR_TABLE_CHECKPOINT_FILENAME);
+        File2.delete(tDatasetDir + FILE_TABLE_CHECKPOINT_FILENAME);
+        File2.delete(tDatasetDir + BAD_FILES_CHECKPOINT_FILENAME);
+    }
+
+    /**
+     * This cancels any read-aheads and releases the resources.
+     * Call this (in a finally clause) when the loop is done (normally or not).
+     */
+    public void close() {
+        Iterator<FutureTask> it = readAhead.values().iterator();
+        while (it.hasNext())
+            it.next().cancel(true);
+        readAhead.clear();
+        if (session != null)
+            session.close();
+        activeScans.remove(datasetID, this);
+        if (verbose) String2.log("EDDFileScan " + datasetID + " finished. nRead=" + nRead +
+            " nBad=" + nBad + " nCheckpoints=" + nCheckpoints +
+            " time=" + Calendar2.elapsedTimeString(System.currentTimeMillis() - startTime));
+    }
+
+    /** This returns the progress of the scans in progress (or "") for the status page. */
+    public static String statusString() {
+        if (activeScans.isEmpty())
+            return "";
+        StringBuilder sb = new StringBuilder("File scans in progress:\n");
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, EDDFileScan> entry : activeScans.entrySet()) {
+            EDDFileScan scan = entry.getValue();
+            int tNRead = scan.nRead;
+            int nToRead = scan.toRead.size();
+            long elapsed = now - scan.startTime;
+            sb.append("  " + String2.left(entry.getKey(), 30) +
+                " read " + tNRead + " of " + nToRead + " files (nBad=" + scan.nBad +
+                ", nThreads=" + scan.nThreads + ", nCheckpoints=" + scan.nCheckpoints +
+                ") elapsed=" + Calendar2.elapsedTimeString(elapsed) +
+                (tNRead == 0? "" : " remaining~=" +
+                    Calendar2.elapsedTimeString(elapsed * Math.max(0, nToRead - tNRead) / tNRead)) +
+                "\n");
+        }
+        return sb.toString();
+    }
+
+}
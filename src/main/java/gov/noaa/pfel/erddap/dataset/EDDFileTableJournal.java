@@ -0,0 +1,567 @@
+/*
+ * EDDFileTableJournal Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * This is an append-only journal of the changes to the fileTable (and dirTable)
+ * of an EDDGridFromFiles or EDDTableFromFiles, so that lowUpdate only has to
+ * write the few rows that changed, not rewrite the whole dirTable.nc and fileTable.nc.
+ * When the journal gets big, it is compacted (in a background thread):
+ * the current tables are saved as full files (via EDD.saveDirTableFileTableBadFiles)
+ * and the journal is deleted.
+ *
+ * <p>The journal (datasetDir()/fileTable.journal) has a header (which identifies
+ * the fileTable.nc which it applies to and the fileTable's column names and types),
+ * then batches of records (one batch per lowUpdate). Each batch has its length and
+ * CRC32, so a batch that was only partly written (e.g., because of a crash)
+ * is ignored. Since replay() stops at the first bad batch, the bad tail is
+ * truncated (by replay(), or by append() before it appends) so that later batches
+ * aren't written after it (where they would never be replayed). The records are:
+ * DIR (a dirName added to the dirTable),
+ * PUT (a fileTable row, identified by dirName+fileName, added or replaced), and
+ * REMOVE (a fileTable row removed).
+ * replay() applies the records to the tables read from dirTable.nc and fileTable.nc;
+ * the caller then re-sorts the fileTable as needed.
+ *
+ * <p>This also holds the dataset's current, read-only snapshot of the
+ * {dirTable, fileTable}. For datasets with fileTableInMemory=false, requests share
+ * the snapshot (instead of each request reading the files). It is held via a
+ * SoftReference (so it is dropped if memory is scarce) and is replaced (never
+ * modified) when the tables change. Users of the snapshot mustn't change the tables
+ * (clone them first).
+ */
+public class EDDFileTableJournal {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    public final static String JOURNAL_FILENAME = "fileTable.journal";
+
+    /**
+     * The journal is compacted when it is bigger than this fraction of fileTable.nc's size
+     * (but not before it is compactMinBytes).
+     */
+    public static double compactFraction = 0.25;
+    public static long compactMinBytes = 64 * 1024;
+
+    private final static int MAGIC = 0x4654_4a31; //"FTJ1"
+    private final static byte DIR = 1, PUT = 2, REMOVE = 3;
+
+    /** The background thread (and the pending journals) for compaction. */
+    private final static ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "EDDFileTableJournal compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final static Set<String> compactPending = ConcurrentHashMap.newKeySet();
+
+    private final static AtomicLong nBatchesAppended = new AtomicLong();
+    private final static AtomicLong nBatchesReplayed = new AtomicLong();
+    private final static AtomicLong nCompactions     = new AtomicLong();
+    private final static AtomicLong nSnapshotHits    = new AtomicLong();
+    private final static AtomicLong nSnapshotLoads   = new AtomicLong();
+
+    private final String datasetDir;
+    private final String journalName;
+
+    /** append() and the truncation of a bad tail get this lock. */
+    private final Object fileLock = new Object();
+    /** The journal's length when it was last known to end with a good batch (or -1). Guarded by fileLock. */
+    private long validLength = -1;
+
+    /** The current snapshot: {dirTable, fileTable} and the stamp of the files it reflects. */
+    private static class Snapshot {
+        final String stamp;
+        final Table tables[];
+
+        Snapshot(String tStamp, Table tTables[]) {
+            stamp = tStamp;
+            tables = tTables;
+        }
+    }
+    private volatile SoftReference<Snapshot> snapshot;
+
+    /**
+     * The constructor.
+     *
+     * @param tDatasetDir the dataset's datasetDir() (with the dirTable.nc and fileTable.nc)
+     */
+    public EDDFileTableJournal(String tDatasetDir) {
+        datasetDir = tDatasetDir;
+        journalName = tDatasetDir + JOURNAL_FILENAME;
+    }
+
+    /** The journal's full file name. */
+    public String journalName() {
+        return journalName;
+    }
+
+    /**
+     * This deletes the journal (e.g., because the full dirTable.nc and fileTable.nc
+     * were just saved) and forgets the snapshot.
+     */
+    public void delete() {
+        snapshot = null;
+        synchronized (fileLock) {
+            File2.delete(journalName);
+            validLength = -1;
+        }
+    }
+
+    /**
+     * This identifies the current state of the files on disk:
+     * fileTable.nc's lastModified and length, and the journal's length.
+     */
+    private String stamp() {
+        String ftName = datasetDir + EDD.FILE_TABLE_FILENAME;
+        return File2.getLastModified(ftName) + "/" + File2.length(ftName) + "/" +
+            File2.length(journalName);
+    }
+
+    /** The header identifies the fileTable.nc and the fileTable's columns. */
+    private static String baseStamp(String ftName) {
+        return File2.getLastModified(ftName) + "/" + File2.length(ftName);
+    }
+
+    /** The number of bytes in the header (the strings are ASCII, so writeUTF writes 2 + length bytes). */
+    private static long headerLength(String baseStamp, String columns) {
+        return 4 + 2 + baseStamp.length() + 2 + columns.length();
+    }
+
+    /**
+     * This reads the next batch.
+     *
+     * @param dis positioned at the start of a batch
+     * @param remaining the number of bytes in the journal after the current position
+     * @return the batch, or null if there are no more good batches
+     *   (the end of the journal, or a partly written batch or a batch with a bad CRC,
+     *   e.g., because of a crash)
+     */
+    private byte[] readBatch(DataInputStream dis, long remaining) throws IOException {
+        if (remaining < 12)
+            return null;
+        try {
+            int nBytes = dis.readInt();
+            long crcValue = dis.readLong();
+            if (nBytes < 0 || nBytes > remaining - 12)
+                return null;
+            byte batch[] = new byte[nBytes];
+            dis.readFully(batch);
+            CRC32 crc = new CRC32();
+            crc.update(batch);
+            if (crc.getValue() != crcValue) {
+                String2.log("EDDFileTableJournal: ignoring a bad batch at the end of " + journalName);
+                return null;
+            }
+            return batch;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * This removes the bad tail (a partly written batch or a batch with a bad CRC)
+     * from the journal. The caller must hold fileLock.
+     *
+     * @param goodLength the length of the journal up to the end of the last good batch
+     */
+    private void truncate(long goodLength) throws IOException {
+        String2.log("EDDFileTableJournal: removing the bad tail of " + journalName +
+            " (nBytes=" + (File2.length(journalName) - goodLength) + ")");
+        try (RandomAccessFile raf = new RandomAccessFile(journalName, "rw")) {
+            raf.setLength(goodLength);
+            raf.getFD().sync();
+        }
+        validLength = goodLength;
+    }
+
+    /** This identifies the fileTable's column names and types. */
+    private static String columnsSignature(Table fileTable) {
+        StringBuilder sb = new StringBuilder();
+        int nCols = fileTable.nColumns();
+        for (int col = 0; col < nCols; col++)
+            sb.append(fileTable.getColumnName(col) + " " +
+                fileTable.getColumn(col).elementClassString() + "\n");
+        return String2.md5Hex(sb.toString()); //short, since writeUTF is limited to 64KB
+    }
+
+    /** Strings are written as UTF-8 with an int length (writeUTF is limited to 64KB, which csvValues may exceed). */
+    private static void writeValue(DataOutputStream dos, PrimitiveArray pa, int row) throws Exception {
+        if (pa instanceof StringArray) {
+            byte bar[] = pa.getString(row).getBytes(StandardCharsets.UTF_8);
+            dos.writeInt(bar.length);
+            dos.write(bar);
+        } else {
+            pa.writeDos(dos, row);
+        }
+    }
+
+    private static void readValue(DataInputStream dis, PrimitiveArray pa) throws Exception {
+        if (pa instanceof StringArray) {
+            byte bar[] = new byte[dis.readInt()];
+            dis.readFully(bar);
+            ((StringArray)pa).add(new String(bar, StandardCharsets.UTF_8));
+        } else {
+            pa.readDis(dis, 1);
+        }
+    }
+
+    /**
+     * This appends a batch of changes to the journal and makes the tables the current snapshot.
+     * This is used by lowUpdate (which holds updateLock, so only one thread appends at a time).
+     *
+     * @param dirTable the new dirTable (with dirs nOldDirs+ added)
+     * @param nOldDirs the number of rows in the dirTable before the changes
+     * @param fileTable the new fileTable (col 0 is dirIndex, col 1 is fileName)
+     * @param fullNames the full names of the files which changed. If a file isn't
+     *   in the new fileTable, a REMOVE record is written.
+     * @return true if the changes were appended.
+     *   false if the journal can't be used (e.g., there is no fileTable.nc or
+     *   its columns are different), so the caller should save the full tables.
+     */
+    public boolean append(Table dirTable, int nOldDirs, Table fileTable,
+        StringArray fullNames) {
+
+        String ftName = datasetDir + EDD.FILE_TABLE_FILENAME;
+        if (!File2.isFile(ftName) || !File2.isFile(datasetDir + EDD.DIR_TABLE_FILENAME))
+            return false;
+        synchronized (fileLock) {
+            try {
+                //if there is a journal, is it for this fileTable.nc and these columns?
+                String columns = columnsSignature(fileTable);
+                boolean newJournal = !File2.isFile(journalName);
+                if (!newJournal) {
+                    long length = File2.length(journalName);
+                    long goodLength;
+                    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(journalName)))) {
+                        String tBaseStamp = baseStamp(ftName);
+                        if (dis.readInt() != MAGIC ||
+                            !dis.readUTF().equals(tBaseStamp) ||
+                            !dis.readUTF().equals(columns))
+                            return false;
+
+                        //unless this wrote the end of the journal, find the end of the last good batch
+                        goodLength = headerLength(tBaseStamp, columns);
+                        if (length == validLength) {
+                            goodLength = length;
+                        } else {
+                            byte batch[];
+                            while ((batch = readBatch(dis, length - goodLength)) != null)
+                                goodLength += 12 + batch.length;
+                        }
+                    }
+                    if (goodLength < length) 
+                        truncate(goodLength);
+                }
+
+                //make the batch
+                StringArray dirList    = (StringArray)dirTable.getColumn(0);
+                ShortArray  ftDirIndex =  (ShortArray)fileTable.getColumn(0);
+                StringArray ftFileList = (StringArray)fileTable.getColumn(1);
+                int nCols = fileTable.nColumns();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                DataOutputStream dos = new DataOutputStream(baos);
+                int nDirs = dirList.size();
+                for (int dir = nOldDirs; dir < nDirs; dir++) {
+                    dos.writeByte(DIR);
+                    dos.writeUTF(dirList.get(dir));
+                }
+                int nFullNames = fullNames.size();
+                for (int f = 0; f < nFullNames; f++) {
+                    String fullName = fullNames.get(f);
+                    String dirName  = File2.getDirectory(fullName);
+                    String fileName = File2.getNameAndExtension(fullName);
+                    int dirIndex = dirList.indexOf(dirName);
+                    int row = dirIndex < 0? -1 :
+                        EDD.findInFileTable(dirIndex, fileName, fileTable, ftDirIndex, ftFileList);
+                    dos.writeByte(row < 0? REMOVE : PUT);
+                    dos.writeUTF(dirName);
+                    dos.writeUTF(fileName);
+                    if (row >= 0) {
+                        for (int col = 2; col < nCols; col++)
+                            writeValue(dos, fileTable.getColumn(col), row);
+                    }
+                }
+                dos.flush();
+                byte batch[] = baos.toByteArray();
+                CRC32 crc = new CRC32();
+                crc.update(batch);
+
+                //write it
+                ByteArrayOutputStream baos2 = new ByteArrayOutputStream(batch.length + 200);
+                DataOutputStream dos2 = new DataOutputStream(baos2);
+                if (newJournal) {
+                    dos2.writeInt(MAGIC);
+                    dos2.writeUTF(baseStamp(ftName));
+                    dos2.writeUTF(columns);
+                }
+                dos2.writeInt(batch.length);
+                dos2.writeLong(crc.getValue());
+                dos2.write(batch);
+                dos2.flush();
+                try (FileOutputStream fos = new FileOutputStream(journalName, true)) { //append
+                    fos.write(baos2.toByteArray());
+                    fos.getFD().sync();
+                }
+                validLength = File2.length(journalName);
+                nBatchesAppended.incrementAndGet();
+                setSnapshot(dirTable, fileTable);
+                if (verbose) String2.log("EDDFileTableJournal appended " + nFullNames +
+                    " changes to " + journalName + " (nBytes=" + File2.length(journalName) + ")");
+                return true;
+
+            } catch (Throwable t) {
+                String2.log(String2.ERROR + " while appending to " + journalName + "\n" +
+                    MustBe.throwableToString(t));
+                validLength = -1;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * This applies the changes in the journal (if any) to the tables just read from
+     * dirTable.nc and fileTable.nc. The caller must then sort the fileTable as needed
+     * (new rows are at the end).
+     * If the journal is for a different fileTable.nc (e.g., the tables were saved
+     * but the journal wasn't deleted), it is deleted and ignored.
+     * If the journal ends with a bad batch (e.g., because of a crash), it is truncated
+     * after the last good batch, so the batches which are appended later will be replayed.
+     *
+     * @param dirTable the dirTable from dirTable.nc
+     * @param fileTable the fileTable from fileTable.nc
+     * @return the number of batches applied
+     * @throws Exception if trouble (e.g., the journal is for other columns)
+     */
+    public int replay(Table dirTable, Table fileTable) throws Exception {
+        if (!File2.isFile(journalName))
+            return 0;
+        StringArray dirList    = (StringArray)dirTable.getColumn(0);
+        ShortArray  ftDirIndex =  (ShortArray)fileTable.getColumn(0);
+        StringArray ftFileList = (StringArray)fileTable.getColumn(1);
+        int nCols = fileTable.nColumns();
+        int nBatches = 0;
+        long length = File2.length(journalName);
+        long goodLength;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(journalName)))) {
+            if (dis.readInt() != MAGIC)
+                throw new RuntimeException("Unexpected journal format.");
+            String tBaseStamp = baseStamp(datasetDir + EDD.FILE_TABLE_FILENAME);
+            if (!dis.readUTF().equals(tBaseStamp)) {
+                String2.log("EDDFileTableJournal: deleting stale " + journalName);
+                File2.delete(journalName);
+                return 0;
+            }
+            String columns = columnsSignature(fileTable);
+            if (!dis.readUTF().equals(columns))
+                throw new RuntimeException("The journal's columns are different than the fileTable's.");
+            goodLength = headerLength(tBaseStamp, columns);
+
+            //key=dirIndex/fileName value=row
+            HashMap<String, Integer> rowMap = new HashMap();
+            int nRows = fileTable.nRows();
+            for (int row = 0; row < nRows; row++)
+                rowMap.put(ftDirIndex.get(row) + "/" + ftFileList.get(row), row);
+            BitSet removed = new BitSet();
+            PrimitiveArray values[] = new PrimitiveArray[nCols];
+            for (int col = 2; col < nCols; col++)
+                values[col] = PrimitiveArray.factory(fileTable.getColumn(col).elementClass(), 1, false);
+
+            byte batch[];
+            while ((batch = readBatch(dis, length - goodLength)) != null) {
+                goodLength += 12 + batch.length;
+
+                DataInputStream bdis = new DataInputStream(new ByteArrayInputStream(batch));
+                while (bdis.available() > 0) {
+                    byte type = bdis.readByte();
+                    String dirName = bdis.readUTF();
+                    if (type == DIR) {
+                        if (dirList.indexOf(dirName) < 0)
+                            dirList.add(dirName);
+                        continue;
+                    }
+                    String fileName = bdis.readUTF();
+                    int dirIndex = dirList.indexOf(dirName);
+                    Integer row = dirIndex < 0? null : rowMap.get(dirIndex + "/" + fileName);
+                    if (type == REMOVE) {
+                        if (row != null) {
+                            removed.set(row);
+                            rowMap.remove(dirIndex + "/" + fileName);
+                        }
+                    } else if (type == PUT) {
+                        if (dirIndex < 0) {
+                            dirIndex = dirList.size();
+                            dirList.add(dirName);
+                        }
+                        for (int col = 2; col < nCols; col++) {
+                            values[col].clear();
+                            readValue(bdis, values[col]);
+                        }
+                        if (row == null) {
+                            row = fileTable.nRows();
+                            ftDirIndex.addInt(dirIndex);
+                            ftFileList.add(fileName);
+                            for (int col = 2; col < nCols; col++)
+                                fileTable.getColumn(col).addFromPA(values[col], 0);
+                            rowMap.put(dirIndex + "/" + fileName, row);
+                        } else {
+                            for (int col = 2; col < nCols; col++)
+                                fileTable.getColumn(col).setFromPA(row, values[col], 0);
+                        }
+                    } else {
+                        throw new RuntimeException("Unexpected journal record type=" + type);
+                    }
+                }
+                nBatches++;
+            }
+
+            if (!removed.isEmpty()) {
+                BitSet keep = new BitSet();
+                keep.set(0, fileTable.nRows());
+                keep.andNot(removed);
+                fileTable.justKeep(keep);
+            }
+        }
+
+        //remove the bad tail (unless a batch was just appended after it, which already removed it)
+        if (goodLength < length) {
+            synchronized (fileLock) {
+                if (File2.length(journalName) == length)
+                    truncate(goodLength);
+            }
+        }
+        nBatchesReplayed.addAndGet(nBatches);
+        if (verbose) String2.log("EDDFileTableJournal replayed " + nBatches +
+            " batches from " + journalName);
+        return nBatches;
+    }
+
+    /**
+     * This returns true if the journal is big enough that it should be compacted.
+     */
+    public boolean needsCompaction() {
+        long jLength = File2.length(journalName);
+        return jLength > Math.max(compactMinBytes,
+            compactFraction * File2.length(datasetDir + EDD.FILE_TABLE_FILENAME));
+    }
+
+    /**
+     * This runs the compaction task in the background thread
+     * (unless this journal's compaction is already pending).
+     *
+     * @param task which saves the current tables as full files
+     */
+    public void compactInBackground(Runnable task) {
+        if (!compactPending.add(journalName))
+            return;
+        compactor.execute(() -> {
+            try {
+                task.run();
+                nCompactions.incrementAndGet();
+            } catch (Throwable t) {
+                String2.log(String2.ERROR + " while compacting " + journalName + "\n" +
+                    MustBe.throwableToString(t));
+            } finally {
+                compactPending.remove(journalName);
+            }
+        });
+    }
+
+    /**
+     * This makes {dirTable, fileTable} the current snapshot.
+     * The caller mustn't change the tables after this.
+     */
+    public void setSnapshot(Table dirTable, Table fileTable) {
+        snapshot = new SoftReference(new Snapshot(stamp(), new Table[]{dirTable, fileTable}));
+    }
+
+    /**
+     * This returns the current snapshot if it is still valid, else null.
+     *
+     * @return {dirTable, fileTable} for read-only use, or null
+     */
+    public Table[] currentSnapshot() {
+        SoftReference<Snapshot> ref = snapshot;
+        Snapshot s = ref == null? null : ref.get();
+        return s != null && s.stamp.equals(stamp())? s.tables : null;
+    }
+
+    /**
+     * This returns the current snapshot, or (if it isn't valid) loads it.
+     * If several threads need to load it at once, only one does.
+     *
+     * @param loader which reads dirTable.nc and fileTable.nc and replays the journal,
+     *    returning {dirTable, fileTable} (or null if trouble)
+     * @return {dirTable, fileTable} for read-only use, or null if trouble
+     */
+    public Table[] snapshot(Supplier<Table[]> loader) {
+        Table tables[] = currentSnapshot();
+        if (tables != null) {
+            nSnapshotHits.incrementAndGet();
+            return tables;
+        }
+        synchronized (this) {
+            tables = currentSnapshot(); //another thread may have just loaded it
+            if (tables != null) {
+                nSnapshotHits.incrementAndGet();
+                return tables;
+            }
+            String tStamp = stamp();
+            tables = loader.get();
+            if (tables != null) {
+                nSnapshotLoads.incrementAndGet();
+                snapshot = new SoftReference(new Snapshot(tStamp, tables));
+            }
+            return tables;
+        }
+    }
+
+    /** This returns the statistics for the status page. */
+    public static String statsString() {
+        return "EDDFileTableJournal: nBatchesAppended=" + nBatchesAppended.get() +
+            " nBatchesReplayed=" + nBatchesReplayed.get() +
+            " nCompactions=" + nCompactions.get() +
+            " nSnapshotHits=" + nSnapshotHits.get() +
+            " nSnapshotLoads=" + nSnapshotLoads.get();
+    }
+
+}
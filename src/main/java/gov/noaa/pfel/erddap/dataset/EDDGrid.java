@@ -27,6 +27,7 @@ import dods.dap.*;
 import gov.noaa.pfel.coastwatch.griddata.DataHelper;
 import gov.noaa.pfel.coastwatch.griddata.Grid;
 import gov.noaa.pfel.coastwatch.griddata.Matlab;
+import gov.noaa.pfel.coastwatch.griddata.Nc3StreamWriter;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
@@ -35,6 +36,7 @@ import gov.noaa.pfel.coastwatch.sgt.GraphDataLayer;
 import gov.noaa.pfel.coastwatch.sgt.SgtGraph;
 import gov.noaa.pfel.coastwatch.sgt.SgtMap;
 import gov.noaa.pfel.coastwatch.sgt.SgtUtil;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.HtmlWidgets;
 import gov.noaa.pfel.coastwatch.util.SSR;
 import gov.noaa.pfel.erddap.util.*;
@@ -346,6 +348,43 @@ public abstract class EDDGrid extends EDD {
     protected int nThreads = -1; //interpret invalid values (like -1) as EDStatic.nGridThreads
     protected boolean dimensionValuesInMemory = true;
 
+    /** The disk cache of source data chunks (or null if not active). See setChunkCache(). */
+    protected EDDGridChunkCache chunkCache = null;
+    protected int chunkCacheShape[] = null;
+    protected int chunkCacheMB = 0;
+
+    /**
+     * This sets up (or turns off) the disk cache of source data chunks 
+     * (see EDDGridChunkCache) for this dataset. Only subclasses with remote sources
+     * (EDDGridFromDap and EDDGridFromErddap) use the cache.
+     * fromXml calls this after the dataset is constructed, 
+     * based on &lt;chunkCacheMB&gt; and &lt;chunkCacheShape&gt;.
+     * Chunks older than reloadEveryNMinutes are requested from the source again.
+     *
+     * @param tChunkCacheShape the chunk size for each axis, or null for the defaults.
+     * @param tChunkCacheMB the maximum size of the chunk files, in MB.
+     *   &lt;=0 or Integer.MAX_VALUE (e.g., an invalid value) disables the cache.
+     */
+    public void setChunkCache(int tChunkCacheShape[], int tChunkCacheMB) {
+        chunkCacheShape = tChunkCacheShape;
+        chunkCacheMB = tChunkCacheMB;
+        chunkCache = EDDGridChunkCache.register(datasetID, chunkCacheDirectory(), 
+            tChunkCacheShape, axisVariables, tChunkCacheMB, getReloadEveryNMinutes(),
+            nThreads >= 1 && nThreads < Integer.MAX_VALUE? nThreads : EDStatic.nGridThreads);
+        if (chunkCache != null && verbose)
+            String2.log("  " + datasetID + " chunkCacheMB=" + tChunkCacheMB + 
+                " chunkCacheShape=" + String2.toCSSVString(chunkCache.chunkShape()));
+    }
+
+    /** 
+     * The directory for this dataset's chunk cache files (with "/" at end).
+     * This is in datasetDir() (not cacheDirectory()) so the chunks 
+     * survive restarts and aren't removed by the cache cleaner.
+     */
+    public String chunkCacheDirectory() {
+        return datasetDir() + "chunks/";
+    }
+
     /** 
      * This is used by many constructors (and EDDGridFromFiles.lowUpdate)
      * to make an EDVGridAxis axisVariable.
@@ -2560,9 +2599,16 @@ public abstract class EDDGrid extends EDD {
                 dir + fileName + ".nc" : fullName;
             int random = Math2.random(Integer.MAX_VALUE);
 
+            //.nc (unless already cached): stream it, so the response starts right away
+            //and there's no temporary file. (.ncHeader still uses the cached .nc file.)
+            if (fileTypeName.equals(".nc") && !File2.isFile(cacheFullName) &&
+                saveAsNc3Stream(requestUrl, userDapQuery, outputStreamSource))
+                return;
+
             //thread-safe creation of the file 
             //(If there are almost simultaneous requests for the same one, only one thread will make it.)
-            synchronized(String2.canonical(cacheFullName)) {
+            FileLocks.Lock fileLock = FileLocks.lock(cacheFullName);
+            try {
                 if (File2.isFile(cacheFullName)) { //don't 'touch()'; files for latest data will change
                     if (verbose) String2.log("  reusing cached " + cacheFullName);
 
@@ -2619,6 +2665,8 @@ public abstract class EDDGrid extends EDD {
 
                     File2.isFile(cacheFullName, 5); //for possible waiting thread, wait till file is visible via operating system
                 }
+            } finally {
+                fileLock.unlock();
             }
 
             //then handle .ncHeader
@@ -2626,7 +2674,8 @@ public abstract class EDDGrid extends EDD {
                 fileTypeName.equals(".nc4Header")) {
                 //thread-safe creation of the file 
                 //(If there are almost simultaneous requests for the same one, only one thread will make it.)
-                synchronized(String2.canonical(fullName)) {
+                FileLocks.Lock headerLock = FileLocks.lock(fullName);
+                try {
                     String error = String2.writeToFile(fullName + random, 
                         NcHelper.ncdump(cacheFullName, "-h"), String2.UTF_8); //!!!this doesn't do anything to internal " in a String attribute value.
                     if (error.length() == 0) {
@@ -2635,6 +2684,8 @@ public abstract class EDDGrid extends EDD {
                     } else {
                         throw new RuntimeException(error);
                     }
+                } finally {
+                    headerLock.unlock();
                 }
             }
 
@@ -8181,6 +8232,102 @@ Attributes {
 
     }
  
+    /**
+     * Save the grid data as a NetCDF-3 .nc file, streamed directly to the outputStream.
+     * Since the shape of the response is known before any data is read,
+     * the header is written right away and then each data variable's values are
+     * written chunk by chunk, as they are gotten from the source.
+     * So, unlike saveAsNc, this doesn't make a temporary file, doesn't hold all of the 
+     * data in memory, and isn't limited to 2GB (it uses the 64-bit offset format if needed).
+     * The file has the same dimensions, variables, attributes, and data as the file
+     * made by saveAsNc(netcdf3, ..., keepUnusedAxes=true, lonAdjust=0).
+     *
+     * <p>This doesn't handle axis queries or String data variables 
+     * (the maximum String length isn't known until all the data has been read).
+     * For those, this returns false (before the outputStream is gotten)
+     * and the caller should use saveAsNc instead.
+     * 
+     * @param requestUrl the part of the user's request, after EDStatic.baseUrl, before '?'.
+     * @param userDapQuery an OPeNDAP DAP-style query string, still percentEncoded 
+     *   (shouldn't be null). 
+     *   e.g., ATssta[45:1:45][0:1:0][120:10:140][130:10:160]
+     * @param outputStreamSource the source of an outputStream that receives the results,
+     *    usually already buffered.
+     * @return true if the response was written, or false if this request can't be streamed.
+     * @throws Throwable if trouble
+     */
+    public boolean saveAsNc3Stream(String requestUrl, String userDapQuery, 
+        OutputStreamSource outputStreamSource) throws Throwable {
+        if (reallyVerbose) String2.log("  EDDGrid.saveAsNc3Stream"); 
+        long time = System.currentTimeMillis();
+
+        if (isAxisDapQuery(userDapQuery))
+            return false;
+
+        //get gridDataAccessor first, in case of error when parsing query
+        GridDataAccessor gda = new GridDataAccessor(this, requestUrl, userDapQuery, 
+            true, false);  //rowMajor, convertToNaN         
+        GridDataAccessor partialGda = null;
+        try {
+            EDV tDataVariables[] = gda.dataVariables();
+            for (int dv = 0; dv < tDataVariables.length; dv++) {
+                if (tDataVariables[dv].destinationDataTypeClass() == String.class)
+                    return false;
+            }
+            String arrayQuery = buildDapArrayQuery(gda.constraints());
+
+            //define the file
+            Nc3StreamWriter nc = new Nc3StreamWriter();
+            int nAxisVariables = axisVariables.length;
+            int dims[] = new int[nAxisVariables];
+            for (int av = 0; av < nAxisVariables; av++) 
+                dims[av] = nc.addDimension(axisVariables[av].destinationName(), 
+                    gda.axisValues(av).size());
+            for (int av = 0; av < nAxisVariables; av++) 
+                nc.addVariable(axisVariables[av].destinationName(), 
+                    gda.axisValues(av).elementClass(), //nc3 long->double is done by nc. No Strings as axes.
+                    new int[]{dims[av]}, gda.axisAttributes(av));
+            for (int dv = 0; dv < tDataVariables.length; dv++) 
+                nc.addVariable(tDataVariables[dv].destinationName(), 
+                    tDataVariables[dv].destinationDataTypeClass(), 
+                    dims, gda.dataAttributes(dv));
+            nc.setGlobalAttributes(gda.globalAttributes());
+            long fileSize = nc.fileSize(); //throws exception if too big for nc3
+
+            //write the header
+            //(I delayed getting actual outputStream as long as possible.)
+            nc.create(outputStreamSource.outputStream("", fileSize));
+
+            //write the axis variables
+            for (int av = 0; av < nAxisVariables; av++) 
+                nc.write(gda.axisValues(av));
+
+            //write the data variables, one after another (so one partialGda per dv) 
+            for (int dv = 0; dv < tDataVariables.length; dv++) {
+                partialGda = new GridDataAccessor(this, requestUrl, 
+                    tDataVariables[dv].destinationName() + arrayQuery, 
+                    true, false);   //rowMajor, convertToNaN
+                PrimitiveArray[] pas = partialGda.getPartialDataValues();
+                while (partialGda.incrementChunk()) 
+                    nc.write(pas[0]);
+                partialGda.releaseResources();
+                partialGda = null;
+            }
+
+            nc.close(); 
+
+            //diagnostic
+            if (reallyVerbose) String2.log("  EDDGrid.saveAsNc3Stream done. fileSize=" + fileSize + 
+                " TIME=" + (System.currentTimeMillis() - time) + "ms\n");
+            return true;
+
+        } finally {
+            gda.releaseResources();
+            if (partialGda != null)
+                partialGda.releaseResources();
+        }
+    }
+
     /**
      * Save the grid data in an NCO JSON .ncoJson file.
      * See http://nco.sourceforge.net/nco.html#json
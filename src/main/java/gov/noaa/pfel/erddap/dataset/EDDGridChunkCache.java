@@ -0,0 +1,851 @@
+/*
+ * EDDGridChunkCache Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.Attributes;
+import com.cohort.array.FloatArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.util.FileLocks;
+import gov.noaa.pfel.coastwatch.util.RegexFilenameFilter;
+import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.ReadScheduler;
+import gov.noaa.pfel.erddap.variable.EDV;
+import gov.noaa.pfel.erddap.variable.EDVGridAxis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This is a read-through disk cache of the source data for an EDDGrid
+ * whose source is remote (EDDGridFromDap and EDDGridFromErddap with
+ * &lt;chunkCacheMB&gt;), so that repeated requests (e.g., WMS tiles and graphs
+ * of a popular model) don't download the same data from the remote server again.
+ *
+ * <p>Each axis is divided into chunks of a fixed size (the chunkShape), so
+ * the chunks form a fixed grid. A request's hyperslab is snapped to the chunks
+ * which it touches. Missing chunks are requested from the source (one data variable
+ * per request, optionally several at once), stored gzipped in
+ * datasetDir()/chunks/ (one file per data variable per chunk), and
+ * the response is assembled from the chunks.
+ * If snapping would get much more data than was requested (e.g., a request
+ * with a big stride), getSourceData returns null and the dataset
+ * gets the data directly from the source.
+ *
+ * <p>A chunk file records the chunk's shape and a signature of the axis values
+ * which it covers. A chunk is only used if both match the current axis values,
+ * so a chunk at the end of an axis which grows (see EDDGridFromDap.lowUpdate),
+ * a chunk whose axis values shifted, and a chunk written by an older instance of
+ * the dataset (e.g., during a reload) are requested from the source again.
+ * setAxes() also clears the cache if the axis values change (other than the
+ * leftmost axis growing), to free the disk space.
+ * A chunk older than maxAgeMillis (the dataset's reloadEveryNMinutes) is also
+ * requested again, since the source's data values may change even if its axis 
+ * values don't (e.g., a forecast model run which replaces the previous one, or a
+ * near-real-time source which fills in the last time point).
+ * When the total size of the chunk files exceeds maxBytes, the least recently
+ * used files are deleted.
+ */
+public class EDDGridChunkCache {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The first 8 bytes of a chunk file (and the format version). */
+    public final static long MAGIC = 0x4552444443433032L; //"ERDDCC02"
+
+    /** The extension of chunk files. */
+    public final static String EXTENSION = ".chunk";
+
+    /** The name of the file (in the cache's directory) with a signature of the axis values. */
+    public final static String AXES_FILE_NAME = "axes.txt";
+
+    /** The default chunk size for the leftmost axis (usually time) and for the other axes. */
+    public final static int DEFAULT_CHUNK_SIZE_0 = 1, DEFAULT_CHUNK_SIZE = 256;
+
+    /**
+     * If the snapped chunks have more than this times the number of values requested,
+     * getSourceData() returns null (so the data is gotten directly from the source).
+     */
+    public static double maxOverFetch = 4;
+
+    /** getSourceData() returns null if a request would touch more than this number of chunks. */
+    public static int maxChunksPerRequest = 10000;
+
+    /** The active caches (for the status page). */
+    private static ConcurrentHashMap<String,EDDGridChunkCache> caches = new ConcurrentHashMap();
+
+    /** The object which gets data from the source, e.g., EDDGridFromDap.getUncachedSourceData. */
+    public interface Source {
+        /**
+         * @param tDataVariables the requested data variables
+         * @param tConstraints  int[nAxisVariables*3] (as for EDDGrid.getSourceData)
+         * @return the axis values and then the data values (as for EDDGrid.getSourceData)
+         */
+        PrimitiveArray[] getSourceData(EDV tDataVariables[], IntArray tConstraints) throws Throwable;
+    }
+
+    private final String datasetID;
+    private final String directory;
+    private final int chunkShape[];
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final int nThreads;
+    private final AtomicLong nBytes = new AtomicLong();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+    private final AtomicLong nHits = new AtomicLong();
+    private final AtomicLong nMisses = new AtomicLong();
+    private final AtomicLong nBypassed = new AtomicLong();
+    private final AtomicLong nEvictions = new AtomicLong();
+    private final AtomicLong nExpired = new AtomicLong();
+
+    /**
+     * The constructor. Use register() instead.
+     */
+    private EDDGridChunkCache(String tDatasetID, String tDirectory, int tChunkShape[],
+        long tMaxBytes, long tMaxAgeMillis, int tNThreads) {
+
+        datasetID = tDatasetID;
+        directory = tDirectory;
+        chunkShape = tChunkShape;
+        maxBytes = tMaxBytes;
+        maxAgeMillis = tMaxAgeMillis;
+        nThreads = Math.max(1, tNThreads);
+        File2.makeDirectory(directory);
+        String names[] = RegexFilenameFilter.recursiveFullNameList(directory,
+            ".*\\" + EXTENSION, false);
+        long sum = 0;
+        for (int i = 0; i < names.length; i++)
+            sum += File2.length(names[i]);
+        nBytes.set(sum);
+    }
+
+    /**
+     * This makes and registers (for the status page) the chunk cache for a dataset
+     * (replacing the dataset's previous cache, if any).
+     *
+     * @param tDatasetID the datasetID
+     * @param tDirectory the directory for the chunk files (with a slash at the end),
+     *   e.g., datasetDir() + "chunks/"
+     * @param tChunkShape the chunk size for each axis (or null or a too-short array
+     *   to use the defaults). Invalid sizes (&lt;1) are changed to the defaults.
+     * @param tAxisVariables the dataset's axis variables (see setAxes())
+     * @param tMaxMB the maximum total size of the chunk files, in MB.
+     *   &lt;=0 or Integer.MAX_VALUE (e.g., an invalid value) disables the cache.
+     * @param tMaxAgeMinutes chunks older than this are requested from the source again
+     *   (usually the dataset's reloadEveryNMinutes).
+     *   &lt;=0 or Integer.MAX_VALUE means chunks never expire.
+     * @param tNThreads the maximum number of chunks to get from the source at once
+     * @return the new cache (or null if tMaxMB disables the cache)
+     */
+    public static EDDGridChunkCache register(String tDatasetID, String tDirectory,
+        int tChunkShape[], EDVGridAxis tAxisVariables[], int tMaxMB, int tMaxAgeMinutes,
+        int tNThreads) {
+
+        if (tMaxMB <= 0 || tMaxMB == Integer.MAX_VALUE) {
+            caches.remove(tDatasetID);
+            return null;
+        }
+        int nAv = tAxisVariables.length;
+        int shape[] = new int[nAv];
+        for (int av = 0; av < nAv; av++) {
+            shape[av] = tChunkShape != null && av < tChunkShape.length? tChunkShape[av] : -1;
+            if (shape[av] < 1 || shape[av] == Integer.MAX_VALUE)
+                shape[av] = av == 0? DEFAULT_CHUNK_SIZE_0 : DEFAULT_CHUNK_SIZE;
+        }
+        EDDGridChunkCache cache = new EDDGridChunkCache(tDatasetID, tDirectory,
+            shape, tMaxMB * (long)Math2.BytesPerMB, 
+            tMaxAgeMinutes <= 0 || tMaxAgeMinutes == Integer.MAX_VALUE? Long.MAX_VALUE :
+                tMaxAgeMinutes * (long)Calendar2.MILLIS_PER_MINUTE, 
+            tNThreads);
+        cache.setAxes(tAxisVariables);
+        caches.put(tDatasetID, cache);
+        return cache;
+    }
+
+    /** This returns the chunk size for each axis. */
+    public int[] chunkShape() {
+        return chunkShape.clone();
+    }
+
+    /**
+     * This compares the axis values with the signature saved in the cache's directory
+     * and clears the cache if they have changed (other than the leftmost axis growing),
+     * then saves the new signature.
+     * Call this when the dataset is constructed and when lowUpdate changes the axis values.
+     *
+     * @param axisVariables the dataset's axis variables
+     */
+    public void setAxes(EDVGridAxis axisVariables[]) {
+        String axesName = directory + AXES_FILE_NAME;
+        FileLocks.Lock lock = FileLocks.lock(axesName);
+        try {
+            String shapeLine = String2.toCSSVString(chunkShape);
+            StringBuilder sb = new StringBuilder();
+            sb.append(shapeLine + "\n");
+            for (int av = 0; av < axisVariables.length; av++) {
+                PrimitiveArray pa = axisVariables[av].sourceValues();
+                sb.append(pa.size() + " " + String2.md5Hex(pa.toString()) + "\n");
+            }
+            String newSig = sb.toString();
+
+            boolean valid = false;
+            if (File2.isFile(axesName)) {
+                String oldSig[] = String2.readFromFile(axesName, String2.UTF_8);
+                String lines[] = oldSig[0].length() == 0? String2.split(oldSig[1], '\n') : null;
+                valid = lines != null && lines.length >= axisVariables.length + 1 && 
+                    lines[0].equals(shapeLine);
+                for (int av = 0; valid && av < axisVariables.length; av++) {
+                    PrimitiveArray pa = axisVariables[av].sourceValues();
+                    String line = lines[av + 1];
+                    int po = line.indexOf(' ');
+                    int oldSize = po < 0? Integer.MAX_VALUE : String2.parseInt(line.substring(0, po));
+                    String oldMd5 = line.substring(po + 1);
+                    //the leftmost axis may have grown
+                    valid = oldSize != Integer.MAX_VALUE &&
+                        (av == 0? oldSize <= pa.size() : oldSize == pa.size()) &&
+                        oldMd5.equals(String2.md5Hex((oldSize == pa.size()? pa :
+                            pa.subset(0, 1, oldSize - 1)).toString()));
+                }
+            }
+            if (!valid) {
+                clear();
+                if (verbose) String2.log("EDDGridChunkCache(" + datasetID +
+                    ") cleared because the axis values changed.");
+            }
+            String error = String2.writeToFile(axesName, newSig, String2.UTF_8);
+            if (error.length() > 0)
+                String2.log(String2.ERROR + " in EDDGridChunkCache.setAxes: " + error);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** This deletes all of the chunk files. */
+    public void clear() {
+        String names[] = RegexFilenameFilter.recursiveFullNameList(directory,
+            ".*\\" + EXTENSION, false);
+        for (int i = 0; i < names.length; i++)
+            File2.delete(names[i]);
+        nBytes.set(0);
+    }
+
+    /**
+     * This gets the requested data from the chunk cache (getting missing chunks
+     * from the source and caching them).
+     *
+     * @param axisVariables the dataset's axis variables
+     * @param tDataVariables the requested data variables
+     * @param tConstraints  int[nAxisVariables*3]
+     *   where av*3+0=startIndex, av*3+1=stride, av*3+2=stopIndex.
+     * @param source the object which gets data from the source
+     * @return the axis values and then the data values (as for EDDGrid.getSourceData),
+     *   or null if the request isn't suitable for the cache (so the caller should
+     *   get the data directly from the source).
+     * @throws Throwable if trouble
+     */
+    public PrimitiveArray[] getSourceData(EDVGridAxis axisVariables[],
+        EDV tDataVariables[], IntArray tConstraints, Source source) throws Throwable {
+
+        int nAv = axisVariables.length;
+        int nDv = tDataVariables.length;
+        PrimitiveArray axisValues[] = new PrimitiveArray[nAv];
+        int start[]     = new int[nAv];
+        int stride[]    = new int[nAv];
+        int stop[]      = new int[nAv];
+        int axisSize[]  = new int[nAv];
+        int nReq[]      = new int[nAv];
+        int firstChunk[] = new int[nAv];
+        int lastChunk[]  = new int[nAv];
+        double nRequested = 1, nCovered = 1, nChunks = 1;
+        for (int av = 0; av < nAv; av++) {
+            start[av]  = tConstraints.get(av * 3);
+            stride[av] = tConstraints.get(av * 3 + 1);
+            stop[av]   = tConstraints.get(av * 3 + 2);
+            axisValues[av] = axisVariables[av].sourceValues(); //one snapshot for the whole request
+            axisSize[av] = axisValues[av].size();
+            if (stop[av] >= axisSize[av]) //axis changed size?
+                return null;
+            nReq[av] = (stop[av] - start[av]) / stride[av] + 1;
+            firstChunk[av] = start[av] / chunkShape[av];
+            lastChunk[av]  = stop[av]  / chunkShape[av];
+            nRequested *= nReq[av];
+            nCovered *= Math.min((lastChunk[av] + 1) * chunkShape[av], axisSize[av]) -
+                firstChunk[av] * chunkShape[av];
+            nChunks *= lastChunk[av] - firstChunk[av] + 1;
+        }
+        if (nCovered > maxOverFetch * nRequested || nChunks > maxChunksPerRequest) {
+            nBypassed.incrementAndGet();
+            return null;
+        }
+
+        //the results
+        PrimitiveArray results[] = new PrimitiveArray[nAv + nDv];
+        for (int av = 0; av < nAv; av++)
+            results[av] = axisValues[av].subset(start[av], stride[av], stop[av]);
+        Math2.ensureArraySizeOkay((long)nRequested, "EDDGridChunkCache");
+        for (int dv = 0; dv < nDv; dv++)
+            results[nAv + dv] = PrimitiveArray.factory(
+                tDataVariables[dv].sourceDataTypeClass(), (int)nRequested, true);
+
+        //make a task for each chunk of each data variable
+        ArrayList<int[]> chunks = new ArrayList();
+        int current[] = firstChunk.clone();
+        while (true) {
+            chunks.add(current.clone());
+            int av = nAv - 1;
+            while (av >= 0 && current[av] == lastChunk[av]) {
+                current[av] = firstChunk[av];
+                av--;
+            }
+            if (av < 0)
+                break;
+            current[av]++;
+        }
+        ArrayList<FutureTask<PrimitiveArray>> tasks = new ArrayList();
+        for (int c = 0; c < chunks.size(); c++) {
+            int chunk[] = chunks.get(c);
+            for (int dv = 0; dv < nDv; dv++) {
+                EDV edv = tDataVariables[dv];
+                tasks.add(new FutureTask(() -> {
+                    try {
+                        return getChunk(edv, chunk, axisValues, source);
+                    } catch (Exception e) {
+                        throw e;  //allowed in call()
+                    } catch (Throwable t) {
+                        throw new ExecutionException(t); //not allowed in call(), so wrap it so it will be unwrapped later
+                    }
+                }));
+            }
+        }
+
+        //run the tasks (a few at a time if nThreads > 1) and copy the chunks into the results
+        ReadScheduler.Session session = nThreads > 1 && tasks.size() > 1?
+            EDStatic.readScheduler.newSession(datasetID, nThreads) : null;
+        try {
+            for (int t = 0; t < tasks.size(); t++) {
+                if (session == null)
+                    tasks.get(t).run();
+                else session.submit(tasks.get(t));
+            }
+            for (int t = 0; t < tasks.size(); t++) {
+                PrimitiveArray chunkPA = tasks.get(t).get(); //throws ExecutionException
+                tasks.set(t, null); //so it can be gc'd
+                copyChunk(chunks.get(t / nDv), chunkPA, results[nAv + t % nDv],
+                    start, stride, stop, nReq, axisSize);
+            }
+        } catch (ExecutionException ee) {
+            Throwable t = ee;
+            while (t instanceof ExecutionException && t.getCause() != null) //may be doubly wrapped
+                t = t.getCause();
+            throw t;
+        } finally {
+            if (session != null)
+                session.close();
+        }
+        return results;
+    }
+
+    /**
+     * This returns the name of a chunk's file.
+     *
+     * @param edv the data variable
+     * @param chunk the chunk's index on each axis
+     */
+    public String chunkFileName(EDV edv, int chunk[]) {
+        StringBuilder sb = new StringBuilder(directory);
+        sb.append(String2.encodeFileNameSafe(edv.sourceName()) + "/");
+        for (int av = 0; av < chunk.length; av++)
+            sb.append(av == 0? "" : "_").append(chunk[av]);
+        return sb.append(EXTENSION).toString();
+    }
+
+    /**
+     * This gets one chunk of one data variable from its file, or
+     * (if the file doesn't exist or has the wrong shape or axis values) from the source
+     * (and then caches it).
+     *
+     * @param axisValues the source values of each axis (a snapshot for the whole request)
+     */
+    private PrimitiveArray getChunk(EDV edv, int chunk[], PrimitiveArray axisValues[], 
+        Source source) throws Throwable {
+
+        int nAv = chunk.length;
+        int shape[] = new int[nAv];
+        IntArray constraints = new IntArray(nAv * 3, false);
+        StringBuilder sigSb = new StringBuilder();
+        for (int av = 0; av < nAv; av++) {
+            int first = chunk[av] * chunkShape[av];
+            int last = Math.min(first + chunkShape[av], axisValues[av].size()) - 1;
+            shape[av] = last - first + 1;
+            constraints.add(first);
+            constraints.add(1);
+            constraints.add(last);
+            sigSb.append(axisValues[av].subset(first, 1, last).toString()).append('\n');
+        }
+        String signature = String2.md5Hex12(sigSb.toString());
+        String fileName = chunkFileName(edv, chunk);
+
+        //only one thread gets a given chunk
+        FileLocks.Lock lock = FileLocks.lock(fileName);
+        try {
+            PrimitiveArray pa = readChunk(fileName, shape, signature);
+            if (pa != null) {
+                nHits.incrementAndGet();
+                return pa;
+            }
+
+            nMisses.incrementAndGet();
+            PrimitiveArray results[] = source.getSourceData(new EDV[]{edv}, constraints);
+            pa = results[nAv];
+            int n = 1;
+            for (int av = 0; av < nAv; av++)
+                n *= shape[av];
+            if (pa.size() != n)
+                throw new WaitThenTryAgainException(EDStatic.waitThenTryAgain +
+                    "\n(Details: The source returned the wrong number of values (" + pa.size() +
+                    ", expected " + n + ") for " + edv.destinationName() + ".)");
+            writeChunk(fileName, shape, signature, pa);
+            return pa;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This reads a chunk file.
+     *
+     * @param signature the signature of the axis values that the chunk covers
+     * @return the data, or null if the file doesn't exist, isn't valid,
+     *    has a different shape or signature, or is older than maxAgeMillis.
+     */
+    private PrimitiveArray readChunk(String fileName, int shape[], String signature) {
+        File file = new File(fileName);
+        if (!file.isFile())
+            return null;
+        try (DataInputStream dis = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(new FileInputStream(file))))) {
+            if (dis.readLong() != MAGIC)
+                return null;
+            if (System.currentTimeMillis() - dis.readLong() > maxAgeMillis) {
+                nExpired.incrementAndGet();
+                return null;
+            }
+            Class elementClass = PrimitiveArray.elementStringToClass(dis.readUTF());
+            int nAv = dis.readInt();
+            if (nAv != shape.length)
+                return null;
+            int n = 1;
+            for (int av = 0; av < nAv; av++) {
+                if (dis.readInt() != shape[av])
+                    return null; //e.g., the axis grew, so a partial chunk is now bigger
+                n *= shape[av];
+            }
+            if (!dis.readUTF().equals(signature))
+                return null; //the axis values changed, e.g., written by an older instance
+            PrimitiveArray pa = PrimitiveArray.factory(elementClass, n, false);
+            pa.readDis(dis, n);
+            file.setLastModified(System.currentTimeMillis()); //for LRU
+            return pa;
+        } catch (Throwable t) {
+            String2.log("EDDGridChunkCache(" + datasetID + ") unable to read " + fileName + ":\n" +
+                MustBe.throwableToString(t));
+            return null;
+        }
+    }
+
+    /** This writes a chunk file (to a temp file, then renames it). */
+    private void writeChunk(String fileName, int shape[], String signature, PrimitiveArray pa) {
+        String tempName = fileName + ".temp" + Math2.random(Integer.MAX_VALUE);
+        long oldLength = File2.length(fileName);
+        try {
+            File2.makeDirectory(File2.getDirectory(fileName));
+            try (DataOutputStream dos = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempName))))) {
+                dos.writeLong(MAGIC);
+                dos.writeLong(System.currentTimeMillis()); //when the data was gotten from the source
+                dos.writeUTF(pa.elementClassString());
+                dos.writeInt(shape.length);
+                for (int av = 0; av < shape.length; av++)
+                    dos.writeInt(shape[av]);
+                dos.writeUTF(signature);
+                pa.writeDos(dos);
+            }
+            File2.rename(tempName, fileName);
+            nBytes.addAndGet(File2.length(fileName) - Math.max(0, oldLength));
+        } catch (Throwable t) {
+            File2.delete(tempName);
+            String2.log("EDDGridChunkCache(" + datasetID + ") unable to write " + fileName + ":\n" +
+                MustBe.throwableToString(t));
+        }
+        if (nBytes.get() > maxBytes)
+            prune();
+    }
+
+    /**
+     * This deletes the least recently used chunk files until nBytes is
+     * less than 80% of maxBytes. If another thread is already pruning, this returns immediately.
+     */
+    private void prune() {
+        if (!pruning.compareAndSet(false, true))
+            return;
+        try {
+            String names[] = RegexFilenameFilter.recursiveFullNameList(directory,
+                ".*\\" + EXTENSION, false);
+            int n = names.length;
+            long lastMod[] = new long[n];
+            long length[] = new long[n];
+            Integer order[] = new Integer[n];
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                File file = new File(names[i]);
+                lastMod[i] = file.lastModified();
+                length[i] = file.length();
+                sum += length[i];
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(lastMod[a], lastMod[b]));
+            long goal = maxBytes / 5 * 4;
+            int nDeleted = 0;
+            for (int i = 0; i < n && sum > goal; i++) {
+                if (File2.delete(names[order[i]])) {
+                    sum -= length[order[i]];
+                    nDeleted++;
+                }
+            }
+            nBytes.set(sum);
+            nEvictions.addAndGet(nDeleted);
+            if (verbose) String2.log("EDDGridChunkCache(" + datasetID + ").prune deleted " +
+                nDeleted + " files. MB=" + (sum / Math2.BytesPerMB));
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    /**
+     * This copies the requested values from one chunk into a result array.
+     */
+    private void copyChunk(int chunk[], PrimitiveArray chunkPA, PrimitiveArray result,
+        int start[], int stride[], int stop[], int nReq[], int axisSize[]) {
+
+        //for each axis: the requested indices in this chunk, as chunk-local and result indices
+        int nAv = chunk.length;
+        int localIndex[][]  = new int[nAv][];
+        int resultIndex[][] = new int[nAv][];
+        int chunkStride[] = new int[nAv];  //in chunkPA, the distance between values of axis av
+        int resultStride[] = new int[nAv];
+        int cs = 1, rs = 1;
+        for (int av = nAv - 1; av >= 0; av--) {
+            int first = chunk[av] * chunkShape[av];
+            int last = Math.min(first + chunkShape[av], axisSize[av]) - 1;
+            int i0 = first <= start[av]? start[av] :
+                start[av] + Math2.hiDiv(first - start[av], stride[av]) * stride[av];
+            int i1 = Math.min(last, stop[av]);
+            int n = i0 > i1? 0 : (i1 - i0) / stride[av] + 1;
+            if (n == 0)
+                return;
+            localIndex[av] = new int[n];
+            resultIndex[av] = new int[n];
+            for (int i = 0; i < n; i++) {
+                int index = i0 + i * stride[av];
+                localIndex[av][i] = index - first;
+                resultIndex[av][i] = (index - start[av]) / stride[av];
+            }
+            chunkStride[av] = cs;
+            resultStride[av] = rs;
+            cs *= last - first + 1;
+            rs *= nReq[av];
+        }
+
+        //go through the combinations (the rightmost axis varies fastest)
+        int counter[] = new int[nAv];
+        while (true) {
+            int cBase = 0, rBase = 0;
+            for (int av = 0; av < nAv - 1; av++) {
+                cBase += localIndex[av][counter[av]]  * chunkStride[av];
+                rBase += resultIndex[av][counter[av]] * resultStride[av];
+            }
+            int last = nAv - 1;
+            int lLocal[] = localIndex[last];
+            int lResult[] = resultIndex[last];
+            for (int i = 0; i < lLocal.length; i++)
+                result.setFromPA(rBase + lResult[i], chunkPA, cBase + lLocal[i]);
+
+            int av = nAv - 2;
+            while (av >= 0 && counter[av] == localIndex[av].length - 1) {
+                counter[av] = 0;
+                av--;
+            }
+            if (av < 0)
+                break;
+            counter[av]++;
+        }
+    }
+
+    /** This returns the number of bytes currently in the chunk files. */
+    public long nBytes() {
+        return nBytes.get();
+    }
+
+    /** This returns a one line summary of this cache's statistics. */
+    public String statsString() {
+        long tHits = nHits.get();
+        long tMisses = nMisses.get();
+        long total = Math.max(1, tHits + tMisses);
+        return String2.left(datasetID, 40) +
+            " hits=" + tHits + " (" + (tHits * 100 / total) + "%)" +
+            " misses=" + tMisses +
+            " bypassed=" + nBypassed.get() +
+            " MB=" + (nBytes.get() / Math2.BytesPerMB) + "/" + (maxBytes / Math2.BytesPerMB) +
+            " evictions=" + nEvictions.get() +
+            " expired=" + nExpired.get();
+    }
+
+    /**
+     * This returns a multi-line summary of all of the active caches' statistics,
+     * for the status page. There is no trailing newline.
+     */
+    public static String allStatsString() {
+        ArrayList<EDDGridChunkCache> list = new ArrayList(caches.values());
+        long sum = 0;
+        for (int i = 0; i < list.size(); i++)
+            sum += list.get(i).nBytes();
+        StringBuilder sb = new StringBuilder(
+            "EDDGrid chunkCache: nDatasets=" + list.size() +
+            ", MB=" + (sum / Math2.BytesPerMB));
+        Collections.sort(list, (a, b) -> a.datasetID.compareTo(b.datasetID));
+        for (int i = 0; i < list.size(); i++)
+            sb.append("\n  " + list.get(i).statsString());
+        return sb.toString();
+    }
+
+    /**
+     * This makes an EDVGridAxis array (for the tests) with int values 
+     * (offset, offset+1, ...) on each axis.
+     */
+    private static EDVGridAxis[] testAxes(int sizes[], int offset) throws Throwable {
+        EDVGridAxis ava[] = new EDVGridAxis[sizes.length];
+        for (int av = 0; av < sizes.length; av++) {
+            IntArray ia = new IntArray(sizes[av], false);
+            for (int i = 0; i < sizes[av]; i++)
+                ia.add(offset + i);
+            ava[av] = new EDVGridAxis("testChunkCache", "axis" + av, "axis" + av,
+                new Attributes(), new Attributes(), ia);
+        }
+        return ava;
+    }
+
+    /**
+     * This makes a Source (for the tests) where each data value is made from its axis values 
+     * (time*10000 + lat*100 + lon, +0.5 for variables other than sst), 
+     * so it is different if the axis values shift.
+     *
+     * @param nCalls is incremented for each call to the source
+     */
+    private static Source testSource(EDVGridAxis ava[], AtomicInteger nCalls) {
+        return (tDataVariables, tConstraints) -> {
+            nCalls.incrementAndGet();
+            PrimitiveArray results[] = new PrimitiveArray[3 + tDataVariables.length];
+            for (int av = 0; av < 3; av++)
+                results[av] = ava[av].sourceValues().subset(tConstraints.get(av * 3), 
+                    tConstraints.get(av * 3 + 1), tConstraints.get(av * 3 + 2));
+            for (int dv = 0; dv < tDataVariables.length; dv++) {
+                float add = tDataVariables[dv].sourceName().equals("sst")? 0 : 0.5f;
+                FloatArray fa = new FloatArray();
+                for (int t = 0; t < results[0].size(); t++)
+                    for (int y = 0; y < results[1].size(); y++)
+                        for (int x = 0; x < results[2].size(); x++)
+                            fa.add(results[0].getInt(t) * 10000 + results[1].getInt(y) * 100 + 
+                                results[2].getInt(x) + add);
+                results[3 + dv] = fa;
+            }
+            return results;
+        };
+    }
+
+    /** 
+     * This ensures the cache's results for the constraints are the same as the source's. 
+     *
+     * @return the number of calls to the source
+     */
+    private static int testCompare(EDDGridChunkCache cache, EDVGridAxis ava[], 
+        EDV edvs[], AtomicInteger nCalls, int... constraints) throws Throwable {
+
+        IntArray tConstraints = new IntArray(constraints);
+        int oCalls = nCalls.get();
+        PrimitiveArray results[] = cache.getSourceData(ava, edvs, tConstraints, 
+            testSource(ava, nCalls));
+        int nSourceCalls = nCalls.get() - oCalls;
+        PrimitiveArray expected[] = testSource(ava, new AtomicInteger()).getSourceData(edvs, tConstraints);
+        String msg = "constraints=" + tConstraints;
+        Test.ensureTrue(results != null, msg);
+        Test.ensureEqual(results.length, expected.length, msg);
+        for (int i = 0; i < expected.length; i++)
+            Test.ensureEqual(results[i].toString(), expected[i].toString(), msg + " i=" + i);
+        return nSourceCalls;
+    }
+
+    /**
+     * This tests the cache's results against the source's for aligned, unaligned, 
+     * strided, and edge hyperslabs, and tests the maxOverFetch bypass, 
+     * changed axis values, chunk expiration, and LRU eviction.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void test() throws Throwable {
+        String2.log("\n*** EDDGridChunkCache.test()");
+        String dir = EDStatic.fullTestCacheDirectory + "chunkCache/";
+        File2.makeDirectory(dir);
+        File2.deleteAllFiles(dir, true, true);
+        double oMaxOverFetch = maxOverFetch;
+        try {
+            //sizes aren't multiples of the chunk shape, so there are partial chunks at the ends
+            int sizes[] = {7, 13, 17};
+            int shape[] = {2, 5, 4};
+            EDVGridAxis ava[] = testAxes(sizes, 0);
+            EDV edvs[] = {
+                new EDV("sst", "sst", new Attributes(), new Attributes(), "float"),
+                new EDV("chl", "chl", new Attributes(), new Attributes(), "float")};
+            AtomicInteger nCalls = new AtomicInteger();
+            EDDGridChunkCache cache = new EDDGridChunkCache("testChunkCache", dir, shape,
+                Long.MAX_VALUE, Long.MAX_VALUE, 1);
+            cache.setAxes(ava);
+            maxOverFetch = 1000; //so strided requests use the cache
+
+            //one chunk, aligned: 1 call per data variable, then from the cache
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 2, "");
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 0, "");
+            //a part of that chunk (snapped to it): no calls
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 1,1,1, 2,1,3, 1,1,2), 0, "");
+
+            //unaligned: touches 2*2*2 chunks, one of which is cached
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 1,1,2, 3,1,6, 2,1,5), 14, "");
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 1,1,2, 3,1,6, 2,1,5), 0, "");
+
+            //strided, with strides which aren't factors of the chunk shape:
+            //all 4*3*5 chunks from the first to the last (even time chunk 2, which has no 
+            //requested values), except the 8 which are cached
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 0,3,6, 1,4,12, 0,3,16), 
+                2 * (4*3*5 - 8), "");
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 1,2,5, 0,7,12, 3,5,16), 0, "");
+
+            //edges (partial chunks) and the whole array
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 6,1,6, 12,1,12, 16,1,16), 0, "");
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 5,1,6, 10,1,12, 13,1,16), 0, "");
+            Test.ensureEqual(testCompare(cache, ava, edvs, nCalls, 0,1,6, 0,1,12, 0,1,16), 0, "");
+            Test.ensureEqual(cache.nHits.get() > 0, true, "");
+
+            //several at once (via the ReadScheduler)
+            AtomicInteger nCalls3 = new AtomicInteger();
+            EDDGridChunkCache cache3 = new EDDGridChunkCache("testChunkCache", dir, shape,
+                Long.MAX_VALUE, Long.MAX_VALUE, 3);
+            Test.ensureEqual(testCompare(cache3, ava, edvs, nCalls3, 0,2,6, 1,3,12, 2,2,16), 0, "");
+
+            //maxOverFetch: a big stride gets the data directly from the source
+            maxOverFetch = oMaxOverFetch;
+            long oBypassed = cache.nBypassed.get();
+            Test.ensureEqual(cache.getSourceData(ava, edvs, new IntArray(new int[]{0,1,0, 0,1,0, 0,16,16}),
+                testSource(ava, nCalls)), null, "");
+            Test.ensureEqual(cache.nBypassed.get(), oBypassed + 1, "");
+            maxOverFetch = 1000;
+
+            //the axis values changed (without setAxes): the old chunks aren't used
+            EDVGridAxis ava2[] = testAxes(sizes, 1);
+            Test.ensureEqual(testCompare(cache, ava2, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 2, "");
+            Test.ensureEqual(testCompare(cache, ava2, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 0, "");
+
+            //the leftmost axis grew: the partial last time chunk is requested again
+            EDVGridAxis ava3[] = testAxes(new int[]{8, 13, 17}, 1);
+            Test.ensureEqual(testCompare(cache, ava3, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 0, "");
+            Test.ensureEqual(testCompare(cache, ava2, edvs, nCalls, 6,1,6, 0,1,4, 0,1,3), 2, "");
+            Test.ensureEqual(testCompare(cache, ava3, edvs, nCalls, 6,1,7, 0,1,4, 0,1,3), 2, "");
+
+            //setAxes with changed values (other than the leftmost axis growing) clears the cache
+            cache.setAxes(ava2);
+            Test.ensureEqual(cache.nBytes(), 0, "");
+            Test.ensureEqual(RegexFilenameFilter.recursiveFullNameList(dir, 
+                ".*\\" + EXTENSION, false).length, 0, "");
+            Test.ensureEqual(testCompare(cache, ava2, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 2, "");
+            cache.setAxes(ava3); //just grew
+            Test.ensureTrue(cache.nBytes() > 0, "");
+            Test.ensureEqual(testCompare(cache, ava3, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 0, "");
+            cache.setAxes(ava);
+            Test.ensureEqual(cache.nBytes(), 0, "");
+            Test.ensureEqual(RegexFilenameFilter.recursiveFullNameList(dir, 
+                ".*\\" + EXTENSION, false).length, 0, "");
+
+            //expired chunks are requested again
+            EDDGridChunkCache cacheAge = new EDDGridChunkCache("testChunkCache", dir, shape,
+                Long.MAX_VALUE, 50, 1);
+            Test.ensureEqual(testCompare(cacheAge, ava, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 2, "");
+            Test.ensureEqual(testCompare(cacheAge, ava, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 0, "");
+            Math2.sleep(100);
+            Test.ensureEqual(testCompare(cacheAge, ava, edvs, nCalls, 0,1,1, 0,1,4, 0,1,3), 2, "");
+            Test.ensureEqual(cacheAge.nExpired.get(), 2, "");
+
+            //LRU eviction: make 3 chunks of sst, with different last used times
+            File2.deleteAllFiles(dir, true, true);
+            cache = new EDDGridChunkCache("testChunkCache", dir, shape,
+                Long.MAX_VALUE, Long.MAX_VALUE, 1);
+            EDV sst[] = {edvs[0]};
+            String names[] = new String[3];
+            long now = System.currentTimeMillis();
+            long total = 0;
+            for (int c = 0; c < 3; c++) {
+                Test.ensureEqual(testCompare(cache, ava, sst, nCalls, 2*c,1,2*c, 0,1,0, 0,1,0), 1, "");
+                names[c] = cache.chunkFileName(edvs[0], new int[]{c, 0, 0});
+                total += File2.length(names[c]);
+            }
+            File2.setLastModified(names[0], now - 2000);  //the least recently used
+            File2.setLastModified(names[1], now - 3000);
+            File2.setLastModified(names[2], now - 1000);
+            //goal (80% of maxBytes) is within 4 bytes less than total, so just 1 file is deleted
+            EDDGridChunkCache cacheLru = new EDDGridChunkCache("testChunkCache", dir, shape,
+                (total - 1) / 4 * 5, Long.MAX_VALUE, 1);
+            Test.ensureEqual(cacheLru.nBytes(), total, "");
+            cacheLru.prune();
+            Test.ensureEqual(cacheLru.nEvictions.get(), 1, "");
+            Test.ensureEqual(File2.isFile(names[0]), true, "");
+            Test.ensureEqual(File2.isFile(names[1]), false, "");
+            Test.ensureEqual(File2.isFile(names[2]), true, "");
+            Test.ensureEqual(cacheLru.nBytes(), File2.length(names[0]) + File2.length(names[2]), "");
+            //the evicted chunk is requested again and the others still come from the cache
+            Test.ensureEqual(testCompare(cacheLru, ava, sst, nCalls, 0,1,5, 0,1,0, 0,1,0), 1, "");
+
+            String2.log(cache.statsString() + "\n" + cacheLru.statsString());
+        } finally {
+            maxOverFetch = oMaxOverFetch;
+            File2.deleteAllFiles(dir, true, true);
+        }
+        String2.log("\n*** EDDGridChunkCache.test() finished successfully");
+    }
+
+}
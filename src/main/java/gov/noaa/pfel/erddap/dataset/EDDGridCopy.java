@@ -274,13 +274,10 @@ public class EDDGridCopy extends EDDGrid {
 
                 //check if taskThread has finished previously assigned tasks for this dataset
                 EDStatic.ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
-                Integer lastAssignedTask = (Integer)EDStatic.lastAssignedTask.get(datasetID);
-                boolean pendingTasks = lastAssignedTask != null &&  
-                    EDStatic.lastFinishedTask < lastAssignedTask.intValue();
+                int nPendingTasks = EDStatic.nUnfinishedTasks(datasetID);
+                boolean pendingTasks = nPendingTasks > 0;
                 if (verbose) 
-                    String2.log("  lastFinishedTask=" + EDStatic.lastFinishedTask + 
-                        " < lastAssignedTask(" + tDatasetID + ")=" + lastAssignedTask + 
-                        "? pendingTasks=" + pendingTasks);
+                    String2.log("  nUnfinishedTasks(" + datasetID + ")=" + nPendingTasks);
                 if (!pendingTasks) {
 
                     //make a task for each axis0 value (if the file doesn't already exist)
@@ -339,7 +336,7 @@ public class EDDGridCopy extends EDDGrid {
                         taskOA[3] = copyDatasetDir;
                         taskOA[4] = fileName;
                         taskOA[5] = ".nc";
-                        int tTaskNumber = EDStatic.addTask(taskOA);
+                        int tTaskNumber = EDStatic.addTask(datasetID, taskOA);
                         if (tTaskNumber >= 0) {
                             taskNumber = tTaskNumber;
                             if (reallyVerbose)
@@ -358,7 +355,7 @@ public class EDDGridCopy extends EDDGrid {
                         Object taskOA[] = new Object[2];
                         taskOA[0] = TaskThread.TASK_SET_FLAG;
                         taskOA[1] = datasetID;
-                        taskNumber = EDStatic.addTask(taskOA);  //TASK_SET_FLAG will always be added
+                        taskNumber = EDStatic.addTask(datasetID, taskOA);  //TASK_SET_FLAG will always be added
                         if (reallyVerbose)
                             String2.log("  task#" + taskNumber + " TASK_SET_FLAG " + datasetID);
                     }
@@ -369,7 +366,6 @@ public class EDDGridCopy extends EDDGrid {
                     MustBe.throwableToString(t));
             }
             if (taskNumber >= 0) {
-                EDStatic.lastAssignedTask.put(datasetID, new Integer(taskNumber));
                 EDStatic.ensureTaskThreadIsRunningIfNeeded();  //clients (like this class) are responsible for checking on it
             }
         }
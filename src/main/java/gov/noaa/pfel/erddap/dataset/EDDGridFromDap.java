@@ -129,6 +129,8 @@ public class EDDGridFromDap extends EDDGrid {
         String tDefaultGraphQuery = null;
         int tnThreads = -1; //interpret invalid values (like -1) as EDStatic.nGridThreads
         boolean tDimensionValuesInMemory = true;
+        int tChunkCacheMB = 0; //0=inactive
+        int tChunkCacheShape[] = null;
 
         //process the tags
         String startOfTags = xmlReader.allTags();
@@ -180,6 +182,10 @@ public class EDDGridFromDap extends EDDGrid {
             else if (localTags.equals("</nThreads>")) tnThreads = String2.parseInt(content); 
             else if (localTags.equals( "<dimensionValuesInMemory>")) {}
             else if (localTags.equals("</dimensionValuesInMemory>")) tDimensionValuesInMemory = String2.parseBoolean(content);
+            else if (localTags.equals( "<chunkCacheMB>")) {}
+            else if (localTags.equals("</chunkCacheMB>")) tChunkCacheMB = String2.parseInt(content); 
+            else if (localTags.equals( "<chunkCacheShape>")) {}
+            else if (localTags.equals("</chunkCacheShape>")) tChunkCacheShape = String2.csvToIntArray(content); 
 
             else xmlReader.unexpectedTagException();
         }
@@ -193,7 +199,7 @@ public class EDDGridFromDap extends EDDGrid {
         for (int i = 0; i < tDataVariables.size(); i++)
             ttDataVariables[i] = (Object[])tDataVariables.get(i);
 
-        return new EDDGridFromDap(tDatasetID, 
+        EDDGridFromDap tEDDGrid = new EDDGridFromDap(tDatasetID, 
             tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
             tOnChange, tFgdcFile, tIso19115File,
             tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -201,6 +207,8 @@ public class EDDGridFromDap extends EDDGrid {
             ttDataVariables,
             tReloadEveryNMinutes, tUpdateEveryNMillis, tLocalSourceUrl, 
             tnThreads, tDimensionValuesInMemory);
+        tEDDGrid.setChunkCache(tChunkCacheShape, tChunkCacheMB);
+        return tEDDGrid;
     }
 
     /**
@@ -705,6 +713,8 @@ public class EDDGridFromDap extends EDDGrid {
                 Calendar2.epochSecondsToLimitedIsoStringT(
                     edvga.combinedAttributes().getString(EDV.TIME_PRECISION), newMax, ""));
         edvga.clearSliderCsvValues();  //do last, to force recreation next time needed
+        if (chunkCache != null)
+            chunkCache.setAxes(axisVariables);
 
         updateCount++;
         long thisTime = System.currentTimeMillis() - startUpdateMillis;
@@ -774,6 +784,7 @@ public class EDDGridFromDap extends EDDGrid {
             getReloadEveryNMinutes(),
             getUpdateEveryNMillis(),
             tLocalSourceUrl, nThreads, dimensionValuesInMemory);
+        newEDDGrid.setChunkCache(chunkCacheShape, chunkCacheMB);
 
         //if shareInfo, point to same internal data
         if (shareInfo) {
@@ -837,6 +848,23 @@ public class EDDGridFromDap extends EDDGrid {
         EDV tDataVariables[], IntArray tConstraints) 
         throws Throwable {
 
+        EDDGridChunkCache tChunkCache = chunkCache;
+        if (tChunkCache != null) {
+            PrimitiveArray results[] = tChunkCache.getSourceData(axisVariables, 
+                tDataVariables, tConstraints, this::getUncachedSourceData);
+            if (results != null)
+                return results;
+        }
+        return getUncachedSourceData(tDataVariables, tConstraints);
+    }
+
+    /** 
+     * This is like getSourceData, but always gets the data from the source
+     * (not from the chunkCache).
+     */
+    protected PrimitiveArray[] getUncachedSourceData(EDV tDataVariables[], IntArray tConstraints) 
+        throws Throwable {
+
         //build String form of the constraint
         //String errorInMethod = "Error in EDDGridFromDap.getSourceData for " + datasetID + ": "; 
         String constraint = buildDapArrayQuery(tConstraints);
@@ -102,6 +102,8 @@ public class EDDGridFromErddap extends EDDGrid implements FromErddap {
         String tDefaultGraphQuery = null;
         int tnThreads = -1; //interpret invalid values (like -1) as EDStatic.nGridThreads
         boolean tDimensionValuesInMemory = true;
+        int tChunkCacheMB = 0; //0=inactive
+        int tChunkCacheShape[] = null;
 
         //process the tags
         String startOfTags = xmlReader.allTags();
@@ -155,15 +157,21 @@ public class EDDGridFromErddap extends EDDGrid implements FromErddap {
             else if (localTags.equals( "<redirect>")) {}
             else if (localTags.equals("</redirect>")) 
                 tRedirect = String2.parseBoolean(content);
+            else if (localTags.equals( "<chunkCacheMB>")) {}
+            else if (localTags.equals("</chunkCacheMB>")) tChunkCacheMB = String2.parseInt(content); 
+            else if (localTags.equals( "<chunkCacheShape>")) {}
+            else if (localTags.equals("</chunkCacheShape>")) tChunkCacheShape = String2.csvToIntArray(content); 
 
             else xmlReader.unexpectedTagException();
         }
-        return new EDDGridFromErddap(tDatasetID, 
+        EDDGridFromErddap tEDDGrid = new EDDGridFromErddap(tDatasetID, 
             tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
             tOnChange, tFgdcFile, tIso19115File,
             tDefaultDataQuery, tDefaultGraphQuery, tReloadEveryNMinutes, tUpdateEveryNMillis,
             tLocalSourceUrl, tSubscribeToRemoteErddapDataset, tRedirect, 
             tnThreads, tDimensionValuesInMemory);
+        tEDDGrid.setChunkCache(tChunkCacheShape, tChunkCacheMB);
+        return tEDDGrid;
     }
 
     /**
@@ -617,6 +625,8 @@ public class EDDGridFromErddap extends EDDGrid implements FromErddap {
                 Calendar2.epochSecondsToLimitedIsoStringT(
                     edvga.combinedAttributes().getString(EDV.TIME_PRECISION), newMax, ""));
         edvga.clearSliderCsvValues();  //do last, to force recreation next time needed
+        if (chunkCache != null)
+            chunkCache.setAxes(axisVariables);
 
         updateCount++;
         long thisTime = System.currentTimeMillis() - startUpdateMillis;
@@ -694,6 +704,7 @@ public class EDDGridFromErddap extends EDDGrid implements FromErddap {
             "", "", "", "", //fgdc, iso19115, defaultDataQuery, defaultGraphQuery,
             getReloadEveryNMinutes(), getUpdateEveryNMillis(), tLocalSourceUrl,
             subscribeToRemoteErddapDataset, redirect, nThreads, dimensionValuesInMemory);
+        newEDDGrid.setChunkCache(chunkCacheShape, chunkCacheMB);
 
         //if shareInfo, point to same internal data
         if (shareInfo) {
@@ -757,6 +768,23 @@ public class EDDGridFromErddap extends EDDGrid implements FromErddap {
         EDV tDataVariables[], IntArray tConstraints) 
         throws Throwable {
 
+        EDDGridChunkCache tChunkCache = chunkCache;
+        if (tChunkCache != null) {
+            PrimitiveArray results[] = tChunkCache.getSourceData(axisVariables, 
+                tDataVariables, tConstraints, this::getUncachedSourceData);
+            if (results != null)
+                return results;
+        }
+        return getUncachedSourceData(tDataVariables, tConstraints);
+    }
+
+    /** 
+     * This is like getSourceData, but always gets the data from the source
+     * (not from the chunkCache).
+     */
+    protected PrimitiveArray[] getUncachedSourceData(EDV tDataVariables[], IntArray tConstraints) 
+        throws Throwable {
+
         //build String form of the constraint
         //String errorInMethod = "Error in EDDGridFromErddap.getSourceData for " + datasetID + ": "; 
         String constraint = buildDapArrayQuery(tConstraints);
@@ -23,6 +23,7 @@ import gov.noaa.pfel.coastwatch.griddata.FileNameUtility;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.sgt.SgtMap;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.SimpleXMLReader;
 import gov.noaa.pfel.coastwatch.util.SSR;
 
@@ -292,10 +293,10 @@ public class EDDGridFromEtopo extends EDDGrid {
             //thread-safe creation of etopo grid.
             //If there are almost simultaneous requests for the same one, 
             //only one thread will make it.
-            //canonical is important for proper functioning of synchronized().
-            String cacheName = String2.canonical(cacheDirectory() +
-                String2.replaceAll(tConstraints.toString(), ", ", "_") + ".short");
-            synchronized(cacheName) {
+            String cacheName = cacheDirectory() +
+                String2.replaceAll(tConstraints.toString(), ", ", "_") + ".short";
+            FileLocks.Lock fileLock = FileLocks.lock(cacheName);
+            try {
 
                 //read from cache?
                 if (File2.isFile(cacheName)) {
@@ -359,6 +360,8 @@ public class EDDGridFromEtopo extends EDDGrid {
                 }
 
                 return results;
+            } finally {
+                fileLock.unlock();
             }
 
 
@@ -20,6 +20,7 @@ import com.cohort.util.SimpleException;
 import com.cohort.util.String2;
 import com.cohort.util.Test;
 
+import gov.noaa.pfel.coastwatch.griddata.NcFileCache;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
 import gov.noaa.pfel.coastwatch.util.RegexFilenameFilter;
@@ -606,19 +607,23 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         if (reallyVerbose) String2.log("sourceDataNames=" + sourceDataNames +
             "\nsourceDataTypes=" + String2.toCSSVString(sourceDataTypes));
 
-        //load cached dirTable->dirList
-        dirTable = tryToLoadDirFileTable(dirTableFileName); //may be null
-        if (dirTable != null) {
+        //load cached dirTable->dirList and fileTable (and apply the journal's changes)
+        //or (if the previous constructor didn't finish) the checkpoint
+        ConcurrentHashMap checkpointBadFileMap = newEmptyBadFileMap();
+        Table tDirFileTables[] = EDDFileScan.loadCheckpoint(datasetDir(), -1, 
+            checkpointBadFileMap); //may be null
+        boolean fromCheckpoint = tDirFileTables != null;
+        if (!fromCheckpoint)
+            tDirFileTables = tryToLoadDirFileTables(); //may be null
+        if (tDirFileTables != null) {
+            dirTable  = tDirFileTables[0];
+            fileTable = tDirFileTables[1];
             if (verbose) String2.log(
                 dirTable.nRows() + " rows in old dirTable");
             if (reallyVerbose) String2.log(
                 "first 5 rows=\n" + 
                 dirTable.dataToString(5));
         }
-
-
-        //load cached fileTable
-        fileTable = tryToLoadDirFileTable(fileTableFileName); //may be null
         if (fileTable != null) {
             if (verbose) String2.log(
                 fileTable.nRows() + " rows in old fileTable");
@@ -655,8 +660,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
             }
         }
 
-        //load badFileMap
-        ConcurrentHashMap badFileMap = readBadFileMap();  
+        //load badFileMap (the checkpoint's, if resuming from the checkpoint)
+        ConcurrentHashMap badFileMap = fromCheckpoint? checkpointBadFileMap : readBadFileMap();
 
         //if trouble reading any, recreate all
         if (dirTable == null || fileTable == null || badFileMap == null) {
@@ -745,7 +750,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         }
 
         //doQuickRestart? 
-        boolean doQuickRestart = haveValidSourceInfo && 
+        boolean doQuickRestart = !fromCheckpoint && haveValidSourceInfo && 
             (testQuickRestart || (EDStatic.quickRestart && EDStatic.initialLoadDatasets()));
         if (verbose)
             String2.log("doQuickRestart=" + doQuickRestart);
@@ -904,159 +909,184 @@ public abstract class EDDGridFromFiles extends EDDGrid{
             long removeCumTime = 0;
             int nUnchanged = 0, nRemoved = 0, nDifferentModTime = 0, nNew = 0;
             elapsedTime = System.currentTimeMillis();
-            while (tFileListPo < tFileNamePA.size()) {
-                if (Thread.currentThread().isInterrupted())
-                    throw new SimpleException("EDDGridFromFiles.init" +
-                        EDStatic.caughtInterrupted);
-
-                int    tDirI   = tFileDirIndexPA.get(tFileListPo);
-                String tFileS  = tFileNamePA.get(tFileListPo);
-                int    dirI    = fileListPo < ftFileList.size()? ftDirIndex.get(fileListPo) : Integer.MAX_VALUE;
-                String fileS   = fileListPo < ftFileList.size()? ftFileList.get(fileListPo) : "\uFFFF";
-                long   lastMod = fileListPo < ftFileList.size()? ftLastMod.get(fileListPo)  : Long.MAX_VALUE;
-                double size    = fileListPo < ftFileList.size()? ftSize.get(fileListPo)     : Long.MAX_VALUE;
-                if (reallyVerbose) String2.log("#" + tFileListPo + 
-                    " file=" + dirList.get(tDirI) + tFileS);
-
-                //is tLastMod available for tFile?
-                long tLastMod = tFileLastModPA.get(tFileListPo);
-                if (tLastMod == 0 || tLastMod == Long.MAX_VALUE) { //0=trouble
-                    nNoLastMod++;
-                    String2.log("#" + tFileListPo + " reject because unable to get lastMod time: " + 
-                        dirList.get(tDirI) + tFileS);                
-                    tFileListPo++;
-                    addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get lastMod time.");
-                    continue;
-                }
-
-                //is tSize available for tFile?
-                long tSize = tFileSizePA.get(tFileListPo);
-                if (tSize < 0 || tSize == Long.MAX_VALUE) { //-1=trouble
-                    nNoSize++;
-                    String2.log("#" + tFileListPo + " reject because unable to get size: " + 
-                        dirList.get(tDirI) + tFileS);                
-                    tFileListPo++;
-                    addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get size.");
-                    continue;
-                }
-
-                //is tFile in badFileMap?
-                Object bfi = badFileMap.get(tDirI + "/" + tFileS);
-                if (bfi != null) {
-                    //tFile is in badFileMap
-                    Object bfia[] = (Object[])bfi;
-                    long bfLastMod = ((Long)bfia[0]).longValue();
-                    if (bfLastMod == tLastMod) {
-                        //file hasn't been changed; it is still bad
-                        tFileListPo++;
-                        if (tDirI == dirI && tFileS.equals(fileS)) {
-                            //remove it from cache   (Yes, a file may be marked bad (recently) and so still be in cache)
-                            nRemoved++;
-                            removeCumTime -= System.currentTimeMillis();
-                            fileTable.removeRow(fileListPo);
-                            removeCumTime += System.currentTimeMillis();
-                        }
-                        //go on to next tFile
-                        continue;
-                    } else {
-                        //file has been changed since being marked as bad; remove from badFileMap
-                        badFileMap.remove(tDirI + "/" + tFileS);
-                        //and continue processing this file
-                    }
-                }
-
-                //is tFile already in cache?
-                if (tDirI == dirI && tFileS.equals(fileS) && tLastMod == lastMod && 
-                    (tSize == size || !filesAreLocal)) { //remote file's size may be approximate, e.g., 11K
-                    if (reallyVerbose) String2.log("#" + tFileListPo + " already in cache");
-                    nUnchanged++;
-                    tFileListPo++;
-                    fileListPo++;
-                    continue;
-                }
-
-                //file in cache no longer exists: remove from fileTable
-                if (dirI < tDirI ||
-                    (dirI == tDirI && fileS.compareTo(tFileS) < 0)) {
-                    if (verbose) String2.log("#" + tFileListPo + " file no longer exists: remove from cache: " +
-                        dirList.get(dirI) + fileS);
-                    nRemoved++;
-                    removeCumTime -= System.currentTimeMillis();
-                    fileTable.removeRow(fileListPo);
-                    removeCumTime += System.currentTimeMillis();
-                    //tFileListPo isn't incremented, so it will be considered again in next iteration
-                    continue;
-                }
-
-                //tFile is new, or tFile is in ftFileList but time is different
-                if (dirI == tDirI && fileS.equals(tFileS)) {
-                    if (verbose) String2.log("#" + tFileListPo + 
-                        " already in cache (but time changed): " + dirList.get(tDirI) + tFileS);
-                    nDifferentModTime++;
-                } else {
-                    //if new, add row to fileTable
-                    if (verbose) String2.log("#" + tFileListPo + " inserted in cache");
-                    nNew++;
-                    fileTable.insertBlankRow(fileListPo);
-                }
 
-                //gather file's info
-                try {
-                    ftDirIndex.setInt(fileListPo, tDirI);
-                    ftFileList.set(fileListPo, tFileS);
-                    ftLastMod.set(fileListPo, tLastMod);
-                    ftSize.set(fileListPo, tSize);
-
-                    //read axis values
-                    nReadFile++;
-                    long rfcTime = System.currentTimeMillis();
+            //read the new and changed files in parallel (but merge them in order)
+            final ShortArray  fTFileDirIndexPA = tFileDirIndexPA;
+            final StringArray fTFileNamePA     = tFileNamePA;
+            EDDFileScan fileScan = new EDDFileScan(datasetID, datasetDir(),
+                EDDFileScan.makeToRead(tFileDirIndexPA, tFileNamePA, tFileLastModPA, tFileSizePA, 
+                    badFileMap, ftDirIndex, ftFileList, ftLastMod, ftSize, filesAreLocal),
+                nThreads >= 1 && nThreads < Integer.MAX_VALUE? nThreads : EDStatic.nGridThreads,
+                i -> {
+                    String tDir  = dirList.get(fTFileDirIndexPA.get(i));
+                    String tName = fTFileNamePA.get(i);
                     PrimitiveArray[] tSourceAxisValues = getSourceAxisValues(
-                        dirList.get(tDirI), tFileS, sourceAxisNames);
-                    readFileCumTime += System.currentTimeMillis() - rfcTime;
-
-                    //test that all axisVariable and dataVariable units are identical
-                    //this also tests if all dataVariables are present
+                        tDir, tName, sourceAxisNames);
                     Attributes tSourceGlobalAttributes = new Attributes();
                     Attributes tSourceAxisAttributes[] = new Attributes[nav];
                     Attributes tSourceDataAttributes[] = new Attributes[ndv];
                     for (int avi = 0; avi < nav; avi++) tSourceAxisAttributes[avi] = new Attributes();
                     for (int dvi = 0; dvi < ndv; dvi++) tSourceDataAttributes[dvi] = new Attributes();
-                    getSourceMetadata(dirList.get(tDirI), tFileS,
+                    getSourceMetadata(tDir, tName,
                         sourceAxisNames, sourceDataNames, sourceDataTypes,
                         tSourceGlobalAttributes, tSourceAxisAttributes, tSourceDataAttributes);
-                    validateCompareSet( //throws Exception if not
-                        dirList.get(tDirI), tFileS,
-                        tSourceGlobalAttributes,
-                        tSourceAxisAttributes, tSourceAxisValues,
-                        tSourceDataAttributes);
+                    return new Object[]{tSourceAxisValues, tSourceGlobalAttributes, 
+                        tSourceAxisAttributes, tSourceDataAttributes};
+                });
+            try {
+                while (tFileListPo < tFileNamePA.size()) {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new SimpleException("EDDGridFromFiles.init" +
+                            EDStatic.caughtInterrupted);
+                    if (fileScan.checkpointDue())
+                        fileScan.checkpoint(-1, dirTable, fileTable, badFileMap);
+
+                    int    tDirI   = tFileDirIndexPA.get(tFileListPo);
+                    String tFileS  = tFileNamePA.get(tFileListPo);
+                    int    dirI    = fileListPo < ftFileList.size()? ftDirIndex.get(fileListPo) : Integer.MAX_VALUE;
+                    String fileS   = fileListPo < ftFileList.size()? ftFileList.get(fileListPo) : "\uFFFF";
+                    long   lastMod = fileListPo < ftFileList.size()? ftLastMod.get(fileListPo)  : Long.MAX_VALUE;
+                    double size    = fileListPo < ftFileList.size()? ftSize.get(fileListPo)     : Long.MAX_VALUE;
+                    if (reallyVerbose) String2.log("#" + tFileListPo + 
+                        " file=" + dirList.get(tDirI) + tFileS);
+
+                    //is tLastMod available for tFile?
+                    long tLastMod = tFileLastModPA.get(tFileListPo);
+                    if (tLastMod == 0 || tLastMod == Long.MAX_VALUE) { //0=trouble
+                        nNoLastMod++;
+                        String2.log("#" + tFileListPo + " reject because unable to get lastMod time: " + 
+                            dirList.get(tDirI) + tFileS);                
+                        tFileListPo++;
+                        addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get lastMod time.");
+                        continue;
+                    }
 
-                    //store n, min, max, values
-                    int tnValues = tSourceAxisValues[0].size();
-                    ftNValues.set(fileListPo, tnValues);
-                    ftMin.set(fileListPo, tSourceAxisValues[0].getNiceDouble(0));
-                    ftMax.set(fileListPo, tSourceAxisValues[0].getNiceDouble(tnValues - 1));
-                    ftCsvValues.set(fileListPo, tSourceAxisValues[0].toString());
+                    //is tSize available for tFile?
+                    long tSize = tFileSizePA.get(tFileListPo);
+                    if (tSize < 0 || tSize == Long.MAX_VALUE) { //-1=trouble
+                        nNoSize++;
+                        String2.log("#" + tFileListPo + " reject because unable to get size: " + 
+                            dirList.get(tDirI) + tFileS);                
+                        tFileListPo++;
+                        addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get size.");
+                        continue;
+                    }
 
-                    tFileListPo++;
-                    fileListPo++;
+                    //is tFile in badFileMap?
+                    Object bfi = badFileMap.get(tDirI + "/" + tFileS);
+                    if (bfi != null) {
+                        //tFile is in badFileMap
+                        Object bfia[] = (Object[])bfi;
+                        long bfLastMod = ((Long)bfia[0]).longValue();
+                        if (bfLastMod == tLastMod) {
+                            //file hasn't been changed; it is still bad
+                            tFileListPo++;
+                            if (tDirI == dirI && tFileS.equals(fileS)) {
+                                //remove it from cache   (Yes, a file may be marked bad (recently) and so still be in cache)
+                                nRemoved++;
+                                removeCumTime -= System.currentTimeMillis();
+                                fileTable.removeRow(fileListPo);
+                                removeCumTime += System.currentTimeMillis();
+                            }
+                            //go on to next tFile
+                            continue;
+                        } else {
+                            //file has been changed since being marked as bad; remove from badFileMap
+                            badFileMap.remove(tDirI + "/" + tFileS);
+                            //and continue processing this file
+                        }
+                    }
 
-                } catch (Throwable t) {
-                    String fullName = dirList.get(tDirI) + tFileS;
-                    msg = "#" + tFileListPo + " bad file: removing fileTable row for " + 
-                        fullName + "\n" +
-                        MustBe.throwableToString(t);
-                    String2.log(msg);
-                    msg = "";
-                    nRemoved++;
-                    removeCumTime -= System.currentTimeMillis();
-                    fileTable.removeRow(fileListPo);
-                    removeCumTime += System.currentTimeMillis();
-                    tFileListPo++;
-                    if (System.currentTimeMillis() - tLastMod > 30 * Calendar2.MILLIS_PER_MINUTE) 
-                        //>30 minutes old, so not still being ftp'd, so add to badFileMap
-                        addBadFile(badFileMap, tDirI, tFileS, tLastMod, 
-                            MustBe.throwableToShortString(t));
+                    //is tFile already in cache?
+                    if (tDirI == dirI && tFileS.equals(fileS) && tLastMod == lastMod && 
+                        (tSize == size || !filesAreLocal)) { //remote file's size may be approximate, e.g., 11K
+                        if (reallyVerbose) String2.log("#" + tFileListPo + " already in cache");
+                        nUnchanged++;
+                        tFileListPo++;
+                        fileListPo++;
+                        continue;
+                    }
+
+                    //file in cache no longer exists: remove from fileTable
+                    if (dirI < tDirI ||
+                        (dirI == tDirI && fileS.compareTo(tFileS) < 0)) {
+                        if (verbose) String2.log("#" + tFileListPo + " file no longer exists: remove from cache: " +
+                            dirList.get(dirI) + fileS);
+                        nRemoved++;
+                        removeCumTime -= System.currentTimeMillis();
+                        fileTable.removeRow(fileListPo);
+                        removeCumTime += System.currentTimeMillis();
+                        //tFileListPo isn't incremented, so it will be considered again in next iteration
+                        continue;
+                    }
+
+                    //tFile is new, or tFile is in ftFileList but time is different
+                    if (dirI == tDirI && fileS.equals(tFileS)) {
+                        if (verbose) String2.log("#" + tFileListPo + 
+                            " already in cache (but time changed): " + dirList.get(tDirI) + tFileS);
+                        nDifferentModTime++;
+                    } else {
+                        //if new, add row to fileTable
+                        if (verbose) String2.log("#" + tFileListPo + " inserted in cache");
+                        nNew++;
+                        fileTable.insertBlankRow(fileListPo);
+                    }
+
+                    //gather file's info
+                    try {
+                        ftDirIndex.setInt(fileListPo, tDirI);
+                        ftFileList.set(fileListPo, tFileS);
+                        ftLastMod.set(fileListPo, tLastMod);
+                        ftSize.set(fileListPo, tSize);
+
+                        //read axis values and metadata
+                        nReadFile++;
+                        long rfcTime = System.currentTimeMillis();
+                        Object tInfo[] = (Object[])fileScan.get(tFileListPo); //getSourceAxisValues and getSourceMetadata
+                        readFileCumTime += System.currentTimeMillis() - rfcTime;
+                        PrimitiveArray[] tSourceAxisValues  = (PrimitiveArray[])tInfo[0];
+                        Attributes tSourceGlobalAttributes  = (Attributes)tInfo[1];
+                        Attributes tSourceAxisAttributes[]  = (Attributes[])tInfo[2];
+                        Attributes tSourceDataAttributes[]  = (Attributes[])tInfo[3];
+
+                        //test that all axisVariable and dataVariable units are identical
+                        //this also tests if all dataVariables are present
+                        validateCompareSet( //throws Exception if not
+                            dirList.get(tDirI), tFileS,
+                            tSourceGlobalAttributes,
+                            tSourceAxisAttributes, tSourceAxisValues,
+                            tSourceDataAttributes);
+
+                        //store n, min, max, values
+                        int tnValues = tSourceAxisValues[0].size();
+                        ftNValues.set(fileListPo, tnValues);
+                        ftMin.set(fileListPo, tSourceAxisValues[0].getNiceDouble(0));
+                        ftMax.set(fileListPo, tSourceAxisValues[0].getNiceDouble(tnValues - 1));
+                        ftCsvValues.set(fileListPo, tSourceAxisValues[0].toString());
+
+                        tFileListPo++;
+                        fileListPo++;
+
+                    } catch (Throwable t) {
+                        String fullName = dirList.get(tDirI) + tFileS;
+                        msg = "#" + tFileListPo + " bad file: removing fileTable row for " + 
+                            fullName + "\n" +
+                            MustBe.throwableToString(t);
+                        String2.log(msg);
+                        msg = "";
+                        nRemoved++;
+                        removeCumTime -= System.currentTimeMillis();
+                        fileTable.removeRow(fileListPo);
+                        removeCumTime += System.currentTimeMillis();
+                        tFileListPo++;
+                        if (System.currentTimeMillis() - tLastMod > 30 * Calendar2.MILLIS_PER_MINUTE) 
+                            //>30 minutes old, so not still being ftp'd, so add to badFileMap
+                            addBadFile(badFileMap, tDirI, tFileS, tLastMod, 
+                                MustBe.throwableToShortString(t));
+                    }
                 }
+            } finally {
+                fileScan.close();
             }
             if (verbose) String2.log("fileTable updated; time=" + (System.currentTimeMillis() - elapsedTime) + "ms");
 
@@ -1223,6 +1253,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
 
         //dirTable and fileTable InMemory?
         if (!fileTableInMemory) {
+            //requests share the snapshot until memory is needed for other things
+            fileTableJournal().setSnapshot(dirTable, fileTable);
             dirTable = null;
             fileTable = null;
         }
@@ -1504,6 +1536,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         ConcurrentHashMap badFileMap = readBadFileMap(); //already a copy of what's in file
         Table tDirTable  = getDirTableCopy(); 
         Table tFileTable = getFileTableCopy();
+        int nOldDirs = tDirTable.nRows();
         if (debugMode) String2.log(msg + "\n" +
             tDirTable.nRows() + " rows in old dirTable.  first 5 rows=\n" + 
                 tDirTable.dataToString(5) + 
@@ -1531,6 +1564,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                         EDStatic.caughtInterrupted);
 
             String fullName = contexts.get(evi);
+            NcFileCache.invalidate(fullName); //it changed, so cached open handles are stale
             String dirName = File2.getDirectory(fullName);
             String fileName = File2.getNameAndExtension(fullName);  //matched to fileNameRegex above
 
@@ -1705,7 +1739,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
 
             //finally: make the important instance changes that use the changes above 
             //(eg fileTable leads to seeing changed axisVariables[0])
-            saveDirTableFileTableBadFiles(-1, tDirTable, tFileTable, badFileMap); //throws Throwable
+            saveFileTableChanges(-1, tDirTable, nOldDirs, tFileTable, 
+                badFileMap, contexts); //throws Throwable
             if (fileTableInMemory) {
                 //quickly swap into place
                 dirTable  = tDirTable;
@@ -1729,6 +1764,56 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         return nChanges > 0;
     }
 
+    /** 
+     * Try to load the dirTable and fileTable and apply the changes
+     * in the fileTable journal (if any).
+     *
+     * @return {dirTable, fileTable} (null if trouble).  (No exception if trouble.)
+     */
+    protected Table[] tryToLoadDirFileTables() {
+        Table tDirTable = tryToLoadDirFileTable(datasetDir() + DIR_TABLE_FILENAME);
+        Table tFileTable = tDirTable == null? null :
+            tryToLoadDirFileTable(datasetDir() + FILE_TABLE_FILENAME);
+        if (tFileTable == null)
+            return null;
+        try {
+            if (fileTableJournal().replay(tDirTable, tFileTable) > 0) {
+                //new rows are at the end, so sort by min and recalculate ftStartIndex
+                tFileTable.sort(new int[]{FT_MIN_COL}, new boolean[]{true});
+                IntArray ftNValues    = (IntArray)tFileTable.getColumn(FT_N_VALUES_COL);
+                IntArray ftStartIndex = (IntArray)tFileTable.getColumn(FT_START_INDEX_COL);
+                int tStart = 0;
+                int nFiles = ftNValues.size();
+                for (int f = 0; f < nFiles; f++) {
+                    ftStartIndex.set(f, tStart);
+                    tStart += ftNValues.get(f);
+                }
+            }
+            return new Table[]{tDirTable, tFileTable};
+        } catch (Throwable t) {
+            File2.delete(datasetDir() + DIR_TABLE_FILENAME);
+            File2.delete(datasetDir() + FILE_TABLE_FILENAME);
+            fileTableJournal().delete();
+            String2.log(String2.ERROR + " replaying " + fileTableJournal().journalName() + "\n" + 
+                MustBe.throwableToString(t));  
+            return null;
+        }
+    }
+
+    /** 
+     * This gets the shared, read-only {dirTable, fileTable} snapshot 
+     * (for fileTableInMemory=false), loading it if needed.
+     * Don't change the tables (clone them first).
+     *
+     * @return {dirTable, fileTable}
+     * @throw RuntimeException if trouble
+     */
+    protected Table[] dirFileTableSnapshot() {
+        Table tDirFileTables[] = fileTableJournal().snapshot(this::tryToLoadDirFileTables);
+        Test.ensureNotNull(tDirFileTables, "dirTable and fileTable");
+        return tDirFileTables;
+    }
+
     /** 
      * This gets the dirTable (perhaps the private copy) for read-only use. 
      *
@@ -1736,7 +1821,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
      */
     public Table getDirTable() {
         Table tDirTable = fileTableInMemory? 
-            dirTable : tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //shouldn't be null
+            dirTable : dirFileTableSnapshot()[0]; //shouldn't be null
         Test.ensureNotNull(tDirTable, "dirTable");
         return tDirTable;
     }
@@ -1748,7 +1833,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
      */
     public Table getFileTable() {
         Table tFileTable = fileTableInMemory? 
-            fileTable : tryToLoadDirFileTable(datasetDir() +  FILE_TABLE_FILENAME); //shouldn't be null
+            fileTable : dirFileTableSnapshot()[1]; //shouldn't be null
         Test.ensureNotNull(tFileTable, "fileTable");
         return tFileTable;
     }
@@ -1759,8 +1844,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
      * @throw RuntimeException if trouble
      */
     public Table getDirTableCopy() {
-        Table tDirTable = fileTableInMemory? 
-            (Table)(dirTable.clone()) : tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //shouldn't be null
+        Table tDirTable = (Table)(fileTableInMemory? 
+            dirTable : dirFileTableSnapshot()[0]).clone(); //shouldn't be null
         Test.ensureNotNull(tDirTable, "dirTable");
         return tDirTable;
     }
@@ -1771,8 +1856,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
      * @throw RuntimeException if trouble
      */
     public Table getFileTableCopy() {
-        Table tFileTable = fileTableInMemory? 
-            (Table)(fileTable.clone()) : tryToLoadDirFileTable(datasetDir() +  FILE_TABLE_FILENAME); //shouldn't be null
+        Table tFileTable = (Table)(fileTableInMemory? 
+            fileTable : dirFileTableSnapshot()[1]).clone(); //shouldn't be null
         Test.ensureNotNull(tFileTable, "fileTable");
         return tFileTable;
     }
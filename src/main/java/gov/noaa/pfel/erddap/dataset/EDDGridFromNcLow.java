@@ -21,6 +21,7 @@ import com.cohort.util.Test;
 import com.cohort.util.XML;
 
 import gov.noaa.pfel.coastwatch.Projects;
+import gov.noaa.pfel.coastwatch.griddata.NcFileCache;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
@@ -280,7 +281,8 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
         int nValues = -1; //not yet calculated
         EDV edv = null;
 
-        NetcdfFile ncFile = NcHelper.openFile(tFullName); //may throw exception
+        //use a cached handle, since GridDataAccessor often asks for many chunks from the same file
+        NetcdfFile ncFile = NcFileCache.acquire(tFullName); //may throw exception
         try {
 
             for (int dvi = 0; dvi < ndv; dvi++) {
@@ -325,18 +327,12 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
                 }
             }
 
-            //I care about this exception
-            ncFile.close();
+            NcFileCache.release(ncFile);
             return paa;
 
         } catch (Throwable t) {
-            //make sure it is explicitly closed
-            try {   
-                ncFile.close();    
-            } catch (Throwable t2) {
-                String2.log("Error while trying to close " + tFullName +
-                    "\n" + MustBe.throwableToShortString(t2));
-            }  
+            //make sure it is explicitly closed (not returned to the cache)
+            NcFileCache.discard(ncFile);
 
             String2.log("ERROR: while reading sourceName=" +
                 (edv == null? "null" : edv.sourceName()) + 
@@ -30,6 +30,7 @@ import gov.noaa.pfel.coastwatch.griddata.Matlab;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
 import gov.noaa.pfel.coastwatch.util.HtmlWidgets;
 import gov.noaa.pfel.coastwatch.util.RegexFilenameFilter;
@@ -3003,7 +3004,8 @@ public abstract class EDDTable extends EDD {
 
         //thread-safe creation of the file 
         //(If there are almost simultaneous requests for the same one, only one thread will make it.)
-        synchronized(String2.canonical(cacheFullName)) {
+        FileLocks.Lock fileLock = FileLocks.lock(cacheFullName);
+        try {
 
             if (File2.isFile(cacheFullName)) { //don't 'touch()'; files for latest data will change
                 if (verbose) String2.log("  reusing cached " + cacheFullName);
@@ -3134,13 +3136,16 @@ public abstract class EDDTable extends EDD {
 
                 File2.isFile(cacheFullName, 5); //for possible waiting thread, wait till file is visible via operating system
             } 
+        } finally {
+            fileLock.unlock();
         }
 
         //if ncXHeader (.ncHeader, .nc4Header, .ncCFHeader, .ncCFMAHeader), create the underlying .nc file
         if (ncXHeader) {
             //thread-safe creation of the file 
             //(If there are almost simultaneous requests for the same one, only one thread will make it.)
-            synchronized(String2.canonical(fullName)) {
+            FileLocks.Lock headerLock = FileLocks.lock(fullName);
+            try {
                 if (!File2.isFile(fullName)) {
                     String error = String2.writeToFile(fullName + random, 
                         NcHelper.ncdump(cacheFullName, "-h"), String2.UTF_8); //!!!this doesn't do anything to internal " in a String attribute value.
@@ -3151,6 +3156,8 @@ public abstract class EDDTable extends EDD {
                         throw new RuntimeException(error);
                     }
                 }
+            } finally {
+                headerLock.unlock();
             }
         }
 
@@ -10837,7 +10844,12 @@ public abstract class EDDTable extends EDD {
         }
 
         //make/read all of the subsetVariable data
-        Table subsetTable = subsetVariablesDataTable(loggedInAs);
+        //(If the resident index is available, the rows are selected with it 
+        //and then just the selected rows are made into subsetTable.)
+        Object subsetIndexOrTable = subsetIndexOrTable(loggedInAs);
+        SubsetIndex subsetIndex = subsetIndexOrTable instanceof SubsetIndex? 
+            (SubsetIndex)subsetIndexOrTable : null;
+        Table subsetTable = subsetIndex == null? (Table)subsetIndexOrTable : null;
 
         //if either map is possible, make consistent lonLatConstraints (specifies map extent)
         boolean distinctMapIsPossible = 
@@ -10852,13 +10864,15 @@ public abstract class EDDTable extends EDD {
             //Don't get raw lon lat from variable's destinationMin/Max.
             //It isn't very reliable.
 
-            //get min/max lon lat from subsetTable
-            PrimitiveArray pa = subsetTable.findColumn("longitude");
+            //get min/max lon lat from subsetTable (or the distinct values in subsetIndex)
+            PrimitiveArray pa = subsetIndex == null? subsetTable.findColumn("longitude") :
+                subsetIndex.values(subsetIndex.findColumnNumber("longitude"));
             double stats[] = pa.calculateStats();
             minLon = stats[PrimitiveArray.STATS_MIN];
             maxLon = stats[PrimitiveArray.STATS_MAX];
             
-            pa = subsetTable.findColumn("latitude");
+            pa = subsetIndex == null? subsetTable.findColumn("latitude") :
+                subsetIndex.values(subsetIndex.findColumnNumber("latitude"));
             stats = pa.calculateStats();
             minLat = stats[PrimitiveArray.STATS_MIN];
             maxLat = stats[PrimitiveArray.STATS_MAX];
@@ -10888,7 +10902,7 @@ public abstract class EDDTable extends EDD {
         }
 
         //reduce subsetTable to "bigTable"  (as if lastP param was set to ANY)
-        int nRows = subsetTable.nRows();
+        int nRows = subsetIndex == null? subsetTable.nRows() : subsetIndex.nRows();
         BitSet keep = new BitSet(nRows);
         keep.set(0, nRows); //set all to true
         for (int p = 0; p < subsetVariables.length; p++) {
@@ -10901,6 +10915,15 @@ public abstract class EDDTable extends EDD {
                 null;
             String tTime_precision = edvTimeStamp == null? null : 
                 edvTimeStamp.time_precision();
+            if (subsetIndex != null) {
+                int col = subsetIndex.findColumnNumber(subsetVariables[p]);
+                if (edvTimeStamp == null && subsetIndex.elementClass(col) != String.class && 
+                    tParam.equals("NaN"))
+                    tParam = "";  //e.g., doubleArray.getString() for NaN returns ""
+                keep.and(subsetIndex.rowsWhereString(col, tParam, 
+                    edvTimeStamp == null? null : tTime_precision == null? "" : tTime_precision));
+                continue;
+            }
             PrimitiveArray pa = subsetTable.findColumn(subsetVariables[p]);
             if (edvTimeStamp == null && !(pa instanceof StringArray) && tParam.equals("NaN"))
                 tParam = "";  //e.g., doubleArray.getString() for NaN returns ""
@@ -10912,16 +10935,39 @@ public abstract class EDDTable extends EDD {
                 keep.set(row, tParam.equals(value));  //tParam isn't null; pa.getString might be
             }
         }
-        subsetTable.justKeep(keep); 
-        nRows = subsetTable.nRows(); //valid params should always yield at least 1, but don't sometimes
+        if (subsetIndex == null) {
+            subsetTable.justKeep(keep); 
+            nRows = subsetTable.nRows(); //valid params should always yield at least 1, but don't sometimes
+        } else {
+            nRows = keep.cardinality();
+        }
         if (reallyVerbose) String2.log("  bigTable nRows=" + nRows);
 
-        //save lastP column  in a different PrimitiveArray
+        //save lastP column (or just its distinct values) in a different PrimitiveArray
         PrimitiveArray lastPPA = lastP < 0? null :
-            (PrimitiveArray)(subsetTable.findColumn(subsetVariables[lastP]).clone());
+            subsetIndex != null? 
+                subsetIndex.distinctValues(subsetIndex.findColumnNumber(subsetVariables[lastP]), keep) :
+                (PrimitiveArray)(subsetTable.findColumn(subsetVariables[lastP]).clone());
 
         //reduce subsetTable to "smallTable" (using lastP param to reduce the table size)
-        if (lastP >= 0) {
+        if (lastP >= 0 && subsetIndex != null) {
+            String tParam = param[lastP];
+            EDV edv = findDataVariableByDestinationName(subsetVariables[lastP]);
+            EDVTimeStamp edvTimeStamp = edv instanceof EDVTimeStamp? (EDVTimeStamp)edv : 
+                null;
+            String tTime_precision = edvTimeStamp == null? null : 
+                edvTimeStamp.time_precision();
+            int col = subsetIndex.findColumnNumber(subsetVariables[lastP]);
+            if (edvTimeStamp == null && subsetIndex.elementClass(col) != String.class && 
+                tParam.equals("NaN"))
+                tParam = "";  //e.g., doubleArray.getString() for NaN returns ""
+            keep.and(subsetIndex.rowsWhereString(col, tParam, 
+                edvTimeStamp == null? null : tTime_precision == null? "" : tTime_precision));
+            nRows = keep.cardinality(); 
+            if (reallyVerbose) String2.log("  smallTable " + 
+                subsetVariables[lastP] + "=\"" + tParam + "\" nRows=" + nRows);
+
+        } else if (lastP >= 0) {
             String tParam = param[lastP];
             keep = new BitSet(nRows);
             keep.set(0, nRows); //set all to true
@@ -10948,6 +10994,8 @@ public abstract class EDDTable extends EDD {
             if (reallyVerbose) String2.log("  smallTable " + 
                 subsetVariables[lastP] + "=\"" + tParam + "\" nRows=" + nRows);
         }
+        if (subsetIndex != null)
+            subsetTable = subsetIndex.toTable(keep);
 
         String clickPart = String2.stringStartsWith(queryParts, ".click=?"); //browser added '?' when user clicked
         String clickLon = null, clickLat = null;
@@ -11143,6 +11191,7 @@ public abstract class EDDTable extends EDD {
                 //reset all
                 Arrays.fill(param, ANY);
                 subsetTable = subsetVariablesDataTable(loggedInAs); //reload all subset data
+                keep = null; //all rows
                 lastP = -1;
                 lastPPA = null;
             }
@@ -11173,9 +11222,11 @@ public abstract class EDDTable extends EDD {
                 String tTime_precision = edvTimeStamp == null? null : 
                     edvTimeStamp.time_precision();
 
-                //work on a copy
+                //work on a copy (with the index, just the distinct values)
                 PrimitiveArray pa = p == lastP? (PrimitiveArray)lastPPA.clone() :
-                    (PrimitiveArray)(subsetTable.findColumn(pName).clone());
+                    subsetIndex != null? 
+                        subsetIndex.distinctValues(subsetIndex.findColumnNumber(pName), keep) :
+                        (PrimitiveArray)(subsetTable.findColumn(pName).clone());
                 if (edvTimeStamp != null) {
                     int paSize = pa.size();
                     StringArray ta = new StringArray(paSize, false);
@@ -11964,6 +12015,11 @@ public abstract class EDDTable extends EDD {
         //[NOW] The .subset.nc file is made by the constructor. 
         //  The file may be made needlessly, but no delay for first user.
 
+        //make the table from the resident index?
+        SubsetIndex subsetIndex = SubsetIndex.get(datasetDir() + subsetFileName);
+        if (subsetIndex != null)
+            return subsetIndex.toTable(null);
+
         //read subsetTable from cached file?
         Table table = null;
         if (File2.isFile(datasetDir() + subsetFileName)) {
@@ -11971,6 +12027,7 @@ public abstract class EDDTable extends EDD {
             int enhVer = table.readEnhancedFlatNc(datasetDir() + subsetFileName, subsetVariables);
             if (enhVer == Table.ENHANCED_VERSION) {
                 //String2.log(">>subsetVariablesDataTable as read:\n" + table.toCSVString());
+                SubsetIndex.put(datasetDir() + subsetFileName, table); //if there is room
                 return table;
             }
             //trouble. Fall through to creating a new table and storing in a file.
@@ -12094,6 +12151,7 @@ public abstract class EDDTable extends EDD {
 
             //save it as subset file
             table.saveAsEnhancedFlatNc(datasetDir() + subsetFileName);
+            SubsetIndex.put(datasetDir() + subsetFileName, table); //if there is room
             if (verbose) String2.log("* " + datasetID + 
                 " made subsetVariablesDataTable(loggedInAs=" + loggedInAs + ") in time=" +
                 (System.currentTimeMillis() - time) + "ms");
@@ -12133,6 +12191,7 @@ public abstract class EDDTable extends EDD {
 
         //save it
         table.saveAsEnhancedFlatNc(datasetDir() + subsetFileName);
+        SubsetIndex.put(datasetDir() + subsetFileName, table); //if there is room
         if (verbose) String2.log("* " + datasetID + 
             " made subsetVariablesDataTable(loggedInAs=" + loggedInAs + ").  time=" +
             (System.currentTimeMillis() - time) + "ms");
@@ -12142,6 +12201,32 @@ public abstract class EDDTable extends EDD {
         return table;
     }
 
+    /** 
+     * This returns the resident, indexed copy of the subsetVariables data table
+     * (see SubsetIndex), making it (and the subset file) if needed.
+     * If it can't be indexed, this returns the subsetVariables data table,
+     * so the caller doesn't have to read it again.
+     *
+     * @param loggedInAs This is used, e.g., for POST data (where the distinct subsetVariables table
+     *    is different for each loggedInAs!) and for EDDTableFromAllDatasets.
+     * @return the SubsetIndex, or (if the table is too big to index, memory is short,
+     *    or the index registry is disabled) the Table from subsetVariablesDataTable().
+     * @throws Throwable if trouble  (e.g., not accessibleViaSubset())
+     */
+    public Object subsetIndexOrTable(String loggedInAs) throws Throwable {
+        String fullSubsetFileName = datasetDir() + subsetVariablesFileName(loggedInAs);
+        SubsetIndex subsetIndex = SubsetIndex.get(fullSubsetFileName);
+        if (subsetIndex != null)
+            return subsetIndex;
+        Table table = subsetVariablesDataTable(loggedInAs); //this makes the index (if there is room)
+        if (SubsetIndex.mayIndex(fullSubsetFileName)) {
+            subsetIndex = SubsetIndex.get(fullSubsetFileName);
+            if (subsetIndex != null)
+                return subsetIndex;
+        }
+        return table;
+    }
+
     /** 
      * This returns the distinct subsetVariables data table.
      * NOTE: the columns are unrelated!  Each column is sorted separately!
@@ -12524,24 +12609,46 @@ public abstract class EDDTable extends EDD {
                 }
             }
         }
+        SubsetIndex subsetIndex = null;
         if (justOneVar) {
             table = distinctSubsetVariablesDataTable(loggedInAs, 
                 new String[]{resultsVariables.get(0)});
         } else {
-            table = subsetVariablesDataTable(loggedInAs);
+            Object subsetIndexOrTable = subsetIndexOrTable(loggedInAs);
+            if (subsetIndexOrTable instanceof Table) {
+                table = (Table)subsetIndexOrTable;
+            } else {
+                subsetIndex = (SubsetIndex)subsetIndexOrTable;
+                //apply the constraints with the index (each is tested once per distinct value),
+                //then just make the matching rows
+                BitSet keep = subsetIndex.allRows();
+                for (int cv = 0; cv < constraintVariables.size(); cv++) { 
+                    EDV edv = findDataVariableByDestinationName(constraintVariables.get(cv));
+                    keep.and(subsetIndex.rowsWhere(
+                        subsetIndex.findColumnNumber(edv.destinationName()),
+                        edv.destinationFillValue(), edv.destinationMissingValue(),
+                        edv instanceof EDVTimeStamp, constraintOps.get(cv), constraintValues.get(cv)));
+                    if (keep.isEmpty())
+                        break;
+                }
+                table = subsetIndex.toTable(keep);
+            }
         }
 
-        //apply constraints, rearrange columns, add metadata 
+        //apply constraints (if not already done), rearrange columns, add metadata 
+        StringArray emptySA = new StringArray();
         applyConstraints(table, true, //applyAllConstraints
             resultsVariables, 
-            constraintVariables, constraintOps, constraintValues);
+            subsetIndex == null? constraintVariables : emptySA, 
+            subsetIndex == null? constraintOps       : emptySA, 
+            subsetIndex == null? constraintValues    : emptySA);
         setResponseGlobalAttributes(requestUrl, userDapQuery, table);
 
         //write to tableWriter
         tableWriter.writeAllAndFinish(table);
         if (verbose) String2.log(datasetID + ".handleViaFixedOrSubsetVariables got the data from the " +
-            (justOneVar? "distinctSubset" : "subset") +
-            " file.  time=" +
+            (justOneVar? "distinctSubset file" : subsetIndex == null? "subset file" : "subset index") +
+            ".  time=" +
             (System.currentTimeMillis() -  time) + "ms");
        
         return true;
@@ -151,6 +151,11 @@ public class EDDTableFromAsciiFiles extends EDDTableFromFiles {
 
     }
 
+    /** See EDDTableFromFiles.rowsAreIndependentOfColumns(). */
+    protected boolean rowsAreIndependentOfColumns() {
+        return true;
+    }
+
     /**
      * This gets source data from one file.
      * See documentation in EDDTableFromFiles.
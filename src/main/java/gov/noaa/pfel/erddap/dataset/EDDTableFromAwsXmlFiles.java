@@ -98,6 +98,11 @@ public class EDDTableFromAwsXmlFiles extends EDDTableFromFiles {
     }
 
 
+    /** See EDDTableFromFiles.rowsAreIndependentOfColumns(). */
+    protected boolean rowsAreIndependentOfColumns() {
+        return true;
+    }
+
     /**
      * This gets source data from one file.
      * See documentation in EDDTableFromFiles.
@@ -328,7 +328,7 @@ public class EDDTableFromAxiomSensorCSVService extends EDDTableFromAsciiService
 
 
         // Get all sensors and stations
-        InputStream is = new URL(source_url + "getDataValues?method=GetStationsResultSetRowsJSON&version=2&appregion=" + region + "&realtimeonly=false&verbose=true&jsoncallback=false").openStream();
+        InputStream is = SSR.getUrlBufferedInputStream(source_url + "getDataValues?method=GetStationsResultSetRowsJSON&version=2&appregion=" + region + "&realtimeonly=false&verbose=true&jsoncallback=false");
         try {
             BufferedReader rd = new BufferedReader(
                     new InputStreamReader(is, Charset.forName("UTF-8")));
@@ -473,7 +473,7 @@ public class EDDTableFromAxiomSensorCSVService extends EDDTableFromAsciiService
                     "&jsoncallback=false" +
                     "&version=2" +
                     "&method=GetSensorObservationsJSON";
-            InputStream is = new URL(encodedSourceUrl).openStream();
+            InputStream is = SSR.getUrlBufferedInputStream(encodedSourceUrl);
             try {
                 BufferedReader in = new BufferedReader(
                         new InputStreamReader(is, Charset.forName("UTF-8")));
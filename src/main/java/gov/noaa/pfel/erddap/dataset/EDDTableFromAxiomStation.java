@@ -16,7 +16,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
@@ -477,10 +476,10 @@ public class EDDTableFromAxiomStation extends EDDTableFromAsciiService {
             throw new Exception("You must specify a <stationId> tag within a EDDTableFromAxiomStation dataset");
         }
 
-        HashMap<Integer, OikosParameter> param_lookup = EDDTableFromAxiomStation.getParametersFromOikos();
+        HashMap<Integer, OikosParameter> param_lookup = OikosContextCache.shared().get().parameterMap;
 
         // Query Sensor Service to get basic metadata
-        InputStream is = new URL(tLocalSourceUrl + "getDataValues?method=GetStationsResultSetRowsJSON&version=3&stationids=" + String.valueOf(tStationId)+ "&region=all&realtimeonly=false&verbose=true&jsoncallback=false").openStream();
+        InputStream is = SSR.getUrlBufferedInputStream(tLocalSourceUrl + "getDataValues?method=GetStationsResultSetRowsJSON&version=3&stationids=" + String.valueOf(tStationId)+ "&region=all&realtimeonly=false&verbose=true&jsoncallback=false");
         JSONObject json;
         try {
 
@@ -604,7 +603,7 @@ public class EDDTableFromAxiomStation extends EDDTableFromAsciiService {
                 "&version=3" +
                 "&force_binned_data=false" +
                 "&method=GetSensorObservationsJSON";
-        InputStream is = new URL(encodedSourceUrl).openStream();
+        InputStream is = SSR.getUrlBufferedInputStream(encodedSourceUrl);
         try {
             BufferedReader in = new BufferedReader(
                     new InputStreamReader(is, Charset.forName("UTF-8")));
@@ -643,65 +642,6 @@ public class EDDTableFromAxiomStation extends EDDTableFromAsciiService {
         }
     }
 
-    private static HashMap<Integer, OikosParameter> getParametersFromOikos() throws IOException{
-        URL url = new URL("http://oikos.axds.co/rest/context");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.addRequestProperty("Accept", "application/json");
-        conn.setUseCaches(false);
-        InputStream ps = conn.getInputStream();
-        try {
-            BufferedReader bfrd = new BufferedReader(
-                    new InputStreamReader(ps, Charset.forName("UTF-8")));
-            StringBuilder strbf = new StringBuilder();
-            String ln = null;
-            while ((ln = bfrd.readLine()) != null) {
-                strbf.append(ln);
-                strbf.append("\n");
-            }
-            JSONObject param_json = new JSONObject(strbf.toString());
-
-            // Units
-            HashMap<Integer,OikosUnit> units_lookup = new HashMap<>();
-            JSONArray units_array = param_json.getJSONArray("units");
-            for (int a = 0 ; a < units_array.length() ; a++) {
-                JSONObject unit = units_array.getJSONObject(a);
-                units_lookup.put(unit.getInt("id"), OikosUnit.fromJson(unit));
-            }
-
-            // ParameterTypeUnits
-            HashMap<Integer,ArrayList<OikosParameterTypeUnit>> parameter_type_lookup = new HashMap<>();
-            JSONArray param_type_units_array = param_json.getJSONArray("parameterTypeUnits");
-            for (int b = 0 ; b < param_type_units_array.length() ; b++) {
-                JSONObject param = param_type_units_array.getJSONObject(b);
-
-                OikosParameterTypeUnit ptu = OikosParameterTypeUnit.fromJson(param, units_lookup);
-
-                if (!parameter_type_lookup.containsKey(ptu.id)) {
-                    // Create array
-                    ArrayList<OikosParameterTypeUnit> ptus = new ArrayList<>();
-                    ptus.add(ptu);
-                    parameter_type_lookup.put(ptu.id, ptus);
-                } else {
-                    ArrayList<OikosParameterTypeUnit> ptus = parameter_type_lookup.get(ptu.id);
-                    ptus.add(ptu);
-                    parameter_type_lookup.replace(ptu.id, ptus);
-                }
-            }
-
-            // Parameters
-            HashMap<Integer, OikosParameter> p_lookup = new HashMap<>();
-            JSONArray param_array = param_json.getJSONArray("parameters");
-            for (int c = 0 ; c < param_array.length() ; c++) {
-                JSONObject param = param_array.getJSONObject(c);
-                OikosParameter p = OikosParameter.fromJson(param, parameter_type_lookup);
-                p_lookup.put(p.id, p);
-            }
-
-            return p_lookup;
-
-        } finally { ps.close(); }
-    }
-
     public static void main(String[] args) throws Throwable {
         String2.log("\n****************** EDDTableFromAxiomStation.test() *****************\n");
         testVerboseOn();
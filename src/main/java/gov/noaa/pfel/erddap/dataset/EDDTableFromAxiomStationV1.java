@@ -112,7 +112,7 @@ public class EDDTableFromAxiomStationV1 extends EDDTableFromAsciiService {
                 "&force_binned_data=false" +
                 "&method=GetSensorObservationsJSON";
 //        String2.log(encodedSourceUrl);
-        InputStream is = new URL(encodedSourceUrl).openStream();
+        InputStream is = SSR.getUrlBufferedInputStream(encodedSourceUrl);
         try {
             BufferedReader in = new BufferedReader(
                     new InputStreamReader(is, Charset.forName("UTF-8")));
@@ -8,6 +8,7 @@ import com.cohort.util.File2;
 import com.cohort.util.String2;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.util.SimpleXMLReader;
+import gov.noaa.pfel.coastwatch.util.SSR;
 import gov.noaa.pfel.erddap.Erddap;
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.variable.EDV;
@@ -450,13 +451,23 @@ class OikosLookups {
         this.agentAssociationTypeToRoleCodeMap = agentAssociationTypeToRoleCodeMap;
     }
 
+    /**
+     * Fetches and parses the Oikos context (uncached).
+     * Datasets should use OikosContextCache.shared().get() instead.
+     */
     static OikosLookups getOikosLookups() throws IOException {
-        URL url = new URL("http://oikos.axds.co/rest/context");
+        return mapOikosLookupsFromJson(new JSONObject(fetchContextJson()));
+    }
+
+    /** Fetches the raw Oikos context json from OikosContextCache.CONTEXT_URL. */
+    static String fetchContextJson() throws IOException {
+        URL url = new URL(OikosContextCache.CONTEXT_URL);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
         conn.addRequestProperty("Accept", "application/json");
         conn.setUseCaches(false);
+        conn.setConnectTimeout(60000);
+        conn.setReadTimeout(120000);
         InputStream ps = conn.getInputStream();
-        JSONObject param_json;
         try {
             BufferedReader bfrd = new BufferedReader(
                     new InputStreamReader(ps, Charset.forName("UTF-8")));
@@ -466,13 +477,11 @@ class OikosLookups {
                 strbf.append(ln);
                 strbf.append("\n");
             }
-            param_json = new JSONObject(strbf.toString());
+            return strbf.toString();
 
         } finally {
             ps.close();
         }
-
-        return mapOikosLookupsFromJson(param_json);
     }
 
     static OikosLookups mapOikosLookupsFromJson(JSONObject lookups_json) {
@@ -943,12 +952,12 @@ class EDDTableFromAxiomStationV2Shim {
             throw new Exception("You must specify a <stationId> tag within a EDDTableFromAxiomStationV2 dataset");
         }
 
-        OikosLookups oikosLookups = OikosLookups.getOikosLookups();
+        OikosLookups oikosLookups = OikosContextCache.shared().get();
 
         // Query Sensor Service to get basic metadata
         String url = tLocalSourceUrl + "metadata/filter/custom?filter=" + new OikosSensorFilter(tStationId).toUrlEncodedString();
         String2.log("\n" + url);
-        InputStream is = new URL(url).openStream();
+        InputStream is = SSR.getUrlBufferedInputStream(url);
         JSONObject json;
         try {
 
@@ -105,6 +105,11 @@ public class EDDTableFromColumnarAsciiFiles extends EDDTableFromFiles {
             tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
     }
 
+    /** See EDDTableFromFiles.rowsAreIndependentOfColumns(). */
+    protected boolean rowsAreIndependentOfColumns() {
+        return true;
+    }
+
     /**
      * This gets source data from one file.
      * See documentation in EDDTableFromFiles.
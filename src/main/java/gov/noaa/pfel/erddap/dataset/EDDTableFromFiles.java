@@ -14,12 +14,14 @@ import com.cohort.array.ShortArray;
 import com.cohort.array.StringArray;
 import com.cohort.util.Calendar2;
 import com.cohort.util.File2;
+import com.cohort.util.LRUCache;
 import com.cohort.util.Math2;
 import com.cohort.util.MustBe;
 import com.cohort.util.SimpleException;
 import com.cohort.util.String2;
 import com.cohort.util.Test;
 
+import gov.noaa.pfel.coastwatch.griddata.NcFileCache;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
@@ -32,6 +34,7 @@ import gov.noaa.pfel.erddap.Erddap;
 import gov.noaa.pfel.erddap.dataset.NoMoreDataPleaseException;
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.util.EDUnits;
+import gov.noaa.pfel.erddap.util.ReadScheduler;
 import gov.noaa.pfel.erddap.variable.*;
 
 import java.io.FileWriter;
@@ -40,10 +43,13 @@ import java.nio.file.WatchEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.Enumeration;
@@ -168,6 +174,28 @@ public abstract class EDDTableFromFiles extends EDDTable{
     /** When threshold size is reached, prune the cache to fraction*threshold. */
     protected double cacheFraction = FileVisitorDNLS.PRUNE_CACHE_DEFAULT_FRACTION; 
 
+    /** The optional cache of decoded data columns from recently read files. null if inactive. */
+    protected EDDTableFromFilesDataCache dataCache = null;
+
+    /** If true, parsed data from each source file is stored in a columnar binary sidecar file. */
+    protected boolean columnarSidecar = false;
+
+    /** The number of rows per group in the row group index. 0 if inactive. */
+    protected int rowGroupSize = 0;
+    /** The maximum number of row group indexes kept in memory (per dataset). */
+    public final static int MAX_ROW_GROUP_INDEXES_IN_MEMORY = 1000;
+    /** The recently used row group indexes, by source file fullName (least recently used are removed). */
+    protected Map<String,EDDTableFromFilesRowGroupIndex> rowGroupIndexes = 
+        Collections.synchronizedMap(new LRUCache(MAX_ROW_GROUP_INDEXES_IN_MEMORY));
+    /** The fullNames of the files whose row group indexes are waiting to be made in the background. */
+    protected Set<String> rowGroupIndexesPending = ConcurrentHashMap.newKeySet();
+    /** The thread (shared by all datasets) which makes row group indexes in the background. */
+    private final static ExecutorService rowGroupIndexMaker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "EDDTableFromFiles rowGroupIndexMaker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * This returns the default value for standardizeWhat for this subclass.
      * See Attributes.unpackVariable for options.
@@ -231,6 +259,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
         String tCacheFromUrl = null;
         int tCacheSizeGB = -1;
         String tCachePartialPathRegex = null;
+        int tDataCacheMB = 0; //0=inactive
+        boolean tColumnarSidecar = false;
+        int tRowGroupSize = 0; //0=inactive
 
         //process the tags
         String startOfTags = xmlReader.allTags();
@@ -325,6 +356,12 @@ public abstract class EDDTableFromFiles extends EDDTable{
             else if (localTags.equals("</cacheSizeGB>")) tCacheSizeGB = String2.parseInt(content); 
             else if (localTags.equals( "<cachePartialPathRegex>")) {}
             else if (localTags.equals("</cachePartialPathRegex>")) tCachePartialPathRegex = content; 
+            else if (localTags.equals( "<dataCacheMB>")) {}
+            else if (localTags.equals("</dataCacheMB>")) tDataCacheMB = String2.parseInt(content); 
+            else if (localTags.equals( "<columnarSidecar>")) {}
+            else if (localTags.equals("</columnarSidecar>")) tColumnarSidecar = String2.parseBoolean(content); 
+            else if (localTags.equals( "<rowGroupSize>")) {}
+            else if (localTags.equals("</rowGroupSize>")) tRowGroupSize = String2.parseInt(content); 
 
             else xmlReader.unexpectedTagException();
         }
@@ -335,8 +372,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
         if (tType == null)
             tType = "";
+        EDDTableFromFiles tEDDTable;
         if (tType.equals("EDDTableFromAsciiFiles")) {
-            return new EDDTableFromAsciiFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromAsciiFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -352,7 +390,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
         } else if (tType.equals("EDDTableFromAudioFiles")) { 
-            return new EDDTableFromAudioFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromAudioFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -368,7 +406,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
         } else if (tType.equals("EDDTableFromAwsXmlFiles")) {
-            return new EDDTableFromAwsXmlFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromAwsXmlFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -384,7 +422,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
         } else if (tType.equals("EDDTableFromColumnarAsciiFiles")) {
-            return new EDDTableFromColumnarAsciiFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromColumnarAsciiFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -400,7 +438,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
         } else if (tType.equals("EDDTableFromHttpGet")) { 
-            return new EDDTableFromHttpGet(tDatasetID, 
+            tEDDTable = new EDDTableFromHttpGet(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -416,7 +454,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
         
         } else if (tType.equals("EDDTableFromInvalidCRAFiles")) {
-            return new EDDTableFromInvalidCRAFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromInvalidCRAFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -432,7 +470,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex); 
 
         } else if (tType.equals("EDDTableFromJsonlCSVFiles")) { 
-            return new EDDTableFromJsonlCSVFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromJsonlCSVFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -448,7 +486,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
         } else if (tType.equals("EDDTableFromMultidimNcFiles")) { 
-            return new EDDTableFromMultidimNcFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromMultidimNcFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -464,7 +502,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
         } else if (tType.equals("EDDTableFromNcFiles")) { 
-            return new EDDTableFromNcFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromNcFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -480,7 +518,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
         } else if (tType.equals("EDDTableFromNcCFFiles")) {
-            return new EDDTableFromNcCFFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromNcCFFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -496,7 +534,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex); 
 
         /*} else if (tType.equals("EDDTableFromPostNcFiles")) {
-            return new EDDTableFromNcFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromNcFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -513,7 +551,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
         */
 
         } else if (tType.equals("EDDTableFromNccsvFiles")) { 
-            return new EDDTableFromNccsvFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromNccsvFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -557,7 +595,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 NcHelper.writeAttributesToNc(qrName, qrAtts);
             }
 
-            EDDTableFromFiles tEDDTable = new EDDTableFromHyraxFiles(tDatasetID,
+            tEDDTable = new EDDTableFromHyraxFiles(tDatasetID,
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -573,7 +611,6 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
             tEDDTable.creationTimeMillis = tCreationTime;
-            return tEDDTable;
 
         } else if (tType.equals("EDDTableFromThreddsFiles")) {
 
@@ -604,7 +641,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 NcHelper.writeAttributesToNc(qrName, qrAtts);
             }
 
-            EDDTableFromFiles tEDDTable = new EDDTableFromThreddsFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromThreddsFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -620,7 +657,6 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 tNThreads, tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
 
             tEDDTable.creationTimeMillis = tCreationTime;
-            return tEDDTable;
 
         } else if (tType.equals("EDDTableFromWFSFiles")) {
 
@@ -649,7 +685,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                     String2.log(error);
             }
 
-            return new EDDTableFromWFSFiles(tDatasetID, 
+            tEDDTable = new EDDTableFromWFSFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo,
                 tOnChange, tFgdcFile, tIso19115File, tSosOfferingPrefix,
                 tDefaultDataQuery, tDefaultGraphQuery,  
@@ -691,6 +727,325 @@ public abstract class EDDTableFromFiles extends EDDTable{
             throw new Exception("type=\"" + tType + 
                 "\" needs to be added to EDDTableFromFiles.fromXml at end.");
         }
+
+        tEDDTable.setDataCacheMB(tDataCacheMB);
+        tEDDTable.setColumnarSidecar(tColumnarSidecar);
+        tEDDTable.setRowGroupSize(tRowGroupSize);
+        return tEDDTable;
+    }
+
+    /**
+     * This sets the size of this dataset's cache of decoded data columns
+     * from recently read source files (see EDDTableFromFilesDataCache).
+     * fromXml calls this after the dataset is constructed, based on &lt;dataCacheMB&gt;.
+     *
+     * @param tDataCacheMB the maximum size of the cache, in MB.
+     *   &lt;=0 or Integer.MAX_VALUE (e.g., an invalid value) disables the cache.
+     */
+    public void setDataCacheMB(int tDataCacheMB) {
+        if (tDataCacheMB == Integer.MAX_VALUE)
+            tDataCacheMB = 0;
+        dataCache = EDDTableFromFilesDataCache.register(datasetID, tDataCacheMB);
+        if (dataCache != null && verbose)
+            String2.log("  " + datasetID + " dataCacheMB=" + tDataCacheMB);
+    }
+
+    /**
+     * This turns on or off the use of columnar binary sidecar files 
+     * (see EDDTableFromFilesSidecar) for this dataset's source files.
+     * fromXml calls this after the dataset is constructed, based on &lt;columnarSidecar&gt;.
+     * Sidecars are made when lowUpdate sees a new or changed file 
+     * or when a request reads a file which doesn't have a valid sidecar.
+     * This is only supported by subclasses where rowsAreIndependentOfColumns()
+     * (e.g., EDDTableFromAsciiFiles), and only for local files.
+     *
+     * @param tColumnarSidecar
+     */
+    public void setColumnarSidecar(boolean tColumnarSidecar) {
+        if (tColumnarSidecar && !rowsAreIndependentOfColumns()) {
+            String2.log("WARNING: datasetID=" + datasetID + ": " + className + 
+                " doesn't support <columnarSidecar>.");
+            tColumnarSidecar = false;
+        }
+        columnarSidecar = tColumnarSidecar;
+        if (columnarSidecar) {
+            File2.makeDirectory(sidecarDirectory());
+            if (verbose)
+                String2.log("  " + datasetID + " columnarSidecar=true");
+        }
+    }
+
+    /** 
+     * The directory for this dataset's columnar sidecar files (with "/" at end).
+     * This is in datasetDir() (not cacheDirectory()) so the sidecars 
+     * survive restarts and aren't removed by the cache cleaner.
+     */
+    public String sidecarDirectory() {
+        return datasetDir() + "sidecar/";
+    }
+
+    /**
+     * This sets the number of rows per group in the row group index
+     * (see EDDTableFromFilesRowGroupIndex) for this dataset's source files.
+     * fromXml calls this after the dataset is constructed, based on &lt;rowGroupSize&gt;.
+     * Indexes are made when lowUpdate sees a new or changed file.
+     * The missing indexes for the files already in the fileTable, and the index for a file
+     * which a request finds doesn't have a valid index, are made in the background.
+     * This is only supported by subclasses where supportsRowGroupIndex()
+     * (e.g., EDDTableFromNcFiles), and only for local files.
+     *
+     * @param tRowGroupSize the number of rows per group.
+     *   &lt;=0 or Integer.MAX_VALUE (e.g., an invalid value) disables the index.
+     */
+    public void setRowGroupSize(int tRowGroupSize) {
+        if (tRowGroupSize == Integer.MAX_VALUE)
+            tRowGroupSize = 0;
+        if (tRowGroupSize > 0 && !supportsRowGroupIndex()) {
+            String2.log("WARNING: datasetID=" + datasetID + ": " + className + 
+                " doesn't support <rowGroupSize>.");
+            tRowGroupSize = 0;
+        }
+        rowGroupSize = Math.max(0, tRowGroupSize);
+        rowGroupIndexes.clear();
+        if (rowGroupSize > 0) {
+            File2.makeDirectory(rowGroupIndexDirectory());
+            if (verbose)
+                String2.log("  " + datasetID + " rowGroupSize=" + rowGroupSize);
+            makeMissingRowGroupIndexesInBackground();
+        }
+    }
+
+    /**
+     * This queues the files in the fileTable which don't have a row group index file
+     * (e.g., because the dataset was constructed before rowGroupSize was set)
+     * so their indexes are made in the background.
+     * Stale index files are found (and remade) by rowGroupRange().
+     */
+    protected void makeMissingRowGroupIndexesInBackground() {
+        if (rowGroupSize <= 0 || !filesAreLocal)
+            return;
+        try {
+            Table tables[] = fileTableInMemory? 
+                new Table[]{dirTable, fileTable} : dirFileTableSnapshot();
+            if (tables == null || tables[0] == null || tables[1] == null)
+                return;
+            StringArray dirList    = (StringArray)tables[0].getColumn(0);
+            ShortArray  ftDirIndex = (ShortArray) tables[1].getColumn(FT_DIR_INDEX_COL);
+            StringArray ftFileList = (StringArray)tables[1].getColumn(FT_FILE_LIST_COL);
+            String indexDir = rowGroupIndexDirectory();
+            int n = ftFileList.size();
+            int nQueued = 0;
+            for (int i = 0; i < n; i++) {
+                String tDir = dirList.get(ftDirIndex.get(i));
+                String tName = ftFileList.get(i);
+                if (!File2.isFile(EDDTableFromFilesRowGroupIndex.indexName(indexDir, tDir + tName)) &&
+                    makeRowGroupIndexInBackground(tDir, tName))
+                    nQueued++;
+            }
+            if (verbose && nQueued > 0)
+                String2.log("  " + datasetID + " queued " + nQueued + 
+                    " row group indexes to be made in the background.");
+        } catch (Throwable t) {
+            String2.log("WARNING: " + datasetID + 
+                " unable to queue the missing row group indexes:\n" + 
+                MustBe.throwableToString(t));
+        }
+    }
+
+    /**
+     * This queues a file so its row group index will be made (by reading all of 
+     * the file's data) in the background, unless it is already queued.
+     *
+     * @param tFileDir
+     * @param tFileName
+     * @return true if it was queued
+     */
+    protected boolean makeRowGroupIndexInBackground(String tFileDir, String tFileName) {
+        String fullName = tFileDir + tFileName;
+        if (!rowGroupIndexesPending.add(fullName))
+            return false;
+        rowGroupIndexMaker.submit(() -> {
+            try {
+                if (rowGroupSize > 0 && File2.isFile(fullName)) 
+                    makeRowGroupIndex(tFileDir, tFileName);
+            } catch (Throwable t) {
+                String2.log("WARNING: " + datasetID + 
+                    " unable to make the row group index for " + fullName + ":\n" + 
+                    MustBe.throwableToString(t));
+            } finally {
+                rowGroupIndexesPending.remove(fullName);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * This gets a file's row group index from its index file (if it is valid)
+     * or makes a new one (by reading all of the file's data) and writes the index file.
+     * The index is put in rowGroupIndexes.
+     *
+     * @param tFileDir
+     * @param tFileName
+     * @return the index
+     * @throws Throwable if trouble
+     */
+    protected EDDTableFromFilesRowGroupIndex makeRowGroupIndex(String tFileDir, String tFileName) 
+        throws Throwable {
+
+        String fullName = tFileDir + tFileName;
+        long lastMod = File2.getLastModified(fullName);
+        long size = File2.length(fullName);
+        String indexName = EDDTableFromFilesRowGroupIndex.indexName(
+            rowGroupIndexDirectory(), fullName);
+        EDDTableFromFilesRowGroupIndex index = readRowGroupIndex(indexName);
+        if (index == null || !index.isValidFor(fullName, lastMod, size) || 
+            index.rowGroupSize != rowGroupSize) {
+            StringArray names = new StringArray();
+            StringArray types = new StringArray();
+            fileVariableNamesAndTypesNEC(names, types);
+            Table table = lowGetSourceDataFromFile(tFileDir, tFileName, 
+                names, types.toArray(),
+                Double.NaN, Double.NaN, Double.NaN, 
+                new StringArray(), new StringArray(), new StringArray(),
+                false, true);
+            index = EDDTableFromFilesRowGroupIndex.make(fullName, lastMod, size, 
+                rowGroupSize, names, table);
+            index.write(indexName);
+        }
+        rowGroupIndexes.put(fullName, index);
+        return index;
+    }
+
+    /**
+     * This reads a row group index file.
+     *
+     * @param indexName
+     * @return the index, or null if it doesn't exist or can't be read
+     */
+    private static EDDTableFromFilesRowGroupIndex readRowGroupIndex(String indexName) {
+        try {
+            return EDDTableFromFilesRowGroupIndex.read(indexName);
+        } catch (Throwable t) {
+            String2.log("WARNING: unable to read row group index " + indexName + 
+                " (so it will be remade):\n" + MustBe.throwableToString(t));
+            return null;
+        }
+    }
+
+    /**
+     * This indicates if this subclass' lowGetSourceDataFromFile uses 
+     * rowGroupRange() to just read the relevant part of a file. 
+     * The default is false.
+     *
+     * @return true if this subclass supports a row group index
+     */
+    protected boolean supportsRowGroupIndex() {
+        return false;
+    }
+
+    /** 
+     * The directory for this dataset's row group index files (with "/" at end).
+     */
+    public String rowGroupIndexDirectory() {
+        return datasetDir() + "rowGroupIndex/";
+    }
+
+    /**
+     * This uses the file's row group index (if rowGroupSize &gt; 0) 
+     * to find the range of rows which may match the constraints.
+     * If the index doesn't exist or is stale, this doesn't make the request wait 
+     * for a new index: it queues the file so a new index is made in the background
+     * and returns null (so the whole file is read, as if there were no index).
+     * Subclasses which supportsRowGroupIndex() call this from lowGetSourceDataFromFile.
+     *
+     * @param tFileDir
+     * @param tFileName
+     * @param sourceConVars the source constraint variables (or null)
+     * @param sourceConOps the source constraint operators (or null)
+     * @param sourceConValues the source constraint values (or null)
+     * @return null if the whole file should be read,
+     *   or {firstRow, lastRow} (inclusive) of the rows which may match,
+     *   or {-1, -1} if no rows match.
+     * @throws Throwable if trouble
+     */
+    protected int[] rowGroupRange(String tFileDir, String tFileName,
+        StringArray sourceConVars, StringArray sourceConOps, StringArray sourceConValues) 
+        throws Throwable {
+
+        if (rowGroupSize <= 0 || !filesAreLocal || 
+            sourceConVars == null || sourceConVars.size() == 0)
+            return null;
+        String fullName = tFileDir + tFileName;
+        long lastMod = File2.getLastModified(fullName);
+        long size = File2.length(fullName);
+        EDDTableFromFilesRowGroupIndex index = rowGroupIndexes.get(fullName);
+        if (index == null || !index.isValidFor(fullName, lastMod, size) || 
+            index.rowGroupSize != rowGroupSize) {
+            index = readRowGroupIndex(EDDTableFromFilesRowGroupIndex.indexName(
+                rowGroupIndexDirectory(), fullName));
+            if (index == null || !index.isValidFor(fullName, lastMod, size) || 
+                index.rowGroupSize != rowGroupSize) {
+                makeRowGroupIndexInBackground(tFileDir, tFileName);
+                return null;
+            }
+            rowGroupIndexes.put(fullName, index);
+        }
+        return index.rowRange(sourceConVars, sourceConOps, sourceConValues);
+    }
+
+    /**
+     * This gets the sourceNames and sourceDataTypes of the NEC variables which
+     * are actual variables in the source files (i.e., not global:, variable:, 
+     * or *** pseudo variables), e.g., for sidecars and row group indexes.
+     *
+     * @param names receives the sourceNames
+     * @param types receives the sourceDataTypes
+     */
+    protected void fileVariableNamesAndTypesNEC(StringArray names, StringArray types) {
+        for (int i = 0; i < sourceDataNamesNEC.size(); i++) {
+            String name = sourceDataNamesNEC.get(i);
+            if (!name.startsWith("global:") && !name.startsWith("variable:") &&
+                !name.startsWith("***")) {
+                names.add(name);
+                types.add(sourceDataTypesNEC[i]);
+            }
+        }
+    }
+
+    /**
+     * This returns a signature of this dataset's settings which affect
+     * how the source files are parsed, so that sidecars made with 
+     * different settings aren't used.
+     *
+     * @return the signature
+     */
+    protected String sidecarSignature() {
+        return className + 
+            "|" + standardizeWhat +
+            "|" + charset +
+            "|" + columnNamesRow + 
+            "|" + firstDataRow + 
+            "|" + String2.toJson(columnSeparator) +
+            "|" + (startColumn == null? "" : String2.toCSSVString(startColumn)) +
+            "|" + (stopColumn  == null? "" : String2.toCSSVString(stopColumn));
+    }
+
+    /**
+     * This indicates if the rows returned by this subclass' lowGetSourceDataFromFile
+     * are independent of the set of sourceDataNames requested, i.e., each row of a 
+     * file is a row of the results, regardless of which columns are requested
+     * (as for flat files like ASCII, NCCSV, and JSON Lines CSV files, where each line is a row).
+     * Subclasses where this is true override this to return true.
+     * If true, dataCache entries can be shared by requests for different sets of columns,
+     * and the dataset can use a columnarSidecar.
+     * If false (the default, e.g., for multidimensional .nc files, where the dimensions
+     * of the requested variables determine the rows), dataCache entries are
+     * only used for requests for the same set of columns, and columnarSidecar isn't supported.
+     *
+     * @return true if the rows don't depend on the set of columns requested
+     */
+    protected boolean rowsAreIndependentOfColumns() {
+        return false;
     }
 
     /**
@@ -1059,18 +1414,23 @@ public abstract class EDDTableFromFiles extends EDDTable{
         sourceCanConstrainStringData  = CONSTRAIN_PARTIAL; //all partially handled
         sourceCanConstrainStringRegex = PrimitiveArray.REGEX_OP; //partially
 
-        //load cached dirTable->dirList
-        dirTable = tryToLoadDirFileTable(dirTableFileName); //may be null
-        if (dirTable != null) {
+        //load cached dirTable->dirList and fileTable (and apply the journal's changes)
+        //or (if the previous constructor didn't finish) the checkpoint
+        ConcurrentHashMap checkpointBadFileMap = newEmptyBadFileMap();
+        Table tDirFileTables[] = EDDFileScan.loadCheckpoint(datasetDir(), standardizeWhat, 
+            checkpointBadFileMap); //may be null
+        boolean fromCheckpoint = tDirFileTables != null;
+        if (!fromCheckpoint)
+            tDirFileTables = tryToLoadDirFileTables(); //may be null
+        if (tDirFileTables != null) {
+            dirTable  = tDirFileTables[0];
+            fileTable = tDirFileTables[1];
             if (verbose) String2.log(
                 dirTable.nRows() + " rows in dirTable");
             if (reallyVerbose) String2.log(
                 "first 5 rows=\n" + 
                 dirTable.dataToString(5));
         }
-
-        //load cached fileTable
-        fileTable = tryToLoadDirFileTable(fileTableFileName); //may be null
         if (fileTable != null) {
             if (verbose) String2.log(
                 fileTable.nRows() + " rows in fileTable");
@@ -1127,8 +1487,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
             }
         }
 
-        //load badFileMap
-        ConcurrentHashMap badFileMap = readBadFileMap();
+        //load badFileMap (the checkpoint's, if resuming from the checkpoint)
+        ConcurrentHashMap badFileMap = fromCheckpoint? checkpointBadFileMap : readBadFileMap();
         
         //if trouble reading any, recreate all
         if (dirTable == null || fileTable == null || badFileMap == null) {
@@ -1184,7 +1544,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
         }
 
         //doQuickRestart? 
-        boolean doQuickRestart = fileTable.nRows() > 0 && 
+        boolean doQuickRestart = !fromCheckpoint && fileTable.nRows() > 0 && 
             (testQuickRestart || (EDStatic.quickRestart && EDStatic.initialLoadDatasets()));
         if (verbose)
             String2.log("doQuickRestart=" + doQuickRestart);
@@ -1355,146 +1715,161 @@ public abstract class EDDTableFromFiles extends EDDTable{
             long removeCumTime = 0;
             int nUnchanged = 0, nRemoved = 0, nDifferentModTime = 0, nNew = 0;
             elapsedTime = System.currentTimeMillis();
-            while (tFileListPo < tFileNamePA.size()) {
-                if (Thread.currentThread().isInterrupted())
-                    throw new SimpleException("EDDTableFromFiles.init" +
-                        EDStatic.caughtInterrupted);
-
-                int    tDirI   = tFileDirIndexPA.get(tFileListPo);
-                String tFileS  = tFileNamePA.get(tFileListPo);
-                int    dirI    = fileListPo < ftFileList.size()? ftDirIndex.get(fileListPo) : Integer.MAX_VALUE;
-                String fileS   = fileListPo < ftFileList.size()? ftFileList.get(fileListPo) : "\uFFFF";
-                long   lastMod = fileListPo < ftFileList.size()? ftLastMod.get(fileListPo)  : Long.MAX_VALUE;
-                long   size    = fileListPo < ftFileList.size()? ftSize.get(fileListPo)     : Long.MAX_VALUE;
-                boolean logThis = (reallyVerbose && tFileListPo <= 100) || 
-                    ((reallyVerbose || verbose) && 
-                        ((tFileListPo <= 1000 && tFileListPo % 100 == 0) ||
-                         (tFileListPo % 1000 == 0)));
-                if (logThis)
-                    String2.log("EDDTableFromFiles file #" + tFileListPo + "=" + dirList.get(tDirI) + tFileS);
-
-                //is tLastMod available for tFile?
-                long tLastMod = tFileLastModPA.get(tFileListPo);
-                if (tLastMod == 0 || tLastMod == Long.MAX_VALUE) { //0=trouble
-                    nNoLastMod++;
-                    String2.log(tFileListPo + " reject because unable to get lastMod time: " + 
-                        dirList.get(tDirI) + tFileS);                
-                    tFileListPo++;
-                    addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get lastMod time.");
-                    continue;
-                }
 
-                //is tSize available for tFile?
-                long tSize = tFileSizePA.get(tFileListPo);
-                if (tSize < 0 || tSize == Long.MAX_VALUE) { //-1=trouble
-                    nNoSize++;
-                    String2.log(tFileListPo + " reject because unable to get size: " + 
-                        dirList.get(tDirI) + tFileS);                
-                    tFileListPo++;
-                    addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get size.");
-                    continue;
-                }
+            //read the new and changed files in parallel (but merge them in order)
+            final ShortArray  fTFileDirIndexPA = tFileDirIndexPA;
+            final StringArray fTFileNamePA     = tFileNamePA;
+            EDDFileScan fileScan = new EDDFileScan(datasetID, datasetDir(),
+                EDDFileScan.makeToRead(tFileDirIndexPA, tFileNamePA, tFileLastModPA, tFileSizePA, 
+                    badFileMap, ftDirIndex, ftFileList, ftLastMod, ftSize, filesAreLocal),
+                nThreads >= 1 && nThreads < Integer.MAX_VALUE? nThreads : EDStatic.nTableThreads,
+                i -> getSourceDataFromFile(dirList.get(fTFileDirIndexPA.get(i)), fTFileNamePA.get(i), 
+                    sourceDataNamesNEC, sourceDataTypesNEC, 
+                    -1, Double.NaN, Double.NaN, 
+                    null, null, null, true, true)); //getMetadata, getData
+            try {
+                while (tFileListPo < tFileNamePA.size()) {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new SimpleException("EDDTableFromFiles.init" +
+                            EDStatic.caughtInterrupted);
+                    if (fileScan.checkpointDue())
+                        fileScan.checkpoint(standardizeWhat, dirTable, fileTable, badFileMap);
+
+                    int    tDirI   = tFileDirIndexPA.get(tFileListPo);
+                    String tFileS  = tFileNamePA.get(tFileListPo);
+                    int    dirI    = fileListPo < ftFileList.size()? ftDirIndex.get(fileListPo) : Integer.MAX_VALUE;
+                    String fileS   = fileListPo < ftFileList.size()? ftFileList.get(fileListPo) : "\uFFFF";
+                    long   lastMod = fileListPo < ftFileList.size()? ftLastMod.get(fileListPo)  : Long.MAX_VALUE;
+                    long   size    = fileListPo < ftFileList.size()? ftSize.get(fileListPo)     : Long.MAX_VALUE;
+                    boolean logThis = (reallyVerbose && tFileListPo <= 100) || 
+                        ((reallyVerbose || verbose) && 
+                            ((tFileListPo <= 1000 && tFileListPo % 100 == 0) ||
+                             (tFileListPo % 1000 == 0)));
+                    if (logThis)
+                        String2.log("EDDTableFromFiles file #" + tFileListPo + "=" + dirList.get(tDirI) + tFileS);
+
+                    //is tLastMod available for tFile?
+                    long tLastMod = tFileLastModPA.get(tFileListPo);
+                    if (tLastMod == 0 || tLastMod == Long.MAX_VALUE) { //0=trouble
+                        nNoLastMod++;
+                        String2.log(tFileListPo + " reject because unable to get lastMod time: " + 
+                            dirList.get(tDirI) + tFileS);                
+                        tFileListPo++;
+                        addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get lastMod time.");
+                        continue;
+                    }
 
-                //is tFile in badFileMap?
-                Object bfi = badFileMap.get(tDirI + "/" + tFileS);
-                if (bfi != null) {
-                    //tFile is in badFileMap
-                    Object bfia[] = (Object[])bfi;
-                    long bfLastMod = ((Long)bfia[0]).longValue();
-                    if (bfLastMod == tLastMod) {
-                        //file hasn't been changed; it is still bad
+                    //is tSize available for tFile?
+                    long tSize = tFileSizePA.get(tFileListPo);
+                    if (tSize < 0 || tSize == Long.MAX_VALUE) { //-1=trouble
+                        nNoSize++;
+                        String2.log(tFileListPo + " reject because unable to get size: " + 
+                            dirList.get(tDirI) + tFileS);                
                         tFileListPo++;
-                        if (tDirI == dirI && tFileS.equals(fileS)) {
-                            //remove it from cached info   (Yes, a file may be marked bad (recently) and so still be in cache)
-                            nRemoved++;
-                            removeCumTime -= System.currentTimeMillis();
-                            fileTable.removeRow(fileListPo);
-                            removeCumTime += System.currentTimeMillis();
+                        addBadFile(badFileMap, tDirI, tFileS, tLastMod, "Unable to get size.");
+                        continue;
+                    }
+
+                    //is tFile in badFileMap?
+                    Object bfi = badFileMap.get(tDirI + "/" + tFileS);
+                    if (bfi != null) {
+                        //tFile is in badFileMap
+                        Object bfia[] = (Object[])bfi;
+                        long bfLastMod = ((Long)bfia[0]).longValue();
+                        if (bfLastMod == tLastMod) {
+                            //file hasn't been changed; it is still bad
+                            tFileListPo++;
+                            if (tDirI == dirI && tFileS.equals(fileS)) {
+                                //remove it from cached info   (Yes, a file may be marked bad (recently) and so still be in cache)
+                                nRemoved++;
+                                removeCumTime -= System.currentTimeMillis();
+                                fileTable.removeRow(fileListPo);
+                                removeCumTime += System.currentTimeMillis();
+                            }
+                            //go on to next tFile
+                            if (logThis)
+                                String2.log(tFileListPo + " already in badFile list");
+                            continue;
+                        } else {
+                            //file has been changed since being marked as bad; remove from badFileMap
+                            badFileMap.remove(tDirI + "/" + tFileS);
+                            //and continue processing this file
                         }
-                        //go on to next tFile
+                    }
+
+                    //is tFile already in cache?
+                    if (tDirI == dirI && tFileS.equals(fileS) && tLastMod == lastMod && 
+                        (tSize == size || !filesAreLocal)) { //remote file's size may be approximate, e.g., 11K
                         if (logThis)
-                            String2.log(tFileListPo + " already in badFile list");
+                            String2.log(tFileListPo + " already in fileList");
+                        nUnchanged++;
+                        tFileListPo++;
+                        fileListPo++;
                         continue;
-                    } else {
-                        //file has been changed since being marked as bad; remove from badFileMap
-                        badFileMap.remove(tDirI + "/" + tFileS);
-                        //and continue processing this file
                     }
-                }
-
-                //is tFile already in cache?
-                if (tDirI == dirI && tFileS.equals(fileS) && tLastMod == lastMod && 
-                    (tSize == size || !filesAreLocal)) { //remote file's size may be approximate, e.g., 11K
-                    if (logThis)
-                        String2.log(tFileListPo + " already in fileList");
-                    nUnchanged++;
-                    tFileListPo++;
-                    fileListPo++;
-                    continue;
-                }
 
-                //file in cache no longer exists: remove from fileTable
-                if (dirI < tDirI ||
-                    (dirI == tDirI && fileS.compareTo(tFileS) < 0)) {
-                    if (logThis)
-                        String2.log(tFileListPo + " file no longer exists: remove from fileList: " +
-                            dirList.get(dirI) + fileS);
-                    nRemoved++;
-                    removeCumTime -= System.currentTimeMillis();
-                    fileTable.removeRow(fileListPo);  //may be slow
-                    removeCumTime += System.currentTimeMillis();
-                    //tFileListPo isn't incremented, so it will be considered again in next iteration
-                    continue;
-                }
+                    //file in cache no longer exists: remove from fileTable
+                    if (dirI < tDirI ||
+                        (dirI == tDirI && fileS.compareTo(tFileS) < 0)) {
+                        if (logThis)
+                            String2.log(tFileListPo + " file no longer exists: remove from fileList: " +
+                                dirList.get(dirI) + fileS);
+                        nRemoved++;
+                        removeCumTime -= System.currentTimeMillis();
+                        fileTable.removeRow(fileListPo);  //may be slow
+                        removeCumTime += System.currentTimeMillis();
+                        //tFileListPo isn't incremented, so it will be considered again in next iteration
+                        continue;
+                    }
 
-                //tFile is new, or tFile is in ftFileList but time is different
-                if (dirI == tDirI && fileS.equals(tFileS)) {
-                    if (logThis)
-                        String2.log(tFileListPo + 
-                            " already in fileList (but time changed)");
-                    nDifferentModTime++;
-                } else {
-                    //if new, add row to fileTable
-                    if (logThis)
-                        String2.log(tFileListPo + " insert in fileList");
-                    nNew++;
-                    fileTable.insertBlankRow(fileListPo);  //may be slow
-                }
+                    //tFile is new, or tFile is in ftFileList but time is different
+                    if (dirI == tDirI && fileS.equals(tFileS)) {
+                        if (logThis)
+                            String2.log(tFileListPo + 
+                                " already in fileList (but time changed)");
+                        nDifferentModTime++;
+                    } else {
+                        //if new, add row to fileTable
+                        if (logThis)
+                            String2.log(tFileListPo + " insert in fileList");
+                        nNew++;
+                        fileTable.insertBlankRow(fileListPo);  //may be slow
+                    }
 
-                //gather file's info
-                try {
-                    //read all of the data and metadata in the file
-                    nReadFile++;
-                    long rfcTime = System.currentTimeMillis();
-                    Table tTable = getSourceDataFromFile(dirList.get(tDirI), tFileS, 
-                        sourceDataNamesNEC, sourceDataTypesNEC, 
-                        -1, Double.NaN, Double.NaN, 
-                        null, null, null, true, true); //getMetadata, getData
-                    //String2.log(">> getSourceDataFromFile " + tFileS + "\n" + tTable.toString(5));
-                    readFileCumTime += System.currentTimeMillis() - rfcTime;
-
-                    //set the values on the fileTable row     throws throwable
-                    setFileTableRow(fileTable, fileListPo, tDirI, tFileS, tLastMod, tSize, 
-                        tTable, logThis? tFileListPo : -1);
-                    tFileListPo++;
-                    fileListPo++;
-
-                } catch (Throwable t) {
-                    String fullName = dirList.get(tDirI) + tFileS; 
-                    msg = tFileListPo + " bad file: removing fileTable row for " + 
-                        fullName + "\n" +
-                        MustBe.throwableToString(t);
-                    String2.log(msg); 
-                    msg = "";
-                    nRemoved++;
-                    removeCumTime -= System.currentTimeMillis();
-                    fileTable.removeRow(fileListPo);
-                    removeCumTime += System.currentTimeMillis();
-                    tFileListPo++;
-                    if (System.currentTimeMillis() - tLastMod > 30 * Calendar2.MILLIS_PER_MINUTE) 
-                        //>30 minutes old, so not still being ftp'd, so add to badFileMap
-                        addBadFile(badFileMap, tDirI, tFileS, tLastMod, MustBe.throwableToShortString(t));
+                    //gather file's info
+                    try {
+                        //read all of the data and metadata in the file
+                        nReadFile++;
+                        long rfcTime = System.currentTimeMillis();
+                        Table tTable = (Table)fileScan.get(tFileListPo); //getSourceDataFromFile
+                        //String2.log(">> getSourceDataFromFile " + tFileS + "\n" + tTable.toString(5));
+                        readFileCumTime += System.currentTimeMillis() - rfcTime;
+
+                        //set the values on the fileTable row     throws throwable
+                        setFileTableRow(fileTable, fileListPo, tDirI, tFileS, tLastMod, tSize, 
+                            tTable, logThis? tFileListPo : -1);
+                        tFileListPo++;
+                        fileListPo++;
+
+                    } catch (Throwable t) {
+                        String fullName = dirList.get(tDirI) + tFileS; 
+                        msg = tFileListPo + " bad file: removing fileTable row for " + 
+                            fullName + "\n" +
+                            MustBe.throwableToString(t);
+                        String2.log(msg); 
+                        msg = "";
+                        nRemoved++;
+                        removeCumTime -= System.currentTimeMillis();
+                        fileTable.removeRow(fileListPo);
+                        removeCumTime += System.currentTimeMillis();
+                        tFileListPo++;
+                        if (System.currentTimeMillis() - tLastMod > 30 * Calendar2.MILLIS_PER_MINUTE) 
+                            //>30 minutes old, so not still being ftp'd, so add to badFileMap
+                            addBadFile(badFileMap, tDirI, tFileS, tLastMod, MustBe.throwableToShortString(t));
+                    }
                 }
+            } finally {
+                fileScan.close();
             }
             if (verbose) String2.log("fileTable updated; time=" + 
                 (System.currentTimeMillis() - elapsedTime) + "ms");
@@ -1860,6 +2235,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
         //dirTable and fileTable InMemory?
         if (!fileTableInMemory) {
+            //requests share the snapshot until memory is needed for other things
+            fileTableJournal().setSnapshot(dirTable, fileTable);
             dirTable = null;
             fileTable = null;
         }
@@ -2413,11 +2790,12 @@ public abstract class EDDTableFromFiles extends EDDTable{
             tDirTable  = (Table)dirTable.clone();
             tFileTable = (Table)fileTable.clone(); 
         } else {
-            tDirTable  = tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //shouldn't be null
-            tFileTable = tryToLoadDirFileTable(datasetDir() + FILE_TABLE_FILENAME); //shouldn't be null
-            Test.ensureNotNull(tDirTable, "dirTable");
-            Test.ensureNotNull(tFileTable, "fileTable");
+            Table tDirFileTables[] = dirFileTableSnapshot(); //shouldn't be null
+            Test.ensureNotNull(tDirFileTables, "dirTable and fileTable");
+            tDirTable  = (Table)tDirFileTables[0].clone();
+            tFileTable = (Table)tDirFileTables[1].clone(); 
         }
+        int nOldDirs = tDirTable.nRows();
         if (debugMode) String2.log(msg + "\n" +
             tDirTable.nRows() + " rows in old dirTable.  first 5 rows=\n" + 
                 tDirTable.dataToString(5) + 
@@ -2439,6 +2817,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                         EDStatic.caughtInterrupted);
 
             String fullName = contexts.get(evi);
+            NcFileCache.invalidate(fullName); //it changed, so cached open handles are stale
             String dirName = File2.getDirectory(fullName);
             String fileName = File2.getNameAndExtension(fullName);  //matched to fileNameRegex above
 
@@ -2553,6 +2932,12 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 }
             } else if (dirIndex >= 0) { 
                 //File now doesn't exist, but it might be in badFile or tFileTable.
+                if (columnarSidecar)
+                    File2.delete(EDDTableFromFilesSidecar.sidecarName(sidecarDirectory(), fullName));
+                if (rowGroupSize > 0) {
+                    rowGroupIndexes.remove(fullName);
+                    File2.delete(EDDTableFromFilesRowGroupIndex.indexName(rowGroupIndexDirectory(), fullName));
+                }
 
                 //Remove from badFileMap if it's there.
                 if (badFileMap.remove(dirIndex + "/" + fileName) != null) {
@@ -2607,7 +2992,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
             //finally: make the important instance changes that use the changes above 
             //as quickly/atomically as possible
-            saveDirTableFileTableBadFiles(standardizeWhat, tDirTable, tFileTable, badFileMap); //throws Throwable
+            saveFileTableChanges(standardizeWhat, tDirTable, nOldDirs, tFileTable, 
+                badFileMap, contexts); //throws Throwable
             minMaxTable = tMinMaxTable;
             if (fileTableInMemory) {
                 //quickly swap into place
@@ -2724,6 +3110,45 @@ public abstract class EDDTableFromFiles extends EDDTable{
         }
     }
 
+    /** 
+     * Try to load the dirTable and fileTable and apply the changes
+     * in the fileTable journal (if any).
+     *
+     * @return {dirTable, fileTable} (null if trouble).  (No exception if trouble.)
+     */
+    protected Table[] tryToLoadDirFileTables() {
+        Table tDirTable = tryToLoadDirFileTable(datasetDir() + DIR_TABLE_FILENAME);
+        Table tFileTable = tDirTable == null? null :
+            tryToLoadDirFileTable(datasetDir() + FILE_TABLE_FILENAME);
+        if (tFileTable == null)
+            return null;
+        try {
+            //new rows are at the end, so sort
+            if (fileTableJournal().replay(tDirTable, tFileTable) > 0 && 
+                fileTableSortColumns != null)
+                tFileTable.sort(fileTableSortColumns, fileTableSortAscending); 
+            return new Table[]{tDirTable, tFileTable};
+        } catch (Throwable t) {
+            File2.delete(datasetDir() + DIR_TABLE_FILENAME);
+            File2.delete(datasetDir() + FILE_TABLE_FILENAME);
+            fileTableJournal().delete();
+            String2.log(String2.ERROR + " replaying " + fileTableJournal().journalName() + "\n" + 
+                MustBe.throwableToString(t));  
+            return null;
+        }
+    }
+
+    /** 
+     * This gets the shared, read-only {dirTable, fileTable} snapshot 
+     * (for fileTableInMemory=false), loading it if needed.
+     * Don't change the tables (clone them first).
+     *
+     * @return {dirTable, fileTable} (null if trouble)
+     */
+    protected Table[] dirFileTableSnapshot() {
+        return fileTableJournal().snapshot(this::tryToLoadDirFileTables);
+    }
+
     /** 
      * This gets a table with the DNLS info all the files.
      * lastMod is type=LongArray epochMillis. size is type=LongArray.
@@ -2736,10 +3161,10 @@ public abstract class EDDTableFromFiles extends EDDTable{
             tDirTable  = (Table)dirTable.clone();
             tFileTable = (Table)fileTable.clone(); 
         } else {
-            tDirTable  = tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //shouldn't be null
-            tFileTable = tryToLoadDirFileTable(datasetDir() + FILE_TABLE_FILENAME); //shouldn't be null
-            Test.ensureNotNull(tDirTable, "dirTable");
-            Test.ensureNotNull(tFileTable, "fileTable");
+            Table tDirFileTables[] = dirFileTableSnapshot(); //shouldn't be null
+            Test.ensureNotNull(tDirFileTables, "dirTable and fileTable");
+            tDirTable  = (Table)tDirFileTables[0].clone();
+            tFileTable = (Table)tDirFileTables[1].clone(); 
         }
 
         //make the results Table
@@ -2828,7 +3253,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
     /**
      * This is the low level method to get source data from one file.
-     * This is only called by getSourceDataFromFile();
+     * This is only called by readSourceDataFromFile();
      *
      * <p>This is used by the constructor to get all of the data from each file.
      * So it is good if this also tests the validity of the file and throws 
@@ -2891,6 +3316,174 @@ public abstract class EDDTableFromFiles extends EDDTable{
         boolean getMetadata, boolean mustGetData) throws Throwable;
 
 
+    /**
+     * This gets the data from a file from its columnar sidecar file (if columnarSidecar 
+     * is active and the sidecar is valid) or via lowGetSourceDataFromFile.
+     * If columnarSidecar is active and the sidecar doesn't exist or is stale,
+     * this reads all of the file's data and writes a new sidecar.
+     * If getMetadata (e.g., lowUpdate read a new or changed file),
+     * this makes the file's sidecar and/or row group index from the results.
+     * The results may have rows which don't match the constraints,
+     * but the caller (e.g., via standardizeResultsTable) applies all of the constraints.
+     * See lowGetSourceDataFromFile for the parameters.
+     *
+     * @param sourceNames the sourceNames of actual variables in the file
+     * @throws Throwable if trouble
+     */
+    protected Table readSourceDataFromFile(String tFileDir, String tFileName, 
+        StringArray sourceNames, String sourceTypes[],
+        double sortedSpacing, double minSorted, double maxSorted, 
+        StringArray sourceConVars, StringArray sourceConOps, StringArray sourceConValues,
+        boolean getMetadata, boolean mustGetData) throws Throwable {
+
+        if (!filesAreLocal || !mustGetData ||
+            !(columnarSidecar || (rowGroupSize > 0 && getMetadata))) //subclass' lowGet uses rowGroupRange()
+            return lowGetSourceDataFromFile(tFileDir, tFileName, 
+                sourceNames, sourceTypes,
+                sortedSpacing, minSorted, maxSorted, 
+                sourceConVars, sourceConOps, sourceConValues,
+                getMetadata, mustGetData);
+
+        //the sidecar and index have all of the actual variables (NEC without global:, variable:, ***)
+        StringArray scNames = new StringArray();
+        StringArray scTypes = new StringArray();
+        fileVariableNamesAndTypesNEC(scNames, scTypes);
+        String fullName = tFileDir + tFileName;
+        long lastMod = File2.getLastModified(fullName);
+        long size = File2.length(fullName);
+        String scName = EDDTableFromFilesSidecar.sidecarName(sidecarDirectory(), fullName);
+        String signature = sidecarSignature();
+
+        if (getMetadata) {
+            //e.g., lowUpdate read a new or changed file: 
+            //make the sidecar and/or row group index from the results
+            Table table = lowGetSourceDataFromFile(tFileDir, tFileName, 
+                sourceNames, sourceTypes,
+                sortedSpacing, minSorted, maxSorted, 
+                sourceConVars, sourceConOps, sourceConValues,
+                getMetadata, mustGetData);
+            if ((sourceConVars == null || sourceConVars.size() == 0) &&
+                Double.isNaN(minSorted) && Double.isNaN(maxSorted) &&
+                scNames.equals(sourceNames)) {
+                if (columnarSidecar)
+                    EDDTableFromFilesSidecar.write(scName, fullName, lastMod, size, 
+                        signature, scNames, scTypes.toArray(), table);
+                if (rowGroupSize > 0) {
+                    EDDTableFromFilesRowGroupIndex index = EDDTableFromFilesRowGroupIndex.make(
+                        fullName, lastMod, size, rowGroupSize, scNames, table);
+                    if (index.write(EDDTableFromFilesRowGroupIndex.indexName(
+                            rowGroupIndexDirectory(), fullName)))
+                        rowGroupIndexes.put(fullName, index);
+                }
+            }
+            return table;
+        }
+
+        try {
+            Table table = EDDTableFromFilesSidecar.read(scName, fullName, lastMod, size,
+                signature, sourceNames, sourceTypes, 
+                sourceConVars, sourceConOps, sourceConValues);
+            if (table != null)
+                return table;
+        } catch (Throwable t) {
+            String2.log("WARNING: unable to read sidecar " + scName + " for " + fullName + 
+                " (so it will be remade):\n" + MustBe.throwableToString(t));
+            File2.delete(scName);
+        }
+
+        //no valid sidecar: read all of the data (and the column attributes) and make the sidecar
+        Table scTable = lowGetSourceDataFromFile(tFileDir, tFileName, 
+            scNames, scTypes.toArray(),
+            Double.NaN, Double.NaN, Double.NaN, 
+            new StringArray(), new StringArray(), new StringArray(),
+            true, true);
+        EDDTableFromFilesSidecar.write(scName, fullName, lastMod, size, 
+            signature, scNames, scTypes.toArray(), scTable);
+        Table table = new Table();
+        for (int i = 0; i < sourceNames.size(); i++) {
+            int col = scTable.findColumnNumber(sourceNames.get(i));
+            if (col >= 0)
+                table.addColumn(table.nColumns(), sourceNames.get(i), 
+                    scTable.getColumn(col), scTable.columnAttributes(col));
+        }
+        return table;
+    }
+
+    /**
+     * This gets all of the rows of the requested columns of a file
+     * from the dataCache or (if not all in the cache) from lowGetSourceDataFromFile 
+     * (without constraints, so the results can be reused by other requests)
+     * and then adds them to the dataCache.
+     * This is okay because the caller (e.g., via standardizeResultsTable)
+     * applies all of the constraints to the results.
+     * But if the file's data can't be cached (the file is big, it was too big last time, 
+     * or memory is short), or reading all of it fails because it is too big,
+     * this just reads the constrained data (as if there were no dataCache).
+     *
+     * @param tFileDir
+     * @param tFileName
+     * @param sourceNames the sourceNames of actual variables in the file
+     * @param sourceTypes (parallels sourceNames)
+     * @param sortedSpacing, minSorted, maxSorted, sourceConVars, sourceConOps, sourceConValues
+     *    the constraints, which are only used if the data can't be cached.
+     *    See lowGetSourceDataFromFile.
+     * @return a table with the source data
+     * @throws Throwable if trouble
+     */
+    protected Table getSourceDataFromFileViaCache(String tFileDir, String tFileName,
+        StringArray sourceNames, String sourceTypes[],
+        double sortedSpacing, double minSorted, double maxSorted, 
+        StringArray sourceConVars, StringArray sourceConOps, StringArray sourceConValues) 
+        throws Throwable {
+
+        String fullName = tFileDir + tFileName;
+        long lastMod = File2.getLastModified(fullName);
+        long size = File2.length(fullName);
+        String columnSet = rowsAreIndependentOfColumns()? "" : 
+            sourceNames.toString() + "\n" + String2.toCSSVString(sourceTypes);
+        int n = sourceNames.size();
+        String names[] = sourceNames.toArray();
+        String keys[] = new String[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = EDDTableFromFilesDataCache.key(fullName, lastMod, size, 
+                columnSet, names[i], sourceTypes[i]);
+
+        Table table = dataCache.get(keys, names);
+        if (table != null)
+            return table;
+
+        String fileKey = EDDTableFromFilesDataCache.fileKey(fullName, lastMod, size, columnSet);
+        if (dataCache.mayCache(fileKey, size)) {
+            try {
+                table = readSourceDataFromFile(tFileDir, tFileName, 
+                    sourceNames, sourceTypes,
+                    Double.NaN, Double.NaN, Double.NaN, 
+                    new StringArray(), new StringArray(), new StringArray(),
+                    false, true);
+            } catch (Throwable t) {
+                //all of the data is too big? The constrained data may not be.
+                String msg = t.toString();
+                if (!(t instanceof OutOfMemoryError) && 
+                    (msg == null || msg.indexOf(Math2.memoryTooMuchData) < 0))
+                    throw t;
+                String2.log("EDDTableFromFiles dataCache: " + fullName + 
+                    " is too big to cache:\n  " + msg);
+                table = null;
+                dataCache.markTooBig(fileKey);
+            }
+            if (table != null) {
+                dataCache.put(keys, names, table, fileKey);
+                return table;
+            }
+        }
+
+        return readSourceDataFromFile(tFileDir, tFileName, 
+            sourceNames, sourceTypes,
+            sortedSpacing, minSorted, maxSorted, 
+            sourceConVars, sourceConOps, sourceConValues,
+            false, true);
+    }
+
     /** 
      * This parent method for lowGetSourceDataFromFile
      * handles global: sourceDataNames specially (to convert
@@ -3026,13 +3619,22 @@ public abstract class EDDTableFromFiles extends EDDTable{
         ensureInCache(tFileDir + tFileName); //throws Exception 
 
         //get the data
-        Table table = lowGetSourceDataFromFile( //this is the only place that calls this method
-            tFileDir, tFileName, 
-            sourceNames, sourceDataTypes,
-            sortedSpacing, minSorted, maxSorted, 
-            sourceConVars, sourceConOps, sourceConValues,
-            getMetadata || globalNames != null || variableNames != null, 
-            mustGetData);
+        Table table;
+        if (dataCache != null && filesAreLocal && mustGetData && !getMetadata &&
+            globalNames == null && variableNames == null && sourceNames.size() > 0) {
+            table = getSourceDataFromFileViaCache(tFileDir, tFileName, 
+                sourceNames, sourceDataTypes,
+                sortedSpacing, minSorted, maxSorted, 
+                sourceConVars, sourceConOps, sourceConValues);
+        } else {
+            table = readSourceDataFromFile(
+                tFileDir, tFileName, 
+                sourceNames, sourceDataTypes,
+                sortedSpacing, minSorted, maxSorted, 
+                sourceConVars, sourceConOps, sourceConValues,
+                getMetadata || globalNames != null || variableNames != null, 
+                mustGetData);
+        }
         int nRows = table.nRows();  //may be 0 if mustGetData=false
         //if (debugMode) String2.log(table.getNCHeader("row"));
 
@@ -3177,13 +3779,17 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
         //get a local reference to dirTable and fileTable
         Table tDirTable = dirTable;
-        if (tDirTable == null)
-            tDirTable = tryToLoadDirFileTable(datasetDir() + DIR_TABLE_FILENAME);
         Table tFileTable = fileTable;
         if (verbose && tFileTable != null)
             String2.log("  fileTableInMemory=true");
-        if (tFileTable == null && tDirTable != null) 
-            tFileTable = tryToLoadDirFileTable(datasetDir() + FILE_TABLE_FILENAME);
+        if (tDirTable == null || tFileTable == null) {
+            //the shared read-only snapshot
+            Table tDirFileTables[] = dirFileTableSnapshot(); 
+            if (tDirFileTables != null) {
+                tDirTable  = tDirFileTables[0];
+                tFileTable = tDirFileTables[1];
+            }
+        }
         if (tDirTable == null || tFileTable == null) 
             throw new WaitThenTryAgainException(EDStatic.waitThenTryAgain +
                 "\n(Details: unable to read fileTable.)"); 
@@ -3453,13 +4059,13 @@ public abstract class EDDTableFromFiles extends EDDTable{
         int nReadNoMatch = 0; 
         int tnThreads = nThreads >= 1 && nThreads < Integer.MAX_VALUE? nThreads : EDStatic.nTableThreads; 
         ArrayList<FutureTask> futureTasks = new ArrayList();
-        ExecutorService executorService = null;
+        ReadScheduler.Session readSession = null;
         try {
             FILE_LOOP:
             for (int f = 0; f < nFiles; f++) {
                 if (Thread.interrupted()) { 
-                    if (executorService != null)
-                        executorService.shutdownNow();
+                    if (readSession != null)
+                        readSession.close();
                     throw new InterruptedException(); //consume the interrupted status
                 }
 
@@ -3687,17 +4293,18 @@ public abstract class EDDTableFromFiles extends EDDTable{
                     ftSortedSpacing.get(f), minSorted, maxSorted, 
                     sourceConVars, sourceConOps, sourceConValues)); 
                 futureTasks.add(futureTask);
-                //To isolate requests, I make a new executorService each time.
+                //All requests share EDStatic.readScheduler's threads. 
+                //Each request gets its own session, which limits it to tnThreads-1 active tasks.
                 if (tnThreads > 1) {
-                    if (executorService == null) 
-                        executorService = Executors.newFixedThreadPool(tnThreads - 1);
-                    executorService.submit(futureTask);
+                    if (readSession == null) 
+                        readSession = EDStatic.readScheduler.newSession(datasetID, tnThreads - 1);
+                    readSession.submit(futureTask);
                 } else {
                     futureTask.run();
                 }
                 task++;
 
-                //if executorService is full, process a result
+                //if readSession is full, process a result
                 if (task - nProcessed >= tnThreads) {
                     //get results table from a futureTask
                     //Put null that position in futureTasks so it can be gc'd after this method
@@ -3755,9 +4362,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
         } finally {
             //shut everything down
-            if (executorService != null) {
-                try {executorService.shutdownNow();} catch (Exception e) {}
-                executorService = null;
+            if (readSession != null) {
+                try {readSession.close();} catch (Exception e) {}
+                readSession = null;
             }
             futureTasks = null;
         }
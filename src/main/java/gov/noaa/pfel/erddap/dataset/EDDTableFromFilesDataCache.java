@@ -0,0 +1,333 @@
+/*
+ * EDDTableFromFilesDataCache Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.Attributes;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.LRUCache;
+import com.cohort.util.Math2;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is an EDDTableFromFiles dataset's LRU cache of decoded source data columns,
+ * so that repeated requests which touch the same (hot) data file
+ * (e.g., the newest file in a realtime dataset) don't re-read and re-parse the file.
+ * It is active if the dataset's datasets.xml chunk has &lt;dataCacheMB&gt; &gt; 0.
+ *
+ * <p>Entries are keyed by (fullFileName, lastModified, fileSize, column, dataType),
+ * so a changed file is never served from the cache (its old entries just age out).
+ * The cached PrimitiveArrays are never given to the caller: the caller gets clones.
+ *
+ * <p>The size of each entry is estimated in bytes. The total is kept below
+ * the dataset's maxBytes (by evicting least recently used entries)
+ * and entries aren't added if Math2.getMemoryInUse() is above half of Math2.maxSafeMemory.
+ * A file whose data is too big to cache is remembered (see mayCache() and markTooBig()),
+ * so later requests for it can read just the constrained data.
+ * A file which is bigger (on disk) than maxBytes/2 is treated as too big
+ * before it is read.
+ */
+public class EDDTableFromFilesDataCache {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The maximum number of too-big files which are remembered (per dataset). */
+    public final static int MAX_TOO_BIG = 1000;
+
+    /** A marker for a column which isn't in the file. */
+    public final static PrimitiveArray ABSENT = new StringArray();
+
+    /** The active caches, by datasetID, for the status page. */
+    private static ConcurrentHashMap<String,EDDTableFromFilesDataCache> caches = new ConcurrentHashMap();
+
+    private final String datasetID;
+    private final long maxBytes;
+
+    //all of these are guarded by synchronized(this)
+    private LinkedHashMap<String,Entry> entries = new LinkedHashMap(16, 0.75f, true); //accessOrder=true
+    private LRUCache tooBig = new LRUCache(MAX_TOO_BIG); //fileKey -> Boolean.TRUE
+    private long nBytes = 0;
+    private long nHits = 0, nMisses = 0, nEvictions = 0, nNotCached = 0;
+
+    /** The cached data for one column of one file. */
+    private static class Entry {
+        PrimitiveArray pa;      //may be ABSENT
+        Attributes attributes;  //may be null
+        long nBytes;
+
+        Entry(PrimitiveArray tPa, Attributes tAttributes, long tNBytes) {
+            pa = tPa;
+            attributes = tAttributes;
+            nBytes = tNBytes;
+        }
+    }
+
+    /**
+     * This makes a new cache for a dataset and registers it (for the status page),
+     * replacing (and clearing) any previous cache for the datasetID.
+     *
+     * @param tDatasetID
+     * @param tMaxMB the maximum size of the cache, in MB.
+     *   This is limited to 1/4 of Math2.maxSafeMemory.
+     * @return the new cache, or null if tMaxMB &lt;= 0 (i.e., the cache isn't active)
+     */
+    public static EDDTableFromFilesDataCache register(String tDatasetID, int tMaxMB) {
+        EDDTableFromFilesDataCache cache = tMaxMB <= 0? null :
+            new EDDTableFromFilesDataCache(tDatasetID, (long)tMaxMB * Math2.BytesPerMB);
+        EDDTableFromFilesDataCache old = cache == null? caches.remove(tDatasetID) :
+            caches.put(tDatasetID, cache);
+        if (old != null)
+            old.clear();
+        return cache;
+    }
+
+    /**
+     * The constructor.
+     */
+    private EDDTableFromFilesDataCache(String tDatasetID, long tMaxBytes) {
+        datasetID = tDatasetID;
+        maxBytes = Math.min(tMaxBytes, Math2.maxSafeMemory / 4);
+        if (verbose) String2.log("EDDTableFromFilesDataCache for datasetID=" + datasetID +
+            " maxBytes=" + maxBytes);
+    }
+
+    /**
+     * This makes the key for an entry.
+     *
+     * @param fullName the data file's full name
+     * @param lastMod the data file's lastModified time
+     * @param size the data file's size
+     * @param columnSet "" if the subclass' rows don't depend on the set of
+     *   columns requested, else a signature of the set of columns requested
+     * @param column the column's sourceName
+     * @param type the column's source data type
+     * @return the key
+     */
+    public static String key(String fullName, long lastMod, long size,
+        String columnSet, String column, String type) {
+        return fullName + "\n" + lastMod + "\n" + size + "\n" + columnSet + "\n" +
+            column + "\n" + type;
+    }
+
+    /**
+     * This makes the key for a file (and columnSet), for mayCache().
+     * See key() for the parameters.
+     */
+    public static String fileKey(String fullName, long lastMod, long size,
+        String columnSet) {
+        return fullName + "\n" + lastMod + "\n" + size + "\n" + columnSet;
+    }
+
+    /**
+     * This indicates if the data from a file would probably be cached by put(),
+     * i.e., the file isn't too big, it wasn't too big last time, and memory isn't short now.
+     * If not, the caller should just read the constrained data.
+     *
+     * @param fileKey from fileKey()
+     * @param fileSize the file's size (in bytes). If this is more than maxBytes/2,
+     *   the file is marked as too big (without reading it).
+     * @return true if the data from the file would probably be cached
+     */
+    public boolean mayCache(String fileKey, long fileSize) {
+        if (Math2.getMemoryInUse() > Math2.maxSafeMemory / 2)
+            return false;
+        synchronized(this) {
+            if (tooBig.get(fileKey) != null)
+                return false;
+            if (fileSize > maxBytes / 2) {
+                nNotCached++;
+                tooBig.put(fileKey, Boolean.TRUE);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The caller calls this if reading all of a file's data failed because it 
+     * was too big (e.g., there wasn't enough memory), so mayCache(fileKey) will return false.
+     *
+     * @param fileKey from fileKey()
+     */
+    public synchronized void markTooBig(String fileKey) {
+        nNotCached++;
+        tooBig.put(fileKey, Boolean.TRUE);
+    }
+
+    /**
+     * This gets the requested columns from the cache.
+     *
+     * @param keys the keys (from key()) for the requested columns
+     * @param names the requested columns' sourceNames (parallels keys)
+     * @return a new table with clones of the cached columns (in the order of names,
+     *   skipping ABSENT columns), or null if any of the columns isn't in the cache
+     */
+    public Table get(String keys[], String names[]) {
+        Entry found[] = new Entry[keys.length];
+        synchronized(this) {
+            for (int i = 0; i < keys.length; i++) {
+                found[i] = entries.get(keys[i]);
+                if (found[i] == null) {
+                    nMisses++;
+                    return null;
+                }
+            }
+            nHits++;
+        }
+
+        //clone outside of synchronized block
+        Table table = new Table();
+        for (int i = 0; i < keys.length; i++) {
+            if (found[i].pa == ABSENT)
+                continue;
+            table.addColumn(table.nColumns(), names[i], (PrimitiveArray)found[i].pa.clone(),
+                found[i].attributes == null? new Attributes() :
+                    (Attributes)found[i].attributes.clone());
+        }
+        return table;
+    }
+
+    /**
+     * This adds the requested columns of the table to the cache
+     * (as clones, so the caller can change the table).
+     * Requested columns which aren't in the table are cached as ABSENT.
+     *
+     * @param keys the keys (from key()) for the requested columns
+     * @param names the requested columns' sourceNames (parallels keys)
+     * @param table the table with the source data from the file (all rows)
+     * @param fileKey from fileKey(). If the data is too big to cache, 
+     *   this is remembered, so mayCache(fileKey) will return false.
+     */
+    public void put(String keys[], String names[], Table table, String fileKey) {
+        //estimate the size
+        PrimitiveArray pas[] = new PrimitiveArray[keys.length];
+        long nb[] = new long[keys.length];
+        long total = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int col = table.findColumnNumber(names[i]);
+            pas[i] = col < 0? ABSENT : table.getColumn(col);
+            nb[i] = estimateBytes(pas[i]) + 2 * keys[i].length() + 100; //100 for the Entry and map overhead
+            total += nb[i];
+        }
+        if (total > maxBytes / 2 ||
+            Math2.getMemoryInUse() + total > Math2.maxSafeMemory / 2) {
+            synchronized(this) {
+                nNotCached++;
+                if (total > maxBytes / 2) 
+                    tooBig.put(fileKey, Boolean.TRUE);
+            }
+            return;
+        }
+
+        //make the clones outside of synchronized block
+        Entry newEntries[] = new Entry[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            PrimitiveArray pa = pas[i];
+            Attributes atts = null;
+            if (pa != ABSENT) {
+                int col = table.findColumnNumber(names[i]);
+                pa = (PrimitiveArray)pa.clone(); //capacity = size
+                Attributes tAtts = table.columnAttributes(col);
+                if (tAtts != null && tAtts.size() > 0)
+                    atts = (Attributes)tAtts.clone();
+            }
+            newEntries[i] = new Entry(pa, atts, nb[i]);
+        }
+
+        synchronized(this) {
+            for (int i = 0; i < keys.length; i++) {
+                Entry old = entries.put(keys[i], newEntries[i]);
+                if (old != null)
+                    nBytes -= old.nBytes;
+                nBytes += newEntries[i].nBytes;
+            }
+            //evict least recently used
+            Iterator<Entry> it = entries.values().iterator();
+            while (nBytes > maxBytes && it.hasNext()) {
+                nBytes -= it.next().nBytes;
+                it.remove();
+                nEvictions++;
+            }
+        }
+    }
+
+    /**
+     * This estimates the number of bytes of memory used by a PrimitiveArray.
+     *
+     * @param pa
+     * @return the estimated number of bytes
+     */
+    public static long estimateBytes(PrimitiveArray pa) {
+        if (pa == ABSENT)
+            return 0;
+        int n = pa.size();
+        if (pa instanceof StringArray) {
+            //each String: ~40 bytes of object overhead + 2 bytes per char (+ 8 for the reference)
+            long sum = 16;
+            for (int i = 0; i < n; i++) {
+                String s = pa.getString(i);
+                sum += 48 + (s == null? 0 : 2L * s.length());
+            }
+            return sum;
+        }
+        return 16 + (long)n * pa.elementSize();
+    }
+
+    /** This removes all entries from the cache. */
+    public synchronized void clear() {
+        entries.clear();
+        tooBig.clear();
+        nBytes = 0;
+    }
+
+    /** This returns the number of bytes currently held by the cache. */
+    public synchronized long nBytes() {
+        return nBytes;
+    }
+
+    /** This returns a one line summary of this cache's statistics. */
+    public synchronized String statsString() {
+        long total = Math.max(1, nHits + nMisses);
+        return String2.left(datasetID, 40) +
+            " hits=" + nHits + " (" + (nHits * 100 / total) + "%)" +
+            " misses=" + nMisses +
+            " MB=" + (nBytes / Math2.BytesPerMB) + "/" + (maxBytes / Math2.BytesPerMB) +
+            " nEntries=" + entries.size() +
+            " evictions=" + nEvictions +
+            " notCached=" + nNotCached +
+            " tooBigFiles=" + tooBig.size();
+    }
+
+    /**
+     * This returns a multi-line summary of all of the active caches' statistics,
+     * for the status page. There is no trailing newline.
+     */
+    public static String allStatsString() {
+        ArrayList<EDDTableFromFilesDataCache> list = new ArrayList(caches.values());
+        long sum = 0;
+        for (int i = 0; i < list.size(); i++)
+            sum += list.get(i).nBytes();
+        StringBuilder sb = new StringBuilder(
+            "EDDTableFromFiles dataCache: nDatasets=" + list.size() +
+            ", MB=" + (sum / Math2.BytesPerMB));
+        Collections.sort(list, (a, b) -> a.datasetID.compareTo(b.datasetID));
+        for (int i = 0; i < list.size(); i++)
+            sb.append("\n  " + list.get(i).statsString());
+        return sb.toString();
+    }
+
+}
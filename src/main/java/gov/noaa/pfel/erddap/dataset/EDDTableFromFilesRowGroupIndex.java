@@ -0,0 +1,304 @@
+/*
+ * EDDTableFromFilesRowGroupIndex Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This is the row group statistics index for one source file of an
+ * EDDTableFromFiles dataset which has &lt;rowGroupSize&gt; &gt; 0
+ * (currently just supported by EDDTableFromNcFiles).
+ * For each numeric variable, it has the min and max of each group of
+ * rowGroupSize rows, so a request with a constraint like
+ * <tt>time&gt;=now-1hour</tt> only needs to read the row groups which
+ * may have matching data, not the whole file.
+ * (The fileTable just has the min and max for each whole file.)
+ *
+ * <p>The index is stored in a small binary file and is only valid if the
+ * source file's lastModified and size are unchanged.
+ * The static methods for the per-block statistics are also used by
+ * EDDTableFromFilesSidecar.
+ */
+public class EDDTableFromFilesRowGroupIndex {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The first 8 bytes of an index file (and the format version). */
+    public final static long MAGIC = 0x4552444452473031L; //"ERDDRG01"
+
+    /** The extension of index files. */
+    public final static String EXTENSION = ".rgi";
+
+    /** The default rowGroupSize. */
+    public final static int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+    public final String fullName;
+    public final long lastMod, size;
+    public final int nRows, rowGroupSize;
+    private final String names[];
+    private final double stats[][]; //[col][2*group] = min, [2*group+1] = max
+
+    private EDDTableFromFilesRowGroupIndex(String tFullName, long tLastMod, long tSize,
+        int tNRows, int tRowGroupSize, String tNames[], double tStats[][]) {
+        fullName = tFullName;
+        lastMod = tLastMod;
+        size = tSize;
+        nRows = tNRows;
+        rowGroupSize = tRowGroupSize;
+        names = tNames;
+        stats = tStats;
+    }
+
+    /**
+     * This returns the name of the index file for a source file.
+     *
+     * @param indexDir the directory for the dataset's index files (with slash at end)
+     * @param fullName the source file's full name
+     * @return the index file's full name
+     */
+    public static String indexName(String indexDir, String fullName) {
+        return indexDir + String2.md5Hex12(fullName) + EXTENSION;
+    }
+
+    /**
+     * This makes an index from a table with all of the rows of a source file.
+     *
+     * @param fullName the source file's full name
+     * @param lastMod the source file's lastModified time
+     * @param size the source file's size
+     * @param rowGroupSize the number of rows per group (&gt;0)
+     * @param names the sourceNames of the columns to be indexed.
+     *   Columns which aren't in the table or are StringArrays are ignored.
+     * @param table the table with all of the data from the source file
+     * @return the index
+     */
+    public static EDDTableFromFilesRowGroupIndex make(String fullName, long lastMod, long size,
+        int rowGroupSize, StringArray names, Table table) {
+
+        int nRows = table.nRows();
+        StringArray tNames = new StringArray();
+        ArrayList<double[]> tStats = new ArrayList();
+        for (int i = 0; i < names.size(); i++) {
+            int col = table.findColumnNumber(names.get(i));
+            if (col < 0 || table.getColumn(col) instanceof StringArray)
+                continue;
+            tNames.add(names.get(i));
+            tStats.add(blockStats(table.getColumn(col), nRows, rowGroupSize));
+        }
+        return new EDDTableFromFilesRowGroupIndex(fullName, lastMod, size, nRows, rowGroupSize,
+            tNames.toArray(), tStats.toArray(new double[tStats.size()][]));
+    }
+
+    /**
+     * This indicates if this index is valid for the current version of the source file.
+     *
+     * @param tFullName
+     * @param tLastMod the source file's current lastModified time
+     * @param tSize the source file's current size
+     * @return true if valid
+     */
+    public boolean isValidFor(String tFullName, long tLastMod, long tSize) {
+        return fullName.equals(tFullName) && lastMod == tLastMod && size == tSize;
+    }
+
+    /**
+     * This finds the range of rows which may have data which matches
+     * the numeric constraints.
+     *
+     * @param conVars the source constraint variables (or null)
+     * @param conOps the source constraint operators (or null)
+     * @param conValues the source constraint values (or null)
+     * @return null if all row groups may match,
+     *   or {firstRow, lastRow} (inclusive) of the row groups which may match,
+     *   or {-1, -1} if no row group matches.
+     */
+    public int[] rowRange(StringArray conVars, StringArray conOps, StringArray conValues) {
+        int nGroups = nBlocks(nRows, rowGroupSize);
+        boolean keep[] = keepBlocks(names, stats, nGroups, conVars, conOps, conValues);
+        int first = -1, last = -1;
+        for (int group = 0; group < nGroups; group++) {
+            if (keep[group]) {
+                if (first < 0)
+                    first = group;
+                last = group;
+            }
+        }
+        if (first < 0)
+            return new int[]{-1, -1};
+        if (first == 0 && last == nGroups - 1)
+            return null;
+        return new int[]{first * rowGroupSize, Math.min(nRows, (last + 1) * rowGroupSize) - 1};
+    }
+
+    /**
+     * This writes this index to a file.
+     * If there is trouble, this logs the error and doesn't throw an exception.
+     *
+     * @param indexName from indexName()
+     * @return true if successful
+     */
+    public boolean write(String indexName) {
+        String tempName = indexName + Math2.random(Integer.MAX_VALUE);
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tempName)));
+            try {
+                dos.writeLong(MAGIC);
+                dos.writeUTF(fullName);
+                dos.writeLong(lastMod);
+                dos.writeLong(size);
+                dos.writeInt(nRows);
+                dos.writeInt(rowGroupSize);
+                dos.writeInt(names.length);
+                for (int col = 0; col < names.length; col++) {
+                    dos.writeUTF(names[col]);
+                    for (int i = 0; i < stats[col].length; i++)
+                        dos.writeDouble(stats[col][i]);
+                }
+            } finally {
+                dos.close();
+            }
+            File2.rename(tempName, indexName); //throws RuntimeException if trouble
+            return true;
+        } catch (Throwable t) {
+            File2.delete(tempName);
+            String2.log("ERROR in EDDTableFromFilesRowGroupIndex.write for " + fullName + ":\n" +
+                MustBe.throwableToString(t));
+            return false;
+        }
+    }
+
+    /**
+     * This reads an index from a file.
+     *
+     * @param indexName from indexName()
+     * @return the index, or null if the file doesn't exist or has an old format
+     * @throws Exception if trouble
+     */
+    public static EDDTableFromFilesRowGroupIndex read(String indexName) throws Exception {
+        if (!File2.isFile(indexName))
+            return null;
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(indexName)));
+        try {
+            if (dis.readLong() != MAGIC)
+                return null;
+            String tFullName = dis.readUTF();
+            long tLastMod = dis.readLong();
+            long tSize = dis.readLong();
+            int tNRows = dis.readInt();
+            int tRowGroupSize = dis.readInt();
+            int nCols = dis.readInt();
+            int nGroups = nBlocks(tNRows, tRowGroupSize);
+            String tNames[] = new String[nCols];
+            double tStats[][] = new double[nCols][2 * nGroups];
+            for (int col = 0; col < nCols; col++) {
+                tNames[col] = dis.readUTF();
+                for (int i = 0; i < 2 * nGroups; i++)
+                    tStats[col][i] = dis.readDouble();
+            }
+            return new EDDTableFromFilesRowGroupIndex(tFullName, tLastMod, tSize,
+                tNRows, tRowGroupSize, tNames, tStats);
+        } finally {
+            dis.close();
+        }
+    }
+
+    /** This returns the number of blocks needed for nRows. */
+    public static int nBlocks(int nRows, int blockSize) {
+        return (nRows + blockSize - 1) / blockSize;
+    }
+
+    /**
+     * This returns the min and max (ignoring NaN's) of each block of rows of a numeric PrimitiveArray.
+     *
+     * @param pa a numeric PrimitiveArray
+     * @param nRows the number of rows to be used
+     * @param blockSize the number of rows per block
+     * @return [2*block]=min, [2*block+1]=max. Both are NaN if all values in the block are NaN.
+     */
+    public static double[] blockStats(PrimitiveArray pa, int nRows, int blockSize) {
+        int nBlocks = nBlocks(nRows, blockSize);
+        double stats[] = new double[2 * nBlocks];
+        for (int block = 0; block < nBlocks; block++) {
+            double min = Double.NaN, max = Double.NaN;
+            int stop = Math.min(nRows, (block + 1) * blockSize);
+            for (int row = block * blockSize; row < stop; row++) {
+                double d = pa.getDouble(row);
+                if (Double.isNaN(d))
+                    continue;
+                if (Double.isNaN(min) || d < min) min = d;
+                if (Double.isNaN(max) || d > max) max = d;
+            }
+            stats[2 * block] = min;
+            stats[2 * block + 1] = max;
+        }
+        return stats;
+    }
+
+    /**
+     * This determines which blocks of rows may have data which matches
+     * the numeric (=, &lt;, &lt;=, &gt;, &gt;=) constraints.
+     * Other constraints are ignored (they may match).
+     *
+     * @param colNames the names of the columns with stats
+     * @param colStats from blockStats() for each column (parallels colNames).
+     *    An element may be null (e.g., for a String column).
+     * @param nBlocks the number of blocks
+     * @param conVars the source constraint variables (or null)
+     * @param conOps the source constraint operators (or null)
+     * @param conValues the source constraint values (or null)
+     * @return keep[block]
+     */
+    public static boolean[] keepBlocks(String colNames[], double colStats[][], int nBlocks,
+        StringArray conVars, StringArray conOps, StringArray conValues) {
+
+        boolean keep[] = new boolean[nBlocks];
+        Arrays.fill(keep, true);
+        int nConstraints = conVars == null? 0 : conVars.size();
+        for (int con = 0; con < nConstraints; con++) {
+            int col = String2.indexOf(colNames, conVars.get(con));
+            if (col < 0 || colStats[col] == null)
+                continue;
+            String op = conOps.get(con);
+            double value = String2.parseDouble(conValues.get(con));
+            if (Double.isNaN(value) || Double.isInfinite(value) ||
+                !(op.equals("=") || op.equals(">") || op.equals(">=") ||
+                  op.equals("<") || op.equals("<=")))
+                continue;
+            double tol = 1e-6 * Math.max(1, Math.abs(value)); //for float precision
+            for (int block = 0; block < nBlocks; block++) {
+                double min = colStats[col][2 * block];
+                double max = colStats[col][2 * block + 1];
+                if (Double.isNaN(min) || //all NaN, so nothing can match
+                    (op.charAt(0) != '<' && max + tol < value) ||
+                    (op.charAt(0) != '>' && min - tol > value))
+                    keep[block] = false;
+            }
+        }
+        return keep;
+    }
+
+}
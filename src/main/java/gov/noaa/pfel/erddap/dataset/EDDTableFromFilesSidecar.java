@@ -0,0 +1,501 @@
+/*
+ * EDDTableFromFilesSidecar Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.Attributes;
+import com.cohort.array.ByteArray;
+import com.cohort.array.CharArray;
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This reads and writes columnar binary "sidecar" files for EDDTableFromFiles
+ * datasets which have &lt;columnarSidecar&gt;true&lt;/columnarSidecar&gt;
+ * (e.g., EDDTableFromAsciiFiles), so that requests can read
+ * the already parsed, typed data columns (via memory-mapped I/O)
+ * instead of re-parsing the text source file.
+ *
+ * <p>A sidecar file has a header (with the source file's fullName, lastModified
+ * and size, a signature of the dataset's settings which affect parsing,
+ * the number of rows, and, for each column, its name, type,
+ * data offset, the min and max of each block of BLOCK_SIZE rows, and its attributes),
+ * followed by each column's data as a block of big-endian primitives.
+ * Strings are stored as nRows+1 int offsets, then the UTF-8 bytes.
+ * The sidecar is only used if the source file's lastModified and size
+ * and the dataset's signature are unchanged.
+ *
+ * <p>Sidecars are written to a temporary file, then renamed,
+ * so readers never see a partially written sidecar.
+ */
+public class EDDTableFromFilesSidecar {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The first 8 bytes of a sidecar file (and the format version). */
+    public final static long MAGIC = 0x4552444453433032L; //"ERDDSC02"
+
+    /** The number of rows in each block (for the per-block min and max). */
+    public final static int BLOCK_SIZE = 16384;
+
+    /** The extension of sidecar files. */
+    public final static String EXTENSION = ".sidecar";
+
+    /** The type of a column which isn't in the source file. */
+    public final static String ABSENT = "absent";
+
+    /**
+     * This returns the name of the sidecar file for a source file.
+     *
+     * @param sidecarDir the directory for the dataset's sidecar files (with slash at end)
+     * @param fullName the source file's full name
+     * @return the sidecar file's full name
+     */
+    public static String sidecarName(String sidecarDir, String fullName) {
+        return sidecarDir + String2.md5Hex12(fullName) + EXTENSION;
+    }
+
+    /**
+     * This writes a sidecar file with the data in the table.
+     * If there is trouble, this logs the error and doesn't throw an exception.
+     *
+     * @param sidecarName from sidecarName()
+     * @param fullName the source file's full name
+     * @param lastMod the source file's lastModified time
+     * @param size the source file's size
+     * @param signature a signature of the dataset's settings which affect parsing the source file
+     * @param names the sourceNames of the columns to be stored
+     *    (Columns not in the table are stored as ABSENT.)
+     * @param types the sourceDataTypes of the columns (parallels names)
+     * @param table the table with all of the data (and the column attributes) from the source file
+     * @return true if successful
+     */
+    public static boolean write(String sidecarName, String fullName, long lastMod, long size,
+        String signature, StringArray names, String types[], Table table) {
+
+        String tempName = sidecarName + Math2.random(Integer.MAX_VALUE);
+        try {
+            int nRows = table.nRows();
+            int nCols = names.size();
+            int nBlocks = EDDTableFromFilesRowGroupIndex.nBlocks(nRows, BLOCK_SIZE);
+            PrimitiveArray pas[] = new PrimitiveArray[nCols];
+            byte stringBytes[][][] = new byte[nCols][][];
+            long dataLength[] = new long[nCols];
+            long totalLength = 0;
+            for (int col = 0; col < nCols; col++) {
+                int tc = table.findColumnNumber(names.get(col));
+                if (tc < 0)
+                    continue;
+                pas[col] = table.getColumn(tc);
+                if (pas[col] instanceof StringArray) {
+                    stringBytes[col] = new byte[nRows][];
+                    dataLength[col] = 4L * (nRows + 1);
+                    for (int row = 0; row < nRows; row++) {
+                        String s = pas[col].getString(row);
+                        stringBytes[col][row] = (s == null? "" : s).getBytes(StandardCharsets.UTF_8);
+                        dataLength[col] += stringBytes[col][row].length;
+                    }
+                } else {
+                    dataLength[col] = (long)nRows * pas[col].elementSize();
+                }
+                totalLength += dataLength[col];
+            }
+
+            //make the header
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream hos = new DataOutputStream(baos);
+            hos.writeUTF(fullName);
+            hos.writeLong(lastMod);
+            hos.writeLong(size);
+            hos.writeUTF(signature);
+            hos.writeInt(nRows);
+            hos.writeInt(BLOCK_SIZE);
+            hos.writeInt(nCols);
+            long offset = 0;
+            for (int col = 0; col < nCols; col++) {
+                hos.writeUTF(names.get(col));
+                hos.writeUTF(types[col]);
+                hos.writeUTF(pas[col] == null? ABSENT : pas[col].elementClassString());
+                hos.writeLong(offset);
+                offset += dataLength[col];
+                boolean hasStats = pas[col] != null && !(pas[col] instanceof StringArray);
+                hos.writeBoolean(hasStats);
+                if (hasStats) {
+                    double stats[] = EDDTableFromFilesRowGroupIndex.blockStats(pas[col], nRows, BLOCK_SIZE);
+                    for (int i = 0; i < stats.length; i++)
+                        hos.writeDouble(stats[i]);
+                }
+                int tc = table.findColumnNumber(names.get(col));
+                writeAttributes(hos, tc < 0? null : table.columnAttributes(tc));
+            }
+            hos.flush();
+            byte header[] = baos.toByteArray();
+            if (12L + header.length + totalLength > Integer.MAX_VALUE) {
+                if (verbose) String2.log("EDDTableFromFilesSidecar: " + fullName +
+                    " is too big for a sidecar.");
+                return false;
+            }
+
+            //write the file
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tempName)));
+            try {
+                dos.writeLong(MAGIC);
+                dos.writeInt(header.length);
+                dos.write(header);
+                for (int col = 0; col < nCols; col++) {
+                    PrimitiveArray pa = pas[col];
+                    if (pa == null) {
+                    } else if (pa instanceof StringArray) {
+                        int po = 0;
+                        for (int row = 0; row < nRows; row++) {
+                            dos.writeInt(po);
+                            po += stringBytes[col][row].length;
+                        }
+                        dos.writeInt(po);
+                        for (int row = 0; row < nRows; row++)
+                            dos.write(stringBytes[col][row]);
+                    } else if (pa instanceof DoubleArray) {
+                        double ar[] = ((DoubleArray)pa).toArray();
+                        for (int row = 0; row < nRows; row++) dos.writeDouble(ar[row]);
+                    } else if (pa instanceof FloatArray) {
+                        float ar[] = ((FloatArray)pa).toArray();
+                        for (int row = 0; row < nRows; row++) dos.writeFloat(ar[row]);
+                    } else if (pa instanceof LongArray) {
+                        long ar[] = ((LongArray)pa).toArray();
+                        for (int row = 0; row < nRows; row++) dos.writeLong(ar[row]);
+                    } else if (pa instanceof IntArray) {
+                        int ar[] = ((IntArray)pa).toArray();
+                        for (int row = 0; row < nRows; row++) dos.writeInt(ar[row]);
+                    } else if (pa instanceof ShortArray) {
+                        short ar[] = ((ShortArray)pa).toArray();
+                        for (int row = 0; row < nRows; row++) dos.writeShort(ar[row]);
+                    } else if (pa instanceof CharArray) {
+                        char ar[] = ((CharArray)pa).toArray();
+                        for (int row = 0; row < nRows; row++) dos.writeChar(ar[row]);
+                    } else if (pa instanceof ByteArray) {
+                        byte ar[] = ((ByteArray)pa).toArray();
+                        dos.write(ar, 0, nRows);
+                    } else {
+                        throw new RuntimeException("Unsupported type=" + pa.elementClassString());
+                    }
+                }
+            } finally {
+                dos.close();
+            }
+            File2.rename(tempName, sidecarName); //throws RuntimeException if trouble
+            if (verbose) String2.log("EDDTableFromFilesSidecar wrote " + sidecarName +
+                " for " + fullName + " nRows=" + nRows);
+            return true;
+
+        } catch (Throwable t) {
+            File2.delete(tempName);
+            String2.log("ERROR in EDDTableFromFilesSidecar.write for " + fullName + ":\n" +
+                MustBe.throwableToString(t));
+            return false;
+        }
+    }
+
+    /**
+     * This reads data from a sidecar file, if it is valid.
+     * Block min/max values are used to skip blocks of rows which can't match
+     * the numeric constraints, so the results may have fewer rows than the source file,
+     * but the constraints still need to be applied by the caller.
+     *
+     * @param sidecarName from sidecarName()
+     * @param fullName the source file's full name
+     * @param lastMod the source file's current lastModified time
+     * @param size the source file's current size
+     * @param signature a signature of the dataset's settings which affect parsing the source file
+     * @param names the sourceNames of the desired columns
+     * @param types the sourceDataTypes of the desired columns (parallels names)
+     * @param conVars the source constraint variables (or null)
+     * @param conOps the source constraint operators (or null)
+     * @param conValues the source constraint values (or null)
+     * @return a table with the desired columns which are in the source file,
+     *    or null if the sidecar doesn't exist, is stale, or doesn't have the desired columns
+     *    (and the caller should read the source file).
+     * @throws Exception if trouble (e.g., an invalid sidecar)
+     */
+    public static Table read(String sidecarName, String fullName, long lastMod, long size,
+        String signature, StringArray names, String types[],
+        StringArray conVars, StringArray conOps, StringArray conValues) throws Exception {
+
+        if (!File2.isFile(sidecarName))
+            return null;
+        MappedByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(sidecarName, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close(); //the mapping remains valid
+        }
+
+        if (buffer.getLong(0) != MAGIC)
+            return null; //an old format
+        byte header[] = new byte[buffer.getInt(8)];
+        ByteBuffer hb = buffer.duplicate();
+        hb.position(12);
+        hb.get(header);
+        int dataStart = 12 + header.length;
+        DataInputStream his = new DataInputStream(new ByteArrayInputStream(header));
+        if (!his.readUTF().equals(fullName) ||
+            his.readLong() != lastMod ||
+            his.readLong() != size ||
+            !his.readUTF().equals(signature))
+            return null; //stale
+        int nRows = his.readInt();
+        int blockSize = his.readInt();
+        int nCols = his.readInt();
+        int nBlocks = EDDTableFromFilesRowGroupIndex.nBlocks(nRows, blockSize);
+
+        //read the column info
+        String colNames[] = new String[nCols];
+        String colTypes[] = new String[nCols];
+        String colClasses[] = new String[nCols];
+        long colOffsets[] = new long[nCols];
+        double colStats[][] = new double[nCols][];
+        Attributes colAtts[] = new Attributes[nCols];
+        for (int col = 0; col < nCols; col++) {
+            colNames[col]   = his.readUTF();
+            colTypes[col]   = his.readUTF();
+            colClasses[col] = his.readUTF();
+            colOffsets[col] = his.readLong();
+            if (his.readBoolean()) {
+                colStats[col] = new double[2 * nBlocks];
+                for (int i = 0; i < 2 * nBlocks; i++)
+                    colStats[col][i] = his.readDouble();
+            }
+            colAtts[col] = readAttributes(his);
+        }
+
+        //are all of the desired columns in the sidecar?
+        int nNames = names.size();
+        int which[] = new int[nNames];
+        for (int i = 0; i < nNames; i++) {
+            which[i] = String2.indexOf(colNames, names.get(i));
+            if (which[i] < 0 || !colTypes[which[i]].equals(types[i]))
+                return null; //the dataset's definition has changed
+        }
+
+        //which blocks can match the numeric constraints?
+        boolean keep[] = EDDTableFromFilesRowGroupIndex.keepBlocks(colNames, colStats, nBlocks,
+            conVars, conOps, conValues);
+        int nKeepRows = 0;
+        for (int block = 0; block < nBlocks; block++)
+            if (keep[block])
+                nKeepRows += Math.min(nRows, (block + 1) * blockSize) - block * blockSize;
+
+        //read the desired columns
+        Table table = new Table();
+        for (int i = 0; i < nNames; i++) {
+            int col = which[i];
+            if (colClasses[col].equals(ABSENT))
+                continue;
+            ByteBuffer bb = buffer.duplicate();
+            bb.position((int)(dataStart + colOffsets[col])); //write() ensures file size < 2GB
+            bb = bb.slice();
+            PrimitiveArray pa = readColumn(bb, colClasses[col], nRows, nBlocks, blockSize,
+                keep, nKeepRows);
+            table.addColumn(table.nColumns(), names.get(i), pa, colAtts[col]);
+        }
+        if (verbose) String2.log("EDDTableFromFilesSidecar read " + nKeepRows + " of " + nRows +
+            " rows from " + sidecarName);
+        return table;
+    }
+
+    /**
+     * This writes a column's attributes to the header.
+     * Values are written as Strings (with int lengths, since they may be &gt;64KB).
+     *
+     * @param atts the attributes (or null if none)
+     */
+    private static void writeAttributes(DataOutputStream hos, Attributes atts) throws Exception {
+        String attNames[] = atts == null? new String[0] : atts.getNames();
+        hos.writeInt(attNames.length);
+        for (int a = 0; a < attNames.length; a++) {
+            PrimitiveArray pa = atts.get(attNames[a]);
+            hos.writeUTF(attNames[a]);
+            hos.writeUTF(pa.elementClassString());
+            int n = pa.size();
+            hos.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                String s = pa.getString(i);
+                byte bar[] = (s == null? "" : s).getBytes(StandardCharsets.UTF_8);
+                hos.writeInt(bar.length);
+                hos.write(bar);
+            }
+        }
+    }
+
+    /**
+     * This reads a column's attributes from the header.
+     *
+     * @return the attributes (perhaps with none)
+     */
+    private static Attributes readAttributes(DataInputStream his) throws Exception {
+        Attributes atts = new Attributes();
+        int nAtts = his.readInt();
+        for (int a = 0; a < nAtts; a++) {
+            String name = his.readUTF();
+            Class elementClass = PrimitiveArray.elementStringToClass(his.readUTF());
+            int n = his.readInt();
+            PrimitiveArray pa = PrimitiveArray.factory(elementClass, n, false);
+            for (int i = 0; i < n; i++) {
+                byte bar[] = new byte[his.readInt()];
+                his.readFully(bar);
+                pa.addString(new String(bar, StandardCharsets.UTF_8));
+            }
+            atts.set(name, pa);
+        }
+        return atts;
+    }
+
+    /**
+     * This reads the kept blocks of one column.
+     *
+     * @param bb a ByteBuffer positioned at the start of the column's data
+     * @param type the column's elementClassString
+     * @return a PrimitiveArray with nKeepRows
+     */
+    private static PrimitiveArray readColumn(ByteBuffer bb, String type, int nRows,
+        int nBlocks, int blockSize, boolean keep[], int nKeepRows) {
+
+        if (type.equals("String")) {
+            int dataStart = 4 * (nRows + 1);
+            String sar[] = new String[nKeepRows];
+            byte bar[] = new byte[0];
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block])
+                    continue;
+                int stop = Math.min(nRows, (block + 1) * blockSize);
+                for (int row = block * blockSize; row < stop; row++) {
+                    int start = bb.getInt(4 * row);
+                    int len = bb.getInt(4 * (row + 1)) - start;
+                    if (len > bar.length)
+                        bar = new byte[Math.max(len, 2 * bar.length)];
+                    ByteBuffer sb = bb.duplicate();
+                    sb.position(dataStart + start);
+                    sb.get(bar, 0, len);
+                    sar[po++] = String2.canonical(new String(bar, 0, len, StandardCharsets.UTF_8));
+                }
+            }
+            return new StringArray(sar);
+        }
+
+        if (type.equals("double")) {
+            double ar[] = new double[nKeepRows];
+            DoubleBuffer b = bb.asDoubleBuffer();
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block]) continue;
+                int start = block * blockSize, len = Math.min(nRows, start + blockSize) - start;
+                b.position(start); b.get(ar, po, len); po += len;
+            }
+            return new DoubleArray(ar);
+        }
+        if (type.equals("float")) {
+            float ar[] = new float[nKeepRows];
+            FloatBuffer b = bb.asFloatBuffer();
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block]) continue;
+                int start = block * blockSize, len = Math.min(nRows, start + blockSize) - start;
+                b.position(start); b.get(ar, po, len); po += len;
+            }
+            return new FloatArray(ar);
+        }
+        if (type.equals("long")) {
+            long ar[] = new long[nKeepRows];
+            LongBuffer b = bb.asLongBuffer();
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block]) continue;
+                int start = block * blockSize, len = Math.min(nRows, start + blockSize) - start;
+                b.position(start); b.get(ar, po, len); po += len;
+            }
+            return new LongArray(ar);
+        }
+        if (type.equals("int")) {
+            int ar[] = new int[nKeepRows];
+            IntBuffer b = bb.asIntBuffer();
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block]) continue;
+                int start = block * blockSize, len = Math.min(nRows, start + blockSize) - start;
+                b.position(start); b.get(ar, po, len); po += len;
+            }
+            return new IntArray(ar);
+        }
+        if (type.equals("short")) {
+            short ar[] = new short[nKeepRows];
+            ShortBuffer b = bb.asShortBuffer();
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block]) continue;
+                int start = block * blockSize, len = Math.min(nRows, start + blockSize) - start;
+                b.position(start); b.get(ar, po, len); po += len;
+            }
+            return new ShortArray(ar);
+        }
+        if (type.equals("char")) {
+            char ar[] = new char[nKeepRows];
+            CharBuffer b = bb.asCharBuffer();
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block]) continue;
+                int start = block * blockSize, len = Math.min(nRows, start + blockSize) - start;
+                b.position(start); b.get(ar, po, len); po += len;
+            }
+            return new CharArray(ar);
+        }
+        if (type.equals("byte")) {
+            byte ar[] = new byte[nKeepRows];
+            int po = 0;
+            for (int block = 0; block < nBlocks; block++) {
+                if (!keep[block]) continue;
+                int start = block * blockSize, len = Math.min(nRows, start + blockSize) - start;
+                bb.position(start); bb.get(ar, po, len); po += len;
+            }
+            return new ByteArray(ar);
+        }
+        throw new RuntimeException("EDDTableFromFilesSidecar: unsupported type=" + type);
+    }
+
+}
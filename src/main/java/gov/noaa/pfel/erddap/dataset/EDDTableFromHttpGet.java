@@ -21,6 +21,7 @@ import com.cohort.util.Test;
 import com.cohort.util.XML;
 
 import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
 import gov.noaa.pfel.coastwatch.util.SSR;
 
@@ -279,6 +280,19 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
             datasetID + " finished successfully.");
     }
 
+    /**
+     * EDDTableFromHttpGet doesn't support &lt;dataCacheMB&gt;, because the results from 
+     * lowGetSourceDataFromFile depend on the timestamp constraints.
+     *
+     * @param tDataCacheMB is ignored
+     */
+    public void setDataCacheMB(int tDataCacheMB) {
+        if (tDataCacheMB > 0 && tDataCacheMB < Integer.MAX_VALUE)
+            String2.log("WARNING: datasetID=" + datasetID + 
+                ": EDDTableFromHttpGet doesn't support <dataCacheMB>.");
+        super.setDataCacheMB(0);
+    }
+
     /**
      * This gets source data from one file.
      * See documentation in EDDTableFromFiles.
@@ -346,10 +360,13 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
 
         //read needed columns of the file (so UPDATE's and DELETE's can be processed)
         Table table = new Table();
-        //synchronized: don't read from file during a file write in insertOrDelete
-        synchronized (fullFileName) {  //fullFileName is canonical: from ArrayString, so good to synchronize on
+        //lock: don't read from file during a file write in insertOrDelete
+        FileLocks.Lock fileLock = FileLocks.lock(fullFileName);
+        try {
             //but probably not too bad if in middle of write
             table.readJsonlCSV(fullFileName, sourceDataNames, sourceDataTypes, false);
+        } finally {
+            fileLock.unlock();
         }
         //String2.log(">> table in " + fullFileName + " :\n" + table.dataToString());
         //table.saveAsDDS(System.out, "s");
@@ -1006,13 +1023,12 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
 
                 //As much as possible has been done ahead of time
                 //  so write info to file is 1 blast
-                //synchronized is ESSENTIAL: avoid problems with 2+ threads
+                //the lock is ESSENTIAL: avoid problems with 2+ threads
                 //  writing or reading same file at same time
-                //synchronized is ESSENTIAL: fullFileName is canonical
-                //  (since from StringArray) so same object in different threads
                 //There were rare problems when writing to file with 4+ threads
                 //  before switching to this system of full prep, then full write.
-                synchronized (fullFileName) { //it is canonical, so synchronizing on it works across threads
+                FileLocks.Lock fileLock = FileLocks.lock(fullFileName);
+                try {
                     //No buffering
                     BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(fullFileName, !fileIsNew)); //append?  
                     try {
@@ -1025,6 +1041,8 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
                             MustBe.throwableToString(e));
                         throw e;
                     }
+                } finally {
+                    fileLock.unlock();
                 }
 
                 //adjust min/max in fileTable if .insert
@@ -142,13 +142,10 @@ public class EDDTableFromHyraxFiles extends EDDTableFromFiles {
         try {
             //if previous tasks are still running, return
             EDStatic.ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
-            Integer lastAssignedTask = (Integer)EDStatic.lastAssignedTask.get(tDatasetID);
-            boolean pendingTasks = lastAssignedTask != null &&  
-                EDStatic.lastFinishedTask < lastAssignedTask.intValue();
+            int nPendingTasks = EDStatic.nUnfinishedTasks(tDatasetID);
+            boolean pendingTasks = nPendingTasks > 0;
             if (verbose) 
-                String2.log("  lastFinishedTask=" + EDStatic.lastFinishedTask + 
-                    " < lastAssignedTask(" + tDatasetID + ")=" + lastAssignedTask + 
-                    "? pendingTasks=" + pendingTasks);
+                String2.log("  nUnfinishedTasks(" + tDatasetID + ")=" + nPendingTasks);
             if (pendingTasks)  
                 return;
 
@@ -283,7 +280,7 @@ public class EDDTableFromHyraxFiles extends EDDTableFromFiles {
                 taskOA[1] = sourceName;
                 taskOA[2] = localFile;
                 taskOA[3] = new Long(Math2.roundToLong(sourceFileLastMod.get(f) * 1000));
-                int tTaskNumber = EDStatic.addTask(taskOA);
+                int tTaskNumber = EDStatic.addTask(tDatasetID, taskOA);
                 if (tTaskNumber >= 0) {
                     nTasksCreated++;
                     taskNumber = tTaskNumber;
@@ -299,7 +296,7 @@ public class EDDTableFromHyraxFiles extends EDDTableFromFiles {
                 Object taskOA[] = new Object[2];
                 taskOA[0] = TaskThread.TASK_SET_FLAG;
                 taskOA[1] = tDatasetID;
-                taskNumber = EDStatic.addTask(taskOA); //TASK_SET_FLAG will always be added
+                taskNumber = EDStatic.addTask(tDatasetID, taskOA); //TASK_SET_FLAG will always be added
                 nTasksCreated++;
                 if (reallyVerbose)
                     String2.log("  task#" + taskNumber + " TASK_SET_FLAG " + tDatasetID);
@@ -316,7 +313,6 @@ public class EDDTableFromHyraxFiles extends EDDTableFromFiles {
         }
 
         if (taskNumber > -1) {
-            EDStatic.lastAssignedTask.put(tDatasetID, new Integer(taskNumber));
             EDStatic.ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
         }
     }
@@ -100,6 +100,11 @@ public class EDDTableFromJsonlCSVFiles extends EDDTableFromFiles {
     }
 
 
+    /** See EDDTableFromFiles.rowsAreIndependentOfColumns(). */
+    protected boolean rowsAreIndependentOfColumns() {
+        return true;
+    }
+
     /**
      * This gets source data from one file.
      * See documentation in EDDTableFromFiles.
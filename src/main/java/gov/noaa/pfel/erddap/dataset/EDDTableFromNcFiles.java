@@ -180,6 +180,15 @@ public class EDDTableFromNcFiles extends EDDTableFromFiles {
     }
 
 
+    /**
+     * EDDTableFromNcFiles supports &lt;rowGroupSize&gt;, 
+     * since readNDNc can read a range of rows.
+     * See EDDTableFromFiles.supportsRowGroupIndex().
+     */
+    protected boolean supportsRowGroupIndex() {
+        return true;
+    }
+
     /**
      * This gets source data from one file.
      * See documentation in EDDTableFromFiles.
@@ -196,6 +205,12 @@ public class EDDTableFromNcFiles extends EDDTableFromFiles {
 
         //Future: more efficient if !mustGetData is handled differently
 
+        //if there is a row group index, just read the row groups which may match
+        int rowRange[] = getMetadata || !mustGetData? null :
+            rowGroupRange(tFileDir, tFileName, sourceConVars, sourceConOps, sourceConValues);
+        if (rowRange != null && rowRange[0] < 0) 
+            return Table.makeEmptyTable(sourceDataNames.toArray(), sourceDataTypes);
+
         //read the file
         Table table = new Table();
         String decompFullName = FileVisitorDNLS.decompressIfNeeded(
@@ -205,6 +220,8 @@ public class EDDTableFromNcFiles extends EDDTableFromFiles {
             standardizeWhat,
             sortedSpacing >= 0 && !Double.isNaN(minSorted)? sortedColumnSourceName : null,
             minSorted, maxSorted, 
+            rowRange == null? 0 : rowRange[0], 
+            rowRange == null? Integer.MAX_VALUE : rowRange[1],
             getMetadata);
         //String2.log("  EDDTableFromNcFiles.lowGetSourceDataFromFile table.nRows=" + table.nRows());
         //table.saveAsDDS(System.out, "s");
@@ -152,13 +152,10 @@ public class EDDTableFromThreddsFiles extends EDDTableFromFiles {
         try {
             //if previous tasks are still running, return
             EDStatic.ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
-            Integer lastAssignedTask = (Integer)EDStatic.lastAssignedTask.get(tDatasetID);
-            boolean pendingTasks = lastAssignedTask != null &&  
-                EDStatic.lastFinishedTask < lastAssignedTask.intValue();
+            int nPendingTasks = EDStatic.nUnfinishedTasks(tDatasetID);
+            boolean pendingTasks = nPendingTasks > 0;
             if (verbose) 
-                String2.log("  lastFinishedTask=" + EDStatic.lastFinishedTask + 
-                    " < lastAssignedTask(" + tDatasetID + ")=" + lastAssignedTask + 
-                    "? pendingTasks=" + pendingTasks);
+                String2.log("  nUnfinishedTasks(" + tDatasetID + ")=" + nPendingTasks);
             if (pendingTasks) 
                 return;
 
@@ -350,7 +347,7 @@ public class EDDTableFromThreddsFiles extends EDDTableFromFiles {
                 taskOA[1] = sourceDir + sourceName;
                 taskOA[2] = localFile;
                 taskOA[3] = new Long(sourceFileLastMod.get(f));
-                int tTaskNumber = EDStatic.addTask(taskOA);
+                int tTaskNumber = EDStatic.addTask(tDatasetID, taskOA);
                 if (tTaskNumber >= 0) {
                     nTasksCreated++;
                     taskNumber = tTaskNumber;
@@ -366,7 +363,7 @@ public class EDDTableFromThreddsFiles extends EDDTableFromFiles {
                 Object taskOA[] = new Object[2];
                 taskOA[0] = TaskThread.TASK_SET_FLAG;
                 taskOA[1] = tDatasetID;
-                taskNumber = EDStatic.addTask(taskOA); //TASK_SET_FLAG will always be added
+                taskNumber = EDStatic.addTask(tDatasetID, taskOA); //TASK_SET_FLAG will always be added
                 nTasksCreated++;
                 if (reallyVerbose)
                     String2.log("  task#" + taskNumber + " TASK_SET_FLAG " + tDatasetID);
@@ -382,7 +379,6 @@ public class EDDTableFromThreddsFiles extends EDDTableFromFiles {
                     MustBe.throwableToString(t));
         }
         if (taskNumber > -1) {
-            EDStatic.lastAssignedTask.put(tDatasetID, new Integer(taskNumber));
             EDStatic.ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
         }
     }
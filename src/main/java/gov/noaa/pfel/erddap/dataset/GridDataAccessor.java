@@ -19,6 +19,7 @@ import com.cohort.util.String2;
 
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.ReadScheduler;
 import gov.noaa.pfel.erddap.variable.EDV;
 import gov.noaa.pfel.erddap.variable.EDVGridAxis;
 
@@ -26,8 +27,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
  
@@ -98,9 +97,10 @@ public class GridDataAccessor {
     protected long totalNBytes;
     protected int nThreads; //constructor will set to be a valid number
     protected int chunk = 0; //the next chunk to be gotten by getChunk
-    protected int task = 0; //the number of the next task to be submitted to ExecutorService
+    protected int task = 0; //the number of the next task to be submitted to readSession
     protected ArrayList<FutureTask> futureTasks = new ArrayList();
-    protected ExecutorService executorService;
+    protected ReadScheduler.Session readSession; //this request's share of EDStatic.readScheduler
+    protected boolean allTasksSubmitted = false;
 
     protected Table tDirTable, tFileTable; //null, unless eddGrid is EDDGridFromFiles
 
@@ -566,8 +566,8 @@ public class GridDataAccessor {
             //If first call to getChunk, actually start getting actual data.
             //Don't do this in constructor because some users of GridDataAccessor
             //  just want to check request sizes and that no errors in request.
-            if (executorService == null && nThreads > 1) {
-                executorService = Executors.newFixedThreadPool(Math.max(1, nThreads-1));
+            if (readSession == null && nThreads > 1) {
+                readSession = EDStatic.readScheduler.newSession(eddGrid.datasetID(), nThreads - 1);
                 for (int thread = 1; thread < nThreads; thread++) //yes, 1, so nThreads-1
                     startAnotherTask();
                 //String2.pressEnterToContinue("\nstackTrace=\n" + MustBe.stackTrace() + 
@@ -584,12 +584,18 @@ public class GridDataAccessor {
             FutureTask futureTask = futureTasks.set(chunk, null);                
             tPartialDataValues = (PrimitiveArray[])(futureTask.get());   //blocks until done, throws ExecutionException
 
+            //if that was the last task, all tasks are done, so release this request's share of readScheduler
+            if (readSession != null && allTasksSubmitted && chunk == task - 1) {
+                readSession.close();
+                readSession = null;
+            }
+
         } catch (Throwable t) {
             //throwable while getting a chunk
             //shut everything down
-            if (executorService != null) {
-                try {executorService.shutdownNow();} catch (Exception e) {}
-                executorService = null;
+            if (readSession != null) {
+                try {readSession.close();} catch (Exception e) {}
+                readSession = null;
             }
             futureTasks = null;
 
@@ -622,7 +628,7 @@ public class GridDataAccessor {
     /** 
      * This increments the driver index (so done in calling thead),
      * creates another FutureTask (or null) from a new GetChunkCallable,
-     * adds it (or null) to futureTasks and executorService (if active).
+     * adds it (or null) to futureTasks and readSession (if active).
      * If beyond end of driveIndex, this doesn't create a futureTask.
      *
      */ 
@@ -631,14 +637,14 @@ public class GridDataAccessor {
         if (tb) {
             FutureTask futureTask = new FutureTask(new GetChunkCallable(task, this));  
             futureTasks.add(futureTask);
-            if (executorService == null)   //just this thread
+            if (readSession == null)   //just this thread
                  futureTask.run();
-            else executorService.submit(futureTask);
+            else readSession.submit(futureTask);
             task++;
         } else {
-            if (executorService != null) {
-                try {executorService.shutdown();} catch (Exception e) {} //it's done
-            }
+            //it's done. Already submitted tasks will finish. 
+            //getChunk() closes readSession after the last task.
+            allTasksSubmitted = true;
         }
     }
 
@@ -954,9 +960,9 @@ class GetChunkCallable implements Callable {
         } catch (Throwable t) {
         }
         try {
-            if (executorService != null) {
-                executorService.shutdownNow();
-                executorService = null;
+            if (readSession != null) {
+                readSession.close();
+                readSession = null;
             }
         } catch (Throwable t) {
         }
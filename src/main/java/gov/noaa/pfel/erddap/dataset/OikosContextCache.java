@@ -0,0 +1,249 @@
+/*
+ * OikosContextCache Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import gov.noaa.pfel.erddap.util.EDStatic;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A process-wide cache of the Oikos context (units, parameters, sensor parameters and agents
+ * from http://oikos.axds.co/rest/context), shared by all EDDTableFromAxiomStationV2 and
+ * EDDTableFromAxiomStation datasets, so a major LoadDatasets fetches and parses the context
+ * once instead of once per station.
+ *
+ * <ul>
+ * <li>After ttlMillis, the context is stale. The next get() still returns the stale context
+ *   immediately, but starts a refresh in a background thread.
+ * <li>Concurrent fetches are deduplicated: while a fetch is in flight, other callers
+ *   that need it wait for the same fetch.
+ * <li>Each successfully fetched context is also written to a file (in bigParentDirectory),
+ *   so after a restart, stations can be loaded even if the Oikos service isn't reachable.
+ * <li>If a refresh fails, the old context is kept and the refresh is retried after RETRY_MILLIS.
+ * </ul>
+ */
+public class OikosContextCache {
+
+    /** Fetches the raw context json. */
+    interface Fetcher {
+        String fetch() throws IOException;
+    }
+
+    static final String CONTEXT_URL = "http://oikos.axds.co/rest/context";
+    static final int DEFAULT_TTL_MINUTES = 60;
+    static final long RETRY_MILLIS = 60 * 1000L;
+
+    private static volatile OikosContextCache shared;
+
+    private final Fetcher fetcher;
+    private final String fileName; // may be null (no persistence)
+    private volatile long ttlMillis;
+    private final ExecutorService refresher;
+
+    private final Object fetchLock = new Object();
+    private CompletableFuture<OikosLookups> inFlight; // guarded by fetchLock
+    private volatile OikosLookups lookups;
+    private volatile long nextRefreshMillis;
+    private volatile boolean triedFile;
+    private volatile int nFetches, nFailedFetches;
+
+    /**
+     * @param fetcher   gets the raw context json
+     * @param fileName  the file where the latest context is persisted (or null for none)
+     * @param ttlMillis how long a context is fresh
+     */
+    OikosContextCache(Fetcher fetcher, String fileName, long ttlMillis) {
+        this.fetcher = fetcher;
+        this.fileName = fileName;
+        this.ttlMillis = ttlMillis;
+        this.refresher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "OikosContextCache refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This returns the process-wide cache, which fetches from CONTEXT_URL, persists to
+     * [bigParentDirectory]/oikos/context.json, and uses setup.xml's &lt;oikosContextCacheMinutes&gt;.
+     */
+    static OikosContextCache shared() {
+        if (shared == null) {
+            synchronized (OikosContextCache.class) {
+                if (shared == null) {
+                    String dir = EDStatic.bigParentDirectory + "oikos/";
+                    File2.makeDirectory(dir);
+                    shared = new OikosContextCache(OikosLookups::fetchContextJson, dir + "context.json",
+                            EDStatic.oikosContextCacheMinutes * 60 * 1000L);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * This returns the cached context (perhaps stale, in which case a background refresh is started).
+     * Only the first call (or the first call after failures with no context available) waits for a fetch.
+     *
+     * @throws IOException if there is no context (in memory or on disk) and it can't be fetched
+     */
+    OikosLookups get() throws IOException {
+        OikosLookups tLookups = lookups;
+        if (tLookups == null && !triedFile) {
+            readFile();
+            tLookups = lookups;
+        }
+        if (tLookups == null) {
+            return waitFor(refresh());
+        }
+        if (System.currentTimeMillis() >= nextRefreshMillis) {
+            refresh();
+        }
+        return tLookups;
+    }
+
+    /** This discards the in-memory context, so the next get() will wait for a fresh context. */
+    void invalidate() {
+        lookups = null;
+        nextRefreshMillis = 0;
+    }
+
+    void setTtlMillis(long tTtlMillis) {
+        ttlMillis = tTtlMillis;
+        if (lookups != null) {
+            nextRefreshMillis = Math.min(nextRefreshMillis, System.currentTimeMillis() + tTtlMillis);
+        }
+    }
+
+    /** This returns a one line summary of the cache's statistics. */
+    String statsString() {
+        return "OikosContextCache: loaded=" + (lookups != null) +
+                " ttlMinutes=" + (ttlMillis / 60000) +
+                " nFetches=" + nFetches + " nFailedFetches=" + nFailedFetches;
+    }
+
+    /**
+     * This returns a one line summary of the process-wide cache's statistics, for the status page.
+     * This doesn't make the process-wide cache if no dataset has used it.
+     */
+    public static String sharedStatsString() {
+        OikosContextCache tShared = shared;
+        return tShared == null ? "OikosContextCache: not in use" : tShared.statsString();
+    }
+
+    /**
+     * This starts a fetch in the refresher thread, unless one is already in flight,
+     * in which case this returns the in-flight fetch (single-flight).
+     */
+    CompletableFuture<OikosLookups> refresh() {
+        synchronized (fetchLock) {
+            if (inFlight != null) {
+                return inFlight;
+            }
+            CompletableFuture<OikosLookups> future = new CompletableFuture<>();
+            inFlight = future;
+            refresher.execute(() -> {
+                try {
+                    future.complete(fetchNow());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    synchronized (fetchLock) {
+                        inFlight = null;
+                    }
+                }
+            });
+            return future;
+        }
+    }
+
+    private OikosLookups fetchNow() throws Exception {
+        long time = System.currentTimeMillis();
+        nFetches++;
+        try {
+            String json = fetcher.fetch();
+            OikosLookups tLookups = OikosLookups.mapOikosLookupsFromJson(new JSONObject(json));
+            lookups = tLookups;
+            nextRefreshMillis = System.currentTimeMillis() + ttlMillis;
+            writeFile(json);
+            if (EDD.verbose) {
+                String2.log("OikosContextCache fetched the Oikos context in " +
+                        (System.currentTimeMillis() - time) + "ms");
+            }
+            return tLookups;
+        } catch (Exception e) {
+            nFailedFetches++;
+            nextRefreshMillis = System.currentTimeMillis() + Math.min(ttlMillis, RETRY_MILLIS);
+            String2.log("WARNING: OikosContextCache failed to fetch the Oikos context" +
+                    (lookups == null ? "" : " (the old context will be used)") + ":\n" +
+                    MustBe.throwableToString(e));
+            throw e;
+        }
+    }
+
+    private static OikosLookups waitFor(CompletableFuture<OikosLookups> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the Oikos context.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to get the Oikos context: " + cause, cause);
+        }
+    }
+
+    /** This tries to load the persisted context. A persisted context is treated as stale. */
+    private void readFile() {
+        triedFile = true;
+        if (fileName == null || !File2.isFile(fileName)) {
+            return;
+        }
+        try {
+            OikosLookups tLookups = OikosLookups.mapOikosLookupsFromJson(
+                    new JSONObject(String2.directReadFromUtf8File(fileName)));
+            synchronized (fetchLock) {
+                if (lookups == null) {
+                    lookups = tLookups;
+                    nextRefreshMillis = 0; // stale, so refresh in the background
+                }
+            }
+            String2.log("OikosContextCache loaded the Oikos context from " + fileName);
+        } catch (Exception e) {
+            String2.log("WARNING: OikosContextCache couldn't read " + fileName + ":\n" +
+                    MustBe.throwableToString(e));
+        }
+    }
+
+    private void writeFile(String json) {
+        if (fileName == null) {
+            return;
+        }
+        String tempName = fileName + Math2.random(Integer.MAX_VALUE);
+        String error = String2.writeToFile(tempName, json, String2.UTF_8);
+        if (error.length() == 0) {
+            try {
+                File2.rename(tempName, fileName);
+                return;
+            } catch (Exception e) {
+                error = e.toString();
+            }
+        }
+        File2.delete(tempName);
+        String2.log("WARNING: OikosContextCache couldn't write " + fileName + ": " + error);
+    }
+}
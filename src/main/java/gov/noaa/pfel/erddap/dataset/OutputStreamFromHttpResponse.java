@@ -6,6 +6,7 @@ package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.util.String2;
 
+import gov.noaa.pfel.erddap.util.AdmissionControl;
 import gov.noaa.pfel.erddap.util.EDStatic;
 
 import java.io.BufferedOutputStream;
@@ -793,7 +794,7 @@ public class OutputStreamFromHttpResponse implements OutputStreamSource {
             //Currently, never set Content-Length. But Erddap.doTransfer() sometimes does.
             //if (!hasRangeRequest && tLength > 0) 
             //    response.setContentLengthLong(tLength);
-            outputStream = new BufferedOutputStream(response.getOutputStream()); //after all setHeader
+            outputStream = new BufferedOutputStream(responseOutputStream()); //after all setHeader
 
         //ZipOutputStream too finicky.  outputStream.closeEntry() MUST be called at end or it fails
         //} else if (acceptEncoding.indexOf("compress") >= 0) {
@@ -805,14 +806,14 @@ public class OutputStreamFromHttpResponse implements OutputStreamSource {
         } else if (acceptEncoding.indexOf("gzip") >= 0) { 
             usingCompression = "gzip";
             response.setHeader("Content-Encoding", usingCompression);
-            outputStream = new GZIPOutputStream(new BufferedOutputStream(response.getOutputStream()));
+            outputStream = new GZIPOutputStream(new BufferedOutputStream(responseOutputStream()));
        
         //"deflate" is troublesome. Don't support it? Apache just supports gzip. But it hasn't been trouble.
         //see https://en.wikipedia.org/wiki/HTTP_compression
         } else if (acceptEncoding.indexOf("deflate") >= 0) {
             usingCompression = "deflate";
             response.setHeader("Content-Encoding", usingCompression);
-            outputStream = new DeflaterOutputStream(new BufferedOutputStream(response.getOutputStream()));
+            outputStream = new DeflaterOutputStream(new BufferedOutputStream(responseOutputStream()));
 
         } else /**/ { 
             //no compression  (see DODSServlet comments above (for .gif))
@@ -821,7 +822,7 @@ public class OutputStreamFromHttpResponse implements OutputStreamSource {
             //Currently, never set Content-Length. But Erddap.doTransfer() sometimes does.
             //if (tLength > 0) 
             //    response.setContentLengthLong(tLength);
-            outputStream = new BufferedOutputStream(response.getOutputStream()); //after all setHeader
+            outputStream = new BufferedOutputStream(responseOutputStream()); //after all setHeader
         }
 
         if (verbose) {
@@ -846,6 +847,14 @@ public class OutputStreamFromHttpResponse implements OutputStreamSource {
         return outputStream; 
     }
 
+    /**
+     * This returns the response's outputStream, counted (and perhaps throttled)
+     * by AdmissionControl for the request's client.
+     */
+    private OutputStream responseOutputStream() throws Throwable {
+        return AdmissionControl.throttle(request, response.getOutputStream());
+    }
+
     /** 
      * After ouputStream() has been called, this indicates the encoding (compression)
      * being used for an OutputStreamFromHttpResponse (gzip, deflate) 
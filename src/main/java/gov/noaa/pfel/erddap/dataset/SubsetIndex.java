@@ -0,0 +1,417 @@
+/*
+ * SubsetIndex Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.Attributes;
+import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.util.File2;
+import com.cohort.util.IsoTimeFormatter;
+import com.cohort.util.LRUCache;
+import com.cohort.util.Math2;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * This is a resident (in memory), dictionary-encoded copy of an EDDTable's
+ * subsetVariables data table (the distinct combinations of the subsetVariables,
+ * which are stored in the dataset's subset.nc file), with prebuilt indexes,
+ * so that .subset web pages and distinct() requests for just subsetVariables
+ * don't re-read the file and then test every row with generic Table code.
+ *
+ * <p>For each column, this has
+ * <ul>
+ * <li>a dictionary: the sorted distinct values (from PrimitiveArray.makeIndices),
+ * <li>each row's code (the index of the row's value in the dictionary), and
+ * <li>a posting list for each code: the (sorted) numbers of the rows with that value.
+ * </ul>
+ * So a constraint is tested once per distinct value (not once per row),
+ * the posting lists of the matching values are ORed into a BitSet of rows,
+ * and several constraints are combined by ANDing those BitSets.
+ * The distinct values in a set of rows are found from the rows' codes,
+ * without sorting the rows' values.
+ *
+ * <p>The indexes are kept in a process-wide LRU registry, keyed by the subset
+ * file's name, and are only reused if the file's lastModified is unchanged.
+ * The estimated size of all of the indexes is kept below maxBytes
+ * (setup.xml's &lt;subsetIndexMB&gt;). If a table is too big for that,
+ * it isn't indexed (until its file changes) and callers fall back to reading 
+ * the subset file.
+ *
+ * <p>An instance isn't changed after it is constructed, so it is thread-safe.
+ */
+public class SubsetIndex {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The maximum number of too-big subset files which are remembered. */
+    public final static int MAX_TOO_BIG = 1000;
+
+    //all of these are guarded by synchronized(SubsetIndex.class)
+    private static long maxBytes = 0; //0 disables the registry
+    private static LinkedHashMap<String,SubsetIndex> indexes = new LinkedHashMap(16, 0.75f, true); //accessOrder=true
+    private static long totalBytes = 0;
+    private static LRUCache tooBig = new LRUCache(MAX_TOO_BIG); //fullName -> lastMod (a Long) of files too big to index
+    private static long nHits = 0, nMisses = 0, nTooBig = 0, nEvictions = 0;
+
+    private final long lastMod;
+    private final int nRows;
+    private final String columnNames[];
+    private final Attributes globalAttributes;
+    private final Attributes columnAttributes[];
+    private final PrimitiveArray dictionaries[]; //[col] the sorted distinct values
+    private final int codes[][];         //[col][row]  the index in dictionaries[col]
+    private final int postingStarts[][]; //[col][code] the start of code's rows in postingRows[col]; size=nValues+1
+    private final int postingRows[][];   //[col][]     the row numbers, grouped by code
+    private final long nBytes;
+
+    /**
+     * This makes an index of a table.
+     * The table isn't changed or kept.
+     *
+     * @param table the subsetVariables data table (with metadata)
+     * @param tLastMod the lastModified time of the table's file (or 0 if none)
+     */
+    public SubsetIndex(Table table, long tLastMod) {
+        lastMod = tLastMod;
+        nRows = table.nRows();
+        int nCols = table.nColumns();
+        columnNames = table.getColumnNames();
+        globalAttributes = new Attributes(table.globalAttributes());
+        columnAttributes = new Attributes[nCols];
+        dictionaries = new PrimitiveArray[nCols];
+        codes = new int[nCols][];
+        postingStarts = new int[nCols][];
+        postingRows = new int[nCols][];
+        long tNBytes = 0;
+        IntArray indices = new IntArray();
+        for (int col = 0; col < nCols; col++) {
+            columnAttributes[col] = new Attributes(table.columnAttributes(col));
+            PrimitiveArray pa = table.getColumn(col);
+            PrimitiveArray dictionary = pa.makeIndices(indices);
+            if (dictionary == pa) //all unique and sorted: don't share it with the table
+                dictionary = (PrimitiveArray)pa.clone();
+            dictionary.trimToSize();
+            dictionaries[col] = dictionary;
+            codes[col] = indices.toArray();
+
+            //group the row numbers by code (a counting sort)
+            int nValues = dictionary.size();
+            int starts[] = new int[nValues + 1];
+            int colCodes[] = codes[col];
+            for (int row = 0; row < nRows; row++)
+                starts[colCodes[row] + 1]++;
+            for (int code = 0; code < nValues; code++)
+                starts[code + 1] += starts[code];
+            int next[] = new int[nValues];
+            System.arraycopy(starts, 0, next, 0, nValues);
+            int rows[] = new int[nRows];
+            for (int row = 0; row < nRows; row++)
+                rows[next[colCodes[row]]++] = row;
+            postingStarts[col] = starts;
+            postingRows[col] = rows;
+
+            tNBytes += EDDTableFromFilesDataCache.estimateBytes(dictionary) +
+                8L * nRows + 4L * (nValues + 1) + 48;
+        }
+        nBytes = tNBytes;
+    }
+
+    /** This returns the number of rows in the table. */
+    public int nRows() {
+        return nRows;
+    }
+
+    /** This returns the number of columns in the table. */
+    public int nColumns() {
+        return columnNames.length;
+    }
+
+    /** This returns the estimated size of this index, in bytes. */
+    public long nBytes() {
+        return nBytes;
+    }
+
+    /**
+     * This returns the number of a column.
+     *
+     * @param columnName
+     * @return the column's number (or -1 if not found)
+     */
+    public int findColumnNumber(String columnName) {
+        return String2.indexOf(columnNames, columnName);
+    }
+
+    /**
+     * This returns a copy of the sorted distinct values of a column.
+     *
+     * @param col the column's number
+     * @return a copy of the column's dictionary
+     */
+    public PrimitiveArray values(int col) {
+        return (PrimitiveArray)dictionaries[col].clone();
+    }
+
+    /** This returns the elementClass of a column, e.g., String.class. */
+    public Class elementClass(int col) {
+        return dictionaries[col].elementClass();
+    }
+
+    /** This returns a new BitSet with all of the rows set. */
+    public BitSet allRows() {
+        BitSet rows = new BitSet(nRows);
+        rows.set(0, nRows);
+        return rows;
+    }
+
+    /**
+     * This returns the rows which have one of the specified values.
+     *
+     * @param col the column's number
+     * @param codeSet the codes (indices in the column's dictionary) of the values
+     * @return a new BitSet with the rows which have one of the values
+     */
+    public BitSet rowsWithCodes(int col, BitSet codeSet) {
+        int starts[] = postingStarts[col];
+        int rows[] = postingRows[col];
+        BitSet result = new BitSet(nRows);
+        for (int code = codeSet.nextSetBit(0); code >= 0; code = codeSet.nextSetBit(code + 1)) {
+            for (int i = starts[code]; i < starts[code + 1]; i++)
+                result.set(rows[i]);
+        }
+        return result;
+    }
+
+    /**
+     * This returns the rows which pass a constraint, as EDDTable.applyConstraints 
+     * would test it: the values are converted to standard missing values, 
+     * then tested with PrimitiveArray.applyConstraint.
+     * But here the constraint is tested just once for each distinct value.
+     *
+     * @param col the column's number
+     * @param destinationFillValue the variable's destinationFillValue
+     * @param destinationMissingValue the variable's destinationMissingValue
+     * @param morePrecise as for PrimitiveArray.applyConstraint
+     *    (EDDTable uses edv instanceof EDVTimeStamp)
+     * @param op any of the operators supported by PrimitiveArray.applyConstraint
+     * @param value the constraint's value
+     * @return a new BitSet with the rows which pass the constraint
+     */
+    public BitSet rowsWhere(int col, double destinationFillValue, double destinationMissingValue,
+        boolean morePrecise, String op, String value) {
+        PrimitiveArray dictionary = values(col);
+        dictionary.convertToStandardMissingValues(destinationFillValue, destinationMissingValue);
+        BitSet codeSet = new BitSet(dictionary.size());
+        codeSet.set(0, dictionary.size());
+        if (dictionary.applyConstraint(morePrecise, codeSet, op, value) == 0)
+            return new BitSet(nRows);
+        return rowsWithCodes(col, codeSet);
+    }
+
+    /**
+     * This returns the rows where the value, as a String, equals s.
+     *
+     * @param col the column's number
+     * @param s the desired String value (as from pa.getString() or, for time columns,
+     *    Calendar2.epochSecondsToLimitedIsoStringT(timePrecision, d, "NaN"))
+     * @param timePrecision for time columns (with epochSeconds values),
+     *    the time_precision (may be "") of the Strings; else null.
+     * @return a new BitSet with the matching rows
+     */
+    public BitSet rowsWhereString(int col, String s, String timePrecision) {
+        PrimitiveArray dictionary = dictionaries[col];
+        int nValues = dictionary.size();
+        IsoTimeFormatter formatter = timePrecision == null? null :
+            new IsoTimeFormatter(timePrecision);
+        BitSet codeSet = new BitSet(nValues);
+        for (int code = 0; code < nValues; code++) {
+            String value = formatter == null? dictionary.getString(code) :
+                formatter.format(dictionary.getDouble(code), "NaN");
+            if (s.equals(value))
+                codeSet.set(code);
+        }
+        return rowsWithCodes(col, codeSet);
+    }
+
+    /**
+     * This returns the distinct values of a column in some rows.
+     *
+     * @param col the column's number
+     * @param rows the rows (or null for all rows)
+     * @return a new PrimitiveArray with the distinct values,
+     *    sorted as in the dictionary (see PrimitiveArray.makeIndices)
+     */
+    public PrimitiveArray distinctValues(int col, BitSet rows) {
+        if (rows == null)
+            return values(col);
+        PrimitiveArray dictionary = dictionaries[col];
+        int colCodes[] = codes[col];
+        BitSet codeSet = new BitSet(dictionary.size());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1))
+            codeSet.set(colCodes[row]);
+        PrimitiveArray pa = PrimitiveArray.factory(dictionary.elementClass(),
+            codeSet.cardinality(), false);
+        for (int code = codeSet.nextSetBit(0); code >= 0; code = codeSet.nextSetBit(code + 1))
+            pa.addFromPA(dictionary, code);
+        return pa;
+    }
+
+    /**
+     * This makes a new table (with a copy of the metadata) with some of the rows.
+     *
+     * @param rows the rows to be included (or null for all rows)
+     * @return a new table, which the caller may change
+     */
+    public Table toTable(BitSet rows) {
+        int nCols = columnNames.length;
+        int nKeep = rows == null? nRows : rows.cardinality();
+        Table table = new Table();
+        table.globalAttributes().add(globalAttributes);
+        for (int col = 0; col < nCols; col++) {
+            PrimitiveArray dictionary = dictionaries[col];
+            int colCodes[] = codes[col];
+            PrimitiveArray pa = PrimitiveArray.factory(dictionary.elementClass(), nKeep, false);
+            if (rows == null) {
+                for (int row = 0; row < nRows; row++)
+                    pa.addFromPA(dictionary, colCodes[row]);
+            } else {
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1))
+                    pa.addFromPA(dictionary, colCodes[row]);
+            }
+            table.addColumn(col, columnNames[col], pa, new Attributes(columnAttributes[col]));
+        }
+        return table;
+    }
+
+
+    /**
+     * This sets the maximum total size of the indexes in the registry.
+     * 0 disables the registry (and removes all of the indexes).
+     *
+     * @param tMaxMB  Invalid values (e.g., negative) are treated as 0.
+     */
+    public static synchronized void setMaxMB(int tMaxMB) {
+        maxBytes = (long)Math.max(0, tMaxMB) * Math2.BytesPerMB;
+        tooBig.clear(); //they may fit now
+        evictIfNeeded();
+    }
+
+    /**
+     * This returns the registered index for a subset file,
+     * if the file hasn't changed since the index was made.
+     *
+     * @param fullName the subset file's name
+     * @return the index (or null if none)
+     */
+    public static SubsetIndex get(String fullName) {
+        long lastMod = File2.getLastModified(fullName);
+        synchronized(SubsetIndex.class) {
+            SubsetIndex index = indexes.get(fullName);
+            if (index != null && index.lastMod != lastMod) {
+                //the file changed (or is gone)
+                indexes.remove(fullName);
+                totalBytes -= index.nBytes;
+                index = null;
+            }
+            if (index == null)
+                nMisses++;
+            else nHits++;
+            return index;
+        }
+    }
+
+    /**
+     * This returns true if the registry is enabled and the subset file
+     * wasn't found to be too big to index (since it last changed).
+     *
+     * @param fullName the subset file's name
+     */
+    public static boolean mayIndex(String fullName) {
+        long lastMod = File2.getLastModified(fullName);
+        synchronized(SubsetIndex.class) {
+            Long tLastMod = (Long)tooBig.get(fullName);
+            return maxBytes > 0 && (tLastMod == null || tLastMod.longValue() != lastMod);
+        }
+    }
+
+    /**
+     * This makes an index of a subset table (as just read from or written to fullName)
+     * and registers it, if there is room.
+     *
+     * @param fullName the subset file's name
+     * @param table the subsetVariables data table (with metadata). It isn't changed or kept.
+     * @return the index (or null if the registry is disabled or the table is too big)
+     */
+    public static SubsetIndex put(String fullName, Table table) {
+        long lastMod = File2.getLastModified(fullName);
+        long tMaxBytes;
+        synchronized(SubsetIndex.class) {
+            tMaxBytes = maxBytes;
+        }
+        if (tMaxBytes <= 0 || 
+            Math2.getMemoryInUse() > Math2.maxSafeMemory / 2)
+            return null;
+
+        //quick check: is the table obviously too big?  (8 bytes/row/column for codes and postings)
+        SubsetIndex index = null;
+        long time = System.currentTimeMillis();
+        if (8L * table.nRows() * table.nColumns() <= tMaxBytes) 
+            index = new SubsetIndex(table, lastMod); //outside of synchronized block
+        synchronized(SubsetIndex.class) {
+            if (index == null || index.nBytes > maxBytes) {
+                tooBig.put(fullName, Long.valueOf(lastMod));
+                nTooBig++;
+                if (verbose) String2.log("SubsetIndex: " + fullName + " is too big to index.");
+                return null;
+            }
+            SubsetIndex old = indexes.put(fullName, index);
+            if (old != null)
+                totalBytes -= old.nBytes;
+            totalBytes += index.nBytes;
+            evictIfNeeded();
+        }
+        if (verbose) String2.log("SubsetIndex made index for " + fullName +
+            " nRows=" + index.nRows + " nBytes=" + index.nBytes +
+            " time=" + (System.currentTimeMillis() - time) + "ms");
+        return index;
+    }
+
+    /** This removes least recently used indexes until totalBytes &lt;= maxBytes. */
+    private static synchronized void evictIfNeeded() {
+        Iterator<SubsetIndex> it = indexes.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            SubsetIndex index = it.next();
+            it.remove();
+            totalBytes -= index.nBytes;
+            nEvictions++;
+        }
+    }
+
+    /** This removes all of the indexes from the registry. */
+    public static synchronized void clear() {
+        indexes.clear();
+        tooBig.clear();
+        totalBytes = 0;
+    }
+
+    /** This returns a one line summary of the registry's statistics. */
+    public static synchronized String statsString() {
+        return "SubsetIndex: nIndexes=" + indexes.size() +
+            " MB=" + (totalBytes / Math2.BytesPerMB) +
+            " maxMB=" + (maxBytes / Math2.BytesPerMB) +
+            " nHits=" + nHits + " nMisses=" + nMisses +
+            " nTooBig=" + nTooBig + " nEvictions=" + nEvictions;
+    }
+
+}
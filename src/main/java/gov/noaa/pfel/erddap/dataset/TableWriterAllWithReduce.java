@@ -0,0 +1,263 @@
+/*
+ * TableWriterAllWithReduce Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.EDStatic;
+
+import java.util.Random;
+
+
+/**
+ * TableWriterAllWithReduce is the parent of the TableWriters (e.g., orderByMax)
+ * which reduce the rows to (roughly) one row per group.
+ * Instead of writing every (partly reduced) chunk to TableWriterAll's
+ * temporary files and then reading them all back into memory in finish(),
+ * this appends the reduced chunks to an in-memory table and reduces that table
+ * again whenever it has doubled in size since it was last reduced,
+ * so just ~1 row per group (e.g., the current max row for each station)
+ * is kept in memory.
+ *
+ * <p>The reduction must be associative (reducing the concatenation of
+ * reduced tables gives the same result as reducing all of the rows at once),
+ * as it already had to be for the chunk-by-chunk reduction that these
+ * TableWriters have always done.
+ *
+ * <p>If the number of groups is huge (the reduced table is bigger than
+ * maxReducedBytes), this falls back to TableWriterAll's behavior:
+ * the reduced table and all subsequent (reduced) chunks are written to the temporary files.
+ */
+public abstract class TableWriterAllWithReduce extends TableWriterAll {
+
+    /**
+     * The maximum size (in bytes) of the in-memory reduced table
+     * before this switches to writing to temporary files.
+     */
+    public static long maxReducedBytes = Math2.maxSafeMemory / 20;
+
+    /** Don't bother reducing the in-memory table until it has at least this many rows. */
+    public static int minRowsToReduce = 10000;
+
+    protected Table reducedTable; //null until first writeSome, and after spilled
+    protected int nRowsAfterReduce = 0;
+    protected boolean spilled = false;
+
+    /**
+     * The constructor.
+     *
+     * @param tDir a private cache directory for storing the intermediate files,
+     *    usually cacheDirectory(datasetID)
+     * @param tFileNameNoExt is the fileName without dir or extension (used as basis for temp files).
+     *     A random number will be added to it for safety.
+     */
+    public TableWriterAllWithReduce(EDD tEdd, String tNewHistory, String tDir,
+        String tFileNameNoExt) {
+
+        super(tEdd, tNewHistory, tDir, tFileNameNoExt);
+    }
+
+    /**
+     * This reduces a new chunk of data, e.g., table.orderByMax(orderBy).
+     *
+     * @param table a chunk of data, as passed to writeSome
+     * @throws Throwable if trouble
+     */
+    protected abstract void reduceChunk(Table table) throws Throwable;
+
+    /**
+     * This reduces a table made from the concatenation of reduced chunks (and/or
+     * reduced tables). For most subclasses, this is the same as reduceChunk.
+     *
+     * @param table the concatenation of reduced chunks
+     * @throws Throwable if trouble
+     */
+    protected void reduceReduced(Table table) throws Throwable {
+        reduceChunk(table);
+    }
+
+    /**
+     * This adds the current contents of table (a chunk of data) to the in-memory reduced table
+     * (or to the temporary files).
+     * This calls ensureCompatible each time it is called.
+     * The number of columns, the column names, and the types of columns
+     *   must be the same each time this is called.
+     *
+     * @param table with destinationValues.
+     *   The table should have missing values stored as destinationMissingValues
+     *   or destinationFillValues.
+     *   This implementation converts them to NaNs for processing,
+     *   then back to destinationMV and FV when finished.
+     * @throws Throwable if trouble
+     */
+    public void writeSome(Table table) throws Throwable {
+        if (table.nRows() == 0)
+            return;
+
+        //to save time and memory, this just does a partial job on the chunk
+        //  and leaves perfect job to finish()
+        reduceChunk(table);
+        if (spilled) {
+            super.writeSome(table);
+            return;
+        }
+
+        //ensure the table's structure is the same as before
+        ensureCompatible(table);
+        if (reducedTable == null)
+            reducedTable = makeEmptyTable();
+        reducedTable.append(table);
+
+        //time to reduce?
+        int nRows = reducedTable.nRows();
+        if (nRows < minRowsToReduce || nRows < 2 * nRowsAfterReduce)
+            return;
+        reduceReduced(reducedTable);
+        nRowsAfterReduce = reducedTable.nRows();
+        long nBytes = (long)nRowsAfterReduce * reducedTable.estimatedBytesPerRow();
+        if (reallyVerbose) String2.log("TableWriterAllWithReduce nRows before=" + nRows +
+            " after=" + nRowsAfterReduce + " nBytes=" + nBytes);
+
+        //too many groups? spill to temporary files
+        if (nBytes > maxReducedBytes) {
+            if (verbose) String2.log("TableWriterAllWithReduce: nGroups=" + nRowsAfterReduce +
+                " is too big for memory, so switching to temporary files.");
+            Table tTable = reducedTable;
+            reducedTable = null;
+            spilled = true;
+            super.writeSome(tTable);
+        }
+    }
+
+    /**
+     * This finishes gathering the data and returns the table with all of the
+     * (partly) reduced data, which the subclass must then finish reducing.
+     *
+     * @return the table
+     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
+     */
+    protected Table finishGathering() throws Throwable {
+        if (spilled) {
+            super.finish();
+            Table table = cumulativeTable();
+            releaseResources();
+            return table;
+        }
+
+        //check for MustBe.THERE_IS_NO_DATA
+        if (reducedTable == null)
+            throw new SimpleException(MustBe.THERE_IS_NO_DATA + " (nRows = 0)");
+        Table table = reducedTable;
+        reducedTable = null;
+        return table;
+    }
+
+    /**
+     * This deletes the columnStreams files, cumulativeTable, and reducedTable (if any).
+     * This won't throw an exception.
+     */
+    public void releaseResources() {
+        reducedTable = null;
+        super.releaseResources();
+    }
+
+    /**
+     * This tests that orderByMax, orderByMin, orderByMinMax, and orderByCount
+     * give the same results as reducing the whole table at once, 
+     * when the reduced table stays in memory (and is reduced several times),
+     * when it is spilled to the temporary files part way through,
+     * and when it is spilled right away (which is what these TableWriters always did before).
+     */
+    public static void test() throws Throwable {
+        String2.log("\n*** TableWriterAllWithReduce.test()");
+        String dir = EDStatic.fullTestCacheDirectory;
+        long oMaxReducedBytes = maxReducedBytes;
+        int oMinRowsToReduce = minRowsToReduce;
+        try {
+            //the number of stations grows as rows are added, so the reduced table grows
+            int nRows = 5000;
+            Random random = new Random(17);
+            StringArray station = new StringArray();
+            DoubleArray time = new DoubleArray();
+            FloatArray sst = new FloatArray();
+            int order[] = new int[nRows];
+            for (int row = 0; row < nRows; row++)
+                order[row] = row;
+            for (int row = nRows - 1; row > 0; row--) { //shuffle, so times are unique but unordered
+                int other = random.nextInt(row + 1);
+                int tInt = order[row]; order[row] = order[other]; order[other] = tInt;
+            }
+            for (int row = 0; row < nRows; row++) {
+                station.add("s" + String2.zeroPad("" + random.nextInt(1 + row / 20), 3));
+                time.add(random.nextInt(50) == 0? Double.NaN : order[row]);
+                sst.add(random.nextInt(10) == 0? Float.NaN : random.nextInt(3000) / 100f);
+            }
+            Table table = new Table();
+            table.addColumn("station", station);
+            table.addColumn("time", time);
+            table.addColumn("sst", sst);
+
+            for (String type : new String[]{"orderByMax", "orderByMin", "orderByMinMax", "orderByCount"}) {
+                String orderBy = type.equals("orderByCount")? "station" : "station,time";
+                String orderByAr[] = String2.split(orderBy, ',');
+
+                //the expected results: reduce the whole table at once
+                Table expected = (Table)table.clone();
+                if      (type.equals("orderByMax"))    expected.orderByMax(orderByAr);
+                else if (type.equals("orderByMin"))    expected.orderByMin(orderByAr);
+                else if (type.equals("orderByMinMax")) expected.orderByMinMax(orderByAr);
+                else                                   expected.orderByCount(orderByAr);
+                int bytesPerRow = expected.estimatedBytesPerRow();
+
+                //0=in memory, 1=spill part way through, 2=spill right away (the old way)
+                for (int mode = 0; mode < 3; mode++) {
+                    minRowsToReduce = mode == 2? 0 : 100;
+                    maxReducedBytes = mode == 0? Long.MAX_VALUE : 
+                                      mode == 1? 60L * bytesPerRow : -1;
+                    TableWriterAll results = new TableWriterAll(null, null, dir, 
+                        "reduceTestResults");
+                    TableWriterAllWithReduce twawr =
+                        type.equals("orderByMax")?    new TableWriterOrderByMax(   null, null, dir, "reduceTest", results, orderBy) :
+                        type.equals("orderByMin")?    new TableWriterOrderByMin(   null, null, dir, "reduceTest", results, orderBy) :
+                        type.equals("orderByMinMax")? new TableWriterOrderByMinMax(null, null, dir, "reduceTest", results, orderBy) :
+                                                      new TableWriterOrderByCount( null, null, dir, "reduceTest", results, orderBy);
+                    try {
+                        //reduceChunk changes the chunk, so write copies
+                        for (int first = 0; first < nRows; first += 37) 
+                            twawr.writeSome(table.subset(first, 1, Math.min(nRows, first + 37) - 1));
+                        String msg = type + " mode=" + mode;
+                        if (mode == 0) {
+                            Test.ensureTrue(!twawr.spilled, msg);
+                            Test.ensureTrue(twawr.nRowsAfterReduce > 0, msg + " (never reduced)");
+                        } else if (mode == 1) {
+                            Test.ensureTrue(twawr.spilled, msg);
+                            Test.ensureTrue(twawr.nRowsAfterReduce > 0, msg);
+                        } else {
+                            Test.ensureTrue(twawr.spilled, msg);
+                        }
+                        twawr.finish();
+                        Test.ensureEqual(results.cumulativeTable().dataToString(), 
+                            expected.dataToString(), msg);
+                    } finally {
+                        twawr.releaseResources();
+                        results.releaseResources();
+                    }
+                }
+            }
+        } finally {
+            maxReducedBytes = oMaxReducedBytes;
+            minRowsToReduce = oMinRowsToReduce;
+        }
+    }
+
+}
@@ -8,7 +8,7 @@ import com.cohort.array.Attributes;
 import com.cohort.array.CharArray;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.array.StringArray;
-import com.cohort.util.Calendar2;
+import com.cohort.util.IsoTimeFormatter;
 import com.cohort.util.File2;
 import com.cohort.util.Math2;
 import com.cohort.util.MustBe;
@@ -62,6 +62,7 @@ public class TableWriterHtmlTable extends TableWriter {
     protected volatile boolean isCharOrString[];
     protected volatile boolean isTimeStamp[];
     protected volatile String time_precision[];
+    protected volatile IsoTimeFormatter isoTimeFormatter[];
     protected volatile String fileAccessBaseUrl[];
     protected volatile String fileAccessSuffix[];
     protected volatile BufferedWriter writer;
@@ -177,6 +178,7 @@ public class TableWriterHtmlTable extends TableWriter {
         if (firstTime) {
             isTimeStamp = new boolean[nColumns];
             time_precision = new String[nColumns];
+            isoTimeFormatter = new IsoTimeFormatter[nColumns];
             fileAccessBaseUrl = new String[nColumns];
             fileAccessSuffix = new String[nColumns];
             int bytesPerRow = (xhtmlMode? 10 : 5) +  //e.g., <tr> </tr> \n
@@ -198,6 +200,7 @@ public class TableWriterHtmlTable extends TableWriter {
                     if (xhtmlMode && tp != null && !tp.startsWith("1970-01-01T00:00:00.0")) 
                         tp = null; //default
                     time_precision[col] = tp;
+                    isoTimeFormatter[col] = new IsoTimeFormatter(tp);
                 }
 
                 if (isTimeStamp[col]) {
@@ -326,8 +329,7 @@ public class TableWriterHtmlTable extends TableWriter {
                     writer.write("<td>");
                     if (Double.isNaN(d)) 
                          s = ""; 
-                    else s = Calendar2.epochSecondsToLimitedIsoStringT(
-                        time_precision[col], d, "");
+                    else s = isoTimeFormatter[col].format(d, "");
                     writer.write(s);
                 } else {
                     s = colPA[col].getString(row);
@@ -7,7 +7,7 @@ package gov.noaa.pfel.erddap.dataset;
 import com.cohort.array.Attributes;
 import com.cohort.array.CharArray;
 import com.cohort.array.PrimitiveArray;
-import com.cohort.util.Calendar2;
+import com.cohort.util.IsoTimeFormatter;
 import com.cohort.util.MustBe;
 import com.cohort.util.SimpleException;
 import com.cohort.util.String2;
@@ -38,6 +38,7 @@ public class TableWriterJson extends TableWriter {
     //set by firstTime
     protected volatile boolean isTimeStamp[];
     protected volatile String time_precision[];
+    protected volatile IsoTimeFormatter isoTimeFormatter[];
     protected volatile BufferedWriter writer;
 
     //other
@@ -100,6 +101,7 @@ public class TableWriterJson extends TableWriter {
         if (firstTime) {
             isTimeStamp = new boolean[nColumns];
             time_precision = new String[nColumns];
+            isoTimeFormatter = new IsoTimeFormatter[nColumns];
             for (int col = 0; col < nColumns; col++) {
                 Attributes catts = table.columnAttributes(col);
                 String u = catts.getString("units");
@@ -111,6 +113,7 @@ public class TableWriterJson extends TableWriter {
                     if (tp != null && !tp.startsWith("1970-01-01T00:00:00.0")) 
                         tp = null; //default
                     time_precision[col] = tp;
+                    isoTimeFormatter[col] = new IsoTimeFormatter(tp);
                 }
             }
 
@@ -172,9 +175,13 @@ public class TableWriterJson extends TableWriter {
                 if (col > 0) writer.write(", "); 
                 if (isTimeStamp[col]) {
                     double d = pas[col].getDouble(row);
-                    writer.write(Double.isNaN(d)? "null" : 
-                        "\"" + Calendar2.epochSecondsToLimitedIsoStringT(
-                        time_precision[col], d, "") + "\"");
+                    if (Double.isNaN(d)) {
+                        writer.write("null");
+                    } else {
+                        writer.write('"');
+                        isoTimeFormatter[col].write(writer, d, "");
+                        writer.write('"');
+                    }
                 } else {
                     writer.write(pas[col].getJsonString(row));
                 }
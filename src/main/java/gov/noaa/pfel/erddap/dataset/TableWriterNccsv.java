@@ -9,6 +9,7 @@ import com.cohort.array.DoubleArray;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.array.StringArray;
 import com.cohort.util.Calendar2;
+import com.cohort.util.IsoTimeFormatter;
 import com.cohort.util.MustBe;
 import com.cohort.util.SimpleException;
 import com.cohort.util.String2;
@@ -38,6 +39,7 @@ public class TableWriterNccsv extends TableWriter {
     protected volatile boolean isLong[];
     protected volatile boolean isTimeStamp[];
     protected volatile String time_precision[];
+    protected volatile IsoTimeFormatter isoTimeFormatter[];
     protected volatile BufferedWriter writer;
 
     public volatile long totalNRows = 0;
@@ -92,6 +94,7 @@ public class TableWriterNccsv extends TableWriter {
             isLong      = new boolean[nColumns];
             isTimeStamp = new boolean[nColumns];
             time_precision = new String[nColumns];
+            isoTimeFormatter = new IsoTimeFormatter[nColumns];
             for (int col = 0; col < nColumns; col++) {
 
                 String tClass = table.getColumn(col).elementClassString();
@@ -103,6 +106,7 @@ public class TableWriterNccsv extends TableWriter {
                 if (isTimeStamp[col]) {
                     tClass = "String";
                     time_precision[col] = catts.getString(EDV.TIME_PRECISION);
+                    isoTimeFormatter[col] = new IsoTimeFormatter(time_precision[col]);
                     catts.set("units", Calendar2.timePrecisionToTimeFormat(time_precision[col]));
                     PrimitiveArray pa = catts.get("actual_range");
                     if (pa != null && pa instanceof DoubleArray && pa.size() == 2) {
@@ -151,8 +155,7 @@ public class TableWriterNccsv extends TableWriter {
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nColumns; col++) {
                 if (isTimeStamp[col]) {
-                    writer.write(Calendar2.epochSecondsToLimitedIsoStringT(
-                        time_precision[col], pas[col].getDouble(row), ""));
+                    isoTimeFormatter[col].write(writer, pas[col].getDouble(row), "");
                 } else {
                     String ts = pas[col].getNccsvDataString(row);
                     writer.write(ts);
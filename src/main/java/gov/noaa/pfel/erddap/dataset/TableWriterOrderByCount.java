@@ -31,7 +31,7 @@ import java.util.BitSet;
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2017-07-12
  */
-public class TableWriterOrderByCount extends TableWriterAll {
+public class TableWriterOrderByCount extends TableWriterAllWithReduce {
 
     //set by constructor
     protected TableWriter otherTableWriter;
@@ -60,62 +60,33 @@ public class TableWriterOrderByCount extends TableWriterAll {
 
 
     /**
-     * This adds the current contents of table (a chunk of data) to the OutputStream.
-     * This calls ensureCompatible each time it is called.
-     * If this is the first time this is called, this does first time things
-     *   (e.g., call OutputStreamSource.outputStream() and write file header).
-     * The number of columns, the column names, and the types of columns 
-     *   must be the same each time this is called.
+     * This reduces a chunk of data: it converts the chunk to the counts for each group.
      *
-     * @param table with destinationValues.
-     *   The table should have missing values stored as destinationMissingValues
-     *   or destinationFillValues.
-     *   This implementation converts them to NaNs for processing, 
-     *   then back to destinationMV and FV when finished.
+     * @param table a chunk of data
      * @throws Throwable if trouble
      */
-    public void writeSome(Table table) throws Throwable {
-        if (table.nRows() == 0) 
-            return;
-
-        //to save time and disk space, this just does a partial job 
-        //  (remove non-max rows from this partial table)
-        //  and leaves perfect job to finish()
+    protected void reduceChunk(Table table) throws Throwable {
         table.orderByCount(orderBy); //this handles missingValues and _FillValues permanently
-
-        //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
-        super.writeSome(table);
     }
 
-
     /**
-     * This processes the cumulativeTable, then writes it to otherTableWriter
-     * If ignoreFinish=true, nothing will be done.
+     * This reduces a table of counts (from reduceChunk) by adding up the
+     * counts for each group.
      *
-     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
+     * @param table the concatenation of tables of counts.
+     *   It will be sorted by the key columns.
+     * @throws Throwable if trouble
      */
-    public void finish() throws Throwable {
-        if (ignoreFinish) 
-            return;
-
-        super.finish();
-
-        Table cumTable = cumulativeTable();
-        releaseResources();
-
-        //combine results
+    protected void reduceReduced(Table table) throws Throwable {
         //missing_value and _FillValue are all done. All data are counts.
-        int nRows = cumTable.nRows();
-        int nCols = cumTable.nColumns();
-        int keyCols[] = cumTable.keyColumnNamesToNumbers("orderByCount",
-            // just get the column names, ignoring rounding e.g. time not time/1day
-            Arrays.stream(orderBy).map((s)->s.split("/")[0]).toArray(size -> new String[size]));
+        int nRows = table.nRows();
+        int nCols = table.nColumns();
+        int keyCols[] = keyCols(table);
         int nKeyCols = keyCols.length;
 
         //sort based on keys
         if (nKeyCols > 0)
-            cumTable.ascendingSort(keyCols); 
+            table.ascendingSort(keyCols); 
         //String2.log(dataToString());
 
         //note which are keyCol
@@ -123,26 +94,9 @@ public class TableWriterOrderByCount extends TableWriterAll {
         for (int kc = 0; kc < nKeyCols; kc++)
             isKeyCol[keyCols[kc]] = true;
 
-        //get pas and set units to "count"
         PrimitiveArray pas[] = new PrimitiveArray[nCols];
-        for (int col = 0; col < nCols; col++) {
-            pas[col] = cumTable.getColumn(col);
-            if (!isKeyCol[col]) {
-                Attributes atts = cumTable.columnAttributes(col);
-                atts.set(   "_FillValue", Integer.MAX_VALUE);
-                atts.remove("actual_range");
-                atts.remove("cf_role");
-                atts.remove("colorBarMinimum");
-                atts.remove("colorBarMaximum");
-                atts.remove("colorBarPalette");
-                atts.remove("colorBarScale");
-                atts.remove("missing_value");
-                String s = atts.getString("standard_name");
-                if (s != null)
-                   atts.set("standard_name", s + " number_of_observations");
-                atts.set(   "units", "count");
-            }
-        }
+        for (int col = 0; col < nCols; col++) 
+            pas[col] = table.getColumn(col);
 
         //walk through the table
         int resultsRow = -1;
@@ -179,7 +133,55 @@ public class TableWriterOrderByCount extends TableWriterAll {
         }
 
         //just keep new group 
-        cumTable.justKeep(keep);
+        table.justKeep(keep);
+    }
+
+    /** This returns the key column numbers. */
+    private int[] keyCols(Table table) {
+        return table.keyColumnNamesToNumbers("orderByCount",
+            // just get the column names, ignoring rounding e.g. time not time/1day
+            Arrays.stream(orderBy).map((s)->s.split("/")[0]).toArray(size -> new String[size]));
+    }
+
+
+    /**
+     * This processes the cumulativeTable, then writes it to otherTableWriter
+     * If ignoreFinish=true, nothing will be done.
+     *
+     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
+     */
+    public void finish() throws Throwable {
+        if (ignoreFinish) 
+            return;
+
+        Table cumTable = finishGathering();
+
+        //set units of the count columns to "count"
+        int nCols = cumTable.nColumns();
+        int keyCols[] = keyCols(cumTable);
+        boolean isKeyCol[] = new boolean[nCols]; //all false
+        for (int kc = 0; kc < keyCols.length; kc++)
+            isKeyCol[keyCols[kc]] = true;
+        for (int col = 0; col < nCols; col++) {
+            if (!isKeyCol[col]) {
+                Attributes atts = cumTable.columnAttributes(col);
+                atts.set(   "_FillValue", Integer.MAX_VALUE);
+                atts.remove("actual_range");
+                atts.remove("cf_role");
+                atts.remove("colorBarMinimum");
+                atts.remove("colorBarMaximum");
+                atts.remove("colorBarPalette");
+                atts.remove("colorBarScale");
+                atts.remove("missing_value");
+                String s = atts.getString("standard_name");
+                if (s != null)
+                   atts.set("standard_name", s + " number_of_observations");
+                atts.set(   "units", "count");
+            }
+        }
+
+        //combine results
+        reduceReduced(cumTable);
 
         //send results to otherTableWriter;
         otherTableWriter.writeAllAndFinish(cumTable);
@@ -32,7 +32,7 @@ import java.util.regex.Pattern;
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2009-05-13
  */
-public class TableWriterOrderByMax extends TableWriterAll {
+public class TableWriterOrderByMax extends TableWriterAllWithReduce {
 
 
     //set by constructor
@@ -66,32 +66,13 @@ public class TableWriterOrderByMax extends TableWriterAll {
 
 
     /**
-     * This adds the current contents of table (a chunk of data) to the OutputStream.
-     * This calls ensureCompatible each time it is called.
-     * If this is the first time this is called, this does first time things
-     *   (e.g., call OutputStreamSource.outputStream() and write file header).
-     * The number of columns, the column names, and the types of columns 
-     *   must be the same each time this is called.
+     * This reduces a chunk of data: it removes the non-max rows.
      *
-     * @param table with destinationValues.
-     *   The table should have missing values stored as destinationMissingValues
-     *   or destinationFillValues.
-     *   This implementation converts them to NaNs for processing, 
-     *   then back to destinationMV and FV when finished.
+     * @param table a chunk of data
      * @throws Throwable if trouble
      */
-    public void writeSome(Table table) throws Throwable {
-        if (table.nRows() == 0) 
-            return;
-
-        //to save time and disk space, this just does a partial job 
-        //  (remove non-max rows from this partial table)
-        //  and leaves perfect job to finish()
+    protected void reduceChunk(Table table) throws Throwable {
         table.orderByMax(orderBy); //this handles missingValues and _FillValues temporarily
-
-        //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
-        super.writeSome(table);
     }
 
     
@@ -105,10 +86,7 @@ public class TableWriterOrderByMax extends TableWriterAll {
         if (ignoreFinish) 
             return;
 
-        super.finish();
-
-        Table cumulativeTable = cumulativeTable();
-        releaseResources();
+        Table cumulativeTable = finishGathering();
         cumulativeTable.orderByMax(orderBy); //this handles missingValues and _FillValues temporarily
         otherTableWriter.writeAllAndFinish(cumulativeTable);
 
@@ -6,7 +6,7 @@ package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.array.Attributes;
 import com.cohort.array.PrimitiveArray;
-import com.cohort.util.Calendar2;
+import com.cohort.util.IsoTimeFormatter;
 import com.cohort.util.MustBe;
 import com.cohort.util.SimpleException;
 import com.cohort.util.String2;
@@ -40,6 +40,7 @@ public class TableWriterSeparatedValue extends TableWriter {
     protected volatile boolean isStringOrChar[];
     protected volatile boolean isTimeStamp[];
     protected volatile String time_precision[];
+    protected volatile IsoTimeFormatter isoTimeFormatter[];
     protected volatile BufferedWriter writer;
 
     public volatile long totalNRows = 0;
@@ -109,6 +110,7 @@ public class TableWriterSeparatedValue extends TableWriter {
         if (firstTime) {
             isTimeStamp = new boolean[nColumns];
             time_precision = new String[nColumns];
+            isoTimeFormatter = new IsoTimeFormatter[nColumns];
             for (int col = 0; col < nColumns; col++) {
                 Attributes catts = table.columnAttributes(col);
                 String u = catts.getString("units");
@@ -120,6 +122,7 @@ public class TableWriterSeparatedValue extends TableWriter {
                     if (tp != null && !tp.startsWith("1970-01-01T00:00:00.0")) 
                         tp = null; //default
                     time_precision[col] = tp;
+                    isoTimeFormatter[col] = new IsoTimeFormatter(tp);
                 }
             }
 
@@ -183,8 +186,7 @@ public class TableWriterSeparatedValue extends TableWriter {
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nColumns; col++) {
                 if (isTimeStamp[col]) {
-                    writer.write(Calendar2.epochSecondsToLimitedIsoStringT(
-                        time_precision[col], pas[col].getDouble(row), ""));
+                    isoTimeFormatter[col].write(writer, pas[col].getDouble(row), "");
                 } else if (isStringOrChar[col]) {
                     writer.write(quoted? pas[col].getNccsvDataString(row) :
                                          pas[col].getTsvString(row));
@@ -0,0 +1,619 @@
+/*
+ * ActionOutbox Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.util.SSR;
+import gov.noaa.pfel.erddap.dataset.EDD;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * ActionOutbox delivers the actions (URL pings and emails) triggered by
+ * changes to datasets (from subscriptions and from datasets' onChange),
+ * so that LoadDatasets doesn't have to wait for them.
+ *
+ * <ul>
+ * <li>Actions are added to a queue which is stored in a PersistentTable
+ *   (so actions which haven't been delivered when ERDDAP is stopped
+ *   will be delivered after it is restarted).
+ * <li>A small pool of threads delivers the actions.
+ * <li>If an action for a given datasetID is still waiting to be delivered
+ *   when there is another change to that dataset, the actions are coalesced:
+ *   just one action will be delivered (with the most recent change and
+ *   the number of changes).
+ * <li>If delivery to a host (or to an email address) fails,
+ *   all actions for that host (or address) are delayed (exponential backoff,
+ *   MIN_BACKOFF_MILLIS to MAX_BACKOFF_MILLIS).
+ *   An action which fails MAX_TRIES times is dropped.
+ *   An action which can never succeed (e.g., to an invalid email address)
+ *   is dropped right away and doesn't cause a backoff.
+ * <li>Actions which set a flag for a dataset on this ERDDAP are
+ *   done immediately (they don't use the network).
+ * </ul>
+ */
+public class ActionOutbox {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+    public static boolean reallyVerbose = false;
+
+    public final static int DEFAULT_nActionThreads = 2;
+    public final static int MAX_TRIES = 8;
+    public final static long MIN_BACKOFF_MILLIS = 60 * 1000L;
+    public final static long MAX_BACKOFF_MILLIS = 60 * 60 * 1000L;
+    public final static int TIMEOUT_MILLIS = 60000;
+
+    //persistentTable columns
+    public final static int statusColumn = 0;        //binaryByte 1
+    public final static int queuedMillisColumn = 1;  //long 20
+    public final static int nChangesColumn = 2;      //int 11
+    public final static int subscriptionColumn = 3;  //boolean 1
+    public final static int datasetIDColumn = 4;     //String 80
+    public final static int actionColumn = 5;        //String 4000
+    public final static int changeColumn = 6;        //String 2000
+
+    //max lengths -- changing these will change/damage the persistentTable
+    public final static int CHANGE_LENGTH = 2000;
+
+    /** This is appended to a change which is too long for the changeColumn (see persistedChange). */
+    public final static String CHANGE_TRUNCATED = 
+        "\n(The rest of the change description was too long to save.)";
+
+    public final static byte STATUS_EMPTY  = (byte)' '; //best since it is default for empty row
+    public final static byte STATUS_QUEUED = (byte)'Q';
+
+    /** The queued (not in flight) deliveries. key=datasetID + "\n" + action.
+     * The iteration order is the order that they were queued. */
+    private final LinkedHashMap<String, Delivery> queued = new LinkedHashMap();
+    /** The empty rows in persistentTable. */
+    private final ArrayDeque<Integer> freeRows = new ArrayDeque();
+    /** key=host, value=long[]{backoffUntilMillis, nConsecutiveFailures} */
+    private final HashMap<String, long[]> hostBackoff = new HashMap();
+    private final PersistentTable persistentTable;
+    private final Thread workers[];
+    private volatile boolean shutDown = false;
+
+    //statistics
+    private int nInFlight = 0;
+    private long nQueued = 0, nCoalesced = 0, nDelivered = 0, nFailedAttempts = 0, nDropped = 0;
+
+    /**
+     * The constructor. This restores the undelivered actions from fullFileName
+     * and starts the delivery threads.
+     *
+     * @param fullFileName the name of the PersistentTable file
+     * @param nThreads the number of delivery threads
+     * @throws IOException if trouble opening or reading the file
+     */
+    public ActionOutbox(String fullFileName, int nThreads) throws IOException {
+        persistentTable = new PersistentTable(fullFileName, "rw",
+            new int[]{
+                PersistentTable.BINARY_BYTE_LENGTH,
+                PersistentTable.LONG_LENGTH,
+                PersistentTable.INT_LENGTH,
+                PersistentTable.BOOLEAN_LENGTH,
+                Subscriptions.DATASETID_LENGTH,
+                Subscriptions.ACTION_LENGTH,
+                CHANGE_LENGTH});
+
+        //restore the undelivered actions
+        int nRows = persistentTable.nRows();
+        for (int row = 0; row < nRows; row++) {
+            if (persistentTable.readBinaryByte(statusColumn, row) != STATUS_QUEUED) {
+                freeRows.add(row);
+                continue;
+            }
+            Delivery d = new Delivery(row,
+                persistentTable.readString(datasetIDColumn, row),
+                persistentTable.readString(actionColumn, row),
+                persistentTable.readBoolean(subscriptionColumn, row),
+                String2.fromJson(persistentTable.readString(changeColumn, row)),
+                persistentTable.readLong(queuedMillisColumn, row));
+            d.nChanges = Math.max(1, persistentTable.readInt(nChangesColumn, row));
+            queued.put(d.key(), d);
+        }
+        if (queued.size() > 0)
+            String2.log("ActionOutbox restored " + queued.size() +
+                " undelivered actions from " + fullFileName);
+
+        workers = new Thread[Math.max(1, nThreads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> deliverLoop(), "ActionOutbox" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * This adds a dataset's actions to the queue (coalescing each with an identical,
+     * not yet delivered action for the same dataset, if any).
+     * All of the actions are written to the file, then the file is flushed once.
+     * Actions which set a flag for a dataset on this ERDDAP are done immediately.
+     * This won't throw an exception.
+     *
+     * @param datasetID the dataset which changed
+     * @param actions the actions, e.g., http://... or mailto:...
+     * @param nSubscriptionActions the first nSubscriptionActions actions are from
+     *   subscriptions; the others are from the dataset's onChange
+     * @param change the description of the change
+     */
+    public void add(String datasetID, StringArray actions, int nSubscriptionActions, 
+        String change) {
+
+        int nActions = actions.size();
+        synchronized (this) {
+            for (int a = 0; a < nActions; a++) {
+                String action = actions.get(a);
+                try {
+                    String trDatasetID = localFlagDatasetID(action);
+                    if (trDatasetID != null) {
+                        EDD.requestReloadASAP(trDatasetID);
+                        continue;
+                    }
+
+                    String key = datasetID + "\n" + action;
+                    Delivery d = queued.get(key);
+                    if (d != null) {
+                        //coalesce
+                        d.change = change;
+                        d.nChanges++;
+                        nCoalesced++;
+                        persistentTable.writeInt(nChangesColumn, d.row, d.nChanges);
+                        persistentTable.writeString(changeColumn, d.row, persistedChange(change));
+                        if (reallyVerbose) String2.log("ActionOutbox coalesced action=" + action +
+                            " nChanges=" + d.nChanges);
+                    } else {
+                        Integer row = freeRows.poll();
+                        d = new Delivery(row == null? persistentTable.addRows(1) - 1 : row.intValue(),
+                            datasetID, action, a < nSubscriptionActions, change, 
+                            System.currentTimeMillis());
+                        write(d);
+                        queued.put(key, d);
+                        nQueued++;
+                    }
+                } catch (Throwable t) {
+                    String2.log("ERROR in ActionOutbox.add(" + datasetID + ", " + action + "):\n" +
+                        MustBe.throwableToString(t));
+                }
+            }
+            try {
+                persistentTable.flush();
+            } catch (Throwable t) {
+                String2.log("ERROR in ActionOutbox.add(" + datasetID + ") while flushing:\n" +
+                    MustBe.throwableToString(t));
+            }
+            notifyAll();
+        }
+    }
+
+    /** This returns the number of actions waiting to be delivered (including those in flight). */
+    public synchronized int size() {
+        return queued.size() + nInFlight;
+    }
+
+    /**
+     * This stops the delivery threads and closes the persistentTable.
+     * Undelivered actions remain in the file and will be delivered after a restart.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutDown = true;
+            notifyAll();
+        }
+        for (int i = 0; i < workers.length; i++)
+            workers[i].interrupt();
+        synchronized (this) {
+            try {
+                persistentTable.close();
+            } catch (Throwable t) {
+            }
+        }
+    }
+
+    /** This returns a one line summary of the outbox's statistics. */
+    public synchronized String statsString() {
+        long now = System.currentTimeMillis();
+        long oldest = now;
+        for (Delivery d : queued.values())
+            oldest = Math.min(oldest, d.queuedMillis);
+        int nBackingOff = 0;
+        for (long[] backoff : hostBackoff.values())
+            if (backoff[0] > now)
+                nBackingOff++;
+        return "ActionOutbox: nWaiting=" + queued.size() + " nInFlight=" + nInFlight +
+            " oldestWaitingSeconds=" + ((now - oldest) / 1000) +
+            " nQueued=" + nQueued + " nCoalesced=" + nCoalesced +
+            " nDelivered=" + nDelivered + " nFailedAttempts=" + nFailedAttempts +
+            " nDropped=" + nDropped + " nHostsBackingOff=" + nBackingOff;
+    }
+
+    /** Each delivery thread runs this. */
+    private void deliverLoop() {
+        while (true) {
+            Delivery d = take();
+            if (d == null)
+                return;
+            Throwable trouble = null;
+            try {
+                if (verbose) String2.log("ActionOutbox delivering action=" + d.action);
+                deliver(d, d.nChanges <= 1? d.change :
+                    d.change + "\n(This is the latest of " + d.nChanges + " changes to this dataset.)");
+            } catch (Throwable t) {
+                trouble = t;
+            }
+            finished(d, trouble);
+        }
+    }
+
+    /**
+     * A delivery thread calls this to deliver an action (via doAction).
+     *
+     * @param d the delivery
+     * @param change the description of the change (perhaps with the number of changes)
+     * @throws Exception if trouble (see doAction)
+     */
+    void deliver(Delivery d, String change) throws Exception {
+        doAction(d.datasetID, d.action, d.isSubscription, change);
+    }
+
+    /**
+     * This waits for a delivery that is ready (its host isn't backing off)
+     * and removes it from the queue.
+     *
+     * @return the delivery, or null if the outbox has been shut down
+     */
+    private synchronized Delivery take() {
+        while (!shutDown) {
+            long now = System.currentTimeMillis();
+            long wakeAt = now + MAX_BACKOFF_MILLIS;
+            Iterator<Delivery> it = queued.values().iterator();
+            while (it.hasNext()) {
+                Delivery d = it.next();
+                long[] backoff = hostBackoff.get(d.host);
+                long readyAt = Math.max(d.notBeforeMillis, backoff == null? 0 : backoff[0]);
+                if (readyAt <= now) {
+                    it.remove();
+                    nInFlight++;
+                    return d;
+                }
+                wakeAt = Math.min(wakeAt, readyAt);
+            }
+            try {
+                wait(Math.max(1, wakeAt - now));
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The delivery thread calls this when it has finished trying to deliver d.
+     *
+     * @param d the delivery
+     * @param trouble null if the delivery succeeded
+     */
+    private synchronized void finished(Delivery d, Throwable trouble) {
+        nInFlight--;
+        long now = System.currentTimeMillis();
+        try {
+            if (trouble == null) {
+                nDelivered++;
+                hostBackoff.remove(d.host);
+                String2.distribute(now - d.queuedMillis, EDStatic.actionDeliveryLagDistribution24);
+                String2.distribute(now - d.queuedMillis, EDStatic.actionDeliveryLagDistributionTotal);
+                release(d);
+                return;
+            }
+
+            nFailedAttempts++;
+            if (trouble instanceof IllegalArgumentException) {
+                //retrying won't help, so don't delay other actions for this host
+                nDropped++;
+                String2.log("ERROR: ActionOutbox dropped datasetID=" + d.datasetID +
+                    " action=" + d.action + ":\n" + MustBe.throwableToString(trouble));
+                Delivery newer = queued.get(d.key());
+                if (newer != null) {
+                    //a newer change was queued while this was in flight: drop it, too
+                    queued.remove(d.key());
+                    nDropped++;
+                    release(newer);
+                }
+                release(d);
+                return;
+            }
+
+            long[] backoff = hostBackoff.get(d.host);
+            if (backoff == null) {
+                backoff = new long[2];
+                hostBackoff.put(d.host, backoff);
+            }
+            backoff[1]++;
+            backoff[0] = now + Math.min(MAX_BACKOFF_MILLIS,
+                MIN_BACKOFF_MILLIS << Math.min(20, backoff[1] - 1));
+            d.nTries++;
+            String2.log("WARNING: ActionOutbox failed to deliver (try #" + d.nTries +
+                ") datasetID=" + d.datasetID + " action=" + d.action +
+                " (retry after " + ((backoff[0] - now) / 1000) + "s):\n" +
+                MustBe.throwableToString(trouble));
+
+            Delivery newer = queued.get(d.key());
+            if (newer != null) {
+                //a newer change was queued while this was in flight: merge into it
+                newer.nChanges += d.nChanges;
+                newer.queuedMillis = Math.min(newer.queuedMillis, d.queuedMillis);
+                newer.nTries = d.nTries;
+                write(newer);
+                release(d);
+            } else if (d.nTries >= MAX_TRIES) {
+                nDropped++;
+                String2.log("ERROR: ActionOutbox dropped datasetID=" + d.datasetID +
+                    " action=" + d.action + " after " + d.nTries + " tries.");
+                release(d);
+            } else {
+                d.notBeforeMillis = backoff[0];
+                queued.put(d.key(), d);
+            }
+        } catch (Throwable t) {
+            String2.log("ERROR in ActionOutbox.finished:\n" + MustBe.throwableToString(t));
+        } finally {
+            try {
+                persistentTable.flush();
+            } catch (Throwable t) {
+            }
+            notifyAll();
+        }
+    }
+
+    /** This writes all of a delivery's info to its row. */
+    private void write(Delivery d) throws IOException {
+        persistentTable.writeLong(   queuedMillisColumn, d.row, d.queuedMillis);
+        persistentTable.writeInt(    nChangesColumn,     d.row, d.nChanges);
+        persistentTable.writeBoolean(subscriptionColumn, d.row, d.isSubscription);
+        persistentTable.writeString( datasetIDColumn,    d.row, d.datasetID);
+        persistentTable.writeString( actionColumn,       d.row, d.action);
+        persistentTable.writeString( changeColumn,       d.row, persistedChange(d.change));
+        persistentTable.writeBinaryByte(statusColumn,    d.row, STATUS_QUEUED);
+    }
+
+    /**
+     * This returns the JSON-encoded change for the changeColumn.
+     * PersistentTable would just cut off a value which is too long (making invalid JSON),
+     * so if the JSON is longer than CHANGE_LENGTH, this shortens the change
+     * (and appends CHANGE_TRUNCATED) so that the JSON fits, and logs a warning.
+     * Only the saved copy (used if ERDDAP is restarted before the action is delivered)
+     * is shortened; the queued delivery has the whole change.
+     *
+     * @param change the description of the change
+     * @return the JSON-encoded (perhaps shortened) change (all ASCII, so 1 byte per char)
+     */
+    static String persistedChange(String change) {
+        String json = String2.toJson(change);
+        if (json.length() <= CHANGE_LENGTH)
+            return json;
+        int n = change.length();
+        while (json.length() > CHANGE_LENGTH && n > 0) {
+            n = Math.max(0, n - Math.max(1, json.length() - CHANGE_LENGTH));
+            json = String2.toJson(change.substring(0, n) + CHANGE_TRUNCATED);
+        }
+        String2.log("WARNING: ActionOutbox saved just the first " + n + " of the " + 
+            change.length() + " characters of a change description.");
+        return json;
+    }
+
+    /** This marks a delivery's row as empty, so it can be reused. */
+    private void release(Delivery d) throws IOException {
+        persistentTable.clearRow(d.row); //so status is STATUS_EMPTY
+        freeRows.add(d.row);
+    }
+
+    /**
+     * If the action sets a flag for a dataset on this ERDDAP, this returns the datasetID.
+     *
+     * @param action
+     * @return the datasetID, or null if the action isn't a setDatasetFlag request for this ERDDAP
+     */
+    public static String localFlagDatasetID(String action) {
+        //e.g., https://coastwatch.pfeg.noaa.gov/erddap/setDatasetFlag.txt?datasetID=ucsdHfrW500&flagKey=##########
+        if ((action.startsWith("http://") || action.startsWith("https://")) &&
+            action.indexOf("/" + EDStatic.warName + "/setDatasetFlag.txt?") > 0 &&
+            EDStatic.urlIsThisComputer(action))
+            return String2.extractCaptureGroup(action, ".*datasetID=(.+?)&.*", 1);
+        return null;
+    }
+
+    /**
+     * This does an action right now.
+     *
+     * @param datasetID the dataset which changed
+     * @param action the action, e.g., http://... or mailto:...
+     * @param isSubscription true if the action is from a subscription
+     * @param change the description of the change
+     * @throws IllegalArgumentException if the action isn't allowed or the email address
+     *   is invalid (retrying won't help)
+     * @throws Exception if trouble
+     */
+    public static void doAction(String datasetID, String action, boolean isSubscription,
+        String change) throws Exception {
+
+        if (action.startsWith("http://") ||
+            action.startsWith("https://")) {
+            String trDatasetID = localFlagDatasetID(action);
+            if (trDatasetID != null) {
+                //a dataset on this ERDDAP! just set the flag
+                EDD.requestReloadASAP(trDatasetID);
+            } else {
+                //but don't get the input stream! I don't need to,
+                //and it is a big security risk.
+                SSR.touchUrl(action, TIMEOUT_MILLIS);
+            }
+        } else if (action.startsWith("mailto:")) {
+            String tEmail = action.substring("mailto:".length());
+            String error = EDStatic.email(tEmail,
+                "datasetID=" + datasetID + " changed.",
+                "datasetID=" + datasetID + " changed.\n" +
+                change + "\n\n*****\n" +
+                (isSubscription && EDStatic.subscriptions != null?
+                    EDStatic.subscriptions.messageToRequestList(tEmail) :
+                    "This action is specified in datasets.xml.\n"));
+                    //It would be nice to include unsubscribe
+                    //info for this action,
+                    //but it isn't easily available.
+            if (error.startsWith(EDStatic.INVALID_EMAIL_ADDRESSES_ERROR))
+                throw new IllegalArgumentException(error);
+            if (error.length() > 0)
+                throw new RuntimeException(error);
+        } else {
+            throw new IllegalArgumentException("The startsWith of action=" +
+                action + " is not allowed!");
+        }
+    }
+
+    /** A queued action. */
+    static class Delivery {
+        final int row;
+        final String datasetID, action, host;
+        final boolean isSubscription;
+        String change;
+        int nChanges = 1, nTries = 0;
+        long queuedMillis, notBeforeMillis = 0;
+
+        Delivery(int tRow, String tDatasetID, String tAction, boolean tIsSubscription,
+            String tChange, long tQueuedMillis) {
+            row = tRow;
+            datasetID = tDatasetID;
+            action = tAction;
+            isSubscription = tIsSubscription;
+            change = tChange;
+            queuedMillis = tQueuedMillis;
+            //key emails by recipient, so one bad address doesn't delay all emails
+            host = action.startsWith("mailto:")? action : File2.getProtocolDomain(action);
+        }
+
+        String key() {
+            return datasetID + "\n" + action;
+        }
+    }
+
+    /** This waits (up to 10 seconds) for the condition to become true. */
+    private static void testWaitFor(BooleanSupplier condition, String msg) {
+        long until = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > until)
+                throw new RuntimeException("ActionOutbox.test timed out waiting for " + msg);
+            Math2.sleep(10);
+        }
+    }
+
+    /**
+     * This tests the per-address backoff (one bad email address doesn't delay
+     * actions to other addresses), dropping undeliverable actions,
+     * and restoring queued actions (with a too-long change) after a restart.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void test() throws Throwable {
+        String2.log("\n*** ActionOutbox.test()");
+        String fileName = EDStatic.fullTestCacheDirectory + "ActionOutbox.test";
+        File2.delete(fileName);
+        String bad = "mailto:bad@example.com";      //fails, so it backs off
+        String good = "mailto:good@example.com";    //is delivered
+        String invalid = "mailto:invalid@example";  //can never succeed, so it is dropped
+        StringBuilder sb = new StringBuilder("change 2 \"quoted\"\n");
+        for (int i = 0; i < 300; i++)
+            sb.append("file" + i + ".nc changed\n");
+        String change2 = sb.toString(); //too long for the changeColumn
+        Test.ensureTrue(String2.toJson(change2).length() > CHANGE_LENGTH, "");
+        ConcurrentHashMap<String, AtomicInteger> nAttempts = new ConcurrentHashMap();
+        ConcurrentHashMap<String, String> lastChange = new ConcurrentHashMap();
+        ActionOutbox outbox = new ActionOutbox(fileName, 2) {
+            void deliver(Delivery d, String change) throws Exception {
+                nAttempts.computeIfAbsent(d.action, k -> new AtomicInteger()).incrementAndGet();
+                lastChange.put(d.action, change);
+                if (d.action.equals(bad))
+                    throw new RuntimeException("test: temporary failure");
+                if (d.action.equals(invalid))
+                    throw new IllegalArgumentException(EDStatic.INVALID_EMAIL_ADDRESSES_ERROR + "test");
+            }
+        };
+        try {
+            StringArray actions = new StringArray(new String[]{bad, good, invalid});
+            outbox.add("testDataset", actions, 3, "change 1");
+            testWaitFor(() -> nAttempts.containsKey(bad) && nAttempts.containsKey(invalid) &&
+                nAttempts.containsKey(good) && outbox.size() == 1, "the first deliveries");
+
+            //just the bad address is backing off
+            long now = System.currentTimeMillis();
+            synchronized (outbox) {
+                Test.ensureEqual(outbox.hostBackoff.size(), 1, outbox.statsString());
+                Test.ensureTrue(outbox.hostBackoff.get(bad)[0] > now, "");
+                Test.ensureEqual(outbox.hostBackoff.get(bad)[1], 1, "");
+                Test.ensureEqual(outbox.nDropped, 1, outbox.statsString());
+                Test.ensureEqual(outbox.nDelivered, 1, outbox.statsString());
+            }
+            Test.ensureTrue(outbox.statsString().endsWith(" nHostsBackingOff=1"), outbox.statsString());
+
+            //another change: the good address gets it right away, the bad one is coalesced and waits
+            outbox.add("testDataset", actions, 3, change2);
+            testWaitFor(() -> nAttempts.get(good).get() == 2 && nAttempts.get(invalid).get() == 2, 
+                "the second deliveries");
+            Test.ensureEqual(lastChange.get(good), change2, ""); //the whole change
+            Math2.sleep(100);
+            Test.ensureEqual(nAttempts.get(bad).get(), 1, "");
+            Test.ensureEqual(outbox.size(), 1, outbox.statsString());
+            synchronized (outbox) {
+                Test.ensureEqual(outbox.hostBackoff.size(), 1, outbox.statsString());
+                Test.ensureEqual(outbox.queued.get("testDataset\n" + bad).nChanges, 2, "");
+            }
+        } finally {
+            outbox.shutdown();
+        }
+
+        //after a restart, the bad address's action is restored (and isn't backing off)
+        //with the change shortened (but valid)
+        String expected = persistedChange(change2);
+        Test.ensureTrue(expected.length() <= CHANGE_LENGTH, "");
+        String expectedChange = String2.fromJson(expected);
+        Test.ensureTrue(expectedChange.endsWith(CHANGE_TRUNCATED), expectedChange);
+        Test.ensureTrue(change2.startsWith(
+            expectedChange.substring(0, expectedChange.length() - CHANGE_TRUNCATED.length())), "");
+        ConcurrentHashMap<String, String> restoredChange = new ConcurrentHashMap();
+        ActionOutbox outbox2 = new ActionOutbox(fileName, 1) {
+            void deliver(Delivery d, String change) throws Exception {
+                restoredChange.put(d.action, change);
+            }
+        };
+        try {
+            testWaitFor(() -> restoredChange.containsKey(bad) && outbox2.size() == 0, 
+                "the restored delivery");
+            Test.ensureEqual(restoredChange.size(), 1, "");
+            Test.ensureEqual(restoredChange.get(bad), expectedChange + 
+                "\n(This is the latest of 2 changes to this dataset.)", "");
+        } finally {
+            outbox2.shutdown();
+            File2.delete(fileName);
+        }
+        String2.log("\n*** ActionOutbox.test() finished successfully");
+    }
+
+}
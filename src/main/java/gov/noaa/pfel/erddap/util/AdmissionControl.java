@@ -0,0 +1,383 @@
+/*
+ * AdmissionControl Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.Math2;
+import com.cohort.util.String2;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * AdmissionControl decides whether Erddap.doGet should handle a request,
+ * so that one client (e.g., a script making 50 simultaneous griddap requests)
+ * can't use all of ERDDAP's resources and starve everyone else.
+ * Clients are identified by their IP address (as resolved by Erddap.doGet
+ * from x-forwarded-for, else the remote address).
+ *
+ * <ul>
+ * <li>If a client already has maxConcurrentPerClient requests in progress,
+ *   the request is rejected with 429 Too Many Requests.
+ * <li>If ERDDAP already has maxConcurrent requests in progress (from all clients),
+ *   the request is rejected with 503 Service Unavailable.
+ * <li>Each client has a token bucket which is refilled at requestsPerMinute
+ *   and holds at most requestBurst tokens. If it is empty, the request is
+ *   rejected with 429 Too Many Requests. Requests which are rejected because
+ *   of the other limits don't use a token.
+ * <li>The responses to each client (all of its concurrent requests together)
+ *   are sent at no more than maxBytesPerSecondPerClient (see throttle()).
+ * </ul>
+ * Rejections include a Retry-After value. A limit of 0 means no limit (the default).
+ * Clients on the exempt list aren't limited.
+ *
+ * <p>Clients which have been idle for IDLE_MILLIS are forgotten, so
+ * statsString() shows the recent top consumers.
+ */
+public class AdmissionControl {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** HttpServletResponse doesn't have a constant for this. */
+    public final static int SC_TOO_MANY_REQUESTS = 429;
+
+    /** The name of the request attribute which holds the Client (set by admit()). */
+    public final static String CLIENT_ATTRIBUTE = "erddap.admissionControl.client";
+
+    public final static long IDLE_MILLIS = 10 * 60 * 1000L; //10 minutes
+    public final static int N_TOP_CONSUMERS = 10;
+
+    private static int maxConcurrent = 0;
+    private static int maxConcurrentPerClient = 0;
+    private static int requestsPerMinute = 0;
+    private static int requestBurst = 0;
+    private static long maxBytesPerSecondPerClient = 0;
+    private static HashSet<String> exempt = new HashSet();
+
+    private final static ConcurrentHashMap<String, Client> clients = new ConcurrentHashMap();
+    private final static AtomicInteger nActive = new AtomicInteger();
+    private final static AtomicLong nRejected429 = new AtomicLong();
+    private final static AtomicLong nRejected503 = new AtomicLong();
+    private static volatile long lastSweepMillis = System.currentTimeMillis();
+
+    /** Why a request was rejected. */
+    public static class Rejection {
+        public final int status;
+        public final int retryAfterSeconds;
+        public final String message;
+
+        Rejection(int tStatus, int tRetryAfterSeconds, String tMessage) {
+            status = tStatus;
+            retryAfterSeconds = Math.max(1, tRetryAfterSeconds);
+            message = tMessage;
+        }
+    }
+
+    /** The information about one client. */
+    static class Client {
+        final String id;
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicLong nRequests = new AtomicLong();
+        final AtomicLong nRejected = new AtomicLong();
+        final AtomicLong nBytes = new AtomicLong();
+        volatile long lastMillis = System.currentTimeMillis();
+
+        //guarded by this
+        private double requestTokens;
+        private long requestTokensMillis;
+        private double byteTokens;
+        private long byteTokensMillis;
+
+        Client(String tId) {
+            id = tId;
+            requestTokens = requestBurst;
+            requestTokensMillis = lastMillis;
+            byteTokens = maxBytesPerSecondPerClient;
+            byteTokensMillis = lastMillis;
+        }
+
+        /**
+         * This tries to take a request token.
+         *
+         * @return 0 if a token was taken, else the number of seconds until one will be available
+         */
+        synchronized int takeRequestToken(long now) {
+            if (requestsPerMinute <= 0)
+                return 0;
+            requestTokens = Math.min(requestBurst,
+                requestTokens + (now - requestTokensMillis) * requestsPerMinute / 60000.0);
+            requestTokensMillis = now;
+            if (requestTokens >= 1) {
+                requestTokens -= 1;
+                return 0;
+            }
+            return Math2.roundToInt(Math.ceil((1 - requestTokens) * 60.0 / requestsPerMinute));
+        }
+
+        /**
+         * This takes nBytes of byte tokens (perhaps going into debt).
+         *
+         * @return the number of milliseconds the caller should wait before sending the bytes
+         */
+        synchronized long takeByteTokens(long now, int n) {
+            long max = maxBytesPerSecondPerClient;
+            if (max <= 0)
+                return 0;
+            byteTokens = Math.min(max, byteTokens + (now - byteTokensMillis) * max / 1000.0);
+            byteTokensMillis = now;
+            byteTokens -= n;
+            return byteTokens >= 0? 0 : (long)Math.ceil(-byteTokens * 1000 / max);
+        }
+    }
+
+    /**
+     * This sets the limits. 0 (or less) means no limit.
+     *
+     * @param tMaxConcurrent the maximum number of requests in progress (from all clients)
+     * @param tMaxConcurrentPerClient the maximum number of requests in progress from one client
+     * @param tRequestsPerMinute the rate at which one client can make requests
+     * @param tRequestBurst the number of requests a client can make at once
+     *   (before requestsPerMinute applies). If &lt;=0, requestsPerMinute is used.
+     * @param tMaxBytesPerSecondPerClient the maximum rate at which responses are sent to one client
+     * @param tExempt the IP addresses of clients which aren't limited (may be null)
+     */
+    public static void configure(int tMaxConcurrent, int tMaxConcurrentPerClient,
+        int tRequestsPerMinute, int tRequestBurst, long tMaxBytesPerSecondPerClient,
+        String tExempt[]) {
+
+        maxConcurrent = Math.max(0, tMaxConcurrent);
+        maxConcurrentPerClient = Math.max(0, tMaxConcurrentPerClient);
+        requestsPerMinute = Math.max(0, tRequestsPerMinute);
+        requestBurst = tRequestBurst > 0? tRequestBurst : Math.max(1, requestsPerMinute);
+        maxBytesPerSecondPerClient = Math.max(0, tMaxBytesPerSecondPerClient);
+        HashSet<String> hs = new HashSet();
+        if (tExempt != null)
+            for (String s : tExempt)
+                hs.add(s);
+        exempt = hs; //set atomically
+        clients.clear();
+        if (verbose) String2.log("AdmissionControl maxConcurrent=" + maxConcurrent +
+            " maxConcurrentPerClient=" + maxConcurrentPerClient +
+            " requestsPerMinute=" + requestsPerMinute + " requestBurst=" + requestBurst +
+            " maxBytesPerSecondPerClient=" + maxBytesPerSecondPerClient +
+            " exempt=" + String2.toCSSVString(tExempt));
+    }
+
+    /**
+     * Erddap.doGet calls this to see if a request should be handled.
+     * If this returns null, the caller must call release(request) when the request is done.
+     *
+     * @param request
+     * @param ipAddress the client's IP address from x-forwarded-for
+     *   (or "(unknownIPAddress)", then request.getRemoteAddr() is used)
+     * @return null if the request is admitted, else the Rejection
+     */
+    public static Rejection admit(HttpServletRequest request, String ipAddress) {
+        long now = System.currentTimeMillis();
+        if (now - lastSweepMillis > IDLE_MILLIS / 10)
+            sweep(now);
+
+        String id = ipAddress;
+        if (!String2.isSomething(id) || id.startsWith("(")) {
+            id = request.getRemoteAddr();
+            if (!String2.isSomething(id))
+                id = "(unknownIPAddress)";
+        }
+        //Count this request as active before checking the limit (so simultaneous
+        //requests can't all pass the check), and do it in compute() so sweep()
+        //can't remove the Client in between.
+        int clientActive[] = new int[1];
+        Client client = clients.compute(id, (k, c) -> {
+            if (c == null)
+                c = new Client(k);
+            c.lastMillis = now;
+            clientActive[0] = c.active.incrementAndGet();
+            return c;
+        });
+        boolean isExempt = exempt.contains(id);
+
+        //per-client concurrency limit
+        if (!isExempt && maxConcurrentPerClient > 0 && clientActive[0] > maxConcurrentPerClient) {
+            client.active.decrementAndGet();
+            return reject(client, SC_TOO_MANY_REQUESTS, 5,
+                "This client already has " + maxConcurrentPerClient +
+                " requests in progress. Please wait for one to finish.");
+        }
+
+        //server-wide limit
+        int tActive = nActive.incrementAndGet();
+        if (!isExempt && maxConcurrent > 0 && tActive > maxConcurrent) {
+            nActive.decrementAndGet();
+            client.active.decrementAndGet();
+            return reject(client, HttpServletResponse.SC_SERVICE_UNAVAILABLE, 10,
+                "ERDDAP is busy (" + maxConcurrent + " requests in progress). Please try again later.");
+        }
+
+        //per-client rate limit (last, so a request rejected above doesn't use a token)
+        if (!isExempt) {
+            int retryAfter = client.takeRequestToken(now);
+            if (retryAfter > 0) {
+                nActive.decrementAndGet();
+                client.active.decrementAndGet();
+                return reject(client, SC_TOO_MANY_REQUESTS, retryAfter,
+                    "This client has made more than " + requestsPerMinute +
+                    " requests per minute. Please wait and try again.");
+            }
+        }
+
+        client.nRequests.incrementAndGet();
+        request.setAttribute(CLIENT_ATTRIBUTE, client);
+        return null;
+    }
+
+    private static Rejection reject(Client client, int status, int retryAfterSeconds, String msg) {
+        client.nRejected.incrementAndGet();
+        (status == SC_TOO_MANY_REQUESTS? nRejected429 : nRejected503).incrementAndGet();
+        return new Rejection(status, retryAfterSeconds, msg);
+    }
+
+    /**
+     * Erddap.doGet calls this when an admitted request is done.
+     * This is a no-op if the request wasn't admitted.
+     *
+     * @param request
+     */
+    public static void release(HttpServletRequest request) {
+        Object o = request.getAttribute(CLIENT_ATTRIBUTE);
+        if (!(o instanceof Client))
+            return;
+        request.removeAttribute(CLIENT_ATTRIBUTE);
+        Client client = (Client)o;
+        client.active.decrementAndGet();
+        client.lastMillis = System.currentTimeMillis();
+        nActive.decrementAndGet();
+    }
+
+    /**
+     * This returns an outputStream which counts the bytes sent to the request's client
+     * and, if maxBytesPerSecondPerClient is set and the client isn't exempt,
+     * limits the rate at which they are sent.
+     * OutputStreamFromHttpResponse calls this with the response's outputStream.
+     *
+     * @param request
+     * @param out the response's outputStream
+     * @return the (perhaps wrapped) outputStream
+     */
+    public static OutputStream throttle(HttpServletRequest request, OutputStream out) {
+        Object o = request.getAttribute(CLIENT_ATTRIBUTE);
+        if (!(o instanceof Client))
+            return out;
+        Client client = (Client)o;
+        return new ThrottledOutputStream(out, client, !exempt.contains(client.id));
+    }
+
+    /** This counts (and perhaps delays) the bytes sent to a client. */
+    static class ThrottledOutputStream extends FilterOutputStream {
+        private final Client client;
+        private final boolean limit;
+
+        ThrottledOutputStream(OutputStream out, Client tClient, boolean tLimit) {
+            super(out);
+            client = tClient;
+            limit = tLimit;
+        }
+
+        public void write(int b) throws IOException {
+            account(1);
+            out.write(b);
+        }
+
+        public void write(byte b[], int off, int len) throws IOException {
+            //send big arrays in pieces, so the rate is smooth
+            int chunk = limit && maxBytesPerSecondPerClient > 0?
+                (int)Math.max(1024, Math.min(65536, maxBytesPerSecondPerClient / 4)) : len;
+            while (len > 0) {
+                int n = Math.min(chunk, len);
+                account(n);
+                out.write(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void account(int n) throws IOException {
+            client.nBytes.addAndGet(n);
+            if (!limit)
+                return;
+            long waitMillis = client.takeByteTokens(System.currentTimeMillis(), n);
+            if (waitMillis > 0) {
+                try {
+                    Thread.sleep(waitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling the response.");
+                }
+            }
+        }
+    }
+
+    /**
+     * This forgets the clients which have been idle for IDLE_MILLIS.
+     * The check and the removal are atomic (with respect to admit()'s compute()),
+     * so a Client which admit() is using is never removed.
+     */
+    private static void sweep(long now) {
+        lastSweepMillis = now;
+        for (String id : clients.keySet())
+            clients.computeIfPresent(id, (k, c) ->
+                c.active.get() == 0 && now - c.lastMillis > IDLE_MILLIS? null : c);
+    }
+
+    /** The number of requests in progress (which were admitted). */
+    public static int nActive() {
+        return nActive.get();
+    }
+
+    /**
+     * This returns the limits, the numbers of rejected requests, and the recent
+     * top consumers (by bytes sent), for the status page.
+     */
+    public static String statsString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("AdmissionControl: " + nActive.get() + " requests in progress, " +
+            "rejected since startup: " + nRejected429.get() + " (429) " +
+            nRejected503.get() + " (503)\n" +
+            "  limits (0=none): maxConcurrent=" + maxConcurrent +
+            " maxConcurrentPerClient=" + maxConcurrentPerClient +
+            " requestsPerMinute=" + requestsPerMinute +
+            (requestsPerMinute > 0? " requestBurst=" + requestBurst : "") +
+            " maxBytesPerSecondPerClient=" + maxBytesPerSecondPerClient + "\n");
+        ArrayList<Client> list = new ArrayList(clients.values());
+        if (list.size() == 0)
+            return sb.toString();
+        list.sort((a, b) -> Long.compare(b.nBytes.get(), a.nBytes.get()));
+        sb.append("  Top consumers in the last " + (IDLE_MILLIS / 60000) +
+            " minutes (active, requests, rejected, MB sent):\n");
+        int n = Math.min(N_TOP_CONSUMERS, list.size());
+        for (int i = 0; i < n; i++) {
+            Client client = list.get(i);
+            sb.append(String2.left("    " + client.id, 44) +
+                String2.right("" + client.active.get(), 6) +
+                String2.right("" + client.nRequests.get(), 10) +
+                String2.right("" + client.nRejected.get(), 10) +
+                String2.right("" + client.nBytes.get() / Math2.BytesPerMB, 10) + "\n");
+        }
+        return sb.toString();
+    }
+
+}
@@ -19,6 +19,7 @@ import com.cohort.util.String2LogOutputStream;
 import com.cohort.util.Test;
 import com.cohort.util.XML;
 
+import gov.noaa.pfel.coastwatch.griddata.NcFileCache;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
@@ -30,8 +31,10 @@ import gov.noaa.pfel.coastwatch.sgt.PathCartesianRenderer;
 import gov.noaa.pfel.coastwatch.sgt.SgtGraph;
 import gov.noaa.pfel.coastwatch.sgt.SgtMap;
 import gov.noaa.pfel.coastwatch.sgt.SgtUtil;
+import gov.noaa.pfel.coastwatch.util.FileLocks;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
 import gov.noaa.pfel.coastwatch.util.HtmlWidgets;
+import gov.noaa.pfel.coastwatch.util.HttpClientPool;
 import gov.noaa.pfel.coastwatch.util.RegexFilenameFilter;
 import gov.noaa.pfel.coastwatch.util.SSR;
 import gov.noaa.pfel.coastwatch.util.Tally;
@@ -69,12 +72,9 @@ import javax.servlet.ServletException;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.FieldCache;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Version;
@@ -233,6 +233,12 @@ public static boolean developmentMode = false;
     public static int taskThreadFailedDistributionTotal[]    = new int[String2.DistributionSize];
     public static int taskThreadSucceededDistribution24[]    = new int[String2.DistributionSize];
     public static int taskThreadSucceededDistributionTotal[] = new int[String2.DistributionSize];
+    public static int datasetLoadFailedDistribution24[]       = new int[String2.DistributionSize];
+    public static int datasetLoadFailedDistributionTotal[]    = new int[String2.DistributionSize];
+    public static int datasetLoadSucceededDistribution24[]    = new int[String2.DistributionSize];
+    public static int datasetLoadSucceededDistributionTotal[] = new int[String2.DistributionSize];
+    public static int actionDeliveryLagDistribution24[]       = new int[String2.DistributionSize];
+    public static int actionDeliveryLagDistributionTotal[]    = new int[String2.DistributionSize];
 
     public static String datasetsThatFailedToLoad = "";
     public static String errorsDuringMajorReload = "";
@@ -268,6 +274,35 @@ public static boolean developmentMode = false;
     public static int nGridThreads                   = DEFAULT_nGridThreads;   //will be a valid number 1+
     public static int nTableThreads                  = DEFAULT_nTableThreads; //will be a valid number 1+
 
+    //the server-wide pool of threads which read source data for requests (set by setup.xml <nReadThreads>)
+    public final static int DEFAULT_nReadThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static ReadScheduler readScheduler = new ReadScheduler(DEFAULT_nReadThreads);
+
+    //the number of threads LoadDatasets uses to construct datasets (set by setup.xml <nLoadDatasetsThreads>)
+    public final static int DEFAULT_nLoadDatasetsThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    public static int nLoadDatasetsThreads = DEFAULT_nLoadDatasetsThreads; //will be a valid number 1+
+
+    //the number of threads which deliver subscription and onChange actions (set by setup.xml <nActionThreads>)
+    public static int nActionThreads = ActionOutbox.DEFAULT_nActionThreads; //will be a valid number 1+
+
+    //how long the shared Oikos context (for the Axiom station datasets) is fresh (set by setup.xml <oikosContextCacheMinutes>)
+    public static int oikosContextCacheMinutes = 60; //will be a valid number 1+
+
+    //the max number of idle open NetcdfFile handles kept by NcFileCache (set by setup.xml <ncFileCacheSize>).
+    //Default is 0 on Windows, since Windows can't delete or rename files that are open.
+    public final static int DEFAULT_ncFileCacheSize = String2.OSIsWindows? 0 : 100;
+
+    //the max memory (in MB) used by the in-memory SubsetIndexes of subsetVariables tables (set by setup.xml <subsetIndexMB>).
+    public final static int DEFAULT_subsetIndexMB = (int)(Math2.maxSafeMemory / 10 / Math2.BytesPerMB);
+
+    //WMS tile requests are rendered in blocks of wmsMetaTileSize x wmsMetaTileSize tiles (set by setup.xml <wmsMetaTileSize>)
+    public final static int DEFAULT_wmsMetaTileSize = 4;
+    public static int wmsMetaTileSize = DEFAULT_wmsMetaTileSize; //will be a valid number 1+ (1 = no meta-tiles)
+    //after an update, the WMS tiles of these datasets are pre-rendered for zoom levels 0 to wmsWarmupMaxZoom
+    //(set by setup.xml <wmsWarmupDatasetIDs> and <wmsWarmupMaxZoom>)
+    public static String wmsWarmupDatasetIDs[] = new String[0];
+    public static int wmsWarmupMaxZoom = 2; //will be a valid number 0+
+
     //things that were in setup.xml (discouraged) and are now in datasets.xml (v2.00+)
     public final static int    DEFAULT_cacheMinutes            = 60;
     public final static String DEFAULT_drawLandMask            = "under";  //or "over"
@@ -345,30 +380,15 @@ public static boolean developmentMode = false;
      */
     public static ConcurrentHashMap runningThreads = new ConcurrentHashMap(16, 0.75f, 4); 
 
-    //taskThread variables
-    //Funnelling all taskThread tasks through one taskThread ensures
-    //  that the memory requirements, bandwidth usage, cpu usage,
-    //  and stress on remote servers will be minimal 
-    //  (although at the cost of not doing the tasks faster / in parallel).
-    //In a grid of erddaps, each will have its own taskThread, which is appropriate.
-    public static ArrayList taskList = new ArrayList(); //keep here in case TaskThread needs to be restarted
-    private static TaskThread taskThread;
-    /** lastAssignedTask is used by EDDxxxCopy instances to keep track of 
-     * the number of the last task assigned to taskThread for a given datasetID.
-     * key=datasetID value=Integer(task#)
-     */
-    public static ConcurrentHashMap lastAssignedTask = new ConcurrentHashMap(16, 0.75f, 4); 
-    /** 
-     * This returns the index number of the task in taskList (-1,0..) of the last completed task
-     * (successful or not).
-     * nFinishedTasks = lastFinishedTask + 1;
-     */
-    public static volatile int lastFinishedTask = -1;
-    /** 
-     * This returns the index number of the task in taskList (0..) that will be started
-     * when the current task is finished.
-     */
-    public static volatile int nextTask = 0;
+    //The tasks (e.g., for EDDGridCopy and EDDTableCopy) are done by taskQueue's pool of TaskThreads,
+    //with per-type and per-host limits so that the memory requirements, bandwidth usage, cpu usage,
+    //and stress on remote servers are limited.
+    //In a grid of erddaps, each will have its own taskQueue, which is appropriate.
+    //nTaskThreads, taskMaxPerHost, and taskMaxPerType are set by setup.xml.
+    public final static int DEFAULT_nTaskThreads = 4;
+    public final static int DEFAULT_taskMaxPerHost = 2;
+    public static TaskQueue taskQueue = new TaskQueue(1, TaskThread.DEFAULT_MAX_PER_TYPE, 
+        DEFAULT_taskMaxPerHost, null); //replaced by one from setup.xml's info
 
 
     /** This recieves key=startOfLocalSourceUrl value=startOfPublicSourceUrl from LoadDatasets 
@@ -416,13 +436,7 @@ public static boolean developmentMode = false;
     public  static Directory     luceneDirectory;
     public  static IndexWriter   luceneIndexWriter; //is thread-safe
 
-    //made/returned by luceneIndexSearcher
-    private static IndexReader   luceneIndexReader; //is thread-safe, but only need/want one
-    private static Object        luceneIndexReaderLock = Calendar2.newGCalendarLocal();
-    public  static boolean       needNewLuceneIndexReader = true;  
-    private static IndexSearcher luceneIndexSearcher; //is thread-safe, so can reuse
-    private static String[]      luceneDatasetIDFieldCache;
-
+    //the IndexReader+IndexSearcher are managed by LuceneSearcherManager
     //also see updateLucene in LoadDatasets
 
     public final static int defaultItemsPerPage = 1000; //1000, for /info/index.xxx and search
@@ -589,7 +603,7 @@ public static boolean developmentMode = false;
 
     public static boolean listPrivateDatasets, 
         reallyVerbose,
-        subscriptionSystemActive,  convertersActive, slideSorterActive,
+        subscriptionSystemActive,  convertersActive, slideSorterActive, metricsActive,
         fgdcActive, iso19115Active, jsonldActive, geoServicesRestActive, 
         filesActive, dataProviderFormActive, 
         outOfDateDatasetsActive, politicalBoundariesActive, 
@@ -638,6 +652,7 @@ public static boolean developmentMode = false;
         //downloadDirUrl,
         computerName; //e.g., coastwatch (or "")
     public static Subscriptions subscriptions;
+    public static ActionOutbox actionOutbox; //null until Erddap makes it
 
 
     /** These values are loaded from the [contentDirectory]messages.xml file (if present)
@@ -1779,6 +1794,43 @@ wcsActive = false; //setup.getBoolean(         "wcsActive",                  fal
         partialRequestMaxBytes     = setup.getInt(             "partialRequestMaxBytes",     DEFAULT_partialRequestMaxBytes);
         partialRequestMaxCells     = setup.getInt(             "partialRequestMaxCells",     DEFAULT_partialRequestMaxCells);
         unusualActivity            = setup.getInt(             "unusualActivity",            DEFAULT_unusualActivity);
+        readScheduler              = new ReadScheduler(Math2.minMax(1, 1000, 
+                                     setup.getInt(             "nReadThreads",               DEFAULT_nReadThreads)));
+        nLoadDatasetsThreads       = Math2.minMax(1, 100, 
+                                     setup.getInt(             "nLoadDatasetsThreads",       DEFAULT_nLoadDatasetsThreads));
+        nActionThreads             = Math2.minMax(1, 100, 
+                                     setup.getInt(             "nActionThreads",             nActionThreads));
+        HttpClientPool.configure(    setup.getBoolean(         "httpClientPool",             true),
+                                     setup.getInt(             "httpMaxConnections",         HttpClientPool.DEFAULT_MAX_CONNECTIONS),
+                                     setup.getInt(             "httpMaxConnectionsPerHost",  HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                                     Math2.minMax(1, 3600, 
+                                     setup.getInt(             "httpReadTimeoutSeconds",     HttpClientPool.DEFAULT_READ_TIMEOUT_MILLIS / 1000)) * 1000,
+                                     Math2.minMax(1, 3600, 
+                                     setup.getInt(             "httpConnectionWaitSeconds",  HttpClientPool.DEFAULT_CONNECTION_WAIT_MILLIS / 1000)) * 1000);
+        AdmissionControl.configure(  setup.getInt(             "maxConcurrentRequests",      0),
+                                     setup.getInt(             "maxConcurrentRequestsPerClient", 0),
+                                     setup.getInt(             "maxRequestsPerMinutePerClient", 0),
+                                     setup.getInt(             "maxRequestBurstPerClient",   0),
+                                     setup.getInt(             "maxKBytesPerSecondPerClient", 0) * 1024L,
+                                     StringArray.fromCSVNoBlanks(
+                                     setup.getString(          "admissionControlExempt",     "")).toArray());
+        taskQueue                  = new TaskQueue(Math2.minMax(1, 100, 
+                                     setup.getInt(             "nTaskThreads",               DEFAULT_nTaskThreads)),
+                                     parseTaskMaxPerType(
+                                     setup.getString(          "taskMaxPerType",             "")),
+                                     setup.getInt(             "taskMaxPerHost",             DEFAULT_taskMaxPerHost),
+                                     bigParentDirectory + "taskQueue.txt");
+        taskQueue.restore(); //before the datasets are loaded
+        oikosContextCacheMinutes   = Math2.minMax(1, 10080, 
+                                     setup.getInt(             "oikosContextCacheMinutes",   oikosContextCacheMinutes));
+        NcFileCache.setMaxSize(      setup.getInt(             "ncFileCacheSize",            DEFAULT_ncFileCacheSize));
+        SubsetIndex.setMaxMB(        setup.getInt(             "subsetIndexMB",              DEFAULT_subsetIndexMB));
+        wmsMetaTileSize            = Math2.minMax(1, 8, 
+                                     setup.getInt(             "wmsMetaTileSize",            DEFAULT_wmsMetaTileSize));
+        wmsWarmupDatasetIDs        = StringArray.fromCSVNoBlanks(
+                                     setup.getString(          "wmsWarmupDatasetIDs",        "")).toArray();
+        wmsWarmupMaxZoom           = Math2.minMax(0, 6, 
+                                     setup.getInt(             "wmsWarmupMaxZoom",           wmsWarmupMaxZoom));
 
         lowResLogoImageFile        = setup.getNotNothingString("lowResLogoImageFile",        errorInMethod);
         quickRestart               = setup.getBoolean(         "quickRestart",               true);      
@@ -1787,6 +1839,7 @@ wcsActive = false; //setup.getBoolean(         "wcsActive",                  fal
 
         subscribeToRemoteErddapDataset = setup.getBoolean(     "subscribeToRemoteErddapDataset", true);
         subscriptionSystemActive   = setup.getBoolean(         "subscriptionSystemActive",   true);
+        metricsActive              = setup.getBoolean(         "metricsActive",              true);
         convertersActive           = setup.getBoolean(         "convertersActive",           true);
         slideSorterActive          = setup.getBoolean(         "slideSorterActive",          true);
         variablesMustHaveIoosCategory = setup.getBoolean(      "variablesMustHaveIoosCategory", true);
@@ -3408,6 +3461,11 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
     }
 
 
+    /** The start of the error that email() returns if the one emailAddress is invalid
+     * (so trying again won't help). */
+    public final static String INVALID_EMAIL_ADDRESSES_ERROR = 
+        "Error in EDStatic.email: invalid emailAddresses=";
+
     /**
      * This sends the specified email to the emailAddresses.
      * <br>This won't throw an exception if trouble.
@@ -3507,7 +3565,7 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
                  emailAddresses[0].startsWith("nobody@") || 
                  emailAddresses[0].startsWith("your.name") || 
                  emailAddresses[0].startsWith("your.email"))) {
-                errors = "Error in EDStatic.email: invalid emailAddresses=" + emailAddressesCSSV;
+                errors = INVALID_EMAIL_ADDRESSES_ERROR + emailAddressesCSSV;
                 String2.log(errors);
             }
 
@@ -3571,8 +3629,7 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         
         //is the request too big under any circumstances?
         if (nBytes > Math2.maxSafeMemory) {
-            tally.add("Request refused: not enough memory ever (since startup)", attributeTo);
-            tally.add("Request refused: not enough memory ever (since last daily report)", attributeTo);
+            tally.addSince("Request refused: not enough memory ever", attributeTo);
             throw new RuntimeException(Math2.memoryTooMuchData + "  " +
                 MessageFormat.format(Math2.memoryThanSafe, "" + (nBytes / Math2.BytesPerMB),  
                     "" + (Math2.maxSafeMemory / Math2.BytesPerMB)) +
@@ -3597,12 +3654,10 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
             memoryInUse = Math2.getMemoryInUse();
         }
         if (memoryInUse > Math2.maxSafeMemory) { 
-            tally.add("MemoryInUse > MaxSafeMemory (since startup)", attributeTo);
-            tally.add("MemoryInUse > MaxSafeMemory (since last daily report)", attributeTo);
+            tally.addSince("MemoryInUse > MaxSafeMemory", attributeTo);
         }
         if (memoryInUse + nBytes > Math2.maxSafeMemory) {
-            tally.add("Request refused: not enough memory currently (since startup)", attributeTo);
-            tally.add("Request refused: not enough memory currently (since last daily report)", attributeTo);
+            tally.addSince("Request refused: not enough memory currently", attributeTo);
             throw new RuntimeException(Math2.memoryTooMuchData + "  " +
                 MessageFormat.format(Math2.memoryThanCurrentlySafe,
                     "" + (nBytes / Math2.BytesPerMB), 
@@ -3624,8 +3679,7 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
      */
     public static void ensureArraySizeOkay(long tSize, String attributeTo) { 
         if (tSize >= Integer.MAX_VALUE) {
-            tally.add("Request refused: array size >= Integer.MAX_VALUE (since startup)", attributeTo);
-            tally.add("Request refused: array size >= Integer.MAX_VALUE (since last daily report)", attributeTo);
+            tally.addSince("Request refused: array size >= Integer.MAX_VALUE", attributeTo);
             throw new RuntimeException(Math2.memoryTooMuchData + "  " +
                 MessageFormat.format(Math2.memoryArraySize, 
                     "" + tSize, "" + Integer.MAX_VALUE) +
@@ -3684,16 +3738,11 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         sb.append(String2.getBriefDistributionStatistics(responseTimesDistribution24) + "\n");
         sb.append("Response Succeeded Time (since startup)                 ");
         sb.append(String2.getBriefDistributionStatistics(responseTimesDistributionTotal) + "\n");
+        sb.append(Metrics.statusString());
+        sb.append(AdmissionControl.statsString());
 
-        synchronized(taskList) { //all task-related things synch on taskList
-            ensureTaskThreadIsRunningIfNeeded();  //clients (like this class) are responsible for checking on it
-            long tElapsedTime = taskThread == null? -1 : taskThread.elapsedTime();
-            sb.append("TaskThread has finished " + (lastFinishedTask + 1) + " out of " + 
-                taskList.size() + " tasks.  " +
-                (tElapsedTime < 0? 
-                   "Currently, no task is running.\n" : 
-                   "The current task has been running for " + Calendar2.elapsedTimeString(tElapsedTime) + ".\n"));
-        }
+        ensureTaskThreadIsRunningIfNeeded();  //clients (like this class) are responsible for checking on it
+        sb.append(taskQueue.statsString() + "\n");
         sb.append("TaskThread Failed    Time (since last Daily Report)     ");
         sb.append(String2.getBriefDistributionStatistics(taskThreadFailedDistribution24) + "\n");
         sb.append("TaskThread Failed    Time (since startup)               ");
@@ -3702,6 +3751,13 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         sb.append(String2.getBriefDistributionStatistics(taskThreadSucceededDistribution24) + "\n");
         sb.append("TaskThread Succeeded Time (since startup)               ");
         sb.append(String2.getBriefDistributionStatistics(taskThreadSucceededDistributionTotal) + "\n");
+
+        if (actionOutbox != null) 
+            sb.append(actionOutbox.statsString() + "\n");
+        sb.append("Action Delivery Lag  Time (since last Daily Report)     ");
+        sb.append(String2.getBriefDistributionStatistics(actionDeliveryLagDistribution24) + "\n");
+        sb.append("Action Delivery Lag  Time (since startup)               ");
+        sb.append(String2.getBriefDistributionStatistics(actionDeliveryLagDistributionTotal) + "\n");
     }
 
     /**
@@ -3754,6 +3810,16 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         sb.append(String2.getDistributionStatistics(taskThreadSucceededDistributionTotal)); sb.append('\n');
         sb.append('\n');
 
+        sb.append("Dataset Load Failed Time Distribution (since last Daily Report):\n");
+        sb.append(String2.getDistributionStatistics(datasetLoadFailedDistribution24)); sb.append('\n');
+        sb.append("Dataset Load Failed Time Distribution (since startup):\n");
+        sb.append(String2.getDistributionStatistics(datasetLoadFailedDistributionTotal)); sb.append('\n');
+        sb.append("Dataset Load Succeeded Time Distribution (since last Daily Report):\n");
+        sb.append(String2.getDistributionStatistics(datasetLoadSucceededDistribution24)); sb.append('\n');
+        sb.append("Dataset Load Succeeded Time Distribution (since startup):\n");
+        sb.append(String2.getDistributionStatistics(datasetLoadSucceededDistributionTotal)); sb.append('\n');
+        sb.append('\n');
+
         sb.append(SgtMap.topographyStats() + "\n");
         sb.append(GSHHS.statsString() + "\n");
         sb.append(SgtMap.nationalBoundaries.statsString() + "\n");
@@ -3761,6 +3827,20 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         sb.append(SgtMap.rivers.statsString() + "\n");
         sb.append(SgtUtil.isBufferedImageAccelerated() + "\n");
         sb.append(String2.canonicalStatistics() + "\n");
+        sb.append(readScheduler.statsString() + "\n");
+        sb.append(NcFileCache.statsString() + "\n");
+        sb.append(HttpClientPool.statsString() + "\n");
+        sb.append(FileLocks.statsString() + "\n");
+        sb.append(SubsetIndex.statsString() + "\n");
+        sb.append(EDDTableFromFilesDataCache.allStatsString() + "\n");
+        sb.append(EDDGridChunkCache.allStatsString() + "\n");
+        sb.append(EDDFileTableJournal.statsString() + "\n");
+        sb.append(OikosContextCache.sharedStatsString() + "\n");
+        if (useOriginalSearchEngine)
+            sb.append(OriginalSearchIndex.statsString() + "\n");
+        if (useLuceneSearchEngine)
+            sb.append(LuceneSearcherManager.statsString() + "\n");
+        sb.append(EDDFileScan.statusString());
         sb.append('\n');
 
     }
@@ -3949,8 +4029,7 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
 
         String message = "The user is not authorized to make that request."; //default
         try {
-            tally.add("Request refused: not authorized (since startup)", datasetID); 
-            tally.add("Request refused: not authorized (since last daily report)", datasetID);
+            tally.addSince("Request refused: not authorized", datasetID);
 
             if (datasetID != null && datasetID.length() > 0) 
                 message = MessageFormat.format(
@@ -4105,6 +4184,25 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
             //shutdown Cassandra clusters/sessions
             EDDTableFromCassandra.shutdown();
 
+            //stop the shared source-reading threads
+            readScheduler.shutdown();
+
+            //save the unfinished tasks and stop the TaskThreads
+            taskQueue.shutdown();
+
+            //stop delivering actions (undelivered actions are in the outbox's file)
+            if (actionOutbox != null)
+                actionOutbox.shutdown();
+
+            //close cached open .nc files
+            NcFileCache.clear();
+
+            //close the pooled connections to remote servers
+            HttpClientPool.shutdown();
+
+            //free the in-memory subset indexes
+            SubsetIndex.clear();
+
             //interrupt all of them
             for (int i = 0; i < names.length; i++) {
                 try {
@@ -4163,16 +4261,7 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
             if (useLuceneSearchEngine) 
                 String2.log("stopping lucene..."); 
 
-            try { 
-                if (luceneIndexSearcher != null) luceneIndexSearcher.close(); 
-            } catch (Throwable t) {}
-            luceneIndexSearcher = null;
-
-            try {
-                if (luceneIndexReader   != null) luceneIndexReader.close();  
-            } catch (Throwable t) {}
-            luceneIndexReader = null;
-            luceneDatasetIDFieldCache = null;
+            LuceneSearcherManager.close();
 
             try {
                 if (luceneIndexWriter   != null) 
@@ -4218,102 +4307,70 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         }
     }
 
-    /**
-     * This checks if the task thread is running and not stalled.
-     * If it is stalled, this will stop it.
-     *
-     * @return true if the task thread is running.
-     *    If false, taskThread will be null.
-     */
-    public static boolean isTaskThreadRunning() {
-        synchronized(taskList) { //all task-related things synch on taskList
-            if (taskThread == null)
-                return false;
-
-            if (taskThread.isAlive()) {
-                //is it stalled?
-                long eTime = taskThread.elapsedTime();
-                long maxTime = 6 * Calendar2.MILLIS_PER_HOUR; //appropriate??? user settable???
-                if (eTime > maxTime) {  
-
-                    //taskThread is stalled; interrupt it
-                    String tError = "\n*** Error: EDStatic is interrupting a stalled taskThread (" +
-                        Calendar2.elapsedTimeString(eTime) + " > " + 
-                        Calendar2.elapsedTimeString(maxTime) + ") at " + 
-                        Calendar2.getCurrentISODateTimeStringLocalTZ();
-                    email(emailEverythingToCsv, "taskThread Stalled", tError);
-                    String2.log("\n*** " + tError);
-
-                    stopThread(taskThread, 10); //short time; it is already in trouble
-                    //runningThreads.remove   not necessary since new one is put() in below
-                    lastFinishedTask = nextTask - 1;
-                    taskThread = null;
-                    return false;
-                }
-                return true;
-            } else {
-                //it isn't alive
-                String2.log("\n*** EDStatic noticed that taskThread is finished (" + 
-                    Calendar2.getCurrentISODateTimeStringLocalTZ() + ")\n");
-                lastFinishedTask = nextTask - 1;
-                taskThread = null;
-                return false;
-            }
-        }
-    }
-
     /** 
-     * This ensures the task thread is running if there are tasks to do
+     * This ensures the TaskThreads are running if there are tasks to do,
+     * and stops and replaces any that are stalled.
      */
     public static void ensureTaskThreadIsRunningIfNeeded() {
-        synchronized(taskList) { //all task-related things synch on taskList
-            try {
-                //this checks if it is running and not stalled
-                if (isTaskThreadRunning())
-                    return;
-                
-                //taskThread isn't running
-                //Are there no tasks to do? 
-                int nPending = taskList.size() - nextTask;
-                if (nPending <= 0) 
-                    return; //no need to start it
-
-                //need to start a new taskThread
-                taskThread = new TaskThread(nextTask);
-                runningThreads.put(taskThread.getName(), taskThread); 
-                String2.log("\n*** new taskThread started at " + 
-                    Calendar2.getCurrentISODateTimeStringLocalTZ() + " nPendingTasks=" + nPending + "\n");
-                taskThread.start();
-                return;            
-            } catch (Throwable t) {
-            }
-        }
+        taskQueue.ensureWorkersRunning();
     }
 
     /**
      * This returns the number of unfinished tasks.
      */
     public static int nUnfinishedTasks() {
-        return (taskList.size() - lastFinishedTask) - 1;
+        return taskQueue.nUnfinished();
+    }
+
+    /**
+     * This returns the number of unfinished tasks for a dataset.
+     * Task creators (e.g., EDDGridCopy) check that this is 0 
+     * (i.e., the dataset's previous tasks are all done) before creating new tasks,
+     * so there is no need to check if a new task duplicates an unfinished task.
+     *
+     * @param tDatasetID
+     * @return the number of unfinished tasks for the dataset
+     */
+    public static int nUnfinishedTasks(String tDatasetID) {
+        return taskQueue.nUnfinished(tDatasetID);
     }
 
-    /** This adds a task to the taskList if it (other than TASK_SET_FLAG)
-     * isn't already on the taskList.
-     * @return the task number that was assigned to the task,
-     *   or -1 if it was a duplicate task.
+    /** This adds a task to the taskQueue.
+     *
+     * @param tDatasetID the dataset which the task is for
+     * @param taskOA the task (see the TASK_ constants in TaskThread)
+     * @return the task number that was assigned to the task
      */
-    public static int addTask(Object taskOA[]) {
-        synchronized(taskList) { //all task-related things synch on taskList
+    public static int addTask(String tDatasetID, Object taskOA[]) {
+        return taskQueue.add(tDatasetID, taskOA);
+    }
 
-            //Note that all task creators check that
-            //   EDStatic.lastFinishedTask >= lastAssignedTask(datasetID).  I.E., tasks are all done,
-            //before again creating new tasks.
-            //So no need to see if this new task duplicates an existing unfinished task.  
-            
-            //add the task to the list
-            taskList.add(taskOA);
-            return taskList.size() - 1;
+    /**
+     * This parses setup.xml's &lt;taskMaxPerType&gt;, 
+     * e.g., "DOWNLOAD=4, MAKE_A_DATAFILE=2".
+     * Types which aren't specified get the TaskThread.DEFAULT_MAX_PER_TYPE value.
+     *
+     * @param csv the setup.xml value (may be null or "")
+     * @return the maximum number of simultaneously running tasks of each type
+     *    (parallels TaskThread.TASK_NAMES)
+     */
+    public static int[] parseTaskMaxPerType(String csv) {
+        int max[] = TaskThread.DEFAULT_MAX_PER_TYPE.clone();
+        String parts[] = StringArray.arrayFromCSV(csv == null? "" : csv);
+        for (int i = 0; i < parts.length; i++) {
+            int po = parts[i].indexOf('=');
+            int type = po < 0? -1 : 
+                String2.indexOf(TaskThread.TASK_NAMES, parts[i].substring(0, po).trim());
+            int n = po < 0? Integer.MAX_VALUE : String2.parseInt(parts[i].substring(po + 1).trim());
+            if (type < 0 || n < 1 || n == Integer.MAX_VALUE) {
+                if (parts[i].length() > 0) 
+                    String2.log("WARNING: invalid <taskMaxPerType> item: " + parts[i]);
+                continue;
+            }
+            if (type != TaskThread.TASK_SET_FLAG.intValue())
+                max[type] = n;
         }
+        return max;
     }
 
     /**
@@ -4579,94 +4636,6 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         }
     }
 
-    /** 
-     * This returns the Lucene IndexSearcher and datasetIDFieldCache (thread-safe).
-     * IndexSearch uses IndexReader (also thread-safe).
-     * IndexReader works on a snapshot of an index, 
-     * so it is recreated if flagged at end of LoadDatasetsevery 
-     * via needNewLuceneIndexReader.
-     *
-     * @return Object[2]: [0]=a luceneIndexSearcher (thread-safe), or null if trouble.
-     *    [1]=luceneDatasetIDFieldCache, or null if trouble.
-     *    Either both will be null or both will be !null.
-     */
-    public static Object[] luceneIndexSearcher() {
-
-        //synchronize 
-        synchronized (luceneIndexReaderLock) {
-
-            //need a new indexReader?
-            //(indexReader is thread-safe, but only need one)
-            if (luceneIndexReader == null || needNewLuceneIndexReader ||
-                luceneIndexSearcher == null) {
-
-                //clear out old one
-                try { 
-                    if (luceneIndexSearcher != null) luceneIndexSearcher.close(); 
-                } catch (Throwable t) {}
-                luceneIndexSearcher = null;
-
-                try {
-                    if (luceneIndexReader   != null) luceneIndexReader.close();  
-                } catch (Throwable t) {}
-                luceneIndexReader = null;
-                luceneDatasetIDFieldCache = null;
-
-                needNewLuceneIndexReader = true;
-
-                //create a new one
-                try {
-                    long rTime = System.currentTimeMillis();
-                    luceneIndexReader = IndexReader.open(luceneDirectory); // read-only=true
-                    luceneIndexSearcher = new IndexSearcher(luceneIndexReader);
-                    String2.log("  new luceneIndexReader+Searcher time=" + 
-                        (System.currentTimeMillis() - rTime) + "ms");
-
-                    //create the luceneDatasetIDFieldCache
-                    //save memory by sharing the canonical strings  
-                    //(EDD.ensureValid makes datasetID's canonical)
-                    rTime = System.currentTimeMillis();
-                    luceneDatasetIDFieldCache = FieldCache.DEFAULT.getStrings(luceneIndexReader, 
-                        "datasetID");
-                    int n = luceneDatasetIDFieldCache.length;
-                    for (int i = 0; i < n; i++)
-                        luceneDatasetIDFieldCache[i] = String2.canonical(luceneDatasetIDFieldCache[i]);
-                    String2.log("  new luceneDatasetIDFieldCache time=" + 
-                        (System.currentTimeMillis() - rTime) + "ms");
-
-                    //if successful, we no longer needNewLuceneIndexReader
-                    needNewLuceneIndexReader = false;  
-                    //if successful, fall through
-
-                } catch (Throwable t) {
-                    String subject = String2.ERROR + " while creating Lucene Searcher";
-                    String msg = MustBe.throwableToString(t);
-                    email(emailEverythingToCsv, subject, msg);
-                    String2.log(subject + "\n" + msg);            
-
-                    //clear out old one
-                    try { 
-                        if (luceneIndexSearcher != null) luceneIndexSearcher.close(); 
-                    } catch (Throwable t2) {}
-                    luceneIndexSearcher = null;
-
-                    try {
-                        if (luceneIndexReader   != null) luceneIndexReader.close();  
-                    } catch (Throwable t2) {}
-                    luceneIndexReader = null;
-                    luceneDatasetIDFieldCache = null;
-
-                    needNewLuceneIndexReader = true;
-
-                    //return
-                    return new Object[]{null, null};
-                }
-            }
-
-            return new Object[]{luceneIndexSearcher, luceneDatasetIDFieldCache};
-        }
-    }
-
     /** 
      * This parses a query with luceneQueryParser (not thread-safe).
      *
@@ -5020,15 +4989,11 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         try {
             //if previous tasks are still running, return
             ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
-            Integer datasetLastAssignedTask = (Integer)lastAssignedTask.get(tDatasetID);
-            boolean pendingTasks = datasetLastAssignedTask != null &&  
-                lastFinishedTask < datasetLastAssignedTask.intValue();
+            int nPendingTasks = nUnfinishedTasks(tDatasetID);
             if (verbose) 
                 String2.log("  " + tClassName + 
-                    ".makeCopyFileTasks: lastFinishedTask=" + lastFinishedTask + 
-                    " < datasetLastAssignedTask(" + tDatasetID + ")=" + datasetLastAssignedTask + 
-                    "? pendingTasks=" + pendingTasks);
-            if (pendingTasks) 
+                    ".makeCopyFileTasks: nUnfinishedTasks(" + tDatasetID + ")=" + nPendingTasks);
+            if (nPendingTasks > 0) 
                 return 0;
 
             //make sure local dir exists or can be created
@@ -5113,7 +5078,7 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
                     taskOA[3] = new Long(remoteLastMod.get(remoteI));  //or if unknown?
                     nFilesToDownload++;
                     int tTaskNumber = nFilesToDownload <= maxTasks? 
-                        (lastTask = addTask(taskOA)) : -nFilesToDownload;                        
+                        (lastTask = addTask(tDatasetID, taskOA)) : -nFilesToDownload;                        
                     if (reallyVerbose)
                         String2.log( 
                             (tTaskNumber < 0? "% didn't create" : "% created") +
@@ -5133,10 +5098,9 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
                 Object taskOA[] = new Object[2];
                 taskOA[0] = TaskThread.TASK_SET_FLAG;
                 taskOA[1] = tDatasetID;
-                lastTask = addTask(taskOA); //TASK_SET_FLAG will always be added
+                lastTask = addTask(tDatasetID, taskOA); //TASK_SET_FLAG will always be added
                 if (reallyVerbose)
                     String2.log("% created task#" + lastTask + " TASK_SET_FLAG " + tDatasetID);
-                lastAssignedTask.put(tDatasetID, new Integer(lastTask));
                 ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
             }
 
@@ -5293,8 +5257,12 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
                 msg = "Payload Too Large: " + msg;
             else if (errorNo == HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE) //http error 416
                 msg = "Requested Range Not Satisfiable: " + msg;
+            else if (errorNo == AdmissionControl.SC_TOO_MANY_REQUESTS) //http error 429
+                msg = "Too Many Requests: " + msg;
             else if (errorNo == HttpServletResponse.SC_INTERNAL_SERVER_ERROR) //http error 500
                 msg = "Internal Server Error: " + msg;
+            else if (errorNo == HttpServletResponse.SC_SERVICE_UNAVAILABLE) //http error 503
+                msg = "Service Unavailable: " + msg;
 
             //always log the error
             String fullMsg = 
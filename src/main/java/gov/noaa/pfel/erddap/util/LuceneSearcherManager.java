@@ -0,0 +1,350 @@
+/*
+ * LuceneSearcherManager Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+
+/**
+ * This manages the Lucene IndexSearcher (and its IndexReader and datasetID FieldCache)
+ * which searches use.
+ *
+ * <p>A Searcher is a snapshot of the index. Searches acquire() the current Searcher
+ * (without a global lock) and release() it when done.
+ * Each Searcher is reference counted, so it is only closed when the manager
+ * has replaced it and the last search which uses it has released it.
+ * refresh() (called by LoadDatasets.updateLucene() after it commits changes)
+ * opens and warms a new Searcher (the reader, the datasetID cache, and the
+ * most frequent queries of the old Searcher) while searches keep using the
+ * old one, then swaps them atomically.
+ *
+ * <p>Each Searcher caches the hits (datasetIDs, best to worst) of up to maxCachedQueries
+ * queries. When the cache is full, the least frequently used query is removed.
+ * The cache is thrown away with the Searcher, so it is never stale.
+ *
+ * <p>This is thread-safe.
+ */
+public class LuceneSearcherManager {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The maximum number of queries whose hits are cached by each Searcher. 0 disables the cache. */
+    public static int maxCachedQueries = 100;
+
+    final static AtomicReference<Searcher> current = new AtomicReference(); //package-private for tests
+    private final static ReentrantLock refreshLock = new ReentrantLock();
+
+    private final static AtomicLong nRefreshes = new AtomicLong();
+    private final static AtomicLong nRefreshFailures = new AtomicLong();
+    private final static AtomicLong nWarmFailures = new AtomicLong();
+    private final static AtomicLong nSearches = new AtomicLong();
+    private final static AtomicLong nCacheHits = new AtomicLong();
+    private final static AtomicLong lastRefreshMillis = new AtomicLong();
+
+    private static class CachedQuery {
+        final Query query;
+        final String hits[];
+        final AtomicLong nUses;
+
+        CachedQuery(Query tQuery, String tHits[], long tNUses) {
+            query = tQuery;
+            hits = tHits;
+            nUses = new AtomicLong(tNUses);
+        }
+    }
+
+    /** A reference-counted snapshot of the index. */
+    public static class Searcher {
+        private final IndexReader indexReader;
+        private final IndexSearcher indexSearcher;
+        private final String datasetIDFieldCache[];
+        private final AtomicInteger refCount = new AtomicInteger(1); //the manager's reference
+        private final ConcurrentHashMap<String, CachedQuery> queryCache = new ConcurrentHashMap();
+
+        private Searcher(IndexReader tIndexReader, IndexSearcher tIndexSearcher,
+            String tDatasetIDFieldCache[]) {
+            indexReader = tIndexReader;
+            indexSearcher = tIndexSearcher;
+            datasetIDFieldCache = tDatasetIDFieldCache;
+        }
+
+        /**
+         * This does a search (or gets the hits from the cache).
+         *
+         * @param query  The same query (as defined by query.toString()) always gets the same hits from this Searcher.
+         * @return the datasetIDs of the hits, best to worst. Don't change the array.
+         * @throws Exception if trouble
+         */
+        public String[] search(Query query) throws Exception {
+            nSearches.incrementAndGet();
+            String key = query.toString();
+            CachedQuery cq = queryCache.get(key);
+            if (cq != null) {
+                cq.nUses.incrementAndGet();
+                nCacheHits.incrementAndGet();
+                return cq.hits;
+            }
+            String hits[] = hits(query);
+            cache(key, new CachedQuery(query, hits, 1));
+            return hits;
+        }
+
+        /** This searches the index. */
+        private String[] hits(Query query) throws Exception {
+            long time = System.currentTimeMillis();
+            ScoreDoc scoreDocs[] = indexSearcher.search(query,
+                Math.max(1, indexSearcher.maxDoc())).scoreDocs; //max n search results
+            int nHits = scoreDocs.length;
+            String hits[] = new String[nHits];
+            for (int i = 0; i < nHits; i++)
+                hits[i] = datasetIDFieldCache[scoreDocs[i].doc]; //doc#
+            if (verbose)
+                String2.log("  luceneQuery nMatches=" + nHits +
+                    " time=" + (System.currentTimeMillis() - time) + "ms");
+            return hits;
+        }
+
+        /** This adds a query to the cache, removing the least frequently used query if the cache is full. */
+        private void cache(String key, CachedQuery cq) {
+            if (maxCachedQueries <= 0)
+                return;
+            while (queryCache.size() >= maxCachedQueries) {
+                String minKey = null;
+                long minUses = Long.MAX_VALUE;
+                Iterator<Map.Entry<String, CachedQuery>> it = queryCache.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, CachedQuery> me = it.next();
+                    long uses = me.getValue().nUses.get();
+                    if (uses < minUses) {
+                        minUses = uses;
+                        minKey = me.getKey();
+                    }
+                }
+                if (minKey == null)
+                    break;
+                queryCache.remove(minKey);
+            }
+            queryCache.putIfAbsent(key, cq);
+        }
+
+        /** This returns true if the query's hits are in the cache. */
+        boolean isCached(Query query) {
+            return queryCache.containsKey(query.toString());
+        }
+
+        /** This returns true if the Searcher has been closed (its last reference was released). */
+        boolean isClosed() {
+            return refCount.get() <= 0;
+        }
+
+        /** This gets another reference, unless the Searcher has already been closed. */
+        boolean tryIncRef() {
+            while (true) {
+                int count = refCount.get();
+                if (count <= 0)
+                    return false;
+                if (refCount.compareAndSet(count, count + 1))
+                    return true;
+            }
+        }
+
+        /** This releases a reference and closes the Searcher if it was the last one. */
+        private void decRef() {
+            if (refCount.decrementAndGet() != 0)
+                return;
+            try {
+                indexSearcher.close();
+            } catch (Throwable t) {}
+            try {
+                indexReader.close();
+            } catch (Throwable t) {}
+            queryCache.clear();
+        }
+    }
+
+    /**
+     * This gets the current Searcher. The caller must call release(searcher)
+     * (in a finally clause) when done with it.
+     * If there isn't a Searcher yet, this tries to make one.
+     *
+     * @return the current Searcher, or null if there is none
+     *   (e.g., trouble or another thread is making the first one).
+     *   Then callers should use the original search engine.
+     */
+    public static Searcher acquire() {
+        while (true) {
+            Searcher searcher = current.get();
+            if (searcher == null) {
+                //don't make searches wait
+                if (!refreshLock.tryLock())
+                    return null;
+                try {
+                    if (current.get() == null)
+                        refreshNow(EDStatic.luceneDirectory);
+                } finally {
+                    refreshLock.unlock();
+                }
+                searcher = current.get();
+                if (searcher == null)
+                    return null;
+            }
+            if (searcher.tryIncRef())
+                return searcher;
+            //else it was just replaced; try again
+        }
+    }
+
+    /**
+     * This releases a Searcher from acquire().
+     *
+     * @param searcher  If null, nothing is done.
+     */
+    public static void release(Searcher searcher) {
+        if (searcher != null)
+            searcher.decRef();
+    }
+
+    /**
+     * This makes a new Searcher for the current contents of the index and
+     * swaps it in. Searches use the old Searcher until the new one is ready.
+     * If there is trouble, the old Searcher is kept.
+     */
+    public static void refresh() {
+        refresh(EDStatic.luceneDirectory);
+    }
+
+    /**
+     * This is like refresh(), but uses the index in the specified directory.
+     *
+     * @param directory the Lucene index's directory
+     */
+    static void refresh(Directory directory) {
+        refreshLock.lock();
+        try {
+            refreshNow(directory);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /** The caller must hold refreshLock. */
+    private static void refreshNow(Directory directory) {
+        IndexReader reader = null;
+        IndexSearcher searcher = null;
+        try {
+            long rTime = System.currentTimeMillis();
+            reader = IndexReader.open(directory); // read-only=true
+            searcher = new IndexSearcher(reader);
+            String2.log("  new luceneIndexReader+Searcher time=" +
+                (System.currentTimeMillis() - rTime) + "ms");
+
+            //create the datasetIDFieldCache
+            //save memory by sharing the canonical strings
+            //(EDD.ensureValid makes datasetID's canonical)
+            rTime = System.currentTimeMillis();
+            String fieldCache[] = FieldCache.DEFAULT.getStrings(reader, "datasetID");
+            int n = fieldCache.length;
+            for (int i = 0; i < n; i++)
+                fieldCache[i] = String2.canonical(fieldCache[i]);
+            String2.log("  new luceneDatasetIDFieldCache time=" +
+                (System.currentTimeMillis() - rTime) + "ms");
+            Searcher newSearcher = new Searcher(reader, searcher, fieldCache);
+
+            //warm the query cache with the old Searcher's most frequent queries
+            //(a query which fails is just not warmed; the new Searcher is still used)
+            Searcher oldSearcher = current.get();
+            if (oldSearcher != null && oldSearcher.tryIncRef()) {
+                try {
+                    rTime = System.currentTimeMillis();
+                    ArrayList<CachedQuery> cqs = new ArrayList(oldSearcher.queryCache.values());
+                    Collections.sort(cqs, (a, b) -> Long.compare(b.nUses.get(), a.nUses.get()));
+                    int nWarm = Math.min(cqs.size(), maxCachedQueries);
+                    int nFailed = 0;
+                    for (int i = 0; i < nWarm; i++) {
+                        CachedQuery cq = cqs.get(i);
+                        try {
+                            newSearcher.cache(cq.query.toString(),
+                                new CachedQuery(cq.query, newSearcher.hits(cq.query),
+                                    (cq.nUses.get() + 1) / 2)); //decay the old counts
+                        } catch (Throwable t) {
+                            nFailed++;
+                            String2.log("  unable to warm lucene query=" + cq.query + "\n" +
+                                MustBe.throwableToString(t));
+                        }
+                    }
+                    nWarmFailures.addAndGet(nFailed);
+                    String2.log("  warmed " + (nWarm - nFailed) + " lucene queries (" + 
+                        nFailed + " failed) time=" +
+                        (System.currentTimeMillis() - rTime) + "ms");
+                } finally {
+                    oldSearcher.decRef();
+                }
+            }
+
+            //swap
+            oldSearcher = current.getAndSet(newSearcher);
+            if (oldSearcher != null)
+                oldSearcher.decRef(); //the manager's reference
+            nRefreshes.incrementAndGet();
+            lastRefreshMillis.set(System.currentTimeMillis());
+
+        } catch (Throwable t) {
+            nRefreshFailures.incrementAndGet();
+            String subject = String2.ERROR + " while creating Lucene Searcher";
+            String msg = MustBe.throwableToString(t);
+            EDStatic.email(EDStatic.emailEverythingToCsv, subject, msg);
+            String2.log(subject + "\n" + msg);
+
+            //clear out the new one
+            try {
+                if (searcher != null) searcher.close();
+            } catch (Throwable t2) {}
+            try {
+                if (reader != null) reader.close();
+            } catch (Throwable t2) {}
+        }
+    }
+
+    /** This is called when ERDDAP shuts down. Searches in progress can finish. */
+    public static void close() {
+        Searcher oldSearcher = current.getAndSet(null);
+        if (oldSearcher != null)
+            oldSearcher.decRef();
+    }
+
+    /** This returns the statistics for the status page. */
+    public static String statsString() {
+        Searcher searcher = current.get();
+        return "LuceneSearcherManager: nSearches=" + nSearches.get() +
+            " nQueryCacheHits=" + nCacheHits.get() +
+            " nCachedQueries=" + (searcher == null? 0 : searcher.queryCache.size()) +
+            " nRefreshes=" + nRefreshes.get() + " nRefreshFailures=" + nRefreshFailures.get() +
+            " nWarmFailures=" + nWarmFailures.get() +
+            " lastRefresh=" + (lastRefreshMillis.get() == 0? "never" :
+                (System.currentTimeMillis() - lastRefreshMillis.get()) / 1000 + "s ago");
+    }
+
+}
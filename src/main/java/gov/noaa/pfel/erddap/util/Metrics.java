@@ -0,0 +1,356 @@
+/*
+ * Metrics Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.String2;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import gov.noaa.pfel.coastwatch.util.Tally;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Metrics holds ERDDAP's request metrics (in a metrics-core MetricRegistry):
+ * latency timers (with percentiles) per protocol, per file type, and per dataset;
+ * the number of requests in flight; the total number of requests;
+ * the number of requests which failed, were refused because the requester is
+ * on the requestBlacklist, or were rejected by AdmissionControl;
+ * and gauges (e.g., the number of datasets) registered by other classes.
+ *
+ * <p>Erddap.doGet calls requestStarted() and requestFinished().
+ * Code which knows the datasetID and file type of a request (e.g., Erddap.doDap)
+ * calls setDatasetAndFileType() so the request's time is also added to those timers.
+ * Blacklisted and rejected requests aren't timed (they are refused before
+ * the protocol is known, and their times would just be noise in the other timers).
+ * The number of timers is bounded: requests for unknown protocols and
+ * file types beyond MAX_FILE_TYPES are timed in an OTHER timer
+ * (so requests for made-up URLs can't make an unlimited number of metrics).
+ *
+ * <p>writePrometheus() writes all of the metrics (and the "(since startup)"
+ * categories of EDStatic.tally) in the Prometheus text format,
+ * for the /erddap/metrics web service.
+ */
+public class Metrics {
+
+    /** The names of the request attributes set by setDatasetAndFileType. */
+    public final static String DATASET_ID_ATTRIBUTE = "erddap.metrics.datasetID";
+    public final static String FILE_TYPE_ATTRIBUTE = "erddap.metrics.fileType";
+
+    /**
+     * The protocols (the first part of the URL path after /erddap/) which have their own timers.
+     * Others are timed in the OTHER timer. This must be sorted.
+     */
+    public final static String PROTOCOLS[] = {"categorize", "convert", "download",
+        "files", "griddap", "images", "index", "info", "metadata", "opensearch1.1",
+        "public", "rest", "rss", "search", "sos", "subscriptions", "tabledap", "wms"};
+
+    /** The name of the timer for other protocols and file types. */
+    public final static String OTHER = "(other)";
+
+    /** The maximum number of file types which have their own timers. */
+    public final static int MAX_FILE_TYPES = 100;
+
+    /** The quantiles which are written for each timer. */
+    private final static double QUANTILES[] = {0.5, 0.75, 0.95, 0.99, 0.999};
+
+    /** The statuses of finished requests (for requestFinished). */
+    public final static String SUCCEEDED   = "succeeded";
+    public final static String FAILED      = "failed";
+    public final static String BLACKLISTED = "blacklisted";
+    public final static String REJECTED    = "rejected";
+
+    public final static MetricRegistry registry = new MetricRegistry();
+    public final static Counter inFlight    = registry.counter("requests.inFlight");
+    public final static Meter total         = registry.meter("requests.total");
+    public final static Meter failed        = registry.meter("requests.failed");
+    public final static Meter blacklisted   = registry.meter("requests.blacklisted");
+    public final static Meter rejected      = registry.meter("requests.rejected");
+
+    //key=protocol, fileType, or datasetID
+    private final static ConcurrentHashMap<String, RequestTimer> protocolTimers = new ConcurrentHashMap();
+    private final static ConcurrentHashMap<String, RequestTimer> fileTypeTimers = new ConcurrentHashMap();
+    private final static ConcurrentHashMap<String, RequestTimer> datasetTimers = new ConcurrentHashMap();
+
+    /** A Timer and the sum of the times (which Timer doesn't keep), for Prometheus' _sum. */
+    private static class RequestTimer {
+        final Timer timer;
+        final AtomicLong sumMillis = new AtomicLong();
+
+        RequestTimer(Timer tTimer) {
+            timer = tTimer;
+        }
+
+        void update(long millis) {
+            timer.update(millis, TimeUnit.MILLISECONDS);
+            sumMillis.addAndGet(millis);
+        }
+    }
+
+    /** Erddap.doGet calls this when a request starts. */
+    public static void requestStarted() {
+        total.mark();
+        inFlight.inc();
+    }
+
+    /**
+     * Erddap.doGet calls this when a request is finished.
+     * This won't throw an exception.
+     *
+     * @param request the request (which may have the attributes set by setDatasetAndFileType)
+     * @param protocol e.g., griddap (or null if not known)
+     * @param millis the response time
+     * @param status SUCCEEDED, FAILED, BLACKLISTED (the requester is on the 
+     *   requestBlacklist), or REJECTED (by AdmissionControl)
+     */
+    public static void requestFinished(HttpServletRequest request, String protocol,
+        long millis, String status) {
+
+        inFlight.dec();
+        try {
+            if (BLACKLISTED.equals(status)) {
+                blacklisted.mark();
+                return;
+            }
+            if (REJECTED.equals(status)) {
+                rejected.mark();
+                return;
+            }
+            if (!SUCCEEDED.equals(status))
+                failed.mark();
+            timer(protocolTimers, "request.protocol.", protocolKey(protocol)).update(millis);
+            Object fileType = request.getAttribute(FILE_TYPE_ATTRIBUTE);
+            if (fileType != null) {
+                String key = fileType.toString();
+                if (!fileTypeTimers.containsKey(key) && fileTypeTimers.size() >= MAX_FILE_TYPES)
+                    key = OTHER;
+                timer(fileTypeTimers, "request.fileType.", key).update(millis);
+            }
+            //the datasetID is always a loaded dataset's (and see removeDataset)
+            Object datasetID = request.getAttribute(DATASET_ID_ATTRIBUTE);
+            if (datasetID != null)
+                timer(datasetTimers, "request.dataset.", datasetID.toString()).update(millis);
+        } catch (Throwable t) {
+            String2.log("ERROR in Metrics.requestFinished: " + t.toString());
+        }
+    }
+
+    /**
+     * This returns the name of the timer for a protocol.
+     *
+     * @param protocol the first part of the URL path after /erddap/ (or null)
+     * @return the protocol (or "index" for index.*) if it is one of the PROTOCOLS,
+     *   "(none)" if the protocol is null or "", or else OTHER.
+     */
+    static String protocolKey(String protocol) {
+        if (!String2.isSomething(protocol))
+            return "(none)";
+        if (protocol.startsWith("index."))
+            return "index";
+        return Arrays.binarySearch(PROTOCOLS, protocol) >= 0? protocol : OTHER;
+    }
+
+    /**
+     * This notes a request's datasetID and file type (so that the request's time will be
+     * added to the timers for that dataset and file type).
+     *
+     * @param request
+     * @param datasetID
+     * @param fileType e.g., .nc
+     */
+    public static void setDatasetAndFileType(HttpServletRequest request, String datasetID,
+        String fileType) {
+        request.setAttribute(DATASET_ID_ATTRIBUTE, datasetID);
+        request.setAttribute(FILE_TYPE_ATTRIBUTE, fileType);
+    }
+
+    /**
+     * This removes a dataset's timer (e.g., when the dataset is removed).
+     *
+     * @param datasetID
+     */
+    public static void removeDataset(String datasetID) {
+        if (datasetTimers.remove(datasetID) != null)
+            registry.remove("request.dataset." + datasetID);
+    }
+
+    /**
+     * This registers (or replaces) a gauge.
+     *
+     * @param name e.g., datasets.grid
+     * @param gauge
+     */
+    public static void registerGauge(String name, Gauge gauge) {
+        registry.remove(name);
+        registry.register(name, gauge);
+    }
+
+    private static RequestTimer timer(ConcurrentHashMap<String, RequestTimer> timers, 
+        String prefix, String key) {
+        RequestTimer timer = timers.get(key);
+        if (timer == null)
+            timer = timers.computeIfAbsent(key, k -> new RequestTimer(registry.timer(prefix + k)));
+        return timer;
+    }
+
+    /**
+     * This returns a summary of the per-protocol request times for the status page.
+     */
+    public static String statusString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Requests in flight: " + inFlight.getCount() +
+            "  Since startup: total=" + total.getCount() + 
+            " failed=" + failed.getCount() + 
+            " blacklisted=" + blacklisted.getCount() + 
+            " rejected=" + rejected.getCount() + "\n" +
+            String2.right("(n, median, 95th, 99th percentile ms, recent)", 66) + "\n");
+        ArrayList<String> protocols = new ArrayList(protocolTimers.keySet());
+        Collections.sort(protocols);
+        for (String protocol : protocols) {
+            Timer timer = protocolTimers.get(protocol).timer;
+            Snapshot snap = timer.getSnapshot();
+            sb.append(String2.left("  " + protocol, 24) +
+                String2.right("" + timer.getCount(), 12) +
+                String2.right("" + TimeUnit.NANOSECONDS.toMillis((long)snap.getMedian()), 10) +
+                String2.right("" + TimeUnit.NANOSECONDS.toMillis((long)snap.get95thPercentile()), 10) +
+                String2.right("" + TimeUnit.NANOSECONDS.toMillis((long)snap.get99thPercentile()), 10) + "\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This writes all of the metrics in the Prometheus text format (version 0.0.4).
+     * The Tally categories with information about users (IP addresses, logged in users)
+     * aren't included.
+     *
+     * @param writer
+     * @throws IOException if trouble
+     */
+    public static void writePrometheus(Writer writer) throws IOException {
+        writePrometheus(writer, EDStatic.tally);
+    }
+
+    /**
+     * This writes all of the metrics in the Prometheus text format,
+     * with the "(since startup)" categories of the specified tally.
+     *
+     * @param writer
+     * @param tally usually EDStatic.tally
+     * @throws IOException if trouble
+     */
+    static void writePrometheus(Writer writer, Tally tally) throws IOException {
+        writer.write("# TYPE erddap_requests_in_flight gauge\n");
+        writer.write("erddap_requests_in_flight " + inFlight.getCount() + "\n");
+        writeCounter(writer, "erddap_requests_total",             total);
+        writeCounter(writer, "erddap_requests_failed_total",      failed);
+        writeCounter(writer, "erddap_requests_blacklisted_total", blacklisted);
+        writeCounter(writer, "erddap_requests_rejected_total",    rejected);
+
+        writeTimers(writer, "protocol", protocolTimers);
+        writeTimers(writer, "file_type", fileTypeTimers);
+        writeTimers(writer, "dataset_id", datasetTimers);
+
+        //gauges
+        SortedMap<String, Gauge> gauges = registry.getGauges();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            Object value;
+            try {
+                value = entry.getValue().getValue();
+            } catch (Throwable t) {
+                continue;
+            }
+            if (!(value instanceof Number))
+                continue;
+            String name = "erddap_" + prometheusName(entry.getKey());
+            writer.write("# TYPE " + name + " gauge\n");
+            writer.write(name + " " + value + "\n");
+        }
+
+        //tally (since startup)
+        writer.write("# TYPE erddap_tally_total counter\n");
+        String categories[] = tally.categoryNames();
+        Arrays.sort(categories);
+        String suffix = Tally.SINCE_STARTUP;
+        for (int cat = 0; cat < categories.length; cat++) {
+            String category = categories[cat];
+            if (!category.endsWith(suffix) ||
+                category.indexOf("IP Address") >= 0 ||
+                category.indexOf("Logged In") >= 0)
+                continue;
+            ArrayList namesCounts = tally.getSortedNamesAndCounts(category);
+            if (namesCounts == null)
+                continue;
+            StringArray names = (StringArray)namesCounts.get(0);
+            IntArray counts = (IntArray)namesCounts.get(1);
+            String tCategory = prometheusLabel(category.substring(0, category.length() - suffix.length()));
+            for (int i = 0; i < names.size(); i++)
+                writer.write("erddap_tally_total{category=\"" + tCategory +
+                    "\",name=\"" + prometheusLabel(names.get(i)) + "\"} " + counts.get(i) + "\n");
+        }
+    }
+
+    private static void writeCounter(Writer writer, String name, Meter meter) 
+        throws IOException {
+        writer.write("# TYPE " + name + " counter\n");
+        writer.write(name + " " + meter.getCount() + "\n");
+    }
+
+    private static void writeTimers(Writer writer, String label,
+        ConcurrentHashMap<String, RequestTimer> timers) throws IOException {
+
+        String name = "erddap_request_seconds_by_" + label;
+        writer.write("# TYPE " + name + " summary\n");
+        ArrayList<String> keys = new ArrayList(timers.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            RequestTimer rTimer = timers.get(key);
+            if (rTimer == null)
+                continue;
+            Timer timer = rTimer.timer;
+            Snapshot snap = timer.getSnapshot();
+            String labels = label + "=\"" + prometheusLabel(key) + "\"";
+            for (int q = 0; q < QUANTILES.length; q++)
+                writer.write(name + "{" + labels + ",quantile=\"" + QUANTILES[q] + "\"} " +
+                    (snap.getValue(QUANTILES[q]) / 1e9) + "\n");
+            writer.write(name + "_sum{" + labels + "} " + (rTimer.sumMillis.get() / 1000.0) + "\n");
+            writer.write(name + "_count{" + labels + "} " + timer.getCount() + "\n");
+        }
+    }
+
+    /** This converts a metric name into a valid Prometheus name. */
+    static String prometheusName(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            sb.append(String2.isDigitLetter(ch) || ch == '_'? ch : '_');
+        }
+        return sb.toString();
+    }
+
+    /** This encodes a Prometheus label value. */
+    static String prometheusLabel(String s) {
+        return String2.replaceAll(String2.replaceAll(String2.replaceAll(s,
+            "\\", "\\\\"), "\"", "\\\""), "\n", "\\n");
+    }
+
+}
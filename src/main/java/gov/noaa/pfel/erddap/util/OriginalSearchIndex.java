@@ -0,0 +1,286 @@
+/*
+ * OriginalSearchIndex Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.IntArray;
+import com.cohort.util.String2;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This is an in-memory inverted index of the datasets' searchBytes
+ * for the original search engine, so that Erddap.getSearchDatasetIDs
+ * only has to call EDD.searchRank for the datasets which might match,
+ * instead of scanning every dataset's searchBytes for every search word.
+ *
+ * <p>The original search engine matches each search word as a substring of
+ * the searchBytes (so "wind" finds "windspeed" and "sea_surface" is a phrase),
+ * and the rank is the sum of the positions of the first matches.
+ * So this index doesn't rank anything. It indexes the tokens
+ * (the runs of letters and digits) in each dataset's searchBytes.
+ * If a search word matches a dataset, each run of letters and digits in the
+ * search word (a "piece") must be a substring of one of the dataset's tokens.
+ * The candidate datasets for a piece are the union of the postings of the tokens
+ * (in the dictionary) which contain the piece, and the candidates for a search
+ * are the intersection of the candidates for the pieces of the positive search words.
+ * Then searchRank is called for each candidate, so the matches and ranks
+ * are exactly the same as for a scan of all of the datasets.
+ *
+ * <p>LoadDatasets.updateLucene() calls update() for each dataset which is
+ * added, changed, or removed. A dataset which isn't in the index
+ * or whose searchBytes has changed since it was indexed
+ * (e.g., it was reloaded, but the index hasn't been updated yet) is always a candidate.
+ *
+ * <p>This is thread-safe. Searches share a read lock. Updates get the write lock.
+ */
+public class OriginalSearchIndex {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** Pieces shorter than this are too common to be worth looking up. */
+    public static int minPieceLength = 2;
+
+    /** The maximum number of pieces whose candidates are cached (until the next update). */
+    public static int maxCachedPieces = 1000;
+
+    private static class Entry {
+        final int ordinal;
+        final long sequence; //when it was added
+        final byte searchBytes[];
+        final String tokens[]; //the tokens in postings
+
+        Entry(int tOrdinal, long tSequence, byte tSearchBytes[], String tTokens[]) {
+            ordinal = tOrdinal;
+            sequence = tSequence;
+            searchBytes = tSearchBytes;
+            tokens = tTokens;
+        }
+    }
+
+    private static class Posting {
+        final String token;
+        final IntArray ordinals = new IntArray(4, false);
+
+        Posting(String tToken) {
+            token = tToken;
+        }
+    }
+
+    private final static ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final static ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap(); //datasetID -> Entry
+    //these are guarded by lock
+    private final static HashMap<String, Posting> postings = new HashMap(); //token -> Posting
+    private final static BitSet usedOrdinals = new BitSet();
+    private final static AtomicLong sequence = new AtomicLong();
+    private final static ConcurrentHashMap<String, BitSet> pieceCache = new ConcurrentHashMap(); //cleared by update()
+
+    private final static AtomicLong nSearches = new AtomicLong();
+    private final static AtomicLong nFullScans = new AtomicLong();
+    private final static AtomicLong nUpdates = new AtomicLong();
+
+    /**
+     * The candidates for one search.
+     * Use mayMatch() to see if a dataset is a candidate.
+     */
+    public static class Candidates {
+        private final BitSet ordinals;
+        private final long sequence;
+
+        private Candidates(BitSet tOrdinals, long tSequence) {
+            ordinals = tOrdinals;
+            sequence = tSequence;
+        }
+
+        /**
+         * This indicates if a dataset might match the search.
+         *
+         * @param datasetID
+         * @param searchBytes the dataset's current edd.searchBytes()
+         * @return false if the dataset certainly doesn't match (so searchRank needn't be called).
+         */
+        public boolean mayMatch(String datasetID, byte searchBytes[]) {
+            Entry entry = entries.get(datasetID);
+            if (entry == null || entry.searchBytes != searchBytes || //not indexed or stale
+                entry.sequence > sequence) //indexed after the candidates were found
+                return true;
+            return ordinals.get(entry.ordinal);
+        }
+    }
+
+    /**
+     * This adds, replaces, or removes a dataset's tokens.
+     *
+     * @param datasetID
+     * @param searchBytes the dataset's edd.searchBytes(), or null to remove the dataset
+     */
+    public static void update(String datasetID, byte searchBytes[]) {
+        //tokenize before getting the lock
+        String tokens[] = searchBytes == null? null : tokens(searchBytes);
+
+        lock.writeLock().lock();
+        try {
+            pieceCache.clear();
+            nUpdates.incrementAndGet();
+
+            //remove the old entry
+            Entry oldEntry = entries.remove(datasetID);
+            if (oldEntry != null) {
+                for (String token : oldEntry.tokens) {
+                    IntArray ia = postings.get(token).ordinals;
+                    int po = ia.indexOf(oldEntry.ordinal);
+                    if (po >= 0)
+                        ia.remove(po);
+                    if (ia.size() == 0)
+                        postings.remove(token);
+                }
+                usedOrdinals.clear(oldEntry.ordinal);
+            }
+            if (tokens == null)
+                return;
+
+            //add the new entry (reuse the token Strings in the dictionary)
+            int ordinal = usedOrdinals.nextClearBit(0);
+            usedOrdinals.set(ordinal);
+            for (int t = 0; t < tokens.length; t++) {
+                Posting posting = postings.get(tokens[t]);
+                if (posting == null) {
+                    posting = new Posting(tokens[t]);
+                    postings.put(tokens[t], posting);
+                } else {
+                    tokens[t] = posting.token;
+                }
+                posting.ordinals.add(ordinal);
+            }
+            entries.put(datasetID, new Entry(ordinal, sequence.incrementAndGet(),
+                searchBytes, tokens));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This finds the candidate datasets for a search.
+     *
+     * @param isNegative isNegative[w] is true if searchWords[w] is a negative (-) search word
+     * @param searchWords the lowercase search words (without enclosing quotes), as UTF-8 bytes
+     * @return the candidates, or null if this can't narrow the search
+     *   (e.g., there are no positive search words) so all of the datasets must be searched.
+     */
+    public static Candidates candidates(boolean isNegative[], byte searchWords[][]) {
+        nSearches.incrementAndGet();
+        lock.readLock().lock();
+        try {
+            long tSequence = sequence.get();
+            BitSet result = null;
+            for (int w = 0; w < searchWords.length; w++) {
+                if (isNegative[w])
+                    continue;
+                String sw = String2.utf8BytesToString(searchWords[w]);
+                int po = 0;
+                int n = sw.length();
+                while (po < n) {
+                    //find the next piece
+                    while (po < n && !Character.isLetterOrDigit(sw.charAt(po)))
+                        po++;
+                    int start = po;
+                    while (po < n && Character.isLetterOrDigit(sw.charAt(po)))
+                        po++;
+                    if (po - start < Math.max(1, minPieceLength))
+                        continue;
+
+                    BitSet pieceOrdinals = pieceOrdinals(sw.substring(start, po));
+                    if (result == null) {
+                        result = (BitSet)pieceOrdinals.clone();
+                    } else {
+                        result.and(pieceOrdinals);
+                    }
+                }
+            }
+            if (result == null) {
+                nFullScans.incrementAndGet();
+                return null;
+            }
+            if (verbose) String2.log("OriginalSearchIndex nCandidates=" + result.cardinality() +
+                " of " + entries.size());
+            return new Candidates(result, tSequence);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This returns the ordinals of the datasets with a token which contains the piece.
+     * The caller must hold the lock and mustn't change the BitSet.
+     */
+    private static BitSet pieceOrdinals(String piece) {
+        BitSet bits = pieceCache.get(piece);
+        if (bits != null)
+            return bits;
+        bits = new BitSet();
+        Iterator<Posting> it = postings.values().iterator();
+        while (it.hasNext()) {
+            Posting posting = it.next();
+            if (posting.token.indexOf(piece) >= 0) {
+                IntArray ia = posting.ordinals;
+                int size = ia.size();
+                for (int i = 0; i < size; i++)
+                    bits.set(ia.get(i));
+            }
+        }
+        if (pieceCache.size() >= maxCachedPieces)
+            pieceCache.clear();
+        pieceCache.put(piece, bits);
+        return bits;
+    }
+
+    /** This returns the distinct tokens (runs of letters and digits) in the searchBytes. */
+    private static String[] tokens(byte searchBytes[]) {
+        String s = String2.utf8BytesToString(searchBytes);
+        HashMap<String, String> set = new HashMap();
+        int po = 0;
+        int n = s.length();
+        while (po < n) {
+            while (po < n && !Character.isLetterOrDigit(s.charAt(po)))
+                po++;
+            int start = po;
+            while (po < n && Character.isLetterOrDigit(s.charAt(po)))
+                po++;
+            if (po > start) {
+                String token = s.substring(start, po);
+                set.putIfAbsent(token, token);
+            }
+        }
+        return set.keySet().toArray(new String[0]);
+    }
+
+    /** The number of datasets in the index. */
+    public static int size() {
+        return entries.size();
+    }
+
+    /** This returns the statistics for the status page. */
+    public static String statsString() {
+        int nTokens;
+        lock.readLock().lock();
+        try {
+            nTokens = postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return "OriginalSearchIndex: nDatasets=" + entries.size() + " nTokens=" + nTokens +
+            " nSearches=" + nSearches.get() + " nFullScans=" + nFullScans.get() +
+            " nUpdates=" + nUpdates.get();
+    }
+
+}
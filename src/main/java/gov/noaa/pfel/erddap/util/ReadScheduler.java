@@ -0,0 +1,332 @@
+/*
+ * ReadScheduler Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This is the server-wide, bounded pool of threads which read source data
+ * for requests (e.g., EDDTableFromFilesCallable and GridDataAccessor's GetChunkCallable).
+ * Previously, each request made its own Executors.newFixedThreadPool, so
+ * the effective number of reading threads was nThreads * nRequests.
+ *
+ * <p>Each request gets a Session. Tasks are queued per Session and the
+ * workers take tasks from the Sessions in round-robin order, so one huge
+ * request can't starve small ones.
+ * Each Session also has a limit on its number of simultaneously active tasks
+ * (based on the dataset's nThreads or nGridThreads/nTableThreads).
+ *
+ * <p>The worker threads are started lazily (the first time a task is submitted)
+ * and are daemon threads.
+ */
+public class ReadScheduler {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want some diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /**
+     * Set this to true (by calling reallyVerbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean reallyVerbose = false;
+
+    /** The number of datasets shown by statsString(). */
+    public final static int N_STATS_DATASETS = 20;
+
+    private final int nWorkers;
+    private final ArrayList<Worker> workers = new ArrayList();
+    private boolean shutDown = false;
+
+    //all of these are guarded by synchronized(this)
+    private final ArrayDeque<Session> readySessions = new ArrayDeque(); //sessions with a runnable task
+    private int nSessions = 0;       //currently open sessions
+    private int queueDepth = 0;      //tasks waiting to start (in all sessions)
+    private int nActiveTasks = 0;    //tasks currently running
+    private long nTasksStarted = 0;  //since startup
+    private long nTasksInline = 0;   //since startup, run in the caller's thread (nested requests)
+    private HashMap<String,long[]> datasetWaitStats = new HashMap(); //datasetID -> {nTasks, sumWaitMillis, maxWaitMillis}
+
+    /**
+     * The constructor.
+     *
+     * @param tNWorkers the number of worker threads (1+).
+     *    Invalid values are converted to 1.
+     */
+    public ReadScheduler(int tNWorkers) {
+        nWorkers = Math.max(1, tNWorkers);
+    }
+
+    /** This returns the number of worker threads. */
+    public int nWorkers() {
+        return nWorkers;
+    }
+
+    /**
+     * This makes a new Session for one request.
+     * Call session.close() when done with it (normally or not).
+     *
+     * @param datasetID for the statistics
+     * @param maxActive the maximum number of simultaneously active tasks for this session
+     *   (e.g., nThreads-1). Invalid values are converted to 1.
+     * @return a new Session
+     */
+    public Session newSession(String datasetID, int maxActive) {
+        Session session = new Session(datasetID, Math.max(1, maxActive));
+        synchronized(this) {
+            nSessions++;
+        }
+        return session;
+    }
+
+    /** This starts the worker threads if they aren't already running. */
+    private synchronized void ensureWorkersStarted() {
+        if (shutDown || workers.size() > 0)
+            return;
+        for (int i = 0; i < nWorkers; i++) {
+            Worker worker = new Worker(i);
+            workers.add(worker);
+            worker.start();
+        }
+        if (verbose) String2.log("ReadScheduler started nWorkers=" + nWorkers);
+    }
+
+    /**
+     * This is called by a Session (which is already synchronized on this)
+     * to put the session into the round-robin queue if it has a task
+     * that may be started.
+     */
+    private void makeReadyIfPossible(Session session) {
+        if (!session.closed && !session.inReady &&
+            session.pending.size() > 0 && session.nActive < session.maxActive) {
+            readySessions.addLast(session);
+            session.inReady = true;
+            notify();
+        }
+    }
+
+    /**
+     * This interrupts and stops the worker threads.
+     * Pending tasks are cancelled. EDStatic.destroy calls this.
+     */
+    public void shutdown() {
+        ArrayList<Worker> tWorkers;
+        synchronized(this) {
+            shutDown = true;
+            Iterator<Session> it = readySessions.iterator();
+            while (it.hasNext())
+                it.next().cancelPending();
+            readySessions.clear();
+            tWorkers = new ArrayList(workers);
+            workers.clear();
+            notifyAll();
+        }
+        for (int i = 0; i < tWorkers.size(); i++) {
+            try {
+                tWorkers.get(i).interrupt();
+            } catch (Throwable t) {
+                String2.log(MustBe.throwableToString(t));
+            }
+        }
+    }
+
+    /**
+     * This returns a multi-line summary of the current state of this
+     * ReadScheduler, for the status page. There is no trailing newline.
+     */
+    public String statsString() {
+        StringBuilder sb = new StringBuilder();
+        ArrayList<Object[]> list = new ArrayList();
+        synchronized(this) {
+            sb.append("ReadScheduler: nWorkers=" + nWorkers +
+                ", nSessions=" + nSessions +
+                ", queueDepth=" + queueDepth +
+                ", nActiveTasks=" + nActiveTasks +
+                ", nTasksStarted=" + nTasksStarted +
+                ", nTasksInline=" + nTasksInline);
+            Iterator<String> it = datasetWaitStats.keySet().iterator();
+            while (it.hasNext()) {
+                String id = it.next();
+                list.add(new Object[]{id, ((long[])datasetWaitStats.get(id)).clone()});
+            }
+        }
+
+        //sort by sumWaitMillis, descending
+        Collections.sort(list, (a, b) -> Long.compare(((long[])b[1])[1], ((long[])a[1])[1]));
+        if (list.size() > 0)
+            sb.append("\nReadScheduler wait time by dataset (since startup, top " +
+                N_STATS_DATASETS + " by total wait):");
+        for (int i = 0; i < Math.min(N_STATS_DATASETS, list.size()); i++) {
+            Object oar[] = list.get(i);
+            long stats[] = (long[])oar[1];
+            sb.append("\n  " + String2.left((String)oar[0], 40) +
+                " nTasks=" + stats[0] +
+                " meanWait=" + (stats[1] / Math.max(1, stats[0])) + "ms" +
+                " maxWait=" + stats[2] + "ms");
+        }
+        return sb.toString();
+    }
+
+    /** This records the wait time for a task. Call this while synchronized on this. */
+    private void recordWait(String datasetID, long waitMillis) {
+        long stats[] = datasetWaitStats.get(datasetID);
+        if (stats == null) {
+            stats = new long[3];
+            datasetWaitStats.put(datasetID, stats);
+        }
+        stats[0]++;
+        stats[1] += waitMillis;
+        stats[2] = Math.max(stats[2], waitMillis);
+    }
+
+
+    /**
+     * A Session is one request's view of the ReadScheduler.
+     * Its methods are thread-safe.
+     */
+    public class Session {
+        final String datasetID;
+        final int maxActive;
+        final ArrayDeque<FutureTask> pending = new ArrayDeque();
+        final ArrayDeque<Long> pendingTimes = new ArrayDeque(); //parallels pending
+        final HashSet<FutureTask> running = new HashSet();
+        int nActive = 0;
+        boolean inReady = false;
+        boolean closed = false;
+
+        Session(String tDatasetID, int tMaxActive) {
+            datasetID = tDatasetID == null? "" : tDatasetID;
+            maxActive = tMaxActive;
+        }
+
+        /**
+         * This queues a task for this session.
+         * If the current thread is one of the ReadScheduler's workers
+         * (e.g., a nested request, like EDDGridFromEDDTable asking its child for data),
+         * the task is run immediately in this thread to avoid deadlock.
+         *
+         * @param task the task to be run
+         * @throws RuntimeException if this session was closed or the ReadScheduler was shut down
+         */
+        public void submit(FutureTask task) {
+            if (Thread.currentThread() instanceof Worker) {
+                synchronized(ReadScheduler.this) {
+                    nTasksInline++;
+                }
+                task.run();
+                return;
+            }
+            ensureWorkersStarted();
+            synchronized(ReadScheduler.this) {
+                if (closed || shutDown)
+                    throw new RuntimeException("ReadScheduler.Session.submit: " +
+                        (closed? "the session is closed." : "the ReadScheduler was shut down."));
+                pending.addLast(task);
+                pendingTimes.addLast(Long.valueOf(System.currentTimeMillis()));
+                queueDepth++;
+                makeReadyIfPossible(this);
+            }
+        }
+
+        /** Call this (while synchronized on ReadScheduler.this) to cancel the pending tasks. */
+        void cancelPending() {
+            queueDepth -= pending.size();
+            Iterator<FutureTask> it = pending.iterator();
+            while (it.hasNext())
+                it.next().cancel(false);
+            pending.clear();
+            pendingTimes.clear();
+        }
+
+        /**
+         * This is like ExecutorService.shutdownNow(): it cancels the pending tasks
+         * and interrupts the running tasks of this session.
+         * It is okay to call this more than once.
+         */
+        public void close() {
+            synchronized(ReadScheduler.this) {
+                if (closed)
+                    return;
+                closed = true;
+                nSessions--;
+                cancelPending();
+                if (inReady) {
+                    readySessions.remove(this);
+                    inReady = false;
+                }
+                Iterator<FutureTask> it = running.iterator();
+                while (it.hasNext())
+                    it.next().cancel(true);
+            }
+        }
+    }
+
+    /** The worker threads. */
+    class Worker extends Thread {
+
+        Worker(int i) {
+            setName("ReadScheduler" + i);
+            setDaemon(true);
+        }
+
+        public void run() {
+            while (true) {
+                Session session;
+                FutureTask task;
+                synchronized(ReadScheduler.this) {
+                    while (!shutDown && readySessions.isEmpty()) {
+                        try {
+                            ReadScheduler.this.wait();
+                        } catch (InterruptedException e) {
+                            //e.g., a session.close() interrupt that arrived after the task finished;
+                            //loop back to test shutDown and wait again
+                        }
+                    }
+                    if (shutDown)
+                        return;
+                    session = readySessions.pollFirst();
+                    session.inReady = false;
+                    task = session.pending.pollFirst();
+                    long waitMillis = System.currentTimeMillis() - session.pendingTimes.pollFirst().longValue();
+                    queueDepth--;
+                    nActiveTasks++;
+                    nTasksStarted++;
+                    session.nActive++;
+                    session.running.add(task);
+                    recordWait(session.datasetID, waitMillis);
+                    //round robin: this session goes to the end of the line
+                    makeReadyIfPossible(session);
+                }
+
+                try {
+                    task.run(); //FutureTask catches all Throwables
+                } finally {
+                    synchronized(ReadScheduler.this) {
+                        nActiveTasks--;
+                        session.nActive--;
+                        session.running.remove(task);
+                        makeReadyIfPossible(session);
+                    }
+                    //clear interrupted status (e.g., from session.close()) before next task
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+}
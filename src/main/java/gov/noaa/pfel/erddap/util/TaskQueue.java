@@ -0,0 +1,731 @@
+/*
+ * TaskQueue Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.StringArray;
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.erddap.dataset.EDD;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This holds the tasks (e.g., the downloads for EDDGridCopy, EDDTableCopy, and
+ * the datasets which copy remote files) and runs them with a pool of TaskThreads.
+ * Previously, all tasks were done one at a time by one TaskThread, so one
+ * dataset's slow downloads blocked every other dataset's tasks (for hours).
+ *
+ * <ul>
+ * <li>Each dataset's tasks are started in the order they were added.
+ * <li>The next task is taken from the dataset with the fewest running tasks
+ *   (then from the one which least recently started a task), so datasets take turns.
+ * <li>TASK_SET_FLAG tasks go before all other tasks, but only after the dataset's
+ *   other tasks have finished (so the reloaded dataset sees all of the new files).
+ * <li>There is a limit on the number of simultaneously running tasks of each type
+ *   and for each remote host.
+ * <li>The unfinished tasks are saved to a file (periodically and at shutdown), so
+ *   they are continued after a restart. TASK_MAKE_A_DATAFILE tasks refer to a dataset object
+ *   so they can't be saved. Datasets with those tasks aren't saved at all
+ *   (the dataset makes its tasks again when it is loaded).
+ * </ul>
+ */
+public class TaskQueue {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want some diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /**
+     * Set this to true (by calling reallyVerbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean reallyVerbose = false;
+
+    /** The number of datasets shown by statsString(). */
+    public final static int N_STATS_DATASETS = 20;
+
+    /** A task which has been running longer than this is considered stalled. */
+    public final static long MAX_TASK_MILLIS = 6 * Calendar2.MILLIS_PER_HOUR;
+
+    /** The unfinished tasks are saved at most this often. */
+    public final static long SAVE_EVERY_MILLIS = 60 * 1000L;
+
+    private final int maxPerType[]; //[taskType]
+    private final int maxPerHost;
+    private final String fileName; //may be null (don't save)
+    private final TaskThread workers[];
+    private boolean shutDown = false;
+
+    //all of these are guarded by synchronized(this)
+    private final LinkedHashMap<String,ArrayDeque<Task>> pendingByDataset = new LinkedHashMap();
+    private final HashMap<String,Integer> nRunningByDataset = new HashMap();
+    private final HashMap<String,Long> lastStartByDataset = new HashMap();
+    private final HashMap<String,Integer> nRunningByHost = new HashMap();
+    private final int nRunningByType[];
+    private final HashSet<Task> running = new HashSet();
+    private final ArrayDeque<Long> recentFinishes = new ArrayDeque(); //finish times in the last hour
+    private int nextTaskNumber = 0;
+    private int nPending = 0;
+    private long nSucceeded = 0, nFailed = 0; //since startup
+    private boolean dirty = false;
+    private long lastSaveMillis = System.currentTimeMillis();
+
+    /**
+     * The constructor.
+     *
+     * @param tNWorkers the number of TaskThreads (1+). Invalid values are converted to 1.
+     * @param tMaxPerType the maximum number of simultaneously running tasks of each type
+     *    (parallels TaskThread.TASK_NAMES). TASK_SET_FLAG tasks are never limited.
+     * @param tMaxPerHost the maximum number of simultaneously running tasks
+     *    which get data from one remote host (1+)
+     * @param tFileName the name of the file where the unfinished tasks are saved
+     *    (or null if they shouldn't be saved)
+     */
+    public TaskQueue(int tNWorkers, int tMaxPerType[], int tMaxPerHost, String tFileName) {
+        workers = new TaskThread[Math.max(1, tNWorkers)];
+        maxPerType = tMaxPerType;
+        maxPerHost = Math.max(1, tMaxPerHost);
+        fileName = tFileName;
+        nRunningByType = new int[TaskThread.TASK_NAMES.length];
+    }
+
+    /** This returns the number of TaskThreads. */
+    public int nWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * This adds a task to the queue and ensures the TaskThreads are running.
+     *
+     * @param datasetID the dataset which the task is for
+     *    (if null, it is found from taskOA if possible)
+     * @param taskOA the task (see the TASK_ constants in TaskThread)
+     * @return the task's number
+     */
+    public int add(String datasetID, Object taskOA[]) {
+        Task task = new Task(datasetID, taskOA);
+        synchronized(this) {
+            task.number = nextTaskNumber++;
+            ArrayDeque<Task> queue = pendingByDataset.get(task.datasetID);
+            if (queue == null) {
+                queue = new ArrayDeque();
+                pendingByDataset.put(task.datasetID, queue);
+            }
+            queue.addLast(task);
+            nPending++;
+            dirty = true;
+            notifyAll();
+        }
+        ensureWorkersRunning();
+
+        //a TASK_SET_FLAG is the end of a batch of tasks, so it is a good time to save
+        if (task.type == TaskThread.TASK_SET_FLAG.intValue())
+            save();
+        return task.number;
+    }
+
+    /**
+     * This is used by the TaskThreads to get the next task.
+     * This waits until a task may be started.
+     *
+     * @param worker the calling TaskThread
+     * @return the task, or null if the TaskThread should stop
+     */
+    Task take(TaskThread worker) {
+        synchronized(this) {
+            while (true) {
+                if (shutDown || workers[worker.workerNumber] != worker)
+                    return null;
+                Task task = start();
+                if (task != null)
+                    return task;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * This selects the best task which may be started now and marks it as running.
+     * Call this while synchronized on this.
+     *
+     * @return the task, or null if no task may be started now
+     */
+    private Task start() {
+        Task task = selectTask();
+        if (task == null)
+            return null;
+        long now = System.currentTimeMillis();
+        task.startMillis = now;
+        nPending--;
+        running.add(task);
+        nRunningByType[task.type]++;
+        increment(nRunningByDataset, task.datasetID, 1);
+        lastStartByDataset.put(task.datasetID, Long.valueOf(now));
+        if (task.host != null)
+            increment(nRunningByHost, task.host, 1);
+        return task;
+    }
+
+    /**
+     * This is used by the TaskThreads to say a task has finished
+     * (successfully or not).
+     * It is okay to call this more than once for a task.
+     *
+     * @param task the task
+     * @param succeeded true if the task succeeded
+     */
+    void finished(Task task, boolean succeeded) {
+        boolean saveNow;
+        synchronized(this) {
+            if (!running.remove(task))
+                return;
+            nRunningByType[task.type]--;
+            increment(nRunningByDataset, task.datasetID, -1);
+            if (task.host != null)
+                increment(nRunningByHost, task.host, -1);
+            if (succeeded) nSucceeded++;
+            else nFailed++;
+            long now = System.currentTimeMillis();
+            recentFinishes.addLast(Long.valueOf(now));
+            while (recentFinishes.peekFirst().longValue() < now - Calendar2.MILLIS_PER_HOUR)
+                recentFinishes.pollFirst();
+            dirty = true;
+            saveNow = now - lastSaveMillis >= SAVE_EVERY_MILLIS;
+            notifyAll();
+        }
+        if (saveNow)
+            save();
+    }
+
+    /**
+     * This selects (and removes from its dataset's queue) the best task which may
+     * be started now. Call this while synchronized on this.
+     *
+     * @return the task, or null if no task may be started now
+     */
+    private Task selectTask() {
+        Task best = null;
+        Iterator<ArrayDeque<Task>> it = pendingByDataset.values().iterator();
+        while (it.hasNext()) {
+            Task task = it.next().peekFirst();
+            if (mayStart(task) && (best == null || isBetter(task, best)))
+                best = task;
+        }
+        if (best != null) {
+            ArrayDeque<Task> queue = pendingByDataset.get(best.datasetID);
+            queue.pollFirst();
+            if (queue.isEmpty())
+                pendingByDataset.remove(best.datasetID);
+        }
+        return best;
+    }
+
+    /** This returns true if the task may be started now. Call this while synchronized on this. */
+    private boolean mayStart(Task task) {
+        if (task.type == TaskThread.TASK_SET_FLAG.intValue())
+            //all of the dataset's previous tasks have started; wait for them to finish
+            return get(nRunningByDataset, task.datasetID) == 0;
+        if (nRunningByType[task.type] >= maxPerType[task.type])
+            return false;
+        return task.host == null || get(nRunningByHost, task.host) < maxPerHost;
+    }
+
+    /**
+     * This returns true if task a should be started before task b.
+     * Call this while synchronized on this.
+     */
+    private boolean isBetter(Task a, Task b) {
+        if (a.priority != b.priority)
+            return a.priority < b.priority;
+        int aRunning = get(nRunningByDataset, a.datasetID);
+        int bRunning = get(nRunningByDataset, b.datasetID);
+        if (aRunning != bRunning)
+            return aRunning < bRunning;
+        Long aLast = lastStartByDataset.get(a.datasetID);
+        Long bLast = lastStartByDataset.get(b.datasetID);
+        long aLastL = aLast == null? 0 : aLast.longValue();
+        long bLastL = bLast == null? 0 : bLast.longValue();
+        if (aLastL != bLastL)
+            return aLastL < bLastL;
+        return a.number < b.number;
+    }
+
+    private static int get(HashMap<String,Integer> map, String key) {
+        Integer i = map.get(key);
+        return i == null? 0 : i.intValue();
+    }
+
+    private static void increment(HashMap<String,Integer> map, String key, int by) {
+        int i = get(map, key) + by;
+        if (i == 0)
+            map.remove(key);
+        else map.put(key, Integer.valueOf(i));
+    }
+
+    /**
+     * This returns the number of unfinished (pending or running) tasks for a dataset.
+     *
+     * @param datasetID
+     * @return the number of unfinished tasks for the dataset
+     */
+    public synchronized int nUnfinished(String datasetID) {
+        ArrayDeque<Task> queue = pendingByDataset.get(datasetID);
+        return (queue == null? 0 : queue.size()) + get(nRunningByDataset, datasetID);
+    }
+
+    /** This returns the number of unfinished (pending or running) tasks. */
+    public synchronized int nUnfinished() {
+        return nPending + running.size();
+    }
+
+    /**
+     * This ensures the TaskThreads are running (if there are unfinished tasks) and
+     * that none is stalled (running one task for more than MAX_TASK_MILLIS).
+     * A stalled TaskThread is stopped (its task is considered to have failed) and replaced.
+     * This won't throw an exception.
+     */
+    public void ensureWorkersRunning() {
+        ArrayList<TaskThread> stalled = new ArrayList();
+        synchronized(this) {
+            if (shutDown || nPending + running.size() == 0)
+                return;
+            for (int i = 0; i < workers.length; i++) {
+                TaskThread worker = workers[i];
+                if (worker != null && worker.isAlive()) {
+                    long eTime = worker.elapsedTime();
+                    if (eTime <= MAX_TASK_MILLIS)
+                        continue;
+                    stalled.add(worker);
+                }
+                workers[i] = new TaskThread(this, i);
+                workers[i].start();
+                if (verbose) String2.log("TaskQueue started " + workers[i].getName());
+            }
+        }
+
+        //deal with the stalled TaskThreads (which have already been replaced)
+        for (int i = 0; i < stalled.size(); i++) {
+            TaskThread worker = stalled.get(i);
+            Task task = worker.currentTask();
+            String tError = "\n*** Error: TaskQueue is interrupting a stalled " + worker.getName() +
+                " (" + Calendar2.elapsedTimeString(worker.elapsedTime()) + " > " +
+                Calendar2.elapsedTimeString(MAX_TASK_MILLIS) + ") at " +
+                Calendar2.getCurrentISODateTimeStringLocalTZ() +
+                (task == null? "" : "\n" + task.summary());
+            String2.log(tError);
+            EDStatic.email(EDStatic.emailEverythingToCsv, "taskThread Stalled", tError);
+            if (task != null)
+                finished(task, false);
+            EDStatic.stopThread(worker, 10); //short time; it is already in trouble
+        }
+    }
+
+    /**
+     * This saves the unfinished tasks (if they have changed) and stops the TaskThreads.
+     * EDStatic.destroy calls this.
+     */
+    public void shutdown() {
+        save();
+        TaskThread tWorkers[];
+        synchronized(this) {
+            shutDown = true;
+            tWorkers = workers.clone();
+            notifyAll();
+        }
+        for (int i = 0; i < tWorkers.length; i++) {
+            try {
+                if (tWorkers[i] != null)
+                    tWorkers[i].interrupt();
+            } catch (Throwable t) {
+                String2.log(MustBe.throwableToString(t));
+            }
+        }
+    }
+
+    /**
+     * This returns a multi-line summary of the current state of this
+     * TaskQueue, for the status page. There is no trailing newline.
+     */
+    public String statsString() {
+        StringBuilder sb = new StringBuilder();
+        ArrayList<Object[]> list = new ArrayList();
+        synchronized(this) {
+            long now = System.currentTimeMillis();
+            while (!recentFinishes.isEmpty() &&
+                   recentFinishes.peekFirst().longValue() < now - Calendar2.MILLIS_PER_HOUR)
+                recentFinishes.pollFirst();
+            sb.append("TaskQueue: nTaskThreads=" + workers.length +
+                ", nPending=" + nPending +
+                ", nRunning=" + running.size() +
+                ", nSucceeded=" + nSucceeded +
+                ", nFailed=" + nFailed + " (since startup)" +
+                ", nFinishedInLastHour=" + recentFinishes.size());
+            for (int i = 0; i < workers.length; i++) {
+                Task task = workers[i] == null? null : workers[i].currentTask();
+                if (task != null)
+                    sb.append("\n  TaskThread" + i + ": task #" + task.number + " " +
+                        TaskThread.TASK_NAMES[task.type] + " " + task.datasetID +
+                        " has been running for " + Calendar2.elapsedTimeString(now - task.startMillis));
+            }
+            HashSet<String> ids = new HashSet(pendingByDataset.keySet());
+            ids.addAll(nRunningByDataset.keySet());
+            Iterator<String> it = ids.iterator();
+            while (it.hasNext()) {
+                String id = it.next();
+                ArrayDeque<Task> queue = pendingByDataset.get(id);
+                list.add(new Object[]{id, new int[]{
+                    queue == null? 0 : queue.size(), get(nRunningByDataset, id)}});
+            }
+        }
+
+        //sort by nPending, descending
+        Collections.sort(list, (a, b) -> Integer.compare(((int[])b[1])[0], ((int[])a[1])[0]));
+        if (list.size() > 0)
+            sb.append("\nTaskQueue unfinished tasks by dataset (top " +
+                N_STATS_DATASETS + " by nPending):");
+        for (int i = 0; i < Math.min(N_STATS_DATASETS, list.size()); i++) {
+            Object oar[] = list.get(i);
+            int counts[] = (int[])oar[1];
+            sb.append("\n  " + String2.left((String)oar[0], 40) +
+                " nPending=" + counts[0] + " nRunning=" + counts[1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This saves the unfinished tasks (if they changed since the last save) to fileName.
+     * Running tasks are saved, too, so they are restarted after a restart.
+     * This won't throw an exception.
+     */
+    public void save() {
+        if (fileName == null)
+            return;
+        StringBuilder sb = new StringBuilder();
+        int nSaved = 0;
+        synchronized(this) {
+            if (!dirty)
+                return;
+            dirty = false;
+            lastSaveMillis = System.currentTimeMillis();
+
+            //datasets with tasks that can't be saved aren't saved
+            HashSet<String> notSavable = new HashSet();
+            ArrayList<Task> tasks = new ArrayList(running);
+            Iterator<ArrayDeque<Task>> it = pendingByDataset.values().iterator();
+            while (it.hasNext())
+                tasks.addAll(it.next());
+            //in the order they were added, so each dataset's tasks are restored in order
+            Collections.sort(tasks, (a, b) -> Integer.compare(a.number, b.number));
+            ArrayList<String> lines = new ArrayList();
+            for (int i = 0; i < tasks.size(); i++) {
+                String line = tasks.get(i).encode();
+                lines.add(line);
+                if (line == null)
+                    notSavable.add(tasks.get(i).datasetID);
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                if (lines.get(i) != null && !notSavable.contains(tasks.get(i).datasetID)) {
+                    sb.append(lines.get(i)).append('\n');
+                    nSaved++;
+                }
+            }
+        }
+
+        //write to a temp file, then rename
+        String tempName = fileName + Math2.random(Integer.MAX_VALUE);
+        String error = String2.writeToFile(tempName, sb.toString(), String2.UTF_8);
+        if (error.length() == 0) {
+            try {
+                File2.rename(tempName, fileName);
+                if (reallyVerbose) String2.log("TaskQueue saved " + nSaved + " tasks.");
+                return;
+            } catch (Exception e) {
+                error = e.toString();
+            }
+        }
+        File2.delete(tempName);
+        String2.log("WARNING: TaskQueue couldn't write " + fileName + ": " + error);
+    }
+
+    /**
+     * This adds the tasks which were saved by save() (e.g., before a restart).
+     * Call this before the datasets are loaded
+     * (so the datasets see that they have unfinished tasks).
+     * This won't throw an exception.
+     *
+     * @return the number of tasks that were added
+     */
+    public int restore() {
+        if (fileName == null || !File2.isFile(fileName))
+            return 0;
+        int nRestored = 0;
+        try {
+            ArrayList<String> lines = String2.readLinesFromFile(fileName, String2.UTF_8, 1);
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.length() == 0)
+                    continue;
+                Object taskOA[] = Task.decode(line);
+                if (taskOA == null) {
+                    String2.log("WARNING: TaskQueue.restore couldn't decode line #" + (i + 1) +
+                        ": " + line);
+                    continue;
+                }
+                add(String2.fromJson(line.substring(0, line.indexOf('\t'))), taskOA);
+                nRestored++;
+            }
+        } catch (Throwable t) {
+            String2.log("WARNING: TaskQueue couldn't read " + fileName + ":\n" +
+                MustBe.throwableToString(t));
+        }
+        String2.log("TaskQueue restored " + nRestored + " unfinished tasks from " + fileName);
+        return nRestored;
+    }
+
+    /** This starts the tasks which may be started now (in order) and returns their summaries. */
+    private synchronized String startAll() {
+        StringBuilder sb = new StringBuilder();
+        Task task;
+        while ((task = start()) != null)
+            sb.append(task.datasetID + " " + TaskThread.TASK_NAMES[task.type] + " " +
+                (task.taskOA.length > 2? task.taskOA[2] : "") + "\n");
+        return sb.toString();
+    }
+
+    /** This finishes (successfully) the running tasks for a dataset. */
+    private void finishAll(String datasetID) {
+        ArrayList<Task> tasks;
+        synchronized(this) {
+            tasks = new ArrayList(running);
+        }
+        for (int i = 0; i < tasks.size(); i++)
+            if (tasks.get(i).datasetID.equals(datasetID))
+                finished(tasks.get(i), true);
+    }
+
+    /** This makes a TASK_DOWNLOAD taskOA. */
+    private static Object[] download(String host, String fileName) {
+        return new Object[]{TaskThread.TASK_DOWNLOAD, host + "/" + fileName, 
+            "/tmp/" + fileName, Long.valueOf(Long.MAX_VALUE)};
+    }
+
+    /**
+     * This tests the order the tasks are started in and save()/restore().
+     * The tasks aren't run: the queues are shut down, so no TaskThreads are started.
+     */
+    public static void test() throws Throwable {
+        String2.log("\nTaskQueue.test()");
+        int maxPerType[] = new int[TaskThread.TASK_NAMES.length];
+        Arrays.fill(maxPerType, 10);
+
+        //per-dataset fairness: datasets take turns, each dataset's tasks are in order
+        TaskQueue q = new TaskQueue(1, maxPerType, 10, null);
+        q.shutDown = true;
+        q.add("a", download("https://a.example.com", "a1.nc"));
+        q.add("a", download("https://a.example.com", "a2.nc"));
+        q.add("a", download("https://a.example.com", "a3.nc"));
+        q.add("b", download("https://b.example.com", "b1.nc"));
+        Test.ensureEqual(q.nUnfinished(), 4, "");
+        Test.ensureEqual(q.startAll(), 
+            "a DOWNLOAD /tmp/a1.nc\n" +
+            "b DOWNLOAD /tmp/b1.nc\n" +  //b has fewer running tasks
+            "a DOWNLOAD /tmp/a2.nc\n" +
+            "a DOWNLOAD /tmp/a3.nc\n", "");
+        Test.ensureEqual(q.nUnfinished("a"), 3, "");
+        q.finishAll("a");
+        q.finishAll("b");
+        Test.ensureEqual(q.nUnfinished(), 0, "");
+
+        //the per-host limit
+        q = new TaskQueue(1, maxPerType, 1, null);
+        q.shutDown = true;
+        q.add("a", download("https://a.example.com", "a1.nc"));
+        q.add("c", download("https://a.example.com", "c1.nc"));
+        q.add("b", download("https://b.example.com", "b1.nc"));
+        Test.ensureEqual(q.startAll(), 
+            "a DOWNLOAD /tmp/a1.nc\n" +
+            "b DOWNLOAD /tmp/b1.nc\n", "");
+        q.finishAll("a");
+        Test.ensureEqual(q.startAll(), "c DOWNLOAD /tmp/c1.nc\n", "");
+
+        //priority: a TASK_SET_FLAG goes first, but only after its dataset's other tasks finish
+        q = new TaskQueue(1, maxPerType, 10, null);
+        q.shutDown = true;
+        q.add("a", download("https://a.example.com", "a1.nc"));
+        q.add("b", download("https://b.example.com", "b1.nc"));
+        q.add("a", new Object[]{TaskThread.TASK_SET_FLAG, "a"});
+        q.add("c", download("https://c.example.com", "c1.nc"));
+        q.add(null, new Object[]{TaskThread.TASK_SET_FLAG, "d"}); //datasetID from taskOA
+        Test.ensureEqual(q.startAll(), 
+            "d SET_FLAG \n" +
+            "a DOWNLOAD /tmp/a1.nc\n" +
+            "b DOWNLOAD /tmp/b1.nc\n" +
+            "c DOWNLOAD /tmp/c1.nc\n", "");
+        q.add("b", download("https://b.example.com", "b2.nc"));
+        q.finishAll("a");
+        Test.ensureEqual(q.startAll(), 
+            "a SET_FLAG \n" +   //before b's download, which was added later but isn't a flag
+            "b DOWNLOAD /tmp/b2.nc\n", "");
+
+        //save and restore: running and pending tasks are restored (in order)
+        String name = EDStatic.fullTestCacheDirectory + "testTaskQueue.txt";
+        File2.delete(name);
+        q = new TaskQueue(1, maxPerType, 10, name);
+        q.shutDown = true;
+        q.add("a", download("https://a.example.com", "a1.nc"));
+        q.add("a", new Object[]{TaskThread.TASK_ALL_DAP_TO_NC, "https://a.example.com/dap",
+            "/tmp/a2.nc", Long.valueOf(12345)});
+        q.add("b \"quoted\"\tid", new Object[]{TaskThread.TASK_DAP_TO_NC, 
+            "https://b.example.com/dap", new StringArray(new String[]{"sst", "uwnd"}), 
+            "[0:2][1]", "/tmp/b1.nc", Boolean.TRUE, Long.valueOf(-1)});
+        q.add("a", new Object[]{TaskThread.TASK_SET_FLAG, "a"});
+        Test.ensureEqual(q.startAll(), 
+            "a DOWNLOAD /tmp/a1.nc\n" +
+            "b \"quoted\"\tid DAP_TO_NC sst, uwnd\n" +
+            "a ALL_DAP_TO_NC /tmp/a2.nc\n", "");
+        q.dirty = true;
+        q.save();
+        TaskQueue q2 = new TaskQueue(1, maxPerType, 10, name);
+        q2.shutDown = true;
+        Test.ensureEqual(q2.restore(), 4, "");
+        Test.ensureEqual(q2.nUnfinished("a"), 3, "");
+        Test.ensureEqual(q2.nUnfinished("b \"quoted\"\tid"), 1, "");
+        Test.ensureEqual(q2.startAll(), 
+            "a DOWNLOAD /tmp/a1.nc\n" +
+            "b \"quoted\"\tid DAP_TO_NC sst, uwnd\n" +
+            "a ALL_DAP_TO_NC /tmp/a2.nc\n", "");
+        Task tasks[] = q2.running.toArray(new Task[0]);
+        Arrays.sort(tasks, (ta, tb) -> ta.datasetID.compareTo(tb.datasetID) * 100 + 
+            Integer.compare(ta.number, tb.number));
+        Test.ensureEqual(tasks.length, 3, "");
+        Test.ensureEqual(tasks[1].taskOA[3], Long.valueOf(12345), "");
+        Test.ensureEqual(tasks[2].datasetID, "b \"quoted\"\tid", "");
+        Test.ensureEqual(tasks[2].host, "https://b.example.com", "");
+        Test.ensureEqual(tasks[2].taskOA.length, 7, "");
+        Test.ensureTrue(tasks[2].taskOA[2] instanceof StringArray, "");
+        Test.ensureEqual(tasks[2].taskOA[3], "[0:2][1]", "");
+        Test.ensureEqual(tasks[2].taskOA[5], Boolean.TRUE, "");
+        Test.ensureEqual(tasks[2].taskOA[6], Long.valueOf(-1), "");
+        q2.finishAll("a");
+        Test.ensureEqual(q2.startAll(), "a SET_FLAG \n", "");
+        File2.delete(name);
+        String2.log("TaskQueue.test() finished successfully");
+    }
+
+
+    /** A task and the information needed to schedule it. */
+    static class Task {
+        int number;
+        final Object taskOA[];
+        final int type;
+        final int priority; //0 is highest
+        final String datasetID;
+        final String host; //may be null
+        long startMillis;
+
+        Task(String tDatasetID, Object tTaskOA[]) {
+            taskOA = tTaskOA;
+            type = ((Integer)taskOA[0]).intValue();
+            priority = type == TaskThread.TASK_SET_FLAG.intValue()? 0 : 1;
+            if (tDatasetID == null) {
+                tDatasetID =
+                    type == TaskThread.TASK_SET_FLAG.intValue()?       (String)taskOA[1] :
+                    type == TaskThread.TASK_MAKE_A_DATAFILE.intValue()? ((EDD)taskOA[1]).datasetID() :
+                    "";
+            }
+            datasetID = tDatasetID;
+
+            //the remote host, e.g., https://www.example.com
+            String url =
+                type == TaskThread.TASK_MAKE_A_DATAFILE.intValue()? ((EDD)taskOA[1]).localSourceUrl() :
+                type == TaskThread.TASK_SET_FLAG.intValue()? null :
+                (String)taskOA[1]; //DAP_TO_NC, ALL_DAP_TO_NC, DOWNLOAD
+            host = url != null && String2.isRemote(url)? File2.getProtocolDomain(url) : null;
+        }
+
+        /** This returns a one line summary of the task. */
+        String summary() {
+            StringBuilder sb = new StringBuilder("task #" + number + " " +
+                TaskThread.TASK_NAMES[type] + " datasetID=" + datasetID);
+            for (int i = 1; i < taskOA.length; i++)
+                if (taskOA[i] != null)
+                    sb.append(" " + taskOA[i]);
+            return sb.toString();
+        }
+
+        /**
+         * This encodes the task as one line: datasetID (as JSON), taskName, then the
+         * task's parameters (Strings as JSON; Longs, Booleans, and StringArrays with
+         * a prefix: L, B, A), separated by tabs.
+         *
+         * @return the line, or null if the task can't be saved
+         */
+        String encode() {
+            StringBuilder sb = new StringBuilder(String2.toJson(datasetID) + "\t" +
+                TaskThread.TASK_NAMES[type]);
+            for (int i = 1; i < taskOA.length; i++) {
+                Object o = taskOA[i];
+                sb.append('\t');
+                if (o == null)               sb.append("null");
+                else if (o instanceof String)      sb.append(String2.toJson((String)o));
+                else if (o instanceof Long)        sb.append("L" + o);
+                else if (o instanceof Boolean)     sb.append("B" + o);
+                else if (o instanceof StringArray) sb.append("A" + String2.toJson(o.toString()));
+                else return null; //e.g., an EDD
+            }
+            return sb.toString();
+        }
+
+        /**
+         * This decodes a line from encode().
+         *
+         * @return the taskOA, or null if trouble
+         */
+        static Object[] decode(String line) {
+            String parts[] = line.split("\t", -1);
+            if (parts.length < 2)
+                return null;
+            int type = String2.indexOf(TaskThread.TASK_NAMES, parts[1]);
+            if (type < 0)
+                return null;
+            Object taskOA[] = new Object[parts.length - 1];
+            taskOA[0] = Integer.valueOf(type);
+            for (int i = 2; i < parts.length; i++) {
+                String s = parts[i];
+                Object o;
+                if (s.equals("null"))      o = null;
+                else if (s.startsWith("\"")) o = String2.fromJson(s);
+                else if (s.startsWith("L"))  o = Long.valueOf(String2.parseLong(s.substring(1)));
+                else if (s.startsWith("B"))  o = Boolean.valueOf(s.substring(1));
+                else if (s.startsWith("A"))  o = StringArray.fromCSV(String2.fromJson(s.substring(1)));
+                else return null;
+                taskOA[i - 1] = o;
+            }
+            return taskOA;
+        }
+    }
+
+}
@@ -21,7 +21,8 @@ import gov.noaa.pfel.erddap.variable.EDV;
 import java.util.ArrayList;
 
 /**
- * This does a series of tasks.
+ * This is one of TaskQueue's pool of threads. It repeatedly takes a task 
+ * from the TaskQueue and does it.
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2009-05-20
  */
@@ -68,6 +69,14 @@ public class TaskThread extends Thread {
         "ALL_DAP_TO_NC",
         "DOWNLOAD"};
 
+    /**
+     * The default maximum number of simultaneously running tasks of each type
+     * (parallels the TASK Integers). TASK_SET_FLAG is never limited.
+     * See setup.xml &lt;taskMaxPerType&gt;.
+     */
+    public final static int[] DEFAULT_MAX_PER_TYPE = new int[]{
+        2, Integer.MAX_VALUE, 2, 2, 4};
+
     /**
      * Set this to true (by calling verbose=true in your program, 
      * not by changing the code here)
@@ -76,56 +85,59 @@ public class TaskThread extends Thread {
     public static boolean verbose = false; 
     public static boolean reallyVerbose = false; 
 
+    final TaskQueue taskQueue;
+    final int workerNumber;
+
     //set while running
-    private long lastStartTime;
+    private volatile TaskQueue.Task currentTask;
+    private volatile long lastStartTime;
 
 
     /**
      * The constructor.
-     * TaskThread uses task variables in EDStatic.
      *
+     * @param tTaskQueue the TaskQueue which this gets tasks from
+     * @param tWorkerNumber this thread's number in the TaskQueue's pool (0..)
      */
-    public TaskThread(int tNextTask) {
-        EDStatic.nextTask = tNextTask;
-        EDStatic.lastFinishedTask = tNextTask - 1;
-        setName("TaskThread");
+    public TaskThread(TaskQueue tTaskQueue, int tWorkerNumber) {
+        taskQueue = tTaskQueue;
+        workerNumber = tWorkerNumber;
+        setName("TaskThread" + tWorkerNumber);
+        setDaemon(true);
     }
 
     /** 
      * This returns elapsed time for the current task (or -1 if no task is running).
      */
     public long elapsedTime() {
-        return System.currentTimeMillis() - lastStartTime;
+        return currentTask == null? -1 : System.currentTimeMillis() - lastStartTime;
+    }
+
+    /** This returns the current task (or null if no task is running). */
+    TaskQueue.Task currentTask() {
+        return currentTask;
     }
 
     /**
-     * This does any pending tasks, then exits.
+     * This does tasks from the TaskQueue until the TaskQueue is shut down
+     * or this thread is replaced (e.g., because it stalled).
      */
     public void run() {
-        while (EDStatic.nextTask < EDStatic.taskList.size()) {
+        while (true) {
+            TaskQueue.Task task = taskQueue.take(this);
+            if (task == null) 
+                return;
             String taskSummary = null;
+            boolean succeeded = false;
+            lastStartTime = System.currentTimeMillis();  
+            currentTask = task;
             try {
-                //check isInterrupted
-                if (isInterrupted()) { 
-                    String2.log("%%% TaskThread was interrupted at " + 
-                        Calendar2.getCurrentISODateTimeStringLocalTZ());
-                    return;
-                }
-
-                //start to do the task
-                //do these things quickly to keep internal consistency
-                lastStartTime = System.currentTimeMillis();  
-                String2.log("\n%%% TaskThread started task #" + EDStatic.nextTask + 
-                    " of " + (EDStatic.taskList.size() - 1) +
+                String2.log("\n%%% " + getName() + " started task #" + task.number + 
+                    " " + TASK_NAMES[task.type] + " for " + task.datasetID +
                     " at " + Calendar2.getCurrentISODateTimeStringLocalTZ());
-                EDStatic.nextTask++;
 
                 //get the task settings
-                Object taskOA[] = (Object[])EDStatic.taskList.get(EDStatic.nextTask - 1);
-                if (taskOA == null) {
-                    String2.log("task #" + (EDStatic.nextTask - 1) + " was null.");
-                    continue;
-                }
+                Object taskOA[] = task.taskOA;
                 Integer taskType = (Integer)taskOA[0];
 
                 //TASK_MAKE_A_DATAFILE
@@ -151,7 +163,7 @@ public class TaskThread extends Thread {
                     taskSummary = "  TASK_SET_FLAG datasetID=" + datasetID;
                     String2.log(taskSummary);
 
-                    //It doesn't really matter if lastFinishedTask is set below before construction starts.
+                    //It doesn't really matter if this task is marked finished before construction starts.
                     //All of the files are copied, so all will be detected.
                     EDD.requestReloadASAP(datasetID);
 
@@ -213,13 +225,13 @@ public class TaskThread extends Thread {
                 //UNKNOWN taskType
                 } else {
                     String2.log("TaskThread error: Unknown taskType=" + taskType + 
-                        " for task #" + (EDStatic.nextTask - 1) + ".");
+                        " for task #" + task.number + ".");
                 }
 
                 //task finished successfully
+                succeeded = true;
                 long tElapsedTime = elapsedTime();
-                String2.log("%%% TaskThread task #" + (EDStatic.nextTask - 1) + 
-                    " of " + (EDStatic.taskList.size() - 1) +
+                String2.log("%%% " + getName() + " task #" + task.number + 
                     " succeeded.  elapsedTime = " + Calendar2.elapsedTimeString(tElapsedTime));
                 String2.distribute(tElapsedTime, EDStatic.taskThreadSucceededDistribution24);
                 String2.distribute(tElapsedTime, EDStatic.taskThreadSucceededDistributionTotal);
@@ -228,7 +240,7 @@ public class TaskThread extends Thread {
                 long tElapsedTime = elapsedTime();
                 String2.distribute(tElapsedTime, EDStatic.taskThreadFailedDistribution24);
                 String2.distribute(tElapsedTime, EDStatic.taskThreadFailedDistributionTotal);
-                String subject = "TaskThread error: task #" + (EDStatic.nextTask - 1) + 
+                String subject = "TaskThread error: task #" + task.number + 
                     " failed after " + Calendar2.elapsedTimeString(tElapsedTime);
                 String content = "" + taskSummary + "\n" +
                     MustBe.throwableToString(t);
@@ -237,10 +249,8 @@ public class TaskThread extends Thread {
             }
 
             //whether succeeded or failed
-            synchronized(EDStatic.taskList) { //all task-related things synch on taskList
-                EDStatic.lastFinishedTask = EDStatic.nextTask - 1;
-                EDStatic.taskList.set(EDStatic.nextTask - 1, null);  //throw away the task info (gc)
-            }
+            currentTask = null;
+            taskQueue.finished(task, succeeded);
         }
     }
 
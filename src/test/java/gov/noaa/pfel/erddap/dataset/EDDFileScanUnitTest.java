@@ -0,0 +1,268 @@
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.ReadScheduler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EDDFileScanUnitTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String datasetDir;
+    private long oldCheckpointEveryNMillis;
+
+    //the files which were found: f1 (unchanged), f2 (bad), f3 (new)
+    private final ShortArray  foundDirIndex = new ShortArray(new short[]{0, 0, 0});
+    private final StringArray foundFileName = new StringArray(new String[]{"f1.nc", "f2.nc", "f3.nc"});
+    private final LongArray   foundLastMod  = new LongArray(new long[]{1000, 2000, 3000});
+    private final LongArray   foundSize     = new LongArray(new long[]{10, 20, 30});
+
+    @Before
+    public void setUp() {
+        datasetDir = tempFolder.getRoot().getAbsolutePath() + "/";
+        oldCheckpointEveryNMillis = EDDFileScan.checkpointEveryNMillis;
+        EDDFileScan.checkpointEveryNMillis = 0; //a checkpoint after every file
+    }
+
+    @After
+    public void tearDown() {
+        EDDFileScan.checkpointEveryNMillis = oldCheckpointEveryNMillis;
+    }
+
+    private static Table dirTable() {
+        Table dirTable = new Table();
+        dirTable.addColumn("dirName", new StringArray(new String[]{"/data/a/"}));
+        return dirTable;
+    }
+
+    /** The fileTable before the scan: just f1. */
+    private static Table fileTable() {
+        Table fileTable = new Table();
+        fileTable.addColumn("dirIndex", new ShortArray(new short[]{0}));
+        fileTable.addColumn("fileName", new StringArray(new String[]{"f1.nc"}));
+        fileTable.addColumn("lastMod",  new LongArray(new long[]{1000}));
+        fileTable.addColumn("size",     new LongArray(new long[]{10}));
+        return fileTable;
+    }
+
+    private IntArray makeToRead(Table fileTable, ConcurrentHashMap badFileMap) {
+        return EDDFileScan.makeToRead(foundDirIndex, foundFileName, foundLastMod, foundSize,
+            badFileMap, (ShortArray)fileTable.getColumn(0), (StringArray)fileTable.getColumn(1),
+            (LongArray)fileTable.getColumn(2), (LongArray)fileTable.getColumn(3), true);
+    }
+
+    /**
+     * This does the constructor's loop (reading f2 fails) and saves a checkpoint
+     * after each file, then returns the fileTable.
+     */
+    private Table scanWithCheckpoints(Table dirTable, ConcurrentHashMap badFileMap) throws Throwable {
+        Table fileTable = fileTable();
+        IntArray toRead = makeToRead(fileTable, badFileMap);
+        assertEquals("1, 2", toRead.toString());
+        EDDFileScan scan = new EDDFileScan("testScan", datasetDir, toRead, 1, i -> {
+            if (i == 1)
+                throw new RuntimeException("f2.nc is bad");
+            return "info" + i;
+        });
+        try {
+            for (int i = 0; i < toRead.size(); i++) {
+                int fi = toRead.get(i);
+                try {
+                    assertEquals("info" + fi, scan.get(fi));
+                    fileTable.getColumn(0).addInt(foundDirIndex.get(fi));
+                    fileTable.getColumn(1).addString(foundFileName.get(fi));
+                    fileTable.getColumn(2).addLong(foundLastMod.get(fi));
+                    fileTable.getColumn(3).addLong(foundSize.get(fi));
+                } catch (Throwable t) {
+                    badFileMap.put(foundDirIndex.get(fi) + "/" + foundFileName.get(fi),
+                        new Object[]{Long.valueOf(foundLastMod.get(fi)), t.getMessage()});
+                }
+                assertTrue(scan.checkpointDue());
+                scan.checkpoint(5, dirTable, fileTable, badFileMap);
+                assertFalse(scan.checkpointDue()); //nothing read since the checkpoint
+            }
+        } finally {
+            scan.close();
+        }
+        return fileTable;
+    }
+
+    @Test
+    public void checkpointSaveAndResume() throws Throwable {
+        //no checkpoint yet
+        ConcurrentHashMap resumedBadFileMap = EDD.newEmptyBadFileMap();
+        assertNull(EDDFileScan.loadCheckpoint(datasetDir, 5, resumedBadFileMap));
+
+        Table dirTable = dirTable();
+        ConcurrentHashMap badFileMap = EDD.newEmptyBadFileMap();
+        Table fileTable = scanWithCheckpoints(dirTable, badFileMap);
+        assertTrue(new File(datasetDir + EDDFileScan.BAD_FILES_CHECKPOINT_FILENAME).isFile());
+
+        //resume: the tables and the bad files are restored
+        Table tables[] = EDDFileScan.loadCheckpoint(datasetDir, 5, resumedBadFileMap);
+        assertNotNull(tables);
+        assertEquals(dirTable.dataToString(), tables[0].dataToString());
+        assertEquals(fileTable.dataToString(), tables[1].dataToString());
+        assertEquals(1, resumedBadFileMap.size());
+        Object bfi[] = (Object[])resumedBadFileMap.get("0/f2.nc");
+        assertEquals(Long.valueOf(2000), bfi[0]);
+        assertEquals("f2.nc is bad", bfi[1]);
+
+        //so nothing is read again
+        assertEquals("", makeToRead(tables[1], resumedBadFileMap).toString());
+
+        //until the bad file changes
+        foundLastMod.set(1, 2001);
+        assertEquals("1", makeToRead(tables[1], resumedBadFileMap).toString());
+    }
+
+    @Test
+    public void noBadFilesCheckpoint() throws Throwable {
+        Table dirTable = dirTable();
+        ConcurrentHashMap badFileMap = EDD.newEmptyBadFileMap();
+        scanWithCheckpoints(dirTable, badFileMap);
+
+        //a later checkpoint without bad files deletes the badFiles checkpoint
+        badFileMap.clear();
+        EDDFileScan scan = new EDDFileScan("testScan", datasetDir, new IntArray(), 1, i -> null);
+        try {
+            scan.checkpoint(5, dirTable, fileTable(), badFileMap);
+        } finally {
+            scan.close();
+        }
+        assertFalse(new File(datasetDir + EDDFileScan.BAD_FILES_CHECKPOINT_FILENAME).exists());
+        ConcurrentHashMap resumedBadFileMap = EDD.newEmptyBadFileMap();
+        Table tables[] = EDDFileScan.loadCheckpoint(datasetDir, 5, resumedBadFileMap);
+        assertNotNull(tables);
+        assertEquals(fileTable().dataToString(), tables[1].dataToString());
+        assertTrue(resumedBadFileMap.isEmpty());
+    }
+
+    @Test
+    public void unusableCheckpointIsDeleted() throws Throwable {
+        //a different standardizeWhat
+        scanWithCheckpoints(dirTable(), EDD.newEmptyBadFileMap());
+        ConcurrentHashMap resumedBadFileMap = EDD.newEmptyBadFileMap();
+        assertNull(EDDFileScan.loadCheckpoint(datasetDir, 6, resumedBadFileMap));
+        assertTrue(resumedBadFileMap.isEmpty());
+        assertFalse(new File(datasetDir + EDDFileScan.FILE_TABLE_CHECKPOINT_FILENAME).exists());
+        assertFalse(new File(datasetDir + EDDFileScan.BAD_FILES_CHECKPOINT_FILENAME).exists());
+
+        //a checkpoint which is older than fileTable.nc (i.e., from an earlier constructor)
+        scanWithCheckpoints(dirTable(), EDD.newEmptyBadFileMap());
+        File checkpointFile = new File(datasetDir + EDDFileScan.FILE_TABLE_CHECKPOINT_FILENAME);
+        File fileTableFile  = new File(datasetDir + EDD.FILE_TABLE_FILENAME);
+        assertTrue(fileTableFile.createNewFile());
+        assertTrue(fileTableFile.setLastModified(checkpointFile.lastModified() + 60000));
+        assertNull(EDDFileScan.loadCheckpoint(datasetDir, 5, resumedBadFileMap));
+        assertTrue(resumedBadFileMap.isEmpty());
+        assertFalse(checkpointFile.exists());
+        assertFalse(new File(datasetDir + EDDFileScan.DIR_TABLE_CHECKPOINT_FILENAME).exists());
+        assertFalse(new File(datasetDir + EDDFileScan.BAD_FILES_CHECKPOINT_FILENAME).exists());
+    }
+
+    @Test
+    public void parallelReadsAreMergedInOrder() throws Throwable {
+        ReadScheduler scheduler = new ReadScheduler(4);
+        final CountDownLatch f2Finished = new CountDownLatch(1);
+        final StringBuffer finished = new StringBuffer(); //the files, in the order the reads finished
+        final ConcurrentHashMap<Integer, String> threadNames = new ConcurrentHashMap();
+        IntArray toRead = new IntArray(new int[]{0, 1, 2, 3, 4, 5});
+        EDDFileScan scan = new EDDFileScan("testScan", datasetDir, toRead, 3, i -> {
+            threadNames.put(i, Thread.currentThread().getName());
+            if (i == 0) //f0 finishes after f2
+                assertTrue(f2Finished.await(10, TimeUnit.SECONDS));
+            try {
+                if (i == 1)
+                    throw new IOException("f1 is bad");
+                return "info" + i;
+            } finally {
+                finished.append(i + " ");
+                if (i == 2)
+                    f2Finished.countDown();
+            }
+        }, scheduler);
+        StringArray results = new StringArray();
+        try {
+            for (int i = 0; i < toRead.size(); i++) {
+                try {
+                    results.add((String)scan.get(toRead.get(i)));
+                } catch (Throwable t) {
+                    //the reader's exception, not wrapped in ExecutionExceptions
+                    assertEquals(IOException.class, t.getClass());
+                    results.add(t.getMessage());
+                }
+            }
+            String status = EDDFileScan.statusString();
+            assertTrue(status, status.indexOf("read 6 of 6 files (nBad=1, nThreads=3,") >= 0);
+        } finally {
+            scan.close();
+            scheduler.shutdown();
+        }
+
+        //the results are merged in order, although f0 finished after f2
+        assertEquals("info0, f1 is bad, info2, info3, info4, info5", results.toString());
+        String tFinished = finished.toString();
+        assertTrue(tFinished, tFinished.indexOf("2 ") < tFinished.indexOf("0 "));
+
+        //all of the files were read by the ReadScheduler's threads
+        for (int i = 0; i < toRead.size(); i++)
+            assertTrue(threadNames.get(i), threadNames.get(i).startsWith("ReadScheduler"));
+        assertEquals("", EDDFileScan.statusString());
+    }
+
+    @Test
+    public void closeCancelsTheReadAheads() throws Throwable {
+        ReadScheduler scheduler = new ReadScheduler(4);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        final StringBuffer read = new StringBuffer(); //the files whose reads started
+        IntArray toRead = new IntArray(new int[]{0, 1, 2, 3, 4, 5});
+        EDDFileScan scan = new EDDFileScan("testScan", datasetDir, toRead, 2, i -> {
+            read.append(i + " ");
+            if (i == 0)
+                return "info0";
+            started.countDown();
+            try {
+                Thread.sleep(60000); //until close() interrupts it
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "info" + i;
+        }, scheduler);
+        try {
+            try {
+                assertEquals("info0", scan.get(0));
+                //f1 and f2 are being read, f3 is waiting (nThreads=2), f4 and f5 weren't submitted
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            } finally {
+                scan.close();
+            }
+
+            //the reads in progress were interrupted and the waiting read was cancelled
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+            String tRead = read.toString();
+            assertTrue(tRead, tRead.equals("0 1 2 ") || tRead.equals("0 2 1 "));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.DoubleArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class EDDFileTableJournalUnitTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String datasetDir;
+    private File fileTableFile;
+
+    @Before
+    public void setUp() throws Exception {
+        datasetDir = tempFolder.getRoot().getAbsolutePath() + "/";
+        //the journal only looks at the saved tables' lastModified and length
+        Files.write(new File(datasetDir + EDD.DIR_TABLE_FILENAME).toPath(),
+            "dirTable".getBytes(StandardCharsets.UTF_8));
+        fileTableFile = new File(datasetDir + EDD.FILE_TABLE_FILENAME);
+        Files.write(fileTableFile.toPath(), "fileTable".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The tables as they were saved in dirTable.nc and fileTable.nc. */
+    private static Table[] savedTables() {
+        Table dirTable = new Table();
+        dirTable.addColumn("dirName", new StringArray(new String[]{"/data/a/"}));
+        Table fileTable = new Table();
+        fileTable.addColumn("dirIndex", new ShortArray(new short[]{0, 0}));
+        fileTable.addColumn("fileName", new StringArray(new String[]{"f1.nc", "f2.nc"}));
+        fileTable.addColumn("lastMod",  new LongArray(new long[]{1000, 2000}));
+        fileTable.addColumn("min",      new DoubleArray(new double[]{1.5, 2.5}));
+        fileTable.addColumn("csv",      new StringArray(new String[]{"a, b", "c"}));
+        return new Table[]{dirTable, fileTable};
+    }
+
+    /** The tables after f1 changed, f2 was removed, and f3 (in a new dir) was added. */
+    private static Table[] changedTables() {
+        Table dirTable = new Table();
+        dirTable.addColumn("dirName", new StringArray(new String[]{"/data/a/", "/data/b/"}));
+        Table fileTable = new Table();
+        fileTable.addColumn("dirIndex", new ShortArray(new short[]{0, 1}));
+        fileTable.addColumn("fileName", new StringArray(new String[]{"f1.nc", "f3.nc"}));
+        fileTable.addColumn("lastMod",  new LongArray(new long[]{1001, 3000}));
+        fileTable.addColumn("min",      new DoubleArray(new double[]{-1.5, 3.5}));
+        fileTable.addColumn("csv",      new StringArray(new String[]{"a, b, \u00e9", "d"}));
+        return new Table[]{dirTable, fileTable};
+    }
+
+    private static StringArray names(String... fullNames) {
+        return new StringArray(fullNames);
+    }
+
+    /** Batch 1 is changedTables(). Batch 2 changes f3 again. */
+    private static Table[] appendTwoBatches(EDDFileTableJournal journal) {
+        Table changed[] = changedTables();
+        assertTrue(journal.append(changed[0], 1, changed[1],
+            names("/data/a/f1.nc", "/data/a/f2.nc", "/data/b/f3.nc")));
+        Table changed2[] = changedTables();
+        changed2[1].getColumn(2).setLong(1, 3001);
+        assertTrue(journal.append(changed2[0], 2, changed2[1], names("/data/b/f3.nc")));
+        return changed2;
+    }
+
+    @Test
+    public void appendThenReplay() throws Exception {
+        EDDFileTableJournal journal = new EDDFileTableJournal(datasetDir);
+        assertEquals(0, journal.replay(savedTables()[0], savedTables()[1])); //no journal yet
+        Table expected[] = appendTwoBatches(journal);
+        assertSame(expected[1], journal.currentSnapshot()[1]);
+
+        Table tables[] = savedTables();
+        assertEquals(2, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(expected[0].dataToString(), tables[0].dataToString());
+        assertEquals(expected[1].dataToString(), tables[1].dataToString());
+    }
+
+    @Test
+    public void tornFinalBatchIsIgnored() throws Exception {
+        EDDFileTableJournal journal = new EDDFileTableJournal(datasetDir);
+        Table changed[] = changedTables();
+        assertTrue(journal.append(changed[0], 1, changed[1],
+            names("/data/a/f1.nc", "/data/a/f2.nc", "/data/b/f3.nc")));
+        File journalFile = new File(journal.journalName());
+        long oneBatchLength = journalFile.length();
+        Table changed2[] = changedTables();
+        changed2[1].getColumn(2).setLong(1, 3001);
+        assertTrue(journal.append(changed2[0], 2, changed2[1], names("/data/b/f3.nc")));
+        long twoBatchLength = journalFile.length();
+
+        //a partly written final batch (e.g., a crash while appending)
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(oneBatchLength + (twoBatchLength - oneBatchLength) / 2);
+        }
+        Table tables[] = savedTables();
+        assertEquals(1, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(changed[0].dataToString(), tables[0].dataToString());
+        assertEquals(changed[1].dataToString(), tables[1].dataToString());
+
+        //a final batch with a bad CRC
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(oneBatchLength);
+        }
+        assertTrue(journal.append(changed2[0], 2, changed2[1], names("/data/b/f3.nc")));
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.seek(twoBatchLength - 1);
+            int b = raf.read();
+            raf.seek(twoBatchLength - 1);
+            raf.write(b ^ 0xFF);
+        }
+        tables = savedTables();
+        assertEquals(1, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(changed[1].dataToString(), tables[1].dataToString());
+    }
+
+    /** This flips the bits of the journal's last byte (in the last batch's data). */
+    private static void corruptLastByte(File journalFile) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.seek(raf.length() - 1);
+            int b = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    public void appendAfterDamagedTail() throws Exception {
+        EDDFileTableJournal journal = new EDDFileTableJournal(datasetDir);
+        Table changed[] = changedTables();
+        assertTrue(journal.append(changed[0], 1, changed[1],
+            names("/data/a/f1.nc", "/data/a/f2.nc", "/data/b/f3.nc")));
+        File journalFile = new File(journal.journalName());
+        long oneBatchLength = journalFile.length();
+        Table changed2[] = changedTables();
+        changed2[1].getColumn(2).setLong(1, 3001);
+        assertTrue(journal.append(changed2[0], 2, changed2[1], names("/data/b/f3.nc")));
+        long twoBatchLength = journalFile.length();
+        Table changed3[] = changedTables();
+        changed3[1].getColumn(2).setLong(1, 3002);
+
+        //a crash while appending batch 2, then (after a quick restart, so no replay)
+        //lowUpdate appends batch 3 after the partly written batch
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(oneBatchLength + (twoBatchLength - oneBatchLength) / 2);
+        }
+        journal = new EDDFileTableJournal(datasetDir);
+        assertTrue(journal.append(changed3[0], 2, changed3[1], names("/data/b/f3.nc")));
+        Table tables[] = savedTables();
+        assertEquals(2, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(changed3[1].dataToString(), tables[1].dataToString());
+
+        //the same, with a bad CRC
+        corruptLastByte(journalFile);
+        journal = new EDDFileTableJournal(datasetDir);
+        assertTrue(journal.append(changed2[0], 2, changed2[1], names("/data/b/f3.nc")));
+        tables = savedTables();
+        assertEquals(2, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(changed2[1].dataToString(), tables[1].dataToString());
+
+        //replay removes the bad tail, so the next batch (even from another instance) is replayed
+        corruptLastByte(journalFile);
+        tables = savedTables();
+        assertEquals(1, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(changed[1].dataToString(), tables[1].dataToString());
+        assertEquals(oneBatchLength, journalFile.length());
+        assertTrue(journal.append(changed3[0], 2, changed3[1], names("/data/b/f3.nc")));
+        tables = savedTables();
+        assertEquals(2, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(changed3[1].dataToString(), tables[1].dataToString());
+    }
+
+    @Test
+    public void staleJournalIsDeleted() throws Exception {
+        EDDFileTableJournal journal = new EDDFileTableJournal(datasetDir);
+        appendTwoBatches(journal);
+        File journalFile = new File(journal.journalName());
+        assertTrue(journalFile.isFile());
+
+        //fileTable.nc is rewritten (e.g., by a compaction which didn't delete the journal)
+        long lastMod = fileTableFile.lastModified();
+        Files.write(fileTableFile.toPath(), "new fileTable".getBytes(StandardCharsets.UTF_8));
+        assertTrue(fileTableFile.setLastModified(lastMod + 60000));
+
+        //the journal can't be appended to
+        Table changed[] = changedTables();
+        assertFalse(journal.append(changed[0], 1, changed[1], names("/data/a/f1.nc")));
+
+        //and replay deletes it and doesn't change the tables
+        Table tables[] = savedTables();
+        assertEquals(0, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertFalse(journalFile.exists());
+        assertEquals(savedTables()[1].dataToString(), tables[1].dataToString());
+
+        //the next append starts a new journal for the new fileTable.nc
+        assertTrue(journal.append(changed[0], 1, changed[1],
+            names("/data/a/f1.nc", "/data/a/f2.nc", "/data/b/f3.nc")));
+        tables = savedTables();
+        assertEquals(1, new EDDFileTableJournal(datasetDir).replay(tables[0], tables[1]));
+        assertEquals(changed[1].dataToString(), tables[1].dataToString());
+    }
+}
@@ -0,0 +1,101 @@
+package gov.noaa.pfel.erddap.dataset;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gov.noaa.pfel.erddap.dataset.EDDTableFromAxiomStationUnitTest.testResourceAsString;
+import static org.junit.Assert.*;
+
+public class OikosContextCacheUnitTest {
+
+    private static OikosContextCache.Fetcher countingFetcher(String json, AtomicInteger nFetches, long sleepMillis) {
+        return () -> {
+            nFetches.incrementAndGet();
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return json;
+        };
+    }
+
+    @Test
+    public void concurrentGetsShareOneFetch() throws Exception {
+        String json = testResourceAsString("/oikos-context.json");
+        AtomicInteger nFetches = new AtomicInteger();
+        OikosContextCache cache = new OikosContextCache(countingFetcher(json, nFetches, 200), null, 60000);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<OikosLookups>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit((Callable<OikosLookups>) cache::get));
+            }
+            OikosLookups first = futures.get(0).get();
+            for (Future<OikosLookups> f : futures) {
+                assertSame(first, f.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, nFetches.get());
+        assertEquals(216, cache.get().parameterMap.size());
+        assertEquals(1, nFetches.get());
+    }
+
+    @Test
+    public void staleContextIsReturnedWhileRefreshing() throws Exception {
+        String json = testResourceAsString("/oikos-context.json");
+        AtomicInteger nFetches = new AtomicInteger();
+        OikosContextCache cache = new OikosContextCache(countingFetcher(json, nFetches, 0), null, 60000);
+        OikosLookups first = cache.get();
+        assertEquals(1, nFetches.get());
+
+        cache.setTtlMillis(1);
+        Thread.sleep(5);
+        assertSame(first, cache.get()); // stale, but returned without waiting
+        OikosLookups refreshed = cache.refresh().get();
+        assertEquals(2, nFetches.get());
+        assertNotSame(first, refreshed);
+        assertSame(refreshed, cache.get());
+    }
+
+    @Test
+    public void persistedContextIsUsedWhenServiceIsUnreachable() throws Exception {
+        String json = testResourceAsString("/oikos-context.json");
+        File file = File.createTempFile("oikosContext", ".json");
+        file.delete();
+        try {
+            OikosContextCache cache1 = new OikosContextCache(() -> json, file.getPath(), 60000);
+            cache1.get();
+            assertTrue(file.isFile());
+
+            OikosContextCache cache2 = new OikosContextCache(() -> {
+                throw new IOException("unreachable");
+            }, file.getPath(), 60000);
+            OikosLookups lookups = cache2.get();
+            assertEquals(271, lookups.sensorParameterMap.size());
+            assertEquals(216, lookups.parameterMap.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWithoutServiceOrPersistedContext() throws Exception {
+        OikosContextCache cache = new OikosContextCache(() -> {
+            throw new IOException("unreachable");
+        }, null, 60000);
+        cache.get();
+    }
+}
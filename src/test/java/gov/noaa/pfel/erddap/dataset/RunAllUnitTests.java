@@ -1,11 +1,23 @@
 package gov.noaa.pfel.erddap.dataset;
 
+import gov.noaa.pfel.erddap.util.AdmissionControlUnitTest;
+import gov.noaa.pfel.erddap.util.LuceneSearcherManagerUnitTest;
+import gov.noaa.pfel.erddap.util.MetricsUnitTest;
+import gov.noaa.pfel.erddap.util.OriginalSearchIndexUnitTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-        EDDTableFromAxiomStationUnitTest.class
+        AdmissionControlUnitTest.class,
+        EDDFileScanUnitTest.class,
+        EDDFileTableJournalUnitTest.class,
+        EDDTableFromAxiomStationUnitTest.class,
+        LuceneSearcherManagerUnitTest.class,
+        MetricsUnitTest.class,
+        OikosContextCacheUnitTest.class,
+        OriginalSearchIndexUnitTest.class,
+        SubsetIndexUnitTest.class
 })
 public class RunAllUnitTests {
 }
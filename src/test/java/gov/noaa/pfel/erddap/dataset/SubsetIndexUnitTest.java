@@ -0,0 +1,111 @@
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.StringArray;
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class SubsetIndexUnitTest {
+
+    private File tempFile;
+
+    private static Table stationTable() {
+        Table table = new Table();
+        table.addColumn("station", new StringArray(new String[]{"b", "a", "c", "a", "b", "a"}));
+        table.addColumn("depth",   new IntArray(new int[]{10, 5, 10, 20, 5, 10}));
+        return table;
+    }
+
+    private String tempFileName() throws Exception {
+        tempFile = File.createTempFile("SubsetIndexUnitTest", ".nc");
+        return tempFile.getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() {
+        SubsetIndex.clear();
+        SubsetIndex.setMaxMB(0);
+        if (tempFile != null)
+            tempFile.delete();
+    }
+
+    @Test
+    public void buildAndLookup() {
+        SubsetIndex index = new SubsetIndex(stationTable(), 0);
+        assertEquals(6, index.nRows());
+        assertEquals(2, index.nColumns());
+        int stationCol = index.findColumnNumber("station");
+        int depthCol   = index.findColumnNumber("depth");
+        assertEquals(0, stationCol);
+        assertEquals(1, depthCol);
+        assertEquals(-1, index.findColumnNumber("nope"));
+
+        //the dictionaries are the sorted distinct values
+        assertEquals("a, b, c", index.values(stationCol).toString());
+        assertEquals("5, 10, 20", index.values(depthCol).toString());
+
+        //constraints are applied to the distinct values, then mapped to rows
+        BitSet rows = index.rowsWhere(stationCol, Double.NaN, Double.NaN, false, "=", "a");
+        assertEquals("{1, 3, 5}", rows.toString());
+        rows.and(index.rowsWhere(depthCol, Double.NaN, Double.NaN, false, ">=", "10"));
+        assertEquals("{3, 5}", rows.toString());
+        assertEquals("10, 20", index.distinctValues(depthCol, rows).toString());
+        assertEquals("{0, 4}", index.rowsWhereString(stationCol, "b", null).toString());
+        assertTrue(index.rowsWhere(depthCol, Double.NaN, Double.NaN, false, ">", "99").isEmpty());
+
+        //toTable makes just the selected rows, in their original order
+        Table table = index.toTable(rows);
+        assertEquals(2, table.nRows());
+        assertEquals("a, a", table.getColumn(0).toString());
+        assertEquals("20, 10", table.getColumn(1).toString());
+        assertEquals(6, index.toTable(null).nRows());
+    }
+
+    @Test
+    public void registryPutAndGet() throws Exception {
+        String fullName = tempFileName();
+        SubsetIndex.setMaxMB(10);
+        assertTrue(SubsetIndex.mayIndex(fullName));
+        SubsetIndex index = SubsetIndex.put(fullName, stationTable());
+        assertNotNull(index);
+        assertSame(index, SubsetIndex.get(fullName));
+
+        //a changed file isn't served from the registry
+        assertTrue(tempFile.setLastModified(tempFile.lastModified() - 60000));
+        assertNull(SubsetIndex.get(fullName));
+    }
+
+    @Test
+    public void registryRefusals() throws Exception {
+        String fullName = tempFileName();
+
+        //the registry is disabled
+        SubsetIndex.setMaxMB(0);
+        assertFalse(SubsetIndex.mayIndex(fullName));
+        assertNull(SubsetIndex.put(fullName, stationTable()));
+
+        //the table is too big: it is remembered, so the caller doesn't try again
+        SubsetIndex.setMaxMB(1);
+        int n = 100000; //8 bytes * 100000 rows * 2 columns > 1 MB
+        int ar[] = new int[n];
+        for (int i = 0; i < n; i++)
+            ar[i] = i;
+        Table big = new Table();
+        big.addColumn("a", new IntArray(ar));
+        big.addColumn("b", new IntArray(ar));
+        assertNull(SubsetIndex.put(fullName, big));
+        assertNull(SubsetIndex.get(fullName));
+        assertFalse(SubsetIndex.mayIndex(fullName));
+        assertTrue(SubsetIndex.statsString(), SubsetIndex.statsString().indexOf("nTooBig=1") >= 0);
+
+        //until the file changes
+        assertTrue(tempFile.setLastModified(tempFile.lastModified() - 60000));
+        assertTrue(SubsetIndex.mayIndex(fullName));
+    }
+}
@@ -0,0 +1,206 @@
+package gov.noaa.pfel.erddap.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlUnitTest {
+
+    private final List<HttpServletRequest> admitted = new ArrayList<>();
+
+    /** A request which just supports attributes and getRemoteAddr. */
+    private static HttpServletRequest request(String remoteAddr) {
+        HashMap<String, Object> attributes = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(),
+            new Class[]{HttpServletRequest.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getAttribute": return attributes.get(args[0]);
+                    case "setAttribute": attributes.put((String) args[0], args[1]); return null;
+                    case "removeAttribute": attributes.remove(args[0]); return null;
+                    case "getRemoteAddr": return remoteAddr;
+                    default: return null;
+                }
+            });
+    }
+
+    /** This admits a request from ipAddress and remembers it (so it is released later). */
+    private AdmissionControl.Rejection admit(String ipAddress) {
+        HttpServletRequest request = request("10.0.0.1");
+        AdmissionControl.Rejection rejection = AdmissionControl.admit(request, ipAddress);
+        if (rejection == null)
+            admitted.add(request);
+        return rejection;
+    }
+
+    private static AdmissionControl.Client client(HttpServletRequest request) {
+        return (AdmissionControl.Client) request.getAttribute(AdmissionControl.CLIENT_ATTRIBUTE);
+    }
+
+    private void releaseAll() {
+        for (HttpServletRequest request : admitted)
+            AdmissionControl.release(request);
+        admitted.clear();
+    }
+
+    @After
+    public void tearDown() {
+        releaseAll();
+        AdmissionControl.configure(0, 0, 0, 0, 0, null);
+    }
+
+    @Test
+    public void perClientConcurrencyLimitReturns429() {
+        AdmissionControl.configure(0, 2, 0, 0, 0, null);
+        assertNull(admit("1.1.1.1"));
+        assertNull(admit("1.1.1.1"));
+        AdmissionControl.Client client = client(admitted.get(0));
+        assertSame(client, client(admitted.get(1)));
+        assertEquals(2, client.active.get());
+
+        AdmissionControl.Rejection rejection = admit("1.1.1.1");
+        assertNotNull(rejection);
+        assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, rejection.status);
+        assertEquals(5, rejection.retryAfterSeconds);
+        assertEquals(2, client.active.get()); //the rejected request isn't counted
+        assertEquals(1, client.nRejected.get());
+        assertEquals(2, AdmissionControl.nActive());
+
+        //other clients aren't affected
+        assertNull(admit("2.2.2.2"));
+        assertEquals(3, AdmissionControl.nActive());
+
+        releaseAll();
+        assertEquals(0, client.active.get());
+        assertEquals(0, AdmissionControl.nActive());
+
+        //the client can make requests again
+        assertNull(admit("1.1.1.1"));
+    }
+
+    @Test
+    public void serverWideLimitReturns503() {
+        AdmissionControl.configure(2, 0, 0, 0, 0, null);
+        assertNull(admit("1.1.1.1"));
+        assertNull(admit("2.2.2.2"));
+        AdmissionControl.Rejection rejection = admit("3.3.3.3");
+        assertNotNull(rejection);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejection.status);
+        assertEquals(10, rejection.retryAfterSeconds);
+        assertEquals(2, AdmissionControl.nActive());
+
+        //after one is released, another is admitted
+        AdmissionControl.release(admitted.remove(0));
+        assertEquals(1, AdmissionControl.nActive());
+        HttpServletRequest request = request("10.0.0.1");
+        assertNull(AdmissionControl.admit(request, "3.3.3.3"));
+        admitted.add(request);
+        AdmissionControl.Client client = client(request);
+        assertEquals(1, client.nRejected.get()); //the earlier 503
+        assertEquals(1, client.active.get());
+
+        releaseAll();
+        assertNull(client(request)); //release() removes the attribute
+        assertEquals(0, client.active.get());
+        assertEquals(0, AdmissionControl.nActive());
+    }
+
+    @Test
+    public void tokenBucketAllowsBurstThenRefills() {
+        AdmissionControl.configure(0, 0, 60, 3, 0, null); //1 per second, burst of 3
+        AdmissionControl.Client client = new AdmissionControl.Client("1.1.1.1");
+        long t0 = client.lastMillis;
+        assertEquals(0, client.takeRequestToken(t0));
+        assertEquals(0, client.takeRequestToken(t0));
+        assertEquals(0, client.takeRequestToken(t0));
+        assertEquals(1, client.takeRequestToken(t0)); //empty: 1 second until the next token
+        assertEquals(1, client.takeRequestToken(t0 + 500));
+        assertEquals(0, client.takeRequestToken(t0 + 1000));
+        assertEquals(1, client.takeRequestToken(t0 + 1000));
+
+        //after a long time, the bucket holds just requestBurst tokens
+        long t1 = t0 + 3600 * 1000;
+        assertEquals(0, client.takeRequestToken(t1));
+        assertEquals(0, client.takeRequestToken(t1));
+        assertEquals(0, client.takeRequestToken(t1));
+        assertEquals(1, client.takeRequestToken(t1));
+    }
+
+    @Test
+    public void rateLimitReturns429WithRetryAfter() {
+        AdmissionControl.configure(0, 0, 6, 2, 0, null); //1 per 10 seconds, burst of 2
+        assertNull(admit("1.1.1.1"));
+        assertNull(admit("1.1.1.1"));
+        AdmissionControl.Client client = client(admitted.get(0));
+        releaseAll();
+
+        AdmissionControl.Rejection rejection = admit("1.1.1.1");
+        assertNotNull(rejection);
+        assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, rejection.status);
+        assertEquals(10, rejection.retryAfterSeconds);
+        assertEquals(0, client.active.get());
+        assertEquals(0, AdmissionControl.nActive());
+        assertEquals(2, client.nRequests.get());
+        assertEquals(1, client.nRejected.get());
+    }
+
+    @Test
+    public void rejectionsDontUseTokens() {
+        AdmissionControl.configure(0, 1, 6, 2, 0, null);
+        assertNull(admit("1.1.1.1")); //uses a token
+        assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, admit("1.1.1.1").status); //concurrency
+        releaseAll();
+        assertNull(admit("1.1.1.1")); //the 2nd token is still there
+    }
+
+    @Test
+    public void exemptClientsAreNeverLimited() {
+        AdmissionControl.configure(1, 1, 1, 1, 1000, new String[]{"9.9.9.9"});
+        for (int i = 0; i < 5; i++)
+            assertNull(admit("9.9.9.9"));
+        assertEquals(5, AdmissionControl.nActive());
+        assertEquals(5, client(admitted.get(0)).active.get());
+
+        //a non-exempt client is limited
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, admit("1.1.1.1").status);
+
+        releaseAll();
+        assertEquals(0, AdmissionControl.nActive());
+    }
+
+    @Test
+    public void unknownIpAddressUsesRemoteAddr() {
+        AdmissionControl.configure(0, 1, 0, 0, 0, null);
+        HttpServletRequest request = request("5.5.5.5");
+        assertNull(AdmissionControl.admit(request, "(unknownIPAddress)"));
+        admitted.add(request);
+        assertEquals("5.5.5.5", client(request).id);
+        assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, admit("5.5.5.5").status);
+    }
+
+    @Test
+    public void releaseIsANoOpForRejectedRequests() {
+        AdmissionControl.configure(1, 0, 0, 0, 0, null);
+        assertNull(admit("1.1.1.1"));
+        HttpServletRequest rejected = request("10.0.0.1");
+        assertNotNull(AdmissionControl.admit(rejected, "2.2.2.2"));
+        AdmissionControl.release(rejected);
+        assertEquals(1, AdmissionControl.nActive());
+
+        //releasing twice doesn't count twice
+        HttpServletRequest request = admitted.remove(0);
+        AdmissionControl.release(request);
+        AdmissionControl.release(request);
+        assertEquals(0, AdmissionControl.nActive());
+    }
+}
@@ -0,0 +1,218 @@
+package gov.noaa.pfel.erddap.util;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LuceneSearcherManagerUnitTest {
+
+    private RAMDirectory directory;
+    private IndexWriter writer;
+    private int oMaxCachedQueries;
+
+    /** A query which matches the "text" term, or (if fail is true) throws an exception. */
+    private static class FailingQuery extends Query {
+        volatile boolean fail = false;
+        final String text;
+
+        FailingQuery(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public Query rewrite(IndexReader reader) throws IOException {
+            if (fail)
+                throw new IOException("test failure");
+            return new TermQuery(new Term("text", text));
+        }
+
+        @Override
+        public String toString(String field) {
+            return "failing:" + text;
+        }
+    }
+
+    private static Query query(String text) {
+        return new TermQuery(new Term("text", text));
+    }
+
+    private void addDataset(String datasetID, String text) throws IOException {
+        Document doc = new Document();
+        doc.add(new Field("datasetID", datasetID, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("text", text, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+        writer.commit();
+    }
+
+    private static String[] sorted(String hits[]) {
+        String sorted[] = hits.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        oMaxCachedQueries = LuceneSearcherManager.maxCachedQueries;
+        directory = new RAMDirectory();
+        writer = new IndexWriter(directory,
+            new IndexWriterConfig(Version.LUCENE_35, new StandardAnalyzer(Version.LUCENE_35)));
+        addDataset("erdSst", "sea surface temperature sst");
+        addDataset("erdWind", "ocean winds");
+        addDataset("erdChla", "chlorophyll sst");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        LuceneSearcherManager.close();
+        LuceneSearcherManager.maxCachedQueries = oMaxCachedQueries;
+        writer.close();
+        directory.close();
+    }
+
+    @Test
+    public void searcherIsClosedAfterItsLastReleaseAcrossARefresh() throws Exception {
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s1 = LuceneSearcherManager.acquire();
+        assertNotNull(s1);
+        LuceneSearcherManager.Searcher s1b = LuceneSearcherManager.acquire();
+        assertSame(s1, s1b);
+
+        addDataset("erdSst2", "sst anomaly");
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s2 = LuceneSearcherManager.acquire();
+        assertNotSame(s1, s2);
+
+        //the old Searcher is still usable by the searches which have it
+        assertFalse(s1.isClosed());
+        assertArrayEquals(new String[]{"erdChla", "erdSst"}, sorted(s1.search(query("sst"))));
+        assertArrayEquals(new String[]{"erdChla", "erdSst", "erdSst2"}, sorted(s2.search(query("sst"))));
+
+        LuceneSearcherManager.release(s1);
+        assertFalse(s1.isClosed());
+        LuceneSearcherManager.release(s1b);
+        assertTrue(s1.isClosed());
+        assertFalse(s1.tryIncRef());
+
+        LuceneSearcherManager.release(s2);
+        assertFalse(s2.isClosed()); //the manager still has it
+        LuceneSearcherManager.close();
+        assertTrue(s2.isClosed());
+    }
+
+    @Test
+    public void acquireRetriesWhenItLosesARaceWithASwap() throws Exception {
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s1 = LuceneSearcherManager.current.get();
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s2 = LuceneSearcherManager.current.get();
+        assertTrue(s1.isClosed());
+
+        //as if acquire() got s1 just before the swap: tryIncRef fails, so it tries again
+        LuceneSearcherManager.current.set(s1);
+        AtomicReference<LuceneSearcherManager.Searcher> acquired = new AtomicReference<>();
+        Thread thread = new Thread(() -> acquired.set(LuceneSearcherManager.acquire()));
+        thread.start();
+        Thread.sleep(50);
+        assertTrue(thread.isAlive());
+        LuceneSearcherManager.current.set(s2);
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertSame(s2, acquired.get());
+        assertTrue(s1.isClosed()); //it wasn't resurrected
+        LuceneSearcherManager.release(acquired.get());
+        assertFalse(s2.isClosed());
+    }
+
+    @Test
+    public void leastFrequentlyUsedQueryIsEvicted() throws Exception {
+        LuceneSearcherManager.maxCachedQueries = 3;
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s = LuceneSearcherManager.acquire();
+        try {
+            for (int i = 0; i < 3; i++)
+                s.search(query("sst"));
+            for (int i = 0; i < 2; i++)
+                s.search(query("ocean"));
+            s.search(query("chlorophyll"));
+            assertTrue(s.isCached(query("chlorophyll")));
+
+            s.search(query("winds"));
+            assertTrue(s.isCached(query("sst")));
+            assertTrue(s.isCached(query("ocean")));
+            assertFalse(s.isCached(query("chlorophyll")));
+            assertTrue(s.isCached(query("winds")));
+
+            //cached hits are the same as the hits from a search
+            assertArrayEquals(new String[]{"erdChla", "erdSst"}, sorted(s.search(query("sst"))));
+        } finally {
+            LuceneSearcherManager.release(s);
+        }
+    }
+
+    @Test
+    public void warmedHitsComeFromTheNewIndex() throws Exception {
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s1 = LuceneSearcherManager.acquire();
+        try {
+            assertArrayEquals(new String[]{"erdChla", "erdSst"}, sorted(s1.search(query("sst"))));
+        } finally {
+            LuceneSearcherManager.release(s1);
+        }
+
+        addDataset("erdSst2", "sst anomaly");
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s2 = LuceneSearcherManager.acquire();
+        try {
+            assertTrue(s2.isCached(query("sst")));
+            assertArrayEquals(new String[]{"erdChla", "erdSst", "erdSst2"},
+                sorted(s2.search(query("sst"))));
+        } finally {
+            LuceneSearcherManager.release(s2);
+        }
+    }
+
+    @Test
+    public void aQueryWhichFailsToWarmDoesntStopTheRefresh() throws Exception {
+        FailingQuery failing = new FailingQuery("ocean");
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s1 = LuceneSearcherManager.acquire();
+        try {
+            assertArrayEquals(new String[]{"erdWind"}, s1.search(failing));
+            s1.search(query("sst"));
+        } finally {
+            LuceneSearcherManager.release(s1);
+        }
+
+        failing.fail = true;
+        addDataset("erdSst2", "sst anomaly");
+        LuceneSearcherManager.refresh(directory);
+        LuceneSearcherManager.Searcher s2 = LuceneSearcherManager.acquire();
+        try {
+            assertNotSame(s1, s2);
+            assertTrue(s1.isClosed());
+            assertFalse(s2.isCached(failing));
+            assertTrue(s2.isCached(query("sst")));
+            assertArrayEquals(new String[]{"erdChla", "erdSst", "erdSst2"},
+                sorted(s2.search(query("sst"))));
+        } finally {
+            LuceneSearcherManager.release(s2);
+        }
+    }
+}
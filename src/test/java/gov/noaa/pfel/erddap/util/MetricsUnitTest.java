@@ -0,0 +1,130 @@
+package gov.noaa.pfel.erddap.util;
+
+import com.codahale.metrics.Timer;
+
+import gov.noaa.pfel.coastwatch.util.Tally;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.junit.Assert.*;
+
+public class MetricsUnitTest {
+
+    /** A request which just supports attributes. */
+    private static HttpServletRequest request() {
+        HashMap<String, Object> attributes = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(),
+            new Class[]{HttpServletRequest.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getAttribute": return attributes.get(args[0]);
+                    case "setAttribute": attributes.put((String) args[0], args[1]); return null;
+                    default: return null;
+                }
+            });
+    }
+
+    private static long timerCount(String name) {
+        Timer timer = Metrics.registry.getTimers().get(name);
+        return timer == null? 0 : timer.getCount();
+    }
+
+    private static void request(String protocol, String status) {
+        Metrics.requestStarted();
+        Metrics.requestFinished(request(), protocol, 5, status);
+    }
+
+    @Test
+    public void eachStatusIsCountedSeparately() {
+        long total       = Metrics.total.getCount();
+        long failed      = Metrics.failed.getCount();
+        long blacklisted = Metrics.blacklisted.getCount();
+        long rejected    = Metrics.rejected.getCount();
+        long inFlight    = Metrics.inFlight.getCount();
+        long none        = timerCount("request.protocol.(none)");
+        long info        = timerCount("request.protocol.info");
+
+        request("info", Metrics.SUCCEEDED);
+        request("info", Metrics.FAILED);
+        request(null, Metrics.BLACKLISTED);
+        request(null, Metrics.REJECTED);
+        request(null, Metrics.REJECTED);
+
+        assertEquals(5, Metrics.total.getCount()       - total);
+        assertEquals(1, Metrics.failed.getCount()      - failed);
+        assertEquals(1, Metrics.blacklisted.getCount() - blacklisted);
+        assertEquals(2, Metrics.rejected.getCount()    - rejected);
+        assertEquals(inFlight, Metrics.inFlight.getCount());
+
+        //succeeded and failed requests are timed; blacklisted and rejected requests aren't
+        assertEquals(2, timerCount("request.protocol.info") - info);
+        assertEquals(none, timerCount("request.protocol.(none)"));
+    }
+
+    @Test
+    public void datasetAndFileTypeAreTimed() {
+        long dataset  = timerCount("request.dataset.testMetricsDataset");
+        long fileType = timerCount("request.fileType..testMetrics");
+        HttpServletRequest request = request();
+        Metrics.setDatasetAndFileType(request, "testMetricsDataset", ".testMetrics");
+        Metrics.requestStarted();
+        Metrics.requestFinished(request, "griddap", 5, Metrics.SUCCEEDED);
+        assertEquals(1, timerCount("request.dataset.testMetricsDataset") - dataset);
+        assertEquals(1, timerCount("request.fileType..testMetrics") - fileType);
+
+        Metrics.removeDataset("testMetricsDataset");
+        assertNull(Metrics.registry.getTimers().get("request.dataset.testMetricsDataset"));
+    }
+
+    @Test
+    public void prometheusTypes() throws Exception {
+        request("info", Metrics.SUCCEEDED);
+        request(null, Metrics.BLACKLISTED);
+        Tally tally = new Tally();
+        tally.addSince("Protocol", "info");
+        tally.addSince("Requester's IP Address (Allowed)", "1.2.3.4");
+        StringWriter writer = new StringWriter();
+        Metrics.writePrometheus(writer, tally);
+        String s = writer.toString();
+
+        assertTrue(s, s.indexOf("# TYPE erddap_requests_in_flight gauge\n") >= 0);
+        //requests.total is monotonic, so it is a counter (not a gauge)
+        assertTrue(s, s.indexOf("# TYPE erddap_requests_total counter\n" +
+            "erddap_requests_total " + Metrics.total.getCount() + "\n") >= 0);
+        assertTrue(s, s.indexOf("# TYPE erddap_requests_total gauge") < 0);
+        assertTrue(s, s.indexOf("# TYPE erddap_requests_failed_total counter\n" +
+            "erddap_requests_failed_total " + Metrics.failed.getCount() + "\n") >= 0);
+        assertTrue(s, s.indexOf("# TYPE erddap_requests_blacklisted_total counter\n" +
+            "erddap_requests_blacklisted_total " + Metrics.blacklisted.getCount() + "\n") >= 0);
+        assertTrue(s, s.indexOf("# TYPE erddap_requests_rejected_total counter\n" +
+            "erddap_requests_rejected_total " + Metrics.rejected.getCount() + "\n") >= 0);
+        assertTrue(s, s.indexOf("# TYPE erddap_request_seconds_by_protocol summary\n") >= 0);
+        assertTrue(s, s.indexOf("erddap_request_seconds_by_protocol_count{protocol=\"info\"} ") >= 0);
+
+        //the tally, without IP addresses
+        assertTrue(s, s.indexOf("erddap_tally_total{category=\"Protocol\",name=\"info\"} 1\n") >= 0);
+        assertTrue(s, s.indexOf("1.2.3.4") < 0);
+    }
+
+    @Test
+    public void protocolKeyIsBounded() {
+        assertEquals("griddap", Metrics.protocolKey("griddap"));
+        assertEquals("index",   Metrics.protocolKey("index.html"));
+        assertEquals("(none)",  Metrics.protocolKey(null));
+        assertEquals("(none)",  Metrics.protocolKey(""));
+        assertEquals(Metrics.OTHER, Metrics.protocolKey("madeUp"));
+    }
+
+    @Test
+    public void prometheusNamesAndLabels() {
+        assertEquals("datasets_grid", Metrics.prometheusName("datasets.grid"));
+        assertEquals("a\\\\b\\\"c\\nd", Metrics.prometheusLabel("a\\b\"c\nd"));
+    }
+}
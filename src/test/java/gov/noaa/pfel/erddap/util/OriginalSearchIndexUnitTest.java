@@ -0,0 +1,174 @@
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.String2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OriginalSearchIndexUnitTest {
+
+    /** datasetID -> the dataset's current searchBytes */
+    private final LinkedHashMap<String, byte[]> datasets = new LinkedHashMap();
+
+    /** The number of datasets which searchRank was called for by the last search(). */
+    private int nSearched;
+
+    private void addDataset(String datasetID, String searchString) {
+        byte searchBytes[] = String2.stringToUtf8Bytes(searchString);
+        datasets.put(datasetID, searchBytes);
+        OriginalSearchIndex.update(datasetID, searchBytes);
+    }
+
+    @Before
+    public void setUp() {
+        addDataset("osiWind",
+            "all\ngriddap\nwindspeed\nu-wind component\nprotocol=griddap\nocean winds\n");
+        addDataset("osiSst",
+            "all\ngriddap\nsea_surface_temperature\nsst\nprotocol=griddap\nsea surface temperature\n");
+        addDataset("osiSeaSurfaceWords",
+            "all\ntabledap\nsea surface salinity\nprotocol=tabledap\nsurface wind\n");
+        addDataset("osiStation",
+            "all\ntabledap\nstation_id\nair_temperature\nprotocol=tabledap\nbuoy a\n");
+        addDataset("osiAccent",
+            "all\ntabledap\ntemp\u00e9rature de l'eau\nprotocol=tabledap\n");
+    }
+
+    @After
+    public void tearDown() {
+        for (String datasetID : datasets.keySet())
+            OriginalSearchIndex.update(datasetID, null);
+    }
+
+    /** This is like EDD.searchRank (without the DEPRECATED penalty). */
+    private static int searchRank(byte searchBytes[], boolean isNegative[], byte words[][]) {
+        int rank = 0;
+        for (int w = 0; w < words.length; w++) {
+            int po = String2.indexOf(searchBytes, words[w], String2.makeJumpTable(words[w]));
+            if (isNegative[w]? po >= 0 : po < 0)
+                return Integer.MAX_VALUE;
+            rank += po;
+        }
+        return rank;
+    }
+
+    /**
+     * This does the search like Erddap.getSearchDatasetIDs's original search engine,
+     * optionally using the index.
+     *
+     * @return the matching datasetIDs and their ranks (e.g., "id1=12, id2=40")
+     */
+    private String search(boolean useIndex, String... searchWords) {
+        boolean isNegative[] = new boolean[searchWords.length];
+        byte words[][] = new byte[searchWords.length][];
+        for (int w = 0; w < searchWords.length; w++) {
+            String sw = searchWords[w];
+            isNegative[w] = sw.charAt(0) == '-';
+            words[w] = String2.stringToUtf8Bytes(isNegative[w]? sw.substring(1) : sw);
+        }
+        OriginalSearchIndex.Candidates candidates = useIndex?
+            OriginalSearchIndex.candidates(isNegative, words) : null;
+        nSearched = 0;
+        ArrayList<String> results = new ArrayList();
+        for (Map.Entry<String, byte[]> entry : datasets.entrySet()) {
+            if (candidates != null && !candidates.mayMatch(entry.getKey(), entry.getValue()))
+                continue;
+            nSearched++;
+            int rank = searchRank(entry.getValue(), isNegative, words);
+            if (rank < Integer.MAX_VALUE)
+                results.add(entry.getKey() + "=" + rank);
+        }
+        return String2.toCSSVString(results);
+    }
+
+    /**
+     * This ensures that the indexed search finds the same datasets (with the same ranks)
+     * as a scan of all of the datasets.
+     *
+     * @param expected the datasetIDs which the scan should find
+     * @return the number of datasets which the indexed search called searchRank for
+     */
+    private int ensureSameResults(String expected, String... searchWords) {
+        String scan = search(false, searchWords);
+        assertEquals(String2.toCSSVString(searchWords), expected, scan.replaceAll("=-?\\d+", ""));
+        assertEquals(String2.toCSSVString(searchWords), scan, search(true, searchWords));
+        return nSearched;
+    }
+
+    @Test
+    public void substringWords() {
+        //"wind" is in "windspeed", "u-wind", "winds", and "wind"
+        assertEquals(2, ensureSameResults("osiWind, osiSeaSurfaceWords", "wind"));
+        assertEquals(1, ensureSameResults("osiWind", "speed"));
+        assertEquals(1, ensureSameResults("osiSst", "temperature", "sst"));
+        assertEquals(0, ensureSameResults("", "nothing"));
+        assertEquals(1, ensureSameResults("osiAccent", "temp\u00e9r"));
+    }
+
+    @Test
+    public void phrasesAndPunctuation() {
+        //"sea surface" is a candidate (both pieces are tokens), but only "sea_surface" matches
+        assertEquals(2, ensureSameResults("osiSst", "sea_surface"));
+        assertEquals(2, ensureSameResults("osiSst, osiSeaSurfaceWords", "sea surface"));
+        assertEquals(2, ensureSameResults("osiWind, osiSst", "protocol=griddap"));
+        assertEquals(1, ensureSameResults("osiWind", "u-wind component"));
+        assertEquals(1, ensureSameResults("osiAccent", "l'eau"));
+        //no dataset has all of the pieces
+        assertEquals(0, ensureSameResults("", "protocol=griddap sea surface salinity"));
+    }
+
+    @Test
+    public void negativeWords() {
+        //negative words don't narrow the candidates, but they are still applied
+        assertEquals(2, ensureSameResults("osiSeaSurfaceWords", "surface", "-griddap"));
+        assertEquals(2, ensureSameResults("osiSst", "temperature", "-station"));
+        assertEquals(2, ensureSameResults("osiWind", "wind", "-surface"));
+
+        //there are no positive words, so all of the datasets are searched
+        assertEquals(5, ensureSameResults(
+            "osiSst, osiSeaSurfaceWords, osiStation, osiAccent", "-windspeed"));
+    }
+
+    @Test
+    public void oneCharacterPieces() {
+        //too short to be looked up, so all of the datasets are searched
+        assertEquals(5, ensureSameResults(
+            "osiWind, osiSst, osiSeaSurfaceWords, osiStation, osiAccent", "a"));
+        assertEquals(5, ensureSameResults("osiWind", "u-"));
+
+        //the one character pieces are ignored, but the other pieces are used
+        assertEquals(1, ensureSameResults("osiStation", "buoy a"));
+        assertEquals(2, ensureSameResults("osiWind", "u-wind"));
+        assertEquals(2, ensureSameResults("osiWind, osiSeaSurfaceWords", "wind", "u"));
+    }
+
+    @Test
+    public void reloadedDataset() {
+        assertEquals(1, ensureSameResults("osiWind", "speed"));
+
+        //the dataset is reloaded, but the index hasn't been updated yet: it is always a candidate
+        byte newSearchBytes[] = String2.stringToUtf8Bytes(
+            "all\ngriddap\ngust speed\nprotocol=griddap\n");
+        datasets.put("osiWind", newSearchBytes);
+        assertEquals(1, ensureSameResults("osiWind", "speed"));
+        assertEquals(1, ensureSameResults("osiWind", "gust"));
+        assertEquals(1, ensureSameResults("", "windspeed"));
+
+        //the index is updated
+        OriginalSearchIndex.update("osiWind", newSearchBytes);
+        assertEquals(1, ensureSameResults("osiWind", "gust"));
+        assertEquals(0, ensureSameResults("", "windspeed"));
+        assertEquals(1, ensureSameResults("osiSeaSurfaceWords", "wind"));
+
+        //the dataset is removed
+        datasets.remove("osiSst");
+        OriginalSearchIndex.update("osiSst", null);
+        assertEquals(0, ensureSameResults("", "sst"));
+        assertEquals(1, ensureSameResults("osiSeaSurfaceWords", "sea surface"));
+    }
+}